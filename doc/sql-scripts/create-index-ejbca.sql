@@ -37,6 +37,8 @@ CREATE UNIQUE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issu
 -- If using CVC CA remove the above UNIQUE index, and apply the below NON UNIQUE index instead
 -- Do not apply both of them!
 -- CREATE INDEX certificatedata_idx12 ON CertificateData (serialNumber, issuerDN);
+-- Needed by the certificate change feed, which reads the certificates changed after a given update time and fingerprint
+CREATE INDEX certificatedata_idx15 ON CertificateData (updateTime, fingerprint);
 
 CREATE INDEX historydata_idx1 ON CertReqHistoryData (username);
 CREATE INDEX historydata_idx3 ON CertReqHistoryData (serialNumber);
@@ -47,5 +49,9 @@ CREATE INDEX userdata_idx11 ON UserData (status);
 
 CREATE INDEX publisherqueue_idx3 ON PublisherQueueData (publisherId, publishStatus, timeCreated);
 
+-- Approval requests are looked up by approval ID, and listed by status and request date
+CREATE INDEX approvaldata_idx1 ON ApprovalData (approvalId);
+CREATE INDEX approvaldata_idx2 ON ApprovalData (status, requestDate);
+
 -- When using a blacklist with many entries
 CREATE INDEX blacklist_idx1 ON BlacklistData (type,value);
@@ -15,6 +15,7 @@ DROP INDEX certificatedata_idx7 ON CertificateData;
 -- DROP INDEX certificatedata_idx8 ON CertificateData;
 DROP INDEX certificatedata_idx11 ON CertificateData;
 DROP INDEX certificatedata_idx12 ON CertificateData;
+DROP INDEX certificatedata_idx15 ON CertificateData;
 -- Only added when MySQL partition pruning is used:
 -- ALTER TABLE CertificateData DROP INDEX certificatedata_idx13;
 -- ALTER TABLE CertificateData DROP INDEX certificatedata_idx14;
@@ -26,3 +27,6 @@ DROP INDEX userdata_idx10 ON UserData;
 DROP INDEX userdata_idx11 ON UserData;
 
 DROP INDEX publisherqueue_idx3 ON PublisherQueueData;
+
+DROP INDEX approvaldata_idx1 ON ApprovalData;
+DROP INDEX approvaldata_idx2 ON ApprovalData;
@@ -108,6 +108,8 @@ public class EditPublisherJSPHelper {
     public static final String TEXTFIELD_LDAPTIMEOUT           = "textfieldldaptimeout";
     public static final String TEXTFIELD_LDAPREADTIMEOUT       = "textfieldldapreadtimeout";
     public static final String TEXTFIELD_LDAPSTORETIMEOUT      = "textfieldldapstoretimeout";
+    public static final String TEXTFIELD_LDAPCONNECTIONPOOLSIZE = "textfieldldapconnectionpoolsize";
+    public static final String TEXTFIELD_LDAPCONNECTIONPOOLIDLETIMEOUT = "textfieldldapconnectionpoolidletimeout";
     public static final String TEXTFIELD_VA_DATASOURCE         = "textfieldvadatasource";
     public static final String PASSWORD_LDAPLOGINPASSWORD      = "textfieldldaploginpassword";
     public static final String PASSWORD_LDAPLOGINPASSWORDPLACEHOLDER = "placeholder";    
@@ -387,6 +389,16 @@ public class EditPublisherJSPHelper {
                                     value = value.trim();
                                     ldappublisher.setStoreTimeOut(Integer.parseInt(value));
                                 }
+                                value = request.getParameter(TEXTFIELD_LDAPCONNECTIONPOOLSIZE);
+                                if(value != null){
+                                    value = value.trim();
+                                    ldappublisher.setConnectionPoolSize(Integer.parseInt(value));
+                                }
+                                value = request.getParameter(TEXTFIELD_LDAPCONNECTIONPOOLIDLETIMEOUT);
+                                if(value != null){
+                                    value = value.trim();
+                                    ldappublisher.setConnectionPoolIdleTimeOut(Integer.parseInt(value));
+                                }
                                 value = request.getParameter(TEXTFIELD_LDAPUSEROBJECTCLASS);
                                 if(value != null){
                                     value = value.trim();
@@ -46,6 +46,7 @@ import java.util.Set;
 import javax.security.auth.x500.X500Principal;
 
 import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1Encoding;
@@ -93,6 +94,7 @@ import org.bouncycastle.util.encoders.Hex;
 import org.cesecore.certificates.ca.catoken.CAToken;
 import org.cesecore.certificates.ca.catoken.CATokenConstants;
 import org.cesecore.certificates.ca.extendedservices.ExtendedCAServiceInfo;
+import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.certificates.certificate.request.PKCS10RequestMessage;
 import org.cesecore.certificates.certificateprofile.CertificatePolicy;
@@ -124,6 +126,8 @@ import org.junit.Test;
  * @version $Id$
  */
 public class X509CATest {
+
+    private static final Logger log = Logger.getLogger(X509CATest.class);
   
 	public static final String CADN = "CN=TEST";
 	
@@ -695,6 +699,62 @@ public class X509CATest {
         }
     }
 	
+    /** Tests that the pre-encoded extensions of the issuance template follow changes of the certificate profile and the CA */
+    @Test
+    public void testIssuanceTemplateFollowsProfileAndCaChanges() throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final KeyPair keypair = KeyTools.genKeys("512", "RSA");
+        final X509CA ca = createTestCA(cryptoToken, "CN=foo");
+        final EndEntityInformation user = new EndEntityInformation("username", "CN=User", 666, null, "user@user.com", new EndEntityType(EndEntityTypes.ENDUSER), 0, 0, EndEntityConstants.TOKEN_USERGEN, 0, null);
+        final CertificateProfile profile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        profile.setUseCRLDistributionPoint(true);
+        profile.setUseDefaultCRLDistributionPoint(true);
+        ca.setDefaultCRLDistPoint("http://example.com/first.crl");
+        X509Certificate certificate = (X509Certificate) ca.generateCertificate(cryptoToken, user, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig);
+        assertEquals("http://example.com/first.crl", CertTools.getCrlDistributionPoint(certificate).toString());
+        assertTrue("Profile should allow digital signature.", certificate.getKeyUsage()[0]);
+        // Changing a CA setting used by a pre-encoded extension must be reflected in the next certificate
+        ca.setDefaultCRLDistPoint("http://example.com/second.crl");
+        certificate = (X509Certificate) ca.generateCertificate(cryptoToken, user, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig);
+        assertEquals("http://example.com/second.crl", CertTools.getCrlDistributionPoint(certificate).toString());
+        // And so must changing the profile
+        profile.setKeyUsage(CertificateConstants.DIGITALSIGNATURE, false);
+        certificate = (X509Certificate) ca.generateCertificate(cryptoToken, user, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig);
+        assertFalse("Changed key usage of profile was not used.", certificate.getKeyUsage()[0]);
+        // Subject dependent extensions are still created for each certificate
+        final EndEntityInformation otherUser = new EndEntityInformation("otheruser", "CN=Other", 666, "dNSName=other.example.com", null, new EndEntityType(EndEntityTypes.ENDUSER), 0, 0, EndEntityConstants.TOKEN_USERGEN, 0, null);
+        certificate = (X509Certificate) ca.generateCertificate(cryptoToken, otherUser, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig);
+        assertEquals("dNSName=other.example.com", CertTools.getSubjectAlternativeName(certificate));
+    }
+
+    /** Measures issuance with a soft crypto token, where the time spent on certificate extensions is most noticeable */
+    @Test
+    public void testIssuancePerformanceSoftToken() throws Exception {
+        final CryptoToken cryptoToken = getNewCryptoToken();
+        final KeyPair keypair = KeyTools.genKeys("512", "RSA");
+        final X509CA ca = createTestCA(cryptoToken, "CN=foo");
+        ca.setDefaultCRLDistPoint("http://example.com/ca.crl");
+        ca.setDefaultOCSPServiceLocator("http://example.com/ocsp");
+        final EndEntityInformation user = new EndEntityInformation("username", "CN=User", 666, "dNSName=user.example.com", "user@user.com", new EndEntityType(EndEntityTypes.ENDUSER), 0, 0, EndEntityConstants.TOKEN_USERGEN, 0, null);
+        final CertificateProfile profile = new CertificateProfile(CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER);
+        profile.setUseCRLDistributionPoint(true);
+        profile.setUseDefaultCRLDistributionPoint(true);
+        profile.setUseAuthorityInformationAccess(true);
+        profile.setUseDefaultOCSPServiceLocator(true);
+        profile.addCertificatePolicy(new CertificatePolicy("1.1.1.2", CertificatePolicy.id_qt_cps, "http://example.com/cps"));
+        profile.setUseCertificatePolicies(true);
+        final int rounds = 500;
+        for (int i = 0; i < 50; i++) {
+            ca.generateCertificate(cryptoToken, user, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig);
+        }
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            assertNotNull(ca.generateCertificate(cryptoToken, user, keypair.getPublic(), 0, null, "10d", profile, "00000", cceConfig));
+        }
+        final long time = (System.nanoTime() - start) / 1000L;
+        log.info("Issuing " + rounds + " certificates with a soft token took " + time / 1000L + " ms, that's " + time / rounds + " us per certificate.");
+    }
+
 	/** Test implementation of Authority Information Access CRL Extension according to RFC 4325 */
     @Test
     public void testAuthorityInformationAccessCertificateExtension() throws Exception {
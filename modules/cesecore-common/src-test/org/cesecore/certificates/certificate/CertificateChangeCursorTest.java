@@ -0,0 +1,65 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test of parsing and formatting certificate change feed cursors. The order of the feed itself is tested by EjbcaWSTest.
+ *
+ * @version $Id$
+ */
+public class CertificateChangeCursorTest {
+
+    private static final String FINGERPRINT_A = "0a1b2c3d4e5f60718293a4b5c6d7e8f901234567";
+
+    @Test
+    public void testParse() {
+        assertSame(CertificateChangeCursor.START, CertificateChangeCursor.parse(null));
+        assertSame(CertificateChangeCursor.START, CertificateChangeCursor.parse(""));
+        final CertificateChangeCursor cursor = CertificateChangeCursor.parse("1476900000000:" + FINGERPRINT_A);
+        assertEquals(1476900000000L, cursor.getUpdateTime());
+        assertEquals(FINGERPRINT_A, cursor.getFingerprint());
+        assertEquals("1476900000000:" + FINGERPRINT_A, cursor.toString());
+        assertEquals(cursor, CertificateChangeCursor.parse(cursor.toString()));
+        // Without a fingerprint, all certificates with the update time are after the cursor
+        assertEquals("", CertificateChangeCursor.parse("1476900000000:").getFingerprint());
+        assertEquals(CertificateChangeCursor.START, CertificateChangeCursor.parse(CertificateChangeCursor.START.toString()));
+    }
+
+    @Test
+    public void testParseMalformed() {
+        for (final String malformed : Arrays.asList("1476900000000", ":" + FINGERPRINT_A, "abc:" + FINGERPRINT_A, "1476900000000x:" + FINGERPRINT_A,
+                "-2:" + FINGERPRINT_A, "99999999999999999999:" + FINGERPRINT_A)) {
+            try {
+                CertificateChangeCursor.parse(malformed);
+                fail("Cursor '" + malformed + "' should be rejected.");
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+
+    @Test
+    public void testAfter() {
+        final CertificateInfo certificateInfo = new CertificateInfo(FINGERPRINT_A, null, "1", "CN=Issuer", "CN=Subject", CertificateConstants.CERT_ACTIVE,
+                CertificateConstants.CERTTYPE_ENDENTITY, Long.valueOf(0L), 0L, 0L, 0, "user", null, 0, null, 1000L, null, null);
+        assertEquals("1000:" + FINGERPRINT_A, CertificateChangeCursor.after(certificateInfo).toString());
+    }
+}
@@ -0,0 +1,53 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test of the serial number uniqueness metrics and text format.
+ *
+ * @version $Id$
+ */
+public class SerialNumberMetricsTest {
+
+    @Test
+    public void testTextFormat() {
+        final long lookupsBefore = SerialNumberMetrics.INSTANCE.getUniquenessLookups();
+        final long lookupCollisionsBefore = SerialNumberMetrics.INSTANCE.getLookupCollisions();
+        final long indexCollisionsBefore = SerialNumberMetrics.INSTANCE.getIndexCollisions();
+        SerialNumberMetrics.INSTANCE.countUniquenessLookup();
+        SerialNumberMetrics.INSTANCE.countLookupCollision();
+        SerialNumberMetrics.INSTANCE.countIndexCollision();
+        SerialNumberMetrics.INSTANCE.countFailedIssuance();
+        assertEquals(lookupsBefore + 1, SerialNumberMetrics.INSTANCE.getUniquenessLookups());
+        assertEquals(lookupCollisionsBefore + 1, SerialNumberMetrics.INSTANCE.getLookupCollisions());
+        assertEquals(indexCollisionsBefore + 1, SerialNumberMetrics.INSTANCE.getIndexCollisions());
+        SerialNumberMetrics.INSTANCE.setUniqueIndex(null);
+        String text = SerialNumberMetrics.INSTANCE.getTextFormat();
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_unique_index -1\n"));
+        SerialNumberMetrics.INSTANCE.setUniqueIndex(Boolean.TRUE);
+        text = SerialNumberMetrics.INSTANCE.getTextFormat();
+        assertTrue(text, text.contains("# TYPE ejbca_certificate_serial_number_collisions_total counter\n"));
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_unique_index 1\n"));
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_lookups_total " + SerialNumberMetrics.INSTANCE.getUniquenessLookups() + "\n"));
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_collisions_total{detected_by=\"lookup\"} "
+                + SerialNumberMetrics.INSTANCE.getLookupCollisions() + "\n"));
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_collisions_total{detected_by=\"index\"} "
+                + SerialNumberMetrics.INSTANCE.getIndexCollisions() + "\n"));
+        assertTrue(text, text.contains("ejbca_certificate_serial_number_failed_issuances_total " + SerialNumberMetrics.INSTANCE.getFailedIssuances() + "\n"));
+    }
+}
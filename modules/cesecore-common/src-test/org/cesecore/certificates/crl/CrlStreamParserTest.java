@@ -0,0 +1,231 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509CRL;
+import java.security.cert.X509CRLEntry;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.bouncycastle.asn1.DERIA5String;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.CRLDistPoint;
+import org.bouncycastle.asn1.x509.CRLNumber;
+import org.bouncycastle.asn1.x509.DistributionPoint;
+import org.bouncycastle.asn1.x509.DistributionPointName;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.cert.X509v2CRLBuilder;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.util.cert.CrlExtensions;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests of the streaming CRL parser and the sorting of CRL entries, compared to the X509CRL parsing of the JCA provider.
+ *
+ * @version $Id$
+ */
+public class CrlStreamParserTest {
+
+    private static final String FRESHEST_CDP = "http://crl.example.com/delta.crl";
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", "RSA");
+    }
+
+    @Test
+    public void testParseAndVerify() throws Exception {
+        final byte[] crlBytes = createCrl(2500, true, 1);
+        final X509CRL x509crl = CertTools.getCRLfromByteArray(crlBytes);
+        final Map<BigInteger, X509CRLEntry> expectedEntries = new HashMap<BigInteger, X509CRLEntry>();
+        for (final X509CRLEntry x509crlEntry : x509crl.getRevokedCertificates()) {
+            expectedEntries.put(x509crlEntry.getSerialNumber(), x509crlEntry);
+        }
+        final CrlStreamParser crl = new CrlStreamParser(new ByteArrayInputStream(crlBytes), CertTools.genContentVerifierProvider(keyPair.getPublic()));
+        assertArrayEquals(x509crl.getIssuerX500Principal().getEncoded(), crl.getIssuerEncoded());
+        assertEquals(x509crl.getThisUpdate(), crl.getThisUpdate());
+        assertEquals(x509crl.getNextUpdate(), crl.getNextUpdate());
+        try {
+            crl.getExtensions();
+            fail("Extensions should not be available before the entries have been read.");
+        } catch (IllegalStateException e) {
+            // Expected
+        }
+        byte[] entry;
+        while ((entry = crl.nextEntry()) != null) {
+            final TBSCertList.CRLEntry crlEntry = CrlStreamParser.parseEntry(entry);
+            final BigInteger serialNumber = CrlStreamParser.getSerialNumber(entry);
+            assertEquals(crlEntry.getUserCertificate().getValue(), serialNumber);
+            final X509CRLEntry expectedEntry = expectedEntries.remove(serialNumber);
+            assertArrayEquals(expectedEntry.getEncoded(), entry);
+            assertEquals(expectedEntry.getRevocationDate(), crlEntry.getRevocationDate().getDate());
+            assertEquals(CrlExtensions.extractReasonCode(expectedEntry), CrlExtensions.extractReasonCode(crlEntry.getExtensions()));
+        }
+        crl.close();
+        assertTrue("All entries should have been parsed.", expectedEntries.isEmpty());
+        assertEquals(2500, crl.getEntryCount());
+        assertTrue("Signature should be valid.", crl.isSignatureValid());
+        assertArrayEquals(x509crl.getSignature(), crl.getSignature());
+        assertEquals(CrlExtensions.getCrlNumber(x509crl), CrlExtensions.getCrlNumber(crl.getExtensions()));
+        assertEquals(BigInteger.valueOf(-1), CrlExtensions.getDeltaCRLIndicator(crl.getExtensions()));
+        assertEquals(Arrays.asList(FRESHEST_CDP), CrlExtensions.extractFreshestCrlDistributionPoints(crl.getExtensions()));
+    }
+
+    @Test
+    public void testSkipEntriesAndEmptyCrl() throws Exception {
+        final CrlStreamParser crl = new CrlStreamParser(new ByteArrayInputStream(createCrl(100, false, 2)), null);
+        assertNull(crl.getNextUpdate());
+        crl.skipEntries();
+        assertEquals(0, crl.getEntryCount());
+        assertEquals(BigInteger.valueOf(2), CrlExtensions.getCrlNumber(crl.getExtensions()));
+        final CrlStreamParser emptyCrl = new CrlStreamParser(new ByteArrayInputStream(createCrl(0, true, 3)),
+                CertTools.genContentVerifierProvider(keyPair.getPublic()));
+        assertNull(emptyCrl.nextEntry());
+        assertTrue(emptyCrl.isSignatureValid());
+        assertEquals(BigInteger.valueOf(3), CrlExtensions.getCrlNumber(emptyCrl.getExtensions()));
+    }
+
+    @Test
+    public void testModifiedCrl() throws Exception {
+        final byte[] crlBytes = createCrl(50, true, 4);
+        // Change the last byte of the serial number of some entry, which keeps the structure intact
+        final byte[] modifiedCrlBytes = crlBytes.clone();
+        final byte[] firstEntry = new CrlStreamParser(new ByteArrayInputStream(crlBytes), null).nextEntry();
+        final int entryOffset = indexOf(crlBytes, firstEntry);
+        modifiedCrlBytes[entryOffset + 3 + firstEntry[3]] ^= 1;
+        final CrlStreamParser crl = new CrlStreamParser(new ByteArrayInputStream(modifiedCrlBytes),
+                CertTools.genContentVerifierProvider(keyPair.getPublic()));
+        crl.skipEntries();
+        assertFalse("Signature of modified CRL should not be valid.", crl.isSignatureValid());
+        // A truncated CRL
+        try {
+            new CrlStreamParser(new ByteArrayInputStream(Arrays.copyOf(crlBytes, crlBytes.length - 10)), null).skipEntries();
+            fail("Truncated CRL should not be parsed.");
+        } catch (IOException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testSortAndCompare() throws Exception {
+        final byte[] lastCrlBytes = createCrl(1000, true, 5);
+        final List<byte[]> lastEntries = readEntries(lastCrlBytes);
+        // The new CRL contains all entries of the last CRL but one, plus some new entries, in a different order
+        final List<byte[]> newEntries = new ArrayList<byte[]>(lastEntries.subList(1, lastEntries.size()));
+        newEntries.addAll(readEntries(createCrl(300, true, 6)));
+        Collections.shuffle(newEntries, new Random(1));
+        final CrlEntrySorter lastSorter = new CrlEntrySorter(64);
+        final CrlEntrySorter newSorter = new CrlEntrySorter(64);
+        try {
+            for (final byte[] entry : lastEntries) {
+                lastSorter.add(entry);
+            }
+            for (final byte[] entry : newEntries) {
+                newSorter.add(entry);
+            }
+            assertEquals(newEntries.size(), newSorter.getSize());
+            int newCount = 0;
+            BigInteger previousSerialNumber = null;
+            byte[] newEntry = newSorter.next();
+            byte[] lastEntry = lastSorter.next();
+            while (newEntry != null) {
+                final BigInteger serialNumber = CrlStreamParser.getSerialNumber(newEntry);
+                assertTrue("Entries should be sorted by serial number.", previousSerialNumber == null || previousSerialNumber.compareTo(serialNumber) <= 0);
+                previousSerialNumber = serialNumber;
+                final int comparison = lastEntry == null ? -1 : CrlEntrySorter.compare(newEntry, lastEntry);
+                if (comparison < 0) {
+                    newCount++;
+                    newEntry = newSorter.next();
+                } else {
+                    if (comparison == 0) {
+                        newEntry = newSorter.next();
+                    }
+                    lastEntry = lastSorter.next();
+                }
+            }
+            assertEquals("Only the entries of the second CRL should be new.", 300, newCount);
+        } finally {
+            lastSorter.close();
+            newSorter.close();
+        }
+    }
+
+    private List<byte[]> readEntries(final byte[] crlBytes) throws IOException {
+        final List<byte[]> entries = new ArrayList<byte[]>();
+        final CrlStreamParser crl = new CrlStreamParser(new ByteArrayInputStream(crlBytes), null);
+        byte[] entry;
+        while ((entry = crl.nextEntry()) != null) {
+            entries.add(entry);
+        }
+        return entries;
+    }
+
+    private byte[] createCrl(final int entryCount, final boolean withNextUpdate, final int crlNumber) throws Exception {
+        final Random random = new Random(crlNumber);
+        final Date thisUpdate = new Date((System.currentTimeMillis() / 1000) * 1000);
+        final X509v2CRLBuilder crlBuilder = new X509v2CRLBuilder(new X500Name("CN=CrlStreamParserTest,O=Test"), thisUpdate);
+        if (withNextUpdate) {
+            crlBuilder.setNextUpdate(new Date(thisUpdate.getTime() + 3600000L));
+        }
+        for (int i = 0; i < entryCount; i++) {
+            final int reason = i % 3 == 0 ? RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE : RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+            crlBuilder.addCRLEntry(new BigInteger(64 + random.nextInt(96), random), new Date(thisUpdate.getTime() - random.nextInt(100000000)),
+                    reason);
+        }
+        crlBuilder.addExtension(Extension.cRLNumber, false, new CRLNumber(BigInteger.valueOf(crlNumber)));
+        final GeneralNames freshestCdpName = new GeneralNames(new GeneralName(GeneralName.uniformResourceIdentifier, new DERIA5String(FRESHEST_CDP)));
+        crlBuilder.addExtension(Extension.freshestCRL, false, new CRLDistPoint(new DistributionPoint[] {
+                new DistributionPoint(new DistributionPointName(freshestCdpName), null, null) }));
+        return crlBuilder.build(new JcaContentSignerBuilder("SHA256WithRSA").setProvider(BouncyCastleProvider.PROVIDER_NAME)
+                .build(keyPair.getPrivate())).getEncoded();
+    }
+
+    private static int indexOf(final byte[] bytes, final byte[] pattern) {
+        outer: for (int i = 0; i <= bytes.length - pattern.length; i++) {
+            for (int j = 0; j < pattern.length; j++) {
+                if (bytes[i + j] != pattern[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+}
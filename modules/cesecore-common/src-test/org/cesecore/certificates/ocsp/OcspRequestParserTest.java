@@ -0,0 +1,226 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.MessageDigest;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.X509CertificateHolder;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+import org.bouncycastle.cert.ocsp.OCSPReqBuilder;
+import org.bouncycastle.cert.ocsp.Req;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
+import org.bouncycastle.util.encoders.Hex;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Differential and fuzz tests of the OcspRequestParser against BouncyCastle's OCSPReq parser.
+ *
+ * @version $Id$
+ */
+public class OcspRequestParserTest {
+
+    private static final Extension NONCE = new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false,
+            new DEROctetString(Hex.decode("04100123456789abcdef0123456789abcdef")));
+
+    private static KeyPair keyPair;
+    private static X509Certificate caCertificate;
+    private static CertificateID certificateId;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        caCertificate = CertTools.genSelfCert("CN=OcspRequestParserTest", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        certificateId = new CertificateID(new SHA1DigestCalculator(MessageDigest.getInstance("SHA1")),
+                new JcaX509CertificateHolder(caCertificate), new BigInteger("1234567890abcdef", 16));
+    }
+
+    @Test
+    public void testSimpleRequestsMatchFullParser() throws Exception {
+        assertParsedLikeFullParser(new OCSPReqBuilder().addRequest(certificateId).build().getEncoded());
+        final OCSPReqBuilder nonceRequestBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        nonceRequestBuilder.setRequestExtensions(new Extensions(NONCE));
+        final OCSPReq nonceRequest = OcspRequestParser.parseSimpleRequest(assertParsedLikeFullParser(nonceRequestBuilder.build().getEncoded()));
+        assertEquals(NONCE, nonceRequest.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce));
+        // Small, negative and long serial numbers, and a hash algorithm without the NULL parameter
+        final AlgorithmIdentifier sha1WithoutParameters = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1);
+        for (final BigInteger serialNumber : Arrays.asList(BigInteger.ZERO, BigInteger.valueOf(127), BigInteger.valueOf(128), BigInteger.valueOf(-129),
+                new BigInteger(1, new byte[200]).setBit(1599))) {
+            final CertID certId = certificateId.toASN1Primitive();
+            assertParsedLikeFullParser(new OCSPReqBuilder().addRequest(new CertificateID(new CertID(certId.getHashAlgorithm(),
+                    certId.getIssuerNameHash(), certId.getIssuerKeyHash(), new ASN1Integer(serialNumber)))).build().getEncoded());
+            assertParsedLikeFullParser(new OCSPReqBuilder().addRequest(new CertificateID(new CertID(sha1WithoutParameters,
+                    certId.getIssuerNameHash(), certId.getIssuerKeyHash(), new ASN1Integer(serialNumber)))).build().getEncoded());
+        }
+    }
+
+    @Test
+    public void testUnusualRequestsAreLeftToFullParser() throws Exception {
+        // Multiple CertIDs
+        assertNull(OcspRequestParser.parseSimpleRequest(new OCSPReqBuilder().addRequest(certificateId)
+                .addRequest(CertificateID.deriveCertificateID(certificateId, BigInteger.ONE)).build().getEncoded()));
+        // No CertID
+        assertNull(OcspRequestParser.parseSimpleRequest(new OCSPReqBuilder().build().getEncoded()));
+        // Single request extension
+        assertNull(OcspRequestParser.parseSimpleRequest(new OCSPReqBuilder().addRequest(certificateId, new Extensions(NONCE)).build().getEncoded()));
+        // Other request extensions than a non-critical nonce
+        final OCSPReqBuilder criticalNonceBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        criticalNonceBuilder.setRequestExtensions(new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, true, NONCE.getExtnValue())));
+        assertNull(OcspRequestParser.parseSimpleRequest(criticalNonceBuilder.build().getEncoded()));
+        final OCSPReqBuilder otherExtensionBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        otherExtensionBuilder.setRequestExtensions(new Extensions(new Extension[] { NONCE,
+                new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_response, false, new DEROctetString(DERNull.INSTANCE)) }));
+        assertNull(OcspRequestParser.parseSimpleRequest(otherExtensionBuilder.build().getEncoded()));
+        // Requestor name
+        final OCSPReqBuilder requestorNameBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        requestorNameBuilder.setRequestorName(new GeneralName(new X500Name("CN=Requestor")));
+        assertNull(OcspRequestParser.parseSimpleRequest(requestorNameBuilder.build().getEncoded()));
+        // Signed request
+        final OCSPReqBuilder signedBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        signedBuilder.setRequestorName(new GeneralName(new X500Name("CN=OcspRequestParserTest")));
+        assertNull(OcspRequestParser.parseSimpleRequest(signedBuilder.build(new JcaContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA)
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(keyPair.getPrivate()),
+                new X509CertificateHolder[] { new JcaX509CertificateHolder(caCertificate) }).getEncoded()));
+        // Other hash algorithm than SHA-1
+        final CertificateID sha256CertificateId = new CertificateID(new JcaDigestCalculatorProviderBuilder().build().get(
+                new AlgorithmIdentifier(NISTObjectIdentifiers.id_sha256)), new JcaX509CertificateHolder(caCertificate), BigInteger.ONE);
+        assertNull(OcspRequestParser.parseSimpleRequest(new OCSPReqBuilder().addRequest(sha256CertificateId).build().getEncoded()));
+        // Trailing data, which the full parser ignores
+        final byte[] simpleRequest = new OCSPReqBuilder().addRequest(certificateId).build().getEncoded();
+        assertNull(OcspRequestParser.parseSimpleRequest(Arrays.copyOf(simpleRequest, simpleRequest.length + 1)));
+        // Non-DER encodings
+        assertNull(OcspRequestParser.parseSimpleRequest(toLongFormLength(simpleRequest)));
+        assertNull(OcspRequestParser.parseSimpleRequest(null));
+        assertNull(OcspRequestParser.parseSimpleRequest(new byte[0]));
+    }
+
+    /**
+     * Mutates valid requests at random and checks that anything the simple parser accepts is parsed identically by the full parser.
+     */
+    @Test
+    public void testFuzzedRequests() throws Exception {
+        final OCSPReqBuilder nonceRequestBuilder = new OCSPReqBuilder().addRequest(certificateId);
+        nonceRequestBuilder.setRequestExtensions(new Extensions(NONCE));
+        final List<byte[]> seeds = new ArrayList<byte[]>();
+        seeds.add(new OCSPReqBuilder().addRequest(certificateId).build().getEncoded());
+        seeds.add(nonceRequestBuilder.build().getEncoded());
+        final Random random = new Random(4711);
+        int acceptedCount = 0;
+        for (int i = 0; i < 20000; i++) {
+            final byte[] seed = seeds.get(random.nextInt(seeds.size()));
+            byte[] fuzzed;
+            switch (random.nextInt(4)) {
+            case 0:
+                // Flip a few bits
+                fuzzed = seed.clone();
+                for (int j = random.nextInt(3); j >= 0; j--) {
+                    fuzzed[random.nextInt(fuzzed.length)] ^= 1 << random.nextInt(8);
+                }
+                break;
+            case 1:
+                // Truncate
+                fuzzed = Arrays.copyOf(seed, random.nextInt(seed.length));
+                break;
+            case 2:
+                // Replace a byte with a random value
+                fuzzed = seed.clone();
+                fuzzed[random.nextInt(fuzzed.length)] = (byte) random.nextInt(256);
+                break;
+            default:
+                // Insert a random byte
+                final int offset = random.nextInt(seed.length + 1);
+                fuzzed = new byte[seed.length + 1];
+                System.arraycopy(seed, 0, fuzzed, 0, offset);
+                fuzzed[offset] = (byte) random.nextInt(256);
+                System.arraycopy(seed, offset, fuzzed, offset + 1, seed.length - offset);
+                break;
+            }
+            if (OcspRequestParser.parseSimpleRequest(fuzzed) != null) {
+                assertParsedLikeFullParser(fuzzed);
+                acceptedCount++;
+            }
+        }
+        // Some of the mutations (e.g. of the serial number or nonce) still result in simple requests
+        assertTrue(acceptedCount > 0);
+    }
+
+    /** Asserts that the simple parser accepts the request and that the result is identical to the one of the full parser. */
+    private byte[] assertParsedLikeFullParser(final byte[] encoded) throws Exception {
+        final OCSPReq simple = OcspRequestParser.parseSimpleRequest(encoded);
+        assertNotNull("Simple request was not accepted: " + new String(Hex.encode(encoded)), simple);
+        final OCSPReq full = new OCSPReq(encoded);
+        assertArrayEquals("Re-encoding should give the original request.", encoded, simple.getEncoded());
+        assertArrayEquals(full.getEncoded(), simple.getEncoded());
+        assertEquals(full.isSigned(), simple.isSigned());
+        assertEquals(full.getRequestorName(), simple.getRequestorName());
+        assertEquals(full.hasExtensions(), simple.hasExtensions());
+        assertEquals(full.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce), simple.getExtension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce));
+        final Req[] fullRequests = full.getRequestList();
+        final Req[] simpleRequests = simple.getRequestList();
+        assertEquals(1, fullRequests.length);
+        assertEquals(1, simpleRequests.length);
+        final CertificateID fullCertId = fullRequests[0].getCertID();
+        final CertificateID simpleCertId = simpleRequests[0].getCertID();
+        assertEquals(fullCertId, simpleCertId);
+        assertEquals(fullCertId.getSerialNumber(), simpleCertId.getSerialNumber());
+        assertArrayEquals(fullCertId.getIssuerNameHash(), simpleCertId.getIssuerNameHash());
+        assertArrayEquals(fullCertId.getIssuerKeyHash(), simpleCertId.getIssuerKeyHash());
+        assertEquals(fullRequests[0].getSingleRequestExtensions(), simpleRequests[0].getSingleRequestExtensions());
+        return encoded;
+    }
+
+    /** @return the encoding with the length of the outer SEQUENCE in a (non-DER) long form */
+    private static byte[] toLongFormLength(final byte[] encoded) {
+        assertTrue("Test request should have a short form length.", (encoded[1] & 0x80) == 0);
+        final byte[] result = new byte[encoded.length + 1];
+        result[0] = encoded[0];
+        result[1] = (byte) 0x81;
+        System.arraycopy(encoded, 1, result, 2, encoded.length - 1);
+        return result;
+    }
+}
@@ -0,0 +1,109 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Properties;
+
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keybind.impl.OcspKeyBinding;
+import org.cesecore.keys.token.CryptoToken;
+import org.cesecore.keys.token.CryptoTokenFactory;
+import org.cesecore.keys.token.SoftCryptoToken;
+import org.cesecore.keys.token.p11.exception.NoSuchSlotException;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the staging and private key reuse of the OcspSigningCache.
+ *
+ * @version $Id$
+ */
+public class OcspSigningCacheTest {
+
+    private static final String KEY_ALIAS = "signKey";
+    private static final String CA_DN = "CN=OcspSigningCacheTest";
+
+    private static CryptoToken cryptoToken;
+    private static X509Certificate caCertificate;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        cryptoToken = getNewCryptoToken();
+        cryptoToken.generateKeyPair("1024", KEY_ALIAS);
+        final KeyPair keyPair = new KeyPair(cryptoToken.getPublicKey(KEY_ALIAS), cryptoToken.getPrivateKey(KEY_ALIAS));
+        caCertificate = CertTools.genSelfCert(CA_DN, 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true, cryptoToken.getSignProviderName());
+    }
+
+    @Test
+    public void testPrivateKeyReferenceReuse() throws Exception {
+        final OcspSigningCacheEntry entry = new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Arrays.asList(caCertificate), null,
+                cryptoToken.getPrivateKey(KEY_ALIAS), cryptoToken.getSignProviderName(), null, OcspKeyBinding.ResponderIdType.KEYHASH);
+        commit(entry);
+        assertSame("Committed entry should be returned.", entry, OcspSigningCache.INSTANCE.getEntry(entry.getCertificateID().get(0)));
+        assertSame("Private key of unchanged responder should be reused.", entry.getPrivateKey(),
+                OcspSigningCache.INSTANCE.getPrivateKeyReference(cryptoToken, KEY_ALIAS, caCertificate));
+        assertNull("A different alias must not reuse the key.", OcspSigningCache.INSTANCE.getPrivateKeyReference(cryptoToken, "otherKey", caCertificate));
+        // A new instance of the same crypto token (e.g. after an edit) must not reuse the key
+        final CryptoToken otherInstance = getNewCryptoToken();
+        assertNull("Another crypto token instance must not reuse the key.", OcspSigningCache.INSTANCE.getPrivateKeyReference(otherInstance, KEY_ALIAS, caCertificate));
+        // Committing without the reference forgets it
+        commit();
+        assertNull("Reference should be gone after a reload that did not stage it.",
+                OcspSigningCache.INSTANCE.getPrivateKeyReference(cryptoToken, KEY_ALIAS, caCertificate));
+    }
+
+    @Test
+    public void testAddSingleEntryDoesNotModifyCommittedMap() throws Exception {
+        commit();
+        // A view of the committed map, like the one a request thread could be iterating over
+        final Collection<OcspSigningCacheEntry> entriesBefore = OcspSigningCache.INSTANCE.getEntries();
+        assertEquals(0, entriesBefore.size());
+        final OcspSigningCacheEntry entry = new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Arrays.asList(caCertificate), null,
+                cryptoToken.getPrivateKey(KEY_ALIAS), cryptoToken.getSignProviderName(), null, OcspKeyBinding.ResponderIdType.KEYHASH);
+        OcspSigningCache.INSTANCE.addSingleEntry(entry);
+        assertEquals("Previously committed map should be unchanged.", 0, entriesBefore.size());
+        assertSame("Added entry should be returned.", entry, OcspSigningCache.INSTANCE.getEntry(entry.getCertificateID().get(0)));
+    }
+
+    private static CryptoToken getNewCryptoToken() throws NoSuchSlotException {
+        final Properties cryptoTokenProperties = new Properties();
+        cryptoTokenProperties.setProperty(CryptoToken.AUTOACTIVATE_PIN_PROPERTY, "foo1234");
+        return CryptoTokenFactory.createCryptoToken(SoftCryptoToken.class.getName(), cryptoTokenProperties, null, 17, "OcspSigningCacheTest");
+    }
+
+    private void commit(final OcspSigningCacheEntry... entries) throws Exception {
+        OcspSigningCache.INSTANCE.stagingStart();
+        try {
+            for (final OcspSigningCacheEntry entry : entries) {
+                OcspSigningCache.INSTANCE.stagingAddPrivateKeyReference(cryptoToken, KEY_ALIAS, entry.getSigningCertificate(), entry.getPrivateKey());
+                OcspSigningCache.INSTANCE.stagingAdd(entry);
+            }
+            OcspSigningCache.INSTANCE.stagingCommit(null);
+        } finally {
+            OcspSigningCache.INSTANCE.stagingRelease();
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.metrics;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Test of the OCSP metrics histograms and text format.
+ *
+ * @version $Id$
+ */
+public class OcspMetricsTest {
+
+    @Test
+    public void testHistogramBuckets() {
+        final LatencyHistogram histogram = new LatencyHistogram();
+        histogram.observe(-1L);
+        histogram.observe(50000L);
+        histogram.observe(50001L);
+        histogram.observe(20000000000L);
+        final long[] cumulativeCounts = histogram.getCumulativeCounts();
+        assertEquals(LatencyHistogram.getBucketCount() + 1, cumulativeCounts.length);
+        assertEquals("Negative and boundary values belong to the first bucket.", 2L, cumulativeCounts[0]);
+        assertEquals(3L, cumulativeCounts[1]);
+        assertEquals("Values above the last boundary are only in the +Inf bucket.", 3L, cumulativeCounts[cumulativeCounts.length - 2]);
+        assertEquals(4L, cumulativeCounts[cumulativeCounts.length - 1]);
+        assertEquals(50000L + 50001L + 20000000000L, histogram.getSumNanos());
+    }
+
+    @Test
+    public void testTextFormat() {
+        final long[] parseCountsBefore = OcspMetrics.INSTANCE.getStageDurations(OcspMetrics.Stage.REQUEST_PARSE).getCumulativeCounts();
+        OcspMetrics.INSTANCE.observeDuration(OcspMetrics.Stage.REQUEST_PARSE, 1000000L);
+        final long[] parseCountsAfter = OcspMetrics.INSTANCE.getStageDurations(OcspMetrics.Stage.REQUEST_PARSE).getCumulativeCounts();
+        assertEquals(parseCountsBefore[parseCountsBefore.length - 1] + 1, parseCountsAfter[parseCountsAfter.length - 1]);
+        assertArrayEquals("1 ms should not be counted in the buckets below 1 ms.", new long[] { parseCountsBefore[0], parseCountsBefore[3] },
+                new long[] { parseCountsAfter[0], parseCountsAfter[3] });
+        OcspMetrics.INSTANCE.countResponse(0);
+        OcspMetrics.INSTANCE.countCertStatus(OcspMetrics.CertStatus.REVOKED);
+        OcspMetrics.INSTANCE.countResponder("CN=Responder \"1\",O=Test\\Org");
+        OcspMetrics.INSTANCE.countSigningCacheLookup(true);
+        final String text = OcspMetrics.INSTANCE.getTextFormat();
+        assertTrue(text, text.contains("# TYPE ejbca_ocsp_stage_duration_seconds histogram\n"));
+        assertTrue(text, text.contains("ejbca_ocsp_stage_duration_seconds_bucket{stage=\"request_parse\",le=\"0.001\"} "));
+        assertTrue(text, text.contains("ejbca_ocsp_stage_duration_seconds_bucket{stage=\"sign\",le=\"+Inf\"} "));
+        assertTrue(text, text.contains("ejbca_ocsp_responses_total{status=\"successful\"} "));
+        assertTrue(text, text.contains("ejbca_ocsp_cert_status_total{status=\"revoked\"} "));
+        assertTrue("Label values should be escaped: " + text,
+                text.contains("ejbca_ocsp_responder_responses_total{responder=\"CN=Responder \\\"1\\\",O=Test\\\\Org\"} 1\n"));
+        assertTrue(text, text.contains("ejbca_ocsp_signing_cache_lookups_total{result=\"hit\"} "));
+        assertTrue(text, text.contains("ejbca_ocsp_signing_cache_entries "));
+    }
+}
@@ -45,6 +45,8 @@ public class PKCS11TestUtils {
     private static final String PROTECTSERVER_PKCS11_LINUX64_LIB = "/opt/ETcpsdk/lib/linux-x86_64/libcryptoki.so";
     private static final String PROTECTSERVER_PKCS11_LINUX32_LIB = "/opt/ETcpsdk/lib/linux-i386/libcryptoki.so";
     private static final String PROTECTSERVER_PKCS11_WINDOWS_LIB = "C:/Program Files/SafeNet/ProtectToolkit C SDK/bin/sw/cryptoki.dll";
+    private static final String SOFTHSM2_PKCS11_LINUX_LIB = "/usr/lib/softhsm/libsofthsm2.so";
+    private static final String SOFTHSM2_PKCS11_LINUX64_LIB = "/usr/lib/x86_64-linux-gnu/softhsm/libsofthsm2.so";
 
     
     public static String getHSMProvider() {
@@ -56,6 +58,8 @@ public class PKCS11TestUtils {
         final File protectServerLinux64 = new File(PROTECTSERVER_PKCS11_LINUX64_LIB);
         final File protectServerLinux32 = new File(PROTECTSERVER_PKCS11_LINUX32_LIB);
         final File protectServerWindows = new File(PROTECTSERVER_PKCS11_WINDOWS_LIB);
+        final File softHsm2Linux = new File(SOFTHSM2_PKCS11_LINUX_LIB);
+        final File softHsm2Linux64 = new File(SOFTHSM2_PKCS11_LINUX64_LIB);
         String ret = null;
         if (utimacoCSLinux.exists()) {
             ret = "SunPKCS11-libcs2_pkcs11.so-slot1";
@@ -69,6 +73,8 @@ public class PKCS11TestUtils {
             ret = "SunPKCS11-libcryptoki.so-slot1";
         } else if (protectServerWindows.exists()) {
             ret = "SunPKCS11-cryptoki.dll-slot1";
+        } else if (softHsm2Linux.exists() || softHsm2Linux64.exists()) {
+            ret = "SunPKCS11-libsofthsm2.so-slot1";
         }
         // Override auto-detected properties if configuration exists
         ret = getSystemTestsProperties().getProperty(PKCS11_SECURITY_PROVIDER, ret);
@@ -87,6 +93,8 @@ public class PKCS11TestUtils {
         final File protectServerLinux64 = new File(PROTECTSERVER_PKCS11_LINUX64_LIB);
         final File protectServerLinux32 = new File(PROTECTSERVER_PKCS11_LINUX32_LIB);
         final File protectServerWindows = new File(PROTECTSERVER_PKCS11_WINDOWS_LIB);
+        final File softHsm2Linux = new File(SOFTHSM2_PKCS11_LINUX_LIB);
+        final File softHsm2Linux64 = new File(SOFTHSM2_PKCS11_LINUX64_LIB);
         String ret = null;
         if (utimacoCSLinux.exists()) {
             ret = utimacoCSLinux.getAbsolutePath();
@@ -104,6 +112,10 @@ public class PKCS11TestUtils {
             ret = protectServerLinux.getAbsolutePath();
         } else if (protectServerWindows.exists()) {
             ret = protectServerWindows.getAbsolutePath();
+        } else if (softHsm2Linux64.exists()) {
+            ret = softHsm2Linux64.getAbsolutePath();
+        } else if (softHsm2Linux.exists()) {
+            ret = softHsm2Linux.getAbsolutePath();
         }
         // Override auto-detected properties if configuration exists
         ret = getSystemTestsProperties().getProperty(PKCS11_LIBRARY, ret);
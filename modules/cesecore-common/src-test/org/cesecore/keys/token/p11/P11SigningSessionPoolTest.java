@@ -0,0 +1,200 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.token.p11;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.OutputStream;
+import java.security.KeyPair;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.Security;
+import java.security.Signature;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.keys.token.CryptoToken;
+import org.cesecore.keys.token.CryptoTokenTestBase;
+import org.cesecore.keys.token.PKCS11CryptoTokenTest;
+import org.cesecore.keys.token.PKCS11TestUtils;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the pool of signing sessions, using a software key for the pool itself, and a PKCS#11 key for the throughput benchmark.
+ *
+ * The benchmark is skipped if no PKCS#11 library is found. To run it against SoftHSM 2, initialize a token and configure it in
+ * systemtests.properties, for example with pkcs11.slottype=SLOT_LABEL, pkcs11.slottypevalue=ejbca and pkcs11.slotpin=userpin1.
+ *
+ * @version $Id$
+ */
+public class P11SigningSessionPoolTest {
+
+    private static final Logger log = Logger.getLogger(P11SigningSessionPoolTest.class);
+
+    private static final String SIGNATURE_ALGORITHM = "SHA256WithRSA";
+    private static final int THREADS = 8;
+    private static final int SIGNATURES_PER_THREAD = 50;
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Test
+    public void testConcurrentSigning() throws Exception {
+        final KeyPair keyPair = KeyTools.genKeys("1024", "RSA");
+        final P11SigningSessionPool pool = new P11SigningSessionPool(BouncyCastleProvider.PROVIDER_NAME, SIGNATURE_ALGORITHM, keyPair.getPrivate(), 2,
+                10000, 60000);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < 4; i++) {
+                final int thread = i;
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        for (int j = 0; j < 25; j++) {
+                            final byte[] data = ("data " + thread + " " + j).getBytes();
+                            assertTrue("Pooled signature should verify.", verify(keyPair.getPublic(), data, pool.sign(data)));
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue("No more sessions than the pool size should have been created.", pool.getIdleSessions() <= pool.getSize());
+        assertEquals("A failed health check should not be reported for a working key.", null, pool.healthCheck());
+    }
+
+    @Test
+    public void testContentSigner() throws Exception {
+        final KeyPair keyPair = KeyTools.genKeys("1024", "RSA");
+        final P11SigningSessionPool pool = new P11SigningSessionPool(BouncyCastleProvider.PROVIDER_NAME, SIGNATURE_ALGORITHM, keyPair.getPrivate(), 1,
+                10000, 60000);
+        final byte[] data = "content signer data".getBytes();
+        for (int i = 0; i < 2; i++) {
+            // The same content signer may be used for several signatures
+            final ContentSigner signer = pool.getContentSigner();
+            assertEquals(new DefaultSignatureAlgorithmIdentifierFinder().find(SIGNATURE_ALGORITHM), signer.getAlgorithmIdentifier());
+            final OutputStream os = signer.getOutputStream();
+            os.write(data, 0, 10);
+            os.write(data, 10, data.length - 10);
+            os.close();
+            assertTrue("Content signer signature should verify.", verify(keyPair.getPublic(), data, signer.getSignature()));
+        }
+    }
+
+    @Test
+    public void testNoPoolForSoftwareProvider() throws Exception {
+        final KeyPair keyPair = KeyTools.genKeys("1024", "RSA");
+        assertNull("Keys of software providers should be used without a pool.",
+                P11SigningSessionPool.getInstance(SIGNATURE_ALGORITHM, BouncyCastleProvider.PROVIDER_NAME, keyPair.getPrivate()));
+    }
+
+    /** Compares the signing throughput with a new content signer for every signature, as before, with the throughput of the pool. */
+    @Test
+    public void testSigningThroughputPkcs11() throws Exception {
+        Assume.assumeTrue("No PKCS#11 library found.", PKCS11TestUtils.getHSMLibrary() != null);
+        final CryptoToken cryptoToken = PKCS11CryptoTokenTest.createPKCS11Token();
+        final String alias = "signingpoolbenchmark";
+        try {
+            cryptoToken.activate(CryptoTokenTestBase.tokenpin.toCharArray());
+            cryptoToken.generateKeyPair("2048", alias);
+            final PrivateKey privateKey = cryptoToken.getPrivateKey(alias);
+            final PublicKey publicKey = cryptoToken.getPublicKey(alias);
+            final String provider = cryptoToken.getSignProviderName();
+            final P11SigningSessionPool pool = P11SigningSessionPool.getInstance(SIGNATURE_ALGORITHM, provider, privateKey);
+            assertNotNull("A pool should be used for PKCS#11 keys.", pool);
+            final long unpooledTime = runSigners(publicKey, new Callable<ContentSigner>() {
+                @Override
+                public ContentSigner call() throws Exception {
+                    return new JcaContentSignerBuilder(SIGNATURE_ALGORITHM).setProvider(provider).build(privateKey);
+                }
+            });
+            final long pooledTime = runSigners(publicKey, new Callable<ContentSigner>() {
+                @Override
+                public ContentSigner call() {
+                    return pool.getContentSigner();
+                }
+            });
+            final int signatures = THREADS * SIGNATURES_PER_THREAD;
+            log.info("Signed " + signatures + " times with " + THREADS + " threads: " + (signatures * 1000L / Math.max(unpooledTime, 1))
+                    + " signatures/s with a new signer for each signature, " + (signatures * 1000L / Math.max(pooledTime, 1))
+                    + " signatures/s with a pool of size " + pool.getSize() + ".");
+        } finally {
+            cryptoToken.deleteEntry(alias);
+            cryptoToken.deactivate();
+            Security.removeProvider(PKCS11TestUtils.getHSMProvider());
+        }
+    }
+
+    /** @return the time in milliseconds to sign with signers from the factory concurrently */
+    private long runSigners(final PublicKey publicKey, final Callable<ContentSigner> signerFactory) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        try {
+            final long startTime = System.currentTimeMillis();
+            final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+            for (int i = 0; i < THREADS; i++) {
+                futures.add(executor.submit(new Callable<Void>() {
+                    @Override
+                    public Void call() throws Exception {
+                        final byte[] data = new byte[1024];
+                        for (int j = 0; j < SIGNATURES_PER_THREAD; j++) {
+                            final ContentSigner signer = signerFactory.call();
+                            signer.getOutputStream().write(data);
+                            final byte[] signature = signer.getSignature();
+                            if (j == 0) {
+                                assertTrue("Signature should verify.", verify(publicKey, data, signature));
+                            }
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (final Future<Void> future : futures) {
+                future.get();
+            }
+            return System.currentTimeMillis() - startTime;
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static boolean verify(final PublicKey publicKey, final byte[] data, final byte[] signature) throws Exception {
+        final Signature verifier = Signature.getInstance(SIGNATURE_ALGORITHM, BouncyCastleProvider.PROVIDER_NAME);
+        verifier.initVerify(publicKey);
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
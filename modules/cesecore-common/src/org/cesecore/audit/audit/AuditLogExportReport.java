@@ -12,6 +12,9 @@
  *************************************************************************/
 package org.cesecore.audit.audit;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * When we export logs we also validate them. This is an extension of the
  * validation report where the resulting exported files are available.
@@ -23,6 +26,8 @@ public class AuditLogExportReport extends AuditLogValidationReport {
 	private static final long serialVersionUID = 1L;
 	private String exportedFile;
 	private String signatureFile;
+	private final List<String> exportedFiles = new ArrayList<String>();
+	private final List<String> signatureFiles = new ArrayList<String>();
 	private int exportCount = 0;
 	
 	public AuditLogExportReport() {
@@ -49,11 +54,32 @@ public class AuditLogExportReport extends AuditLogValidationReport {
 		return signatureFile;
 	}
 
+	/** Full pathnames to one of the exported files and its signature, when the export is partitioned into several files. */
+	public void addExportedFile(final String exportedFile, final String signatureFile) {
+		exportedFiles.add(exportedFile);
+		signatureFiles.add(signatureFile);
+	}
+
+	/** @return Full pathnames to the exported files when the export is partitioned into several files, or an empty list. */
+	public List<String> getExportedFiles() {
+		return exportedFiles;
+	}
+
+	/** @return Full pathnames to the signatures of the exported files, in the same order as {@link #getExportedFiles()}. */
+	public List<String> getSignatureFiles() {
+		return signatureFiles;
+	}
+
 	/** Increase the number of exported log entries by one. */
 	public void incExportCount() {
 		exportCount++;
 	}
 
+	/** Increase the number of exported log entries. */
+	public void addExportCount(final int count) {
+		exportCount += count;
+	}
+
 	/** @return the number of exported log entries. */
 	public int getExportCount() {
 		return exportCount;
@@ -41,8 +41,10 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.SimpleTimeZone;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
@@ -121,7 +123,6 @@ import org.cesecore.certificates.certificate.IllegalKeyException;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.certificates.certificate.certextensions.CertificateExtension;
 import org.cesecore.certificates.certificate.certextensions.CertificateExtensionException;
-import org.cesecore.certificates.certificate.certextensions.CertificateExtensionFactory;
 import org.cesecore.certificates.certificate.certextensions.CustomCertificateExtension;
 import org.cesecore.certificates.certificate.request.RequestMessage;
 import org.cesecore.certificates.certificate.request.RequestMessageUtils;
@@ -145,6 +146,7 @@ import org.cesecore.keys.token.CryptoToken;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.keys.token.IllegalCryptoTokenException;
 import org.cesecore.keys.token.NullCryptoToken;
+import org.cesecore.keys.token.p11.P11SigningSessionPool;
 import org.cesecore.keys.util.KeyTools;
 import org.cesecore.util.CeSecoreNameStyle;
 import org.cesecore.util.CertTools;
@@ -194,6 +196,11 @@ public class X509CA extends CA implements Serializable {
     protected static final String NAMECHANGED = "namechanged";
 
     private static final CertificateTransparency ct = CertificateTransparencyFactory.getInstance();
+    /** Maximum number of different certificate profiles to keep issuance templates for */
+    private static final int MAX_CERTIFICATE_TEMPLATES = 64;
+
+    /** Issuance templates by hash code of the certificate profile data, see {@link X509CertificateTemplate} */
+    private transient volatile Map<Integer, X509CertificateTemplate> certificateTemplates = null;
 
     // Public Methods
     /** Creates a new instance of CA, this constructor should be used when a new CA is created */
@@ -1139,26 +1146,26 @@ public class X509CA extends CA implements Serializable {
         // Third, check for standard Certificate Extensions that should be added.
         // Standard certificate extensions are defined in CertificateProfile and CertificateExtensionFactory
         // and implemented in package org.ejbca.core.model.certextensions.standard
-        final CertificateExtensionFactory fact = CertificateExtensionFactory.getInstance();
-        final List<String> usedStdCertExt = certProfile.getUsedStandardCertificateExtensions();
-        final Iterator<String> certStdExtIter = usedStdCertExt.iterator();
+        // Extensions that only depend on the profile and CA are taken pre-encoded from the issuance template.
         overridenexts = extgen.generate();
-        while (certStdExtIter.hasNext()) {
-            final String oid = certStdExtIter.next();
+        for (final X509CertificateTemplate.TemplateExtension templateExt : getCertificateTemplate(certProfile).getStandardExtensions()) {
             // We don't want to try to add standard extensions with the same oid if we have already added them
             // from the request, if AllowExtensionOverride is enabled.
             // Two extensions with the same oid is not allowed in the standard.
-            if (overridenexts.getExtension(new ASN1ObjectIdentifier(oid)) == null) {
-                final CertificateExtension certExt = fact.getStandardCertificateExtension(oid, certProfile);
-                if (certExt != null) {
-                    final byte[] value = certExt.getValueEncoded(subject, this, certProfile, publicKey, caPublicKey, val);
-                    if (value != null) {
-                        extgen.addExtension(new ASN1ObjectIdentifier(certExt.getOID()), certExt.isCriticalFlag(), value);
-                    }
+            if (overridenexts.getExtension(templateExt.getOid()) == null) {
+                final CertificateExtension certExt = templateExt.getCertificateExtension();
+                final byte[] value;
+                if (templateExt.isStatic()) {
+                    value = templateExt.getStaticValue();
+                } else {
+                    value = certExt.getValueEncoded(subject, this, certProfile, publicKey, caPublicKey, val);
+                }
+                if (value != null) {
+                    extgen.addExtension(new ASN1ObjectIdentifier(certExt.getOID()), certExt.isCriticalFlag(), value);
                 }
             } else {
                 if (log.isDebugEnabled()) {
-                    log.debug("Extension with oid " + oid + " has been overridden, standard extension will not be added.");
+                    log.debug("Extension with oid " + templateExt.getOid().getId() + " has been overridden, standard extension will not be added.");
                 }
             }
         }
@@ -1243,8 +1250,7 @@ public class X509CA extends CA implements Serializable {
                  *  It should have CA=true and ExtKeyUsage=PRECERTIFICATE_SIGNING_OID,
                  *  and should not have any other key usages.
                  */
-                final ContentSigner signer = new BufferingContentSigner(
-                        new JcaContentSignerBuilder(sigAlg).setProvider(provider).build(caPrivateKey), 20480);
+                final ContentSigner signer = getContentSigner(sigAlg, provider, caPrivateKey);
                 final X509CertificateHolder certHolder = precertbuilder.build(signer);
                 final X509Certificate cert = CertTools.getCertfromByteArray(certHolder.getEncoded(), X509Certificate.class);
 
@@ -1300,7 +1306,7 @@ public class X509CA extends CA implements Serializable {
         if (log.isTraceEnabled()) {
             log.trace(">certgen.generate");
         }
-        final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(provider).build(caPrivateKey), 20480);
+        final ContentSigner signer = getContentSigner(sigAlg, provider, caPrivateKey);
         final X509CertificateHolder certHolder = certbuilder.build(signer);
         X509Certificate cert;
         try {
@@ -1386,6 +1392,42 @@ public class X509CA extends CA implements Serializable {
         return generateCRL(cryptoToken, certs, getDeltaCRLPeriod(), crlnumber, true, basecrlnumber);
     }
 
+    /**
+     * @return the issuance template for the certificate profile, which is created if there is none for the profile or if the profile or
+     * the CA settings it depends on have changed since it was created.
+     */
+    private X509CertificateTemplate getCertificateTemplate(final CertificateProfile certProfile) throws CertificateExtensionException {
+        Map<Integer, X509CertificateTemplate> templates = certificateTemplates;
+        if (templates == null) {
+            templates = new ConcurrentHashMap<Integer, X509CertificateTemplate>();
+            certificateTemplates = templates;
+        }
+        final Integer key = Integer.valueOf(certProfile.getRawData().hashCode());
+        X509CertificateTemplate template = templates.get(key);
+        if (template == null || !template.matches(this, certProfile)) {
+            template = X509CertificateTemplate.create(this, certProfile);
+            if (templates.size() >= MAX_CERTIFICATE_TEMPLATES) {
+                templates.clear();
+            }
+            templates.put(key, template);
+            if (log.isDebugEnabled()) {
+                log.debug("Created issuance template for certificate profile with " + template.getStandardExtensions().size() + " standard extensions for CA " + getName() + ".");
+            }
+        }
+        return template;
+    }
+
+    /**
+     * @return a content signer that uses the signing session pool of the key if it is a PKCS#11 key, or else a new signer for the key
+     */
+    private static ContentSigner getContentSigner(final String sigAlg, final String provider, final PrivateKey privateKey) throws OperatorCreationException {
+        final P11SigningSessionPool signingSessionPool = P11SigningSessionPool.getInstance(sigAlg, provider, privateKey);
+        if (signingSessionPool != null) {
+            return signingSessionPool.getContentSigner();
+        }
+        return new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(provider).build(privateKey), 20480);
+    }
+
     /**
      * Constructs the SubjectAlternativeName extension that will end up on the generated certificate.
      * 
@@ -1649,6 +1691,7 @@ public class X509CA extends CA implements Serializable {
         }
         final String alias = getCAToken().getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CRLSIGN);
         try {
+            // A CRL can be very large, so it is streamed into a signer of its own rather than collected in memory for a pooled signing session
             final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(sigAlg).setProvider(cryptoToken.getSignProviderName()).build(cryptoToken.getPrivateKey(alias)), 20480);
             crl = crlgen.build(signer);
         } catch (OperatorCreationException e) {
@@ -0,0 +1,150 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ca;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.x509.Extension;
+import org.cesecore.certificates.certificate.certextensions.CertificateExtension;
+import org.cesecore.certificates.certificate.certextensions.CertificateExtensionException;
+import org.cesecore.certificates.certificate.certextensions.CertificateExtensionFactory;
+import org.cesecore.certificates.certificateprofile.CertificateProfile;
+import org.cesecore.util.CertTools;
+
+/**
+ * The parts of issuing a certificate with an X509CA that only depend on the CA and the certificate profile, and therefore are the same for
+ * every certificate issued with the same CA and profile.
+ *
+ * The standard certificate extensions of the profile are instantiated once, and the values of the extensions that do not depend on the
+ * subject, public key or validity of the certificate (basic constraints, key usages, CRL distribution points, AIA, certificate policies...)
+ * are encoded once. A template is only re-used as long as the profile and the CA settings used by these extensions are unchanged.
+ *
+ * @version $Id$
+ */
+final class X509CertificateTemplate {
+
+    /** Standard extensions where the value only depends on the certificate profile and the CA settings in {@link #getCaValues(X509CA)} */
+    private static final Set<String> STATIC_EXTENSION_OIDS = new HashSet<String>(Arrays.asList(
+            Extension.basicConstraints.getId(),
+            Extension.keyUsage.getId(),
+            Extension.extendedKeyUsage.getId(),
+            Extension.cRLDistributionPoints.getId(),
+            Extension.freshestCRL.getId(),
+            Extension.certificatePolicies.getId(),
+            Extension.authorityInfoAccess.getId(),
+            Extension.qCStatements.getId(),
+            OCSPObjectIdentifiers.id_pkix_ocsp_nocheck.getId(),
+            CertTools.OID_MSTEMPLATE,
+            "2.23.136.1.1.6.2" // DocumentTypeList
+            ));
+
+    /** A standard extension of the profile, with the value encoded in advance if it does not depend on the issued certificate. */
+    static final class TemplateExtension {
+        private final ASN1ObjectIdentifier oid;
+        private final CertificateExtension certificateExtension;
+        private final byte[] staticValue;
+        private final boolean isStatic;
+
+        private TemplateExtension(final ASN1ObjectIdentifier oid, final CertificateExtension certificateExtension, final byte[] staticValue,
+                final boolean isStatic) {
+            this.oid = oid;
+            this.certificateExtension = certificateExtension;
+            this.staticValue = staticValue;
+            this.isStatic = isStatic;
+        }
+
+        /** @return the OID the extension is used with in the certificate profile */
+        ASN1ObjectIdentifier getOid() {
+            return oid;
+        }
+
+        /** @return the extension, initialized with the certificate profile */
+        CertificateExtension getCertificateExtension() {
+            return certificateExtension;
+        }
+
+        /** @return true if the value was encoded when the template was created, and {@link #getStaticValue()} should be used */
+        boolean isStatic() {
+            return isStatic;
+        }
+
+        /** @return the encoded value of a static extension, or null if the extension should not be added */
+        byte[] getStaticValue() {
+            return staticValue;
+        }
+    }
+
+    private final Map<Object, Object> profileData;
+    private final List<Object> caValues;
+    private final List<TemplateExtension> standardExtensions;
+
+    private X509CertificateTemplate(final Map<Object, Object> profileData, final List<Object> caValues, final List<TemplateExtension> standardExtensions) {
+        this.profileData = profileData;
+        this.caValues = caValues;
+        this.standardExtensions = standardExtensions;
+    }
+
+    /**
+     * Creates a template for issuing certificates with the CA and certificate profile.
+     *
+     * @throws CertificateExtensionException if the value of a static extension could not be created from the profile
+     */
+    static X509CertificateTemplate create(final X509CA ca, final CertificateProfile certProfile) throws CertificateExtensionException {
+        final CertificateProfile profileCopy;
+        try {
+            // Take a copy, so the template is not affected if the caller modifies the profile after issuance
+            profileCopy = certProfile.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+        final CertificateExtensionFactory fact = CertificateExtensionFactory.getInstance();
+        final List<TemplateExtension> standardExtensions = new ArrayList<TemplateExtension>();
+        for (final String oid : profileCopy.getUsedStandardCertificateExtensions()) {
+            final CertificateExtension certExt = fact.getStandardCertificateExtension(oid, profileCopy);
+            if (certExt != null) {
+                if (STATIC_EXTENSION_OIDS.contains(oid)) {
+                    final byte[] value = certExt.getValueEncoded(null, ca, profileCopy, null, null, null);
+                    standardExtensions.add(new TemplateExtension(new ASN1ObjectIdentifier(oid), certExt, value, true));
+                } else {
+                    standardExtensions.add(new TemplateExtension(new ASN1ObjectIdentifier(oid), certExt, null, false));
+                }
+            }
+        }
+        return new X509CertificateTemplate(profileCopy.getRawData(), getCaValues(ca), Collections.unmodifiableList(standardExtensions));
+    }
+
+    /** @return true if this template was created from the same certificate profile and CA settings */
+    boolean matches(final X509CA ca, final CertificateProfile certProfile) {
+        return profileData.equals(certProfile.getRawData()) && caValues.equals(getCaValues(ca));
+    }
+
+    /** @return the standard extensions used by the certificate profile, in the order they are listed in the profile */
+    List<TemplateExtension> getStandardExtensions() {
+        return standardExtensions;
+    }
+
+    /** @return the CA settings that the values of the static extensions depend on */
+    private static List<Object> getCaValues(final X509CA ca) {
+        final List<String> caIssuerUris = ca.getCertificateAiaDefaultCaIssuerUri();
+        return Arrays.asList((Object) ca.getDefaultCRLDistPoint(), ca.getDefaultCRLIssuer(), ca.getCADefinedFreshestCRL(), ca.getDefaultOCSPServiceLocator(),
+                caIssuerUris == null ? null : new ArrayList<String>(caIssuerUris), Boolean.valueOf(ca.getUseUTF8PolicyText()));
+    }
+}
@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.io.Serializable;
+import java.util.Comparator;
+
+/**
+ * A position in the certificate change feed, that is the update time and fingerprint of the last certificate that was read.
+ *
+ * The feed is ordered by update time and then by fingerprint, so certificates with the same update time are neither skipped nor read twice
+ * when a page ends between them. The String form "updateTime:fingerprint" is handed to clients, who should only pass back what they got.
+ *
+ * @version $Id$
+ */
+public final class CertificateChangeCursor implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The position before the first change */
+    public static final CertificateChangeCursor START = new CertificateChangeCursor(-1, "");
+
+    /** Orders certificates in the same way as the certificate change feed */
+    public static final Comparator<CertificateInfo> ORDER = new Comparator<CertificateInfo>() {
+        @Override
+        public int compare(final CertificateInfo o1, final CertificateInfo o2) {
+            final int ret = o1.getUpdateTime().compareTo(o2.getUpdateTime());
+            return ret != 0 ? ret : o1.getFingerprint().compareTo(o2.getFingerprint());
+        }
+    };
+
+    private final long updateTime;
+    private final String fingerprint;
+
+    /**
+     * @param updateTime the update time of the last certificate that was read, or -1 for the start of the feed
+     * @param fingerprint the fingerprint of the last certificate that was read, or an empty String to include all certificates with the
+     * update time
+     */
+    public CertificateChangeCursor(final long updateTime, final String fingerprint) {
+        this.updateTime = updateTime;
+        this.fingerprint = fingerprint == null ? "" : fingerprint;
+    }
+
+    /** @return the position of the given certificate in the feed, so that the next page starts after it */
+    public static CertificateChangeCursor after(final CertificateInfo certificateInfo) {
+        return new CertificateChangeCursor(certificateInfo.getUpdateTime().getTime(), certificateInfo.getFingerprint());
+    }
+
+    /**
+     * @param cursor a cursor in the form returned by {@link #toString()}, or null or an empty String for the start of the feed
+     * @return the position in the feed
+     * @throws IllegalArgumentException if the cursor is malformed
+     */
+    public static CertificateChangeCursor parse(final String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return START;
+        }
+        final int separator = cursor.indexOf(':');
+        if (separator < 1) {
+            throw new IllegalArgumentException("Malformed certificate change cursor: " + cursor);
+        }
+        final long updateTime;
+        try {
+            updateTime = Long.parseLong(cursor.substring(0, separator));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Malformed certificate change cursor: " + cursor, e);
+        }
+        if (updateTime < -1) {
+            throw new IllegalArgumentException("Malformed certificate change cursor: " + cursor);
+        }
+        return new CertificateChangeCursor(updateTime, cursor.substring(separator + 1));
+    }
+
+    /** @return the update time of the last certificate that was read, or -1 for the start of the feed */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    /** @return the fingerprint of the last certificate that was read, never null */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (!(obj instanceof CertificateChangeCursor)) {
+            return false;
+        }
+        final CertificateChangeCursor other = (CertificateChangeCursor) obj;
+        return updateTime == other.updateTime && fingerprint.equals(other.fingerprint);
+    }
+
+    @Override
+    public int hashCode() {
+        return (int) (updateTime ^ (updateTime >>> 32)) * 31 + fingerprint.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return updateTime + ":" + fingerprint;
+    }
+}
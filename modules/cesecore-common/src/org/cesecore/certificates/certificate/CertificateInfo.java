@@ -71,6 +71,8 @@ public class CertificateInfo implements Serializable {
     public void setFingerprint(String fp) {this.fingerprint=fp;}
     public String getCAFingerprint() {return cafingerprint;}
     public BigInteger getSerialNumber() {return new BigInteger(serno);}
+    /** @return the serial number as it is stored in the database, which is in decimal format for X.509 certificates */
+    public String getSerialNumberRaw() {return serno;}
     public String getSubjectDN() {return subjectdn;}
     public String getIssuerDN() {return issuerdn;}
     /** One of the CertificateConstants.CERT_ constants, for example CertificateConstants.CERT_ACTIVE */
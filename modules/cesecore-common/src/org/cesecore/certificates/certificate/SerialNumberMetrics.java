@@ -0,0 +1,111 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process metrics of how the uniqueness of issuerDN and serialNumber is enforced when certificates are stored, kept in memory of this
+ * node only and reset at restart.
+ *
+ * Without a unique index on CertificateData (serialNumber, issuerDN), each issued certificate costs a lookup before the insert, and a
+ * collision found by the lookup is retried with a new serial number. With the index, the insert itself detects the collision.
+ * The current values can be rendered in the Prometheus text exposition format (version 0.0.4) with {@link #getTextFormat()}.
+ *
+ * @version $Id$
+ */
+public enum SerialNumberMetrics {
+    INSTANCE;
+
+    private static final String PREFIX = "ejbca_certificate_";
+
+    private final AtomicLong uniquenessLookups = new AtomicLong();
+    private final AtomicLong lookupCollisions = new AtomicLong();
+    private final AtomicLong indexCollisions = new AtomicLong();
+    private final AtomicLong failedIssuances = new AtomicLong();
+    /** 1 if the unique index is present, 0 if not and -1 if it has not been detected yet */
+    private volatile int uniqueIndex = -1;
+
+    /** Counts a lookup of an issuerDN and serialNumber before a certificate is stored, which is only done without the unique index */
+    public void countUniquenessLookup() {
+        uniquenessLookups.incrementAndGet();
+    }
+
+    /** Counts a serial number that was found by the lookup before the insert, after which a new certificate is generated */
+    public void countLookupCollision() {
+        lookupCollisions.incrementAndGet();
+    }
+
+    /** Counts a serial number that was rejected by the unique index when the certificate was inserted */
+    public void countIndexCollision() {
+        indexCollisions.incrementAndGet();
+    }
+
+    /** Counts a certificate that could not be stored because all serial numbers that were tried collided */
+    public void countFailedIssuance() {
+        failedIssuances.incrementAndGet();
+    }
+
+    /** @param uniqueIndex true if the unique index is present, false if not and null if it is not known */
+    public void setUniqueIndex(final Boolean uniqueIndex) {
+        this.uniqueIndex = uniqueIndex == null ? -1 : (uniqueIndex.booleanValue() ? 1 : 0);
+    }
+
+    public long getUniquenessLookups() {
+        return uniquenessLookups.get();
+    }
+
+    public long getLookupCollisions() {
+        return lookupCollisions.get();
+    }
+
+    public long getIndexCollisions() {
+        return indexCollisions.get();
+    }
+
+    public long getFailedIssuances() {
+        return failedIssuances.get();
+    }
+
+    /** @return the current metrics in the Prometheus text exposition format */
+    public String getTextFormat() {
+        final StringBuilder sb = new StringBuilder(1024);
+        final String indexName = PREFIX + "serial_number_unique_index";
+        appendHeader(sb, indexName, "gauge", "1 if a unique index on CertificateData (serialNumber, issuerDN) is used, 0 if not and -1 if not yet detected.");
+        appendSample(sb, indexName, null, String.valueOf(uniqueIndex));
+        final String lookupsName = PREFIX + "serial_number_lookups_total";
+        appendHeader(sb, lookupsName, "counter", "Number of serial number lookups before storing a certificate, done when there is no unique index.");
+        appendSample(sb, lookupsName, null, String.valueOf(uniquenessLookups.get()));
+        final String collisionsName = PREFIX + "serial_number_collisions_total";
+        appendHeader(sb, collisionsName, "counter", "Number of generated serial numbers that were already used by the issuer, by how they were detected.");
+        appendSample(sb, collisionsName, "detected_by=\"lookup\"", String.valueOf(lookupCollisions.get()));
+        appendSample(sb, collisionsName, "detected_by=\"index\"", String.valueOf(indexCollisions.get()));
+        final String failedName = PREFIX + "serial_number_failed_issuances_total";
+        appendHeader(sb, failedName, "counter", "Number of certificates that could not be stored because of serial number collisions.");
+        appendSample(sb, failedName, null, String.valueOf(failedIssuances.get()));
+        return sb.toString();
+    }
+
+    private static void appendHeader(final StringBuilder sb, final String name, final String type, final String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendSample(final StringBuilder sb, final String name, final String labels, final String value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+}
@@ -0,0 +1,248 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import org.apache.log4j.Logger;
+
+/**
+ * External merge sort of DER encoded revoked certificate entries, ordered by serial number (and by encoding, for entries with the same serial
+ * number). Entries are sorted in memory in runs of a limited size that are written to temporary files, and the runs are merged when the
+ * entries are read back.
+ *
+ * Two CRLs sorted this way can be compared entry by entry in a single pass, without keeping either of them in memory.
+ *
+ * Usage: {@link #add(byte[])} all entries, then {@link #next()} until null is returned, and finally {@link #close()} to remove the
+ * temporary files.
+ *
+ * @version $Id$
+ */
+public class CrlEntrySorter implements Closeable {
+
+    private static final Logger log = Logger.getLogger(CrlEntrySorter.class);
+
+    private final int maxEntriesInMemory;
+    /** Entries added since the last run was written, or null when reading has started */
+    private List<SortableEntry> entries = new ArrayList<SortableEntry>();
+    /** The sorted entries when all of them fit in memory */
+    private List<SortableEntry> entriesInMemory = Collections.emptyList();
+    private final List<File> runFiles = new ArrayList<File>();
+    private final List<RunReader> runReaders = new ArrayList<RunReader>();
+    private PriorityQueue<RunReader> mergeQueue = null;
+    private int inMemoryIndex = -1;
+    private long size = 0;
+
+    private static final Comparator<SortableEntry> COMPARATOR = new Comparator<SortableEntry>() {
+        @Override
+        public int compare(final SortableEntry entry1, final SortableEntry entry2) {
+            final int serialNumberComparison = entry1.serialNumber.compareTo(entry2.serialNumber);
+            return serialNumberComparison != 0 ? serialNumberComparison : compareBytes(entry1.encoded, entry2.encoded);
+        }
+    };
+
+    /** A decoded serial number and the encoded entry */
+    private static class SortableEntry {
+        private final BigInteger serialNumber;
+        private final byte[] encoded;
+
+        private SortableEntry(final byte[] encoded) {
+            this.serialNumber = CrlStreamParser.getSerialNumber(encoded);
+            this.encoded = encoded;
+        }
+    }
+
+    /** Reads the entries of one sorted run file */
+    private static class RunReader implements Closeable {
+        private final DataInputStream in;
+        private SortableEntry current;
+
+        private RunReader(final File runFile) throws IOException {
+            in = new DataInputStream(new BufferedInputStream(new FileInputStream(runFile), 65536));
+        }
+
+        /** @return false if there are no more entries in the run */
+        private boolean advance() throws IOException {
+            final int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                current = null;
+                return false;
+            }
+            final byte[] encoded = new byte[length];
+            in.readFully(encoded);
+            current = new SortableEntry(encoded);
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    /** @param maxEntriesInMemory the maximum number of entries to sort in memory before they are written to a temporary file */
+    public CrlEntrySorter(final int maxEntriesInMemory) {
+        this.maxEntriesInMemory = Math.max(1, maxEntriesInMemory);
+    }
+
+    /**
+     * @param encodedEntry a DER encoded revoked certificate entry, as returned by {@link CrlStreamParser#nextEntry()}
+     * @throws IOException if a temporary file could not be written
+     */
+    public void add(final byte[] encodedEntry) throws IOException {
+        if (entries == null) {
+            throw new IllegalStateException("Entries can not be added after reading has started.");
+        }
+        entries.add(new SortableEntry(encodedEntry));
+        size++;
+        if (entries.size() >= maxEntriesInMemory) {
+            writeRun();
+        }
+    }
+
+    /** @return the number of added entries */
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the next entry in sort order, or null if there are no more entries
+     * @throws IOException if a temporary file could not be read
+     */
+    public byte[] next() throws IOException {
+        if (entries != null) {
+            startReading();
+        }
+        if (mergeQueue == null) {
+            if (inMemoryIndex < 0 || inMemoryIndex >= entriesInMemory.size()) {
+                return null;
+            }
+            return entriesInMemory.get(inMemoryIndex++).encoded;
+        }
+        final RunReader runReader = mergeQueue.poll();
+        if (runReader == null) {
+            return null;
+        }
+        final byte[] ret = runReader.current.encoded;
+        if (runReader.advance()) {
+            mergeQueue.add(runReader);
+        }
+        return ret;
+    }
+
+    /** Removes the temporary files */
+    @Override
+    public void close() {
+        for (final RunReader runReader : runReaders) {
+            try {
+                runReader.close();
+            } catch (IOException e) {
+                log.debug("Failed to close run file: " + e.getMessage());
+            }
+        }
+        for (final File runFile : runFiles) {
+            if (!runFile.delete()) {
+                log.warn("Failed to delete temporary file " + runFile.getAbsolutePath());
+            }
+        }
+        runReaders.clear();
+        runFiles.clear();
+        entries = null;
+        entriesInMemory = Collections.emptyList();
+        mergeQueue = null;
+    }
+
+    /**
+     * Compares two DER encoded revoked certificate entries in the order used by this class.
+     *
+     * @return a negative integer, zero, or a positive integer as the first entry is less than, equal to, or greater than the second
+     */
+    public static int compare(final byte[] encodedEntry1, final byte[] encodedEntry2) {
+        return COMPARATOR.compare(new SortableEntry(encodedEntry1), new SortableEntry(encodedEntry2));
+    }
+
+    private void startReading() throws IOException {
+        if (runFiles.isEmpty()) {
+            // Everything fits in memory
+            Collections.sort(entries, COMPARATOR);
+            entriesInMemory = entries;
+            inMemoryIndex = 0;
+        } else {
+            if (!entries.isEmpty()) {
+                writeRun();
+            }
+            mergeQueue = new PriorityQueue<RunReader>(runFiles.size(), new Comparator<RunReader>() {
+                @Override
+                public int compare(final RunReader runReader1, final RunReader runReader2) {
+                    return COMPARATOR.compare(runReader1.current, runReader2.current);
+                }
+            });
+            for (final File runFile : runFiles) {
+                final RunReader runReader = new RunReader(runFile);
+                runReaders.add(runReader);
+                if (runReader.advance()) {
+                    mergeQueue.add(runReader);
+                }
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Merging " + runFiles.size() + " sorted runs of " + size + " CRL entries.");
+            }
+        }
+        entries = null;
+    }
+
+    private void writeRun() throws IOException {
+        Collections.sort(entries, COMPARATOR);
+        final File runFile = File.createTempFile("crlentries", ".run");
+        runFiles.add(runFile);
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(runFile), 65536));
+        try {
+            for (final SortableEntry entry : entries) {
+                out.writeInt(entry.encoded.length);
+                out.write(entry.encoded);
+            }
+        } finally {
+            out.close();
+        }
+        entries.clear();
+    }
+
+    /** Unsigned lexicographic comparison */
+    private static int compareBytes(final byte[] bytes1, final byte[] bytes2) {
+        final int length = Math.min(bytes1.length, bytes2.length);
+        for (int i = 0; i < length; i++) {
+            final int difference = (bytes1[i] & 0xff) - (bytes2[i] & 0xff);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return bytes1.length - bytes2.length;
+    }
+}
@@ -0,0 +1,430 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.crl;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1TaggedObject;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.asn1.x509.Time;
+import org.bouncycastle.operator.ContentVerifier;
+import org.bouncycastle.operator.ContentVerifierProvider;
+import org.bouncycastle.operator.OperatorCreationException;
+
+/**
+ * Parser of DER encoded X.509 CRLs that reads the revoked certificate entries one at a time from a stream, so that CRLs with millions of
+ * entries can be processed without keeping the whole CRL (or an X509CRL object with all its entries) in memory.
+ *
+ * The fields before the revoked certificates (issuer, thisUpdate, nextUpdate) are available after construction. The CRL extensions and
+ * the signature come after the entries, and are only available after all entries have been read with {@link #nextEntry()} or skipped with
+ * {@link #skipEntries()}.
+ *
+ * When a ContentVerifierProvider is provided, the signature is verified while parsing, by passing the encoded TBSCertList to a
+ * ContentVerifier for the signature algorithm of the CRL.
+ *
+ * @version $Id$
+ */
+public class CrlStreamParser implements Closeable {
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_BIT_STRING = 0x03;
+    private static final int TAG_UTC_TIME = 0x17;
+    private static final int TAG_GENERALIZED_TIME = 0x18;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_CRL_EXTENSIONS = 0xA0;
+    /** Protection against reading huge elements into memory. No single CRL field or entry should ever be this large. */
+    private static final int MAX_ELEMENT_SIZE = 1024 * 1024;
+
+    private final InputStream in;
+    /** Receives the encoded TBSCertList when verifying the signature. Buffers the TBSCertList until the signature algorithm is known. */
+    private OutputStream tbsOut = null;
+    private ContentVerifier contentVerifier = null;
+    private long position = 0;
+    private boolean teeActive = false;
+
+    private final long crlEnd;
+    private final long tbsEnd;
+    private final long revokedCertificatesEnd;
+    /** A tag that was read while looking for the revoked certificates, or -1 */
+    private int pendingTag = -1;
+
+    private final byte[] issuerEncoded;
+    private final AlgorithmIdentifier tbsSignatureAlgorithm;
+    private final Date thisUpdate;
+    private final Date nextUpdate;
+    private long entryCount = 0;
+    private boolean trailerRead = false;
+    private Extensions extensions = null;
+    private AlgorithmIdentifier signatureAlgorithm = null;
+    private byte[] signature = null;
+
+    /**
+     * Reads the CRL up to the first revoked certificate entry.
+     *
+     * @param in the DER encoded CRL
+     * @param verifierProvider provider of a verifier for the signature of the CRL (e.g. from the public key of the CA), or null to not
+     *            verify the signature
+     * @throws IOException if the CRL could not be read or is not a DER encoded CRL, or no verifier was available for the signature algorithm
+     */
+    public CrlStreamParser(final InputStream in, final ContentVerifierProvider verifierProvider) throws IOException {
+        this.in = new BufferedInputStream(in, 65536);
+        expectTag(readTag(), TAG_SEQUENCE, "CertificateList");
+        final long crlLength = readLength();
+        crlEnd = position + crlLength;
+        if (verifierProvider != null) {
+            tbsOut = new ByteArrayOutputStream(1024);
+            teeActive = true;
+        }
+        expectTag(readTag(), TAG_SEQUENCE, "TBSCertList");
+        final long tbsLength = readLength();
+        tbsEnd = position + tbsLength;
+        int tag = readTag();
+        if (tag == TAG_INTEGER) {
+            // Version
+            readElement(tag);
+            tag = readTag();
+        }
+        tbsSignatureAlgorithm = AlgorithmIdentifier.getInstance(ASN1Primitive.fromByteArray(readElement(expectTag(tag, TAG_SEQUENCE, "signature"))));
+        if (verifierProvider != null) {
+            try {
+                contentVerifier = verifierProvider.get(tbsSignatureAlgorithm);
+            } catch (OperatorCreationException e) {
+                throw new IOException("Unable to verify CRL signature with algorithm " + tbsSignatureAlgorithm.getAlgorithm().getId() + ".", e);
+            }
+            final byte[] tbsHeader = ((ByteArrayOutputStream) tbsOut).toByteArray();
+            tbsOut = new BufferedOutputStream(contentVerifier.getOutputStream(), 65536);
+            tbsOut.write(tbsHeader);
+        }
+        issuerEncoded = readElement(expectTag(readTag(), TAG_SEQUENCE, "issuer"));
+        tag = readTag();
+        if (tag != TAG_UTC_TIME && tag != TAG_GENERALIZED_TIME) {
+            throw new IOException("Expected thisUpdate in CRL, but found tag " + tag + ".");
+        }
+        thisUpdate = Time.getInstance(ASN1Primitive.fromByteArray(readElement(tag))).getDate();
+        tag = position < tbsEnd ? readTag() : -1;
+        if (tag == TAG_UTC_TIME || tag == TAG_GENERALIZED_TIME) {
+            nextUpdate = Time.getInstance(ASN1Primitive.fromByteArray(readElement(tag))).getDate();
+            tag = position < tbsEnd ? readTag() : -1;
+        } else {
+            nextUpdate = null;
+        }
+        if (tag == TAG_SEQUENCE) {
+            final long revokedCertificatesLength = readLength();
+            revokedCertificatesEnd = position + revokedCertificatesLength;
+            if (revokedCertificatesEnd > tbsEnd) {
+                throw new IOException("Revoked certificates exceed the TBSCertList of the CRL.");
+            }
+        } else {
+            revokedCertificatesEnd = position;
+            pendingTag = tag;
+        }
+    }
+
+    /**
+     * Reads the next revoked certificate entry.
+     *
+     * @return the DER encoded entry (a TBSCertList.CRLEntry) or null if there are no more entries
+     * @throws IOException if the CRL could not be read
+     */
+    public byte[] nextEntry() throws IOException {
+        if (position < revokedCertificatesEnd) {
+            final byte[] entry = readElement(expectTag(readTag(), TAG_SEQUENCE, "revoked certificate entry"));
+            if (position > revokedCertificatesEnd) {
+                throw new IOException("Revoked certificate entry exceeds the revoked certificates of the CRL.");
+            }
+            entryCount++;
+            return entry;
+        }
+        if (!trailerRead) {
+            readTrailer();
+        }
+        return null;
+    }
+
+    /**
+     * Skips all remaining revoked certificate entries and reads the CRL extensions and signature. When the signature is not verified, the
+     * entries are skipped without being parsed.
+     *
+     * @throws IOException if the CRL could not be read
+     */
+    public void skipEntries() throws IOException {
+        if (contentVerifier == null) {
+            while (position < revokedCertificatesEnd) {
+                final long skipped = in.skip(revokedCertificatesEnd - position);
+                if (skipped > 0) {
+                    position += skipped;
+                } else {
+                    read();
+                }
+            }
+        } else {
+            while (nextEntry() != null) {
+                // Entries must be passed to the ContentVerifier
+            }
+        }
+        if (!trailerRead) {
+            readTrailer();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /** @return the encoded issuer Name of the CRL */
+    public byte[] getIssuerEncoded() {
+        return issuerEncoded.clone();
+    }
+
+    /** @return the issuer of the CRL */
+    public X500Name getIssuer() {
+        return X500Name.getInstance(issuerEncoded);
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate;
+    }
+
+    /** @return the nextUpdate of the CRL, or null if not present */
+    public Date getNextUpdate() {
+        return nextUpdate;
+    }
+
+    /** @return the number of entries read so far with {@link #nextEntry()} */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    /** @return the CRL extensions, or null if not present. Only available when all entries have been read. */
+    public Extensions getExtensions() {
+        assertTrailerRead();
+        return extensions;
+    }
+
+    /** @return the signature algorithm of the CRL. Only available when all entries have been read. */
+    public AlgorithmIdentifier getSignatureAlgorithm() {
+        assertTrailerRead();
+        return signatureAlgorithm;
+    }
+
+    /** @return the signature of the CRL. Only available when all entries have been read. */
+    public byte[] getSignature() {
+        assertTrailerRead();
+        return signature.clone();
+    }
+
+    /**
+     * @return true if the signature of the CRL is valid. Only available when all entries have been read.
+     * @throws IllegalStateException if no ContentVerifierProvider was provided
+     */
+    public boolean isSignatureValid() {
+        assertTrailerRead();
+        if (contentVerifier == null) {
+            throw new IllegalStateException("The signature is only verified when a ContentVerifierProvider is provided.");
+        }
+        return contentVerifier.verify(signature);
+    }
+
+    /**
+     * @param encodedEntry a DER encoded revoked certificate entry as returned by {@link #nextEntry()}
+     * @return the serial number of the revoked certificate
+     * @throws IllegalArgumentException if the entry is not a DER encoded revoked certificate entry
+     */
+    public static BigInteger getSerialNumber(final byte[] encodedEntry) {
+        // Avoid full ASN.1 parsing, since this is used when sorting entries
+        try {
+            int offset = 1;
+            offset = skipLength(encodedEntry, offset);
+            if (encodedEntry[0] != TAG_SEQUENCE || encodedEntry[offset] != TAG_INTEGER) {
+                throw new IllegalArgumentException("Not a revoked certificate entry.");
+            }
+            final int lengthOffset = offset + 1;
+            final int contentOffset = skipLength(encodedEntry, lengthOffset);
+            final int length = (int) decodeLength(encodedEntry, lengthOffset);
+            final byte[] serialNumber = new byte[length];
+            System.arraycopy(encodedEntry, contentOffset, serialNumber, 0, length);
+            return new BigInteger(serialNumber);
+        } catch (ArrayIndexOutOfBoundsException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Not a revoked certificate entry.", e);
+        }
+    }
+
+    /**
+     * @param encodedEntry a DER encoded revoked certificate entry as returned by {@link #nextEntry()}
+     * @return the parsed entry
+     * @throws IOException if the entry could not be parsed
+     */
+    public static TBSCertList.CRLEntry parseEntry(final byte[] encodedEntry) throws IOException {
+        try {
+            return TBSCertList.CRLEntry.getInstance(ASN1Primitive.fromByteArray(encodedEntry));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Unable to parse revoked certificate entry: " + e.getMessage(), e);
+        }
+    }
+
+    /** Reads the CRL extensions (after the entries) and the signature. */
+    private void readTrailer() throws IOException {
+        if (position < tbsEnd) {
+            final int tag = pendingTag == -1 ? readTag() : pendingTag;
+            pendingTag = -1;
+            final byte[] encodedExtensions = readElement(expectTag(tag, TAG_CRL_EXTENSIONS, "crlExtensions"));
+            extensions = Extensions.getInstance((ASN1TaggedObject) ASN1Primitive.fromByteArray(encodedExtensions), true);
+        } else if (pendingTag != -1) {
+            throw new IOException("Unexpected tag " + pendingTag + " at the end of the TBSCertList.");
+        }
+        if (position != tbsEnd) {
+            throw new IOException("Invalid length of the TBSCertList.");
+        }
+        if (teeActive) {
+            tbsOut.flush();
+            teeActive = false;
+        }
+        signatureAlgorithm = AlgorithmIdentifier.getInstance(ASN1Primitive.fromByteArray(readElement(expectTag(readTag(), TAG_SEQUENCE,
+                "signatureAlgorithm"))));
+        if (!signatureAlgorithm.equals(tbsSignatureAlgorithm)) {
+            throw new IOException("Signature algorithm of the CRL does not match the signature algorithm in the TBSCertList.");
+        }
+        signature = DERBitString.getInstance(ASN1Primitive.fromByteArray(readElement(expectTag(readTag(), TAG_BIT_STRING, "signatureValue"))))
+                .getBytes();
+        if (position != crlEnd) {
+            throw new IOException("Invalid length of the CRL.");
+        }
+        trailerRead = true;
+    }
+
+    private void assertTrailerRead() {
+        if (!trailerRead) {
+            throw new IllegalStateException("All CRL entries must be read first.");
+        }
+    }
+
+    private int expectTag(final int tag, final int expectedTag, final String name) throws IOException {
+        if (tag != expectedTag) {
+            throw new IOException("Expected " + name + " in CRL, but found tag " + tag + ".");
+        }
+        return tag;
+    }
+
+    /** Reads the length and contents of an element whose tag has already been read, and returns the whole DER encoded element. */
+    private byte[] readElement(final int tag) throws IOException {
+        final long length = readLength();
+        if (length > MAX_ELEMENT_SIZE) {
+            throw new IOException("CRL contains a too large element with tag " + tag + " (" + length + " bytes).");
+        }
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream((int) length + 6);
+        baos.write(tag);
+        encodeLength(baos, length);
+        final byte[] contents = new byte[(int) length];
+        int offset = 0;
+        while (offset < contents.length) {
+            final int count = in.read(contents, offset, contents.length - offset);
+            if (count == -1) {
+                throw new EOFException("Unexpected end of CRL.");
+            }
+            offset += count;
+        }
+        position += length;
+        if (teeActive) {
+            tbsOut.write(contents);
+        }
+        baos.write(contents);
+        return baos.toByteArray();
+    }
+
+    private int readTag() throws IOException {
+        final int tag = read();
+        if ((tag & 0x1f) == 0x1f) {
+            throw new IOException("High tag numbers are not used in CRLs.");
+        }
+        return tag;
+    }
+
+    private long readLength() throws IOException {
+        final int first = read();
+        if (first < 0x80) {
+            return first;
+        }
+        final int octets = first & 0x7f;
+        if (octets == 0) {
+            throw new IOException("Indefinite length encoding is not allowed in a DER encoded CRL.");
+        }
+        if (octets > 7) {
+            throw new IOException("Too large length in CRL.");
+        }
+        long length = 0;
+        for (int i = 0; i < octets; i++) {
+            length = (length << 8) | read();
+        }
+        return length;
+    }
+
+    private int read() throws IOException {
+        final int b = in.read();
+        if (b == -1) {
+            throw new EOFException("Unexpected end of CRL.");
+        }
+        position++;
+        if (teeActive) {
+            tbsOut.write(b);
+        }
+        return b;
+    }
+
+    private static void encodeLength(final OutputStream out, final long length) throws IOException {
+        if (length < 0x80) {
+            out.write((int) length);
+        } else {
+            int octets = 1;
+            while ((length >>> (8 * octets)) != 0) {
+                octets++;
+            }
+            out.write(0x80 | octets);
+            for (int i = octets - 1; i >= 0; i--) {
+                out.write((int) (length >>> (8 * i)));
+            }
+        }
+    }
+
+    /** @return the offset after the length that starts at the offset */
+    private static int skipLength(final byte[] encoded, final int offset) {
+        final int first = encoded[offset] & 0xff;
+        return first < 0x80 ? offset + 1 : offset + 1 + (first & 0x7f);
+    }
+
+    private static long decodeLength(final byte[] encoded, final int offset) {
+        final int first = encoded[offset] & 0xff;
+        if (first < 0x80) {
+            return first;
+        }
+        long length = 0;
+        for (int i = 1; i <= (first & 0x7f); i++) {
+            length = (length << 8) | (encoded[offset + i] & 0xff);
+        }
+        return length;
+    }
+}
@@ -0,0 +1,237 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import java.util.Arrays;
+
+import org.bouncycastle.asn1.ASN1Integer;
+import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertID;
+import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.OCSPRequest;
+import org.bouncycastle.asn1.ocsp.Request;
+import org.bouncycastle.asn1.ocsp.TBSRequest;
+import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.cert.ocsp.OCSPReq;
+
+/**
+ * Parser for the most common shape of OCSP requests: unsigned, without requestor name or version, containing a single SHA-1 CertID
+ * without single request extensions and with at most a nonce as request extension.
+ *
+ * The DER encoding is walked directly on the byte array and objects are only created for the extracted values, instead of building
+ * (and later re-parsing) the generic ASN.1 object graph that new OCSPReq(byte[]) creates. Anything that does not match the expected
+ * shape exactly, including non-DER encodings and trailing data, is left to the full BouncyCastle parser.
+ *
+ * @version $Id$
+ */
+public final class OcspRequestParser {
+
+    private static final int TAG_INTEGER = 0x02;
+    private static final int TAG_OCTET_STRING = 0x04;
+    private static final int TAG_NULL = 0x05;
+    private static final int TAG_OID = 0x06;
+    private static final int TAG_SEQUENCE = 0x30;
+    private static final int TAG_REQUEST_EXTENSIONS = 0xa2;
+
+    /** DER encoded value of the SHA-1 OID 1.3.14.3.2.26 */
+    private static final byte[] OID_SHA1 = { 0x2b, 0x0e, 0x03, 0x02, 0x1a };
+    /** DER encoded value of the OCSP nonce OID 1.3.6.1.5.5.7.48.1.2 */
+    private static final byte[] OID_NONCE = { 0x2b, 0x06, 0x01, 0x05, 0x05, 0x07, 0x30, 0x01, 0x02 };
+    private static final int SHA1_LENGTH = 20;
+
+    // The SHA-1 algorithm identifier is re-encoded exactly as it was received, with or without the NULL parameter
+    private static final AlgorithmIdentifier SHA1_ABSENT_PARAMETERS = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1);
+    private static final AlgorithmIdentifier SHA1_NULL_PARAMETERS = new AlgorithmIdentifier(OIWObjectIdentifiers.idSHA1, DERNull.INSTANCE);
+
+    private final byte[] data;
+    private int position = 0;
+
+    private OcspRequestParser(final byte[] data) {
+        this.data = data;
+    }
+
+    /**
+     * Parses an OCSP request of the common shape described in the class comment.
+     *
+     * @param request the DER encoded OCSP request
+     * @return the parsed request, or null if the request does not have the expected shape and needs to be parsed with new OCSPReq(byte[])
+     */
+    public static OCSPReq parseSimpleRequest(final byte[] request) {
+        if (request == null) {
+            return null;
+        }
+        return new OcspRequestParser(request).parse();
+    }
+
+    private OCSPReq parse() {
+        // OCSPRequest ::= SEQUENCE { tbsRequest TBSRequest, optionalSignature [0] EXPLICIT Signature OPTIONAL }
+        final int ocspRequestEnd = readHeader(TAG_SEQUENCE, data.length);
+        // No trailing data after the request is allowed here
+        if (ocspRequestEnd != data.length) {
+            return null;
+        }
+        // TBSRequest ::= SEQUENCE { version [0], requestorName [1], requestList SEQUENCE OF Request, requestExtensions [2] }
+        // A version or requestorName does not match the expected TAG_SEQUENCE of the requestList and leads to the fallback
+        final int tbsRequestEnd = readHeader(TAG_SEQUENCE, ocspRequestEnd);
+        final int requestListEnd = readHeader(TAG_SEQUENCE, tbsRequestEnd);
+        // Request ::= SEQUENCE { reqCert CertID, singleRequestExtensions [0] EXPLICIT Extensions OPTIONAL }
+        final int requestEnd = readHeader(TAG_SEQUENCE, requestListEnd);
+        // CertID ::= SEQUENCE { hashAlgorithm AlgorithmIdentifier, issuerNameHash OCTET STRING, issuerKeyHash OCTET STRING, serialNumber INTEGER }
+        final int certIdEnd = readHeader(TAG_SEQUENCE, requestEnd);
+        final int algorithmIdentifierEnd = readHeader(TAG_SEQUENCE, certIdEnd);
+        if (!readValue(TAG_OID, algorithmIdentifierEnd, OID_SHA1)) {
+            return null;
+        }
+        final boolean nullParameters = position < algorithmIdentifierEnd;
+        if (nullParameters && readHeader(TAG_NULL, algorithmIdentifierEnd) != position) {
+            return null;
+        }
+        if (position != algorithmIdentifierEnd) {
+            return null;
+        }
+        final int issuerNameHashOffset = readHashOffset(certIdEnd);
+        final int issuerKeyHashOffset = readHashOffset(certIdEnd);
+        final int serialNumberEnd = readHeader(TAG_INTEGER, certIdEnd);
+        final int serialNumberOffset = position;
+        if (serialNumberEnd != certIdEnd || !isMinimalInteger(serialNumberOffset, serialNumberEnd)) {
+            return null;
+        }
+        position = serialNumberEnd;
+        // Single request extensions or more than one CertID are left to the full parser
+        if (position != requestEnd || requestEnd != requestListEnd) {
+            return null;
+        }
+        int nonceOffset = -1;
+        int nonceEnd = -1;
+        if (position < tbsRequestEnd) {
+            // requestExtensions [2] EXPLICIT Extensions, where the only Extension allowed here is a non-critical nonce
+            final int requestExtensionsEnd = readHeader(TAG_REQUEST_EXTENSIONS, tbsRequestEnd);
+            final int extensionsEnd = readHeader(TAG_SEQUENCE, requestExtensionsEnd);
+            final int extensionEnd = readHeader(TAG_SEQUENCE, extensionsEnd);
+            if (!readValue(TAG_OID, extensionEnd, OID_NONCE)) {
+                return null;
+            }
+            nonceEnd = readHeader(TAG_OCTET_STRING, extensionEnd);
+            nonceOffset = position;
+            if (nonceEnd != extensionEnd || extensionEnd != extensionsEnd || extensionsEnd != requestExtensionsEnd) {
+                return null;
+            }
+            position = nonceEnd;
+        }
+        // Any optionalSignature is left to the full parser
+        if (position != tbsRequestEnd || tbsRequestEnd != ocspRequestEnd) {
+            return null;
+        }
+        final CertID certId = new CertID(nullParameters ? SHA1_NULL_PARAMETERS : SHA1_ABSENT_PARAMETERS,
+                new DEROctetString(Arrays.copyOfRange(data, issuerNameHashOffset, issuerNameHashOffset + SHA1_LENGTH)),
+                new DEROctetString(Arrays.copyOfRange(data, issuerKeyHashOffset, issuerKeyHashOffset + SHA1_LENGTH)),
+                new ASN1Integer(Arrays.copyOfRange(data, serialNumberOffset, serialNumberEnd)));
+        Extensions requestExtensions = null;
+        if (nonceOffset != -1) {
+            requestExtensions = new Extensions(new Extension(OCSPObjectIdentifiers.id_pkix_ocsp_nonce, false,
+                    new DEROctetString(Arrays.copyOfRange(data, nonceOffset, nonceEnd))));
+        }
+        final TBSRequest tbsRequest = new TBSRequest((GeneralName) null, new DERSequence(new Request(certId, null)), requestExtensions);
+        return new OCSPReq(new OCSPRequest(tbsRequest, null));
+    }
+
+    /**
+     * Reads the identifier and DER length octets at the current position.
+     *
+     * @param expectedTag the single octet tag expected at the current position
+     * @param limit the end offset of the enclosing structure
+     * @return the end offset of the content (the position is moved to the start of the content), or -1 if the tag did not match, the
+     *      length was not a DER length or the content does not fit in the enclosing structure. Once -1 has been returned, all subsequent
+     *      reads return -1 as well.
+     */
+    private int readHeader(final int expectedTag, final int limit) {
+        if (position < 0 || limit < 0 || position + 2 > limit || (data[position] & 0xff) != expectedTag) {
+            return fail();
+        }
+        int length = data[position + 1] & 0xff;
+        position += 2;
+        if (length > 0x7f) {
+            // Long form with 1-3 length octets. 0x80 (indefinite length, BER only) is not allowed.
+            final int lengthOctets = length & 0x7f;
+            if (lengthOctets == 0 || lengthOctets > 3 || position + lengthOctets > limit || data[position] == 0) {
+                return fail();
+            }
+            length = 0;
+            for (int i = 0; i < lengthOctets; i++) {
+                length = (length << 8) | (data[position++] & 0xff);
+            }
+            // DER requires the short form for lengths below 128
+            if (length < 0x80) {
+                return fail();
+            }
+        }
+        if (length > limit - position) {
+            return fail();
+        }
+        return position + length;
+    }
+
+    /** @return true if the next element has the expected tag and exactly the expected content. The position is moved past the element. */
+    private boolean readValue(final int expectedTag, final int limit, final byte[] expectedValue) {
+        final int end = readHeader(expectedTag, limit);
+        if (end - position != expectedValue.length) {
+            fail();
+            return false;
+        }
+        for (int i = 0; i < expectedValue.length; i++) {
+            if (data[position + i] != expectedValue[i]) {
+                fail();
+                return false;
+            }
+        }
+        position = end;
+        return true;
+    }
+
+    /** @return the offset of the content of a SHA-1 hash OCTET STRING, or -1. The position is moved past the element. */
+    private int readHashOffset(final int limit) {
+        final int end = readHeader(TAG_OCTET_STRING, limit);
+        if (end - position != SHA1_LENGTH) {
+            return fail();
+        }
+        final int offset = position;
+        position = end;
+        return offset;
+    }
+
+    /** @return true if the INTEGER content is non-empty and does not start with redundant sign octets, as required by DER. */
+    private boolean isMinimalInteger(final int offset, final int end) {
+        if (offset < 0 || end <= offset) {
+            return false;
+        }
+        if (end - offset > 1) {
+            final int first = data[offset];
+            final int second = data[offset + 1] & 0x80;
+            if ((first == 0 && second == 0) || (first == -1 && second != 0)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int fail() {
+        position = -1;
+        return -1;
+    }
+}
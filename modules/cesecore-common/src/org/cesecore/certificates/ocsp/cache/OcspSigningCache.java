@@ -13,6 +13,7 @@
 package org.cesecore.certificates.ocsp.cache;
 
 import java.math.BigInteger;
+import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
@@ -33,19 +34,28 @@ import org.bouncycastle.cert.ocsp.jcajce.JcaCertificateID;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.bc.BcDigestCalculatorProvider;
 import org.cesecore.certificates.ocsp.exception.OcspFailureException;
+import org.cesecore.keys.token.CryptoToken;
 import org.cesecore.util.CertTools;
 
 /**
  * Hold information needed to create OCSP responses without database lookups.
  * 
+ * The committed cache is never modified in place. Staging builds a new map that replaces the current one in a single
+ * assignment, so request threads never wait for a reload and always see a complete set of entries. The staging lock is
+ * only held while the (already prepared) entries are added and committed, not while private keys are fetched.
+ * 
  * @version $Id$
  */
 public enum OcspSigningCache {
     INSTANCE;
     
-    private Map<Integer, OcspSigningCacheEntry> cache = new HashMap<Integer, OcspSigningCacheEntry>();
+    private volatile Map<Integer, OcspSigningCacheEntry> cache = new HashMap<Integer, OcspSigningCacheEntry>();
     private Map<Integer, OcspSigningCacheEntry> staging = new HashMap<Integer, OcspSigningCacheEntry>();
-    private OcspSigningCacheEntry defaultResponderCacheEntry = null;
+    private volatile OcspSigningCacheEntry defaultResponderCacheEntry = null;
+    /** Private key references of the committed cache, keyed by crypto token id, key alias and signing certificate fingerprint. */
+    private volatile Map<String, PrivateKeyReference> privateKeyReferences = new HashMap<String, PrivateKeyReference>();
+    private Map<String, PrivateKeyReference> stagingPrivateKeyReferences = new HashMap<String, PrivateKeyReference>();
+    private volatile OcspSigningCacheReloadStatistics lastReloadStatistics = null;
     private final ReentrantLock lock = new ReentrantLock(false);
     private final static Logger log = Logger.getLogger(OcspSigningCache.class);
     /** Flag to detect and log non-existence of a default responder once. */
@@ -68,9 +78,43 @@ public enum OcspSigningCache {
         return cache.values();
     }
 
+    /** @return statistics from the last committed reload or null if the cache has not been reloaded yet */
+    public OcspSigningCacheReloadStatistics getLastReloadStatistics() {
+        return lastReloadStatistics;
+    }
+
+    public void setLastReloadStatistics(final OcspSigningCacheReloadStatistics lastReloadStatistics) {
+        this.lastReloadStatistics = lastReloadStatistics;
+    }
+
+    /**
+     * Look up a private key that was used by the committed cache, so that a reload can skip the crypto token lookup for
+     * responders that have not changed since the last reload.
+     * 
+     * @param cryptoToken the crypto token the key belongs to. The reference is only returned if it was fetched from this very instance and the token is still active.
+     * @param keyPairAlias the alias of the key pair
+     * @param signingCertificate the certificate that the private key will sign with
+     * @return the previously fetched private key or null if it has to be fetched from the crypto token
+     */
+    public PrivateKey getPrivateKeyReference(final CryptoToken cryptoToken, final String keyPairAlias, final X509Certificate signingCertificate) {
+        final PrivateKeyReference privateKeyReference = privateKeyReferences.get(getPrivateKeyReferenceKey(cryptoToken.getId(), keyPairAlias, signingCertificate));
+        if (privateKeyReference == null || privateKeyReference.cryptoToken != cryptoToken || cryptoToken.getTokenStatus() != CryptoToken.STATUS_ACTIVE) {
+            return null;
+        }
+        return privateKeyReference.privateKey;
+    }
+
     public void stagingStart() {
         lock.lock();
         staging = new HashMap<Integer, OcspSigningCacheEntry>();
+        stagingPrivateKeyReferences = new HashMap<String, PrivateKeyReference>();
+    }
+
+    /** Remember the private key reference for the next reload. Must be called between {@link #stagingStart()} and {@link #stagingCommit(String)}. */
+    public void stagingAddPrivateKeyReference(final CryptoToken cryptoToken, final String keyPairAlias, final X509Certificate signingCertificate,
+            final PrivateKey privateKey) {
+        stagingPrivateKeyReferences.put(getPrivateKeyReferenceKey(cryptoToken.getId(), keyPairAlias, signingCertificate),
+                new PrivateKeyReference(cryptoToken, privateKey));
     }
 
     public void stagingAdd(OcspSigningCacheEntry ocspSigningCacheEntry) {
@@ -122,6 +166,7 @@ public enum OcspSigningCache {
         }
         logDefaultResponderChanges(this.defaultResponderCacheEntry, defaultResponderCacheEntry, defaultResponderSubjectDn);
         cache = staging;
+        privateKeyReferences = stagingPrivateKeyReferences;
         this.defaultResponderCacheEntry = defaultResponderCacheEntry;
         if (log.isDebugEnabled()) {
             log.debug("Committing the following to OCSP cache:");
@@ -203,7 +248,10 @@ public enum OcspSigningCache {
             try {
                 //Make sure that another thread didn't add the same entry while this one was waiting.
                 if (!cache.containsKey(cacheId)) {
-                    cache.put(cacheId, ocspSigningCacheEntry);
+                    // Copy on write, since readers access the committed map without locking
+                    final Map<Integer, OcspSigningCacheEntry> updatedCache = new HashMap<Integer, OcspSigningCacheEntry>(cache);
+                    updatedCache.put(cacheId, ocspSigningCacheEntry);
+                    cache = updatedCache;
                 }
             } finally {
                 lock.unlock();
@@ -211,6 +259,21 @@ public enum OcspSigningCache {
         }
     }
 
+    private static String getPrivateKeyReferenceKey(final int cryptoTokenId, final String keyPairAlias, final X509Certificate signingCertificate) {
+        return cryptoTokenId + ";" + keyPairAlias + ";" + CertTools.getFingerprintAsString(signingCertificate);
+    }
+
+    /** A private key together with the crypto token instance it was fetched from. */
+    private static class PrivateKeyReference {
+        private final CryptoToken cryptoToken;
+        private final PrivateKey privateKey;
+
+        private PrivateKeyReference(final CryptoToken cryptoToken, final PrivateKey privateKey) {
+            this.cryptoToken = cryptoToken;
+            this.privateKey = privateKey;
+        }
+    }
+
     /** @return a cache identifier based on the provided CertificateID. */
     public static int getCacheIdFromCertificateID(final CertificateID certID) {
         // Use bitwise XOR of the hashcodes for IssuerNameHash and IssuerKeyHash to produce the integer.
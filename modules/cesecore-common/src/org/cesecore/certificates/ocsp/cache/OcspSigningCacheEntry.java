@@ -13,17 +13,26 @@
 package org.cesecore.certificates.ocsp.cache;
 
 import java.security.PrivateKey;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.ResponderID;
+import org.bouncycastle.asn1.x509.Certificate;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.RespID;
 import org.bouncycastle.cert.ocsp.jcajce.JcaRespID;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.cesecore.certificates.certificate.CertificateStatus;
 import org.cesecore.certificates.ocsp.SHA1DigestCalculator;
+import org.cesecore.certificates.ocsp.exception.OcspFailureException;
 import org.cesecore.config.OcspConfiguration;
 import org.cesecore.keybind.impl.OcspKeyBinding;
 import org.cesecore.util.CertTools;
@@ -42,6 +51,7 @@ public class OcspSigningCacheEntry {
     private final X509Certificate ocspSigningCertificate;
     private final List<X509Certificate> fullCertificateChain;
     private final X509Certificate signingCertificate;
+    private final String signingCertificateSubjectDn;
     private final String signingCertificateIssuerDn;
     private final String signingCertificateIssuerDnRaw;
     private final transient PrivateKey privateKey;
@@ -54,6 +64,10 @@ public class OcspSigningCacheEntry {
     private RespID respId;
     private final X509Certificate[] responseCertChain;
     private final boolean signingCertificateForOcspSigning;
+    /* The parts of a BasicOCSPResponse that are the same for every response signed by this entry */
+    private final ResponderID responderId;
+    private final ASN1Sequence responseCertificates;
+    private final ConcurrentHashMap<String, JcaContentSignerBuilder> contentSignerBuilders = new ConcurrentHashMap<String, JcaContentSignerBuilder>();
 
     public OcspSigningCacheEntry(X509Certificate issuerCaCertificate, CertificateStatus issuerCaCertificateStatus,
             List<X509Certificate> signingCaCertificateChain, X509Certificate ocspSigningCertificate, PrivateKey privateKey,
@@ -87,6 +101,7 @@ public class OcspSigningCacheEntry {
             // This is just a placeholder cache entry
             respId = null;
             signingCertificateForOcspSigning = true;
+            signingCertificateSubjectDn = null;
             signingCertificateIssuerDn = null;
             signingCertificateIssuerDnRaw = null;
         } else {
@@ -106,6 +121,7 @@ public class OcspSigningCacheEntry {
             } else {
                 signingCertificateForOcspSigning = CertTools.isOCSPCert(signingCertificate);
             }
+            signingCertificateSubjectDn = CertTools.getSubjectDN(signingCertificate);
             signingCertificateIssuerDn = CertTools.getIssuerDN(signingCertificate);
             signingCertificateIssuerDnRaw = signingCertificate.getIssuerDN().getName();
         }
@@ -114,6 +130,8 @@ public class OcspSigningCacheEntry {
         } else {
             responseCertChain = getResponseCertChain(fullCertificateChain.toArray(new X509Certificate[0]));
         }
+        responderId = respId == null ? null : respId.toASN1Primitive();
+        responseCertificates = getResponseCertificates(responseCertChain);
     }
 
     /** @return certificate of the CA that we want to respond for */
@@ -137,6 +155,9 @@ public class OcspSigningCacheEntry {
     /** @return the certificate that will be used to sign the OCSP response. This is either an OCSP signing certificate or a CA certificate. */
     public X509Certificate getSigningCertificate() { return signingCertificate; }
 
+    /** @return the Subject DN of the certificate that will be used to sign the OCSP response. BC normalized. */
+    public String getSigningCertificateSubjectDn() { return signingCertificateSubjectDn; }
+
     /** @return the Issuer DN of the certificate that will be used to sign the OCSP response. BC normalized. */
     public String getSigningCertificateIssuerDn() { return signingCertificateIssuerDn; }
 
@@ -160,6 +181,27 @@ public class OcspSigningCacheEntry {
 
     /** @return the part of the full certificate chain that has been configured to be included in the response. */
     public X509Certificate[] getResponseCertChain() { return responseCertChain; }
+
+    /** @return the pre-built responderID of the ResponseData, or null if this is a placeholder entry */
+    public ResponderID getResponderId() { return responderId; }
+
+    /** @return the pre-built certs field of the BasicOCSPResponse, or null if no certificates should be included in the response */
+    public ASN1Sequence getResponseCertificates() { return responseCertificates; }
+
+    /**
+     * The builder holds the AlgorithmIdentifier of the signature algorithm, so it is only looked up once per algorithm and entry.
+     * 
+     * @param signatureAlgorithm the JCA name of the signature algorithm used to sign the response
+     * @return a reusable ContentSigner builder for this entry's signature provider
+     */
+    public JcaContentSignerBuilder getContentSignerBuilder(final String signatureAlgorithm) {
+        JcaContentSignerBuilder contentSignerBuilder = contentSignerBuilders.get(signatureAlgorithm);
+        if (contentSignerBuilder == null) {
+            contentSignerBuilder = new JcaContentSignerBuilder(signatureAlgorithm).setProvider(signatureProviderName);
+            contentSignerBuilders.putIfAbsent(signatureAlgorithm, contentSignerBuilder);
+        }
+        return contentSignerBuilder;
+    }
     /**
      * Checks if the entry has a OCSP signing certificate separate from the certificate chain.
      * Only entries with a keybinding can have a separate certificate.
@@ -183,6 +225,22 @@ public class OcspSigningCacheEntry {
         return false;
     }
 
+    /** @return the sequence of certificates to include in the response or null if the chain is empty */
+    private static ASN1Sequence getResponseCertificates(final X509Certificate[] responseCertChain) {
+        if (responseCertChain == null || responseCertChain.length == 0) {
+            return null;
+        }
+        final ASN1EncodableVector certificates = new ASN1EncodableVector();
+        for (final X509Certificate certificate : responseCertChain) {
+            try {
+                certificates.add(Certificate.getInstance(certificate.getEncoded()));
+            } catch (CertificateEncodingException e) {
+                throw new OcspFailureException(e);
+            }
+        }
+        return new DERSequence(certificates);
+    }
+
     /**
      * This method construct the certificate chain that will be included in the OCSP response according to the following rules:
      * - If includeSignCert && includeChain --> include entire chain except for the root CA certificate
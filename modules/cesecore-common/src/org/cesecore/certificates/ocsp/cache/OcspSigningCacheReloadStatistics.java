@@ -0,0 +1,71 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.cache;
+
+import java.io.Serializable;
+
+/**
+ * Immutable summary of the last OcspSigningCache reload.
+ *
+ * @version $Id$
+ */
+public class OcspSigningCacheReloadStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long reloadTime;
+    private final long durationMs;
+    private final int entryCount;
+    private final int fetchedPrivateKeyCount;
+    private final int reusedPrivateKeyCount;
+    private final int failedPrivateKeyCount;
+    private final int cryptoTokenCount;
+
+    public OcspSigningCacheReloadStatistics(final long reloadTime, final long durationMs, final int entryCount, final int fetchedPrivateKeyCount,
+            final int reusedPrivateKeyCount, final int failedPrivateKeyCount, final int cryptoTokenCount) {
+        this.reloadTime = reloadTime;
+        this.durationMs = durationMs;
+        this.entryCount = entryCount;
+        this.fetchedPrivateKeyCount = fetchedPrivateKeyCount;
+        this.reusedPrivateKeyCount = reusedPrivateKeyCount;
+        this.failedPrivateKeyCount = failedPrivateKeyCount;
+        this.cryptoTokenCount = cryptoTokenCount;
+    }
+
+    /** @return the time (epoch milliseconds) when the reload was committed */
+    public long getReloadTime() { return reloadTime; }
+
+    /** @return the wall clock duration of the reload in milliseconds */
+    public long getDurationMs() { return durationMs; }
+
+    /** @return the number of entries committed to the cache */
+    public int getEntryCount() { return entryCount; }
+
+    /** @return the number of private keys that were looked up from a crypto token during the reload */
+    public int getFetchedPrivateKeyCount() { return fetchedPrivateKeyCount; }
+
+    /** @return the number of private keys that were reused from the previous reload since the responder was unchanged */
+    public int getReusedPrivateKeyCount() { return reusedPrivateKeyCount; }
+
+    /** @return the number of private key lookups that failed or timed out */
+    public int getFailedPrivateKeyCount() { return failedPrivateKeyCount; }
+
+    /** @return the number of distinct crypto tokens that private keys were looked up from in parallel */
+    public int getCryptoTokenCount() { return cryptoTokenCount; }
+
+    @Override
+    public String toString() {
+        return "duration=" + durationMs + "ms, entries=" + entryCount + ", fetchedKeys=" + fetchedPrivateKeyCount + ", reusedKeys="
+                + reusedPrivateKeyCount + ", failedKeys=" + failedPrivateKeyCount + ", cryptoTokens=" + cryptoTokenCount;
+    }
+}
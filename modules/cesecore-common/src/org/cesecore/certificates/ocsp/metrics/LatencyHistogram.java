@@ -0,0 +1,79 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with fixed bucket boundaries from 50 microseconds to 10 seconds.
+ *
+ * Recording an observation is a short scan of the bucket boundaries and two atomic increments, so it is cheap enough to always be enabled.
+ *
+ * @version $Id$
+ */
+public class LatencyHistogram {
+
+    /** Upper (inclusive) bucket boundaries in nanoseconds. Observations above the last boundary are only counted in the +Inf bucket. */
+    private static final long[] BUCKET_BOUNDARIES_NANOS = {
+        50000L, 100000L, 250000L, 500000L,
+        1000000L, 2500000L, 5000000L, 10000000L, 25000000L, 50000000L, 100000000L, 250000000L, 500000000L,
+        1000000000L, 2500000000L, 5000000000L, 10000000000L
+    };
+
+    /** Number of observations per bucket (not cumulative). The last element is the +Inf bucket. */
+    private final AtomicLongArray bucketCounts = new AtomicLongArray(BUCKET_BOUNDARIES_NANOS.length + 1);
+    private final AtomicLong sumNanos = new AtomicLong();
+
+    /** @param durationNanos the observed duration in nanoseconds. Negative values (e.g. from a non monotonic clock) are counted as 0. */
+    public void observe(final long durationNanos) {
+        final long duration = Math.max(0L, durationNanos);
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDARIES_NANOS.length && duration > BUCKET_BOUNDARIES_NANOS[bucket]) {
+            bucket++;
+        }
+        bucketCounts.incrementAndGet(bucket);
+        sumNanos.addAndGet(duration);
+    }
+
+    /** @return the number of bucket boundaries, excluding the +Inf bucket */
+    public static int getBucketCount() {
+        return BUCKET_BOUNDARIES_NANOS.length;
+    }
+
+    /** @return the upper boundary of the bucket with the specified index in nanoseconds */
+    public static long getBucketBoundaryNanos(final int index) {
+        return BUCKET_BOUNDARIES_NANOS[index];
+    }
+
+    /**
+     * Takes a snapshot of the cumulative bucket counts. Since observations are recorded without locking, the snapshot may be slightly
+     * ahead of or behind getSumNanos() for observations recorded concurrently.
+     *
+     * @return the cumulative number of observations less than or equal to each bucket boundary, with the total count as last element
+     */
+    public long[] getCumulativeCounts() {
+        final long[] ret = new long[bucketCounts.length()];
+        long total = 0;
+        for (int i = 0; i < ret.length; i++) {
+            total += bucketCounts.get(i);
+            ret[i] = total;
+        }
+        return ret;
+    }
+
+    /** @return the sum of all observed durations in nanoseconds */
+    public long getSumNanos() {
+        return sumNanos.get();
+    }
+}
@@ -0,0 +1,224 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheReloadStatistics;
+
+/**
+ * In-process metrics of the OCSP response generation, kept in memory of this node only and reset at restart.
+ *
+ * All counters and histograms are updated without locking and are cheap enough to always be enabled. The current values can be rendered in
+ * the Prometheus text exposition format (version 0.0.4) with {@link #getTextFormat()}.
+ *
+ * @version $Id$
+ */
+public enum OcspMetrics {
+    INSTANCE;
+
+    /** The stages of the OCSP response generation that durations are recorded for. */
+    public enum Stage {
+        /** Parsing (and verifying the signature of) the OCSP request */
+        REQUEST_PARSE("request_parse"),
+        /** Finding the OcspSigningCacheEntry of the CertID */
+        SIGNING_CACHE_LOOKUP("signing_cache_lookup"),
+        /** Looking up the certificate status in the database */
+        STATUS_LOOKUP("status_lookup"),
+        /** Time between submitting the response for signing and the signing thread starting to work on it */
+        SIGNING_QUEUE_WAIT("signing_queue_wait"),
+        /** Signing the response data with the private key (in the HSM) */
+        SIGN("sign"),
+        /** Encoding the final OCSP response */
+        RESPONSE_ENCODE("response_encode");
+
+        private final String label;
+
+        private Stage(final String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /** Certificate status of a single response */
+    public enum CertStatus {
+        GOOD, REVOKED, UNKNOWN;
+    }
+
+    /** Labels of the OCSPResp status codes, where the index is the status code. Code 4 is unused in RFC 6960. */
+    private static final String[] RESPONSE_STATUS_LABELS = { "successful", "malformedRequest", "internalError", "tryLater", "unused",
+            "sigRequired", "unauthorized" };
+    /** Number of RESPONSE_STATUS_LABELS (a compile time constant, since an enum constructor can not refer to other static fields) */
+    private static final int RESPONSE_STATUS_COUNT = 7;
+    /** Protection against an unbounded number of responder labels. Responders above this limit are counted as "other". */
+    private static final int MAX_RESPONDER_LABELS = 1000;
+    private static final String OTHER_RESPONDER_LABEL = "other";
+    private static final String PREFIX = "ejbca_ocsp_";
+
+    private final Map<Stage, LatencyHistogram> stageDurations = new EnumMap<Stage, LatencyHistogram>(Stage.class);
+    private final AtomicLongArray responseStatusCounts = new AtomicLongArray(RESPONSE_STATUS_COUNT);
+    private final AtomicLongArray certStatusCounts = new AtomicLongArray(CertStatus.values().length);
+    private final ConcurrentMap<String, AtomicLong> responderCounts = new ConcurrentHashMap<String, AtomicLong>();
+    private final AtomicLong signingCacheHits = new AtomicLong();
+    private final AtomicLong signingCacheMisses = new AtomicLong();
+
+    private OcspMetrics() {
+        for (final Stage stage : Stage.values()) {
+            stageDurations.put(stage, new LatencyHistogram());
+        }
+    }
+
+    /**
+     * Records the duration of a stage.
+     *
+     * @param stage the stage
+     * @param startNanos the value of System.nanoTime() when the stage started
+     */
+    public void observe(final Stage stage, final long startNanos) {
+        stageDurations.get(stage).observe(System.nanoTime() - startNanos);
+    }
+
+    /** Records the duration of a stage, when the duration is already known. */
+    public void observeDuration(final Stage stage, final long durationNanos) {
+        stageDurations.get(stage).observe(durationNanos);
+    }
+
+    /** @param responseStatus the status code of the OCSPResp that was returned to the client */
+    public void countResponse(final int responseStatus) {
+        if (responseStatus >= 0 && responseStatus < RESPONSE_STATUS_COUNT) {
+            responseStatusCounts.incrementAndGet(responseStatus);
+        }
+    }
+
+    /** @param certStatus the status in one of the single responses of a signed response */
+    public void countCertStatus(final CertStatus certStatus) {
+        certStatusCounts.incrementAndGet(certStatus.ordinal());
+    }
+
+    /** @param responder a name of the responder (e.g. the Subject DN of the signing certificate) that signed a response */
+    public void countResponder(final String responder) {
+        if (responder == null) {
+            return;
+        }
+        AtomicLong counter = responderCounts.get(responder);
+        if (counter == null) {
+            final String label = responderCounts.size() < MAX_RESPONDER_LABELS ? responder : OTHER_RESPONDER_LABEL;
+            final AtomicLong newCounter = new AtomicLong();
+            counter = responderCounts.putIfAbsent(label, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+
+    /** @param hit true if an OcspSigningCacheEntry was found in the cache for the CertID */
+    public void countSigningCacheLookup(final boolean hit) {
+        (hit ? signingCacheHits : signingCacheMisses).incrementAndGet();
+    }
+
+    /** @return the histogram of the specified stage */
+    public LatencyHistogram getStageDurations(final Stage stage) {
+        return stageDurations.get(stage);
+    }
+
+    /** @return the current metrics in the Prometheus text exposition format */
+    public String getTextFormat() {
+        final StringBuilder sb = new StringBuilder(8192);
+        final String durationName = PREFIX + "stage_duration_seconds";
+        appendHeader(sb, durationName, "histogram", "Duration of the stages of the OCSP response generation.");
+        for (final Stage stage : Stage.values()) {
+            final LatencyHistogram histogram = stageDurations.get(stage);
+            final String stageLabel = "stage=\"" + stage.getLabel() + "\"";
+            final long[] cumulativeCounts = histogram.getCumulativeCounts();
+            for (int i = 0; i < LatencyHistogram.getBucketCount(); i++) {
+                appendSample(sb, durationName + "_bucket", stageLabel + ",le=\"" + toSeconds(LatencyHistogram.getBucketBoundaryNanos(i)) + "\"",
+                        String.valueOf(cumulativeCounts[i]));
+            }
+            final long count = cumulativeCounts[cumulativeCounts.length - 1];
+            appendSample(sb, durationName + "_bucket", stageLabel + ",le=\"+Inf\"", String.valueOf(count));
+            appendSample(sb, durationName + "_sum", stageLabel, toSeconds(histogram.getSumNanos()));
+            appendSample(sb, durationName + "_count", stageLabel, String.valueOf(count));
+        }
+        final String responsesName = PREFIX + "responses_total";
+        appendHeader(sb, responsesName, "counter", "Number of OCSP responses by response status.");
+        for (int i = 0; i < RESPONSE_STATUS_COUNT; i++) {
+            appendSample(sb, responsesName, "status=\"" + RESPONSE_STATUS_LABELS[i] + "\"", String.valueOf(responseStatusCounts.get(i)));
+        }
+        final String certStatusName = PREFIX + "cert_status_total";
+        appendHeader(sb, certStatusName, "counter", "Number of single responses in signed OCSP responses by certificate status.");
+        for (final CertStatus certStatus : CertStatus.values()) {
+            appendSample(sb, certStatusName, "status=\"" + certStatus.name().toLowerCase() + "\"",
+                    String.valueOf(certStatusCounts.get(certStatus.ordinal())));
+        }
+        final String responderName = PREFIX + "responder_responses_total";
+        appendHeader(sb, responderName, "counter", "Number of signed OCSP responses by responder.");
+        for (final Map.Entry<String, AtomicLong> entry : new TreeMap<String, AtomicLong>(responderCounts).entrySet()) {
+            appendSample(sb, responderName, "responder=\"" + escapeLabelValue(entry.getKey()) + "\"", String.valueOf(entry.getValue().get()));
+        }
+        final String cacheLookupName = PREFIX + "signing_cache_lookups_total";
+        appendHeader(sb, cacheLookupName, "counter", "Number of OCSP signing cache lookups by result.");
+        appendSample(sb, cacheLookupName, "result=\"hit\"", String.valueOf(signingCacheHits.get()));
+        appendSample(sb, cacheLookupName, "result=\"miss\"", String.valueOf(signingCacheMisses.get()));
+        final String cacheEntriesName = PREFIX + "signing_cache_entries";
+        appendHeader(sb, cacheEntriesName, "gauge", "Number of entries in the OCSP signing cache.");
+        appendSample(sb, cacheEntriesName, null, String.valueOf(OcspSigningCache.INSTANCE.getEntries().size()));
+        final OcspSigningCacheReloadStatistics reloadStatistics = OcspSigningCache.INSTANCE.getLastReloadStatistics();
+        if (reloadStatistics != null) {
+            final String reloadTimeName = PREFIX + "signing_cache_last_reload_timestamp_seconds";
+            appendHeader(sb, reloadTimeName, "gauge", "Time of the last OCSP signing cache reload.");
+            appendSample(sb, reloadTimeName, null, toSeconds(reloadStatistics.getReloadTime() * 1000000L));
+            final String reloadDurationName = PREFIX + "signing_cache_last_reload_duration_seconds";
+            appendHeader(sb, reloadDurationName, "gauge", "Duration of the last OCSP signing cache reload.");
+            appendSample(sb, reloadDurationName, null, toSeconds(reloadStatistics.getDurationMs() * 1000000L));
+            final String reloadKeysName = PREFIX + "signing_cache_last_reload_private_keys";
+            appendHeader(sb, reloadKeysName, "gauge", "Private keys of the last OCSP signing cache reload by result.");
+            appendSample(sb, reloadKeysName, "result=\"fetched\"", String.valueOf(reloadStatistics.getFetchedPrivateKeyCount()));
+            appendSample(sb, reloadKeysName, "result=\"reused\"", String.valueOf(reloadStatistics.getReusedPrivateKeyCount()));
+            appendSample(sb, reloadKeysName, "result=\"failed\"", String.valueOf(reloadStatistics.getFailedPrivateKeyCount()));
+        }
+        return sb.toString();
+    }
+
+    private static void appendHeader(final StringBuilder sb, final String name, final String type, final String help) {
+        sb.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        sb.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void appendSample(final StringBuilder sb, final String name, final String labels, final String value) {
+        sb.append(name);
+        if (labels != null) {
+            sb.append('{').append(labels).append('}');
+        }
+        sb.append(' ').append(value).append('\n');
+    }
+
+    private static String toSeconds(final long nanos) {
+        return String.valueOf(nanos / 1000000000D);
+    }
+
+    /** Escapes backslash, double quote and line feed as required for label values. */
+    private static String escapeLabelValue(final String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
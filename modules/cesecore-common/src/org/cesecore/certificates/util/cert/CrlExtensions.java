@@ -21,8 +21,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.ASN1Encodable;
 import org.bouncycastle.asn1.ASN1Enumerated;
 import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Primitive;
 import org.bouncycastle.asn1.ASN1Sequence;
@@ -31,6 +33,7 @@ import org.bouncycastle.asn1.x509.CRLDistPoint;
 import org.bouncycastle.asn1.x509.CRLNumber;
 import org.bouncycastle.asn1.x509.DistributionPoint;
 import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.Extensions;
 import org.bouncycastle.asn1.x509.GeneralNames;
 import org.bouncycastle.x509.extension.X509ExtensionUtil;
 import org.cesecore.certificates.crl.RevokedCertInfo;
@@ -83,6 +86,38 @@ public class CrlExtensions {
 		return ret;
     }
 
+    /**
+     * Returns the CRL number if it exists in the CRL extensions, e.g. as parsed by a CrlStreamParser.
+     * 
+     * @return the CRLnumber, or 0 if no CRL number extension was found or an error reading it occurred. Never return null.
+     */
+    public static BigInteger getCrlNumber(final Extensions crlExtensions) {
+        return getCrlNumberExtension(crlExtensions, Extension.cRLNumber, BigInteger.valueOf(0));
+    }
+
+    /**
+     * Returns the delta crl indicator number if it exists in the CRL extensions, e.g. as parsed by a CrlStreamParser.
+     * 
+     * @return the BaseCRLNumber, or -1 if no delta crl indicator extension was found or an error reading it occurred. Never return null.
+     */
+    public static BigInteger getDeltaCRLIndicator(final Extensions crlExtensions) {
+        return getCrlNumberExtension(crlExtensions, Extension.deltaCRLIndicator, BigInteger.valueOf(-1));
+    }
+
+    private static BigInteger getCrlNumberExtension(final Extensions crlExtensions, final ASN1ObjectIdentifier oid, final BigInteger defaultValue) {
+        if (crlExtensions != null) {
+            try {
+                final ASN1Encodable value = crlExtensions.getExtensionParsedValue(oid);
+                if (value != null) {
+                    return CRLNumber.getInstance(value).getCRLNumber();
+                }
+            } catch (IllegalArgumentException e) {
+                log.error("Error reading CRL number extension: ", e);
+            }
+        }
+        return defaultValue;
+    }
+
     /**
      * Return an Extension ASN1Primitive from a CRL
      */
@@ -118,6 +153,43 @@ public class CrlExtensions {
         return reasonCode;
     }
 
+    /**
+     * @param crlEntryExtensions the extensions of a CRL entry, e.g. as parsed by a CrlStreamParser, or null
+     * @return the revocation reason code as defined in RevokedCertInfo.REVOCATION_REASON_...
+     */
+    public static int extractReasonCode(final Extensions crlEntryExtensions) {
+        int reasonCode = RevokedCertInfo.REVOCATION_REASON_UNSPECIFIED;
+        if (crlEntryExtensions != null) {
+            try {
+                final ASN1Enumerated reasonCodeExtension = ASN1Enumerated.getInstance(crlEntryExtensions.getExtensionParsedValue(Extension.reasonCode));
+                if (reasonCodeExtension!=null) {
+                    reasonCode = reasonCodeExtension.getValue().intValue();
+                }
+            } catch (IllegalArgumentException e) {
+                log.debug("Failed to parse reason code of CRLEntry: " + e.getMessage());
+            }
+        }
+        return reasonCode;
+    }
+
+    /**
+     * @param crlExtensions the CRL extensions, e.g. as parsed by a CrlStreamParser, or null
+     * @return a list of URLs in String format with present freshest CRL extensions or an empty List
+     */
+    public static List<String> extractFreshestCrlDistributionPoints(final Extensions crlExtensions) {
+        final List<String> freshestCdpUrls = new ArrayList<String>();
+        if (crlExtensions != null) {
+            final Extension extension = crlExtensions.getExtension(Extension.freshestCRL);
+            if (extension!=null) {
+                final ASN1Sequence asn1Sequence = getAsn1ObjectFromBytes(extension.getExtnValue().getOctets(), ASN1Sequence.class);
+                if (asn1Sequence!=null) {
+                    addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(asn1Sequence));
+                }
+            }
+        }
+        return freshestCdpUrls;
+    }
+
     /** @return a list of URLs in String format with present freshest CRL extensions or an empty List */
     public static List<String> extractFreshestCrlDistributionPoints(final X509CRL crl) {
         final List<String> freshestCdpUrls = new ArrayList<String>();
@@ -127,15 +199,18 @@ public class CrlExtensions {
             if (asn1OctetString!=null) {
                 final ASN1Sequence asn1Sequence = getAsn1ObjectFromBytes(asn1OctetString.getOctets(), ASN1Sequence.class);
                 if (asn1Sequence!=null) {
-                    final CRLDistPoint cdp = CRLDistPoint.getInstance(asn1Sequence);
-                    for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
-                        freshestCdpUrls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
-                    }
+                    addDistributionPointUrls(freshestCdpUrls, CRLDistPoint.getInstance(asn1Sequence));
                 }
             }
         }
         return freshestCdpUrls;
     }
+
+    private static void addDistributionPointUrls(final List<String> urls, final CRLDistPoint cdp) {
+        for (final DistributionPoint distributionPoint : cdp.getDistributionPoints()) {
+            urls.add(((DERIA5String) ((GeneralNames) distributionPoint.getDistributionPoint().getName()).getNames()[0].getName()).getString());
+        }
+    }
     
     /** @return the first object found when treating the provided byte array as an ASN1InputStream */
     @SuppressWarnings("unchecked")
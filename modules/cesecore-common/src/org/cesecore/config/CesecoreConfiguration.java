@@ -386,6 +386,28 @@ public final class CesecoreConfiguration {
         return Long.valueOf(getLongValue("database.crlgenfetchsize", 500000L, "rows")).intValue();
     }
 
+    /** @return the number of certificates that should be revoked in each transaction when revoking all certificates of a CA. */
+    public static int getDatabaseMassRevocationChunkSize() {
+        return Long.valueOf(getLongValue("database.massrevocationchunksize", 10000L, "rows")).intValue();
+    }
+
+    /**
+     * @return the time in milliseconds that certificate changes are held back from the certificate change feed, so changes made by
+     * transactions that commit after later changes are not skipped by consumers.
+     */
+    public static long getCertificateChangeFeedDelay() {
+        return getLongValue("database.changefeeddelay", 30000L, "milliseconds");
+    }
+
+    /**
+     * @return true if a unique index on CertificateData (serialNumber, issuerDN) should be created at startup if it is missing, so
+     * certificates can be stored without looking up the serial number first.
+     */
+    public static boolean isCreateUniqueCertificateSerialNumberIndex() {
+        final String value = ConfigurationHolder.getString("database.createuniqueserialnumberindex");
+        return value!=null && Boolean.parseBoolean(value.trim());
+    }
+
     /**
      * Used just in {@link #getForbiddenCharacters()}. The method is called very
      * often so we declare this String in the class so it does not have to be
@@ -420,6 +442,21 @@ public final class CesecoreConfiguration {
         return Boolean.parseBoolean(ConfigurationHolder.getString("cryptotoken.keystorecache"));
     }
 
+    /** @return the maximum number of concurrent signing sessions per PKCS#11 key and signature algorithm, or 0 if sessions should not be pooled */
+    public static int getP11SigningSessionPoolSize() {
+        return (int) getLongValue("pkcs11.signingpool.size", 8L, "number of sessions");
+    }
+
+    /** @return the time in milliseconds to wait for a PKCS#11 signing session when all sessions of the pool are in use */
+    public static long getP11SigningSessionPoolTimeout() {
+        return getLongValue("pkcs11.signingpool.timeout", 30000L, "milliseconds");
+    }
+
+    /** @return the time in milliseconds a pooled PKCS#11 signing session may be idle before it is checked before it is used again */
+    public static long getP11SigningSessionPoolHealthCheckInterval() {
+        return getLongValue("pkcs11.signingpool.healthcheckinterval", 60000L, "milliseconds");
+    }
+
     /** @return a list of enabled TLS protocol versions and cipher suites */
     /*
      * Java 6: http://docs.oracle.com/javase/6/docs/technotes/guides/security/SunProviders.html#SunJSSEProvider
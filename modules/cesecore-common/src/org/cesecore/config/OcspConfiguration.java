@@ -61,6 +61,9 @@ public class OcspConfiguration {
     public static final String REVOKED_MAX_AGE = "ocsp.revoked.maxAge";
     public static final String INCLUDE_SIGNING_CERT = "ocsp.includesignercert";
     public static final String INCLUDE_CERT_CHAIN = "ocsp.includecertchain";
+    public static final String SIGNING_THREADS = "ocsp.signingthreads";
+    public static final String SIGNING_QUEUE_SIZE = "ocsp.signingqueuesize";
+    public static final String REQUEST_TIMEOUT = "ocsp.requesttimeout";
     
     @Deprecated //Remove this value once upgrading to 6.7.0 has been dropped
     public static final String RESPONDER_ID_TYPE = "ocsp.responderidtype";
@@ -149,6 +152,45 @@ public class OcspConfiguration {
         return timeInSeconds;
     }
 
+    /**
+     * The number of threads that produce and sign OCSP responses, i.e. the maximum number of requests that are processed at the same time.
+     */
+    public static int getSigningThreads() {
+        int value = 32;
+        try {
+            value = ConfigurationHolder.instance().getInt(SIGNING_THREADS, value);
+        } catch (ConversionException e) {
+            log.warn("\"" + SIGNING_THREADS + "\" is not a decimal integer. Using default value: " + value);
+        }
+        return Math.max(value, 1);
+    }
+
+    /**
+     * The maximum number of OCSP requests waiting for a signing thread. Requests that do not fit in the queue are answered with tryLater.
+     */
+    public static int getSigningQueueSize() {
+        int value = 1000;
+        try {
+            value = ConfigurationHolder.instance().getInt(SIGNING_QUEUE_SIZE, value);
+        } catch (ConversionException e) {
+            log.warn("\"" + SIGNING_QUEUE_SIZE + "\" is not a decimal integer. Using default value: " + value);
+        }
+        return Math.max(value, 1);
+    }
+
+    /**
+     * The time in milliseconds an OCSP request may wait and be processed, before it is answered with tryLater.
+     */
+    public static long getRequestTimeout() {
+        long value = 10000;
+        try {
+            value = ConfigurationHolder.instance().getLong(REQUEST_TIMEOUT, value);
+        } catch (ConversionException e) {
+            log.warn("\"" + REQUEST_TIMEOUT + "\" is not a decimal integer. Using default value: " + value);
+        }
+        return Math.max(value, 1);
+    }
+
     /**
      * If set to true the responder will enforce OCSP request signing
      */
@@ -32,6 +32,7 @@ import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.cesecore.internal.InternalResources;
 import org.cesecore.keys.token.p11.P11Slot;
+import org.cesecore.keys.token.p11.P11SigningSessionPool;
 import org.cesecore.keys.token.p11.P11SlotUser;
 import org.cesecore.keys.token.p11.Pkcs11SlotLabel;
 import org.cesecore.keys.token.p11.Pkcs11SlotLabelType;
@@ -124,6 +125,8 @@ public class PKCS11CryptoToken extends BaseCryptoToken implements P11SlotUser {
         try {
             final KeyStore keyStore = createKeyStore(authCode);
             setKeyStore(keyStore);
+            // Sessions for keys of the previous key store of the slot are no longer used
+            P11SigningSessionPool.removePools(getSignProviderName());
         } catch (Throwable t) { // NOPMD: when dealing with HSMs we need to catch everything
             log.warn("Failed to initialize PKCS11 provider slot '" + this.sSlotLabel + "'.", t);
             CryptoTokenAuthenticationFailedException authfe = new CryptoTokenAuthenticationFailedException(
@@ -184,6 +187,7 @@ public class PKCS11CryptoToken extends BaseCryptoToken implements P11SlotUser {
             // Exception should only be thrown if loading a non-null KeyStore fails
             throw new IllegalStateException("This should never happen.");
         }
+        P11SigningSessionPool.removePools(getSignProviderName());
         if (this.p11slot != null) {
             this.p11slot.logoutFromSlotIfNoTokensActive();            
         } else {
@@ -195,6 +199,7 @@ public class PKCS11CryptoToken extends BaseCryptoToken implements P11SlotUser {
 
     @Override
     public void reset() {
+        P11SigningSessionPool.removePools(getSignProviderName());
         if (this.p11slot != null) {
             this.p11slot.reset();
         }
@@ -0,0 +1,387 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.keys.token.p11;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStream;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.PrivateKey;
+import java.security.Provider;
+import java.security.Security;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DefaultSignatureAlgorithmIdentifierFinder;
+import org.bouncycastle.operator.RuntimeOperatorException;
+import org.cesecore.config.CesecoreConfiguration;
+
+/**
+ * A pool of signing sessions for one key and signature algorithm on a PKCS#11 slot.
+ *
+ * The JCA providers for PKCS#11 do not give access to the PKCS#11 sessions themselves, but a {@link Signature} object that has been initialized
+ * with a key keeps the provider's key conversion and mechanism lookup, and only needs a session from the provider for the duration of each
+ * signature. The pool keeps such initialized Signature objects and re-uses them for certificate and OCSP response signing, instead of
+ * creating and initializing a new Signature for every object that is signed. The data to sign is collected in memory before a session is
+ * taken, so the pool is not used for CRLs, which can be very large. The number of concurrent signatures per key is limited to the
+ * pool size, so a burst of requests waits for a session instead of exhausting the sessions of the HSM.
+ *
+ * A session that fails to sign is discarded, and a session that has been idle for longer than the health check interval signs test data before
+ * it is used again, so key handles that have become invalid (e.g. after the HSM was restarted) are replaced transparently.
+ *
+ * Pools are created lazily by {@link #getInstance(String, String, PrivateKey)} and identified by the provider, the signature algorithm and
+ * the key reference, which is stable as long as the key store of the crypto token is cached. The pools of a slot are removed with
+ * {@link #removePools(String)} when a crypto token on the slot is activated, deactivated or reset.
+ *
+ * @version $Id$
+ */
+public class P11SigningSessionPool {
+
+    private static final Logger log = Logger.getLogger(P11SigningSessionPool.class);
+
+    /** The maximum number of pools kept, to not keep keys of tokens that have been reloaded without being deactivated. */
+    private static final int MAX_POOLS = 256;
+    private static final byte[] HEALTH_CHECK_DATA = "EJBCA PKCS#11 signing session health check".getBytes();
+    private static final Map<PoolKey, P11SigningSessionPool> pools = new ConcurrentHashMap<PoolKey, P11SigningSessionPool>();
+    /** Whether a provider is a PKCS#11 provider, by provider name */
+    private static final Map<String, Boolean> pkcs11Providers = new ConcurrentHashMap<String, Boolean>();
+
+    /** Identifies a pool by provider name, signature algorithm and identity of the key reference */
+    private static final class PoolKey {
+        private final String providerName;
+        private final String signatureAlgorithm;
+        private final PrivateKey privateKey;
+
+        PoolKey(final String providerName, final String signatureAlgorithm, final PrivateKey privateKey) {
+            this.providerName = providerName;
+            this.signatureAlgorithm = signatureAlgorithm;
+            this.privateKey = privateKey;
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            if (!(other instanceof PoolKey)) {
+                return false;
+            }
+            final PoolKey poolKey = (PoolKey) other;
+            return privateKey == poolKey.privateKey && providerName.equals(poolKey.providerName) && signatureAlgorithm.equals(poolKey.signatureAlgorithm);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * (31 * providerName.hashCode() + signatureAlgorithm.hashCode()) + System.identityHashCode(privateKey);
+        }
+    }
+
+    /** An initialized Signature and when it was last used successfully */
+    private static final class Session {
+        private final Signature signature;
+        private long lastUsed;
+
+        Session(final Signature signature) {
+            this.signature = signature;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    private final String providerName;
+    private final String signatureAlgorithm;
+    private final PrivateKey privateKey;
+    private final AlgorithmIdentifier algorithmIdentifier;
+    private final int size;
+    private final long timeout;
+    private final long healthCheckInterval;
+    /** Limits the number of sessions signing concurrently to the pool size */
+    private final Semaphore permits;
+    /** Idle sessions, the most recently used first so that a few sessions are kept busy when the load is low */
+    private final LinkedBlockingDeque<Session> idleSessions = new LinkedBlockingDeque<Session>();
+
+    /**
+     * Creates a pool, and a first session to verify that the provider supports the signature algorithm with the key.
+     *
+     * @param providerName the name of the installed provider to sign with
+     * @param signatureAlgorithm the JCA name of the signature algorithm, e.g. SHA256WithRSA
+     * @param privateKey the key to sign with
+     * @param size the maximum number of sessions that sign concurrently
+     * @param timeout the time in milliseconds to wait for a session when all sessions are in use
+     * @param healthCheckInterval the time in milliseconds a session may be idle before it is checked before it is used again
+     * @throws GeneralSecurityException if the provider does not support the signature algorithm or the key
+     */
+    public P11SigningSessionPool(final String providerName, final String signatureAlgorithm, final PrivateKey privateKey, final int size,
+            final long timeout, final long healthCheckInterval) throws GeneralSecurityException {
+        this.providerName = providerName;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.privateKey = privateKey;
+        this.algorithmIdentifier = new DefaultSignatureAlgorithmIdentifierFinder().find(signatureAlgorithm);
+        this.size = size;
+        this.timeout = timeout;
+        this.healthCheckInterval = healthCheckInterval;
+        this.permits = new Semaphore(size, true);
+        idleSessions.offerFirst(createSession());
+    }
+
+    /**
+     * Gets the pool for signing with a key, if the key belongs to a PKCS#11 provider and signing session pools are enabled.
+     *
+     * @param signatureAlgorithm the JCA name of the signature algorithm
+     * @param providerName the name of the provider of the key
+     * @param privateKey the key to sign with
+     * @return the pool for signing with the key, or null if a pool should not or can not be used for the key
+     */
+    public static P11SigningSessionPool getInstance(final String signatureAlgorithm, final String providerName, final PrivateKey privateKey) {
+        if (signatureAlgorithm == null || providerName == null || privateKey == null) {
+            return null;
+        }
+        final PoolKey poolKey = new PoolKey(providerName, signatureAlgorithm, privateKey);
+        final P11SigningSessionPool pool = pools.get(poolKey);
+        if (pool != null) {
+            return pool;
+        }
+        final int size = CesecoreConfiguration.getP11SigningSessionPoolSize();
+        if (size <= 0 || !CesecoreConfiguration.isKeyStoreCacheEnabled() || !isPkcs11Provider(providerName)) {
+            // Without the key store cache, a new key reference is returned each time a key is fetched from the token
+            return null;
+        }
+        synchronized (pools) {
+            P11SigningSessionPool existing = pools.get(poolKey);
+            if (existing == null) {
+                try {
+                    existing = new P11SigningSessionPool(providerName, signatureAlgorithm, privateKey, size,
+                            CesecoreConfiguration.getP11SigningSessionPoolTimeout(), CesecoreConfiguration.getP11SigningSessionPoolHealthCheckInterval());
+                } catch (GeneralSecurityException | IllegalArgumentException e) {
+                    // Let the caller sign the usual way, which will report any error with the key or algorithm
+                    if (log.isDebugEnabled()) {
+                        log.debug("Not using a signing session pool for " + signatureAlgorithm + " with provider " + providerName + ": " + e.getMessage());
+                    }
+                    return null;
+                }
+                if (pools.size() >= MAX_POOLS) {
+                    log.info("More than " + MAX_POOLS + " PKCS#11 signing session pools. Removing all pools.");
+                    pools.clear();
+                }
+                pools.put(poolKey, existing);
+                if (log.isDebugEnabled()) {
+                    log.debug("Created signing session pool of size " + size + " for " + signatureAlgorithm + " with provider " + providerName + ".");
+                }
+            }
+            return existing;
+        }
+    }
+
+    /**
+     * Removes the pools of all keys of a provider, so that the sessions of keys that are no longer used or have been replaced are not kept.
+     * Signatures that are in progress complete with the removed pool.
+     *
+     * @param providerName the name of the provider of the PKCS#11 slot
+     */
+    public static void removePools(final String providerName) {
+        if (providerName == null) {
+            return;
+        }
+        synchronized (pools) {
+            for (final Iterator<PoolKey> iterator = pools.keySet().iterator(); iterator.hasNext();) {
+                if (providerName.equals(iterator.next().providerName)) {
+                    iterator.remove();
+                }
+            }
+        }
+        pkcs11Providers.remove(providerName);
+    }
+
+    /**
+     * Checks that a session of every pool can sign.
+     *
+     * @return the error messages of failed pools, or null if all pools are ok
+     */
+    public static String healthCheckPools() {
+        final StringBuilder sb = new StringBuilder();
+        for (final P11SigningSessionPool pool : new ArrayList<P11SigningSessionPool>(pools.values())) {
+            final String error = pool.healthCheck();
+            if (error != null) {
+                sb.append('\n').append(error);
+            }
+        }
+        return sb.length() == 0 ? null : sb.toString();
+    }
+
+    /** @return true if the provider is a PKCS#11 provider, whose signatures benefit from pooling */
+    private static boolean isPkcs11Provider(final String providerName) {
+        Boolean ret = pkcs11Providers.get(providerName);
+        if (ret == null) {
+            final Provider provider = Security.getProvider(providerName);
+            if (provider == null) {
+                return false;
+            }
+            final String className = provider.getClass().getName();
+            ret = Boolean.valueOf(Pkcs11SlotLabel.SUN_PKCS11_CLASS.equals(className) || Pkcs11SlotLabel.IAIK_PKCS11_CLASS.equals(className));
+            pkcs11Providers.put(providerName, ret);
+        }
+        return ret.booleanValue();
+    }
+
+    /**
+     * Signs data with a session from the pool, waiting for a session if all are in use.
+     *
+     * @param data the data to sign
+     * @return the signature
+     * @throws SignatureException if no session became available within the timeout, or if signing failed
+     */
+    public byte[] sign(final byte[] data) throws SignatureException {
+        return sign(data, 0, data.length);
+    }
+
+    /**
+     * Signs part of a buffer with a session from the pool, waiting for a session if all are in use.
+     *
+     * @param data the buffer with the data to sign
+     * @param offset the offset of the data in the buffer
+     * @param length the length of the data
+     * @return the signature
+     * @throws SignatureException if no session became available within the timeout, or if signing failed
+     */
+    public byte[] sign(final byte[] data, final int offset, final int length) throws SignatureException {
+        try {
+            if (!permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+                throw new SignatureException("No signing session for " + signatureAlgorithm + " with provider " + providerName + " became available within "
+                        + timeout + " ms.");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SignatureException("Interrupted while waiting for a signing session.", e);
+        }
+        try {
+            final Session session = borrowSession();
+            final byte[] signature;
+            try {
+                session.signature.update(data, offset, length);
+                signature = session.signature.sign();
+            } catch (SignatureException | RuntimeException e) {
+                // The session may be left in an undefined state, so it is not returned to the pool
+                log.info("Signing with " + signatureAlgorithm + " and provider " + providerName + " failed. Discarding the session: " + e.getMessage());
+                throw e;
+            }
+            session.lastUsed = System.currentTimeMillis();
+            idleSessions.offerFirst(session);
+            return signature;
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Signs test data with an idle or new session.
+     *
+     * @return an error message, or null if the pool could sign
+     */
+    public String healthCheck() {
+        try {
+            sign(HEALTH_CHECK_DATA);
+            return null;
+        } catch (GeneralSecurityException | RuntimeException e) {
+            return "Signing session pool for " + signatureAlgorithm + " with provider " + providerName + " can not sign: " + e.getMessage();
+        }
+    }
+
+    /** @return a content signer that signs with a session from this pool */
+    public ContentSigner getContentSigner() {
+        return new PooledContentSigner();
+    }
+
+    /** @return the maximum number of sessions that sign concurrently */
+    public int getSize() {
+        return size;
+    }
+
+    /** @return the number of sessions that are currently not in use */
+    public int getIdleSessions() {
+        return idleSessions.size();
+    }
+
+    /** @return an idle session that is ready to use, or a new session */
+    private Session borrowSession() throws SignatureException {
+        Session session;
+        while ((session = idleSessions.pollFirst()) != null) {
+            if (System.currentTimeMillis() - session.lastUsed < healthCheckInterval) {
+                return session;
+            }
+            try {
+                session.signature.update(HEALTH_CHECK_DATA);
+                session.signature.sign();
+                return session;
+            } catch (SignatureException | RuntimeException e) {
+                log.info("Idle signing session for " + signatureAlgorithm + " with provider " + providerName + " failed health check. Discarding the session: "
+                        + e.getMessage());
+            }
+        }
+        try {
+            return createSession();
+        } catch (GeneralSecurityException e) {
+            throw new SignatureException("Could not create signing session for " + signatureAlgorithm + " with provider " + providerName + ".", e);
+        }
+    }
+
+    private Session createSession() throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+        final Signature signature = Signature.getInstance(signatureAlgorithm, providerName);
+        signature.initSign(privateKey);
+        return new Session(signature);
+    }
+
+    /** Collects the data to sign, and signs it with a session from the pool in a single call. */
+    private class PooledContentSigner implements ContentSigner {
+        private final SignedData data = new SignedData();
+
+        @Override
+        public AlgorithmIdentifier getAlgorithmIdentifier() {
+            return algorithmIdentifier;
+        }
+
+        @Override
+        public OutputStream getOutputStream() {
+            return data;
+        }
+
+        @Override
+        public byte[] getSignature() {
+            try {
+                return data.sign();
+            } catch (SignatureException e) {
+                throw new RuntimeOperatorException("exception obtaining signature: " + e.getMessage(), e);
+            } finally {
+                data.reset();
+            }
+        }
+
+        /** Gives the signature direct access to the collected data, without copying it */
+        private class SignedData extends ByteArrayOutputStream {
+            private SignedData() {
+                super(4096);
+            }
+
+            private byte[] sign() throws SignatureException {
+                return P11SigningSessionPool.this.sign(buf, 0, count);
+            }
+        }
+    }
+}
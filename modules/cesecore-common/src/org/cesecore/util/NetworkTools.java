@@ -13,10 +13,18 @@
 package org.cesecore.util;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
 
 import org.apache.log4j.Logger;
 
@@ -82,4 +90,100 @@ public abstract class NetworkTools {
         }
         return baos.toByteArray();
     }
+
+    /**
+     * Downloads the data found at the provided HTTP URL to a file, without keeping it in memory.
+     * 
+     * If the file already contains the beginning of the data from an earlier interrupted download, only the remaining data is requested
+     * with an HTTP range request. The Last-Modified time of the first response is kept as the modification time of the file and sent in an
+     * If-Range header, so the server will send the complete data instead if it has changed since. The file is kept after an I/O error, so
+     * the download can be resumed by calling this method again.
+     * 
+     * @param url the URL to download from
+     * @param file the file to write the data to, that may contain the beginning of the data from an earlier call
+     * @param maxSize the maximum allowed size of the data. The file is deleted if the data is larger.
+     * @return true if the complete data is available in the file, false otherwise
+     */
+    public static boolean downloadDataFromUrlToFile(final URL url, final File file, final long maxSize) {
+        final long existingLength = file.exists() ? file.length() : 0;
+        long lastModified = 0;
+        // Keep the data of an earlier download if the server can't be reached
+        boolean keepFile = existingLength > 0;
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            if (existingLength > 0) {
+                final SimpleDateFormat httpDateFormat = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+                httpDateFormat.setTimeZone(TimeZone.getTimeZone("GMT"));
+                connection.setRequestProperty("Range", "bytes=" + existingLength + "-");
+                connection.setRequestProperty("If-Range", httpDateFormat.format(new Date(file.lastModified())));
+            }
+            final int responseCode = connection.getResponseCode();
+            final boolean append;
+            if (responseCode == HttpURLConnection.HTTP_PARTIAL && existingLength > 0) {
+                final String contentRange = connection.getHeaderField("Content-Range");
+                if (contentRange == null || !contentRange.startsWith("bytes " + existingLength + "-")) {
+                    log.info("Unexpected Content-Range '" + contentRange + "' when resuming download from " + url.toString() + ".");
+                    keepFile = false;
+                    return false;
+                }
+                append = true;
+                if (log.isDebugEnabled()) {
+                    log.debug("Resuming download from " + url.toString() + " at " + existingLength + " bytes.");
+                }
+            } else if (responseCode == HttpURLConnection.HTTP_OK) {
+                append = false;
+            } else {
+                log.info("Failed to download data from " + url.toString() + ". HTTP response code was " + responseCode + ".");
+                if (responseCode == 416) {
+                    // Range Not Satisfiable, so the data of the earlier download is not usable
+                    keepFile = false;
+                }
+                return false;
+            }
+            lastModified = connection.getLastModified();
+            // Resuming requires that we can detect if the data changes
+            keepFile = lastModified > 0;
+            long downloadedBytes = append ? existingLength : 0;
+            final byte data[] = new byte[32768];    // 32KiB at the time
+            final InputStream is = connection.getInputStream();
+            try {
+                final OutputStream os = new FileOutputStream(file, append);
+                try {
+                    int count;
+                    while ((count = is.read(data)) != -1) {
+                        downloadedBytes += count;
+                        if (downloadedBytes > maxSize) {
+                            log.info("Failed to download data from " + url.toString() + ". Size exceedes " + maxSize + " bytes.");
+                            keepFile = false;
+                            return false;
+                        }
+                        os.write(data, 0, count);
+                    }
+                } finally {
+                    os.close();
+                }
+            } finally {
+                is.close();
+            }
+            keepFile = true;
+            return true;
+        } catch (IOException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to download data from " + url.toString(), e);
+            }
+            return false;
+        } finally {
+            if (connection != null) {
+                connection.disconnect();
+            }
+            if (!keepFile) {
+                if (file.exists() && !file.delete()) {
+                    log.warn("Failed to delete incomplete download " + file.getAbsolutePath());
+                }
+            } else if (lastModified > 0) {
+                file.setLastModified(lastModified);
+            }
+        }
+    }
 }
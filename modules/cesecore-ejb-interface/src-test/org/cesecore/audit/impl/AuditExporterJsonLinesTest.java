@@ -0,0 +1,56 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.cesecore.audit.audit.AuditExporter;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * Test JSON Lines exporter implementation.
+ * 
+ * @version $Id$
+ */
+public class AuditExporterJsonLinesTest {
+
+    private static final Logger log = Logger.getLogger(AuditExporterJsonLinesTest.class);
+
+    @Test
+    public void testExportOneObjectPerLine() throws IOException {
+        final AuditExporter auditExporter = new AuditExporterJsonLines();
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        auditExporter.setOutputStream(baos);
+        auditExporter.startObjectLabel("entries");
+        auditExporter.writeStartObject();
+        auditExporter.writeField("key1", Long.MIN_VALUE);
+        auditExporter.writeField("key2", "ĞİŞğışÅÄÖåäö\"quoted\"\\back\nslash\r\t\u0001\u2028");
+        auditExporter.writeEndObject();
+        auditExporter.writeStartObject();
+        auditExporter.writeField("key1", 1);
+        auditExporter.writeField("key2", null);
+        auditExporter.writeEndObject();
+        auditExporter.endObjectLabel();
+        auditExporter.close();
+        final String result = baos.toString("UTF8");
+        log.info(result);
+        final String[] lines = result.split("\n", -1);
+        Assert.assertEquals("Each log entry should be on a line of its own.", 3, lines.length);
+        Assert.assertEquals("{\"key1\":-9223372036854775808,\"key2\":\"ĞİŞğışÅÄÖåäö\\\"quoted\\\"\\\\back\\nslash\\r\\t\\u0001\\u2028\"}", lines[0]);
+        Assert.assertEquals("{\"key1\":1,\"key2\":null}", lines[1]);
+        Assert.assertEquals("", lines[2]);
+    }
+}
@@ -26,6 +26,7 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 import org.apache.commons.configuration.Configuration;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang.time.FastDateFormat;
 import org.apache.log4j.Logger;
 import org.cesecore.audit.audit.AuditExporter;
@@ -196,6 +197,15 @@ public class AuditDevicesConfig {
         return ret;
 	}
 
+	/**
+	 * @param partitionName identifies the node and time range of the partition, and may only contain characters that are safe in file names
+	 * @return the file name of one partition of the current export.
+	 */
+	public static File getExportFile(final Properties properties, final Date exportDate, final String partitionName) throws IOException {
+		final File file = getExportFile(properties, exportDate);
+		return new File(file.getParentFile(), FilenameUtils.removeExtension(file.getName()) + "-" + partitionName + ".log");
+	}
+
     /** Parameter to specify the number of logs to be fetched in each validation round trip. */
     public static int getAuditLogValidationFetchSize(final Properties properties) {
         return getInt(properties, "validate.fetchsize", 1000);
@@ -206,8 +216,29 @@ public class AuditDevicesConfig {
         return getInt(properties, "export.fetchsize", 1000);
     }
 
+    /**
+     * Parameter to specify the length in hours of the time ranges that the export is partitioned into. Each node and time range is exported,
+     * signed and optionally deleted separately. The default 0 exports everything to a single file.
+     */
+    public static int getAuditLogExportPartitionHours(final Properties properties) {
+        return getInt(properties, "export.partitionhours", 0);
+    }
+
+    /** Parameter to specify the number of partitions that are exported in parallel. */
+    public static int getAuditLogExportThreads(final Properties properties) {
+        return getInt(properties, "export.threads", 4);
+    }
+
+    /** Parameter to specify the maximum number of logs that are deleted in each transaction after export. */
+    public static int getAuditLogDeleteBatchSize(final Properties properties) {
+        return getInt(properties, "export.deletebatchsize", 10000);
+    }
+
     private static int getInt(final Properties properties, final String key, final int defaultValue) {
         int ret = defaultValue;
+        if (properties == null) {
+            return ret;
+        }
         try {
             ret = Integer.valueOf(properties.getProperty(key, String.valueOf(ret)));
         } catch (NumberFormatException e) {
@@ -68,7 +68,7 @@ public class SigningFileOutputStream extends FileOutputStream {
      */
     public SigningFileOutputStream(final File file, final CryptoToken cryptoToken, final Map<String, Object> signatureDetails) throws FileNotFoundException, CryptoTokenOfflineException, NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
 		super(file);
-    	signatureFilename = String.format("%s.sig", FilenameUtils.removeExtension(file.getAbsolutePath()));
+    	signatureFilename = getSignatureFilename(file);
     	final String keyAlias = (String) signatureDetails.get(SigningFileOutputStream.EXPORT_SIGN_KEYALIAS);
     	final PrivateKey privateKey = cryptoToken.getPrivateKey(keyAlias);
     	final PublicKey publicKey = cryptoToken.getPublicKey(keyAlias);
@@ -117,6 +117,11 @@ public class SigningFileOutputStream extends FileOutputStream {
 		}
     }
     
+    /** @return the full pathname of the signature file of the export file */
+    public static String getSignatureFilename(final File file) {
+        return String.format("%s.sig", FilenameUtils.removeExtension(file.getAbsolutePath()));
+    }
+
     public String writeSignature() throws SignatureException, AuditLogExporterException, IOException {
     	byte[] signedData = signature.sign();
     	if (!signValidate.verify(signedData)) {
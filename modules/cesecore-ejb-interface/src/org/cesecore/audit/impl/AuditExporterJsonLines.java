@@ -0,0 +1,122 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+import org.cesecore.audit.audit.AuditExporter;
+
+/**
+ * Compact streaming exporter that writes each log entry as a JSON object on a line of its own (UTF-8 encoded "JSON Lines").
+ *
+ * Unlike the XML exporter nothing is kept in memory between the log entries, and unlike the tab-separated exporter all values are
+ * escaped, so the export can be parsed line by line and contains the log entries exactly as they were stored.
+ *
+ * @version $Id$
+ */
+public class AuditExporterJsonLines implements AuditExporter {
+
+    private Writer writer;
+    private boolean isFirstField;
+
+    @Override
+    public void setOutputStream(final OutputStream outputStream) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8), 64 * 1024);
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+
+    @Override
+    public void writeStartObject() throws IOException {
+        writer.write('{');
+        isFirstField = true;
+    }
+
+    @Override
+    public void writeField(final String key, final long value) throws IOException {
+        writeKey(key);
+        writer.write(Long.toString(value));
+    }
+
+    @Override
+    public void writeField(final String key, final String value) throws IOException {
+        writeKey(key);
+        writeString(value);
+    }
+
+    @Override
+    public void writeEndObject() throws IOException {
+        writer.write("}\n");
+    }
+
+    @Override
+    public void startObjectLabel(final String label) throws IOException {
+    }
+
+    @Override
+    public void endObjectLabel() throws IOException {
+    }
+
+    private void writeKey(final String key) throws IOException {
+        if (!isFirstField) {
+            writer.write(',');
+        }
+        isFirstField = false;
+        writeString(key);
+        writer.write(':');
+    }
+
+    /** Writes the value as a JSON string, with all characters that may not appear in a JSON string or would break the line escaped. */
+    private void writeString(final String value) throws IOException {
+        if (value == null) {
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                writer.write("\\\"");
+                break;
+            case '\\':
+                writer.write("\\\\");
+                break;
+            case '\n':
+                writer.write("\\n");
+                break;
+            case '\r':
+                writer.write("\\r");
+                break;
+            case '\t':
+                writer.write("\\t");
+                break;
+            default:
+                if (c < 0x20 || c == '\u2028' || c == '\u2029') {
+                    writer.write(String.format("\\u%04x", Integer.valueOf(c)));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
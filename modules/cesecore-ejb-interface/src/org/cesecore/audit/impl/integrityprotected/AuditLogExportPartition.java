@@ -0,0 +1,97 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.audit.impl.integrityprotected;
+
+import java.io.Serializable;
+
+import org.apache.commons.lang.time.FastDateFormat;
+import org.cesecore.audit.audit.AuditLogExportReport;
+import org.cesecore.util.ValidityDate;
+
+/**
+ * The log entries of one node within a time range, that are exported to a file of their own, signed and optionally deleted independently of
+ * the rest of the integrity protected audit log. Used internally by {@link IntegrityProtectedAuditorSessionLocal} to export partitions
+ * in parallel.
+ *
+ * @version $Id$
+ */
+public class AuditLogExportPartition implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+    private static final String NAME_DATE_FORMAT = "yyyy-MM-dd-HHmmss";
+
+    private final String nodeId;
+    private final long fromTime;
+    private final long toTime;
+    private final AuditLogExportReport report = new AuditLogExportReport();
+    private long firstSequenceNumber = -1;
+    private long lastSequenceNumber = -1;
+    private boolean resumed = false;
+
+    /**
+     * @param nodeId the node that wrote the log entries
+     * @param fromTime the time stamp of the first log entries in the partition, inclusive
+     * @param toTime the time stamp of the last log entries in the partition, inclusive
+     */
+    public AuditLogExportPartition(final String nodeId, final long fromTime, final long toTime) {
+        this.nodeId = nodeId;
+        this.fromTime = fromTime;
+        this.toTime = toTime;
+    }
+
+    public String getNodeId() {
+        return nodeId;
+    }
+
+    public long getFromTime() {
+        return fromTime;
+    }
+
+    public long getToTime() {
+        return toTime;
+    }
+
+    /** @return a name of the partition that can be used in file names */
+    public String getName() {
+        return nodeId.replaceAll("[^A-Za-z0-9._-]", "_") + "-" + FastDateFormat.getInstance(NAME_DATE_FORMAT, ValidityDate.TIMEZONE_UTC).format(fromTime);
+    }
+
+    /** @return the result of verifying and exporting the partition */
+    public AuditLogExportReport getReport() {
+        return report;
+    }
+
+    /** @return the sequence number of the first exported log entry, or -1 if there were no log entries */
+    public long getFirstSequenceNumber() {
+        return firstSequenceNumber;
+    }
+
+    /** @return the sequence number of the last exported log entry, or -1 if there were no log entries */
+    public long getLastSequenceNumber() {
+        return lastSequenceNumber;
+    }
+
+    public void setSequenceNumbers(final long firstSequenceNumber, final long lastSequenceNumber) {
+        this.firstSequenceNumber = firstSequenceNumber;
+        this.lastSequenceNumber = lastSequenceNumber;
+    }
+
+    /** @return true if the partition had already been exported and signed by an earlier, interrupted export */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    public void setResumed(final boolean resumed) {
+        this.resumed = resumed;
+    }
+}
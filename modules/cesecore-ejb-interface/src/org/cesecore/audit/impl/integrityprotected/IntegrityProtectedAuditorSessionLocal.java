@@ -13,13 +13,18 @@
 package org.cesecore.audit.impl.integrityprotected;
 
 import java.util.Date;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Future;
 
 import javax.ejb.Local;
 
 import org.cesecore.audit.Auditable;
+import org.cesecore.audit.audit.AuditExporter;
+import org.cesecore.audit.audit.AuditLogExporterException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.keys.token.CryptoToken;
 
 /**
  * Allows auditing of securely logged events.
@@ -39,4 +44,23 @@ public interface IntegrityProtectedAuditorSessionLocal extends Auditable {
 	 * @throws AuthorizationDeniedException unless token has StandardRules.AUDITLOGEXPORT rights
 	 */
 	int deleteRows(AuthenticationToken token, Date timestamp, Properties properties) throws AuthorizationDeniedException;
+
+	/**
+	 * Delete the log entries of a node within a time and sequence number range in a transaction of its own.
+	 * Used internally to delete exported log entries in batches.
+	 * @return number of rows deleted
+	 */
+	int deleteRows(String nodeId, long fromTime, long toTime, long fromSequenceNumber, long toSequenceNumber);
+
+	/**
+	 * Verify, export and sign one partition of the log to a file of its own, and optionally delete the exported log entries in batches.
+	 * If the partition has already been exported and signed by an earlier export with the same timestamp, that was interrupted before it
+	 * was completed, the partition is not exported again.
+	 * Used internally to export partitions in parallel.
+	 * @param timestamp the time that the whole export is made up until, which is part of the file name
+	 * @return the partition, with the result of the export
+	 */
+	Future<AuditLogExportPartition> exportPartition(AuthenticationToken token, CryptoToken cryptoToken, AuditLogExportPartition partition, Date timestamp,
+	        boolean deleteAfterExport, Map<String, Object> signatureDetails, Properties properties, Class<? extends AuditExporter> c)
+	        throws AuditLogExporterException;
 }
@@ -18,6 +18,7 @@ import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
@@ -286,6 +287,17 @@ public interface CertificateStoreSession {
      *         expire date, with last expire date first, or empty list if none found.
      */
     List<CertificateDataWrapper> getCertificateDataByUsername(String username, boolean excludeExpired, List<Integer> excludedStatuses);
+
+    /**
+     * Finds the meta data of the certificate(s) for a given username, without reading the certificates themselves. Use this when only the
+     * meta data is needed, since a user may have many certificates.
+     * 
+     * @param username the username of the certificate(s) that will be retrieved
+     * @param excludeExpired true if expired certificates should be excluded
+     * @param excludedStatuses a list of statuses to exclude in the query or null to return all
+     * @return List of CertificateInfo ordered by expire date, with last expire date first, or empty list if none found.
+     */
+    List<CertificateInfo> getCertificateInfosByUsername(String username, boolean excludeExpired, List<Integer> excludedStatuses);
     
     /**
      * Finds certificate(s) for a given username and status.
@@ -319,6 +331,14 @@ public interface CertificateStoreSession {
      */
     CertificateInfo getCertificateInfo(String fingerprint);
 
+    /**
+     * Gets the certificate info, which is all fields except the certificate itself, of a number of certificates.
+     * 
+     * @param fingerprints the fingerprints of the certificates
+     * @return CertificateInfo of the certificates that exist in no particular order, never null.
+     */
+    List<CertificateInfo> getCertificateInfos(Collection<String> fingerprints);
+
     /**
      * Finds a certificate based on fingerprint. 
      * You can get fingerprint by for example "String fingerprint = CertTools.getFingerprintAsString(certificate);"
@@ -351,6 +371,10 @@ public interface CertificateStoreSession {
      * Method revoking all certificates generated by the specified issuerdn. Sets revocationDate to current time. 
      * Should only be called by when a CA is about to be revoked.
      * 
+     * The certificates are revoked in chunks of database.massrevocationchunksize certificates, and each chunk is committed
+     * in its own transaction. If this method fails, the certificates that were revoked stay revoked, and calling it again
+     * revokes the rest.
+     * 
      * @param admin    the administrator performing the event.
      * @param issuerdn the dn of CA about to be revoked
      * @param reason   the reason of revocation.
@@ -373,6 +397,29 @@ public interface CertificateStoreSession {
      */
     CertificateStatus getStatus(String issuerDN, BigInteger serno);
 
+    /**
+     * Get the status of many certificates from the same issuer, with IN-list queries that only read the status columns.
+     * 
+     * @param issuerDN the issuer of the sought certificates
+     * @param sernos the serial numbers of the sought certificates
+     * @return the status of each found certificate by serial number, never null. Certificates that are not found are not included.
+     */
+    Map<BigInteger, CertificateStatus> getStatuses(String issuerDN, Collection<BigInteger> sernos);
+
+    /**
+     * Get a page of the certificate change feed, that is the certificates that were issued, revoked or otherwise changed after a position in the
+     * feed, ordered by update time and fingerprint. The next page is found by passing the update time and fingerprint of the last certificate of
+     * this page. Changes more recent than database.changefeeddelay are held back, so changes committed by transactions that were still running
+     * when a page was read are not skipped.
+     * 
+     * @param afterUpdateTime the update time of the last certificate of the previous page, or -1 to start from the beginning
+     * @param afterFingerprint the fingerprint of the last certificate of the previous page, ignored when afterUpdateTime is -1
+     * @param issuerDNs the issuer DNs of the certificates to include
+     * @param maxResults the maximum number of certificates to return
+     * @return the CertificateInfo representation of the changed certificates, never null
+     */
+    List<CertificateInfo> getCertificateChanges(long afterUpdateTime, String afterFingerprint, Collection<String> issuerDNs, int maxResults);
+
     /**
      * Performs the same operation as getStatus, but returns a richer object which also contains the certificate, in order to save on database 
      * lookups when both objects are required. Issuer + serial number are always unique. 
@@ -22,6 +22,7 @@ import javax.ejb.Local;
 
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
 import org.cesecore.certificates.certificate.request.RequestMessage;
 
 /**
@@ -77,6 +78,19 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
     CertificateDataWrapper storeCertificateNoAuth(AuthenticationToken admin, Certificate incert, String username,
             String cafp, int status, int type, int certificateProfileId, int endEntityProfileId, String tag, long updateTime);
 
+    /**
+     * Stores a certificate without checking authorization, relying on the unique index on (serialNumber, issuerDN) instead of a lookup to
+     * ensure that the serial number has not been used before by the issuer. The insert is flushed immediately, so that a collision is
+     * detected here instead of when the transaction commits. Since the failed insert marks the transaction for rollback, the certificate can
+     * not be stored with a new serial number in the same transaction.
+     * 
+     * @see #storeCertificateNoAuth(AuthenticationToken, Certificate, String, String, int, int, int, int, String, long)
+     * @throws CertificateSerialNumberException if the unique index rejected the serial number
+     */
+    CertificateDataWrapper storeCertificateNoAuthUniqueIndex(AuthenticationToken admin, Certificate incert, String username, String cafp,
+            int status, int type, int certificateProfileId, int endEntityProfileId, String tag, long updateTime)
+            throws CertificateSerialNumberException;
+
     /** 
      * Retrieve the full wrapped CertificateData and Base64CertData objects.
      * @return null of no data for the specified fingerprint exists
@@ -102,6 +116,14 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     List<Object[]> findExpirationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin, long activeNotifiedExpireDateMax, long activeExpireDateMin);
     
+    /**
+     * Update the status of several certs in the database, in one transaction.
+     * @param fingerprints the fingerprints of the certificates to update
+     * @param status one of CertificateConstants.CERT_... except CERT_ACTIVE and CERT_REVOKED
+     * @return the number of certificates that were updated, which is lower than the number of fingerprints if some certificates did not exist
+     */
+    int setStatus(AuthenticationToken admin, Collection<String> fingerprints, int status) throws AuthorizationDeniedException;
+
     /**
      * Query if we have a clear cut case where no username or the provided username is the only user of the subjectDN and subjectKeyId.
      * @param issuerDN The CA's subject
@@ -240,6 +262,19 @@ public interface CertificateStoreSessionLocal extends CertificateStoreSession {
      */
     boolean setRevokeStatusNoAuth(AuthenticationToken admin, CertificateData certificateData, Date revokeDate, int reason) throws CertificateRevokeException;
 
+    /**
+     * Revokes a chunk of the certificates of a CA that is being revoked, in a new transaction and without checking for authorization. Used by
+     * {@link CertificateStoreSession#revokeAllCertByCA(AuthenticationToken, String, int)}, which is why it is important that this method is _local only_.
+     * 
+     * @param issuerDN the DN of the CA, in the form stored in the database
+     * @param afterFingerprint the certificates with fingerprints greater than this are revoked, "" for the first chunk
+     * @param lastFingerprint the certificates with fingerprints less than or equal to this are revoked
+     * @param revocationDate when the certificates were revoked
+     * @param reason the reason of the revocation. (One of the RevokedCertInfo.REVOCATION_REASON constants.)
+     * @return the number of certificates that were revoked. Certificates that are already revoked are not changed.
+     */
+    int revokeCertificatesInNewTransaction(String issuerDN, String afterFingerprint, String lastFingerprint, long revocationDate, int reason);
+
     /**
      * Changes a certificate from CERT_ROLLOVERPENDING to CERT_ACTIVE. If the certificate status is already CERT_ACTIVE, then it does nothing.
      * @param admin Administrator performing the operation
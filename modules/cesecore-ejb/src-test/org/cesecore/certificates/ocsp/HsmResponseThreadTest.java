@@ -0,0 +1,113 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.ocsp;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Date;
+
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1GeneralizedTime;
+import org.bouncycastle.asn1.DERGeneralizedTime;
+import org.bouncycastle.asn1.DERSequence;
+import org.bouncycastle.asn1.ocsp.CertStatus;
+import org.bouncycastle.asn1.ocsp.ResponseData;
+import org.bouncycastle.asn1.ocsp.RevokedInfo;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
+import org.bouncycastle.asn1.x509.CRLReason;
+import org.bouncycastle.asn1.x509.Extensions;
+import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.cert.ocsp.BasicOCSPResp;
+import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
+import org.bouncycastle.cert.ocsp.CertificateID;
+import org.bouncycastle.cert.ocsp.RevokedStatus;
+import org.bouncycastle.jce.provider.BouncyCastleProvider;
+import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
+import org.cesecore.certificates.certificate.CertificateStatus;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keybind.impl.OcspKeyBinding;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Verifies that responses assembled from the pre-built parts of an OcspSigningCacheEntry are identical to the ones built by
+ * BouncyCastle's BasicOCSPRespBuilder.
+ *
+ * @version $Id$
+ */
+public class HsmResponseThreadTest {
+
+    private static OcspSigningCacheEntry ocspSigningCacheEntry;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        final KeyPair keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+        final X509Certificate caCertificate = CertTools.genSelfCert("CN=HsmResponseThreadTest", 365, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, true);
+        ocspSigningCacheEntry = new OcspSigningCacheEntry(caCertificate, CertificateStatus.OK, Arrays.asList(caCertificate), null, keyPair.getPrivate(),
+                BouncyCastleProvider.PROVIDER_NAME, null, OcspKeyBinding.ResponderIdType.KEYHASH);
+    }
+
+    @Test
+    public void testResponseIdenticalToBasicOcspRespBuilder() throws Exception {
+        final Date producedAt = new Date();
+        final Date thisUpdate = new Date(producedAt.getTime() - 1000L);
+        final Date nextUpdate = new Date(producedAt.getTime() + 3600000L);
+        final Date revocationTime = new Date(producedAt.getTime() - 86400000L);
+        final CertificateID goodCertId = OcspSigningCache.getCertificateIDFromCertificate(ocspSigningCacheEntry.getIssuerCaCertificate()).get(0);
+        final CertificateID revokedCertId = CertificateID.deriveCertificateID(goodCertId, BigInteger.valueOf(4711));
+        // Reference response built by BouncyCastle
+        final BasicOCSPRespBuilder basicOCSPRespBuilder = new BasicOCSPRespBuilder(ocspSigningCacheEntry.getRespId());
+        basicOCSPRespBuilder.addResponse(goodCertId, null, thisUpdate, nextUpdate, null);
+        basicOCSPRespBuilder.addResponse(revokedCertId, new RevokedStatus(revocationTime, CRLReason.keyCompromise), thisUpdate, null, null);
+        final JcaX509CertificateHolder[] chain = CertTools.convertToX509CertificateHolder(ocspSigningCacheEntry.getResponseCertChain());
+        final BasicOCSPResp expected = basicOCSPRespBuilder.build(new JcaContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA)
+                .setProvider(BouncyCastleProvider.PROVIDER_NAME).build(ocspSigningCacheEntry.getPrivateKey()), chain, producedAt);
+        // The same response assembled from the pre-built parts of the cache entry
+        final ASN1EncodableVector singleResponses = new ASN1EncodableVector();
+        singleResponses.add(new SingleResponse(goodCertId.toASN1Primitive(), new CertStatus(), new DERGeneralizedTime(thisUpdate),
+                new DERGeneralizedTime(nextUpdate), (Extensions) null));
+        singleResponses.add(new SingleResponse(revokedCertId.toASN1Primitive(), new CertStatus(new RevokedInfo(new ASN1GeneralizedTime(revocationTime),
+                CRLReason.lookup(CRLReason.keyCompromise))), new DERGeneralizedTime(thisUpdate), null, (Extensions) null));
+        final ResponseData responseData = new ResponseData(ocspSigningCacheEntry.getResponderId(), new ASN1GeneralizedTime(producedAt),
+                new DERSequence(singleResponses), (Extensions) null);
+        final BasicOCSPResp actual = new HsmResponseThread(responseData,
+                ocspSigningCacheEntry.getContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA), ocspSigningCacheEntry.getPrivateKey(),
+                ocspSigningCacheEntry.getResponseCertificates()).call();
+        assertArrayEquals("Response assembled from pre-built parts differs from BasicOCSPRespBuilder.", expected.getEncoded(), actual.getEncoded());
+        assertTrue("Response signature should verify.",
+                actual.isSignatureValid(CertTools.genContentVerifierProvider(ocspSigningCacheEntry.getSigningCertificate().getPublicKey())));
+    }
+
+    @Test
+    public void testPrebuiltPartsAreReused() {
+        assertSame("The signer builder should only be created once per signature algorithm.",
+                ocspSigningCacheEntry.getContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA),
+                ocspSigningCacheEntry.getContentSignerBuilder(AlgorithmConstants.SIGALG_SHA256_WITH_RSA));
+        assertEquals("Pre-built responder ID should match the RespID.", ocspSigningCacheEntry.getRespId().toASN1Primitive(),
+                ocspSigningCacheEntry.getResponderId());
+    }
+}
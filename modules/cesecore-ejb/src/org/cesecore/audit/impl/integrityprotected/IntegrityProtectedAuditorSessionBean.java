@@ -14,15 +14,20 @@ package org.cesecore.audit.impl.integrityprotected;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
@@ -54,6 +59,7 @@ import org.cesecore.dbprotection.DatabaseProtectionException;
 import org.cesecore.keys.token.CryptoToken;
 import org.cesecore.util.ValidityDate;
 import org.cesecore.util.query.Criteria;
+import org.cesecore.util.query.Elem;
 import org.cesecore.util.query.QueryCriteria;
 import org.cesecore.util.query.QueryGenerator;
 
@@ -93,13 +99,21 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public AuditLogExportReport exportAuditLogs(AuthenticationToken token, CryptoToken cryptoToken, Date timestamp, boolean deleteAfterExport,
 			Map<String, Object> signatureDetails, final Properties properties, final Class<? extends AuditExporter> c) throws AuditLogExporterException {
+        if (AuditDevicesConfig.getAuditLogExportPartitionHours(properties) > 0) {
+            return exportAuditLogPartitions(token, cryptoToken, timestamp, deleteAfterExport, signatureDetails, properties, c);
+        }
         final AuditLogExportReport report = new AuditLogExportReport();
         try {
             final File exportFile = AuditDevicesConfig.getExportFile(properties, timestamp);
+            final List<AuditLogExportPartition> partitions = getNodePartitions(timestamp);
             try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(exportFile, cryptoToken, signatureDetails)) {
                 final AuditExporter auditExporter = c.newInstance();
                 auditExporter.setOutputStream(signingFileOutputStream);
-                verifyAndOptionalExport(auditExporter, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+                for (final AuditLogExportPartition partition : partitions) {
+                    verifyAndOptionalExport(auditExporter, report, partition, AuditDevicesConfig.getAuditLogExportFetchSize(properties), true);
+                }
+                // Close the exporter first, so that everything it has written is covered by the signature
+                auditExporter.close();
                 report.setExportedFile(exportFile.getCanonicalPath());
                 if (log.isDebugEnabled()) {
                     log.debug("Exported " + report.getExportCount() + " rows.");
@@ -118,31 +132,187 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
                     if (log.isDebugEnabled()) {
                         log.debug("deleting exported logs");
                     }
-                    final int deletedRowCount = integrityProtectedAuditorSession.deleteRows(token, timestamp, properties);
+                    logDelete(token, timestamp);
+                    int deletedRowCount = 0;
+                    for (final AuditLogExportPartition partition : partitions) {
+                        deletedRowCount += deleteRowsInBatches(partition, AuditDevicesConfig.getAuditLogDeleteBatchSize(properties));
+                    }
                     if (log.isDebugEnabled()) {
                         log.debug("Deleted " + deletedRowCount + " rows from audit log after export.");
                     }
                 }
-                auditExporter.close();
             }
         } catch (final Exception e) {
             throw new AuditLogExporterException(e.getMessage(), e);
         }
         return report;
 	}
+
+	/**
+	 * Export the log partitioned by node and time range, with each partition in a file of its own. Partitions are exported in parallel
+	 * and deleted as soon as they have been exported and signed. An export that was interrupted can be resumed by exporting with the same
+	 * timestamp again, which skips the partitions that were already exported and signed.
+	 */
+	private AuditLogExportReport exportAuditLogPartitions(final AuthenticationToken token, final CryptoToken cryptoToken, final Date timestamp,
+	        final boolean deleteAfterExport, final Map<String, Object> signatureDetails, final Properties properties,
+	        final Class<? extends AuditExporter> c) throws AuditLogExporterException {
+        final AuditLogExportReport report = new AuditLogExportReport();
+        final long partitionLength = AuditDevicesConfig.getAuditLogExportPartitionHours(properties) * 3600000L;
+        final int threads = Math.max(AuditDevicesConfig.getAuditLogExportThreads(properties), 1);
+        final List<AuditLogExportPartition> partitions = getTimePartitions(timestamp, partitionLength);
+        if (log.isDebugEnabled()) {
+            log.debug("Exporting " + partitions.size() + " partitions using " + threads + " threads.");
+        }
+        if (deleteAfterExport) {
+            // The partitions are deleted as soon as each of them has been exported
+            logDelete(token, timestamp);
+        }
+        final List<Future<AuditLogExportPartition>> running = new ArrayList<Future<AuditLogExportPartition>>();
+        final List<AuditLogExportPartition> exported = new ArrayList<AuditLogExportPartition>();
+        Throwable failure = null;
+        for (final AuditLogExportPartition partition : partitions) {
+            if (running.size() >= threads) {
+                failure = waitForPartition(running.remove(0), exported, failure);
+            }
+            if (failure != null) {
+                break;
+            }
+            running.add(integrityProtectedAuditorSession.exportPartition(token, cryptoToken, partition, timestamp, deleteAfterExport, signatureDetails,
+                    properties, c));
+        }
+        for (final Future<AuditLogExportPartition> future : running) {
+            failure = waitForPartition(future, exported, failure);
+        }
+        if (failure != null) {
+            throw new AuditLogExporterException("Export of audit log partition failed, export again with the same timestamp to resume: "
+                    + failure.getMessage(), failure);
+        }
+        AuditLogExportPartition previous = null;
+        for (final AuditLogExportPartition partition : exported) {
+            final AuditLogExportReport partitionReport = partition.getReport();
+            report.errors().addAll(partitionReport.errors());
+            report.warnings().addAll(partitionReport.warnings());
+            report.addExportCount(partitionReport.getExportCount());
+            report.getExportedFiles().addAll(partitionReport.getExportedFiles());
+            report.getSignatureFiles().addAll(partitionReport.getSignatureFiles());
+            // Sequence numbers must continue from one partition of a node to the next
+            if (previous != null && previous.getNodeId().equals(partition.getNodeId()) && previous.getLastSequenceNumber() != -1
+                    && partition.getFirstSequenceNumber() != -1 && partition.getFirstSequenceNumber() != previous.getLastSequenceNumber() + 1) {
+                report.warn(new AuditLogReportElem(previous.getLastSequenceNumber(), partition.getFirstSequenceNumber(), "missing log with sequence number "
+                        + (previous.getLastSequenceNumber() + 1) + " on nodeId " + partition.getNodeId()));
+            }
+            previous = partition;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Exported " + report.getExportCount() + " rows to " + report.getExportedFiles().size() + " files.");
+        }
+        logVerificationResult(report.errors().size(), timestamp, token);
+        final Map<String, Object> details = new LinkedHashMap<String, Object>();
+        details.put("deleteAfterExport", deleteAfterExport);
+        details.put("partitions", exported.size());
+        details.put("timestamp", ValidityDate.formatAsISO8601(new Date(), ValidityDate.TIMEZONE_UTC));
+        securityEventsLogger.log(EventTypes.LOG_EXPORT, EventStatus.SUCCESS, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, details);
+        return report;
+	}
+
+	/** Waits for the export of a partition, unless an earlier partition has failed, and @return the first failure if any */
+	private Throwable waitForPartition(final Future<AuditLogExportPartition> future, final List<AuditLogExportPartition> exported, final Throwable failure) {
+	    try {
+	        exported.add(future.get());
+	        return failure;
+	    } catch (InterruptedException e) {
+	        Thread.currentThread().interrupt();
+	        return failure == null ? e : failure;
+	    } catch (ExecutionException e) {
+	        log.info("Export of audit log partition failed: " + e.getCause().getMessage());
+	        return failure == null ? e.getCause() : failure;
+	    }
+	}
+
+	@Override
+	@Asynchronous
+	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+	public Future<AuditLogExportPartition> exportPartition(final AuthenticationToken token, final CryptoToken cryptoToken,
+	        final AuditLogExportPartition partition, final Date timestamp, final boolean deleteAfterExport, final Map<String, Object> signatureDetails,
+	        final Properties properties, final Class<? extends AuditExporter> c) throws AuditLogExporterException {
+	    final AuditLogExportReport report = partition.getReport();
+	    try {
+	        final File exportFile = AuditDevicesConfig.getExportFile(properties, timestamp, partition.getName());
+	        final File signatureFile = new File(SigningFileOutputStream.getSignatureFilename(exportFile));
+	        if (exportFile.exists() && signatureFile.exists()) {
+	            // Exported and signed by an earlier export, that was interrupted before all partitions had been exported and deleted
+	            log.info("Audit log partition " + partition.getName() + " has already been exported to " + exportFile.getCanonicalPath() + ".");
+	            partition.setResumed(true);
+	            setSequenceNumberRange(partition);
+	        } else {
+	            try (final SigningFileOutputStream signingFileOutputStream = new SigningFileOutputStream(exportFile, cryptoToken, signatureDetails)) {
+	                final AuditExporter auditExporter = c.newInstance();
+	                auditExporter.setOutputStream(signingFileOutputStream);
+	                verifyAndOptionalExport(auditExporter, report, partition, AuditDevicesConfig.getAuditLogExportFetchSize(properties), false);
+	                auditExporter.close();
+	                signingFileOutputStream.writeSignature();
+	            }
+	            if (log.isDebugEnabled()) {
+	                log.debug("Exported " + report.getExportCount() + " rows of partition " + partition.getName() + ".");
+	            }
+	        }
+	        report.addExportedFile(exportFile.getCanonicalPath(), signatureFile.getCanonicalPath());
+	        if (deleteAfterExport) {
+	            final int deletedRowCount = deleteRowsInBatches(partition, AuditDevicesConfig.getAuditLogDeleteBatchSize(properties));
+	            if (log.isDebugEnabled()) {
+	                log.debug("Deleted " + deletedRowCount + " rows of partition " + partition.getName() + " from audit log after export.");
+	            }
+	        }
+	    } catch (final Exception e) {
+	        throw new AuditLogExporterException(e.getMessage(), e);
+	    }
+	    return new AsyncResult<AuditLogExportPartition>(partition);
+	}
 	
 	/* Since we modify the database we need to run this in a transaction. */
 	@Override
 	@TransactionAttribute(TransactionAttributeType.REQUIRED)
 	public int deleteRows(final AuthenticationToken token, final Date timestamp, final Properties properties) {
-        final Map<String, Object> detailsDelete = new LinkedHashMap<String, Object>();
-        detailsDelete.put("timestamp", FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(timestamp));
-        securityEventsLogger.log(EventTypes.LOG_DELETE, EventStatus.VOID, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, detailsDelete);
+        logDelete(token, timestamp);
         // Delete all the exported logs (from all nodes)
 		final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
 		return buildConditionalQuery(entityManager, "DELETE FROM AuditRecordData a", queryCriteria, 0, 0).executeUpdate();
 	}
 
+	/* Since we modify the database we need to run this in a transaction. */
+	@Override
+	@TransactionAttribute(TransactionAttributeType.REQUIRED)
+	public int deleteRows(final String nodeId, final long fromTime, final long toTime, final long fromSequenceNumber, final long toSequenceNumber) {
+	    final QueryCriteria queryCriteria = QueryCriteria.create().add(Criteria.and(getPartitionCriteria(nodeId, fromTime, toTime),
+	            Criteria.and(Criteria.geq(AuditLogEntry.FIELD_SEQUENCENUMBER, fromSequenceNumber), Criteria.leq(AuditLogEntry.FIELD_SEQUENCENUMBER, toSequenceNumber))));
+	    return buildConditionalQuery(entityManager, "DELETE FROM AuditRecordData a", queryCriteria, 0, 0).executeUpdate();
+	}
+
+	/** Log that exported log entries up to the timestamp are about to be deleted. */
+	private void logDelete(final AuthenticationToken token, final Date timestamp) {
+        final Map<String, Object> detailsDelete = new LinkedHashMap<String, Object>();
+        detailsDelete.put("timestamp", FastDateFormat.getInstance(ValidityDate.ISO8601_DATE_FORMAT, TimeZone.getTimeZone("GMT")).format(timestamp));
+        securityEventsLogger.log(EventTypes.LOG_DELETE, EventStatus.VOID, ModuleTypes.SECURITY_AUDIT, ServiceTypes.CORE, token.toString(), null, null, null, detailsDelete);
+	}
+
+	/**
+	 * Delete the exported log entries of a partition in transactions of at most batchSize sequence numbers each, so that deleting a large
+	 * export does not hold long transactions and locks.
+	 * @return the number of deleted rows
+	 */
+	private int deleteRowsInBatches(final AuditLogExportPartition partition, final int batchSize) {
+	    if (partition.getFirstSequenceNumber() == -1) {
+	        return 0;
+	    }
+	    final long step = Math.max(batchSize, 1);
+	    int deletedRowCount = 0;
+	    for (long from = partition.getFirstSequenceNumber(); from <= partition.getLastSequenceNumber(); from += step) {
+	        deletedRowCount += integrityProtectedAuditorSession.deleteRows(partition.getNodeId(), partition.getFromTime(), partition.getToTime(), from,
+	                Math.min(from + step - 1, partition.getLastSequenceNumber()));
+	    }
+	    return deletedRowCount;
+	}
+
 	@Override
 	@TransactionAttribute(TransactionAttributeType.SUPPORTS)
 	public List<? extends AuditLogEntry> selectAuditLogs(final AuthenticationToken token, final int startIndex, final int max, final QueryCriteria criteria, final Properties properties) {
@@ -154,7 +324,9 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
 	public AuditLogValidationReport verifyLogsIntegrity(final AuthenticationToken token, final Date timestamp, final Properties properties) throws AuditLogValidatorException {
         final AuditLogValidationReport report = new AuditLogValidationReport();
         try {
-            verifyAndOptionalExport(null, report, timestamp, AuditDevicesConfig.getAuditLogExportFetchSize(properties));
+            for (final AuditLogExportPartition partition : getNodePartitions(timestamp)) {
+                verifyAndOptionalExport(null, report, partition, AuditDevicesConfig.getAuditLogExportFetchSize(properties), true);
+            }
         	// Log the success or failure depending on if verification returns error or not
         	logVerificationResult(report.errors().size(), timestamp, token);
         } catch (final Exception e) {
@@ -163,67 +335,135 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
         return report;
 	}
 
+	/** @return one partition for each node, with all log entries up until the timestamp */
+	private List<AuditLogExportPartition> getNodePartitions(final Date timestamp) {
+	    final List<AuditLogExportPartition> partitions = new ArrayList<AuditLogExportPartition>();
+	    for (final String nodeId : getNodeIds()) {
+	        partitions.add(new AuditLogExportPartition(nodeId, 0, timestamp.getTime()));
+	    }
+	    return partitions;
+	}
+
 	/**
-	 * Read batches of logs from the database. If the database integrity check fails, the batch will be processed row by row.
-	 * Results are added to the report.
+	 * @return partitions for each node and time range of the given length, that contain log entries up until the timestamp, in order of
+	 * node and time. The time ranges start at multiples of the partition length in UTC, so that they are the same in every export.
+	 */
+	private List<AuditLogExportPartition> getTimePartitions(final Date timestamp, final long partitionLength) {
+	    final List<AuditLogExportPartition> partitions = new ArrayList<AuditLogExportPartition>();
+	    final long lastTime = timestamp.getTime();
+	    for (final String nodeId : getNodeIds()) {
+	        // Skip time ranges without log entries, instead of creating empty partitions for them
+	        Long nextTime = getFirstTimeStamp(nodeId, 0, lastTime);
+	        while (nextTime != null) {
+	            final long fromTime = nextTime.longValue() - nextTime.longValue() % partitionLength;
+	            final long toTime = Math.min(fromTime + partitionLength - 1, lastTime);
+	            partitions.add(new AuditLogExportPartition(nodeId, fromTime, toTime));
+	            nextTime = toTime < lastTime ? getFirstTimeStamp(nodeId, toTime + 1, lastTime) : null;
+	        }
+	    }
+	    return partitions;
+	}
+
+	/** @return the time stamp of the first log entry of the node within the time range, or null if there is none */
+	private Long getFirstTimeStamp(final String nodeId, final long fromTime, final long toTime) {
+	    return (Long) entityManager.createQuery("SELECT MIN(a.timeStamp) FROM AuditRecordData a WHERE a.nodeId=:nodeId AND a.timeStamp>=:fromTime AND a.timeStamp<=:toTime")
+	            .setParameter("nodeId", nodeId).setParameter("fromTime", fromTime).setParameter("toTime", toTime).getSingleResult();
+	}
+
+	/** Sets the sequence numbers of the first and last log entries of a partition that was exported earlier, and may have been partially deleted. */
+	private void setSequenceNumberRange(final AuditLogExportPartition partition) {
+	    final Object[] range = (Object[]) entityManager.createQuery("SELECT MIN(a.sequenceNumber), MAX(a.sequenceNumber) FROM AuditRecordData a"
+	            + " WHERE a.nodeId=:nodeId AND a.timeStamp>=:fromTime AND a.timeStamp<=:toTime")
+	            .setParameter("nodeId", partition.getNodeId()).setParameter("fromTime", partition.getFromTime()).setParameter("toTime", partition.getToTime())
+	            .getSingleResult();
+	    if (range[0] != null) {
+	        partition.setSequenceNumbers(((Long) range[0]).longValue(), ((Long) range[1]).longValue());
+	    }
+	}
+
+	private Elem getPartitionCriteria(final String nodeId, final long fromTime, final long toTime) {
+	    return Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId),
+	            Criteria.and(Criteria.geq(AuditLogEntry.FIELD_TIMESTAMP, fromTime), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, toTime)));
+	}
+
+	/**
+	 * Read batches of logs of a partition from the database. If the database integrity check fails, the batch will be processed row by row.
+	 * Results are added to the report, and the sequence numbers of the first and last log entries are set in the partition.
+	 * 
+	 * The batches are fetched in order of sequence number, starting after the last sequence number of the previous batch instead of at an
+	 * offset, so that the time to fetch a batch does not grow with the number of log entries that have already been exported.
+	 * 
 	 * @param auditExporter can be null if no export should take place
 	 * @param report is a AuditLogValidationReport or AuditLogExportReport
-	 * @param timestamp process all entries up until this time (should be epoch GMT)
+	 * @param partition the node and time range to process
+	 * @param verifyFirst true if the sequence numbers of the partition should start from 0, false if they continue from an earlier partition
 	 */
-	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, Date timestamp, final int fetchSize) throws IOException {
-    	// Get a list of the nodes that have data in the database
-    	for (final String nodeId : getNodeIds()) {
-    		if (log.isDebugEnabled()) {
-    			log.debug("exportAuditLogs for nodeId " + nodeId);
-    		}
-    		// Assuming timeStamp is in UTC
-    		final QueryCriteria queryCriteria = QueryCriteria.create().add((Criteria.and(Criteria.eq(AuditLogEntry.FIELD_NODEID, nodeId), Criteria.leq(AuditLogEntry.FIELD_TIMESTAMP, timestamp.getTime())))).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
-    		int startIndex = 1;
-    		final Holder<Long> lastSeqNumber = new Holder<Long>(Long.valueOf(-1L));
-    		while (true) {
-    			try {
-        			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
-    				final int results = queryResult.size();
-    				if (results == 0) {
-    					break;	// No more data for this node
-    				}
-    				startIndex += results;
-					if (auditExporter!=null) {
-						for (final AuditRecordData auditRecordData : queryResult) {
-							writeToExport(auditExporter, auditRecordData);
-        					((AuditLogExportReport) report).incExportCount();
-						}
-					}
-    			} catch (DatabaseProtectionException e) {
-    				// One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
-    				for (int i=0; i<fetchSize; i++) {
-        				try {
-                			final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(startIndex, 1, queryCriteria, report, lastSeqNumber, nodeId);
-            				final int results = queryResult.size();
-            				if (results != 1) {
-            					break;	// No more data for this node
-            				}
-        					if (auditExporter!=null) {
-        						writeToExport(auditExporter, queryResult.get(0));
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				} catch (DatabaseProtectionException e2) {
-        					final AuditRecordData auditRecordData = (AuditRecordData) e2.getEntity();
-        					// Add to report
-        					report.warn(new AuditLogReportElem(lastSeqNumber.get().longValue(), auditRecordData.getSequenceNumber(), "log with sequence number after " + lastSeqNumber + " on nodeId " + nodeId + " could not be verified"));
-        					lastSeqNumber.set(auditRecordData.getSequenceNumber());
-        					// We still export it
-        					// TODO: It might make sense to make it configurable to export when verification fails..
-        					if (auditExporter!=null) {
-            					writeToExport(auditExporter, auditRecordData);
-            					((AuditLogExportReport) report).incExportCount();
-        					}
-        				}
-        				startIndex += 1;
-    				}
-    			}
-    		}
-    	}
+	private void verifyAndOptionalExport(AuditExporter auditExporter, AuditLogValidationReport report, final AuditLogExportPartition partition,
+	        final int fetchSize, final boolean verifyFirst) throws IOException {
+	    final String nodeId = partition.getNodeId();
+	    if (log.isDebugEnabled()) {
+	        log.debug("exportAuditLogs for nodeId " + nodeId + " from " + partition.getFromTime() + " to " + partition.getToTime());
+	    }
+	    final Holder<Long> lastSeqNumber = new Holder<Long>(verifyFirst ? Long.valueOf(-1L) : null);
+	    long firstSeqNumber = -1;
+	    while (true) {
+	        // Assuming timeStamp is in UTC
+	        final QueryCriteria queryCriteria = getBatchCriteria(partition, lastSeqNumber.get());
+	        try {
+	            final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(fetchSize, queryCriteria, report, lastSeqNumber, nodeId);
+	            if (queryResult.isEmpty()) {
+	                break;	// No more data for this node
+	            }
+	            if (firstSeqNumber == -1) {
+	                firstSeqNumber = queryResult.get(0).getSequenceNumber().longValue();
+	            }
+	            if (auditExporter!=null) {
+	                for (final AuditRecordData auditRecordData : queryResult) {
+	                    writeToExport(auditExporter, auditRecordData);
+	                    ((AuditLogExportReport) report).incExportCount();
+	                }
+	            }
+	        } catch (DatabaseProtectionException e) {
+	            // One of the FETCH_SIZE entries failed.. we have to go through line by line to find out witch one..
+	            for (int i=0; i<fetchSize; i++) {
+	                final Long previousSeqNumber = lastSeqNumber.get();
+	                AuditRecordData auditRecordData;
+	                try {
+	                    final List<AuditRecordData> queryResult = verifyLogsIntegritySubset(1, getBatchCriteria(partition, previousSeqNumber), report, lastSeqNumber, nodeId);
+	                    if (queryResult.size() != 1) {
+	                        break;	// No more data for this node
+	                    }
+	                    auditRecordData = queryResult.get(0);
+	                } catch (DatabaseProtectionException e2) {
+	                    auditRecordData = (AuditRecordData) e2.getEntity();
+	                    // Add to report
+	                    report.warn(new AuditLogReportElem(previousSeqNumber, auditRecordData.getSequenceNumber(), "log with sequence number after " + previousSeqNumber + " on nodeId " + nodeId + " could not be verified"));
+	                    lastSeqNumber.set(auditRecordData.getSequenceNumber());
+	                    // We still export it
+	                    // TODO: It might make sense to make it configurable to export when verification fails..
+	                }
+	                if (firstSeqNumber == -1) {
+	                    firstSeqNumber = auditRecordData.getSequenceNumber().longValue();
+	                }
+	                if (auditExporter!=null) {
+	                    writeToExport(auditExporter, auditRecordData);
+	                    ((AuditLogExportReport) report).incExportCount();
+	                }
+	            }
+	        }
+	    }
+	    if (firstSeqNumber != -1) {
+	        partition.setSequenceNumbers(firstSeqNumber, lastSeqNumber.get().longValue());
+	    }
+	}
+
+	/** @return criteria for the next batch of log entries of the partition, after the last sequence number that has been processed */
+	private QueryCriteria getBatchCriteria(final AuditLogExportPartition partition, final Long lastSeqNumber) {
+	    Elem criteria = getPartitionCriteria(partition.getNodeId(), partition.getFromTime(), partition.getToTime());
+	    if (lastSeqNumber != null) {
+	        criteria = Criteria.and(criteria, Criteria.grt(AuditLogEntry.FIELD_SEQUENCENUMBER, lastSeqNumber));
+	    }
+	    return QueryCriteria.create().add(criteria).add(Criteria.orderAsc(AuditLogEntry.FIELD_SEQUENCENUMBER));
 	}
 
 	/** We want to export exactly like it was stored in the database, to comply with requirements on logging systems where no altering of the original log data is allowed. */
@@ -249,21 +489,21 @@ public class IntegrityProtectedAuditorSessionBean implements IntegrityProtectedA
     /**
      * Fetch a batch of log rows from the database (implying database integrity check) and verifies
      * that all sequence numbers are present.
-     * @param startIndex start batch from this position 
      * @param max entries per batch
      * @param queryCriteria where clause
      * @param report will be updated when a problem is found
-     * @param lastSeqNumber will be updated to the last sequence number processed in this subset
+     * @param lastSeqNumber will be updated to the last sequence number processed in this subset, and is null if the sequence number of the
+     * first entry is not known
      * @param nodeId identifier of which node that claims to have written this data
      * @return the log entries we fetched from the database so the caller may export these
      * @throws DatabaseProtectionException if the intregrity verification fails for one of the entries in the batch during fetch
      */
-	private List<AuditRecordData> verifyLogsIntegritySubset(final int startIndex, final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
-		final List<AuditRecordData> queryResult = internalSelectAuditLogs(startIndex, max, queryCriteria);	// Might throw DatabaseProtectionException
+	private List<AuditRecordData> verifyLogsIntegritySubset(final int max, final QueryCriteria queryCriteria, final AuditLogValidationReport report, final Holder<Long> lastSeqNumber, final String nodeId) throws DatabaseProtectionException {
+		final List<AuditRecordData> queryResult = internalSelectAuditLogs(0, max, queryCriteria);	// Might throw DatabaseProtectionException
 		// Loop through results and verify that the sequence order is correct
 		for (int i=0; i<queryResult.size(); i++) {
 			final long currentSeqNumber = queryResult.get(i).getSequenceNumber().longValue();
-			if (currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
+			if (lastSeqNumber.get() != null && currentSeqNumber != lastSeqNumber.get().longValue() + 1) {
 				if (log.isDebugEnabled()) {
 					log.debug("Log verification failure for log on node " + nodeId + ". Missing entry. Last sequenceNumber was " + lastSeqNumber + " and current is " + currentSeqNumber);
 				}
@@ -453,11 +453,23 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
                     result = new CertificateDataWrapper(cert, null, null);
                     break; // We have our cert and we don't need to store it.. Move on..
                 }
+                // Tag is reserved for future use, currently only null
+                final String tag = null;
+                if (ca.getCAType()==CAInfo.CATYPE_X509 && isUniqueCertificateSerialNumberIndex()) {
+                    // The unique index rejects a serial number that is already used by the issuer, so no lookup is needed before the insert.
+                    // The failed insert marks the transaction for rollback, so a collision can not be retried with a new serial number here.
+                    try {
+                        result = certificateStoreSession.storeCertificateNoAuthUniqueIndex(admin, cert, endEntityInformation.getUsername(), cafingerprint,
+                                CertificateConstants.CERT_ACTIVE, certProfile.getType(), certProfileId, endEntityInformation.getEndEntityProfileId(), tag, updateTime);
+                        storeEx = null;
+                    } catch (CertificateSerialNumberException e) {
+                        storeEx = e;
+                    }
+                    break;
+                }
                 try {
                     // Remember for CVC serialNo can be alphanumeric, so we can't just try to decode that using normal Java means (BigInteger.valueOf)...
                     assertSerialNumberForIssuerOk(ca, caSubjectDN, CertTools.getSerialNumber(cert));
-                    // Tag is reserved for future use, currently only null
-                    final String tag = null;
                     // Authorization was already checked by since this is a private method, the CA parameter should
                     // not be possible to get without authorization
                     result = certificateStoreSession.storeCertificateNoAuth(admin, cert, endEntityInformation.getUsername(), cafingerprint, CertificateConstants.CERT_ACTIVE,
@@ -465,9 +477,8 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
                     storeEx = null;
                     break;
                 } catch (CertificateSerialNumberException e) {
-                    // If we have created a unique index on (issuerDN,serialNumber) on table CertificateData we can
-                    // get a CreateException here if we would happen to generate a certificate with the same serialNumber
-                    // as one already existing certificate.
+                    // Without a unique index on (issuerDN,serialNumber) on table CertificateData the lookup before the insert
+                    // finds a serial number that is already used, and we can retry with a new certificate in the same transaction.
                     if (retrycounter + 1 < maxRetrys) {
                         log.info("Can not store certificate with serNo (" + serialNo + "), will retry (retrycounter=" + retrycounter
                                 + ") with a new certificate with new serialNo: " + e.getMessage());
@@ -476,12 +487,13 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
                 }
             }
             if (storeEx != null) {
+                SerialNumberMetrics.INSTANCE.countFailedIssuance();
                 if (useCustomSN) {
                     final String msg = intres.getLocalizedMessage("createcert.cert_serial_number_already_in_database", serialNo);
                     log.info(msg);
                     throw new CustomCertificateSerialNumberException(msg);
                 }
-                log.error("Can not store certificate in database in 5 tries, aborting: ", storeEx);
+                log.error("Can not store certificate in database, aborting: ", storeEx);
                 throw storeEx;
             }
 
@@ -675,7 +687,9 @@ public class CertificateCreateSessionBean implements CertificateCreateSessionLoc
      */
     private void assertSerialNumberForIssuerOk(final CA ca, final String issuerDN, final BigInteger serialNumber) throws CertificateSerialNumberException {
         if (ca.getCAType()==CAInfo.CATYPE_X509 && !isUniqueCertificateSerialNumberIndex()) {
+            SerialNumberMetrics.INSTANCE.countUniquenessLookup();
             if (certificateStoreSession.existsByIssuerAndSerno(issuerDN, serialNumber)) {
+                SerialNumberMetrics.INSTANCE.countLookupCollision();
                 final String msg = intres.getLocalizedMessage("createcert.cert_serial_number_already_in_database", serialNumber.toString());
                 log.info(msg);
                 throw new CertificateSerialNumberException(msg);
@@ -20,10 +20,12 @@ import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.security.spec.ECParameterSpec;
 import java.security.spec.InvalidKeySpecException;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
@@ -45,7 +47,9 @@ import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
 import javax.persistence.Query;
+import javax.persistence.TypedQuery;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
@@ -61,6 +65,7 @@ import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.authorization.AuthorizationSessionLocal;
 import org.cesecore.authorization.control.StandardRules;
 import org.cesecore.certificates.ca.internal.CaCertificateCache;
+import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
 import org.cesecore.certificates.certificate.request.RequestMessage;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
@@ -173,6 +178,47 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         }
         return ret;
     }
+    @Override
+    public CertificateDataWrapper storeCertificateNoAuthUniqueIndex(AuthenticationToken adminForLogging, Certificate incert, String username, String cafp,
+            int status, int type, int certificateProfileId, int endEntityProfileId, String tag, long updateTime) throws CertificateSerialNumberException {
+        if (log.isTraceEnabled()) {
+            log.trace(">storeCertificateNoAuthUniqueIndex(" + username + ", " + cafp + ", " + status + ", " + type + ")");
+        }
+        final CertificateDataWrapper ret = storeCertificateNoAuthInternal(adminForLogging, incert, username, cafp, status, type, certificateProfileId,
+                endEntityProfileId, tag, updateTime, true);
+        try {
+            entityManager.flush();
+        } catch (PersistenceException e) {
+            if (!isIntegrityConstraintViolation(e)) {
+                throw e;
+            }
+            SerialNumberMetrics.INSTANCE.countIndexCollision();
+            final String msg = INTRES.getLocalizedMessage("createcert.cert_serial_number_already_in_database", CertTools.getSerialNumberAsString(incert));
+            log.info(msg);
+            throw new CertificateSerialNumberException(msg);
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<storeCertificateNoAuthUniqueIndex()");
+        }
+        return ret;
+    }
+
+    /** @return true if the cause of the exception is an SQL exception in the integrity constraint violation class (SQLSTATE 23xxx) */
+    private boolean isIntegrityConstraintViolation(final Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof SQLException) {
+                final String sqlState = ((SQLException) t).getSQLState();
+                if (sqlState != null && sqlState.startsWith("23")) {
+                    return true;
+                }
+            }
+            if (t.getCause() == t) {
+                break;
+            }
+        }
+        return false;
+    }
+
     /** same as storeCertificateNoAuth but with a flag to not audit log certificate storage. 
      * The only reason to not audit log is when called from checkForUniqueCertificateSerialNumberIndexInTransaction
      * 
@@ -880,6 +926,19 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return ret;
     }
 
+    @Override
+    public List<CertificateInfo> getCertificateInfosByUsername(final String username, final boolean excludeExpired, final List<Integer> excludedStatuses) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getCertificateInfosByUsername(), username=" + username);
+        }
+        final long afterExpireDate = excludeExpired ? System.currentTimeMillis() : -1;
+        final List<CertificateInfo> ret = CertificateData.findCertificateInfosByUsername(entityManager, username, afterExpireDate, excludedStatuses);
+        if (log.isTraceEnabled()) {
+            log.trace("<getCertificateInfosByUsername(), username=" + username + ", found " + ret.size());
+        }
+        return ret;
+    }
+
     @Override
     public Collection<CertificateWrapper> findCertificatesByUsername(String username) {
         if (log.isTraceEnabled()) {
@@ -945,6 +1004,14 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return CertificateData.getCertificateInfo(entityManager, fingerprint);
     }
 
+    @Override
+    public List<CertificateInfo> getCertificateInfos(final Collection<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return new ArrayList<CertificateInfo>();
+        }
+        return CertificateData.findCertificateInfosByFingerprints(entityManager, fingerprints);
+    }
+
     @Override
     public Certificate findCertificateByFingerprint(String fingerprint) {
         if (log.isTraceEnabled()) {
@@ -1119,7 +1186,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     }
 
     @Override
-    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void revokeAllCertByCA(AuthenticationToken admin, String issuerdn, int reason) throws AuthorizationDeniedException {
         int revoked = 0;
         
@@ -1128,23 +1195,26 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     	int caid = bcdn.hashCode();
         authorizedToCA(admin, caid);        
         try {
-            final int maxRows = 10000;
-            int firstResult = 0;
-            // Revoking all non revoked certificates.
-            
-            // Update 10000 records at a time
-            firstResult = 0;
-            List<CertificateData> list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
-            while (list.size() > 0) {
-            	for (int i = 0; i<list.size(); i++) {
-                	CertificateData d = list.get(i);
-                	d.setStatus(CertificateConstants.CERT_REVOKED);
-                	d.setRevocationDate(System.currentTimeMillis());
-                	d.setRevocationReason(reason);
-                	revoked++;
-            	}
-            	firstResult += maxRows;
-            	list = findAllNonRevokedCertificates(bcdn, firstResult, maxRows);
+            // Revoke all non revoked certificates, in chunks that are committed one at a time. The chunks are found by fingerprint order
+            // instead of by offset, since the result set shrinks as certificates are revoked. If the revocation is interrupted, the
+            // certificates of the committed chunks stay revoked, and revoking the CA again revokes the rest.
+            final int maxRows = CesecoreConfiguration.getDatabaseMassRevocationChunkSize();
+            final long revocationDate = System.currentTimeMillis();
+            String lastFingerprint = "";
+            List<String> fingerprints = findAllNonRevokedFingerprints(bcdn, lastFingerprint, maxRows);
+            while (!fingerprints.isEmpty()) {
+                final String chunkLastFingerprint = fingerprints.get(fingerprints.size() - 1);
+                revoked += certificateStoreSession.revokeCertificatesInNewTransaction(bcdn, lastFingerprint, chunkLastFingerprint, revocationDate, reason);
+                // The bulk update does not go through the entity callbacks of CertificateData, so remove the cached verifications of the
+                // revoked certificates after the chunk has been committed
+                for (final String fingerprint : fingerprints) {
+                    VerifiedCertificateCache.INSTANCE.invalidate(fingerprint);
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Revoked " + revoked + " certificates issued by '" + bcdn + "' so far.");
+                }
+                lastFingerprint = chunkLastFingerprint;
+                fingerprints = findAllNonRevokedFingerprints(bcdn, lastFingerprint, maxRows);
             }
             final String msg = INTRES.getLocalizedMessage("store.revokedallbyca", issuerdn, Integer.valueOf(revoked), Integer.valueOf(reason));
     		Map<String, Object> details = new LinkedHashMap<String, Object>();
@@ -1152,23 +1222,67 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
     		logSession.log(EventTypes.CERT_REVOKED, EventStatus.SUCCESS, ModuleTypes.CERTIFICATE, ServiceTypes.CORE, admin.toString(), String.valueOf(caid), null, null, details);            
         } catch (Exception e) {
             final String msg = INTRES.getLocalizedMessage("store.errorrevokeallbyca", issuerdn);
-            log.info(msg);
+            log.info(msg + " " + revoked + " certificates were revoked.");
             throw new EJBException(e);
+        } finally {
+            // Certificates that were added to a chunk after its fingerprints were read are revoked as well, so clear the whole cache
+            // rather than risk accepting one of them
+            if (revoked > 0) {
+                VerifiedCertificateCache.INSTANCE.clear();
+            }
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public int revokeCertificatesInNewTransaction(final String issuerDN, final String afterFingerprint, final String lastFingerprint,
+            final long revocationDate, final int reason) {
+        // The update time is the time of this chunk rather than the revocation date, so the certificate change feed does not miss the chunks
+        // that are committed long after the revocation started
+        final long updateTime = System.currentTimeMillis();
+        if (CesecoreConfiguration.useDatabaseIntegrityProtection(CertificateData.class.getSimpleName())) {
+            // Each row must be protected by the entity, so update the entities one by one
+            final TypedQuery<CertificateData> query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                    + " AND a.status<>:status AND a.fingerprint>:afterFingerprint AND a.fingerprint<=:lastFingerprint", CertificateData.class);
+            query.setParameter("issuerDN", issuerDN);
+            query.setParameter("status", CertificateConstants.CERT_REVOKED);
+            query.setParameter("afterFingerprint", afterFingerprint);
+            query.setParameter("lastFingerprint", lastFingerprint);
+            int revoked = 0;
+            for (final CertificateData certificateData : query.getResultList()) {
+                certificateData.setStatus(CertificateConstants.CERT_REVOKED);
+                certificateData.setRevocationDate(revocationDate);
+                certificateData.setRevocationReason(reason);
+                certificateData.setUpdateTime(updateTime);
+                revoked++;
+            }
+            return revoked;
         }
+        final Query query = entityManager.createQuery("UPDATE CertificateData a SET a.status=:status, a.revocationDate=:revocationDate,"
+                + " a.revocationReason=:reason, a.updateTime=:updateTime, a.rowVersion=a.rowVersion+1 WHERE a.issuerDN=:issuerDN"
+                + " AND a.status<>:status AND a.fingerprint>:afterFingerprint AND a.fingerprint<=:lastFingerprint");
+        query.setParameter("status", CertificateConstants.CERT_REVOKED);
+        query.setParameter("revocationDate", revocationDate);
+        query.setParameter("reason", reason);
+        query.setParameter("updateTime", updateTime);
+        query.setParameter("issuerDN", issuerDN);
+        query.setParameter("afterFingerprint", afterFingerprint);
+        query.setParameter("lastFingerprint", lastFingerprint);
+        return query.executeUpdate();
     }
     
     /**
-     * @return the certificates that have CertificateConstants.CERT_REVOKED.
-     * @param firstResult pagination variable, 0 for the first call, insrease by maxRows for further calls if return value is == maxRows
+     * @return the fingerprints of the certificates that do not have CertificateConstants.CERT_REVOKED, in fingerprint order.
+     * @param afterFingerprint pagination variable, "" for the first call and the last returned fingerprint for further calls
      * @param maxRows pagination variable max number of rows that should be returned, used in order to make it somewhat efficient on large data
      *            volumes
      * */
-    @SuppressWarnings("unchecked")
-    private List<CertificateData> findAllNonRevokedCertificates(String issuerDN, int firstResult, int maxRows) {
-        final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.status <> :status");
+    private List<String> findAllNonRevokedFingerprints(final String issuerDN, final String afterFingerprint, final int maxRows) {
+        final TypedQuery<String> query = entityManager.createQuery("SELECT a.fingerprint FROM CertificateData a WHERE a.issuerDN=:issuerDN"
+                + " AND a.status<>:status AND a.fingerprint>:fingerprint ORDER BY a.fingerprint", String.class);
         query.setParameter("issuerDN", issuerDN);
         query.setParameter("status", CertificateConstants.CERT_REVOKED);
-        query.setFirstResult(firstResult);
+        query.setParameter("fingerprint", afterFingerprint);
         query.setMaxResults(maxRows);
         return query.getResultList();
     }
@@ -1245,6 +1359,52 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return CertificateStatus.NOT_AVAILABLE;
     }
 
+    @Override
+    public Map<BigInteger, CertificateStatus> getStatuses(final String issuerDN, final Collection<BigInteger> sernos) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getStatuses(), dn:" + issuerDN + ", " + sernos.size() + " serial numbers");
+        }
+        if (sernos.isEmpty()) {
+            return new HashMap<BigInteger, CertificateStatus>();
+        }
+        final Map<BigInteger, CertificateStatus> ret = CertificateData.findStatusesByIssuerDnAndSerialNumbers(entityManager,
+                CertTools.stringToBCDNString(issuerDN), sernos);
+        if (log.isTraceEnabled()) {
+            log.trace("<getStatuses() found " + ret.size() + " certificates");
+        }
+        return ret;
+    }
+
+    @Override
+    public List<CertificateInfo> getCertificateChanges(final long afterUpdateTime, final String afterFingerprint, final Collection<String> issuerDNs,
+            final int maxResults) {
+        if (log.isTraceEnabled()) {
+            log.trace(">getCertificateChanges(), afterUpdateTime:" + afterUpdateTime + ", afterFingerprint:" + afterFingerprint);
+        }
+        final long untilUpdateTime = System.currentTimeMillis() - CesecoreConfiguration.getCertificateChangeFeedDelay();
+        final List<String> bcdns = new ArrayList<String>(issuerDNs.size());
+        for (final String issuerDN : issuerDNs) {
+            bcdns.add(CertTools.stringToBCDNString(issuerDN));
+        }
+        final List<CertificateInfo> ret = new ArrayList<CertificateInfo>();
+        for (int i = 0; i < bcdns.size(); i += CertificateData.MAX_IN_LIST_SIZE) {
+            final List<String> chunk = bcdns.subList(i, Math.min(i + CertificateData.MAX_IN_LIST_SIZE, bcdns.size()));
+            ret.addAll(CertificateData.findCertificateInfosChangedAfter(entityManager, afterUpdateTime, afterFingerprint, untilUpdateTime, chunk,
+                    maxResults));
+        }
+        if (bcdns.size() > CertificateData.MAX_IN_LIST_SIZE) {
+            // Each chunk of issuers is ordered on its own, so merge them and keep the first maxResults
+            Collections.sort(ret, CertificateChangeCursor.ORDER);
+            while (ret.size() > maxResults) {
+                ret.remove(ret.size() - 1);
+            }
+        }
+        if (log.isTraceEnabled()) {
+            log.trace("<getCertificateChanges() found " + ret.size() + " changes");
+        }
+        return ret;
+    }
+
     @Override
     public CertificateStatusHolder getCertificateAndStatus(String issuerDN, BigInteger serno) {
         if (log.isTraceEnabled()) {
@@ -1288,6 +1448,7 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         authorizedToCA(admin, caid);
 
         certificateData.setStatus(status);
+        certificateData.setUpdateTime(System.currentTimeMillis());
         final Certificate certificate = certificateData.getCertificate(this.entityManager);
         String serialNo;
         if (certificate==null) {
@@ -1321,6 +1482,23 @@ public class CertificateStoreSessionBean implements CertificateStoreSessionRemot
         return (certificateData != null);
     }
     
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public int setStatus(AuthenticationToken admin, Collection<String> fingerprints, int status) throws AuthorizationDeniedException {
+        if (status == CertificateConstants.CERT_REVOKED || status == CertificateConstants.CERT_ACTIVE) {
+            final String msg = INTRES.getLocalizedMessage("store.errorsetstatusargument", fingerprints, status);
+            throw new IllegalArgumentException(msg);
+        }
+        final List<CertificateData> certificateDatas = CertificateData.findByFingerprints(entityManager, fingerprints);
+        for (final CertificateData certificateData : certificateDatas) {
+            changeStatus(admin, certificateData, status);
+        }
+        if (log.isDebugEnabled() && certificateDatas.size() != fingerprints.size()) {
+            log.debug("Set status " + status + " for " + certificateDatas.size() + " of " + fingerprints.size() + " certificates, the others did not exist.");
+        }
+        return certificateDatas.size();
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void setRolloverDoneStatus(AuthenticationToken admin, String fingerprint) throws IllegalArgumentException, AuthorizationDeniedException {
@@ -84,5 +84,6 @@ public final class UniqueSernoHelper {
 	/** Sets isUniqueCertificateSerialNumberIndex, can set to null which should be interpreted as uninitialized */
     public static void setIsUniqueCertificateSerialNumberIndex(Boolean isUniqueCertificateSerialNumberIndex) {
         UniqueSernoHelper.isUniqueCertificateSerialNumberIndex = isUniqueCertificateSerialNumberIndex;
+        SerialNumberMetrics.INSTANCE.setUniqueIndex(isUniqueCertificateSerialNumberIndex);
     }	
 }
@@ -12,69 +12,97 @@
  *************************************************************************/
 package org.cesecore.certificates.ocsp;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.security.PrivateKey;
-import java.security.cert.CertificateEncodingException;
-import java.security.cert.X509Certificate;
-import java.util.Date;
 import java.util.concurrent.Callable;
 
-import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.ocsp.BasicOCSPResponse;
+import org.bouncycastle.asn1.ocsp.ResponseData;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
-import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.OCSPException;
-import org.bouncycastle.operator.BufferingContentSigner;
 import org.bouncycastle.operator.ContentSigner;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.cesecore.certificates.ocsp.exception.OcspFailureException;
-import org.cesecore.util.CertTools;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
+import org.cesecore.keys.token.p11.P11SigningSessionPool;
 
 /**
  * This internal class exists for the sole purpose of catching deadlocks in the HSM hardware.
  * 
+ * The response is assembled from the already built ResponseData and the parts that are pre-built for each OcspSigningCacheEntry
+ * (the signature algorithm via the ContentSigner builder and the certs field), so only the ResponseData is encoded and signed here.
+ * 
  * @version $Id$
  */
 public class HsmResponseThread implements Callable<BasicOCSPResp> {
 
     public static final long HSM_TIMEOUT_SECONDS = 30;
 
-    private final BasicOCSPRespBuilder basicRes;
-    private final String signingAlgorithm;
+    private final ResponseData responseData;
+    private final JcaContentSignerBuilder contentSignerBuilder;
+    private final String signatureAlgorithm;
+    private final String signatureProviderName;
     private final PrivateKey signerKey;
-    private final JcaX509CertificateHolder[] chain;
-    private final String provider;
-    private final Date producedAt;
+    private final ASN1Sequence certificates;
+    /** System.nanoTime() when this task was created, used to measure the time spent waiting for a signing thread */
+    private final long createdNanos = System.nanoTime();
+
+    /**
+     * @param responseData the data to sign
+     * @param contentSignerBuilder a builder for the signature algorithm and provider to use
+     * @param signerKey the key to sign with
+     * @param certificates the certs field of the response or null if no certificates should be included
+     */
+    public HsmResponseThread(final ResponseData responseData, final JcaContentSignerBuilder contentSignerBuilder, final PrivateKey signerKey,
+            final ASN1Sequence certificates) {
+        this(responseData, contentSignerBuilder, null, null, signerKey, certificates);
+    }
 
-    public HsmResponseThread(final BasicOCSPRespBuilder basicRes, final String signingAlgorithm, final PrivateKey signerKey,
-            final X509Certificate[] chain, final String provider, final Date producedAt) throws OcspFailureException {
-        this.basicRes = basicRes;
-        this.signingAlgorithm = signingAlgorithm;
+    /**
+     * @param responseData the data to sign
+     * @param contentSignerBuilder a builder for the signature algorithm and provider to use, if there is no signing session pool for the key
+     * @param signatureAlgorithm the JCA name of the signature algorithm, used to find the signing session pool of a PKCS#11 key
+     * @param signatureProviderName the name of the provider of the key, used to find the signing session pool of a PKCS#11 key
+     * @param signerKey the key to sign with
+     * @param certificates the certs field of the response or null if no certificates should be included
+     */
+    public HsmResponseThread(final ResponseData responseData, final JcaContentSignerBuilder contentSignerBuilder, final String signatureAlgorithm,
+            final String signatureProviderName, final PrivateKey signerKey, final ASN1Sequence certificates) {
+        this.responseData = responseData;
+        this.contentSignerBuilder = contentSignerBuilder;
+        this.signatureAlgorithm = signatureAlgorithm;
+        this.signatureProviderName = signatureProviderName;
         this.signerKey = signerKey;
-        this.provider = provider;
-        this.producedAt = producedAt;
-        try {
-            this.chain = CertTools.convertToX509CertificateHolder(chain);
-        } catch (CertificateEncodingException e) {
-            throw new OcspFailureException(e);
-        }
+        this.certificates = certificates;
     }
 
     @Override
     public BasicOCSPResp call() throws OCSPException {
+        final long signStart = System.nanoTime();
+        OcspMetrics.INSTANCE.observeDuration(OcspMetrics.Stage.SIGNING_QUEUE_WAIT, signStart - createdNanos);
         try {
             /*
-             * BufferingContentSigner defaults to allocating a 4096 bytes buffer. Since a rather large OCSP response (e.g. signed with 4K
-             * RSA key, nonce and a one level chain) is less then 2KiB, this is generally a waste of allocation and garbage collection.
-             * 
-             * In high performance environments, the full OCSP response should in general be smaller than 1492 bytes to fit in a single
-             * Ethernet frame.
-             * 
-             * Lowering this allocation from 20480 to 4096 bytes under ECA-4084 which should still be plenty.
+             * The DER encoded ResponseData is written to the signer in a single call, so there is no need for a BufferingContentSigner
+             * (which allocates a buffer for every response) to avoid many small updates of the signature in the HSM.
              */
-            final ContentSigner signer = new BufferingContentSigner(new JcaContentSignerBuilder(signingAlgorithm).setProvider(provider).build(signerKey), 20480);
-            return basicRes.build(signer, chain, producedAt!=null? producedAt : new Date());
+            // The pool is looked up here, since creating it initializes a signature with the HSM
+            final P11SigningSessionPool signingSessionPool = P11SigningSessionPool.getInstance(signatureAlgorithm, signatureProviderName, signerKey);
+            final ContentSigner signer = signingSessionPool != null ? signingSessionPool.getContentSigner() : contentSignerBuilder.build(signerKey);
+            final OutputStream signerOutputStream = signer.getOutputStream();
+            signerOutputStream.write(responseData.getEncoded(ASN1Encoding.DER));
+            signerOutputStream.close();
+            final DERBitString signature = new DERBitString(signer.getSignature());
+            OcspMetrics.INSTANCE.observe(OcspMetrics.Stage.SIGN, signStart);
+            return new BasicOCSPResp(new BasicOCSPResponse(responseData, signer.getAlgorithmIdentifier(), signature, certificates));
         } catch (OperatorCreationException e) {
             throw new OcspFailureException(e);
+        } catch (IOException e) {
+            throw new OCSPException("exception processing TBSRequest: " + e.getMessage(), e);
         }
     }
 }
@@ -42,9 +42,11 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -68,14 +70,20 @@ import javax.ejb.TransactionAttributeType;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
 import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1EncodableVector;
 import org.bouncycastle.asn1.ASN1GeneralizedTime;
 import org.bouncycastle.asn1.ASN1ObjectIdentifier;
 import org.bouncycastle.asn1.ASN1OctetString;
 import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERGeneralizedTime;
 import org.bouncycastle.asn1.DERNull;
+import org.bouncycastle.asn1.DERSequence;
 import org.bouncycastle.asn1.nist.NISTObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.CertStatus;
 import org.bouncycastle.asn1.ocsp.OCSPObjectIdentifiers;
+import org.bouncycastle.asn1.ocsp.ResponseData;
 import org.bouncycastle.asn1.ocsp.RevokedInfo;
+import org.bouncycastle.asn1.ocsp.SingleResponse;
 import org.bouncycastle.asn1.oiw.OIWObjectIdentifiers;
 import org.bouncycastle.asn1.x500.X500Name;
 import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
@@ -89,7 +97,6 @@ import org.bouncycastle.cert.X509CertificateHolder;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateConverter;
 import org.bouncycastle.cert.jcajce.JcaX509CertificateHolder;
 import org.bouncycastle.cert.ocsp.BasicOCSPResp;
-import org.bouncycastle.cert.ocsp.BasicOCSPRespBuilder;
 import org.bouncycastle.cert.ocsp.CertificateID;
 import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPReq;
@@ -129,6 +136,7 @@ import org.cesecore.certificates.ocsp.cache.OcspExtensionsCache;
 import org.cesecore.certificates.ocsp.cache.OcspRequestSignerStatusCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCache;
 import org.cesecore.certificates.ocsp.cache.OcspSigningCacheEntry;
+import org.cesecore.certificates.ocsp.cache.OcspSigningCacheReloadStatistics;
 import org.cesecore.certificates.ocsp.exception.CryptoProviderException;
 import org.cesecore.certificates.ocsp.exception.IllegalNonceException;
 import org.cesecore.certificates.ocsp.exception.MalformedRequestException;
@@ -138,6 +146,7 @@ import org.cesecore.certificates.ocsp.keys.CardKeys;
 import org.cesecore.certificates.ocsp.logging.AuditLogger;
 import org.cesecore.certificates.ocsp.logging.PatternLogger;
 import org.cesecore.certificates.ocsp.logging.TransactionLogger;
+import org.cesecore.certificates.ocsp.metrics.OcspMetrics;
 import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
 import org.cesecore.config.ConfigurationHolder;
@@ -273,148 +282,223 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
             if (log.isDebugEnabled() && (CardKeyHolder.getInstance().getCardKeys() == null)) {
                 log.debug(intres.getLocalizedMessage("ocsp.classnotfound", hardTokenClassName));
             }
+            final long reloadStartTime = System.currentTimeMillis();
             GlobalOcspConfiguration ocspConfiguration = (GlobalOcspConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalOcspConfiguration.OCSP_CONFIGURATION_ID);
-            OcspSigningCache.INSTANCE.stagingStart();
-            try {
-                // Populate OcspSigningCache
-                // Add all potential CA's as OCSP responders to the staging area
-                for (final Integer caId : caSession.getAllCaIds()) {
-                    final List<X509Certificate> caCertificateChain = new ArrayList<X509Certificate>();
-                    try {
-                        final CAInfo caInfo = caSession.getCAInfoInternal(caId.intValue());
-                        if (caInfo.getCAType() == CAInfo.CATYPE_CVC ) {
-                            // Bravely ignore OCSP for CVC CAs
+            // Gather everything except the private keys first, without holding the staging lock. The order is significant, since
+            // OcspKeyBindings overwrite the entries of the CA they respond for.
+            final List<PendingOcspSigningCacheEntry> pendingEntries = new ArrayList<PendingOcspSigningCacheEntry>();
+            // Add all potential CA's as OCSP responders
+            for (final Integer caId : caSession.getAllCaIds()) {
+                final List<X509Certificate> caCertificateChain = new ArrayList<X509Certificate>();
+                try {
+                    final CAInfo caInfo = caSession.getCAInfoInternal(caId.intValue());
+                    if (caInfo.getCAType() == CAInfo.CATYPE_CVC ) {
+                        // Bravely ignore OCSP for CVC CAs
+                        continue;
+                    } 
+                    if (caInfo.getStatus() == CAConstants.CA_ACTIVE) {
+                        //Cache active CAs as signers
+                        if (log.isDebugEnabled()) {
+                            log.debug("Processing X509 CA " + caInfo.getName() + " (" + caInfo.getCAId() + ").");
+                        }
+                        final CAToken caToken = caInfo.getCAToken();
+                        final CryptoToken cryptoToken = cryptoTokenSession.getCryptoToken(caToken.getCryptoTokenId());
+                        if (cryptoToken == null) {
+                            log.info("Excluding CA with id " + caId + " for OCSP signing consideration due to missing CryptoToken.");
                             continue;
-                        } 
-                        if (caInfo.getStatus() == CAConstants.CA_ACTIVE) {
-                            //Cache active CAs as signers
-                            if (log.isDebugEnabled()) {
-                                log.debug("Processing X509 CA " + caInfo.getName() + " (" + caInfo.getCAId() + ").");
-                            }
-                            final CAToken caToken = caInfo.getCAToken();
-                            final CryptoToken cryptoToken = cryptoTokenSession.getCryptoToken(caToken.getCryptoTokenId());
-                            if (cryptoToken == null) {
-                                log.info("Excluding CA with id " + caId + " for OCSP signing consideration due to missing CryptoToken.");
-                                continue;
-                            }
-                            for (final Certificate certificate : caInfo.getCertificateChain()) {
-                                caCertificateChain.add((X509Certificate) certificate);
-                            }
-                            final String keyPairAlias;
-                            try {
-                                keyPairAlias = caToken.getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN);
-                            } catch (CryptoTokenOfflineException e) {
-                                log.warn("Referenced private key with purpose " + CATokenConstants.CAKEYPURPOSE_CERTSIGN
-                                        + " could not be used. CryptoToken is off-line for CA with id " + caId + ": " + e.getMessage());
-                                continue;
-                            }
-                            final PrivateKey privateKey;
-                            try {
-                                privateKey = cryptoToken.getPrivateKey(keyPairAlias);
-                            } catch (CryptoTokenOfflineException e) {
-                                log.warn("Referenced private key with alias " + keyPairAlias
-                                        + " could not be used. CryptoToken is off-line for CA with id " + caId + ": " + e.getMessage());
-                                continue;
-                            }
-                            if (privateKey == null) {
-                                log.warn("Referenced private key with alias " + keyPairAlias + " does not exist. Ignoring CA with id " + caId);
-                                continue;
-                            }
-                            final String signatureProviderName = cryptoToken.getSignProviderName();
-                            if (caCertificateChain.size() > 0) {
-                                X509Certificate caCertificate = caCertificateChain.get(0);
-                                final CertificateStatus caCertificateStatus = getRevocationStatusWhenCasPrivateKeyIsCompromised(caCertificate, false);
-                                OcspSigningCache.INSTANCE.stagingAdd(new OcspSigningCacheEntry(caCertificate, caCertificateStatus, caCertificateChain, null, privateKey,
-                                        signatureProviderName, null, ocspConfiguration.getOcspResponderIdType()));
-                                // Check if CA cert has been revoked (only key compromise as returned above). Always make this check, even if this CA has an OCSP signing certificate, because
-                                // signing will still fail even if the signing cert is valid. Shouldn't happen, but log it just in case.
-                                if (caCertificateStatus.equals(CertificateStatus.REVOKED)) {
-                                    log.warn("Active CA with subject DN '" + CertTools.getSubjectDN(caCertificate) + "' and serial number "
-                                            + CertTools.getSerialNumber(caCertificate) + " has a revoked certificate with reason " + caCertificateStatus.revocationReason + ".");
-                                }
-                                //Check if CA cert is expired
-                                if (!CertTools.isCertificateValid(caCertificate)) {
-                                    log.warn("Active CA with subject DN '" + CertTools.getSubjectDN(caCertificate) + "' and serial number "
-                                            + CertTools.getSerialNumber(caCertificate) + " has an expired certificate with expiration date " + CertTools.getNotAfter(caCertificate) + ".");
-                                }
-                            } else {
-                                log.warn("CA with ID " + caId
-                                        + " appears to lack a certificate in the database. This may be a serious error if not in a test environment.");
-                            }
-                        } else if (caInfo.getStatus() == CAConstants.CA_EXTERNAL) {
-                            // If set, all external CA's without a keybinding (set below) will be responded to by the default responder. 
-                            for (final Certificate certificate : caInfo.getCertificateChain()) {
-                                caCertificateChain.add((X509Certificate) certificate);
-                            }
-                            final CertificateStatus caCertificateStatus = getRevocationStatusWhenCasPrivateKeyIsCompromised(caCertificateChain.get(0), false);
+                        }
+                        for (final Certificate certificate : caInfo.getCertificateChain()) {
+                            caCertificateChain.add((X509Certificate) certificate);
+                        }
+                        final String keyPairAlias;
+                        try {
+                            keyPairAlias = caToken.getAliasFromPurpose(CATokenConstants.CAKEYPURPOSE_CERTSIGN);
+                        } catch (CryptoTokenOfflineException e) {
+                            log.warn("Referenced private key with purpose " + CATokenConstants.CAKEYPURPOSE_CERTSIGN
+                                    + " could not be used. CryptoToken is off-line for CA with id " + caId + ": " + e.getMessage());
+                            continue;
+                        }
+                        if (caCertificateChain.size() > 0) {
+                            X509Certificate caCertificate = caCertificateChain.get(0);
+                            final CertificateStatus caCertificateStatus = getRevocationStatusWhenCasPrivateKeyIsCompromised(caCertificate, false);
+                            pendingEntries.add(new PendingOcspSigningCacheEntry(cryptoToken, keyPairAlias, caCertificate, caCertificateStatus,
+                                    caCertificateChain, null, null, ocspConfiguration.getOcspResponderIdType(), "CA with id " + caId));
                             // Check if CA cert has been revoked (only key compromise as returned above). Always make this check, even if this CA has an OCSP signing certificate, because
-                            // signing will still fail even if the signing cert is valid. 
+                            // signing will still fail even if the signing cert is valid. Shouldn't happen, but log it just in case.
                             if (caCertificateStatus.equals(CertificateStatus.REVOKED)) {
-                                log.info("External CA with subject DN '" + CertTools.getSubjectDN(caCertificateChain.get(0)) + "' and serial number "
-                                        + CertTools.getSerialNumber(caCertificateChain.get(0)) + " has a revoked certificate with reason " + caCertificateStatus.revocationReason + ".");
+                                log.warn("Active CA with subject DN '" + CertTools.getSubjectDN(caCertificate) + "' and serial number "
+                                        + CertTools.getSerialNumber(caCertificate) + " has a revoked certificate with reason " + caCertificateStatus.revocationReason + ".");
                             }
                             //Check if CA cert is expired
-                            if (!CertTools.isCertificateValid(caCertificateChain.get(0))) {
-                                log.info("External CA with subject DN '" + CertTools.getSubjectDN(caCertificateChain.get(0)) + "' and serial number "
-                                        + CertTools.getSerialNumber(caCertificateChain.get(0)) + " has an expired certificate with expiration date " + CertTools.getNotAfter(caCertificateChain.get(0)) + ".");
+                            if (!CertTools.isCertificateValid(caCertificate)) {
+                                log.warn("Active CA with subject DN '" + CertTools.getSubjectDN(caCertificate) + "' and serial number "
+                                        + CertTools.getSerialNumber(caCertificate) + " has an expired certificate with expiration date " + CertTools.getNotAfter(caCertificate) + ".");
                             }
-                            //Add an entry with just a chain and nothing else
-                            OcspSigningCache.INSTANCE.stagingAdd(new OcspSigningCacheEntry(caCertificateChain.get(0), caCertificateStatus, null, null,
-                                    null, null, null,  ocspConfiguration.getOcspResponderIdType()));
-  
+                        } else {
+                            log.warn("CA with ID " + caId
+                                    + " appears to lack a certificate in the database. This may be a serious error if not in a test environment.");
+                        }
+                    } else if (caInfo.getStatus() == CAConstants.CA_EXTERNAL) {
+                        // If set, all external CA's without a keybinding (set below) will be responded to by the default responder. 
+                        for (final Certificate certificate : caInfo.getCertificateChain()) {
+                            caCertificateChain.add((X509Certificate) certificate);
+                        }
+                        final CertificateStatus caCertificateStatus = getRevocationStatusWhenCasPrivateKeyIsCompromised(caCertificateChain.get(0), false);
+                        // Check if CA cert has been revoked (only key compromise as returned above). Always make this check, even if this CA has an OCSP signing certificate, because
+                        // signing will still fail even if the signing cert is valid. 
+                        if (caCertificateStatus.equals(CertificateStatus.REVOKED)) {
+                            log.info("External CA with subject DN '" + CertTools.getSubjectDN(caCertificateChain.get(0)) + "' and serial number "
+                                    + CertTools.getSerialNumber(caCertificateChain.get(0)) + " has a revoked certificate with reason " + caCertificateStatus.revocationReason + ".");
                         }
-                    } catch (CADoesntExistsException e) {
-                        // Should only happen if the CA was deleted between the getAvailableCAs and the last one
-                        log.warn("CA with Id " + caId + " disappeared during reload operation.");
+                        //Check if CA cert is expired
+                        if (!CertTools.isCertificateValid(caCertificateChain.get(0))) {
+                            log.info("External CA with subject DN '" + CertTools.getSubjectDN(caCertificateChain.get(0)) + "' and serial number "
+                                    + CertTools.getSerialNumber(caCertificateChain.get(0)) + " has an expired certificate with expiration date " + CertTools.getNotAfter(caCertificateChain.get(0)) + ".");
+                        }
+                        //Add an entry with just a chain and nothing else
+                        pendingEntries.add(new PendingOcspSigningCacheEntry(null, null, caCertificateChain.get(0), caCertificateStatus, null, null,
+                                null, ocspConfiguration.getOcspResponderIdType(), "external CA with id " + caId));
                     }
+                } catch (CADoesntExistsException e) {
+                    // Should only happen if the CA was deleted between the getAvailableCAs and the last one
+                    log.warn("CA with Id " + caId + " disappeared during reload operation.");
                 }
-                // Add all potential InternalKeyBindings as OCSP responders to the staging area, overwriting CA entries from before
-                for (final int internalKeyBindingId : internalKeyBindingDataSession.getIds(OcspKeyBinding.IMPLEMENTATION_ALIAS)) {
-                    final OcspKeyBinding ocspKeyBinding = (OcspKeyBinding) internalKeyBindingDataSession.getInternalKeyBinding(internalKeyBindingId);  
+            }
+            // Add all potential InternalKeyBindings as OCSP responders, overwriting CA entries from before
+            for (final int internalKeyBindingId : internalKeyBindingDataSession.getIds(OcspKeyBinding.IMPLEMENTATION_ALIAS)) {
+                final OcspKeyBinding ocspKeyBinding = (OcspKeyBinding) internalKeyBindingDataSession.getInternalKeyBinding(internalKeyBindingId);  
+                if (log.isDebugEnabled()) {
+                    log.debug("Processing " + ocspKeyBinding.getName() + " (" + ocspKeyBinding.getId() + ")");
+                }
+                if (!ocspKeyBinding.getStatus().equals(InternalKeyBindingStatus.ACTIVE)) {
                     if (log.isDebugEnabled()) {
-                        log.debug("Processing " + ocspKeyBinding.getName() + " (" + ocspKeyBinding.getId() + ")");
+                        log.debug("Ignoring OcspKeyBinding since it is not active.");
                     }
-                    if (!ocspKeyBinding.getStatus().equals(InternalKeyBindingStatus.ACTIVE)) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("Ignoring OcspKeyBinding since it is not active.");
+                    continue;
+                }
+                final X509Certificate ocspSigningCertificate = (X509Certificate) certificateStoreSession.findCertificateByFingerprint(ocspKeyBinding.getCertificateId());
+                if (ocspSigningCertificate == null) {
+                    log.warn("OCSP signing certificate with referenced fingerprint " + ocspKeyBinding.getCertificateId() +
+                            " does not exist. Ignoring internalKeyBinding with id " + ocspKeyBinding.getId());
+                    continue;
+                }
+                //Make the same check as above 
+                if (certificateStoreSession.getStatus(CertTools.getIssuerDN(ocspSigningCertificate), CertTools.getSerialNumber(ocspSigningCertificate))
+                        .equals(CertificateStatus.REVOKED)) {
+                    log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate) + "' and serial number "
+                            + CertTools.getSerialNumber(ocspSigningCertificate) + " is revoked.");
+                }
+                //Check if signing cert is expired
+                if (!CertTools.isCertificateValid(ocspSigningCertificate)) {
+                    log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate) + "' and serial number "
+                            + CertTools.getSerialNumber(ocspSigningCertificate) + " is expired.");
+                }
+                final PendingOcspSigningCacheEntry pendingEntry = prepareOcspSigningCacheEntry(ocspSigningCertificate, ocspKeyBinding);
+                if (pendingEntry != null) {
+                    pendingEntries.add(pendingEntry);
+                }
+            }
+            // Fetch all private keys that have changed since the last reload, in parallel for each crypto token
+            final int[] keyCounters = fetchPrivateKeys(pendingEntries);
+            OcspSigningCache.INSTANCE.stagingStart();
+            int entryCount = 0;
+            try {
+                for (final PendingOcspSigningCacheEntry pendingEntry : pendingEntries) {
+                    if (pendingEntry.isPrivateKeyRequired()) {
+                        if (pendingEntry.getPrivateKey() == null) {
+                            continue;
                         }
-                        continue;
-                    }
-                    final X509Certificate ocspSigningCertificate = (X509Certificate) certificateStoreSession.findCertificateByFingerprint(ocspKeyBinding.getCertificateId());
-                    if (ocspSigningCertificate == null) {
-                        log.warn("OCSP signing certificate with referenced fingerprint " + ocspKeyBinding.getCertificateId() +
-                                " does not exist. Ignoring internalKeyBinding with id " + ocspKeyBinding.getId());
-                        continue;
-                    }
-                    //Make the same check as above 
-                    if (certificateStoreSession.getStatus(CertTools.getIssuerDN(ocspSigningCertificate), CertTools.getSerialNumber(ocspSigningCertificate))
-                            .equals(CertificateStatus.REVOKED)) {
-                        log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate) + "' and serial number "
-                                + CertTools.getSerialNumber(ocspSigningCertificate) + " is revoked.");
-                    }
-                    //Check if signing cert is expired
-                    if (!CertTools.isCertificateValid(ocspSigningCertificate)) {
-                        log.warn("OCSP Responder certificate with subject DN '" + CertTools.getSubjectDN(ocspSigningCertificate) + "' and serial number "
-                                + CertTools.getSerialNumber(ocspSigningCertificate) + " is expired.");
-                    }
-                    
-                    OcspSigningCacheEntry ocspSigningCacheEntry = makeOcspSigningCacheEntry(ocspSigningCertificate, ocspKeyBinding);
-                    if (ocspSigningCacheEntry == null) {
-                        continue;
-                    } else {
-                        OcspSigningCache.INSTANCE.stagingAdd(ocspSigningCacheEntry);
+                        OcspSigningCache.INSTANCE.stagingAddPrivateKeyReference(pendingEntry.getCryptoToken(), pendingEntry.getKeyPairAlias(),
+                                pendingEntry.getSigningCertificate(), pendingEntry.getPrivateKey());
                     }
+                    OcspSigningCache.INSTANCE.stagingAdd(pendingEntry.toOcspSigningCacheEntry());
+                    entryCount++;
                 }
                 OcspSigningCache.INSTANCE.stagingCommit(ocspConfiguration.getOcspDefaultResponderReference());
             } finally {
                 OcspSigningCache.INSTANCE.stagingRelease();
             }
+            final OcspSigningCacheReloadStatistics reloadStatistics = new OcspSigningCacheReloadStatistics(System.currentTimeMillis(),
+                    System.currentTimeMillis() - reloadStartTime, entryCount, keyCounters[0], keyCounters[1], keyCounters[2], keyCounters[3]);
+            OcspSigningCache.INSTANCE.setLastReloadStatistics(reloadStatistics);
+            log.info("Reloaded OCSP signing cache: " + reloadStatistics.toString());
         } finally {
             // Schedule a new timer of this type
             addTimer(OcspConfiguration.getSigningCertsValidTimeInMilliseconds(), TIMERID_OCSPSIGNINGCACHE);
         }
     }
 
+    /**
+     * Looks up the private keys of the pending entries. Keys of responders that are unchanged since the last reload are reused from the
+     * OcspSigningCache. The remaining keys are fetched with one thread per crypto token, so that a slow HSM slot does not delay the others.
+     * Entries whose key could not be fetched are left without a private key.
+     * 
+     * @return an array with the number of fetched, reused and failed private keys and the number of crypto tokens that keys were fetched from
+     */
+    private int[] fetchPrivateKeys(final List<PendingOcspSigningCacheEntry> pendingEntries) {
+        int reusedCount = 0;
+        final Map<Integer, List<PendingOcspSigningCacheEntry>> pendingEntriesByCryptoTokenId = new LinkedHashMap<Integer, List<PendingOcspSigningCacheEntry>>();
+        for (final PendingOcspSigningCacheEntry pendingEntry : pendingEntries) {
+            if (!pendingEntry.isPrivateKeyRequired()) {
+                continue;
+            }
+            final PrivateKey privateKey = OcspSigningCache.INSTANCE.getPrivateKeyReference(pendingEntry.getCryptoToken(), pendingEntry.getKeyPairAlias(),
+                    pendingEntry.getSigningCertificate());
+            if (privateKey != null) {
+                pendingEntry.setPrivateKey(privateKey);
+                reusedCount++;
+                continue;
+            }
+            List<PendingOcspSigningCacheEntry> group = pendingEntriesByCryptoTokenId.get(pendingEntry.getCryptoToken().getId());
+            if (group == null) {
+                group = new ArrayList<PendingOcspSigningCacheEntry>();
+                pendingEntriesByCryptoTokenId.put(pendingEntry.getCryptoToken().getId(), group);
+            }
+            group.add(pendingEntry);
+        }
+        /*
+         * Just like the signing of responses, this breaks the EJB standard by using our own thread pool. The lookup threads only talk to the
+         * crypto tokens and have no database impact.
+         */
+        final Map<Integer, Future<Integer>> tasks = new LinkedHashMap<Integer, Future<Integer>>();
+        for (final Map.Entry<Integer, List<PendingOcspSigningCacheEntry>> group : pendingEntriesByCryptoTokenId.entrySet()) {
+            tasks.put(group.getKey(), service.submit(new PrivateKeyLookupThread(group.getValue())));
+        }
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(HsmResponseThread.HSM_TIMEOUT_SECONDS);
+        int fetchedCount = 0;
+        int failedCount = 0;
+        for (final Map.Entry<Integer, Future<Integer>> task : tasks.entrySet()) {
+            final int groupSize = pendingEntriesByCryptoTokenId.get(task.getKey()).size();
+            try {
+                final int fetched = task.getValue().get(Math.max(0, deadline - System.currentTimeMillis()), TimeUnit.MILLISECONDS);
+                fetchedCount += fetched;
+                failedCount += groupSize - fetched;
+            } catch (InterruptedException e) {
+                task.getValue().cancel(true);
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Private key lookup was interrupted during reload of the OCSP signing cache.", e);
+            } catch (ExecutionException e) {
+                task.getValue().cancel(true);
+                log.warn("Failed to look up private keys in CryptoToken with id " + task.getKey() + ": " + e.getCause().getMessage());
+                failedCount += groupSize;
+            } catch (TimeoutException e) {
+                task.getValue().cancel(true);
+                log.warn("Timed out while looking up private keys in CryptoToken with id " + task.getKey() + ". " + groupSize
+                        + " OCSP responder(s) using this CryptoToken will be ignored until the next reload.");
+                failedCount += groupSize;
+            }
+        }
+        // Make sure that keys from a timed out lookup thread that finishes late are not used
+        for (final Map.Entry<Integer, Future<Integer>> task : tasks.entrySet()) {
+            if (task.getValue().isCancelled()) {
+                for (final PendingOcspSigningCacheEntry pendingEntry : pendingEntriesByCryptoTokenId.get(task.getKey())) {
+                    pendingEntry.setPrivateKey(null);
+                }
+            }
+        }
+        return new int[] { fetchedCount, reusedCount, failedCount, tasks.size() };
+    }
+
     /**
      * Constructs an OcspSigningCacheEntry from the given parameters.
      * 
@@ -423,6 +507,21 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
      * @return an OcspSigningCacheEntry, or null if any error was encountered.
      */
     private OcspSigningCacheEntry makeOcspSigningCacheEntry(X509Certificate ocspSigningCertificate, OcspKeyBinding ocspKeyBinding) {
+        final PendingOcspSigningCacheEntry pendingEntry = prepareOcspSigningCacheEntry(ocspSigningCertificate, ocspKeyBinding);
+        if (pendingEntry == null || !pendingEntry.fetchPrivateKey()) {
+            return null;
+        }
+        return pendingEntry.toOcspSigningCacheEntry();
+    }
+
+    /**
+     * Prepares everything that is needed for an OcspSigningCacheEntry, except the private key.
+     * 
+     * @param ocspSigningCertificate The signing certificate associated with the key binding. May be found separately, so given as a separate parameter
+     * @param ocspKeyBinding the Key Binding to base the cache entry off of. 
+     * @return a pending entry, or null if any error was encountered.
+     */
+    private PendingOcspSigningCacheEntry prepareOcspSigningCacheEntry(X509Certificate ocspSigningCertificate, OcspKeyBinding ocspKeyBinding) {
         final List<X509Certificate> caCertificateChain = getCaCertificateChain(ocspSigningCertificate);
         if (caCertificateChain == null) {
             log.warn("OcspKeyBinding " + ocspKeyBinding.getName() + " ( " + ocspKeyBinding.getId() + ") has a signing certificate, but no chain and will be ignored.");
@@ -434,18 +533,6 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     + ocspKeyBinding.getId());
             return null;
         }
-        final PrivateKey privateKey;
-        try {
-            privateKey = cryptoToken.getPrivateKey(ocspKeyBinding.getKeyPairAlias());
-        } catch (CryptoTokenOfflineException e) {
-            log.warn("Referenced private key with alias " + ocspKeyBinding.getKeyPairAlias() + " could not be used. CryptoToken is off-line for OcspKeyBinding with id "+ocspKeyBinding.getId()+": " + e.getMessage());
-            return null;
-        }
-        if (privateKey == null) {
-            log.warn("Referenced private key with alias " + ocspKeyBinding.getKeyPairAlias() + " does not exist. Ignoring OcspKeyBinding with id "+ ocspKeyBinding.getId());
-            return null;
-        }
-        final String signatureProviderName = cryptoToken.getSignProviderName();
         if (log.isDebugEnabled()) {
             log.debug("Adding OcspKeyBinding "+ocspKeyBinding.getId()+", "+ocspKeyBinding.getName());
         }
@@ -456,8 +543,98 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         } else {
             respIdType = OcspKeyBinding.ResponderIdType.KEYHASH;
         }
-        return new OcspSigningCacheEntry(caCertificateChain.get(0), certificateStatus, caCertificateChain, ocspSigningCertificate, privateKey,
-                signatureProviderName, ocspKeyBinding, respIdType);
+        return new PendingOcspSigningCacheEntry(cryptoToken, ocspKeyBinding.getKeyPairAlias(), caCertificateChain.get(0), certificateStatus,
+                caCertificateChain, ocspSigningCertificate, ocspKeyBinding, respIdType, "OcspKeyBinding with id " + ocspKeyBinding.getId());
+    }
+
+    /** Everything needed to create an OcspSigningCacheEntry, gathered from the database before the private key is looked up. */
+    private static class PendingOcspSigningCacheEntry {
+        private final CryptoToken cryptoToken;
+        private final String keyPairAlias;
+        private final X509Certificate issuerCaCertificate;
+        private final CertificateStatus issuerCaCertificateStatus;
+        private final List<X509Certificate> caCertificateChain;
+        private final X509Certificate ocspSigningCertificate;
+        private final OcspKeyBinding ocspKeyBinding;
+        private final OcspKeyBinding.ResponderIdType responderIdType;
+        private final String description;
+        private volatile PrivateKey privateKey = null;
+
+        /**
+         * @param cryptoToken the CryptoToken holding the signing key or null for placeholder entries without a private key
+         * @param description a human readable description of the responder, used for logging
+         */
+        private PendingOcspSigningCacheEntry(final CryptoToken cryptoToken, final String keyPairAlias, final X509Certificate issuerCaCertificate,
+                final CertificateStatus issuerCaCertificateStatus, final List<X509Certificate> caCertificateChain,
+                final X509Certificate ocspSigningCertificate, final OcspKeyBinding ocspKeyBinding, final OcspKeyBinding.ResponderIdType responderIdType,
+                final String description) {
+            this.cryptoToken = cryptoToken;
+            this.keyPairAlias = keyPairAlias;
+            this.issuerCaCertificate = issuerCaCertificate;
+            this.issuerCaCertificateStatus = issuerCaCertificateStatus;
+            this.caCertificateChain = caCertificateChain;
+            this.ocspSigningCertificate = ocspSigningCertificate;
+            this.ocspKeyBinding = ocspKeyBinding;
+            this.responderIdType = responderIdType;
+            this.description = description;
+        }
+
+        private boolean isPrivateKeyRequired() { return cryptoToken != null; }
+        private CryptoToken getCryptoToken() { return cryptoToken; }
+        private String getKeyPairAlias() { return keyPairAlias; }
+        private PrivateKey getPrivateKey() { return privateKey; }
+        private void setPrivateKey(final PrivateKey privateKey) { this.privateKey = privateKey; }
+
+        /** @return the certificate matching the private key, which is the OCSP signing certificate or the CA certificate */
+        private X509Certificate getSigningCertificate() {
+            return ocspSigningCertificate == null ? caCertificateChain.get(0) : ocspSigningCertificate;
+        }
+
+        /** @return true if the private key was successfully fetched from the crypto token */
+        private boolean fetchPrivateKey() {
+            final PrivateKey privateKey;
+            try {
+                privateKey = cryptoToken.getPrivateKey(keyPairAlias);
+            } catch (CryptoTokenOfflineException e) {
+                log.warn("Referenced private key with alias " + keyPairAlias + " could not be used. CryptoToken is off-line for " + description + ": "
+                        + e.getMessage());
+                return false;
+            }
+            if (privateKey == null) {
+                log.warn("Referenced private key with alias " + keyPairAlias + " does not exist. Ignoring " + description);
+                return false;
+            }
+            setPrivateKey(privateKey);
+            return true;
+        }
+
+        private OcspSigningCacheEntry toOcspSigningCacheEntry() {
+            return new OcspSigningCacheEntry(issuerCaCertificate, issuerCaCertificateStatus, caCertificateChain, ocspSigningCertificate, privateKey,
+                    cryptoToken == null ? null : cryptoToken.getSignProviderName(), ocspKeyBinding, responderIdType);
+        }
+    }
+
+    /** Looks up the private keys of all pending entries that share a single CryptoToken. */
+    private static class PrivateKeyLookupThread implements Callable<Integer> {
+        private final List<PendingOcspSigningCacheEntry> pendingEntries;
+
+        private PrivateKeyLookupThread(final List<PendingOcspSigningCacheEntry> pendingEntries) {
+            this.pendingEntries = pendingEntries;
+        }
+
+        @Override
+        public Integer call() {
+            int fetched = 0;
+            for (final PendingOcspSigningCacheEntry pendingEntry : pendingEntries) {
+                if (Thread.currentThread().isInterrupted()) {
+                    break;
+                }
+                if (pendingEntry.fetchPrivateKey()) {
+                    fetched++;
+                }
+            }
+            return Integer.valueOf(fetched);
+        }
     }
     
     /** 
@@ -699,11 +876,16 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
      */
     private OCSPReq translateRequestFromByteArray(byte[] request, String remoteAddress, TransactionLogger transactionLogger)
             throws MalformedRequestException, SignRequestException, SignRequestSignatureException, CertificateException, NoSuchAlgorithmException {
-        final OCSPReq ocspRequest;
-        try {
-            ocspRequest = new OCSPReq(request);
-        } catch (IOException e) {
-            throw new MalformedRequestException("Could not form OCSP request", e);
+        // Unsigned requests for a single SHA-1 CertID are parsed directly from the DER encoding
+        OCSPReq ocspRequest = OcspRequestParser.parseSimpleRequest(request);
+        if (ocspRequest == null) {
+            try {
+                ocspRequest = new OCSPReq(request);
+            } catch (IOException e) {
+                throw new MalformedRequestException("Could not form OCSP request", e);
+            }
+        } else if (log.isTraceEnabled()) {
+            log.trace("OCSP request was parsed by the simple request parser.");
         }
         if (ocspRequest.getRequestorName() == null) {
             if (log.isDebugEnabled()) {
@@ -1090,7 +1272,9 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         OCSPRespBuilder responseGenerator = new OCSPRespBuilder();
         X509Certificate signerCert = null;
         try {
+            final long parseStart = System.nanoTime();
             req = translateRequestFromByteArray(request, remoteAddress, transactionLogger);
+            OcspMetrics.INSTANCE.observe(OcspMetrics.Stage.REQUEST_PARSE, parseStart);
             // Get the certificate status requests that are inside this OCSP req
             Req[] ocspRequests = req.getRequestList();
             if (ocspRequests.length <= 0) {
@@ -1151,11 +1335,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                     log.info(intres.getLocalizedMessage("ocsp.inforeceivedrequestwxff", certId.getSerialNumber().toString(16), hash, remoteAddress, xForwardedFor));
                 }
                 // Locate the CA which gave out the certificate
+                final long cacheLookupStart = System.nanoTime();
                 ocspSigningCacheEntry = OcspSigningCache.INSTANCE.getEntry(certId);
+                OcspMetrics.INSTANCE.countSigningCacheLookup(ocspSigningCacheEntry != null);
                 if(ocspSigningCacheEntry == null) {
                   //Could it be that we haven't updated the OCSP Signing Cache?
                     ocspSigningCacheEntry = findAndAddMissingCacheEntry(certId);
                 }         
+                OcspMetrics.INSTANCE.observe(OcspMetrics.Stage.SIGNING_CACHE_LOOKUP, cacheLookupStart);
                 if (ocspSigningCacheEntry != null) {
                     if (transactionLogger.isEnabled()) {
                         // This will be the issuer DN of the signing certificate, whether an OCSP responder or an internal CA  
@@ -1231,12 +1418,14 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                      * the certificate in the same transaction.
                      */
                     final CertificateStatus status;
+                    final long statusLookupStart = System.nanoTime();
                     if (extensionOids.isEmpty()) {
                         status = certificateStoreSession.getStatus(caCertificateSubjectDn, certId.getSerialNumber());
                     } else {
                         certificateStatusHolder = certificateStoreSession.getCertificateAndStatus(caCertificateSubjectDn, certId.getSerialNumber());
                         status = certificateStatusHolder.getCertificateStatus();
                     }
+                    OcspMetrics.INSTANCE.observe(OcspMetrics.Stage.STATUS_LOOKUP, statusLookupStart);
                     if (transactionLogger.isEnabled()) {
                         transactionLogger.paramPut(TransactionLogger.CERT_PROFILE_ID, String.valueOf(status.certificateProfileId));
                     }
@@ -1303,6 +1492,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                             }
                             log.info(intres.getLocalizedMessage("ocsp.errorfindcert", certId.getSerialNumber().toString(16), caCertificateSubjectDn));
                             //Return early here
+                            OcspMetrics.INSTANCE.countResponse(OCSPRespBuilder.UNAUTHORIZED);
                             return new OcspResponseInformation(ocspResponse, maxAge, null);
                         } else {
                             sStatus = "unknown";
@@ -1415,6 +1605,7 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 // generate the signed response object
                 BasicOCSPResp basicresp = signOcspResponse(req, responseList, exts, ocspSigningCacheEntry, producedAt);
                 signerCert = ocspSigningCacheEntry.getSigningCertificate();
+                countSignedResponse(ocspSigningCacheEntry, responseList);
                 ocspResponse = responseGenerator.build(OCSPRespBuilder.SUCCESSFUL, basicresp);
                 if (auditLogger.isEnabled()) {
                     auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.SUCCESSFUL);
@@ -1530,7 +1721,26 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 auditLogger.flush();
             }
         }
-        return new OcspResponseInformation(ocspResponse, maxAge, signerCert);
+        final long encodeStart = System.nanoTime();
+        final OcspResponseInformation ocspResponseInformation = new OcspResponseInformation(ocspResponse, maxAge, signerCert);
+        OcspMetrics.INSTANCE.observe(OcspMetrics.Stage.RESPONSE_ENCODE, encodeStart);
+        OcspMetrics.INSTANCE.countResponse(ocspResponse.getStatus());
+        return ocspResponseInformation;
+    }
+
+    /** Counts the responder and the certificate statuses of a signed response in the OcspMetrics */
+    private void countSignedResponse(final OcspSigningCacheEntry ocspSigningCacheEntry, final List<OCSPResponseItem> responseList) {
+        OcspMetrics.INSTANCE.countResponder(ocspSigningCacheEntry.getSigningCertificateSubjectDn());
+        for (final OCSPResponseItem item : responseList) {
+            final org.bouncycastle.cert.ocsp.CertificateStatus certStatus = item.getCertStatus();
+            if (certStatus == null) {
+                OcspMetrics.INSTANCE.countCertStatus(OcspMetrics.CertStatus.GOOD);
+            } else if (certStatus instanceof RevokedStatus) {
+                OcspMetrics.INSTANCE.countCertStatus(OcspMetrics.CertStatus.REVOKED);
+            } else {
+                OcspMetrics.INSTANCE.countCertStatus(OcspMetrics.CertStatus.UNKNOWN);
+            }
+        }
     }
     
     private boolean checkAddArchiveCuttoff(String caCertificateSubjectDn, CertificateID certId) {
@@ -1678,9 +1888,9 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                         X509Certificate signerCert, OcspSigningCacheEntry ocspSigningCacheEntry, Date producedAt)
                                 throws OCSPException, NoSuchProviderException, CryptoTokenOfflineException {
         final PrivateKey signerKey = ocspSigningCacheEntry.getPrivateKey();
-        final String provider = ocspSigningCacheEntry.getSignatureProviderName();
         BasicOCSPResp returnval = null;
-        BasicOCSPRespBuilder basicRes = new BasicOCSPRespBuilder(ocspSigningCacheEntry.getRespId());
+        // Only the single responses are encoded per request, the responderID, certs and signature algorithm are pre-built in the cache entry
+        final ASN1EncodableVector singleResponses = new ASN1EncodableVector();
         if (responses != null) {
             for (OCSPResponseItem item : responses) {
                 Date nextUpdate = item.getNextUpdate();
@@ -1688,19 +1898,21 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
                 if (signerCert != null && nextUpdate != null && signerCert.getNotAfter().before(nextUpdate)) {
                     nextUpdate = signerCert.getNotAfter();
                 }
-                basicRes.addResponse(item.getCertID(), item.getCertStatus(), item.getThisUpdate(), nextUpdate, item.getExtensions());
+                singleResponses.add(toSingleResponse(item, nextUpdate));
             }
         }
+        Extensions responseExtensions = null;
         if (exts != null) {
             @SuppressWarnings("rawtypes")
             Enumeration oids = exts.oids();
             if (oids.hasMoreElements()) {
-                basicRes.setResponseExtensions(exts);
+                responseExtensions = exts;
             }
         }
-        final X509Certificate[] chain = ocspSigningCacheEntry.getResponseCertChain();
+        final ResponseData responseData = new ResponseData(ocspSigningCacheEntry.getResponderId(),
+                new ASN1GeneralizedTime(producedAt != null ? producedAt : new Date()), new DERSequence(singleResponses), responseExtensions);
         if (log.isDebugEnabled()) {
-            log.debug("The response certificate chain contains " + chain.length + " certificates");
+            log.debug("The response certificate chain contains " + ocspSigningCacheEntry.getResponseCertChain().length + " certificates");
         }
         /*
          * The below code breaks the EJB standard by creating its own thread pool and creating a single thread (of the HsmResponseThread 
@@ -1710,7 +1922,8 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
          * Note that this does in no way break the spirit of the EJB standard, which is to not interrupt EJB's transaction handling by 
          * competing with its own thread pool, since these operations have no database impact.
          */
-        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(basicRes, sigAlg, signerKey, chain, provider, producedAt));
+        final Future<BasicOCSPResp> task = service.submit(new HsmResponseThread(responseData, ocspSigningCacheEntry.getContentSignerBuilder(sigAlg),
+                sigAlg, ocspSigningCacheEntry.getSignatureProviderName(), signerKey, ocspSigningCacheEntry.getResponseCertificates()));
         try {
             returnval = task.get(HsmResponseThread.HSM_TIMEOUT_SECONDS, TimeUnit.SECONDS);
         } catch (InterruptedException e) {
@@ -1752,6 +1965,24 @@ public class OcspResponseGeneratorSessionBean implements OcspResponseGeneratorSe
         return returnval;
     }
 
+    /** @return the ASN.1 SingleResponse for the item, encoded the same way as BasicOCSPRespBuilder does it */
+    private static SingleResponse toSingleResponse(final OCSPResponseItem item, final Date nextUpdate) {
+        final org.bouncycastle.cert.ocsp.CertificateStatus certStatus = item.getCertStatus();
+        final CertStatus asn1CertStatus;
+        if (certStatus == null) {
+            // Good
+            asn1CertStatus = new CertStatus();
+        } else if (certStatus instanceof UnknownStatus) {
+            asn1CertStatus = new CertStatus(2, DERNull.INSTANCE);
+        } else {
+            final RevokedStatus revokedStatus = (RevokedStatus) certStatus;
+            final CRLReason revocationReason = revokedStatus.hasRevocationReason() ? CRLReason.lookup(revokedStatus.getRevocationReason()) : null;
+            asn1CertStatus = new CertStatus(new RevokedInfo(new ASN1GeneralizedTime(revokedStatus.getRevocationTime()), revocationReason));
+        }
+        return new SingleResponse(item.getCertID().toASN1Primitive(), asn1CertStatus, new DERGeneralizedTime(item.getThisUpdate()),
+                nextUpdate == null ? null : new DERGeneralizedTime(nextUpdate), item.getExtensions());
+    }
+
     /**
      * Method that checks with ProbableErrorHandler if an error has happened since a certain time. Uses reflection to call ProbableErrorHandler
      * because it is dependent on JBoss log4j logging, which is not available on other application servers.
@@ -0,0 +1,63 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests of the cache of verified certificates.
+ *
+ * @version $Id$
+ */
+public class VerifiedCertificateCacheTest {
+
+    private static final String FINGERPRINT = "0123456789abcdef0123456789abcdef01234567";
+
+    @After
+    public void after() {
+        VerifiedCertificateCache.INSTANCE.clear();
+    }
+
+    @Test
+    public void testVerifiedPerContext() {
+        final VerifiedCertificateCache cache = VerifiedCertificateCache.INSTANCE;
+        assertFalse(cache.isVerified("alias1", FINGERPRINT));
+        cache.setVerified("alias1", FINGERPRINT, System.currentTimeMillis() + 60000);
+        assertTrue(cache.isVerified("alias1", FINGERPRINT));
+        assertFalse("Verification should only be valid in the context it was made in.", cache.isVerified("alias2", FINGERPRINT));
+        cache.setVerified("alias2", FINGERPRINT, System.currentTimeMillis() + 60000);
+        assertTrue(cache.isVerified("alias2", FINGERPRINT));
+        // A change of the certificate, for example a revocation, removes all verifications of it
+        cache.invalidate(FINGERPRINT);
+        assertFalse(cache.isVerified("alias1", FINGERPRINT));
+        assertFalse(cache.isVerified("alias2", FINGERPRINT));
+    }
+
+    @Test
+    public void testExpiredVerification() {
+        final VerifiedCertificateCache cache = VerifiedCertificateCache.INSTANCE;
+        cache.setVerified("alias1", FINGERPRINT, System.currentTimeMillis() - 1);
+        assertFalse("An already expired verification should not be cached.", cache.isVerified("alias1", FINGERPRINT));
+        final long expireTime = System.currentTimeMillis() + 50;
+        cache.setVerified("alias1", FINGERPRINT, expireTime);
+        assertTrue(cache.isVerified("alias1", FINGERPRINT));
+        while (System.currentTimeMillis() <= expireTime) {
+            Thread.yield();
+        }
+        assertFalse("Verification should have expired.", cache.isVerified("alias1", FINGERPRINT));
+    }
+}
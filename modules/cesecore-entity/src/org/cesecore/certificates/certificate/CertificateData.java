@@ -18,11 +18,15 @@ import java.security.PublicKey;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.persistence.ColumnResult;
@@ -30,6 +34,7 @@ import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.PostLoad;
 import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
 import javax.persistence.PreUpdate;
 import javax.persistence.Query;
 import javax.persistence.SqlResultSetMapping;
@@ -82,6 +87,14 @@ public class CertificateData extends ProtectedData implements Serializable {
 
     private static final Logger log = Logger.getLogger(CertificateData.class);
 
+    /** The maximum number of values in an IN list of a query, which is limited to 1000 by Oracle. */
+    public static final int MAX_IN_LIST_SIZE = 1000;
+
+    /** The columns of the CertificateInfo representation, which is all columns except the certificate itself and the row protection */
+    private static final String CERTIFICATE_INFO_COLUMNS = "a.fingerprint, a.issuerDN, a.subjectDN, a.cAFingerprint, a.status, a.type, "
+            + "a.serialNumber, a.notBefore, a.expireDate, a.revocationDate, a.revocationReason, a.username, a.tag, a.certificateProfileId, "
+            + "a.endEntityProfileId, a.updateTime, a.subjectKeyId, a.subjectAltName";
+
     private String issuerDN;
     private String subjectDN;
     private String subjectAltName = null;  // @since EJBCA 6.6.0
@@ -911,6 +924,17 @@ public class CertificateData extends ProtectedData implements Serializable {
         return entityManager.find(CertificateData.class, fingerprint);
     }
 
+    /** @return the found entity instances, which may be fewer than the fingerprints if some do not exist */
+    @SuppressWarnings("unchecked")
+    public static List<CertificateData> findByFingerprints(EntityManager entityManager, Collection<String> fingerprints) {
+        if (fingerprints.isEmpty()) {
+            return new ArrayList<CertificateData>();
+        }
+        final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)");
+        query.setParameter("fingerprints", fingerprints);
+        return query.getResultList();
+    }
+
     /** @return return the query results as a Set. */
     @SuppressWarnings("unchecked")
     public static Set<String> findUsernamesBySubjectDNAndIssuerDN(EntityManager entityManager, String subjectDN, String issuerDN) {
@@ -1005,6 +1029,16 @@ public class CertificateData extends ProtectedData implements Serializable {
         return ret;
     }
 
+    /** @return the meta data of this certificate, without the certificate itself */
+    public CertificateInfo toCertificateInfo() {
+        final Integer certificateProfileId = getCertificateProfileId();
+        final Long updateTime = getUpdateTime();
+        return new CertificateInfo(getFingerprint(), getCaFingerprint(), getSerialNumber(), getIssuerDN(), getSubjectDnNeverNull(), getStatus(),
+                getType(), getNotBefore(), getExpireDate(), getRevocationDate(), getRevocationReason(), getUsername(), getTag(),
+                certificateProfileId == null ? 0 : certificateProfileId.intValue(), getEndEntityProfileId(), updateTime == null ? 0 : updateTime.longValue(),
+                getSubjectKeyId(), getSubjectAltName());
+    }
+
     /** @return the last found username or null if none was found */
     public static String findLastUsernameByIssuerDNSerialNumber(EntityManager entityManager, String issuerDN, String serialNumber) {
         final Query query = entityManager
@@ -1259,27 +1293,154 @@ public class CertificateData extends ProtectedData implements Serializable {
         }
         return cl;
     }
-    @SuppressWarnings("unchecked")
+    /**
+     * Finds the certificates with IN-list queries of at most {@link #MAX_IN_LIST_SIZE} serial numbers each.
+     * 
+     * @return the found certificates, which may be fewer than the serial numbers if some do not exist
+     */
     public static List<Certificate> findCertificatesByIssuerDnAndSerialNumbers(EntityManager entityManager, String issuerDN,
             Collection<BigInteger> serialNumbers) {
-        final StringBuilder sb = new StringBuilder();
-        for(final BigInteger serno : serialNumbers) {
-            sb.append(", '");            
-            sb.append(serno.toString());
-            sb.append("'");
+        final List<Certificate> ret = new ArrayList<Certificate>();
+        for (final List<String> chunk : getSerialNumberChunks(serialNumbers)) {
+            // Derby: Columns of type 'LONG VARCHAR' may not be used in CREATE INDEX, ORDER BY, GROUP BY, UNION, INTERSECT, EXCEPT or DISTINCT statements
+            // because comparisons are not supported for that type.
+            // Since two certificates in the database should never be the same, "SELECT DISTINCT ..." was changed to "SELECT ..." here.
+            final TypedQuery<CertificateData> query = entityManager.createQuery(
+                    "SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)", CertificateData.class);
+            query.setParameter("issuerDN", issuerDN);
+            query.setParameter("serialNumbers", chunk);
+            ret.addAll(getCertificateList(query.getResultList(), entityManager));
         }
-        // to save the repeating if-statement in the above closure not to add ', ' as the first characters in the StringBuilder we remove the two chars
-        // here :)
-        sb.delete(0, ", ".length());
-        // Derby: Columns of type 'LONG VARCHAR' may not be used in CREATE INDEX, ORDER BY, GROUP BY, UNION, INTERSECT, EXCEPT or DISTINCT statements
-        // because comparisons are not supported for that type.
-        // Since two certificates in the database should never be the same, "SELECT DISTINCT ..." was changed to "SELECT ..." here.
-        final Query query = entityManager.createQuery("SELECT a FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN ("
-                + sb.toString() + ")");
-        query.setParameter("issuerDN", issuerDN);
-        return getCertificateList(query.getResultList(), entityManager);
+        return ret;
     }
-    
+
+    /**
+     * Reads only the status columns of the certificates, with IN-list queries of at most {@link #MAX_IN_LIST_SIZE} serial numbers each.
+     * 
+     * @return the status of the found certificates by serial number, which may be fewer than the serial numbers if some do not exist
+     */
+    public static Map<BigInteger, CertificateStatus> findStatusesByIssuerDnAndSerialNumbers(EntityManager entityManager, String issuerDN,
+            Collection<BigInteger> serialNumbers) {
+        final Map<BigInteger, CertificateStatus> ret = new HashMap<BigInteger, CertificateStatus>();
+        for (final List<String> chunk : getSerialNumberChunks(serialNumbers)) {
+            final TypedQuery<Object[]> query = entityManager.createQuery("SELECT a.serialNumber, a.status, a.revocationReason, a.revocationDate, "
+                    + "a.certificateProfileId FROM CertificateData a WHERE a.issuerDN=:issuerDN AND a.serialNumber IN (:serialNumbers)", Object[].class);
+            query.setParameter("issuerDN", issuerDN);
+            query.setParameter("serialNumbers", chunk);
+            for (final Object[] row : query.getResultList()) {
+                final CertificateStatus status = CertificateStatusHelper.getCertificateStatus(((Number) row[1]).intValue(),
+                        ((Number) row[2]).intValue(), ((Number) row[3]).longValue(), (Integer) row[4]);
+                ret.put(new BigInteger((String) row[0]), status);
+            }
+        }
+        return ret;
+    }
+
+    /** @return the distinct serial numbers in decimal representation, in lists of at most {@link #MAX_IN_LIST_SIZE} */
+    private static List<List<String>> getSerialNumberChunks(final Collection<BigInteger> serialNumbers) {
+        final List<List<String>> chunks = new ArrayList<List<String>>();
+        List<String> chunk = null;
+        for (final BigInteger serialNumber : new LinkedHashSet<BigInteger>(serialNumbers)) {
+            if (chunk == null || chunk.size() == MAX_IN_LIST_SIZE) {
+                chunk = new ArrayList<String>(Math.min(MAX_IN_LIST_SIZE, serialNumbers.size()));
+                chunks.add(chunk);
+            }
+            chunk.add(serialNumber.toString());
+        }
+        return chunks;
+    }
+
+    /**
+     * Finds the certificates that were changed (issued, revoked or otherwise updated) after a position in the change feed, ordered by updateTime
+     * and fingerprint. The position is the updateTime and fingerprint of the last certificate of the previous page, so each page is found with a
+     * range scan of the (updateTime, fingerprint) index no matter how many certificates there are in the table.
+     *
+     * @param afterUpdateTime the updateTime of the last certificate of the previous page, or -1 to start from the beginning
+     * @param afterFingerprint the fingerprint of the last certificate of the previous page, ignored when afterUpdateTime is -1
+     * @param untilUpdateTime the latest updateTime to include
+     * @param issuerDNs the issuer DNs of the certificates to include, at most {@link #MAX_IN_LIST_SIZE}
+     * @param maxResults the maximum number of certificates to return
+     * @return the CertificateInfo representation of the changed certificates
+     */
+    public static List<CertificateInfo> findCertificateInfosChangedAfter(EntityManager entityManager, long afterUpdateTime, String afterFingerprint,
+            long untilUpdateTime, Collection<String> issuerDNs, int maxResults) {
+        final TypedQuery<Object[]> query = entityManager.createQuery("SELECT " + CERTIFICATE_INFO_COLUMNS + " FROM CertificateData a "
+                + "WHERE (a.updateTime>:afterUpdateTime OR (a.updateTime=:afterUpdateTime AND a.fingerprint>:afterFingerprint)) "
+                + "AND a.updateTime<=:untilUpdateTime AND a.issuerDN IN (:issuerDNs) ORDER BY a.updateTime ASC, a.fingerprint ASC", Object[].class);
+        query.setParameter("afterUpdateTime", Long.valueOf(afterUpdateTime));
+        query.setParameter("afterFingerprint", afterFingerprint == null ? "" : afterFingerprint);
+        query.setParameter("untilUpdateTime", Long.valueOf(untilUpdateTime));
+        query.setParameter("issuerDNs", issuerDNs);
+        query.setMaxResults(maxResults);
+        return toCertificateInfos(query.getResultList());
+    }
+
+    /**
+     * Finds the certificates of a user without reading the encoded certificates, ordered with the latest expire date first in the same way
+     * as {@link #findByUsernameOrdered(EntityManager, String)}.
+     *
+     * @param username the username of the certificates
+     * @param afterExpireDate only include certificates that expire after this time or have no expire date, or -1 to include expired certificates
+     * @param excludedStatuses the statuses of the certificates to leave out, or null or empty to include all statuses
+     * @return the CertificateInfo representation of the certificates
+     */
+    public static List<CertificateInfo> findCertificateInfosByUsername(EntityManager entityManager, String username, long afterExpireDate,
+            Collection<Integer> excludedStatuses) {
+        final StringBuilder sb = new StringBuilder("SELECT " + CERTIFICATE_INFO_COLUMNS + " FROM CertificateData a WHERE a.username=:username");
+        final boolean excludeStatuses = excludedStatuses != null && !excludedStatuses.isEmpty();
+        if (excludeStatuses) {
+            sb.append(" AND a.status NOT IN (:statusExcluded)");
+        }
+        if (afterExpireDate != -1) {
+            sb.append(" AND (a.expireDate>=:afterExpireDate OR a.expireDate=0)");
+        }
+        sb.append(" ORDER BY a.expireDate DESC, a.serialNumber DESC");
+        final TypedQuery<Object[]> query = entityManager.createQuery(sb.toString(), Object[].class);
+        query.setParameter("username", username);
+        if (excludeStatuses) {
+            query.setParameter("statusExcluded", excludedStatuses);
+        }
+        if (afterExpireDate != -1) {
+            query.setParameter("afterExpireDate", Long.valueOf(afterExpireDate));
+        }
+        return toCertificateInfos(query.getResultList());
+    }
+
+    /**
+     * Reads the certificates without the encoded certificates, with IN-list queries of at most {@link #MAX_IN_LIST_SIZE} fingerprints each.
+     *
+     * @return the CertificateInfo representation of the found certificates in no particular order, which may be fewer than the fingerprints if
+     * some do not exist
+     */
+    public static List<CertificateInfo> findCertificateInfosByFingerprints(EntityManager entityManager, Collection<String> fingerprints) {
+        final List<String> distinctFingerprints = new ArrayList<String>(new LinkedHashSet<String>(fingerprints));
+        final List<CertificateInfo> ret = new ArrayList<CertificateInfo>(distinctFingerprints.size());
+        for (int i = 0; i < distinctFingerprints.size(); i += MAX_IN_LIST_SIZE) {
+            final TypedQuery<Object[]> query = entityManager.createQuery("SELECT " + CERTIFICATE_INFO_COLUMNS
+                    + " FROM CertificateData a WHERE a.fingerprint IN (:fingerprints)", Object[].class);
+            query.setParameter("fingerprints", distinctFingerprints.subList(i, Math.min(i + MAX_IN_LIST_SIZE, distinctFingerprints.size())));
+            ret.addAll(toCertificateInfos(query.getResultList()));
+        }
+        return ret;
+    }
+
+    /** @return the CertificateInfo representation of rows with the {@link #CERTIFICATE_INFO_COLUMNS} */
+    private static List<CertificateInfo> toCertificateInfos(final List<Object[]> resultList) {
+        final List<CertificateInfo> ret = new ArrayList<CertificateInfo>(resultList.size());
+        for (final Object[] fields : resultList) {
+            final Long notBefore = fields[7] == null ? null : ValueExtractor.extractLongValue(fields[7]);
+            final Integer endEntityProfileId = fields[14] == null ? null : ValueExtractor.extractIntValue(fields[14]);
+            // updateTime might be null in an upgraded installation
+            final long updateTime = fields[15] == null ? 0 : ValueExtractor.extractLongValue(fields[15]);
+            ret.add(new CertificateInfo((String) fields[0], (String) fields[3], (String) fields[6], (String) fields[1], (String) fields[2],
+                    ValueExtractor.extractIntValue(fields[4]), ValueExtractor.extractIntValue(fields[5]), notBefore,
+                    ValueExtractor.extractLongValue(fields[8]), ValueExtractor.extractLongValue(fields[9]), ValueExtractor.extractIntValue(fields[10]),
+                    (String) fields[11], (String) fields[12], ValueExtractor.extractIntValue(fields[13]), endEntityProfileId,
+                    updateTime, (String) fields[16], (String) fields[17]));
+        }
+        return ret;
+    }
+
     /** @return the CertificateInfo representation (all fields except the actual cert) or null if no such fingerprint exists. */
     public static CertificateInfo getCertificateInfo(EntityManager entityManager, String fingerprint) {
         CertificateInfo ret = null;
@@ -1468,6 +1629,13 @@ public class CertificateData extends ProtectedData implements Serializable {
     @Override
     protected void protectData() {
         super.protectData();
+        // A changed certificate, for example a revoked one, must be verified again by those who cached an earlier verification
+        VerifiedCertificateCache.INSTANCE.invalidate(getFingerprint());
+    }
+
+    @PreRemove
+    protected void removeData() {
+        VerifiedCertificateCache.INSTANCE.invalidate(getFingerprint());
     }
 
     @PostLoad
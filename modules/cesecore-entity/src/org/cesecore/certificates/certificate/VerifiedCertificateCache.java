@@ -0,0 +1,121 @@
+/*************************************************************************
+ *                                                                       *
+ *  CESeCore: CE Security Core                                           *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.cesecore.certificates.certificate;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Cache of certificates that have been verified to be present in the database, active and issued by a trusted CA, for use by protocols that
+ * authenticate the same client certificates over and over again, for example the CMP RA authentication with extraCerts.
+ *
+ * A verification is only valid for the context (for example a protocol alias) it was made in. All verifications of a certificate are
+ * removed when its CertificateData is changed on this node, for example when it is revoked, see CertificateData. Bulk updates that bypass
+ * the entity, such as revoking all certificates of a CA, must remove the verifications themselves. Since the cache is not
+ * synchronized between multiple instances of EJBCA, changes made on other nodes are only noticed when the verification expires.
+ *
+ * @version $Id$
+ */
+public enum VerifiedCertificateCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(VerifiedCertificateCache.class);
+    /** The maximum number of cached certificates, to bound the memory used if very many certificates are verified within the cache time */
+    private static final int MAX_ENTRIES = 10000;
+
+    /** Verified contexts and their expire times, per certificate fingerprint */
+    private final ConcurrentHashMap<String, Map<String, Long>> cache = new ConcurrentHashMap<String, Map<String, Long>>();
+
+    /**
+     * @param context the context that the certificate was verified in, for example the name of a protocol alias
+     * @param fingerprint the fingerprint of the certificate
+     * @return true if the certificate has been verified in the context and the verification has not expired
+     */
+    public boolean isVerified(final String context, final String fingerprint) {
+        final Map<String, Long> contexts = cache.get(fingerprint);
+        if (contexts == null) {
+            return false;
+        }
+        final Long expireTime = contexts.get(context);
+        if (expireTime == null) {
+            return false;
+        }
+        if (expireTime.longValue() < System.currentTimeMillis()) {
+            contexts.remove(context);
+            return false;
+        }
+        if (log.isDebugEnabled()) {
+            log.debug("Using cached verification of certificate with fingerprint " + fingerprint + " for '" + context + "'.");
+        }
+        return true;
+    }
+
+    /**
+     * Caches a successful verification of a certificate.
+     *
+     * @param context the context that the certificate was verified in, for example the name of a protocol alias
+     * @param fingerprint the fingerprint of the certificate
+     * @param expireTime the time in milliseconds when the verification should expire, at the latest when the certificate expires
+     */
+    public void setVerified(final String context, final String fingerprint, final long expireTime) {
+        if (expireTime <= System.currentTimeMillis()) {
+            return;
+        }
+        if (cache.size() >= MAX_ENTRIES && !cache.containsKey(fingerprint)) {
+            removeExpired();
+            if (cache.size() >= MAX_ENTRIES) {
+                log.debug("Verified certificate cache is full, clearing it.");
+                cache.clear();
+            }
+        }
+        Map<String, Long> contexts = cache.get(fingerprint);
+        if (contexts == null) {
+            contexts = new ConcurrentHashMap<String, Long>();
+            final Map<String, Long> existing = cache.putIfAbsent(fingerprint, contexts);
+            if (existing != null) {
+                contexts = existing;
+            }
+        }
+        contexts.put(context, Long.valueOf(expireTime));
+    }
+
+    /** Removes all cached verifications of the certificate, for example when it has been revoked. */
+    public void invalidate(final String fingerprint) {
+        if (fingerprint != null) {
+            cache.remove(fingerprint);
+        }
+    }
+
+    /** Removes all cached verifications. */
+    public void clear() {
+        cache.clear();
+    }
+
+    private void removeExpired() {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Map<String, Long>> iterator = cache.values().iterator(); iterator.hasNext();) {
+            final Map<String, Long> contexts = iterator.next();
+            for (final Iterator<Long> contextIterator = contexts.values().iterator(); contextIterator.hasNext();) {
+                if (contextIterator.next().longValue() < now) {
+                    contextIterator.remove();
+                }
+            }
+            if (contexts.isEmpty()) {
+                iterator.remove();
+            }
+        }
+    }
+}
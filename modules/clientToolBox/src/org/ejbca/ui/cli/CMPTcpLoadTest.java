@@ -0,0 +1,337 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.bouncycastle.asn1.cmp.GenMsgContent;
+import org.bouncycastle.asn1.cmp.InfoTypeAndValue;
+import org.bouncycastle.asn1.cmp.PKIBody;
+import org.bouncycastle.asn1.cmp.PKIHeader;
+import org.bouncycastle.asn1.cmp.PKIHeaderBuilder;
+import org.bouncycastle.asn1.cmp.PKIMessage;
+import org.bouncycastle.asn1.x500.X500Name;
+import org.bouncycastle.asn1.x509.GeneralName;
+
+/**
+ * Load test of the CMP TCP listener, that opens a large number of client connections and keeps them open, while sending CMP messages
+ * over some of them at a fixed rate and measuring the response times. All connections are handled by a single thread, so that tens of
+ * thousands of connections can be opened from one client machine.
+ *
+ * @version $Id$
+ */
+class CMPTcpLoadTest extends ClientToolBox {
+
+    /** Maximum number of connections that are being established at the same time */
+    private static final int MAX_PENDING_CONNECTS = 500;
+
+    /** The state of a client connection */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer lengthField = ByteBuffer.allocate(4);
+        private ByteBuffer response = null;
+        private ByteBuffer request = null;
+        private long sendTime = 0;
+        private boolean connected = false;
+
+        private Connection(final SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        private boolean isIdle() {
+            return connected && sendTime == 0;
+        }
+    }
+
+    private static class LoadTest {
+        private final InetSocketAddress address;
+        private final int nrOfConnections;
+        private final long testTime;
+        private final int messagesPerSecond;
+        private final byte[] request;
+        private final Selector selector;
+        private final List<Connection> connections = new ArrayList<Connection>();
+        private final List<Long> responseTimes = new ArrayList<Long>();
+        private final Random random = new Random();
+        private int pendingConnects = 0;
+        private int failedConnects = 0;
+        private int closedByServer = 0;
+        private int messagesSent = 0;
+        private int messagesNotSent = 0;
+
+        LoadTest(final InetSocketAddress address, final int nrOfConnections, final long testTime, final int messagesPerSecond, final byte[] request)
+                throws IOException {
+            this.address = address;
+            this.nrOfConnections = nrOfConnections;
+            this.testTime = testTime;
+            this.messagesPerSecond = messagesPerSecond;
+            this.request = request;
+            this.selector = Selector.open();
+        }
+
+        void run() throws IOException {
+            try {
+                connect();
+                sendAndReceive();
+            } finally {
+                for (final Connection connection : connections) {
+                    connection.channel.close();
+                }
+                selector.close();
+            }
+            printResult();
+        }
+
+        private void connect() throws IOException {
+            final long startTime = System.currentTimeMillis();
+            int started = 0;
+            while (started < nrOfConnections || pendingConnects > 0) {
+                while (started < nrOfConnections && pendingConnects < MAX_PENDING_CONNECTS) {
+                    final SocketChannel channel = SocketChannel.open();
+                    channel.configureBlocking(false);
+                    channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+                    final Connection connection = new Connection(channel);
+                    started++;
+                    try {
+                        if (channel.connect(address)) {
+                            connection.connected = true;
+                            connections.add(connection);
+                            channel.register(selector, SelectionKey.OP_READ, connection);
+                        } else {
+                            pendingConnects++;
+                            channel.register(selector, SelectionKey.OP_CONNECT, connection);
+                        }
+                    } catch (IOException e) {
+                        failedConnects++;
+                        channel.close();
+                    }
+                }
+                selector.select(1000);
+                handleSelected();
+                if (started % 1000 == 0 && pendingConnects == 0) {
+                    System.out.println(connections.size() + " connections open.");
+                }
+            }
+            System.out.println(connections.size() + " connections opened in " + (System.currentTimeMillis() - startTime) + " ms, " + failedConnects
+                    + " failed.");
+        }
+
+        private void sendAndReceive() throws IOException {
+            final long startTime = System.currentTimeMillis();
+            final long endTime = startTime + testTime;
+            long now;
+            while ((now = System.currentTimeMillis()) < endTime) {
+                // Send the number of messages that should have been sent until now
+                final long messagesDue = messagesPerSecond * (now - startTime) / 1000;
+                while (messagesSent + messagesNotSent < messagesDue) {
+                    send();
+                }
+                selector.select(10);
+                handleSelected();
+            }
+            // Wait a while for the remaining responses
+            final long waitEndTime = System.currentTimeMillis() + 10000;
+            while (responseTimes.size() < messagesSent && System.currentTimeMillis() < waitEndTime && !selector.keys().isEmpty()) {
+                selector.select(100);
+                handleSelected();
+            }
+        }
+
+        private void send() throws IOException {
+            if (connections.isEmpty()) {
+                messagesNotSent++;
+                return;
+            }
+            // Pick a random connection that does not wait for a response
+            for (int i = 0; i < 10; i++) {
+                final Connection connection = connections.get(random.nextInt(connections.size()));
+                if (connection.isIdle() && connection.channel.isOpen()) {
+                    connection.request = createTcpMessage(request);
+                    connection.sendTime = System.nanoTime();
+                    messagesSent++;
+                    write(connection);
+                    return;
+                }
+            }
+            messagesNotSent++;
+        }
+
+        private void handleSelected() throws IOException {
+            final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+            while (selectedKeys.hasNext()) {
+                final SelectionKey key = selectedKeys.next();
+                selectedKeys.remove();
+                final Connection connection = (Connection) key.attachment();
+                if (!key.isValid()) {
+                    continue;
+                }
+                if (key.isConnectable()) {
+                    pendingConnects--;
+                    try {
+                        connection.channel.finishConnect();
+                        connection.connected = true;
+                        connections.add(connection);
+                        key.interestOps(SelectionKey.OP_READ);
+                    } catch (IOException e) {
+                        failedConnects++;
+                        close(key);
+                    }
+                } else if (key.isReadable()) {
+                    read(key, connection);
+                } else if (key.isWritable()) {
+                    write(connection);
+                }
+            }
+        }
+
+        private void read(final SelectionKey key, final Connection connection) throws IOException {
+            final int bytesRead;
+            try {
+                bytesRead = connection.channel.read(connection.response == null ? connection.lengthField : connection.response);
+            } catch (IOException e) {
+                closedByServer++;
+                close(key);
+                return;
+            }
+            if (bytesRead < 0) {
+                closedByServer++;
+                close(key);
+                return;
+            }
+            if (connection.response == null) {
+                if (connection.lengthField.hasRemaining()) {
+                    return;
+                }
+                connection.response = ByteBuffer.allocate(connection.lengthField.getInt(0));
+                return;
+            }
+            if (!connection.response.hasRemaining()) {
+                // The response starts with version, flags and message type, and the server closes if the close flag is set
+                if (connection.sendTime != 0) {
+                    responseTimes.add(Long.valueOf((System.nanoTime() - connection.sendTime) / 1000));
+                }
+                connection.sendTime = 0;
+                connection.response = null;
+                connection.lengthField.clear();
+            }
+        }
+
+        private void write(final Connection connection) throws IOException {
+            final SelectionKey key = connection.channel.keyFor(selector);
+            try {
+                connection.channel.write(connection.request);
+            } catch (IOException e) {
+                closedByServer++;
+                close(key);
+                return;
+            }
+            key.interestOps(connection.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+        }
+
+        private void close(final SelectionKey key) throws IOException {
+            final Connection connection = (Connection) key.attachment();
+            key.cancel();
+            connection.channel.close();
+            connections.remove(connection);
+        }
+
+        private void printResult() {
+            System.out.println();
+            System.out.println("Connections opened:        " + (connections.size() + closedByServer));
+            System.out.println("Connections failed:        " + failedConnects);
+            System.out.println("Connections closed by host: " + closedByServer);
+            System.out.println("Messages sent:             " + messagesSent);
+            System.out.println("Messages not sent:         " + messagesNotSent + " (no idle connection available)");
+            System.out.println("Responses received:        " + responseTimes.size());
+            if (!responseTimes.isEmpty()) {
+                Collections.sort(responseTimes);
+                long sum = 0;
+                for (final Long responseTime : responseTimes) {
+                    sum += responseTime.longValue();
+                }
+                System.out.println("Response time average:     " + sum / responseTimes.size() / 1000.0 + " ms");
+                System.out.println("Response time median:      " + getPercentile(50) + " ms");
+                System.out.println("Response time 95th %:      " + getPercentile(95) + " ms");
+                System.out.println("Response time 99th %:      " + getPercentile(99) + " ms");
+                System.out.println("Response time maximum:     " + responseTimes.get(responseTimes.size() - 1).longValue() / 1000.0 + " ms");
+            }
+        }
+
+        private double getPercentile(final int percentile) {
+            final int index = Math.min(responseTimes.size() - 1, responseTimes.size() * percentile / 100);
+            return responseTimes.get(index).longValue() / 1000.0;
+        }
+    }
+
+    private static ByteBuffer createTcpMessage(final byte[] message) {
+        final ByteBuffer buffer = ByteBuffer.allocate(message.length + 7);
+        // Length of version, flags, message type and message, then version 10, flags 0 (do not close) and message type 0 (pkiReq)
+        buffer.putInt(message.length + 3);
+        buffer.put((byte) 10);
+        buffer.put((byte) 0);
+        buffer.put((byte) 0);
+        buffer.put(message);
+        buffer.flip();
+        return buffer;
+    }
+
+    /** @return an unprotected CMP general message, which will be answered by an error message without involving the CA */
+    private static byte[] createGeneralMessage() throws IOException {
+        final GeneralName name = new GeneralName(new X500Name("CN=CMPTcpLoadTest"));
+        final PKIHeader header = new PKIHeaderBuilder(PKIHeader.CMP_2000, name, name).build();
+        final PKIBody body = new PKIBody(PKIBody.TYPE_GEN_MSG, new GenMsgContent(new InfoTypeAndValue[0]));
+        return new PKIMessage(header, body).getEncoded();
+    }
+
+    @Override
+    protected void execute(String[] args) {
+        if (args.length < 4) {
+            System.out.println(args[0] + " <host name> <port> <number of connections> [<test time in seconds, default 60>] [<messages per second, default 10>] [<file with DER encoded CMP request>]");
+            System.out.println("Opens the connections to the CMP TCP listener and keeps them open during the test time, while sending messages over randomly chosen connections.");
+            System.out.println("Without a request file, an unprotected CMP general message is sent, which tests the TCP listener but not the CA.");
+            System.out.println("To open tens of thousands of connections, the limit of open files ('ulimit -n') on this machine and 'cmp.tcp.maxconnections' on the server");
+            System.out.println("must be high enough, and one client machine can not open more connections to the same host and port than it has local ports.");
+            return;
+        }
+        try {
+            final InetSocketAddress address = new InetSocketAddress(args[1], Integer.parseInt(args[2].trim()));
+            final int nrOfConnections = Integer.parseInt(args[3].trim());
+            final long testTime = (args.length > 4 ? Long.parseLong(args[4].trim()) : 60) * 1000;
+            final int messagesPerSecond = args.length > 5 ? Integer.parseInt(args[5].trim()) : 10;
+            final byte[] request = args.length > 6 ? Files.readAllBytes(new File(args[6]).toPath()) : createGeneralMessage();
+            new LoadTest(address, nrOfConnections, testTime, messagesPerSecond, request).run();
+        } catch (SecurityException e) {
+            throw e; // System.exit() called. Not thrown in normal operation but thrown by the custom SecurityManager when clientToolBoxTest is executed. Must not be caught.
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    protected String getName() {
+        return "CMPTcpLoadTest";
+    }
+}
@@ -99,6 +99,7 @@ import org.cesecore.certificates.util.AlgorithmConstants;
 import org.cesecore.certificates.util.AlgorithmTools;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.FileTools;
 import org.ejbca.core.protocol.scep.ScepRequestMessage;
 import org.ejbca.util.PerformanceTest;
 import org.ejbca.util.PerformanceTest.Command;
@@ -124,16 +125,20 @@ class SCEPTest extends ClientToolBox {
 
         private final Random random = new Random();
         private final String caName;
+        /** Only GetCACaps and GetCACert are requested, which is what SCEP clients do before each enrollment or renewal */
+        private final boolean caCertProfile;
 
         StressTest( final String url,
                     final int numberOfThreads,
                     final int numberOfTests,
                     final int waitTime,
                     final String caName,
-                    final String userCNBase
+                    final String userCNBase,
+                    final boolean caCertProfile
                     ) throws Exception {
             this.url = url;
             this.caName = caName;
+            this.caCertProfile = caCertProfile;
             
             CryptoProviderTools.installBCProviderIfNotAvailable();
 
@@ -199,6 +204,68 @@ class SCEPTest extends ClientToolBox {
             }
         }
 
+        private class ScepGetCACaps implements Command {
+            /** Retrieves the capabilities of the CA */
+            ScepGetCACaps() {
+                super();
+            }
+            public boolean doIt() throws Exception {
+                final String reqUrl = StressTest.this.url+"?operation=GetCACaps&message="+URLEncoder.encode(StressTest.this.caName, "UTF-8");
+                final HttpURLConnection con = (HttpURLConnection)new URL(reqUrl).openConnection();
+                con.setRequestMethod("GET");
+                con.connect();
+                if ( con.getResponseCode()!=200 ) {
+                    StressTest.this.performanceTest.getLog().error("Response code not 200: "+con.getResponseCode());
+                    return false;
+                }
+                final String caCaps = new String(FileTools.readInputStreamtoBuffer(con.getInputStream()), "UTF-8");
+                if ( caCaps.indexOf("POSTPKIOperation")<0 ) {
+                    StressTest.this.performanceTest.getLog().error("POSTPKIOperation not in CA capabilities: "+caCaps);
+                    return false;
+                }
+                return true;
+            }
+            public String getJobTimeDescription() {
+                return "Get CA capabilities";
+            }
+        }
+
+        private class ScepGetCACert implements Command {
+            /** Retrieves the CA certificate, and checks that it is the same as the first CA certificate in the session */
+            final private SessionData sessionData;
+            ScepGetCACert(final SessionData sd) {
+                super();
+                this.sessionData = sd;
+            }
+            public boolean doIt() throws Exception {
+                final String mimetype = "application/x-x509-ca-cert";
+                final String reqUrl = StressTest.this.url+"?operation=GetCACert&message="+URLEncoder.encode(StressTest.this.caName, "UTF-8");
+                final HttpURLConnection con = (HttpURLConnection)new URL(reqUrl).openConnection();
+                con.setRequestMethod("GET");
+                con.connect();
+                if ( con.getResponseCode()!=200 ) {
+                    StressTest.this.performanceTest.getLog().error("Response code not 200: "+con.getResponseCode());
+                    return false;
+                }
+                if ( !StringUtils.equals(con.getContentType(), mimetype) ) {
+                    StressTest.this.performanceTest.getLog().error("Content type not "+mimetype+": "+con.getContentType());
+                    return false;
+                }
+                final X509Certificate cacert = CertTools.getCertfromByteArray(FileTools.readInputStreamtoBuffer(con.getInputStream()), X509Certificate.class);
+                if ( this.sessionData.certchain==null ) {
+                    StressTest.this.performanceTest.getLog().info("CA cert "+cacert.getSubjectDN());
+                    this.sessionData.certchain = new X509Certificate[]{cacert};
+                } else if ( !cacert.equals(this.sessionData.certchain[0]) ) {
+                    StressTest.this.performanceTest.getLog().error("New CA cert is not equal to old!");
+                    return false;
+                }
+                return true;
+            }
+            public String getJobTimeDescription() {
+                return "Get CA certificate";
+            }
+        }
+
         private Extensions generateExtensions(int bcKeyUsage) throws IOException {
             final ExtensionsGenerator extgen = new ExtensionsGenerator();
             extgen.addExtension(Extension.keyUsage, false, new X509KeyUsage(bcKeyUsage));
@@ -694,6 +761,9 @@ class SCEPTest extends ClientToolBox {
             }
             public Command[] getCommands() throws Exception {
                 final SessionData sessionData = new SessionData();
+                if ( StressTest.this.caCertProfile ) {
+                    return new Command[]{new ScepGetCACaps(), new ScepGetCACert(sessionData)};
+                }
                 return new Command[]{new ScepGetCACertChain(sessionData),
                                      new GetCertificate(sessionData, this.userCommonNameBase!=null ? this.userCommonNameBase+(++this.nr) : null)};
             }
@@ -710,8 +780,9 @@ class SCEPTest extends ClientToolBox {
         final int waitTime;
         final String caName;
         final String userCNBase;
+        final boolean caCertProfile;
         if ( args.length < 3 ) {
-            System.out.println(args[0]+" <SCEP url> <CA name> [<number of threads>] [<wait time between each thread is started>] [<user CN to be prepended by >]");
+            System.out.println(args[0]+" <SCEP url> <CA name> [<number of threads>] [<wait time between each thread is started>] [<user CN to be prepended by >] [<load profile, 'enroll' default or 'cacert'>]");
             System.out.println("SCEP URL extra example: http://127.0.0.1:8080/scepraserver/scep/pkiclient.exe");
             System.out.println("SCEP URL ca example: http://localhost:8080/ejbca/publicweb/apply/scep/noca/pkiclient.exe");
             System.out.println();
@@ -720,6 +791,9 @@ class SCEPTest extends ClientToolBox {
             System.out.println("- references a certificate profile with allowExtensionOverride=true and allow 1024 bit keys.");
             System.out.println("- references an end entity profile with 'Use' 'Batch generation");
             System.out.println();
+            System.out.println("The 'cacert' load profile only sends the GetCACaps and GetCACert requests that clients send before each enrollment,");
+            System.out.println("use 'null' as user CN to get this profile without a user CN.");
+            System.out.println();
             System.out.println("NOTE: This test should work for both EJBCA and EXTRA.");
             System.out.println("Originally it was written for EXTRA. But then it was change to use EJBCA directly also.");
             System.out.println("After the change it has not been verified that it is still working with EXTRA.");
@@ -730,10 +804,11 @@ class SCEPTest extends ClientToolBox {
         caName = args[2];
         notanot = new NrOfThreadsAndNrOfTests(args.length>3 ? args[3] : null);
         waitTime = args.length>4 ? Integer.parseInt(args[4].trim()):0;
-        userCNBase = args.length>5 ? args[5] : null;
+        userCNBase = args.length>5 && !args[5].equalsIgnoreCase("null") ? args[5] : null;
+        caCertProfile = args.length>6 && args[6].trim().equalsIgnoreCase("cacert");
 
         try {
-            new StressTest(url, notanot.threads, notanot.tests, waitTime, caName, userCNBase);
+            new StressTest(url, notanot.threads, notanot.tests, waitTime, caName, userCNBase, caCertProfile);
         } catch( SecurityException e ) {
             throw e; // System.exit() called. Not thrown in normal operation but thrown by the custom SecurityManager when clientToolBoxTest is executed. Must not be caught.
         } catch (Exception e) {
@@ -14,8 +14,8 @@
 package org.ejbca.core.protocol.crlstore;
 
 import java.security.cert.X509Certificate;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
@@ -40,26 +40,25 @@ public class CRLCache {
 	
 	private final CrlStoreSessionLocal crlSession;
 	private final CaCertificateCache certCache;
-	final private Map<Integer, CRLEntity> crls = new HashMap<Integer, CRLEntity>();
-	final private Map<Integer, CRLEntity> deltaCrls = new HashMap<Integer, CRLEntity>();
+	final private Map<Integer, CRLEntity> crls = new ConcurrentHashMap<Integer, CRLEntity>();
+	final private Map<Integer, CRLEntity> deltaCrls = new ConcurrentHashMap<Integer, CRLEntity>();
 	private class CRLEntity {
 		final CRLInfo crlInfo;
 		final byte encoded[];
+		/** The time when the database was last checked for a newer CRL than this one */
+		final long checkTime;
 		/**
 		 * @param crlInfo
 		 * @param encoded
+		 * @param checkTime
 		 */
-		CRLEntity(CRLInfo crlInfo, byte[] encoded) {
+		CRLEntity(CRLInfo crlInfo, byte[] encoded, long checkTime) {
 			super();
 			this.crlInfo = crlInfo;
 			this.encoded = encoded;
+			this.checkTime = checkTime;
 		}
 	}
-	/** We need an object to synchronize around when rebuilding and reading the cache. When rebuilding the cache no thread
-	 * can be allowed to read the cache, since the cache will be in an inconsistent state. In the normal case we want to use
-	 * as fast objects as possible (HashMap) for reading fast.
-	 */
-	final private Lock rebuildlock = new ReentrantLock();
 
 	 /**
      * @return  {@link CRLCache} for the CA.
@@ -109,6 +108,42 @@ public class CRLCache {
 		return findCRL(certCache.findLatestBySubjectDN(id), isDelta, crlNumber);
 	}
 
+	/**
+	 * Finds the latest CRL without accessing the database, if it is cached and the database has been checked for a newer CRL recently.
+	 * @param id The ID of the subject key identifier.
+	 * @param isDelta true if delta CRL
+	 * @param cacheTime the time in milliseconds since the last check of the database that the cached CRL may be returned
+	 * @return CRL or null if the database has to be checked.
+	 */
+	public byte[] findCachedBySubjectKeyIdentifier(HashID id, boolean isDelta, long cacheTime) {
+		return findCachedCRL(certCache.findBySubjectKeyIdentifier(id), isDelta, cacheTime);
+	}
+
+	/**
+	 * Finds the latest CRL without accessing the database, if it is cached and the database has been checked for a newer CRL recently.
+	 * @param id The ID of the issuer DN.
+	 * @param isDelta true if delta CRL
+	 * @param cacheTime the time in milliseconds since the last check of the database that the cached CRL may be returned
+	 * @return CRL or null if the database has to be checked.
+	 */
+	public byte[] findCachedByIssuerDN(HashID id, boolean isDelta, long cacheTime) {
+		return findCachedCRL(certCache.findLatestBySubjectDN(id), isDelta, cacheTime);
+	}
+
+	private byte[] findCachedCRL(X509Certificate caCert, boolean isDelta, long cacheTime) {
+		if ( caCert==null || cacheTime<=0 ) {
+			return null;
+		}
+		final CRLEntity cachedCRL = (isDelta ? this.deltaCrls : this.crls).get(HashID.getFromSubjectDN(caCert).getKey());
+		if ( cachedCRL==null || cachedCRL.checkTime+cacheTime<System.currentTimeMillis() ) {
+			return null;
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Retrieved CRL (from cache without database check) with issuerDN '"+cachedCRL.crlInfo.getSubjectDN()+"', with CRL number "+cachedCRL.crlInfo.getLastCRLNumber());
+		}
+		return cachedCRL.encoded;
+	}
+
 	private byte[] findCRL(X509Certificate caCert, boolean isDelta, int crlNumber) {
 		if ( caCert==null ) {
 			if (log.isDebugEnabled()) {
@@ -118,43 +153,45 @@ public class CRLCache {
 		}
 		final HashID id = HashID.getFromSubjectDN(caCert);
 		final String issuerDN = CertTools.getSubjectDN(caCert);
-		this.rebuildlock.lock();
-		try {
-			final CRLInfo crlInfo = this.crlSession.getLastCRLInfo(issuerDN, isDelta);
-			if ( crlInfo==null ) {
-				if (log.isDebugEnabled()) {
-					log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
-				}
-				return null;
-			}
-            final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
-			// If we have not specified a crlNumber we can try to find the latest CRL in the cache
-			if (crlNumber == -1) {
-			    final CRLEntity cachedCRL = usedCrls.get(id.getKey());
-			    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
-			        if (log.isDebugEnabled()) {
-			            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
-			        }
-			        return cachedCRL.encoded;
-			    }
-			}
-			final CRLEntity entry;
-			if (crlNumber > -1) {
-			    if (log.isDebugEnabled()) {
-			        log.debug("Getting CRL with CRL number "+crlNumber);
-			    }
-			    entry = new CRLEntity( crlInfo, this.crlSession.getCRL(issuerDN, crlNumber) );			    
-			} else {
-			    entry = new CRLEntity( crlInfo, this.crlSession.getLastCRL(issuerDN, isDelta) );
-			    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
-	            usedCrls.put(id.getKey(), entry);
-			}
+		// No lock is held while the database is accessed, so that a slow lookup for one CA does not block lookups for other CAs.
+		// Concurrent lookups of the same CRL may both fetch it, which is harmless.
+		final long now = System.currentTimeMillis();
+		final CRLInfo crlInfo = this.crlSession.getLastCRLInfo(issuerDN, isDelta);
+		if ( crlInfo==null ) {
 			if (log.isDebugEnabled()) {
-				log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+				log.debug("No CRL found with issuerDN '"+issuerDN+"', returning null.");
 			}
-			return entry.encoded;
-		} finally {
-			this.rebuildlock.unlock();
+			return null;
+		}
+		final Map<Integer, CRLEntity> usedCrls = isDelta ? this.deltaCrls : this.crls;
+		// If we have not specified a crlNumber we can try to find the latest CRL in the cache
+		if (crlNumber == -1) {
+		    final CRLEntity cachedCRL = usedCrls.get(id.getKey());
+		    if ( cachedCRL!=null && !crlInfo.getCreateDate().after(cachedCRL.crlInfo.getCreateDate()) ) {
+		        if (log.isDebugEnabled()) {
+		            log.debug("Retrieved CRL (from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
+		        }
+		        // Remember that the cached CRL is still the latest one
+		        usedCrls.put(id.getKey(), new CRLEntity(cachedCRL.crlInfo, cachedCRL.encoded, now));
+		        return cachedCRL.encoded;
+		    }
+		}
+		final CRLEntity entry;
+		if (crlNumber > -1) {
+		    if (log.isDebugEnabled()) {
+		        log.debug("Getting CRL with CRL number "+crlNumber);
+		    }
+		    entry = new CRLEntity( crlInfo, this.crlSession.getCRL(issuerDN, crlNumber), now );
+		} else {
+		    entry = new CRLEntity( crlInfo, this.crlSession.getLastCRL(issuerDN, isDelta), now );
+		    // Only cache latest CRLs, these should be the ones accessed regularly, and we don't want to fill the cache with old CRLs
+		    if ( entry.encoded!=null ) {
+		        usedCrls.put(id.getKey(), entry);
+		    }
+		}
+		if (log.isDebugEnabled()) {
+			log.debug("Retrieved CRL (not from cache) with issuerDN '"+issuerDN+"', with CRL number "+crlInfo.getLastCRLNumber());
 		}
+		return entry.encoded;
 	}
 }
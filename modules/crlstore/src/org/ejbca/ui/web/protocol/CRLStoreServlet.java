@@ -27,6 +27,7 @@ import org.apache.commons.lang.StringUtils;
 import org.cesecore.certificates.certificate.HashID;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
 import org.cesecore.util.StringTools;
+import org.ejbca.config.WebConfiguration;
 import org.ejbca.core.protocol.crlstore.CRLCache;
 import org.ejbca.util.HTMLTools;
 
@@ -47,11 +48,20 @@ public class CRLStoreServlet extends StoreServletBase {
 	private CrlStoreSessionLocal crlSession;
 	
 	private CRLCache crlCache;
+	private AsyncRequestExecutor executor;
 
 	@Override
 	public void init(ServletConfig config) throws ServletException {
 		super.init(config);
 		this.crlCache = CRLCache.getInstance(crlSession, certCache);		
+		this.executor = new AsyncRequestExecutor("CRLStore", WebConfiguration.getCrlStoreThreads(), WebConfiguration.getCrlStoreQueueSize(),
+		        WebConfiguration.getCrlStoreRequestTimeout());
+	}
+
+	@Override
+	public void destroy() {
+		this.executor.shutdown();
+		super.destroy();
 	}
 
 	@Override
@@ -61,7 +71,22 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void iHash(String iHash, HttpServletResponse resp, HttpServletRequest req) throws IOException, ServletException {
-		returnCrl( this.crlCache.findByIssuerDN(HashID.getFromB64(iHash), isDelta(req), getCrlNumber(req, resp)), resp, iHash, isDelta(req) );		
+		final HashID id = HashID.getFromB64(iHash);
+		final boolean isDelta = isDelta(req);
+		final int crlNumber = getCrlNumber(req, resp);
+		if ( crlNumber==-1 ) {
+			final byte[] crl = this.crlCache.findCachedByIssuerDN(id, isDelta, WebConfiguration.getCrlStoreCacheTime());
+			if ( crl!=null ) {
+				returnCrl( crl, resp, iHash, isDelta );
+				return;
+			}
+		}
+		this.executor.execute(req, resp, new CrlTask(iHash, isDelta) {
+			@Override
+			protected byte[] process() {
+				return CRLStoreServlet.this.crlCache.findByIssuerDN(id, isDelta, crlNumber);
+			}
+		});
 	}
 
 	@Override
@@ -71,7 +96,22 @@ public class CRLStoreServlet extends StoreServletBase {
 
 	@Override
 	public void sKIDHash(String sKIDHash, HttpServletResponse resp, HttpServletRequest req, String name) throws IOException, ServletException {
-		returnCrl( this.crlCache.findBySubjectKeyIdentifier(HashID.getFromB64(sKIDHash), isDelta(req), getCrlNumber(req, resp)), resp, name, isDelta(req) );
+		final HashID id = HashID.getFromB64(sKIDHash);
+		final boolean isDelta = isDelta(req);
+		final int crlNumber = getCrlNumber(req, resp);
+		if ( crlNumber==-1 ) {
+			final byte[] crl = this.crlCache.findCachedBySubjectKeyIdentifier(id, isDelta, WebConfiguration.getCrlStoreCacheTime());
+			if ( crl!=null ) {
+				returnCrl( crl, resp, name, isDelta );
+				return;
+			}
+		}
+		this.executor.execute(req, resp, new CrlTask(name, isDelta) {
+			@Override
+			protected byte[] process() {
+				return CRLStoreServlet.this.crlCache.findBySubjectKeyIdentifier(id, isDelta, crlNumber);
+			}
+		});
 	}
 
 	@Override
@@ -101,6 +141,28 @@ public class CRLStoreServlet extends StoreServletBase {
         return -1;
 	}
 
+	/** Looks up a CRL in the database, and returns it or tells the client to retry later if the database is too slow. */
+	private abstract class CrlTask extends AsyncRequestExecutor.RequestTask<byte[]> {
+		private final String name;
+		private final boolean isDelta;
+
+		CrlTask(String name, boolean isDelta) {
+			this.name = name;
+			this.isDelta = isDelta;
+		}
+
+		@Override
+		protected void respond(HttpServletResponse resp, byte[] crl) throws IOException {
+			returnCrl( crl, resp, this.name, this.isDelta );
+		}
+
+		@Override
+		protected void respondTryLater(HttpServletResponse resp) throws IOException {
+			resp.setHeader("Retry-After", "10");
+			resp.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "The CRL store is overloaded. Try again later.");
+		}
+	}
+
 	private void returnCrl( byte crl[], HttpServletResponse resp, String name, boolean isDelta ) throws IOException {
 		if ( crl==null || crl.length<1 ) {
 			resp.sendError(HttpServletResponse.SC_NO_CONTENT, "No CRL with hash: "+HTMLTools.htmlescape(name));
@@ -0,0 +1,74 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.tcp;
+
+import java.io.IOException;
+
+import org.apache.log4j.Logger;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.WebPrincipal;
+import org.ejbca.core.model.InternalEjbcaResources;
+import org.ejbca.core.model.util.EjbLocalHelper;
+import org.ejbca.core.protocol.cmp.NoSuchAliasException;
+
+/**
+ * Class receiving TCP messages from the CMP TCP server and routing them to the correct CMP handler class.
+ *
+ * @version $Id$
+ */
+public class CmpTcpMessageHandler implements CmpTcpServer.MessageHandler {
+
+	private static final Logger LOG = Logger.getLogger(CmpTcpMessageHandler.class.getName());
+    private static final InternalEjbcaResources INTRES = InternalEjbcaResources.getInstance();
+    private static EjbLocalHelper ejb = null;
+
+	private static synchronized EjbLocalHelper getEjb() {
+		if (ejb == null) {
+			ejb = new EjbLocalHelper();
+		}
+		return ejb;
+	}
+
+    @Override
+	public TcpReturnMessage handleMessage(final byte command[], final String remoteAddress) throws IOException {
+		LOG.info(INTRES.getLocalizedMessage("cmp.receivedmsg", remoteAddress));
+		long startTime = System.currentTimeMillis();
+		final TcpReceivedMessage cmpTcpMessage = TcpReceivedMessage.getTcpMessage(command);
+		if (cmpTcpMessage.message == null) {
+			return null;
+		}
+	    final AuthenticationToken authenticationToken = new AlwaysAllowLocalAuthenticationToken(new WebPrincipal("CmpTcp", remoteAddress));
+	    byte[] result = null;
+		try {
+		    result = getEjb().getRaMasterApiProxyBean().cmpDispatch(authenticationToken, cmpTcpMessage.message, "tcp");
+		} catch (NoSuchAliasException e) {
+            LOG.error(e.getMessage(), e);
+            return null;
+        }
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Sending back CMP response to client.");
+		}
+		// Send back reply
+		final TcpReturnMessage sendBack = TcpReturnMessage.createMessage(result, cmpTcpMessage.doClose);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Sending "+sendBack.message.length+" bytes to client");
+		}
+		long endTime = System.currentTimeMillis();
+		final String iMsg = INTRES.getLocalizedMessage("cmp.sentresponsemsg", remoteAddress, Long.valueOf(endTime - startTime));
+		LOG.info(iMsg);
+		// If the client or we want to say good bye, the server closes the connection after the reply has been sent
+		return sendBack;
+	}
+}
@@ -13,101 +13,422 @@
 
 package org.ejbca.ui.tcp;
 
-import java.io.File;
-import java.net.UnknownHostException;
-import java.util.logging.FileHandler;
-import java.util.logging.Level;
-import java.util.logging.Logger;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
-import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
 import org.ejbca.config.CmpTcpConfiguration;
-import org.quickserver.net.AppException;
-import org.quickserver.net.server.QuickServer;
+import org.ejbca.core.model.InternalEjbcaResources;
 
 /**
- * Starts and stops the CMP TCP listener service
- * 
+ * Starts and stops the CMP TCP listener service.
+ *
+ * All connections are served by a single thread with a non-blocking event loop, so that many mostly idle client connections do not need a
+ * thread each. Messages are framed by their length field (see {@link TcpReceivedMessage}) and complete messages are handed to a bounded
+ * pool of worker threads. While a message is processed, nothing more is read from its connection, which gives backpressure to clients
+ * that send faster than the CA can process, and when all workers are busy complete messages wait for the next available worker.
+ *
  * @version $Id$
  */
 public class CmpTcpServer {
 
-	private static final org.apache.log4j.Logger LOG = org.apache.log4j.Logger.getLogger(CmpTcpServer.class);
-	private static final String VER = "1.0";
-
-	private transient QuickServer myServer = null;
-	
-	public void start() throws UnknownHostException	{
-		final String cmdHandle = org.ejbca.ui.tcp.CmpTcpCommandHandler.class.getName();
-
-		myServer = new QuickServer();
-		myServer.setClientAuthenticationHandler(null);
-		myServer.setBindAddr(CmpTcpConfiguration.getTCPBindAdress());
-		myServer.setPort(CmpTcpConfiguration.getTCPPortNumber());
-		myServer.setName("CMP TCP Server v " + VER);
-		if(QuickServer.getVersionNo() >= 1.2) {
-			LOG.info("Using 1.2 feature");
-			myServer.setClientBinaryHandler(cmdHandle);
-			myServer.setClientEventHandler(cmdHandle);
-
-			//reduce info to Console
-			myServer.setConsoleLoggingToMicro();
-		}
-
-		//setup logger to log to file
-		Logger logger = null;
-		FileHandler txtLog = null;
-		final String logDir = CmpTcpConfiguration.getTCPLogDir();
-		final File logFile = new File(logDir + "/");
-		if(!logFile.canRead()) {
-			logFile.mkdir();
-		}
-		try	{
-			logger = Logger.getLogger("");
-			logger.setLevel(Level.INFO);
-
-			logger = Logger.getLogger("cmptcpserver");
-			logger.setLevel(Level.FINEST); 
-			txtLog = new FileHandler(logDir+"/cmptcpserver.log");
-			//reduce info 
-			txtLog.setFormatter(new org.quickserver.util.logging.MicroFormatter());
-			logger.addHandler(txtLog);
-
-			myServer.setAppLogger(logger); //imp
-
-			//myServer.setConsoleLoggingToMicro();
-			myServer.setConsoleLoggingFormatter("org.quickserver.util.logging.SimpleTextFormatter");
-			myServer.setConsoleLoggingLevel(Level.INFO);
-		} catch(Exception e){
-			LOG.error("Could not create xmlLog FileHandler : ", e);
-		}
-		try	{
-			final String confFile = CmpTcpConfiguration.getTCPConfigFile();
-			if (!StringUtils.isEmpty(confFile)) {
-				final Object config[] = new Object[] {confFile};
-				if (!myServer.initService(config)) {
-					LOG.error("Configuration from config file "+confFile+" failed!");
-				}
-			}
-			myServer.startServer();	
-			//myServer.getQSAdminServer().setShellEnable(true);
-			//myServer.startQSAdminServer();			
-		} catch(AppException e){
-			LOG.error("Error in server : ", e);
-		}
-	}
-
-	public void stop() {
-		if (myServer != null) {
-			try {
-				myServer.stopService();
-				myServer.closeAllPools();
-			} catch (AppException e) {
-				LOG.error("Error in server : ", e);
-			} catch (Exception e) {
-				LOG.error("Error in server : ", e);
-			}
-		}
-	}
-}
+    private static final Logger LOG = Logger.getLogger(CmpTcpServer.class);
+    /** Internal localization of logs and errors */
+    private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
+    /** Size of the length field that starts each message */
+    private static final int LENGTH_FIELD_SIZE = 4;
+    /** How often idle connections are looked for */
+    private static final long IDLE_CHECK_INTERVAL = 1000;
+
+    /** Processes a complete message received from a client */
+    public interface MessageHandler {
+        /**
+         * @param message the received message, including the length field
+         * @param remoteAddress the address of the client
+         * @return the message to send back to the client, or null if the connection should be closed without a response
+         */
+        TcpReturnMessage handleMessage(byte[] message, String remoteAddress) throws IOException;
+    }
+
+    /** The state of a client connection, only used by the event loop thread */
+    private static class Connection {
+        private final SocketChannel channel;
+        private final String remoteAddress;
+        private final ByteBuffer lengthField = ByteBuffer.allocate(LENGTH_FIELD_SIZE);
+        private ByteBuffer message = null;
+        private ByteBuffer response = null;
+        private boolean closeAfterResponse = false;
+        private boolean processing = false;
+        private long lastActivity = System.currentTimeMillis();
+
+        private Connection(final SocketChannel channel, final String remoteAddress) {
+            this.channel = channel;
+            this.remoteAddress = remoteAddress;
+        }
+    }
+
+    private final MessageHandler messageHandler;
+    private final InetSocketAddress bindAddress;
+    private final int maxConnections;
+    private final long idleTimeout;
+    private final int workers;
+
+    /** Tasks from the worker threads, that must be run by the event loop thread */
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+    /** Connections with a complete message, waiting for a worker */
+    private final Queue<SelectionKey> waiting = new ArrayDeque<SelectionKey>();
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private ExecutorService workerPool;
+    private Thread eventLoopThread;
+    private volatile boolean running = false;
+    private int connectionCount = 0;
+    private int busyWorkers = 0;
+    private long lastIdleCheck = 0;
+
+    /** Creates a server for CMP messages, configured from cmptcp.properties */
+    public CmpTcpServer() {
+        this(new CmpTcpMessageHandler(), new InetSocketAddress(CmpTcpConfiguration.getTCPBindAdress(), CmpTcpConfiguration.getTCPPortNumber()),
+                CmpTcpConfiguration.getTCPMaxConnections(), CmpTcpConfiguration.getTCPIdleTimeout() * 1000L, CmpTcpConfiguration.getTCPWorkers());
+    }
+
+    /**
+     * @param messageHandler processes the received messages
+     * @param bindAddress the address and port to listen to
+     * @param maxConnections the maximum number of simultaneously open client connections
+     * @param idleTimeout the number of milliseconds a client connection may be idle before it is closed
+     * @param workers the maximum number of messages processed at the same time
+     */
+    public CmpTcpServer(final MessageHandler messageHandler, final InetSocketAddress bindAddress, final int maxConnections,
+            final long idleTimeout, final int workers) {
+        this.messageHandler = messageHandler;
+        this.bindAddress = bindAddress;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.idleTimeout = idleTimeout;
+        this.workers = Math.max(1, workers);
+    }
+
+    public void start() throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, Boolean.TRUE);
+        serverChannel.bind(bindAddress, 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        workerPool = Executors.newFixedThreadPool(workers, new ThreadFactory() {
+            private final AtomicInteger threadCounter = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "CmpTcpWorker-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        running = true;
+        eventLoopThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                eventLoop();
+            }
+        }, "CmpTcpServer");
+        eventLoopThread.setDaemon(true);
+        eventLoopThread.start();
+        LOG.info("CMP TCP server listening on " + getLocalAddress() + ", with at most " + maxConnections + " connections and " + workers
+                + " workers.");
+    }
 
+    public void stop() {
+        running = false;
+        if (selector != null) {
+            selector.wakeup();
+        }
+        if (eventLoopThread != null) {
+            try {
+                eventLoopThread.join(10000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        if (workerPool != null) {
+            workerPool.shutdown();
+            try {
+                workerPool.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
+    /** @return the address the server listens to, with the actual port if it was started with port 0 */
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) serverChannel.getLocalAddress();
+        } catch (IOException e) {
+            return bindAddress;
+        }
+    }
+
+    private void eventLoop() {
+        try {
+            while (running) {
+                selector.select(IDLE_CHECK_INTERVAL);
+                Runnable task;
+                while ((task = tasks.poll()) != null) {
+                    task.run();
+                }
+                final Iterator<SelectionKey> selectedKeys = selector.selectedKeys().iterator();
+                while (selectedKeys.hasNext()) {
+                    final SelectionKey key = selectedKeys.next();
+                    selectedKeys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        // Errors for a single client must never close the server channel, so they are handled by accept
+                        accept();
+                        continue;
+                    }
+                    try {
+                        if (key.isReadable()) {
+                            read(key);
+                        } else if (key.isWritable()) {
+                            write(key);
+                        }
+                    } catch (IOException e) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("Closing CMP TCP connection after error: " + e.getMessage());
+                        }
+                        close(key);
+                    }
+                }
+                closeIdleConnections();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            LOG.error("CMP TCP server stopped after error: ", e);
+        } finally {
+            for (final SelectionKey key : selector.keys()) {
+                try {
+                    key.channel().close();
+                } catch (IOException e) {
+                    LOG.debug("Error closing channel: " + e.getMessage());
+                }
+            }
+            try {
+                selector.close();
+            } catch (IOException e) {
+                LOG.debug("Error closing selector: " + e.getMessage());
+            }
+            LOG.info("CMP TCP server stopped.");
+        }
+    }
+
+    private void accept() {
+        while (true) {
+            final SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+            } catch (IOException e) {
+                // For example when the process is out of file descriptors. The server channel is still usable, so keep listening.
+                LOG.warn("Failed to accept CMP TCP connection: " + e.getMessage());
+                return;
+            }
+            if (channel == null) {
+                return;
+            }
+            try {
+                if (connectionCount >= maxConnections) {
+                    // Rather refuse a new client than starve the ones already connected
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Refusing CMP TCP connection from " + channel.getRemoteAddress() + ", " + connectionCount + " connections are already open.");
+                    }
+                    channel.close();
+                    continue;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, Boolean.TRUE);
+                final InetAddress remoteAddress = ((InetSocketAddress) channel.getRemoteAddress()).getAddress();
+                final Connection connection = new Connection(channel, remoteAddress.getHostAddress());
+                channel.register(selector, SelectionKey.OP_READ, connection);
+                connectionCount++;
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("CMP connection opened: " + connection.remoteAddress);
+                }
+            } catch (IOException e) {
+                // For example when the client reset the connection before it was set up
+                LOG.warn("Failed to set up accepted CMP TCP connection: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException e2) {
+                    LOG.debug("Error closing channel: " + e2.getMessage());
+                }
+            }
+        }
+    }
+
+    private void read(final SelectionKey key) throws IOException {
+        final Connection connection = (Connection) key.attachment();
+        connection.lastActivity = System.currentTimeMillis();
+        if (connection.message == null) {
+            if (connection.channel.read(connection.lengthField) < 0) {
+                close(key);
+                return;
+            }
+            if (connection.lengthField.hasRemaining()) {
+                return;
+            }
+            final int length = connection.lengthField.getInt(0);
+            if (length >= TcpReceivedMessage.MAX_MESSAGE_LENGTH) {
+                LOG.error(intres.getLocalizedMessage("cmp.errortcptoolongmsg", Integer.valueOf(length)));
+                close(key);
+                return;
+            }
+            if (length <= 0) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Closing CMP TCP connection from " + connection.remoteAddress + ", that sent a message with length " + length + ".");
+                }
+                close(key);
+                return;
+            }
+            connection.message = ByteBuffer.allocate(LENGTH_FIELD_SIZE + length);
+            connection.message.putInt(length);
+        }
+        if (connection.channel.read(connection.message) < 0) {
+            close(key);
+            return;
+        }
+        if (!connection.message.hasRemaining()) {
+            // Do not read the next message until this one has been answered
+            key.interestOps(0);
+            connection.processing = true;
+            waiting.add(key);
+            dispatchWaiting();
+        }
+    }
+
+    private void dispatchWaiting() {
+        while (busyWorkers < workers && !waiting.isEmpty()) {
+            final SelectionKey key = waiting.poll();
+            if (!key.isValid()) {
+                continue;
+            }
+            final Connection connection = (Connection) key.attachment();
+            final byte[] message = connection.message.array();
+            connection.message = null;
+            connection.lengthField.clear();
+            busyWorkers++;
+            workerPool.execute(new Runnable() {
+                @Override
+                public void run() {
+                    TcpReturnMessage response = null;
+                    try {
+                        response = messageHandler.handleMessage(message, connection.remoteAddress);
+                    } catch (Throwable e) { // NOPMD: a failed message must never stop the server
+                        LOG.error("Error processing CMP TCP message: ", e);
+                    }
+                    final TcpReturnMessage finalResponse = response;
+                    tasks.add(new Runnable() {
+                        @Override
+                        public void run() {
+                            busyWorkers--;
+                            respond(key, finalResponse);
+                            dispatchWaiting();
+                        }
+                    });
+                    selector.wakeup();
+                }
+            });
+        }
+    }
+
+    private void respond(final SelectionKey key, final TcpReturnMessage response) {
+        if (!key.isValid()) {
+            return;
+        }
+        if (response == null) {
+            close(key);
+            return;
+        }
+        final Connection connection = (Connection) key.attachment();
+        connection.response = ByteBuffer.wrap(response.message);
+        connection.closeAfterResponse = response.doClose;
+        try {
+            write(key);
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Closing CMP TCP connection after error: " + e.getMessage());
+            }
+            close(key);
+        }
+    }
+
+    private void write(final SelectionKey key) throws IOException {
+        final Connection connection = (Connection) key.attachment();
+        connection.channel.write(connection.response);
+        connection.lastActivity = System.currentTimeMillis();
+        if (connection.response.hasRemaining()) {
+            // The client is not reading as fast as we write, continue when it has made room
+            key.interestOps(SelectionKey.OP_WRITE);
+            return;
+        }
+        connection.response = null;
+        connection.processing = false;
+        if (connection.closeAfterResponse) {
+            close(key);
+        } else {
+            key.interestOps(SelectionKey.OP_READ);
+        }
+    }
+
+    private void closeIdleConnections() {
+        final long now = System.currentTimeMillis();
+        if (idleTimeout <= 0 || now - lastIdleCheck < IDLE_CHECK_INTERVAL) {
+            return;
+        }
+        lastIdleCheck = now;
+        for (final SelectionKey key : selector.keys()) {
+            final Object attachment = key.attachment();
+            if (attachment instanceof Connection) {
+                final Connection connection = (Connection) attachment;
+                if (!connection.processing && now - connection.lastActivity > idleTimeout) {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Closing idle CMP TCP connection from " + connection.remoteAddress + ".");
+                    }
+                    close(key);
+                }
+            }
+        }
+    }
+
+    private void close(final SelectionKey key) {
+        if (key.attachment() instanceof Connection && key.isValid()) {
+            connectionCount--;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("CMP connection closed: " + ((Connection) key.attachment()).remoteAddress);
+            }
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            LOG.debug("Error closing channel: " + e.getMessage());
+        }
+    }
+}
@@ -13,7 +13,7 @@
 
 package org.ejbca.ui.web.protocol;
 
-import java.net.UnknownHostException;
+import java.io.IOException;
 
 import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
@@ -40,7 +40,7 @@ public class CmpTcpInitServlet extends HttpServlet {
 		cmpTcpServer = new CmpTcpServer();
 		try {
 			cmpTcpServer.start();
-		} catch (UnknownHostException e) {
+		} catch (IOException e) {
 			throw new ServletException(e);
 		}
 	}
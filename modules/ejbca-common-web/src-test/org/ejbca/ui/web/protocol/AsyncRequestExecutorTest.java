@@ -0,0 +1,157 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncListener;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.easymock.Capture;
+import org.easymock.EasyMock;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit tests of the executor for asynchronous processing of protocol requests.
+ *
+ * @version $Id$
+ */
+public class AsyncRequestExecutorTest {
+
+    private AsyncRequestExecutor executor;
+
+    /** Task that waits for a latch before returning its result, and records how it was answered */
+    private static class TestTask extends AsyncRequestExecutor.RequestTask<String> {
+        private final String result;
+        private final CountDownLatch release;
+        private final List<String> answers;
+        private final CountDownLatch answered = new CountDownLatch(1);
+
+        TestTask(final String result, final CountDownLatch release, final List<String> answers) {
+            this.result = result;
+            this.release = release;
+            this.answers = answers;
+        }
+
+        @Override
+        protected String process() throws InterruptedException {
+            release.await();
+            return result;
+        }
+
+        @Override
+        protected void respond(final HttpServletResponse response, final String result) {
+            synchronized (answers) {
+                answers.add(result);
+            }
+            answered.countDown();
+        }
+
+        @Override
+        protected void respondTryLater(final HttpServletResponse response) {
+            synchronized (answers) {
+                answers.add("tryLater");
+            }
+            answered.countDown();
+        }
+
+        boolean awaitAnswer() throws InterruptedException {
+            return answered.await(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @After
+    public void after() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testOverloadAnsweredWithTryLater() throws Exception {
+        executor = new AsyncRequestExecutor("test", 1, 1, 60000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> answers = new ArrayList<String>();
+        final TestTask processing = new TestTask("first", release, answers);
+        final TestTask queued = new TestTask("second", release, answers);
+        final TestTask rejected = new TestTask("third", release, answers);
+        executor.execute(createAsyncRequest(new Capture<AsyncListener>()), null, processing);
+        executor.execute(createAsyncRequest(new Capture<AsyncListener>()), null, queued);
+        executor.execute(createAsyncRequest(new Capture<AsyncListener>()), null, rejected);
+        assertTrue("A request that does not fit in the queue should be answered directly.", rejected.awaitAnswer());
+        assertEquals("[tryLater]", answers.toString());
+        release.countDown();
+        assertTrue(processing.awaitAnswer());
+        assertTrue(queued.awaitAnswer());
+        assertEquals("[tryLater, first, second]", answers.toString());
+    }
+
+    @Test
+    public void testTimeoutAnsweredWithTryLater() throws Exception {
+        executor = new AsyncRequestExecutor("test", 1, 1, 60000);
+        final CountDownLatch release = new CountDownLatch(1);
+        final List<String> answers = new ArrayList<String>();
+        final TestTask task = new TestTask("result", release, answers);
+        final Capture<AsyncListener> listener = new Capture<AsyncListener>();
+        executor.execute(createAsyncRequest(listener), null, task);
+        // Let the container time out the request while it is being processed
+        listener.getValue().onTimeout(null);
+        assertTrue(task.awaitAnswer());
+        release.countDown();
+        // The result of the processing must not be written to the already answered request
+        final CountDownLatch done = new CountDownLatch(1);
+        executor.execute(createAsyncRequest(new Capture<AsyncListener>()), null, new TestTask("next", new CountDownLatch(0), answers) {
+            @Override
+            protected void respond(final HttpServletResponse response, final String result) {
+                done.countDown();
+            }
+        });
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals("[tryLater]", answers.toString());
+    }
+
+    @Test
+    public void testWithoutAsyncSupport() throws Exception {
+        executor = new AsyncRequestExecutor("test", 1, 1, 60000);
+        final HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+        EasyMock.expect(Boolean.valueOf(request.isAsyncSupported())).andReturn(Boolean.FALSE).anyTimes();
+        EasyMock.replay(request);
+        final List<String> answers = new ArrayList<String>();
+        executor.execute(request, null, new TestTask("result", new CountDownLatch(0), answers));
+        assertEquals("The request should be answered before returning when asynchronous processing is not supported.", "[result]",
+                answers.toString());
+    }
+
+    private HttpServletRequest createAsyncRequest(final Capture<AsyncListener> listener) throws IOException {
+        final HttpServletRequest request = EasyMock.createNiceMock(HttpServletRequest.class);
+        final AsyncContext asyncContext = EasyMock.createNiceMock(AsyncContext.class);
+        EasyMock.expect(Boolean.valueOf(request.isAsyncSupported())).andReturn(Boolean.TRUE).anyTimes();
+        EasyMock.expect(request.startAsync((ServletRequest) EasyMock.anyObject(), (ServletResponse) EasyMock.anyObject())).andReturn(asyncContext)
+                .anyTimes();
+        asyncContext.addListener(EasyMock.capture(listener));
+        EasyMock.replay(request, asyncContext);
+        return request;
+    }
+}
@@ -0,0 +1,210 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.mail;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.Provider;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+import javax.mail.URLName;
+import javax.mail.internet.InternetAddress;
+import javax.mail.internet.MimeMessage;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Tests the pooling of mail server connections, against a stand-in SMTP transport that keeps track of connections and delivered messages.
+ *
+ * @version $Id$
+ */
+public class MailTransportPoolTest {
+
+    /** Stand-in for the SMTP transport of a JavaMail implementation */
+    public static class StandInTransport extends Transport {
+        private static final AtomicInteger connects = new AtomicInteger();
+        private static final AtomicInteger openConnections = new AtomicInteger();
+        private static final AtomicInteger maxOpenConnections = new AtomicInteger();
+        private static final List<String> delivered = Collections.synchronizedList(new ArrayList<String>());
+        private static final List<StandInTransport> transports = Collections.synchronizedList(new ArrayList<StandInTransport>());
+        private static volatile boolean refuseConnections = false;
+
+        public StandInTransport(final Session session, final URLName urlname) {
+            super(session, urlname);
+        }
+
+        private static void reset() {
+            connects.set(0);
+            openConnections.set(0);
+            maxOpenConnections.set(0);
+            delivered.clear();
+            transports.clear();
+            refuseConnections = false;
+        }
+
+        /** Simulates that the server has closed all idle connections */
+        private static void dropConnections() {
+            synchronized (transports) {
+                for (final StandInTransport transport : transports) {
+                    if (transport.isConnected()) {
+                        transport.setConnected(false);
+                        openConnections.decrementAndGet();
+                    }
+                }
+            }
+        }
+
+        @Override
+        protected boolean protocolConnect(final String host, final int port, final String user, final String password) throws MessagingException {
+            if (refuseConnections) {
+                throw new MessagingException("Connection refused");
+            }
+            connects.incrementAndGet();
+            final int open = openConnections.incrementAndGet();
+            synchronized (maxOpenConnections) {
+                maxOpenConnections.set(Math.max(maxOpenConnections.get(), open));
+            }
+            transports.add(this);
+            return true;
+        }
+
+        @Override
+        public void sendMessage(final Message message, final Address[] addresses) throws MessagingException {
+            if (!isConnected()) {
+                throw new IllegalStateException("Not connected");
+            }
+            final String recipient = ((InternetAddress) addresses[0]).getAddress();
+            if (recipient.startsWith("rejected")) {
+                throw new SendFailedException("550 Mailbox unavailable", null, new Address[0], new Address[0], addresses);
+            }
+            try {
+                Thread.sleep(5);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            delivered.add(recipient);
+        }
+
+        @Override
+        public synchronized void close() throws MessagingException {
+            if (isConnected()) {
+                openConnections.decrementAndGet();
+            }
+            super.close();
+        }
+    }
+
+    private Session session;
+
+    @Before
+    public void before() throws Exception {
+        StandInTransport.reset();
+        final Properties properties = new Properties();
+        properties.setProperty("mail.transport.protocol.rfc822", "smtp");
+        session = Session.getInstance(properties);
+        session.setProvider(new Provider(Provider.Type.TRANSPORT, "smtp", StandInTransport.class.getName(), "Test", "1.0"));
+    }
+
+    @Test
+    public void testConnectionsAreBoundedAndReused() throws Exception {
+        final MailTransportPool mailTransportPool = new MailTransportPool(session, 3);
+        try {
+            final List<Message> messages = createMessages("user", 50);
+            final List<SendFailedException> results = mailTransportPool.sendAll(messages);
+            assertEquals(50, results.size());
+            for (final SendFailedException result : results) {
+                assertNull(result);
+            }
+            assertEquals(50, StandInTransport.delivered.size());
+            assertTrue("At most 3 connections should be open at the same time.", StandInTransport.maxOpenConnections.get() <= 3);
+            assertTrue("At most 3 connections should have been opened.", StandInTransport.connects.get() <= 3);
+            final int connects = StandInTransport.connects.get();
+            mailTransportPool.sendAll(createMessages("user", 10));
+            assertEquals("The open connections should be reused for the next batch.", connects, StandInTransport.connects.get());
+            assertEquals(60, StandInTransport.delivered.size());
+        } finally {
+            mailTransportPool.close();
+        }
+        assertEquals("All connections should be closed with the pool.", 0, StandInTransport.openConnections.get());
+    }
+
+    @Test
+    public void testRejectedMessageAndDroppedConnection() throws Exception {
+        final MailTransportPool mailTransportPool = new MailTransportPool(session, 1);
+        try {
+            final List<Message> messages = createMessages("user", 3);
+            messages.add(1, createMessage("rejected@example.com"));
+            final List<SendFailedException> results = mailTransportPool.sendAll(messages);
+            assertNull(results.get(0));
+            assertNotNull("The rejected message should be reported.", results.get(1));
+            assertNull(results.get(2));
+            assertEquals(3, StandInTransport.delivered.size());
+            assertEquals("A rejected message should not close the connection.", 1, StandInTransport.connects.get());
+            StandInTransport.dropConnections();
+            mailTransportPool.send(createMessage("user@example.com"));
+            assertEquals(4, StandInTransport.delivered.size());
+            assertEquals("A new connection should replace the dropped one.", 2, StandInTransport.connects.get());
+        } finally {
+            mailTransportPool.close();
+        }
+    }
+
+    @Test
+    public void testConnectionFailure() throws Exception {
+        StandInTransport.refuseConnections = true;
+        final MailTransportPool mailTransportPool = new MailTransportPool(session, 2);
+        try {
+            mailTransportPool.sendAll(createMessages("user", 5));
+            fail("Sending without a connection to the mail server should fail.");
+        } catch (SendFailedException e) {
+            fail("Connection failure should not be reported as a rejected message.");
+        } catch (MessagingException e) {
+            // Expected
+        } finally {
+            mailTransportPool.close();
+        }
+        assertEquals(0, StandInTransport.delivered.size());
+    }
+
+    private List<Message> createMessages(final String prefix, final int count) throws MessagingException {
+        final List<Message> messages = new ArrayList<Message>();
+        for (int i = 0; i < count; i++) {
+            messages.add(createMessage(prefix + i + "@example.com"));
+        }
+        return messages;
+    }
+
+    private Message createMessage(final String recipient) throws MessagingException {
+        final MimeMessage message = new MimeMessage(session);
+        message.setFrom(new InternetAddress("ca@example.com"));
+        message.addRecipient(Message.RecipientType.TO, new InternetAddress(recipient));
+        message.setSubject("Certificate expiration");
+        message.setText("Your certificate is about to expire.");
+        return message;
+    }
+}
@@ -34,4 +34,19 @@ public class MailConfiguration {
 		return "text/plain;charset=" + EjbcaConfigurationHolder.getExpandedString("mail.contentencoding");
 	}
 
+	/**
+	 * The maximum number of simultaneous connections to the mail server when many emails are sent, like expiration notifications.
+	 */
+	public static int getMailMaxConnections() {
+		final String value = EjbcaConfigurationHolder.getString("mail.maxconnections");
+		if (value != null) {
+			try {
+				return Math.max(1, Integer.parseInt(value.trim()));
+			} catch (NumberFormatException e) {
+				// Use the default
+			}
+		}
+		return 4;
+	}
+
 }
@@ -15,7 +15,9 @@ package org.ejbca.core.model.ra;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
@@ -40,6 +42,8 @@ public class RAAuthorization implements Serializable {
     private static final long serialVersionUID = -3195162814492440326L;
     private String authcastring = null;
     private String authendentityprofilestring = null;
+    private List<Integer> authcaids = null;
+    private final Map<String, List<Integer>> authendentityprofileids = new HashMap<>();
     private TreeMap<String, Integer> authprofilenames = null;
 	private List<Integer> authprofileswithmissingcas = null;
     private AuthenticationToken admin;
@@ -70,12 +74,12 @@ public class RAAuthorization implements Serializable {
     public String getCAAuthorizationString() {      
         if (authcastring==null) {
             authcastring = "";
-            final List<Integer> authorizedCaIds = caSession.getAuthorizedCaIds(admin);
+            final List<Integer> authorizedCaIds = getAuthorizedCaIds();
             if (authorizedCaIds.isEmpty()) {
                 // Setup a condition that can never be true if there are no authorized CAs
                 authcastring = "(0=1)";
             } else {
-                for (final Integer caId : caSession.getAuthorizedCaIds(admin)) {
+                for (final Integer caId : authorizedCaIds) {
                     if (authcastring.equals("")) {
                         authcastring = " cAId = " + caId.toString();   
                     } else {    
@@ -89,6 +93,18 @@ public class RAAuthorization implements Serializable {
         }
         return authcastring;
     } 
+
+    /**
+     * Method that checks the administrators CA privileges, for queries with the CA ids as parameters instead of a string in the where clause.
+     *
+     * @return the ids of the CAs the administrator is authorized to, never null.
+     */
+    public List<Integer> getAuthorizedCaIds() {
+        if (authcaids == null) {
+            authcaids = caSession.getAuthorizedCaIds(admin);
+        }
+        return authcaids;
+    }
     
     /**
      * @return a string of end entity profile privileges that should be used in the where clause of SQL queries, or null if no authorized end entity profiles exist.
@@ -125,6 +141,38 @@ public class RAAuthorization implements Serializable {
         return endentityauth == null ? endentityauth : endentityauth.trim();
     }
 
+    /**
+     * Gives the same restriction of approvals as {@link #getEndEntityProfileAuthorizationString(String)}, as end entity profile ids to be used as
+     * query parameters. {@link ApprovalDataVO#ANY_ENDENTITYPROFILE} is included if the administrator is authorized to approve CA actions.
+     *
+     * @return the ids of the end entity profiles of the approvals that the administrator may see, or null if the approvals should not be restricted
+     * by end entity profile.
+     * @throws AuthorizationDeniedException if the current requester isn't authorized to query for approvals
+     */
+    public List<Integer> getApprovalEndEntityProfileIds(final String endentityAccessRule) throws AuthorizationDeniedException {
+        final boolean authorizedToApproveCAActions = isAuthorizedNoLogging(admin, AccessRulesConstants.REGULAR_APPROVECAACTION);
+        final boolean authorizedToApproveRAActions = isAuthorizedNoLogging(admin, AccessRulesConstants.REGULAR_APPROVEENDENTITY);
+        if (!authorizedToApproveCAActions && !authorizedToApproveRAActions) {
+            throw new AuthorizationDeniedException("Not authorized to query for approvals: "+authorizedToApproveCAActions+", "+authorizedToApproveRAActions);
+        }
+        final GlobalConfiguration globalconfiguration = (GlobalConfiguration) globalConfigurationSession.getCachedConfiguration(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
+        if (!globalconfiguration.getEnableEndEntityProfileLimitations()) {
+            return null;
+        }
+        if (!authorizedToApproveRAActions) {
+            return Arrays.asList(ApprovalDataVO.ANY_ENDENTITYPROFILE);
+        }
+        final List<Integer> profileIds = getAuthorizedEndEntityProfileIds(endentityAccessRule);
+        if (profileIds.isEmpty()) {
+            return null;
+        }
+        final List<Integer> ret = new ArrayList<>(profileIds);
+        if (authorizedToApproveCAActions) {
+            ret.add(ApprovalDataVO.ANY_ENDENTITYPROFILE);
+        }
+        return ret;
+    }
+
     /**
      * Method that checks the administrators end entity profile privileges and returns a string that should be used in where clause of userdata SQL queries.
      *
@@ -132,15 +180,7 @@ public class RAAuthorization implements Serializable {
      */
     public String getEndEntityProfileAuthorizationString(boolean includeparanteses, String endentityAccessRule){
         if (authendentityprofilestring==null) {
-            final List<Integer> profileIds = new ArrayList<Integer>(endEntityProfileSession.getAuthorizedEndEntityProfileIds(admin, endentityAccessRule));
-            if (!endentityAccessRule.startsWith(AccessRulesConstants.VIEW_END_ENTITY)) {
-                // Additionally require view access to all the profiles
-                for (final Integer profileid : new ArrayList<Integer>(profileIds)) {
-                    if (!isAuthorizedNoLogging(admin, AccessRulesConstants.ENDENTITYPROFILEPREFIX + profileid + AccessRulesConstants.VIEW_END_ENTITY)) {
-                        profileIds.remove(profileid);
-                    }
-                }
-            }
+            final List<Integer> profileIds = getAuthorizedEndEntityProfileIds(endentityAccessRule);
             for (final int profileId : profileIds) {
                 if (authendentityprofilestring == null) {
                     authendentityprofilestring = " endEntityProfileId = " + profileId;
@@ -154,6 +194,29 @@ public class RAAuthorization implements Serializable {
         }
         return authendentityprofilestring; 
     }
+
+    /**
+     * Method that checks the administrators end entity profile privileges, for queries with the profile ids as parameters instead of a string
+     * in the where clause.
+     *
+     * @return the ids of the end entity profiles the administrator is authorized to, with view access, never null.
+     */
+    public List<Integer> getAuthorizedEndEntityProfileIds(final String endentityAccessRule) {
+        List<Integer> profileIds = authendentityprofileids.get(endentityAccessRule);
+        if (profileIds == null) {
+            profileIds = new ArrayList<Integer>(endEntityProfileSession.getAuthorizedEndEntityProfileIds(admin, endentityAccessRule));
+            if (!endentityAccessRule.startsWith(AccessRulesConstants.VIEW_END_ENTITY)) {
+                // Additionally require view access to all the profiles
+                for (final Integer profileid : new ArrayList<Integer>(profileIds)) {
+                    if (!isAuthorizedNoLogging(admin, AccessRulesConstants.ENDENTITYPROFILEPREFIX + profileid + AccessRulesConstants.VIEW_END_ENTITY)) {
+                        profileIds.remove(profileid);
+                    }
+                }
+            }
+            authendentityprofileids.put(endentityAccessRule, profileIds);
+        }
+        return profileIds;
+    }
     
     public TreeMap<String, Integer> getAuthorizedEndEntityProfileNames(final String endentityAccessRule){
     	if (authprofilenames==null){
@@ -185,6 +248,8 @@ public class RAAuthorization implements Serializable {
     public void clear(){
       authcastring=null;
       authendentityprofilestring=null;
+      authcaids = null;
+      authendentityprofileids.clear();
       authprofilenames = null;
 	  authprofileswithmissingcas = null;
     }
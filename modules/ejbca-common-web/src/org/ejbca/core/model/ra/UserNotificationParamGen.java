@@ -72,6 +72,20 @@ public class UserNotificationParamGen extends NotificationParamGen {
 		populateWithExpiringCert(expiringCert);
 	}
 
+	/** Notification parameter generation when notifying about an expiring certificate, from the stored certificate information instead of the
+	 * certificate itself.
+	 * 
+	 * @param userData The end entity the certificate belongs to. Populates USERNAME, CN etc variables
+	 * @param serialNumberHex The serial number of the certificate, in hex
+	 * @param expireDate The expiration date of the certificate
+	 * @param subjectDN The subject DN of the certificate
+	 * @param issuerDN The issuer DN of the certificate
+	 */
+	public UserNotificationParamGen(EndEntityInformation userData, String serialNumberHex, Date expireDate, String subjectDN, String issuerDN) {
+		populateWithUserData(userData);
+		populateWithExpiringCert(serialNumberHex, expireDate, subjectDN, issuerDN);
+	}
+
 	/** Notification parameter generation when notifying about end entity events (new, generated, revoked etc).
 	 * 
 	 * @param userData The end entity that is being operated on. Populates USERNAME, CN etc variables
@@ -146,13 +160,18 @@ public class UserNotificationParamGen extends NotificationParamGen {
 
     protected void populateWithExpiringCert(Certificate expiringCert) {
 		if(expiringCert != null){
-			paramPut("expiringCert.CERTSERIAL",CertTools.getSerialNumberAsString(expiringCert));
-			paramPut("expiringCert.EXPIREDATE", fastDateFormat(CertTools.getNotAfter(expiringCert)));
-			paramPut("expiringCert.CERTSUBJECTDN",CertTools.getSubjectDN(expiringCert));
-			paramPut("expiringCert.CERTISSUERDN",CertTools.getIssuerDN(expiringCert));          
+			populateWithExpiringCert(CertTools.getSerialNumberAsString(expiringCert), CertTools.getNotAfter(expiringCert),
+			        CertTools.getSubjectDN(expiringCert), CertTools.getIssuerDN(expiringCert));
 		}
 	}
 
+	protected void populateWithExpiringCert(String serialNumberHex, Date expireDate, String subjectDN, String issuerDN) {
+		paramPut("expiringCert.CERTSERIAL", serialNumberHex);
+		paramPut("expiringCert.EXPIREDATE", fastDateFormat(expireDate));
+		paramPut("expiringCert.CERTSUBJECTDN", subjectDN);
+		paramPut("expiringCert.CERTISSUERDN", issuerDN);
+	}
+
 	protected void populateWithUserData(EndEntityInformation userData) {
 		if (userData != null) {
 			paramPut("USERNAME", userData.getUsername());
@@ -12,15 +12,22 @@
  *************************************************************************/
 package org.ejbca.core.model.services.actions;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+
 import org.apache.log4j.Logger;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.services.ActionException;
 import org.ejbca.core.model.services.ActionInfo;
 import org.ejbca.core.model.services.BaseAction;
 import org.ejbca.util.mail.MailSender;
+import org.ejbca.util.mail.MailTransportPool;
 
 /**
  * Class managing the sending of emails from a service.
@@ -49,15 +56,7 @@ public class MailAction extends BaseAction {
         MailActionInfo mailActionInfo = (MailActionInfo) actionInfo;
         String senderAddress = properties.getProperty(PROP_SENDERADDRESS);
 
-        String reciverAddress = mailActionInfo.getReciever();
-        if (reciverAddress == null) {
-            reciverAddress = properties.getProperty(PROP_RECIEVERADDRESS);
-        }
-
-        if (reciverAddress == null || reciverAddress.trim().equals("")) {
-            String msg = intres.getLocalizedMessage("services.mailaction.errorreceiveraddress");
-            throw new ActionException(msg);
-        }
+        String reciverAddress = getReceiverAddress(mailActionInfo);
 
         try {
             MailSender.sendMailOrThrow(senderAddress, Arrays.asList(reciverAddress), MailSender.NO_CC, mailActionInfo.getSubject(),
@@ -72,6 +71,70 @@ public class MailAction extends BaseAction {
         }
     }
 
+    /**
+     * Sends a batch of mails over the connections of a mail transport pool. Like in {@link #performAction(ActionInfo, Map)}, a mail that could
+     * not be handed over to the mail server is only logged.
+     * 
+     * Only supports the MailActionInfo otherwise is ActionException thrown.
+     * 
+     * @param actionInfos the mails to send
+     * @param mailTransportPool the pool of mail server connections to send the mails over
+     * @throws ActionException if the configuration is invalid or if the mail server could not be reached, in which case it is unknown which
+     *             of the mails that were sent
+     */
+    public void performActions(List<? extends ActionInfo> actionInfos, MailTransportPool mailTransportPool) throws ActionException {
+        final String senderAddress = properties.getProperty(PROP_SENDERADDRESS);
+        final List<Message> messages = new ArrayList<Message>(actionInfos.size());
+        final List<MailActionInfo> sentActionInfos = new ArrayList<MailActionInfo>(actionInfos.size());
+        for (final ActionInfo actionInfo : actionInfos) {
+            checkConfig(actionInfo);
+            final MailActionInfo mailActionInfo = (MailActionInfo) actionInfo;
+            final String reciverAddress = getReceiverAddress(mailActionInfo);
+            try {
+                final Message message = MailSender.createMessage(mailTransportPool.getSession(), senderAddress, Arrays.asList(reciverAddress),
+                        MailSender.NO_CC, mailActionInfo.getSubject(), mailActionInfo.getMessage(), MailSender.NO_ATTACHMENTS);
+                if (message != null) {
+                    messages.add(message);
+                    sentActionInfos.add(mailActionInfo);
+                }
+            } catch (MessagingException e) {
+                log.info(intres.getLocalizedMessage("services.mailaction.errorsend", reciverAddress), e);
+            }
+        }
+        if (messages.isEmpty()) {
+            return;
+        }
+        final List<SendFailedException> results;
+        try {
+            results = mailTransportPool.sendAll(messages);
+        } catch (MessagingException e) {
+            final String msg = intres.getLocalizedMessage("services.mailaction.errorconnect", messages.size());
+            throw new ActionException(msg, e);
+        }
+        for (int i = 0; i < results.size(); i++) {
+            final MailActionInfo mailActionInfo = sentActionInfos.get(i);
+            final String reciverAddress = getReceiverAddress(mailActionInfo);
+            if (results.get(i) != null) {
+                log.info(intres.getLocalizedMessage("services.mailaction.errorsend", reciverAddress), results.get(i));
+            } else if (mailActionInfo.isLoggingEnabled()) {
+                log.info(intres.getLocalizedMessage("services.mailaction.sent", reciverAddress));
+            }
+        }
+    }
+
+    /** @return the receiver of the mail action, or the configured receiver if the action has none */
+    private String getReceiverAddress(MailActionInfo mailActionInfo) throws ActionException {
+        String reciverAddress = mailActionInfo.getReciever();
+        if (reciverAddress == null) {
+            reciverAddress = properties.getProperty(PROP_RECIEVERADDRESS);
+        }
+        if (reciverAddress == null || reciverAddress.trim().equals("")) {
+            String msg = intres.getLocalizedMessage("services.mailaction.errorreceiveraddress");
+            throw new ActionException(msg);
+        }
+        return reciverAddress;
+    }
+
     /**
      * Method that checks the configuration sets the variables and throws an exception if it's invalid
      * 
@@ -12,9 +12,13 @@
  *************************************************************************/
 package org.ejbca.core.model.services.workers;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
 import java.util.Date;
@@ -31,6 +35,7 @@ import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlStreamParser;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.util.CertTools;
 import org.cesecore.util.NetworkTools;
@@ -46,6 +51,9 @@ import org.ejbca.core.model.services.ServiceExecutionFailedException;
  * 
  * If the freshest CRL extension is present in a full CRL, the delta CRL will be downloaded and processed as well.
  * 
+ * CRLs are downloaded to a temporary file and processed as a stream, so maxDownloadSize can be set to allow very large CRLs. An
+ * interrupted download is resumed at the next execution if the server supports it.
+ * 
  * The worker can be configured to not respect the nextUpdate
  * 
  * @version $Id$
@@ -69,7 +77,7 @@ public class CRLDownloadWorker extends BaseWorker {
             caIdsToCheck = caSession.getAllCaIds();
         }
         final boolean ignoreNextUpdate = Boolean.valueOf(properties.getProperty(PROP_IGNORE_NEXT_UPDATE, Boolean.FALSE.toString()));
-        final int maxDownloadSize = Integer.parseInt(properties.getProperty(PROP_MAX_DOWNLOAD_SIZE, String.valueOf(DEFAULT_MAX_DOWNLOAD_SIZE)));
+        final long maxDownloadSize = Long.parseLong(properties.getProperty(PROP_MAX_DOWNLOAD_SIZE, String.valueOf(DEFAULT_MAX_DOWNLOAD_SIZE)));
         // Process all the configured CAs
         for (final int caId : caIdsToCheck) {
             if (log.isTraceEnabled()) {
@@ -93,13 +101,13 @@ public class CRLDownloadWorker extends BaseWorker {
                     final String issuerDn = CertTools.getSubjectDN(caCertificate);
                     // Get last known CRL (if any) and check when the next update will be
                     final Date now = new Date();
-                    final X509CRL lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, false));
-                    final X509CRL newestFullCrl;
+                    final CrlStreamParser lastFullCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, false));
+                    final CrlStreamParser newestFullCrl;
                     if (!ignoreNextUpdate && lastFullCrl!=null && now.before(lastFullCrl.getNextUpdate())) {
                         log.info("Next full CRL update for CA '" + caInfo.getName() + "' will be " + ValidityDate.formatAsISO8601(lastFullCrl.getNextUpdate(), null) + ". Skipping download.");
                         newestFullCrl = lastFullCrl;
                     } else {
-                        final X509CRL downloadedFullCrl = getAndProcessCrl(url, maxDownloadSize, caCertificate, caInfo, importCrlSession);
+                        final CrlStreamParser downloadedFullCrl = getAndProcessCrl(url, maxDownloadSize, caCertificate, caInfo, importCrlSession);
                         if (downloadedFullCrl==null) {
                             newestFullCrl = lastFullCrl;
                         } else {
@@ -107,10 +115,10 @@ public class CRLDownloadWorker extends BaseWorker {
                         }
                     }
                     if (newestFullCrl!=null) {
-                        final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl);
+                        final List<String> freshestCdps = CrlExtensions.extractFreshestCrlDistributionPoints(newestFullCrl.getExtensions());
                         if (!freshestCdps.isEmpty()) {
                             // Delta CRLs are used and we might already have a valid one stored
-                            X509CRL lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, true));
+                            CrlStreamParser lastDeltaCrl = getCRLFromBytes(crlStoreSession.getLastCRL(issuerDn, true));
                             if (lastDeltaCrl!=null && lastDeltaCrl.getThisUpdate().before(newestFullCrl.getThisUpdate())) {
                                 // The last known delta CRL info is already included in the latest full CRL, so treat the last delta as non-existent
                                 lastDeltaCrl = null;
@@ -125,7 +133,7 @@ public class CRLDownloadWorker extends BaseWorker {
                                         log.info("Unusable Freshest CDP HTTP URL '" + freshestCdpUrl + "' in CRL. Skipping download.");
                                         continue;
                                     }
-                                    final X509CRL newDeltaCrl = getAndProcessCrl(freshestCdpUrl, maxDownloadSize, caCertificate, caInfo, importCrlSession);
+                                    final CrlStreamParser newDeltaCrl = getAndProcessCrl(freshestCdpUrl, maxDownloadSize, caCertificate, caInfo, importCrlSession);
                                     if (newDeltaCrl!=null) {
                                         break;
                                     }
@@ -138,7 +146,7 @@ public class CRLDownloadWorker extends BaseWorker {
                 }
             } catch (CADoesntExistsException e) {
                 log.warn("Configured CA with id " + caId + " no longer exists and will not be processed.");
-            } catch (CRLException e) {
+            } catch (IOException e) {
                 log.error("Last known CRL read from the database for CA Id " + caId + " has encoding problems.", e);
             } catch (CrlStoreException e) {
                 log.error("Failed to store the downloaded CRL in the database for CA Id " + caId + ".", e);
@@ -150,28 +158,47 @@ public class CRLDownloadWorker extends BaseWorker {
         }
     }
     
-    private X509CRL getCRLFromBytes(final byte[] crlBytes) throws CRLException {
+    /** @return the CRL without the entries, which are skipped */
+    private CrlStreamParser getCRLFromBytes(final byte[] crlBytes) throws IOException {
         if (crlBytes != null) {
-            return CertTools.getCRLfromByteArray(crlBytes);
+            return getCRLFromStream(new ByteArrayInputStream(crlBytes));
         }
         return null;
     }
-    
-    private X509CRL getAndProcessCrl(final URL cdpUrl, final int maxSize, final X509Certificate caCertificate, final CAInfo caInfo,
+
+    private CrlStreamParser getCRLFromStream(final InputStream crlStream) throws IOException {
+        final CrlStreamParser crl = new CrlStreamParser(crlStream, null);
+        try {
+            crl.skipEntries();
+        } finally {
+            crl.close();
+        }
+        return crl;
+    }
+
+    /** @return the file that a CRL from the URL is downloaded to, which is the same for each execution so that the download can be resumed */
+    private File getDownloadFile(final URL cdpUrl) {
+        return new File(System.getProperty("java.io.tmpdir"), "ejbca-crldownload-" + CertTools.getFingerprintAsString(cdpUrl.toString().getBytes()) + ".crl");
+    }
+
+    private CrlStreamParser getAndProcessCrl(final URL cdpUrl, final long maxSize, final X509Certificate caCertificate, final CAInfo caInfo,
             final ImportCrlSessionLocal importCrlSession) throws CrlStoreException, AuthorizationDeniedException, CrlImportException {
-        X509CRL newCrl = null;
-        final byte[] crlBytesNew = NetworkTools.downloadDataFromUrl(cdpUrl, maxSize);
-        if (crlBytesNew==null) {
+        final File crlFile = getDownloadFile(cdpUrl);
+        if (!NetworkTools.downloadDataFromUrlToFile(cdpUrl, crlFile, maxSize)) {
             log.warn("Unable to download CRL for " + CertTools.getSubjectDN(caCertificate));
-        } else {
-            try {
-                newCrl = CertTools.getCRLfromByteArray(crlBytesNew);
-                importCrlSession.importCrl(admin, caInfo, crlBytesNew);
-            } catch (CRLException e) {
-                log.warn("Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.");
-                return null;
+            return null;
+        }
+        try {
+            final CrlStreamParser newCrl = getCRLFromStream(new FileInputStream(crlFile));
+            importCrlSession.importCrl(admin, caInfo, crlFile);
+            return newCrl;
+        } catch (IOException | CRLException e) {
+            log.warn("Unable to decode downloaded CRL for '" + caInfo.getSubjectDN() + "'.");
+            return null;
+        } finally {
+            if (!crlFile.delete()) {
+                log.warn("Unable to delete downloaded CRL " + crlFile.getAbsolutePath());
             }
         }
-        return newCrl;
     }
 }
@@ -12,12 +12,14 @@
  *************************************************************************/
 package org.ejbca.core.model.services.workers;
 
-import java.security.cert.Certificate;
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.cesecore.authorization.AuthorizationDeniedException;
@@ -27,6 +29,7 @@ import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.endentity.EndEntityInformation;
+import org.cesecore.util.StringTools;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.SecConst;
@@ -59,9 +62,6 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         certificateStoreSession = ((CertificateStoreSessionLocal) ejbs.get(CertificateStoreSessionLocal.class));
         final EndEntityAccessSessionLocal endEntityAccessSession = ((EndEntityAccessSessionLocal) ejbs.get(EndEntityAccessSessionLocal.class));
 
-        ArrayList<EmailCertData> userEmailQueue = new ArrayList<EmailCertData>();
-        ArrayList<EmailCertData> adminEmailQueue = new ArrayList<EmailCertData>();
-
         // Build Query
         Collection<String> cas = new ArrayList<String>();
         Collection<Integer> caIds = getCAIdsToCheck(false);
@@ -132,70 +132,44 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
                     log.debug("Looking for expiring certificates for CAs '"+caIds+"' and certificate profiles '"+certificateProfileIds+"', with expire treshold: "+thresHold+
                             ". activeNotifiedExpireDateMin: "+now+", activeNotifiedExpireDateMax: "+(nextRunTimeStamp + thresHold)+", activeExpireDateMin: "+(runTimeStamp + thresHold));
                 }
+                /*
+                 * The certificates are fetched, notified about and marked as notified in pages of EMAIL_BATCH_SIZE certificates, ordered
+                 * by fingerprint. Each page starts after the last fingerprint of the previous one, so marking certificates does not move
+                 * the others between pages. If the work is interrupted, the certificates of the remaining pages are still active and are
+                 * picked up by the next run.
+                 */
+                String lastFingerprint = null;
+                int count = 0;
                 try {
-                    List<Object[]> fingerprintUsernameList = certificateStoreSession.findExpirationInfo(cas, certificateProfileIds, now, (nextRunTimeStamp + thresHold),
-                            (runTimeStamp + thresHold));
-                    int count = 0;
-                    for (Object[] next : fingerprintUsernameList) {
-                        count++;
-                        // For each certificate update status.
-                        String fingerprint = (String) next[0];
-                        String username = (String) next[1];
-                        // Get the certificate through a session bean
-                        log.debug("Found a certificate we should notify. Username=" + username + ", fp=" + fingerprint);
-                        Certificate cert = certificateStoreSession.findCertificateByFingerprint(fingerprint);
-                        EndEntityInformation userData = endEntityAccessSession.findUser(getAdmin(), username);
-                        if (userData != null) {
-                            if (isSendToEndUsers()) {
-                                if (userData.getEmail() == null || userData.getEmail().trim().equals("")) {
-                                    log.info(InternalEjbcaResources.getInstance().getLocalizedMessage("services.errorworker.errornoemail", username));
-                                } else {
-                                    // Populate end user message
-                                    log.debug("Adding to email queue for user: " + userData.getEmail());
-                                    final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
-                                    final String message = userNotificationParamGen.interpolate(getEndUserMessage());
-                                    final String subject = userNotificationParamGen.interpolate(getEndUserSubject());
-                                    final MailActionInfo mailActionInfo = new MailActionInfo(userData.getEmail(), subject, message);
-                                    userEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
-                                }
-                            }
-                        } else {
-                            log.debug("Trying to send notification to user, but no UserData can be found for user '" + username
-                                    + "', will only send to admin if admin notifications are defined.");
+                    List<Object[]> page;
+                    do {
+                        try {
+                            page = endEntityAccessSession.findExpirationNotificationInfo(cas, certificateProfileIds, now, (nextRunTimeStamp + thresHold),
+                                    (runTimeStamp + thresHold), lastFingerprint, EMAIL_BATCH_SIZE);
+                        } catch (Exception fe) {
+                            log.error("Error running service work: ", fe);
+                            throw new ServiceExecutionFailedException(fe);
                         }
-                        if (isSendToAdmins()) {
-                            // If we did not have any user for this, we will simply use empty values for substitution
-                            if (userData == null) {
-                                userData = new EndEntityInformation();
-                                userData.setUsername(username);
+                        notifyPage(page, ejbs);
+                        count += page.size();
+                        if (!page.isEmpty()) {
+                            lastFingerprint = (String) page.get(page.size() - 1)[0];
+                            if (log.isDebugEnabled()) {
+                                log.debug("Notified about " + count + " expiring certificates, up to fp=" + lastFingerprint);
                             }
-                            // Populate admin message
-                            log.debug("Adding to email queue for admin");
-                            final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, cert);
-                            final String message = userNotificationParamGen.interpolate(getAdminMessage());
-                            final String subject = userNotificationParamGen.interpolate(getAdminSubject());
-                            final MailActionInfo mailActionInfo = new MailActionInfo(null, subject, message);
-                            adminEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
-                        }
-                        if (!isSendToEndUsers() && !isSendToAdmins()) {
-                            // a little bit of a kludge to make JUnit testing feasible...
-                            log.debug("nobody to notify for cert with fp:" + fingerprint);
-                            updateStatus(fingerprint, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
                         }
+                    } while (page.size() == EMAIL_BATCH_SIZE);
+                } catch (ServiceExecutionFailedException e) {
+                    if (lastFingerprint != null) {
+                        log.info("Notified about " + count + " expiring certificates up to fp=" + lastFingerprint
+                                + " before failing, the remaining certificates will be notified about in the next run.");
                     }
-                    if (count == 0) {
-                        log.debug("No certificates found for notification.");
-                    }
-
-                } catch (Exception fe) {
-                    log.error("Error running service work: ", fe);
-                    throw new ServiceExecutionFailedException(fe);
+                    throw e;
+                } finally {
+                    closeMailTransportPool();
                 }
-                if (isSendToEndUsers()) {
-                    sendEmails(userEmailQueue, ejbs);
-                }
-                if (isSendToAdmins()) {
-                    sendEmails(adminEmailQueue, ejbs);
+                if (count == 0) {
+                    log.debug("No certificates found for notification.");
                 }
             } else {
                 log.info("CAs select collection is empty, there were ids but no names?");
@@ -206,6 +180,90 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         log.trace("<CertificateExpirationNotifierWorker.work ended");
     }
 
+    /**
+     * Sends the notifications about a page of expiring certificates and marks the certificates as notified.
+     * 
+     * @param page the rows returned by EndEntityAccessSessionLocal.findExpirationNotificationInfo
+     */
+    private void notifyPage(final List<Object[]> page, final Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+        final List<EmailCertData> userEmailQueue = new ArrayList<EmailCertData>();
+        final List<EmailCertData> adminEmailQueue = new ArrayList<EmailCertData>();
+        final Set<String> notifiedFingerprints = new LinkedHashSet<String>();
+        for (final Object[] next : page) {
+            final String fingerprint = (String) next[0];
+            final String username = (String) next[5];
+            log.debug("Found a certificate we should notify. Username=" + username + ", fp=" + fingerprint);
+            final String serialNumberHex = getSerialNumberHex((String) next[1]);
+            final Date expireDate = new Date(((Number) next[2]).longValue());
+            final String subjectDN = next[3] == null ? "" : (String) next[3];
+            final String issuerDN = (String) next[4];
+            EndEntityInformation userData = null;
+            // The end entity columns are all null if there is no end entity for the certificate, time created is never null otherwise
+            if (next[9] != null) {
+                userData = new EndEntityInformation();
+                userData.setUsername(username);
+                userData.setDN(next[6] == null ? "" : (String) next[6]);
+                userData.setEmail((String) next[7]);
+                userData.setPassword(StringTools.deobfuscateIf((String) next[8]));
+                userData.setTimeCreated(new Date(((Number) next[9]).longValue()));
+                userData.setTimeModified(new Date(((Number) next[10]).longValue()));
+            }
+            if (userData != null) {
+                if (isSendToEndUsers()) {
+                    if (userData.getEmail() == null || userData.getEmail().trim().equals("")) {
+                        log.info(InternalEjbcaResources.getInstance().getLocalizedMessage("services.errorworker.errornoemail", username));
+                    } else {
+                        // Populate end user message
+                        log.debug("Adding to email queue for user: " + userData.getEmail());
+                        final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, serialNumberHex, expireDate,
+                                subjectDN, issuerDN);
+                        final String message = userNotificationParamGen.interpolate(getEndUserMessage());
+                        final String subject = userNotificationParamGen.interpolate(getEndUserSubject());
+                        final MailActionInfo mailActionInfo = new MailActionInfo(userData.getEmail(), subject, message);
+                        userEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
+                        notifiedFingerprints.add(fingerprint);
+                    }
+                }
+            } else {
+                log.debug("Trying to send notification to user, but no UserData can be found for user '" + username
+                        + "', will only send to admin if admin notifications are defined.");
+            }
+            if (isSendToAdmins()) {
+                // If we did not have any user for this, we will simply use empty values for substitution
+                if (userData == null) {
+                    userData = new EndEntityInformation();
+                    userData.setUsername(username);
+                }
+                // Populate admin message
+                log.debug("Adding to email queue for admin");
+                final UserNotificationParamGen userNotificationParamGen = new UserNotificationParamGen(userData, serialNumberHex, expireDate, subjectDN,
+                        issuerDN);
+                final String message = userNotificationParamGen.interpolate(getAdminMessage());
+                final String subject = userNotificationParamGen.interpolate(getAdminSubject());
+                final MailActionInfo mailActionInfo = new MailActionInfo(null, subject, message);
+                adminEmailQueue.add(new EmailCertData(fingerprint, mailActionInfo));
+                notifiedFingerprints.add(fingerprint);
+            }
+            if (!isSendToEndUsers() && !isSendToAdmins()) {
+                // a little bit of a kludge to make JUnit testing feasible...
+                log.debug("nobody to notify for cert with fp:" + fingerprint);
+                notifiedFingerprints.add(fingerprint);
+            }
+        }
+        deliverEmails(userEmailQueue, ejbs);
+        deliverEmails(adminEmailQueue, ejbs);
+        updateStatus(notifiedFingerprints, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+    }
+
+    /** @return the serial number in hex, like CertificateData.getSerialNumberHex */
+    private String getSerialNumberHex(final String serialNumber) {
+        try {
+            return new BigInteger(serialNumber, 10).toString(16).toUpperCase();
+        } catch (NumberFormatException e) {
+            return serialNumber;
+        }
+    }
+
     /**
      * Method that must be implemented by all subclasses to EmailSendingWorker, used to update status of a certificate, user, or similar
      * 
@@ -225,6 +283,23 @@ public class CertificateExpirationNotifierWorker extends EmailSendingWorker {
         }
     }
     
+    @Override
+    protected void updateStatus(Collection<String> pks, int status) {
+        if (pks.isEmpty()) {
+            return;
+        }
+        try {
+            final int updated = certificateStoreSession.setStatus(getAdmin(), pks, status);
+            if (updated != pks.size()) {
+                log.error("Error updating certificate status for " + (pks.size() - updated) + " of the certificates with fingerprints: " + pks);
+            }
+        } catch (AuthorizationDeniedException e) {
+            // Should not be possible...
+            log.error("Internal admin not authorized: ", e);
+            throw new RuntimeException(e);
+        }
+    }
+
     /**
      * Returns the Set of Certificate Profile IDs. For performance reasons cached as a 
      * transient class variable.
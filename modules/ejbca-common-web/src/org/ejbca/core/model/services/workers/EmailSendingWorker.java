@@ -14,15 +14,22 @@
 package org.ejbca.core.model.services.workers;
 
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.ejbca.core.model.services.BaseWorker;
+import org.ejbca.core.model.services.IAction;
 import org.ejbca.core.model.services.ServiceExecutionFailedException;
+import org.ejbca.core.model.services.actions.MailAction;
 import org.ejbca.core.model.services.actions.MailActionInfo;
 import org.ejbca.core.model.services.workers.EmailSendingWorkerConstants;
+import org.ejbca.util.mail.MailSender;
+import org.ejbca.util.mail.MailTransportPool;
 
 /**
  * @version $Id$
@@ -31,10 +38,14 @@ public abstract class EmailSendingWorker extends BaseWorker {
 
 	private static final Logger log = Logger.getLogger(EmailSendingWorker.class);
 
+	/** The maximum number of emails that are handed over to the mail server before the status of the objects they concern is updated */
+	protected static final int EMAIL_BATCH_SIZE = 100;
+
 	private transient String endUserSubject = null;
 	private transient String adminSubject = null;
 	private transient String endUserMessage = null;
 	private transient String adminMessage = null;
+	private transient MailTransportPool mailTransportPool = null;
 
 	public EmailSendingWorker() {
 		super();
@@ -67,17 +78,73 @@ public abstract class EmailSendingWorker extends BaseWorker {
 	 */
 	protected abstract void updateStatus(String pk, int status);
 	
-	protected void sendEmails(ArrayList<EmailCertData> queue, Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
-		Iterator<EmailCertData> iter = queue.iterator();
-		while(iter.hasNext()){			
-			try{
-				EmailCertData next = iter.next();								
-				getAction().performAction(next.getActionInfo(), ejbs);
-				updateStatus(next.getFingerPrint(), CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
-			} catch (Exception fe) {
-				log.error("Error sending emails: ", fe);
-				throw new ServiceExecutionFailedException(fe);
-			} 
+	/** Used to update status of several certificates, users, or similar. Subclasses may override this to update them all at once.
+	 * @param pks primary keys of objects to update
+	 * @param status status to update to 
+	 */
+	protected void updateStatus(Collection<String> pks, int status) {
+		for (String pk : pks) {
+			updateStatus(pk, status);
+		}
+	}
+
+	/** Sends the emails in batches of EMAIL_BATCH_SIZE and updates the status of the objects of each batch, once the emails of the batch have been
+	 * sent. If the work is interrupted, the objects of the remaining batches have their old status and can be picked up again.
+	 * 
+	 * @param queue the emails to send
+	 * @param ejbs the EJBs available to the service
+	 * @throws ServiceExecutionFailedException if the emails could not be sent
+	 */
+	protected void sendEmails(List<EmailCertData> queue, Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+		for (int i=0; i<queue.size(); i+=EMAIL_BATCH_SIZE) {
+			final List<EmailCertData> batch = queue.subList(i, Math.min(i+EMAIL_BATCH_SIZE, queue.size()));
+			deliverEmails(batch, ejbs);
+			final Set<String> pks = new LinkedHashSet<String>();
+			for (EmailCertData next : batch) {
+				pks.add(next.getFingerPrint());
+			}
+			updateStatus(pks, CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+		}
+	}
+
+	/** Sends the emails without updating any status. With a mail action the emails are sent in parallel over a pool of connections to the
+	 * mail server, that is kept until {@link #closeMailTransportPool()} is called.
+	 * 
+	 * @param emails the emails to send
+	 * @param ejbs the EJBs available to the service
+	 * @throws ServiceExecutionFailedException if the emails could not be sent
+	 */
+	protected void deliverEmails(List<EmailCertData> emails, Map<Class<?>, Object> ejbs) throws ServiceExecutionFailedException {
+		if (emails.isEmpty()) {
+			return;
+		}
+		final IAction action = getAction();
+		try {
+			if (action instanceof MailAction) {
+				final List<MailActionInfo> actionInfos = new ArrayList<MailActionInfo>(emails.size());
+				for (EmailCertData next : emails) {
+					actionInfos.add(next.getActionInfo());
+				}
+				if (mailTransportPool == null) {
+					mailTransportPool = MailSender.createTransportPool();
+				}
+				((MailAction) action).performActions(actionInfos, mailTransportPool);
+			} else {
+				for (EmailCertData next : emails) {
+					action.performAction(next.getActionInfo(), ejbs);
+				}
+			}
+		} catch (Exception fe) {
+			log.error("Error sending emails: ", fe);
+			throw new ServiceExecutionFailedException(fe);
+		}
+	}
+
+	/** Closes the connections to the mail server opened by {@link #deliverEmails(List, Map)}. Must be called when the work is done. */
+	protected void closeMailTransportPool() {
+		if (mailTransportPool != null) {
+			mailTransportPool.close();
+			mailTransportPool = null;
 		}
 	}
 
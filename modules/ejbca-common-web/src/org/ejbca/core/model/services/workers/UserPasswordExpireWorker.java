@@ -87,11 +87,15 @@ public class UserPasswordExpireWorker extends EmailSendingWorker {
             }
         }
         // Send of the mails
-        if (isSendToEndUsers()) {
-            sendEmails(userEmailQueue, ejbs);
-        }
-        if (isSendToAdmins()) {
-            sendEmails(adminEmailQueue, ejbs);
+        try {
+            if (isSendToEndUsers()) {
+                sendEmails(userEmailQueue, ejbs);
+            }
+            if (isSendToAdmins()) {
+                sendEmails(adminEmailQueue, ejbs);
+            }
+        } finally {
+            closeMailTransportPool();
         }
         log.trace("<Worker ended");
     }
@@ -0,0 +1,235 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.protocol;
+
+import java.io.IOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.servlet.AsyncContext;
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Executor for protocol servlets that have to do slow work, like database lookups or signing with an HSM, to answer a request.
+ *
+ * The work is done by a fixed number of threads with a bounded queue, while the request thread of the servlet container is released by
+ * using asynchronous servlet processing. If the queue is full, or if no answer has been written within the request timeout, the request
+ * is answered with the "try later" response of the task instead, so that an overloaded database or HSM does not make requests pile up.
+ * Requests that can be answered without slow work, for example from a cache, should be answered directly by the servlet.
+ *
+ * The servlet must be declared with async-supported in web.xml, otherwise the request thread is blocked while the work is done.
+ *
+ * @version $Id$
+ */
+public class AsyncRequestExecutor {
+
+    private static final Logger log = Logger.getLogger(AsyncRequestExecutor.class);
+
+    /**
+     * The work that is done to answer a request.
+     *
+     * @param <T> the result of the slow part of the work
+     */
+    public static abstract class RequestTask<T> {
+        /**
+         * Does the slow part of the work. Called on a thread of the executor, and must not use the request or the response.
+         * @return the result that the response is written from
+         */
+        protected abstract T process() throws Exception;
+
+        /** Writes the response from the result of {@link #process()}. */
+        protected abstract void respond(HttpServletResponse response, T result) throws IOException;
+
+        /** Writes the response telling the client to try again later, when the request could not be processed in time. */
+        protected abstract void respondTryLater(HttpServletResponse response) throws IOException;
+    }
+
+    private final String name;
+    private final long timeout;
+    private final ThreadPoolExecutor executor;
+
+    /**
+     * @param name the name of the executor, used in thread names and log messages
+     * @param threads the number of threads doing the work
+     * @param queueSize the maximum number of requests waiting for a thread
+     * @param timeout the time in milliseconds a request may wait and be processed before the client is told to try later
+     */
+    public AsyncRequestExecutor(final String name, final int threads, final int queueSize, final long timeout) {
+        this.name = name;
+        this.timeout = timeout;
+        this.executor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), 60, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(Math.max(queueSize, 1)),
+                new ThreadFactory() {
+                    private final AtomicInteger threadNumber = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(final Runnable runnable) {
+                        final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        this.executor.allowCoreThreadTimeOut(true);
+        if (log.isDebugEnabled()) {
+            log.debug("Created executor '" + name + "' with " + threads + " threads, queue size " + queueSize + " and timeout " + timeout + " ms.");
+        }
+    }
+
+    /**
+     * Processes the request on a thread of the executor and writes the response when done, or the "try later" response of the task if the
+     * executor is overloaded or the request times out. Returns without waiting for the work to be done, if the request supports asynchronous
+     * processing.
+     */
+    public <T> void execute(final HttpServletRequest request, final HttpServletResponse response, final RequestTask<T> task) throws IOException {
+        if (!request.isAsyncSupported()) {
+            executeAndWait(response, task);
+            return;
+        }
+        final AsyncContext asyncContext = request.startAsync(request, response);
+        asyncContext.setTimeout(timeout);
+        // Only one of the worker, the timeout and the rejection may write the response
+        final AtomicBoolean responded = new AtomicBoolean(false);
+        asyncContext.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(final AsyncEvent event) throws IOException {
+                if (responded.compareAndSet(false, true)) {
+                    if (log.isDebugEnabled()) {
+                        log.debug("Request to '" + name + "' from " + request.getRemoteAddr() + " timed out after " + timeout + " ms.");
+                    }
+                    try {
+                        task.respondTryLater((HttpServletResponse) asyncContext.getResponse());
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            }
+
+            @Override
+            public void onError(final AsyncEvent event) {
+                responded.set(true);
+            }
+
+            @Override
+            public void onComplete(final AsyncEvent event) {
+                // Nothing to clean up
+            }
+
+            @Override
+            public void onStartAsync(final AsyncEvent event) {
+                // Not started again
+            }
+        });
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (responded.get()) {
+                        // Timed out while waiting in the queue, so there is no one to do the work for
+                        return;
+                    }
+                    T result = null;
+                    Exception error = null;
+                    try {
+                        result = task.process();
+                    } catch (Exception e) {
+                        error = e;
+                    }
+                    if (!responded.compareAndSet(false, true)) {
+                        return;
+                    }
+                    try {
+                        final HttpServletResponse asyncResponse = (HttpServletResponse) asyncContext.getResponse();
+                        if (error == null) {
+                            task.respond(asyncResponse, result);
+                        } else {
+                            log.info("Error processing request to '" + name + "': " + error.getMessage(), error);
+                            asyncResponse.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        log.info("Could not write response to '" + name + "' request: " + e.getMessage());
+                    } finally {
+                        asyncContext.complete();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (responded.compareAndSet(false, true)) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Executor '" + name + "' is overloaded, telling " + request.getRemoteAddr() + " to try later.");
+                }
+                try {
+                    task.respondTryLater(response);
+                } finally {
+                    asyncContext.complete();
+                }
+            }
+        }
+    }
+
+    /** Fallback for requests that do not support asynchronous processing, that still sheds load but blocks the request thread. */
+    private <T> void executeAndWait(final HttpServletResponse response, final RequestTask<T> task) throws IOException {
+        final Future<T> future;
+        try {
+            future = executor.submit(new Callable<T>() {
+                @Override
+                public T call() throws Exception {
+                    return task.process();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Executor '" + name + "' is overloaded, telling the client to try later.");
+            }
+            task.respondTryLater(response);
+            return;
+        }
+        final T result;
+        try {
+            result = future.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            if (log.isDebugEnabled()) {
+                log.debug("Request to '" + name + "' timed out after " + timeout + " ms.");
+            }
+            task.respondTryLater(response);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            task.respondTryLater(response);
+            return;
+        } catch (ExecutionException e) {
+            log.info("Error processing request to '" + name + "': " + e.getCause().getMessage(), e.getCause());
+            response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+            return;
+        }
+        task.respond(response, result);
+    }
+
+    /** Stops the threads of the executor, after the requests that have already been accepted are processed. */
+    public void shutdown() {
+        executor.shutdown();
+    }
+}
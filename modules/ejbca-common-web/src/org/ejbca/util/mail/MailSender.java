@@ -79,63 +79,11 @@ public class MailSender {
         // mail.smtp.timeout
         // mail.smtp.connectiontimeout
         // mail.smtp.writetimeout
-        Message msg = new MimeMessage(mailSession);
         try {
-        	if (log.isDebugEnabled()) {
-        		log.debug("from: " + fromAddress);
-        	}
-			msg.setFrom(new InternetAddress(fromAddress));
-			boolean atLeastOneRecipient = false;
-			if (toList != null) {
-				for (int i=0; i<toList.size(); i++) {
-					String to = toList.get(i);
-					msg.addRecipients(javax.mail.Message.RecipientType.TO, InternetAddress.parse(to, false));
-		        	if (log.isDebugEnabled()) {
-		        		log.debug("to: " + to);
-		        	}
-					atLeastOneRecipient = true;
-				}
-			}
-			if (ccList != null) {
-				for (int i=0; i<ccList.size(); i++) {
-					String cc = ccList.get(i);
-					msg.addRecipients(javax.mail.Message.RecipientType.CC, InternetAddress.parse(cc, false));
-		        	if (log.isDebugEnabled()) {
-		        		log.debug("cc: " + cc);
-		        	}
-					atLeastOneRecipient = true;
-				}
-			}
-			if (!atLeastOneRecipient) {
-				return false;	// We need at least one recipient.. either TO or CC
-			}
-	        msg.setSubject(subject);
-        	if (log.isDebugEnabled()) {
-        		log.debug("subject: " + subject);
-        	}
-	        if (attachments == null || attachments.size() == 0) {
-		        msg.setContent(content, MailConfiguration.getMailMimeType());
-	        	if (log.isDebugEnabled()) {
-	        		log.debug("content: " + content);
-	        	}
-	        } else {
-		        Multipart multipart = new MimeMultipart();
-		        // Add the text message first
-		        MimeBodyPart msgBody = new MimeBodyPart();
-		        msgBody.setContent(content, MailConfiguration.getMailMimeType());
-		        multipart.addBodyPart(msgBody);
-		        // Attach all the requested files
-				for (int i=0; i<attachments.size(); i++) {
-					MailAttachment mailAttachment = attachments.get(i);
-			        MimeBodyPart msgAttachment = new MimeBodyPart();
-			        msgAttachment.setDataHandler(mailAttachment.getDataHandler());
-			        msgAttachment.setFileName(mailAttachment.getName());
-			        multipart.addBodyPart(msgAttachment);
-		        }
-		        msg.setContent(multipart);
-	        }
-	        msg.setHeader("X-Mailer", "JavaMailer");
-	        msg.setSentDate(new Date());
+            final Message msg = createMessage(mailSession, fromAddress, toList, ccList, subject, content, attachments);
+            if (msg == null) {
+                return false;	// We need at least one recipient.. either TO or CC
+            }
 	        Transport.send(msg);
 		} catch (MessagingException e) {
 			log.error("Unable to send email: ", e);
@@ -143,4 +91,89 @@ public class MailSender {
 		}
         return true;
 	}
+
+	/**
+	 * Creates a pool of reusable connections to the mail service configured in mail.properties, for sending many messages. The pool must
+	 * be closed when it is no longer used.
+	 * 
+	 * @return a new pool with at most mail.maxconnections connections
+	 */
+	public static MailTransportPool createTransportPool() {
+        final Session mailSession = ServiceLocator.getInstance().getMailSession(MailConfiguration.getMailJndiName());
+        return new MailTransportPool(mailSession, MailConfiguration.getMailMaxConnections());
+	}
+
+	/**
+	 * Creates a message that can be sent with {@link Transport#send(Message)} or over a {@link MailTransportPool}.
+	 * 
+	 * @param mailSession the JavaMail session to create the message in
+	 * @param fromAddress The "From" address
+	 * @param toList List<String> of addresses that will end up in the "To"-field or null to disable
+	 * @param ccList List<String> of addresses that will end up in the "Cc"-field or null to disable
+	 * @param subject The email subject
+	 * @param content The text message body
+	 * @param attachments List<MailAttachment> of files and objects to attach to the email or null to disable multipart messages
+	 * @return the message or null if there was no recipient
+	 * @throws MessagingException if an address or the content was invalid
+	 */
+	public static Message createMessage(Session mailSession, String fromAddress, List<String> toList, List<String> ccList, String subject, String content,
+	        List<MailAttachment> attachments) throws MessagingException {
+		Message msg = new MimeMessage(mailSession);
+		if (log.isDebugEnabled()) {
+			log.debug("from: " + fromAddress);
+		}
+		msg.setFrom(new InternetAddress(fromAddress));
+		boolean atLeastOneRecipient = false;
+		if (toList != null) {
+			for (int i=0; i<toList.size(); i++) {
+				String to = toList.get(i);
+				msg.addRecipients(javax.mail.Message.RecipientType.TO, InternetAddress.parse(to, false));
+				if (log.isDebugEnabled()) {
+					log.debug("to: " + to);
+				}
+				atLeastOneRecipient = true;
+			}
+		}
+		if (ccList != null) {
+			for (int i=0; i<ccList.size(); i++) {
+				String cc = ccList.get(i);
+				msg.addRecipients(javax.mail.Message.RecipientType.CC, InternetAddress.parse(cc, false));
+				if (log.isDebugEnabled()) {
+					log.debug("cc: " + cc);
+				}
+				atLeastOneRecipient = true;
+			}
+		}
+		if (!atLeastOneRecipient) {
+			return null;    // We need at least one recipient.. either TO or CC
+		}
+		msg.setSubject(subject);
+		if (log.isDebugEnabled()) {
+			log.debug("subject: " + subject);
+		}
+		if (attachments == null || attachments.size() == 0) {
+			msg.setContent(content, MailConfiguration.getMailMimeType());
+			if (log.isDebugEnabled()) {
+				log.debug("content: " + content);
+			}
+		} else {
+			Multipart multipart = new MimeMultipart();
+			// Add the text message first
+			MimeBodyPart msgBody = new MimeBodyPart();
+			msgBody.setContent(content, MailConfiguration.getMailMimeType());
+			multipart.addBodyPart(msgBody);
+			// Attach all the requested files
+			for (int i=0; i<attachments.size(); i++) {
+				MailAttachment mailAttachment = attachments.get(i);
+				MimeBodyPart msgAttachment = new MimeBodyPart();
+				msgAttachment.setDataHandler(mailAttachment.getDataHandler());
+				msgAttachment.setFileName(mailAttachment.getName());
+				multipart.addBodyPart(msgAttachment);
+			}
+			msg.setContent(multipart);
+		}
+		msg.setHeader("X-Mailer", "JavaMailer");
+		msg.setSentDate(new Date());
+		return msg;
+	}
 }
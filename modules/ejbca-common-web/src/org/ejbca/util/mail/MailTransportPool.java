@@ -0,0 +1,233 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.util.mail;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.mail.Address;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
+import javax.mail.Session;
+import javax.mail.Transport;
+
+import org.apache.log4j.Logger;
+
+/**
+ * A bounded pool of connected JavaMail transports, used to send many messages without opening a new SMTP connection (and doing the
+ * EHLO/STARTTLS/AUTH handshake) for every single message, as {@link Transport#send(Message)} does.
+ *
+ * Messages of a batch are sent in parallel over at most maxConnections connections. Idle connections are kept until the pool is closed and
+ * are checked before they are reused, since the server may have closed them in the meantime.
+ *
+ * @version $Id$
+ */
+public class MailTransportPool implements Closeable {
+
+    private static final Logger log = Logger.getLogger(MailTransportPool.class);
+    private static final AtomicInteger poolCounter = new AtomicInteger();
+
+    private final Session mailSession;
+    private final int maxConnections;
+    private final Semaphore connectionPermits;
+    private final BlockingQueue<Transport> idleTransports = new LinkedBlockingQueue<Transport>();
+    private ExecutorService executorService = null;
+    private volatile boolean closed = false;
+
+    /**
+     * @param mailSession the JavaMail session to get transports from
+     * @param maxConnections the maximum number of simultaneously open connections
+     */
+    public MailTransportPool(final Session mailSession, final int maxConnections) {
+        this.mailSession = mailSession;
+        this.maxConnections = Math.max(1, maxConnections);
+        this.connectionPermits = new Semaphore(this.maxConnections);
+    }
+
+    /** @return the JavaMail session used to create messages sent through this pool */
+    public Session getSession() {
+        return mailSession;
+    }
+
+    /**
+     * Sends a message over a pooled connection. A message that is rejected by the server does not affect the connection.
+     *
+     * @param message the message to send
+     * @throws SendFailedException if the server did not accept the message for some or all of its recipients
+     * @throws MessagingException if no connection to the server could be established
+     */
+    public void send(final Message message) throws MessagingException {
+        if (closed) {
+            throw new IllegalStateException("The mail transport pool has been closed.");
+        }
+        message.saveChanges();
+        final Address[] recipients = message.getAllRecipients();
+        if (recipients == null || recipients.length == 0) {
+            throw new SendFailedException("No recipient addresses");
+        }
+        connectionPermits.acquireUninterruptibly();
+        try {
+            Transport transport = idleTransports.poll();
+            if (transport != null) {
+                // A reused connection may have been dropped by the server, then we retry once over a new connection
+                try {
+                    if (transport.isConnected()) {
+                        sendMessage(transport, message, recipients);
+                        return;
+                    }
+                } catch (SendFailedException e) {
+                    throw e;
+                } catch (MessagingException e) {
+                    log.debug("Pooled mail transport failed, reconnecting: " + e.getMessage());
+                }
+                closeQuietly(transport);
+            }
+            transport = mailSession.getTransport(recipients[0]);
+            transport.connect();
+            sendMessage(transport, message, recipients);
+        } finally {
+            connectionPermits.release();
+        }
+    }
+
+    /**
+     * Sends a batch of messages in parallel over the pooled connections.
+     *
+     * @param messages the messages to send
+     * @return a list with the same size as the list of messages, with null for each message that was sent and the exception for each message
+     *         that was rejected by the server
+     * @throws MessagingException if no connection to the server could be established, in which case it is unknown which messages were sent
+     */
+    public List<SendFailedException> sendAll(final List<Message> messages) throws MessagingException {
+        final SendFailedException[] ret = new SendFailedException[messages.size()];
+        if (messages.size() == 1 || maxConnections == 1) {
+            for (int i = 0; i < messages.size(); i++) {
+                try {
+                    send(messages.get(i));
+                } catch (SendFailedException e) {
+                    ret[i] = e;
+                }
+            }
+            return Arrays.asList(ret);
+        }
+        final List<Future<SendFailedException>> futures = new ArrayList<Future<SendFailedException>>(messages.size());
+        final ExecutorService executorService = getExecutorService();
+        for (final Message message : messages) {
+            futures.add(executorService.submit(new Callable<SendFailedException>() {
+                @Override
+                public SendFailedException call() throws MessagingException {
+                    try {
+                        send(message);
+                        return null;
+                    } catch (SendFailedException e) {
+                        return e;
+                    }
+                }
+            }));
+        }
+        MessagingException connectionFailure = null;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                ret[i] = futures.get(i).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MessagingException("Interrupted while sending mail.", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof MessagingException) {
+                    if (connectionFailure == null) {
+                        connectionFailure = (MessagingException) e.getCause();
+                    }
+                } else {
+                    throw new IllegalStateException(e.getCause());
+                }
+            }
+        }
+        if (connectionFailure != null) {
+            throw connectionFailure;
+        }
+        return Arrays.asList(ret);
+    }
+
+    /** Closes all pooled connections and stops the sending threads. */
+    @Override
+    public void close() {
+        closed = true;
+        synchronized (this) {
+            if (executorService != null) {
+                executorService.shutdown();
+                executorService = null;
+            }
+        }
+        Transport transport;
+        while ((transport = idleTransports.poll()) != null) {
+            closeQuietly(transport);
+        }
+    }
+
+    private void sendMessage(final Transport transport, final Message message, final Address[] recipients) throws MessagingException {
+        boolean reusable = false;
+        try {
+            transport.sendMessage(message, recipients);
+            reusable = true;
+        } catch (SendFailedException e) {
+            // The server rejected the message, but the connection is still fine
+            reusable = true;
+            throw e;
+        } finally {
+            if (reusable && !closed) {
+                idleTransports.add(transport);
+            } else {
+                closeQuietly(transport);
+            }
+        }
+    }
+
+    private synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            final int poolNumber = poolCounter.incrementAndGet();
+            executorService = Executors.newFixedThreadPool(maxConnections, new ThreadFactory() {
+                private final AtomicInteger threadCounter = new AtomicInteger();
+
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "MailTransportPool-" + poolNumber + "-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return executorService;
+    }
+
+    private static void closeQuietly(final Transport transport) {
+        try {
+            transport.close();
+        } catch (MessagingException e) {
+            log.debug("Failed to close mail transport: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,158 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.approval;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.PublicAccessAuthenticationToken;
+import org.cesecore.util.Base64;
+import org.cesecore.util.CryptoProviderTools;
+import org.cesecore.util.ui.PropertyValidationException;
+import org.ejbca.core.model.approval.approvalrequests.DummyApprovalRequest;
+import org.ejbca.core.model.approval.profile.AccumulativeApprovalProfile;
+import org.ejbca.core.model.approval.profile.ApprovalStep;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the lazy decoding of the approvals and the approval request in ApprovalDataVO.
+ *
+ * @version $Id$
+ */
+public class ApprovalDataVOTest {
+
+    private static final Date REQUEST_DATE = new Date(1000000L);
+    private static final Date EXPIRE_DATE = new Date(2000000L);
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProvider();
+    }
+
+    @Test
+    public void testSerializeLazilyDecoded() throws Exception {
+        final AuthenticationToken token = new PublicAccessAuthenticationToken("127.0.0.1", true);
+        final ApprovalRequest approvalRequest = createApprovalRequest(token);
+        final List<Approval> approvals = createApprovals(token, approvalRequest);
+        final ApprovalDataVO lazy = new ApprovalDataVO(4711, 1337, ApprovalDataVO.APPROVALTYPE_DUMMY, 2, 1, "CN=Issuer", "1234",
+                ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, encodeApprovals(approvals), encodeApprovalRequest(approvalRequest), REQUEST_DATE,
+                EXPIRE_DATE);
+        // Serialized before the approvals or the request have been used, so they must be decoded when the object is written
+        final ApprovalDataVO read = (ApprovalDataVO) deserialize(serialize(lazy));
+        assertEquals(4711, read.getId());
+        assertEquals(1337, read.getApprovalId());
+        assertEquals(ApprovalDataVO.APPROVALTYPE_DUMMY, read.getApprovalType());
+        assertEquals(2, read.getEndEntityProfileId());
+        assertEquals(1, read.getCAId());
+        assertEquals("CN=Issuer", read.getReqadmincertissuerdn());
+        assertEquals("1234", read.getReqadmincertsn());
+        assertEquals(ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, read.getStatus());
+        assertEquals(REQUEST_DATE, read.getRequestDate());
+        assertEquals(EXPIRE_DATE, read.getExpireDate());
+        assertNotNull("The approval request was not serialized.", read.getApprovalRequest());
+        assertEquals(ApprovalDataVO.APPROVALTYPE_DUMMY, read.getApprovalRequest().getApprovalType());
+        assertEquals(1, read.getApprovalRequest().getCAId());
+        assertEquals(2, read.getApprovalRequest().getEndEntityProfileId());
+        assertEquals("AccumulativeApprovalProfile", read.getApprovalProfile().getProfileName());
+        assertNotNull("The approvals were not serialized.", read.getApprovals());
+        assertEquals(approvals.size(), read.getApprovals().size());
+        int i = 0;
+        for (final Approval approval : read.getApprovals()) {
+            assertEquals(approvals.get(i).getComment(), approval.getComment());
+            assertEquals(approvals.get(i).getApprovalDate(), approval.getApprovalDate());
+            assertEquals(approvals.get(i).getStepId(), approval.getStepId());
+            assertEquals(approvals.get(i).getPartitionId(), approval.getPartitionId());
+            i++;
+        }
+        assertEquals("The remaining approvals should be computed from the deserialized approvals.", 0, read.getRemainingApprovals());
+    }
+
+    @Test
+    public void testSerializedFormIsUnchanged() throws Exception {
+        final AuthenticationToken token = new PublicAccessAuthenticationToken("127.0.0.1", true);
+        final ApprovalRequest approvalRequest = createApprovalRequest(token);
+        final List<Approval> approvals = createApprovals(token, approvalRequest);
+        final String encodedApprovals = encodeApprovals(approvals);
+        final String encodedApprovalRequest = encodeApprovalRequest(approvalRequest);
+        // Both values are decoded from the same encoding, so only the way they were created differs
+        final ApprovalDataVO eager = new ApprovalDataVO(4711, 1337, ApprovalDataVO.APPROVALTYPE_DUMMY, 2, 1, "CN=Issuer", "1234",
+                ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, new ArrayList<Approval>(ApprovalDataVO.decodeApprovals(encodedApprovals)),
+                ApprovalDataVO.decodeApprovalRequest(encodedApprovalRequest), REQUEST_DATE, EXPIRE_DATE);
+        final ApprovalDataVO lazy = new ApprovalDataVO(4711, 1337, ApprovalDataVO.APPROVALTYPE_DUMMY, 2, 1, "CN=Issuer", "1234",
+                ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, encodedApprovals, encodedApprovalRequest, REQUEST_DATE, EXPIRE_DATE);
+        assertArrayEquals("A lazily decoded value object should be serialized the same way as one created with decoded values.",
+                serialize(eager), serialize(lazy));
+    }
+
+    private ApprovalRequest createApprovalRequest(final AuthenticationToken token) throws PropertyValidationException {
+        final AccumulativeApprovalProfile approvalProfile = new AccumulativeApprovalProfile("AccumulativeApprovalProfile");
+        approvalProfile.initialize();
+        approvalProfile.setNumberOfApprovalsRequired(2);
+        return new DummyApprovalRequest(token, null, 1, 2, false, approvalProfile);
+    }
+
+    private List<Approval> createApprovals(final AuthenticationToken token, final ApprovalRequest approvalRequest) {
+        final ApprovalStep step = approvalRequest.getApprovalProfile().getFirstStep();
+        final int partitionId = step.getPartitions().values().iterator().next().getPartitionIdentifier();
+        final List<Approval> approvals = new ArrayList<Approval>();
+        for (final String comment : new String[] { "first", "second" }) {
+            final Approval approval = new Approval(comment, step.getStepIdentifier(), partitionId);
+            approval.setApprovalAdmin(true, token);
+            approvals.add(approval);
+        }
+        return approvals;
+    }
+
+    /** @return the approvals encoded the way they are stored in ApprovalData */
+    private String encodeApprovals(final List<Approval> approvals) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeInt(approvals.size());
+            for (final Approval approval : approvals) {
+                oos.writeObject(approval);
+            }
+        }
+        return new String(Base64.encode(baos.toByteArray(), false));
+    }
+
+    /** @return the approval request encoded the way it is stored in ApprovalData */
+    private String encodeApprovalRequest(final ApprovalRequest approvalRequest) throws IOException {
+        return new String(Base64.encode(serialize(approvalRequest), false));
+    }
+
+    private byte[] serialize(final Object object) throws IOException {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (final ObjectOutputStream oos = new ObjectOutputStream(baos)) {
+            oos.writeObject(object);
+        }
+        return baos.toByteArray();
+    }
+
+    private Object deserialize(final byte[] bytes) throws IOException, ClassNotFoundException {
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return ois.readObject();
+        }
+    }
+}
@@ -0,0 +1,268 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.bouncycastle.asn1.ASN1ApplicationSpecific;
+import org.bouncycastle.asn1.ASN1EncodableVector;
+import org.bouncycastle.asn1.ASN1Encoding;
+import org.bouncycastle.asn1.ASN1Enumerated;
+import org.bouncycastle.asn1.ASN1InputStream;
+import org.bouncycastle.asn1.ASN1Primitive;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DEROctetString;
+import org.bouncycastle.asn1.DERApplicationSpecific;
+import org.bouncycastle.asn1.DERSequence;
+import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authentication.tokens.UsernamePrincipal;
+import org.cesecore.certificates.util.DNFieldExtractor;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.After;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Tests the pooling of LDAP connections by the LdapPublisher, against a minimal in-process LDAP server.
+ *
+ * This is a unit test and does not require EJBCA to be running.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPoolUnitTest {
+
+    private static final AuthenticationToken admin = new AlwaysAllowLocalAuthenticationToken(new UsernamePrincipal("LdapConnectionPoolUnitTest"));
+    private static final String SERVER1 = "127.0.0.1";
+    private static final String SERVER2 = "127.0.0.2";
+
+    private final List<FakeLdapServer> servers = new ArrayList<FakeLdapServer>();
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        for (final FakeLdapServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testBoundConnectionIsReused() throws Exception {
+        final FakeLdapServer server = startServer(SERVER1, 0);
+        final LdapPublisher publisher = createPublisher(SERVER1, server.getPort(), 5);
+        for (int i = 0; i < 3; i++) {
+            publisher.storeCRL(admin, publisher.getFakeCRL(), null, i, null);
+        }
+        assertEquals("Search and add of all CRLs should use the same connection.", 1, server.getBinds());
+        assertEquals("Each CRL should be searched for and added.", 6, server.getOperations());
+        assertEquals(1, publisher.getConnectionPool().getIdleConnections(SERVER1));
+    }
+
+    @Test
+    public void testNoPooling() throws Exception {
+        final FakeLdapServer server = startServer(SERVER1, 0);
+        final LdapPublisher publisher = createPublisher(SERVER1, server.getPort(), 0);
+        for (int i = 0; i < 3; i++) {
+            publisher.storeCRL(admin, publisher.getFakeCRL(), null, i, null);
+        }
+        assertEquals("Every operation should connect and bind when the pool size is 0.", 6, server.getBinds());
+        assertEquals(0, publisher.getConnectionPool().getIdleConnections(SERVER1));
+    }
+
+    @Test
+    public void testIdleConnectionsAreEvicted() throws Exception {
+        final FakeLdapServer server = startServer(SERVER1, 0);
+        final LdapPublisher publisher = createPublisher(SERVER1, server.getPort(), 5);
+        publisher.setConnectionPoolIdleTimeOut(1);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 1, null);
+        Thread.sleep(10);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 2, null);
+        assertEquals("Connections idle longer than the idle timeout should not be reused.", 4, server.getBinds());
+    }
+
+    @Test
+    public void testConnectionClosedByServer() throws Exception {
+        final FakeLdapServer server = startServer(SERVER1, 0);
+        final LdapPublisher publisher = createPublisher(SERVER1, server.getPort(), 5);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 1, null);
+        assertEquals(1, server.getBinds());
+        server.closeConnections();
+        // Give the client time to notice that the connection was closed
+        Thread.sleep(500);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 2, null);
+        assertEquals("A connection closed by the server should be replaced.", 2, server.getBinds());
+    }
+
+    @Test
+    public void testFailover() throws Exception {
+        // The servers must listen to the same port, since the port is configured for all hosts of the publisher
+        final FakeLdapServer server2 = startServer(SERVER2, 0);
+        final FakeLdapServer server1 = startServer(SERVER1, server2.getPort());
+        final LdapPublisher publisher = createPublisher(SERVER1 + ";" + SERVER2, server2.getPort(), 5);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 1, null);
+        assertEquals(1, server1.getBinds());
+        assertEquals(0, server2.getBinds());
+        server1.close();
+        server1.closeConnections();
+        Thread.sleep(500);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 2, null);
+        publisher.storeCRL(admin, publisher.getFakeCRL(), null, 3, null);
+        assertEquals("The second server should be used, with a single connection.", 1, server2.getBinds());
+        assertEquals("The failed server should be tried last.", Arrays.asList(SERVER2, SERVER1),
+                publisher.getConnectionPool().getServerOrder(publisher.getHostnameList()));
+    }
+
+    private FakeLdapServer startServer(final String address, final int port) throws IOException {
+        final FakeLdapServer server = new FakeLdapServer(address, port);
+        servers.add(server);
+        return server;
+    }
+
+    private static LdapPublisher createPublisher(final String hostnames, final int port, final int poolSize) {
+        final LdapPublisher publisher = new LdapPublisher();
+        publisher.setHostnames(hostnames);
+        publisher.setPort(Integer.toString(port));
+        publisher.setConnectionSecurity(LdapPublisher.ConnectionSecurity.PLAIN);
+        publisher.setBaseDN("dc=example,dc=com");
+        publisher.setLoginDN("cn=admin,dc=example,dc=com");
+        publisher.setLoginPassword("foo123");
+        publisher.setUseFieldInLdapDN(Arrays.asList(Integer.valueOf(DNFieldExtractor.CN)));
+        publisher.setConnectionPoolSize(poolSize);
+        return publisher;
+    }
+
+    /**
+     * A minimal LDAP server, that answers all requests with success and counts the requests. Searches never return any entries, so the
+     * publisher adds new entries.
+     */
+    private static class FakeLdapServer implements Runnable {
+        private static final int BIND_REQUEST = 0;
+        private static final int UNBIND_REQUEST = 2;
+        private static final int SEARCH_REQUEST = 3;
+        private static final int SEARCH_RESULT_DONE = 5;
+        private static final int ABANDON_REQUEST = 16;
+
+        private final ServerSocket serverSocket;
+        private final List<Socket> sockets = new CopyOnWriteArrayList<Socket>();
+        private final AtomicInteger binds = new AtomicInteger();
+        private final AtomicInteger operations = new AtomicInteger();
+
+        FakeLdapServer(final String address, final int port) throws IOException {
+            serverSocket = new ServerSocket();
+            serverSocket.bind(new InetSocketAddress(InetAddress.getByName(address), port));
+            final Thread thread = new Thread(this, "FakeLdapServer-" + address);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        int getPort() {
+            return serverSocket.getLocalPort();
+        }
+
+        int getBinds() {
+            return binds.get();
+        }
+
+        int getOperations() {
+            return operations.get();
+        }
+
+        /** Stops accepting connections */
+        void close() throws IOException {
+            serverSocket.close();
+        }
+
+        /** Closes all open connections */
+        void closeConnections() throws IOException {
+            for (final Socket socket : sockets) {
+                socket.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            while (!serverSocket.isClosed()) {
+                try {
+                    final Socket socket = serverSocket.accept();
+                    sockets.add(socket);
+                    final Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            handle(socket);
+                        }
+                    }, "FakeLdapServer-connection");
+                    thread.setDaemon(true);
+                    thread.start();
+                } catch (IOException e) {
+                    // Closed
+                }
+            }
+        }
+
+        private void handle(final Socket socket) {
+            try (final ASN1InputStream in = new ASN1InputStream(socket.getInputStream())) {
+                final OutputStream out = socket.getOutputStream();
+                ASN1Primitive message;
+                while ((message = in.readObject()) != null) {
+                    final ASN1Sequence sequence = ASN1Sequence.getInstance(message);
+                    final ASN1Primitive messageId = sequence.getObjectAt(0).toASN1Primitive();
+                    final int operation = ((ASN1ApplicationSpecific) sequence.getObjectAt(1)).getApplicationTag();
+                    if (operation == UNBIND_REQUEST) {
+                        break;
+                    } else if (operation == ABANDON_REQUEST) {
+                        continue;
+                    } else if (operation == BIND_REQUEST) {
+                        binds.incrementAndGet();
+                    } else {
+                        operations.incrementAndGet();
+                    }
+                    // The response of a search is searchResDone, and the response of all other requests is the next application tag
+                    final int response = operation == SEARCH_REQUEST ? SEARCH_RESULT_DONE : operation + 1;
+                    final ASN1EncodableVector result = new ASN1EncodableVector();
+                    result.add(new ASN1Enumerated(0)); // success
+                    result.add(new DEROctetString(new byte[0])); // matchedDN
+                    result.add(new DEROctetString(new byte[0])); // diagnosticMessage
+                    final ASN1EncodableVector responseMessage = new ASN1EncodableVector();
+                    responseMessage.add(messageId);
+                    responseMessage.add(new DERApplicationSpecific(response, result));
+                    out.write(new DERSequence(responseMessage).getEncoded(ASN1Encoding.DER));
+                    out.flush();
+                }
+            } catch (IOException e) {
+                // Closed
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    // Already closed
+                }
+            }
+        }
+    }
+}
@@ -12,7 +12,6 @@
  *************************************************************************/
 package org.ejbca.core.model.ca.publisher.custpubl1;
 
-import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
 import java.security.cert.Certificate;
 import org.cesecore.certificates.endentity.ExtendedInformation;
@@ -138,8 +137,8 @@ public class MockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     
     // searchOldEntity
     @Override
-    protected LDAPEntry searchOldEntity(LDAPConnection lc, String ldapDN) throws PublisherException {
-        this.searchOldEntityParameters = new SearchOldEntityParameters(lc, ldapDN);
+    protected LDAPEntry searchOldEntity(String ldapDN) throws PublisherException {
+        this.searchOldEntityParameters = new SearchOldEntityParameters(ldapDN);
         if (searchOldEntityException != null) {
             throw searchOldEntityException;
         }
@@ -238,18 +237,12 @@ public class MockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     }
 
     public static class SearchOldEntityParameters {
-        private final LDAPConnection lc;
         private final String ldapDN;
 
-        public SearchOldEntityParameters(LDAPConnection lc, String ldapDN) {
-            this.lc = lc;
+        public SearchOldEntityParameters(String ldapDN) {
             this.ldapDN = ldapDN;
         }
 
-        public LDAPConnection getLc() {
-            return lc;
-        }
-
         public String getLdapDN() {
             return ldapDN;
         }
@@ -17,7 +17,6 @@ import java.security.cert.Certificate;
 import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.ejbca.core.model.ca.publisher.PublisherException;
 
-import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
 
 /**
@@ -44,9 +43,9 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     
     // searchOldEntity
     @Override
-    protected LDAPEntry searchOldEntity(LDAPConnection lc, String ldapDN) throws PublisherException {
+    protected LDAPEntry searchOldEntity(String ldapDN) throws PublisherException {
         this.searchOldEntityCalled = true;
-        this.searchOldEntityParameters = new SearchOldEntityParameters(lc, ldapDN);
+        this.searchOldEntityParameters = new SearchOldEntityParameters(ldapDN);
         if (searchOldEntityException != null) {
             throw searchOldEntityException;
         }
@@ -72,9 +71,9 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     
     // writeCertEntryToLDAP
     @Override
-    protected void writeCertEntryToLDAP(LDAPConnection lc, LDAPEntry oldEntry, LDAPEntry newEntry, String certFingerprint) throws PublisherException {
+    protected void writeCertEntryToLDAP(LDAPEntry oldEntry, LDAPEntry newEntry, String certFingerprint) throws PublisherException {
         this.writeCertEntryToLDAPCalled = true;
-        this.writeCertEntryToLDAPParameters = new WriteCertEntryToLDAPParameters(lc, oldEntry, newEntry, certFingerprint);
+        this.writeCertEntryToLDAPParameters = new WriteCertEntryToLDAPParameters(oldEntry, newEntry, certFingerprint);
         if (this.writeCertEntryToLDAPException != null) {
             throw writeCertEntryToLDAPException;
         }
@@ -95,9 +94,9 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     
     // writeCRLEntryToLDAP
     @Override
-    protected void writeCrlEntryToLDAP(final LDAPConnection lc, final LDAPEntry oldEntry, final LDAPEntry newEntry) throws PublisherException {
+    protected void writeCrlEntryToLDAP(final LDAPEntry oldEntry, final LDAPEntry newEntry) throws PublisherException {
         this.writeCrlEntryToLDAPCalled = true;
-        this.writeCrlEntryToLDAPParameters = new WriteCrlEntryToLDAPParameters(lc, oldEntry, newEntry);
+        this.writeCrlEntryToLDAPParameters = new WriteCrlEntryToLDAPParameters(oldEntry, newEntry);
         if (this.writeCrlEntryToLDAPException != null) {
             throw writeCrlEntryToLDAPException;
         }
@@ -196,18 +195,12 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     }
 
     public static class SearchOldEntityParameters {
-        private final LDAPConnection lc;
         private final String ldapDN;
 
-        public SearchOldEntityParameters(LDAPConnection lc, String ldapDN) {
-            this.lc = lc;
+        public SearchOldEntityParameters(String ldapDN) {
             this.ldapDN = ldapDN;
         }
 
-        public LDAPConnection getLc() {
-            return lc;
-        }
-
         public String getLdapDN() {
             return ldapDN;
         }
@@ -215,22 +208,16 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     }
 
     public static class WriteCertEntryToLDAPParameters {
-        private final LDAPConnection lc;
         private final LDAPEntry oldEntry;
         private final LDAPEntry newEntry;
         private final String certFingerprint;
 
-        public WriteCertEntryToLDAPParameters(LDAPConnection lc, LDAPEntry oldEntry, LDAPEntry newEntry, String certFingerprint) {
-            this.lc = lc;
+        public WriteCertEntryToLDAPParameters(LDAPEntry oldEntry, LDAPEntry newEntry, String certFingerprint) {
             this.oldEntry = oldEntry;
             this.newEntry = newEntry;
             this.certFingerprint = certFingerprint;
         }
 
-        public LDAPConnection getLc() {
-            return lc;
-        }
-
         public LDAPEntry getOldEntry() {
             return oldEntry;
         }
@@ -246,20 +233,14 @@ public class SecondMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     }
 
     public static class WriteCrlEntryToLDAPParameters {
-        private final LDAPConnection lc;
         private final LDAPEntry oldEntry;
         private final LDAPEntry newEntry;
 
-        public WriteCrlEntryToLDAPParameters(LDAPConnection lc, LDAPEntry oldEntry, LDAPEntry newEntry) {
-            this.lc = lc;
+        public WriteCrlEntryToLDAPParameters(LDAPEntry oldEntry, LDAPEntry newEntry) {
             this.oldEntry = oldEntry;
             this.newEntry = newEntry;
         }
 
-        public LDAPConnection getLc() {
-            return lc;
-        }
-
         public LDAPEntry getOldEntry() {
             return oldEntry;
         }
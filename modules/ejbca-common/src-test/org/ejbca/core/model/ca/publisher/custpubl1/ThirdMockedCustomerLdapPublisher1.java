@@ -14,7 +14,6 @@ package org.ejbca.core.model.ca.publisher.custpubl1;
 
 import org.ejbca.core.model.ca.publisher.PublisherException;
 
-import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
 import com.novell.ldap.LDAPException;
 import java.util.ArrayList;
@@ -53,9 +52,9 @@ public class ThirdMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
     
     // writeLogEntryToLDAP
     @Override
-    protected void writeLogEntryToLDAP(final LDAPConnection lc, final LDAPEntry newEntry) throws PublisherException {
+    protected void writeLogEntryToLDAP(final LDAPEntry newEntry) throws PublisherException {
         this.writeLogEntryToLDAPCalled = true;
-        this.writeLogEntryToLDAPParameters.add(new WriteLogEntryToLDAPParameters(lc, newEntry));
+        this.writeLogEntryToLDAPParameters.add(new WriteLogEntryToLDAPParameters(newEntry));
         if (!storedDNs.add(newEntry.getDN())) {
             final LDAPException ldapEx = new LDAPException("Entry Exists", LDAPException.ENTRY_ALREADY_EXISTS, "entryAlreadyExists");
             final PublisherException pex = new PublisherException("Entry already exists");
@@ -78,18 +77,12 @@ public class ThirdMockedCustomerLdapPublisher1 extends CustomerLdapPublisher1 {
 
 
     public static class WriteLogEntryToLDAPParameters {
-        private final LDAPConnection lc;
         private final LDAPEntry newEntry;
 
-        public WriteLogEntryToLDAPParameters(final LDAPConnection lc, final LDAPEntry newEntry) {
-            this.lc = lc;
+        public WriteLogEntryToLDAPParameters(final LDAPEntry newEntry) {
             this.newEntry = newEntry;
         }
 
-        public LDAPConnection getLc() {
-            return lc;
-        }
-
         public LDAPEntry getNewEntry() {
             return newEntry;
         }
@@ -0,0 +1,58 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.util.crypto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Tests the BCrypt password hashing against known hashes, so that stored password hashes keep working.
+ *
+ * @version $Id$
+ */
+public class BCryptTest {
+
+    /** Password, salt and expected hash, from the test vectors of the original jBCrypt implementation */
+    private static final String[][] TEST_VECTORS = {
+        { "", "$2a$06$DCq7YPn5Rq63x1Lad4cll.", "$2a$06$DCq7YPn5Rq63x1Lad4cll.TV4S6ytwfsfvkgY8jIucDrjc8deX1s." },
+        { "", "$2a$08$HqWuK6/Ng6sg9gQzbLrgb.", "$2a$08$HqWuK6/Ng6sg9gQzbLrgb.Tl.ZHfXLhvt/SgVyWhQqgqcZ7ZuUtye" },
+        { "a", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO", "$2a$06$m0CrhHm10qJ3lXRY.5zDGO3rS2KdeeWLuGmsfGlMfOxih58VYVfxe" },
+        { "abc", "$2a$06$If6bvum7DFjUnE9p2uDeDu", "$2a$06$If6bvum7DFjUnE9p2uDeDu0YHzrHM6tf.iqN8.yx.jNN1ILEf7h0i" },
+        { "abcdefghijklmnopqrstuvwxyz", "$2a$06$.rCVZVOThsIa97pEDOxvGu", "$2a$06$.rCVZVOThsIa97pEDOxvGuRRgzG64bvtJ0938xuqzv18d3ZpQhstC" },
+        { "~!@#$%^&*()      ~!@#$%^&*()PNBFRD", "$2a$06$fPIsBO8qRqkjj273rfaOI.", "$2a$06$fPIsBO8qRqkjj273rfaOI.HtSV9jLDpTbZn782DC6/t7qT67P6FfO" },
+    };
+
+    @Test
+    public void testKnownHashes() {
+        for (final String[] testVector : TEST_VECTORS) {
+            assertEquals(testVector[2], BCrypt.hashpw(testVector[0], testVector[1]));
+            assertTrue(BCrypt.checkpw(testVector[0], testVector[2]));
+        }
+    }
+
+    @Test
+    public void testCheckWrongPassword() {
+        for (final String[] testVector : TEST_VECTORS) {
+            assertFalse(BCrypt.checkpw(testVector[0] + "x", testVector[2]));
+        }
+        // A long password, where only the first 72 bytes are used, and a low number of rounds as allowed by EJBCA
+        final String longPassword = "0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz";
+        final String hash = BCrypt.hashpw(longPassword, BCrypt.gensalt(1));
+        assertTrue(BCrypt.checkpw(longPassword, hash));
+        assertTrue(BCrypt.checkpw(longPassword + "ignored", hash));
+        assertFalse(BCrypt.checkpw(longPassword.substring(1), hash));
+    }
+}
@@ -14,6 +14,17 @@
 package org.ejbca.util.query;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.endentity.EndEntityConstants;
@@ -70,4 +81,137 @@ public class QueryTest {
         assertEquals("username LIKE 'D''''Greatest%'", query3.getQueryString());
         log.trace("<testUserQuerySingleQuote");
     }
+
+    @Test
+    public void testParameterizedUserQuery() throws Exception {
+        final Query query = new Query(Query.TYPE_USERQUERY);
+        query.add(UserMatch.MATCH_WITH_USERNAME, BasicMatch.MATCH_TYPE_BEGINSWITH, "D'Greatest ", Query.CONNECTOR_AND);
+        query.add(UserMatch.MATCH_WITH_STATUS, BasicMatch.MATCH_TYPE_EQUALS, Integer.toString(EndEntityConstants.STATUS_NEW), Query.CONNECTOR_OR);
+        query.add(UserMatch.MATCH_WITH_COMMONNAME, BasicMatch.MATCH_TYPE_CONTAINS, "foo", Query.CONNECTOR_AND);
+        query.add(TimeMatch.MATCH_WITH_TIMEMODIFIED, new Date(1000L), new Date(2000L));
+        final Map<String, Object> parameters = new HashMap<>();
+        assertEquals("username LIKE :p0 AND status = :p1 OR subjectDN LIKE :p2 AND ( timeModified >= :p3  AND timeModified <= :p4  )",
+                query.getParameterizedQueryString(parameters));
+        assertEquals("D'Greatest %", parameters.get("p0"));
+        assertEquals(Integer.valueOf(EndEntityConstants.STATUS_NEW), parameters.get("p1"));
+        assertEquals("%CN=foo%", parameters.get("p2"));
+        assertEquals(Long.valueOf(1000L), parameters.get("p3"));
+        assertEquals(Long.valueOf(2000L), parameters.get("p4"));
+        // Parameters are added after the parameters of the query
+        assertEquals("(cAId IN (:p5))", Query.getInCondition("cAId", Arrays.asList(1, 2), parameters));
+        assertEquals(Arrays.asList(1, 2), parameters.get("p5"));
+    }
+
+    @Test
+    public void testParameterizedApprovalQuery() throws Exception {
+        final Query query = new Query(Query.TYPE_APPROVALQUERY);
+        query.add(ApprovalMatch.MATCH_WITH_UNIQUEID, BasicMatch.MATCH_TYPE_EQUALS, "123", Query.CONNECTOR_AND);
+        query.add(ApprovalMatch.MATCH_WITH_REQUESTADMINCERTISSUERDN, BasicMatch.MATCH_TYPE_EQUALS, "CN=Admin", Query.CONNECTOR_AND);
+        query.add(TimeMatch.MATCH_WITH_EXPIRETIME, null, new Date(3000L));
+        final Map<String, Object> parameters = new HashMap<>();
+        assertEquals("id = :p0 AND reqAdminCertIssuerDn = :p1 AND ( expireDate <= :p2  )", query.getParameterizedQueryString(parameters));
+        assertEquals(Integer.valueOf(123), parameters.get("p0"));
+        assertEquals("CN=Admin", parameters.get("p1"));
+        assertEquals(Long.valueOf(3000L), parameters.get("p2"));
+    }
+
+    @Test
+    public void testInConditionChunks() {
+        final Map<String, Object> parameters = new HashMap<>();
+        assertEquals("A condition without values should never be true.", "(0=1)", Query.getInCondition("cAId", Collections.<Integer>emptyList(), parameters));
+        assertTrue(parameters.isEmpty());
+        final List<Integer> ids = createIds(Query.MAX_IN_LIST_SIZE + 1);
+        assertEquals("(cAId IN (:p0) OR cAId IN (:p1))", Query.getInCondition("cAId", ids, parameters));
+        final Set<Object> boundIds = new HashSet<>();
+        for (final Object chunk : parameters.values()) {
+            assertTrue("No list should be longer than the maximum.", ((List<?>) chunk).size() <= Query.MAX_IN_LIST_SIZE);
+            boundIds.addAll((List<?>) chunk);
+        }
+        assertEquals("All ids should be bound once.", new HashSet<Object>(ids), boundIds);
+    }
+
+    @Test
+    public void testInConditionLiteralsAboveBoundValueLimit() {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("p0", "user%");
+        final List<Integer> caIds = createIds(Query.MAX_BOUND_VALUES - 1);
+        Query.getInCondition("cAId", caIds, parameters);
+        assertEquals("The CA ids should be bound in two lists, since they fit within the limit.", 3, parameters.size());
+        // Binding the profile ids as well would exceed the limit of the statement
+        final String condition = Query.getInCondition("endEntityProfileId", Arrays.asList(1, 2, 3), parameters);
+        assertEquals("(endEntityProfileId IN (1,2,3))", condition);
+        assertEquals("No parameters should be added above the limit.", 3, parameters.size());
+        // Large lists are still split for Oracle
+        final List<Integer> ids = createIds(Query.MAX_BOUND_VALUES + 1);
+        final String literals = Query.getInCondition("cAId", ids, new HashMap<String, Object>());
+        assertEquals(3, literals.split(" IN ").length - 1);
+        assertTrue(literals.startsWith("(cAId IN (1,7920,"));
+    }
+
+    /**
+     * Compares building the statements with authorization strings of OR:ed ids, as before, with the parameterized statements. The JPA
+     * provider expands every list parameter to one placeholder per value, so the SQL is only the same for administrators with the same
+     * number of authorized CAs and profiles. The ids used here fit within {@link Query#MAX_BOUND_VALUES}; above that the ids are written as
+     * literals and every authorization gives a new statement again.
+     */
+    @Test
+    public void testLargeAuthorizationSetPerformance() throws Exception {
+        final int authorizedIds = 900;
+        final int queries = 200;
+        final List<Integer> caIds = createIds(authorizedIds);
+        final List<Integer> profileIds = createIds(authorizedIds);
+        final Query query = new Query(Query.TYPE_USERQUERY);
+        query.add(UserMatch.MATCH_WITH_USERNAME, BasicMatch.MATCH_TYPE_BEGINSWITH, "user", Query.CONNECTOR_AND);
+        query.add(UserMatch.MATCH_WITH_STATUS, BasicMatch.MATCH_TYPE_EQUALS, Integer.toString(EndEntityConstants.STATUS_NEW));
+        final Set<String> literalStatements = new HashSet<>();
+        final Set<String> parameterizedStatements = new HashSet<>();
+        long literalLength = 0;
+        long parameterizedLength = 0;
+        long startTime = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            // Simulate administrators with different authorizations by rotating the ids
+            Collections.rotate(caIds, 1);
+            final String statement = query.getQueryString() + " AND " + getOrString("cAId", caIds) + " AND " + getOrString("endEntityProfileId", profileIds);
+            literalStatements.add(statement);
+            literalLength += statement.length();
+        }
+        final long literalTime = System.nanoTime() - startTime;
+        startTime = System.nanoTime();
+        for (int i = 0; i < queries; i++) {
+            Collections.rotate(caIds, 1);
+            final Map<String, Object> parameters = new HashMap<>();
+            final String statement = query.getParameterizedQueryString(parameters) + " AND " + Query.getInCondition("cAId", caIds, parameters)
+                    + " AND " + Query.getInCondition("endEntityProfileId", profileIds, parameters);
+            parameterizedStatements.add(statement);
+            parameterizedLength += statement.length();
+        }
+        final long parameterizedTime = System.nanoTime() - startTime;
+        log.info("Built " + queries + " queries with " + authorizedIds + " authorized CAs and profiles. Literal: " + literalStatements.size()
+                + " distinct statements, " + literalLength / queries + " characters, " + literalTime / 1000000 + " ms. Parameterized: "
+                + parameterizedStatements.size() + " distinct statements, " + parameterizedLength / queries + " characters, " + parameterizedTime / 1000000
+                + " ms.");
+        assertEquals("Every authorization should give a new literal statement.", queries, literalStatements.size());
+        assertEquals("The parameterized statement should only depend on the number of authorized ids.", 1, parameterizedStatements.size());
+        assertTrue(parameterizedLength < literalLength);
+    }
+
+    /** The authorization string format of RAAuthorization */
+    private static String getOrString(final String column, final List<Integer> ids) {
+        final StringBuilder sb = new StringBuilder("( ");
+        for (final Integer id : ids) {
+            if (sb.length() > 2) {
+                sb.append(" OR ");
+            }
+            sb.append(column).append(" = ").append(id);
+        }
+        return sb.append(" )").toString();
+    }
+
+    private static List<Integer> createIds(final int count) {
+        final List<Integer> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add(Integer.valueOf(i * 7919 + 1));
+        }
+        return ids;
+    }
 }
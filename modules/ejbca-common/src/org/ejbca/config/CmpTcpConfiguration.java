@@ -6,15 +6,22 @@ public class CmpTcpConfiguration {
         return Integer.valueOf(EjbcaConfigurationHolder.getString("cmp.tcp.portno"));
     }
     
-    public static String getTCPLogDir() {
-        return EjbcaConfigurationHolder.getString("cmp.tcp.logdir");
-    }
-    
-    public static String getTCPConfigFile() {
-        return EjbcaConfigurationHolder.getString("cmp.tcp.conffile");
-    }
-    
     public static String getTCPBindAdress() {
         return EjbcaConfigurationHolder.getString("cmp.tcp.bindadress");
     }
+
+    /** @return the maximum number of simultaneously open client connections */
+    public static int getTCPMaxConnections() {
+        return Integer.valueOf(EjbcaConfigurationHolder.getString("cmp.tcp.maxconnections"));
+    }
+
+    /** @return the number of seconds a client connection may be idle before it is closed */
+    public static int getTCPIdleTimeout() {
+        return Integer.valueOf(EjbcaConfigurationHolder.getString("cmp.tcp.idletimeout"));
+    }
+
+    /** @return the maximum number of CMP messages that are processed at the same time */
+    public static int getTCPWorkers() {
+        return Integer.valueOf(EjbcaConfigurationHolder.getString("cmp.tcp.workers"));
+    }
 }
\ No newline at end of file
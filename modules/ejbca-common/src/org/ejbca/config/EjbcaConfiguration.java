@@ -137,6 +137,37 @@ public final class EjbcaConfiguration {
         return TRUE.equalsIgnoreCase(EjbcaConfigurationHolder.getString("healthcheck.publisherconnections"));
     }
 
+    /**
+     * Parameter to specify for how long, in milliseconds, the results of the health checks are re-used before they are refreshed in the background.
+     */
+    public static long getHealthCheckCacheTime() {
+        return getHealthCheckLong("healthcheck.cachetime", 5000L);
+    }
+
+    /**
+     * Parameter to specify how many health checks, of for example CA tokens and publishers, are run concurrently.
+     */
+    public static int getHealthCheckThreads() {
+        return (int) getHealthCheckLong("healthcheck.threads", 8L);
+    }
+
+    /**
+     * Parameter to specify for how long, in milliseconds, a single health check may run before it is reported as failed.
+     */
+    public static long getHealthCheckTimeout() {
+        return getHealthCheckLong("healthcheck.timeout", 10000L);
+    }
+
+    private static long getHealthCheckLong(final String property, final long defaultValue) {
+        long value = defaultValue;
+        try {
+            value = Long.parseLong(EjbcaConfigurationHolder.getString(property));
+        } catch (NumberFormatException e) {
+            log.warn("\"" + property + "\" is not a decimal number. Using default value: " + value);
+        }
+        return value;
+    }
+
     /**
      * Parameter to specify location of file containing information about maintenance
      */
@@ -223,6 +254,38 @@ public final class EjbcaConfiguration {
         return time;
     }
 
+    /**
+     * Parameter to specify if successful end entity password verifications should be cached, and in that case for how long.
+     */
+    public static long getCacheVerifiedPasswordsTime() {
+        final String value = EjbcaConfigurationHolder.getString("verifiedpasswords.cachetime");
+        long time = 5000; // cache 5 seconds is the default
+        try {
+            if (value!=null) {
+                time = Long.valueOf(value);
+            }
+        } catch (NumberFormatException e) {
+            log.error("Invalid value in verifiedpasswords.cachetime, must be decimal number (milliseconds to cache verified passwords): " + e.getMessage());
+        }
+        return time;
+    }
+
+    /**
+     * Parameter to specify if verifications of certificates in the extraCerts field of CMP messages in RA mode should be cached, and in that case for how long.
+     */
+    public static long getCacheCmpExtraCertsTime() {
+        final String value = EjbcaConfigurationHolder.getString("cmpextracerts.cachetime");
+        long time = 10000; // cache 10 seconds is the default
+        try {
+            if (value!=null) {
+                time = Long.valueOf(value);
+            }
+        } catch (NumberFormatException e) {
+            log.error("Invalid value in cmpextracerts.cachetime, must be decimal number (milliseconds to cache verified CMP extraCerts): " + e.getMessage());
+        }
+        return time;
+    }
+
     /** Custom Available Access Rules. */
     public static String[] getCustomAvailableAccessRules() {
     	return StringUtils.split(EjbcaConfigurationHolder.getString("ejbca.customavailableaccessrules"), ';');
@@ -313,6 +376,42 @@ public final class EjbcaConfiguration {
         return getLongProperty("peerconnector.cachetime", 60000L);
     }
 
+    /** @return the ';' separated <keyalg>_<keyspec> of the key pair pools for server generated keystores, or an empty array if pooling is disabled. */
+    public static String[] getKeyPoolKeySpecs() {
+        final String[] ret = StringUtils.split(EjbcaConfigurationHolder.getString("keypool.keyspecs"), ';');
+        return ret == null ? new String[0] : ret;
+    }
+
+    /** @return the maximum number of key pairs in each key pair pool. */
+    public static int getKeyPoolSize() {
+        return getIntProperty("keypool.size", 20);
+    }
+
+    /** @return the number of key pairs at or below which a key pair pool is refilled. */
+    public static int getKeyPoolLowWatermark() {
+        return getIntProperty("keypool.lowwatermark", 5);
+    }
+
+    /** @return the maximum number of threads generating key pairs for the key pair pools. */
+    public static int getKeyPoolThreads() {
+        return getIntProperty("keypool.threads", 2);
+    }
+
+    /** @return the time in milliseconds a key pair may be kept in a key pair pool. */
+    public static long getKeyPoolMaxAge() {
+        return getLongProperty("keypool.maxage", 3600000L);
+    }
+
+    /** @return the number of rows migrated in each transaction of a post-upgrade data migration. */
+    public static int getUpgradeMigrationChunkSize() {
+        return Math.max(1, getIntProperty("upgrade.migration.chunksize", 1000));
+    }
+
+    /** @return the number of chunks of a post-upgrade data migration that are migrated in parallel. */
+    public static int getUpgradeMigrationThreads() {
+        return Math.max(1, getIntProperty("upgrade.migration.threads", 4));
+    }
+
     /** @return the value as a boolean or the default otherwise. */
     private static boolean getBooleanProperty(final String key, final boolean defaultValue) {
         final String value = EjbcaConfigurationHolder.getString(key);
@@ -275,4 +275,40 @@ public class WebConfiguration {
         }
         return value;
     }
+
+    /** Returns the number of threads that look up CRLs in the database for the CRL store servlet. Default is 8 */
+    public static int getCrlStoreThreads() {
+        return getCrlStoreInt("crlstore.threads", 8);
+    }
+
+    /** Returns the maximum number of CRL store requests waiting for a thread, before requests are answered with 503. Default is 100 */
+    public static int getCrlStoreQueueSize() {
+        return getCrlStoreInt("crlstore.queuesize", 100);
+    }
+
+    /** Returns the time in milliseconds a CRL store request may wait and be processed, before it is answered with 503. Default is 30000 */
+    public static int getCrlStoreRequestTimeout() {
+        return getCrlStoreInt("crlstore.requesttimeout", 30000);
+    }
+
+    /**
+     * Returns the time in milliseconds that the latest CRL of a CA is served from the cache of the CRL store servlet, without checking the
+     * database for a newer CRL. Default is 5000, and 0 means that the database is always checked.
+     */
+    public static int getCrlStoreCacheTime() {
+        return getCrlStoreInt("crlstore.cachetime", 5000);
+    }
+
+    private static int getCrlStoreInt(final String key, final int defaultValue) {
+        final String value = EjbcaConfigurationHolder.getString(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Math.max(Integer.parseInt(value.trim()), 0);
+        } catch (NumberFormatException e) {
+            log.warn("\"" + key + "\" is not a decimal number. Using default value: " + defaultValue);
+            return defaultValue;
+        }
+    }
 }
@@ -32,6 +32,8 @@ public class GlobalUpgradeConfiguration extends ConfigurationBase {
     private static final String EEP_IN_CERTIFICATE_DATA = "endEntityProfileInCertificateData";
     private static final String POST_UPGRADE_STARTED = "postUpgradeStarted";
     private static final String UPGRADED_FROM        = "upgradedFromVersion";
+    private static final String MIGRATION_CHECKPOINT_PREFIX = "migrationCheckpoint.";
+    private static final String MIGRATION_COMPLETED_PREFIX = "migrationCompleted.";
     
     public String getUpgradedToVersion() {
         return (String) data.get(UPGRADED_TO_VERSION);
@@ -91,4 +93,24 @@ public class GlobalUpgradeConfiguration extends ConfigurationBase {
     public void setPostUpgradeStarted(long startTimeMs) {
         data.put(POST_UPGRADE_STARTED, String.valueOf(startTimeMs));
     }
+
+    /** @return the primary key of the last row migrated by the post-upgrade data migration, or null if it has not migrated any rows. */
+    public String getMigrationCheckpoint(final String migration) {
+        return (String) data.get(MIGRATION_CHECKPOINT_PREFIX + migration);
+    }
+    public void setMigrationCheckpoint(final String migration, final String key) {
+        if (key == null) {
+            data.remove(MIGRATION_CHECKPOINT_PREFIX + migration);
+        } else {
+            data.put(MIGRATION_CHECKPOINT_PREFIX + migration, key);
+        }
+    }
+
+    /** @return true if the post-upgrade data migration has migrated all rows. */
+    public boolean isMigrationCompleted(final String migration) {
+        return Boolean.parseBoolean((String) data.get(MIGRATION_COMPLETED_PREFIX + migration));
+    }
+    public void setMigrationCompleted(final String migration, final boolean value) {
+        data.put(MIGRATION_COMPLETED_PREFIX + migration, Boolean.valueOf(value).toString());
+    }
 }
@@ -12,10 +12,17 @@
  *************************************************************************/
 package org.ejbca.core.model.approval;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
+import org.cesecore.util.Base64;
 import org.ejbca.core.model.SecConst;
 import org.ejbca.core.model.approval.profile.ApprovalProfile;
 
@@ -78,6 +85,10 @@ public class ApprovalDataVO implements Serializable {
     private int status = 0;
     private Collection<Approval> approvals = null;
     private ApprovalRequest approvalRequest = null;
+    /** The encoded approvals, that are decoded when they are first used. Not serialized, so the serialized form is the same as before. */
+    private transient String encodedApprovals = null;
+    /** The encoded approval request, that is decoded when it is first used. Not serialized, so the serialized form is the same as before. */
+    private transient String encodedApprovalRequest = null;
     private Date requestDate = null;
     private Date expireDate = null;
 
@@ -118,6 +129,53 @@ public class ApprovalDataVO implements Serializable {
 		this.requestDate = requestDate;
 		this.expireDate = expireDate;
 	}
+
+    /**
+     * Creates a value object where the approvals and the approval request are decoded when they are first used, so listing many approval
+     * requests does not decode the blobs of the requests that are never looked at.
+     * 
+     * @param encodedApprovals the approvals as stored in the database, see {@link #decodeApprovals(String)}
+     * @param encodedApprovalRequest the approval request as stored in the database, see {@link #decodeApprovalRequest(String)}
+     * @see #ApprovalDataVO(int, int, int, int, int, String, String, int, Collection, ApprovalRequest, Date, Date)
+     */
+    public ApprovalDataVO(int id, int approvalId, int approvalType, int endEntityProfileiId, int cAId, String reqadmincertissuerdn,
+            String reqadmincertsn, int status, String encodedApprovals, String encodedApprovalRequest, Date requestDate, Date expireDate) {
+        this(id, approvalId, approvalType, endEntityProfileiId, cAId, reqadmincertissuerdn, reqadmincertsn, status, (Collection<Approval>) null,
+                (ApprovalRequest) null, requestDate, expireDate);
+        this.encodedApprovals = encodedApprovals;
+        this.encodedApprovalRequest = encodedApprovalRequest;
+    }
+
+    /** @return the approval request decoded from its Base64 encoded Java serialization */
+    public static ApprovalRequest decodeApprovalRequest(final String encodedApprovalRequest) {
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.decode(encodedApprovalRequest.getBytes())))) {
+            return (ApprovalRequest) ois.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Error building approval request.", e);
+        }
+    }
+
+    /** @return the approvals decoded from the Base64 encoded Java serialization of their number followed by each approval */
+    public static List<Approval> decodeApprovals(final String encodedApprovals) {
+        final List<Approval> ret = new ArrayList<Approval>();
+        try (final ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.decode(encodedApprovals.getBytes())))) {
+            final int size = ois.readInt();
+            for (int i = 0; i < size; i++) {
+                ret.add((Approval) ois.readObject());
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Error building approvals.", e);
+        }
+        return ret;
+    }
+
+    /** Decodes the approvals and the approval request before serialization, since the encoded forms are not serialized. */
+    private void writeObject(final ObjectOutputStream out) throws IOException {
+        getApprovals();
+        getApprovalRequest();
+        out.defaultWriteObject();
+    }
+
 	/**
 	 *  Constructed from action data as actiontype, admin, username etc. It should
      *  result in the same approvalid if the admin tries to request the same action twice.
@@ -133,11 +191,16 @@ public class ApprovalDataVO implements Serializable {
 	 * @return Returns the approvalRequest.
 	 */
 	public ApprovalRequest getApprovalRequest() {
+	    if (approvalRequest == null && encodedApprovalRequest != null) {
+	        approvalRequest = decodeApprovalRequest(encodedApprovalRequest);
+	        encodedApprovalRequest = null;
+	    }
 		return approvalRequest;
 	}
 	
 	public void setApprovalRequest(ApprovalRequest approvalRequest) {
 	    this.approvalRequest = approvalRequest;
+	    this.encodedApprovalRequest = null;
 	}
 	
 	/**
@@ -146,6 +209,10 @@ public class ApprovalDataVO implements Serializable {
 	 * @return Returns the approvals.
 	 */
 	public Collection<Approval> getApprovals() {
+	    if (approvals == null && encodedApprovals != null) {
+	        approvals = decodeApprovals(encodedApprovals);
+	        encodedApprovals = null;
+	    }
 		return approvals;
 	}
 	
@@ -197,7 +264,7 @@ public class ApprovalDataVO implements Serializable {
 	}
 	
 	public ApprovalProfile getApprovalProfile() {
-	    return approvalRequest.getApprovalProfile();
+	    return getApprovalRequest().getApprovalProfile();
 	}
 	
     public int getRemainingApprovals() {
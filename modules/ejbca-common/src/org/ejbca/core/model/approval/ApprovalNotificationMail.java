@@ -0,0 +1,67 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.approval;
+
+import java.io.Serializable;
+import java.util.List;
+
+/**
+ * An approval notification email that has been rendered from the approval profile, and is waiting to be sent.
+ *
+ * @version $Id$
+ */
+public class ApprovalNotificationMail implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int requestId;
+    private final String sender;
+    private final List<String> recipients;
+    private final String subject;
+    private final String body;
+
+    /**
+     * @param requestId the ID of the approval request that the notification is about, used for logging
+     * @param sender the "From" address
+     * @param recipients the "To" addresses
+     * @param subject the interpolated subject
+     * @param body the interpolated message body
+     */
+    public ApprovalNotificationMail(final int requestId, final String sender, final List<String> recipients, final String subject, final String body) {
+        this.requestId = requestId;
+        this.sender = sender;
+        this.recipients = recipients;
+        this.subject = subject;
+        this.body = body;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String getSender() {
+        return sender;
+    }
+
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    public String getBody() {
+        return body;
+    }
+}
@@ -0,0 +1,281 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.ca.publisher;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+
+import org.apache.log4j.Logger;
+
+import com.novell.ldap.LDAPConnection;
+import com.novell.ldap.LDAPException;
+
+/**
+ * A pool of connected and bound connections to the LDAP servers of a publisher.
+ *
+ * Publishing a single certificate or CRL used to connect, negotiate TLS and bind two or three times. With the pool, connections are
+ * re-used as long as they are alive and bound with the credentials of the publisher, so the TLS handshake and bind are only made when a new
+ * connection is needed. Connections are kept per LDAP server, so the publishers can still fail over to the next server in their list.
+ *
+ * At most the pool size of idle connections are kept for each server, and connections that have been idle for longer than the idle timeout are
+ * closed. A connection that has been idle for longer than {@link #HEALTH_CHECK_INTERVAL} reads the root DSE before it is used again, and is
+ * replaced if that fails. A server that could not be connected to is tried after the other servers for {@link #FAILED_SERVER_BACKOFF} ms.
+ *
+ * Pools are shared by all publishers with the same name and connection settings, and the pool of a publisher is replaced when its connection
+ * settings are changed.
+ *
+ * @version $Id$
+ */
+public class LdapConnectionPool {
+
+    private static final Logger log = Logger.getLogger(LdapConnectionPool.class);
+
+    /** The time in milliseconds a connection may be idle before its connection to the server is checked before it is used again */
+    public static final long HEALTH_CHECK_INTERVAL = 10000L;
+    /** The time in milliseconds a server that could not be connected to is tried after the other servers */
+    public static final long FAILED_SERVER_BACKOFF = 30000L;
+
+    private static final Map<String, LdapConnectionPool> pools = new ConcurrentHashMap<String, LdapConnectionPool>();
+
+    /** Creates new connections for a pool */
+    public interface ConnectionFactory {
+        /**
+         * @param server the LDAP server to connect to
+         * @return a new connection to the server, that is connected and bound
+         * @throws LDAPException if the server could not be connected to or the bind failed
+         */
+        LDAPConnection createConnection(String server) throws LDAPException;
+    }
+
+    /** A connection in the pool and when it was last released */
+    private static final class IdleConnection {
+        private final LDAPConnection connection;
+        private final long idleSince = System.currentTimeMillis();
+
+        IdleConnection(final LDAPConnection connection) {
+            this.connection = connection;
+        }
+    }
+
+    private final String name;
+    private final int size;
+    private final long idleTimeout;
+    /** Idle connections by server, the most recently used first */
+    private final Map<String, LinkedBlockingDeque<IdleConnection>> idleConnections = new ConcurrentHashMap<String, LinkedBlockingDeque<IdleConnection>>();
+    /** The last time a new connection to a server failed, by server */
+    private final Map<String, Long> failedServers = new ConcurrentHashMap<String, Long>();
+    private volatile boolean closed = false;
+
+    /**
+     * @param name the name of the publisher the pool is used for
+     * @param size the maximum number of idle connections kept per server, or 0 to close connections after each use
+     * @param idleTimeout the time in milliseconds an idle connection is kept
+     */
+    LdapConnectionPool(final String name, final int size, final long idleTimeout) {
+        this.name = name;
+        this.size = size;
+        this.idleTimeout = idleTimeout;
+    }
+
+    /**
+     * Gets the pool for a publisher, and closes the pool of the publisher if its connection settings have changed.
+     *
+     * @param name the name of the publisher, that identifies the publisher among publishers with the same settings
+     * @param settings all settings that affect the connections, such as servers, port, connection security, bind DN and password
+     * @param size the maximum number of idle connections kept per server, or 0 to close connections after each use
+     * @param idleTimeout the time in milliseconds an idle connection is kept
+     * @return the pool
+     */
+    public static LdapConnectionPool getInstance(final String name, final String settings, final int size, final long idleTimeout) {
+        final String key = name + ";" + size + ";" + idleTimeout + ";" + settings;
+        LdapConnectionPool pool = pools.get(key);
+        if (pool == null) {
+            synchronized (pools) {
+                pool = pools.get(key);
+                if (pool == null) {
+                    for (final Iterator<LdapConnectionPool> iterator = pools.values().iterator(); iterator.hasNext();) {
+                        final LdapConnectionPool oldPool = iterator.next();
+                        if (oldPool.name.equals(name)) {
+                            // The settings of the publisher have changed
+                            iterator.remove();
+                            oldPool.close();
+                        }
+                    }
+                    pool = new LdapConnectionPool(name, size, idleTimeout);
+                    pools.put(key, pool);
+                    if (log.isDebugEnabled()) {
+                        log.debug("Created LDAP connection pool of size " + size + " for publisher '" + name + "'.");
+                    }
+                }
+            }
+        }
+        return pool;
+    }
+
+    /**
+     * @param servers the servers of the publisher in the configured order
+     * @return the servers in the order they should be tried, with servers that recently could not be connected to last
+     */
+    public List<String> getServerOrder(final List<String> servers) {
+        if (failedServers.isEmpty()) {
+            return servers;
+        }
+        final List<String> available = new ArrayList<String>(servers.size());
+        final List<String> failed = new ArrayList<String>();
+        final long now = System.currentTimeMillis();
+        for (final String server : servers) {
+            final Long failedTime = failedServers.get(server);
+            if (failedTime != null && now - failedTime.longValue() < FAILED_SERVER_BACKOFF) {
+                failed.add(server);
+            } else {
+                available.add(server);
+            }
+        }
+        available.addAll(failed);
+        return available;
+    }
+
+    /**
+     * Gets an idle connection to the server, or creates a new one.
+     *
+     * @param server the LDAP server
+     * @param factory creates a new connection if there is no usable idle connection
+     * @return a connected and bound connection, that should be returned with {@link #releaseConnection(String, LDAPConnection)} after use
+     * @throws LDAPException if a new connection could not be created
+     */
+    public LDAPConnection getConnection(final String server, final ConnectionFactory factory) throws LDAPException {
+        final LinkedBlockingDeque<IdleConnection> idle = idleConnections.get(server);
+        if (idle != null) {
+            IdleConnection idleConnection;
+            while ((idleConnection = idle.pollFirst()) != null) {
+                final long idleTime = System.currentTimeMillis() - idleConnection.idleSince;
+                if (idleTime >= idleTimeout || !idleConnection.connection.isConnected()) {
+                    // Timed out, or closed by the server
+                    disconnect(idleConnection.connection);
+                } else if (idleTime < HEALTH_CHECK_INTERVAL || isHealthy(server, idleConnection.connection)) {
+                    return idleConnection.connection;
+                }
+            }
+        }
+        try {
+            final LDAPConnection connection = factory.createConnection(server);
+            failedServers.remove(server);
+            return connection;
+        } catch (LDAPException e) {
+            failedServers.put(server, Long.valueOf(System.currentTimeMillis()));
+            throw e;
+        }
+    }
+
+    /**
+     * Returns a connection to the pool if it is still connected and bound, or else closes it.
+     *
+     * @param server the LDAP server that the connection is connected to
+     * @param connection the connection, or null if no connection was created
+     */
+    public void releaseConnection(final String server, final LDAPConnection connection) {
+        if (connection == null) {
+            return;
+        }
+        if (closed || size <= 0 || !connection.isConnected() || !connection.isBound()) {
+            disconnect(connection);
+            return;
+        }
+        LinkedBlockingDeque<IdleConnection> idle = idleConnections.get(server);
+        if (idle == null) {
+            synchronized (idleConnections) {
+                idle = idleConnections.get(server);
+                if (idle == null) {
+                    idle = new LinkedBlockingDeque<IdleConnection>();
+                    idleConnections.put(server, idle);
+                }
+            }
+        }
+        idle.offerFirst(new IdleConnection(connection));
+        // Close the connections that are not needed, which are the least recently used ones
+        IdleConnection surplus;
+        while (idle.size() > size && (surplus = idle.pollLast()) != null) {
+            disconnect(surplus.connection);
+        }
+        while ((surplus = idle.peekLast()) != null && System.currentTimeMillis() - surplus.idleSince >= idleTimeout) {
+            if (idle.removeLastOccurrence(surplus)) {
+                disconnect(surplus.connection);
+            }
+        }
+    }
+
+    /** Closes all idle connections, and connections that are released later. */
+    public void close() {
+        closed = true;
+        for (final LinkedBlockingDeque<IdleConnection> idle : idleConnections.values()) {
+            IdleConnection idleConnection;
+            while ((idleConnection = idle.pollFirst()) != null) {
+                disconnect(idleConnection.connection);
+            }
+        }
+    }
+
+    /** @return the number of idle connections to the server */
+    public int getIdleConnections(final String server) {
+        final LinkedBlockingDeque<IdleConnection> idle = idleConnections.get(server);
+        return idle == null ? 0 : idle.size();
+    }
+
+    /** Checks that an idle connection is still usable, by reading the root DSE. Any response from the server means that it is. */
+    private boolean isHealthy(final String server, final LDAPConnection connection) {
+        if (connection.isConnected() && connection.isBound()) {
+            try {
+                connection.read("", new String[] { LDAPConnection.NO_ATTRS });
+                return true;
+            } catch (LDAPException e) {
+                if (!isConnectionError(e)) {
+                    return true;
+                }
+                if (log.isDebugEnabled()) {
+                    log.debug("Idle connection to LDAP server " + server + " failed health check: " + e.getMessage());
+                }
+            }
+        }
+        disconnect(connection);
+        return false;
+    }
+
+    /** @return true if the exception means that the connection can not be used any more, as opposed to an error result of an operation */
+    static boolean isConnectionError(final LDAPException e) {
+        switch (e.getResultCode()) {
+        case LDAPException.BUSY:
+        case LDAPException.UNAVAILABLE:
+        case LDAPException.SERVER_DOWN:
+        case LDAPException.LDAP_TIMEOUT:
+        case LDAPException.CONNECT_ERROR:
+        case LDAPException.OTHER:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static void disconnect(final LDAPConnection connection) {
+        try {
+            connection.disconnect();
+        } catch (LDAPException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("Failed to disconnect from LDAP server: " + e.getMessage());
+            }
+        }
+    }
+}
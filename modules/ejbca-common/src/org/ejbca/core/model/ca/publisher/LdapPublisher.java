@@ -13,7 +13,7 @@
  
 package org.ejbca.core.model.ca.publisher;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
@@ -69,7 +69,7 @@ public class LdapPublisher extends BasePublisher {
 	/** Internal localization of logs and errors */
 	private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
-	public static final float LATEST_VERSION = 12;
+	public static final float LATEST_VERSION = 13;
 	
 	// Create some constraints used when connecting, disconnecting, reading and storing in LDAP servers
 	/** Use a time limit for generic (non overridden) LDAP operations */
@@ -106,6 +106,8 @@ public class LdapPublisher extends BasePublisher {
 	public static final String DEFAULT_TIMEOUT             = "5000"; // 5 seconds
 	public static final String DEFAULT_READTIMEOUT         = "30000"; // 30 seconds
 	public static final String DEFAULT_STORETIMEOUT        = "60000"; // 1 minute
+	public static final String DEFAULT_CONNECTIONPOOLSIZE  = "5";
+	public static final String DEFAULT_CONNECTIONPOOLIDLETIMEOUT = "300000"; // 5 minutes
 
 
 	// Default Values
@@ -121,6 +123,8 @@ public class LdapPublisher extends BasePublisher {
 	protected static final String TIMEOUT                  = "timeout";
 	protected static final String READTIMEOUT              = "readtimeout";
 	protected static final String STORETIMEOUT             = "storetimeout";
+	protected static final String CONNECTIONPOOLSIZE       = "connectionpoolsize";
+	protected static final String CONNECTIONPOOLIDLETIMEOUT = "connectionpoolidletimeout";
 	protected static final String CREATENONEXISTING        = "createnonexisting";
 	protected static final String MODIFYEXISTING           = "modifyexisting"; 
 	protected static final String ADDNONEXISTINGATTR       = "addnonexistingattr"; 
@@ -156,6 +160,8 @@ public class LdapPublisher extends BasePublisher {
 		setLoginPassword("");
 		int connectiontimeout = getConnectionTimeOut();
 		setConnectionTimeOut(connectiontimeout);
+		setConnectionPoolSize(getConnectionPoolSize());
+		setConnectionPoolIdleTimeOut(getConnectionPoolIdleTimeOut());
 		setCreateNonExistingUsers(true);
 		setModifyExistingUsers(true);     
 		setModifyExistingAttributes(false);
@@ -193,9 +199,6 @@ public class LdapPublisher extends BasePublisher {
         	revokeCertificate(admin, incert, username, revocationReason, userDN);
         } else if (status == CertificateConstants.CERT_ACTIVE) {
             // Don't publish non-active certificates
-    		int ldapVersion = LDAPConnection.LDAP_V3;
-    		LDAPConnection lc = createLdapConnection();
-
     		final String dn;
     		final String certdn;
     		try {
@@ -221,7 +224,7 @@ public class LdapPublisher extends BasePublisher {
     		// To work well with the LdapSearchPublisher we need to pass the full certificate DN to the 
     		// search function, and not only the LDAP DN. The regular publisher should only use the LDAP DN though, 
     		// but the searchOldEntity function will take care of that.
-    		LDAPEntry oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+    		LDAPEntry oldEntry = searchOldEntity(username, certdn, userDN, email);
 
     		// PART 2: Create LDAP entry
     		LDAPEntry newEntry = null;
@@ -309,23 +312,14 @@ public class LdapPublisher extends BasePublisher {
 
     		// PART 3: MODIFICATION AND ADDITION OF NEW USERS
     		// Try all the listed servers
-    		Iterator<String> servers = getHostnameList().iterator();
+    		Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
     		boolean connectionFailed;
     		do {
     			connectionFailed = false;
     			String currentServer = servers.next();
+    			LDAPConnection lc = null;
     			try {
-    				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-    				lc.connect(currentServer, Integer.parseInt(getPort()));
-    				// Execute a STARTTLS handshake if it was requested.
-    				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                        if (log.isDebugEnabled()) {
-                            log.debug("STARTTLS to LDAP server "+currentServer);
-                        }
-    				    lc.startTLS();
-    				}
-    				// authenticate to the server
-    				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+    				lc = getConnection(currentServer);
     				// Add or modify the entry
     				if (oldEntry != null && getModifyExistingUsers()) {
     					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -378,18 +372,8 @@ public class LdapPublisher extends BasePublisher {
     					log.error(msg, e);  
     					throw new PublisherException(msg);            
     				}
-    			} catch (UnsupportedEncodingException e) {
-    				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-    				log.error(msg, e);
-    				throw new PublisherException(msg);            
     			} finally {
-    				// disconnect with the server
-    				try {
-    					lc.disconnect(ldapDisconnectConstraints);
-    				} catch (LDAPException e) {
-    					String msg = intres.getLocalizedMessage("publisher.errordisconnect", getLoginPassword());
-    					log.error(msg, e);
-    				}
+    				releaseConnection(currentServer, lc);
     			}
     		} while (connectionFailed && servers.hasNext()) ;
         } else {
@@ -471,7 +455,6 @@ public class LdapPublisher extends BasePublisher {
 		if (log.isTraceEnabled()) {
 			log.trace(">storeCRL");
 		}
-		int ldapVersion = LDAPConnection.LDAP_V3;
 
 		final String dn;
 		final String crldn;
@@ -494,10 +477,8 @@ public class LdapPublisher extends BasePublisher {
 			throw new PublisherException(msg);            
 		}
 
-		LDAPConnection lc = createLdapConnection();
-
 		// Check if the entry is already present, we will update it with the new CRL.
-		LDAPEntry oldEntry = searchOldEntity(null, ldapVersion, lc, crldn, userDN, null);
+		LDAPEntry oldEntry = searchOldEntity(null, crldn, userDN, null);
 
 		LDAPEntry newEntry = null;
 		ArrayList<LDAPModification> modSet = new ArrayList<LDAPModification>();
@@ -533,24 +514,14 @@ public class LdapPublisher extends BasePublisher {
 			newEntry = new LDAPEntry(dn, attributeSet);
 		}
 		// Try all the listed servers
-		Iterator<String> servers = getHostnameList().iterator();
+		Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				// Add or modify the entry
 				if (oldEntry != null) {
 					LDAPModification[] mods = new LDAPModification[modSet.size()]; 
@@ -572,18 +543,8 @@ public class LdapPublisher extends BasePublisher {
 					log.error(msg, e);  
 					throw new PublisherException(msg);            
 				}
-			} catch (UnsupportedEncodingException e) {
-				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-				log.error(msg, e);
-				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		if (log.isTraceEnabled()) {
@@ -624,9 +585,6 @@ public class LdapPublisher extends BasePublisher {
 			}
 		}
 
-		int ldapVersion = LDAPConnection.LDAP_V3;
-		LDAPConnection lc = createLdapConnection();
-
 		final String dn;
 		final String certdn;
 		try {
@@ -648,7 +606,7 @@ public class LdapPublisher extends BasePublisher {
 		ArrayList<LDAPModification> modSet = null;
 
 		if (!CertTools.isCA(cert)) {
-			oldEntry = searchOldEntity(username, ldapVersion, lc, certdn, userDN, email);
+			oldEntry = searchOldEntity(username, certdn, userDN, email);
 			if (log.isDebugEnabled()) {
 				log.debug("Removing end user certificate from first available server of " + getHostnames());
 			}
@@ -678,7 +636,7 @@ public class LdapPublisher extends BasePublisher {
 		}
 
 		// Try all the listed servers
-		final Iterator<String> servers = getHostnameList().iterator();
+		final Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
 		boolean isConnectionNotDone = true;
         if (log.isDebugEnabled() && (oldEntry == null)) {
             log.debug("Not modifying LDAP entry because there is no existing entry.");                      
@@ -689,18 +647,9 @@ public class LdapPublisher extends BasePublisher {
 			if (log.isDebugEnabled()) {
 				log.debug("currentServer: "+currentServer);
 			}
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);            
+				lc = getConnection(currentServer);
 				// Add or modify the entry
 				if (modSet != null && getModifyExistingUsers()) {
 					if (removecert) {
@@ -732,18 +681,8 @@ public class LdapPublisher extends BasePublisher {
 					log.error(msg, e);  
 					throw new PublisherException(msg);            
 				}
-			} catch (UnsupportedEncodingException e) {
-				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-				log.error(msg, e);
-				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc);
 			}
 		}
 		if (log.isTraceEnabled()) {
@@ -756,10 +695,10 @@ public class LdapPublisher extends BasePublisher {
 	 *  
 	 *  @param dn the DN from the certificate, can be used to extract search information or a LDAP DN
 	 */
-	protected LDAPEntry searchOldEntity(String username, int ldapVersion, LDAPConnection lc, String certDN, String userDN, String email) throws PublisherException {
+	protected LDAPEntry searchOldEntity(String username, String certDN, String userDN, String email) throws PublisherException {
 		LDAPEntry oldEntry = null; // return value
 		// Try all the listed servers
-		final Iterator<String> servers = getHostnameList().iterator();
+		final Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
@@ -768,19 +707,9 @@ public class LdapPublisher extends BasePublisher {
 				log.debug("Current server is: "+currentServer);
 			}
 			final String ldapdn = constructLDAPDN(certDN, userDN);
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				// try to read the old object
 				if (log.isDebugEnabled()) {
 					log.debug("Searching for old entry with DN '" + ldapdn+"'");
@@ -808,17 +737,8 @@ public class LdapPublisher extends BasePublisher {
 						throw new PublisherException(msg);                                
 					}
 				}
-			} catch (UnsupportedEncodingException e) {
-				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-				throw new PublisherException(msg);            
 			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+				releaseConnection(currentServer, lc);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
 		return oldEntry;
@@ -828,28 +748,16 @@ public class LdapPublisher extends BasePublisher {
 	 * @see org.ejbca.core.model.ca.publisher.BasePublisher#testConnection()
 	 */    
 	public void testConnection() throws PublisherConnectionException {
-		int ldapVersion = LDAPConnection.LDAP_V3;
-		LDAPConnection lc = createLdapConnection();
 		// Try all the listed servers
-		Iterator<String> servers = getHostnameList().iterator();
+		Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
 			String currentServer = servers.next();
 			LDAPEntry entry = null;
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-				// authenticate to the server
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				// try to read the base object
 				String baseDN = getBaseDN();
 				if (log.isDebugEnabled()) {
@@ -872,12 +780,75 @@ public class LdapPublisher extends BasePublisher {
 					log.error(msg, e);
 					throw new PublisherConnectionException(msg);                            
 				}
-			} catch (UnsupportedEncodingException e) {
-				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-				log.error(msg, e);
-				throw new PublisherConnectionException(msg);            
 			} finally {
-				// disconnect with the server
+				releaseConnection(currentServer, lc);
+			}
+		} while (connectionFailed && servers.hasNext()) ;
+	} 
+
+	/**
+	 * Gets a connected and bound connection to an LDAP server from the connection pool of this publisher, or creates a new one.
+	 * The connection must be returned with {@link #releaseConnection(String, LDAPConnection)} after use.
+	 *
+	 * @param server the LDAP server to connect to
+	 * @return a connection where the publisher is authenticated
+	 * @throws LDAPException if the server could not be connected to or the bind failed
+	 */
+	protected LDAPConnection getConnection(final String server) throws LDAPException {
+		setConstraintTimeLimits();
+		return getConnectionPool().getConnection(server, new LdapConnectionPool.ConnectionFactory() {
+			@Override
+			public LDAPConnection createConnection(final String server) throws LDAPException {
+				return connectAndBind(server);
+			}
+		});
+	}
+
+	/**
+	 * Returns a connection from {@link #getConnection(String)} to the connection pool, or disconnects it if it is no longer usable.
+	 *
+	 * @param server the LDAP server the connection is connected to
+	 * @param lc the connection, or null if no connection could be made
+	 */
+	protected void releaseConnection(final String server, final LDAPConnection lc) {
+		getConnectionPool().releaseConnection(server, lc);
+	}
+
+	/** @return the connection pool used with the current connection settings of this publisher */
+	protected LdapConnectionPool getConnectionPool() {
+		final String settings = getPort() + ";" + getConnectionSecurity() + ";" + getLoginDN() + ";" + data.get(LOGINPASSWORD) + ";" + getConnectionTimeOut();
+		return LdapConnectionPool.getInstance(getClass().getName() + ":" + getPublisherId(), settings, getConnectionPoolSize(), getConnectionPoolIdleTimeOut());
+	}
+
+	/**
+	 * Connects to an LDAP server, executes a STARTTLS handshake if requested, and authenticates with the login DN and password.
+	 *
+	 * @param server the LDAP server to connect to
+	 * @return a new connection where the publisher is authenticated
+	 * @throws LDAPException if the server could not be connected to or the bind failed
+	 */
+	protected LDAPConnection connectAndBind(final String server) throws LDAPException {
+		TCPTool.probeConnectionLDAP(server, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
+		final LDAPConnection lc = createLdapConnection();
+		boolean bound = false;
+		try {
+			if (log.isDebugEnabled()) {
+				log.debug("Connecting to LDAP server "+server);
+			}
+			lc.connect(server, Integer.parseInt(getPort()));
+			// Execute a STARTTLS handshake if it was requested.
+			if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
+				if (log.isDebugEnabled()) {
+					log.debug("STARTTLS to LDAP server "+server);
+				}
+				lc.startTLS();
+			}
+			// authenticate to the server
+			lc.bind(LDAPConnection.LDAP_V3, getLoginDN(), getLoginPassword().getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+			bound = true;
+			return lc;
+		} finally {
+			if (!bound) {
 				try {
 					lc.disconnect(ldapDisconnectConstraints);
 				} catch (LDAPException e) {
@@ -885,17 +856,22 @@ public class LdapPublisher extends BasePublisher {
 					log.error(msg, e);
 				}
 			}
-		} while (connectionFailed && servers.hasNext()) ;
-	} 
+		}
+	}
 
-	protected LDAPConnection createLdapConnection() {
-		// Set timeouts
+	/** Sets the time limits of the LDAP operations from the configured timeouts */
+	protected void setConstraintTimeLimits() {
 		int connectiontimeout = getConnectionTimeOut();
 		ldapBindConstraints.setTimeLimit(connectiontimeout); 
 		ldapDisconnectConstraints.setTimeLimit(connectiontimeout);
 		ldapConnectionConstraints.setTimeLimit(connectiontimeout);
 		ldapSearchConstraints.setTimeLimit(getReadTimeOut());
 		ldapStoreConstraints.setTimeLimit(getStoreTimeOut());
+	}
+
+	protected LDAPConnection createLdapConnection() {
+		// Set timeouts
+		setConstraintTimeLimits();
 		if (log.isDebugEnabled()) {
 			log.debug("connecttimeout: "+ldapConnectionConstraints.getTimeLimit());
 			log.debug("bindtimeout: "+ldapBindConstraints.getTimeLimit());
@@ -1332,6 +1308,32 @@ public class LdapPublisher extends BasePublisher {
 		ldapStoreConstraints.setTimeLimit(timeout);
 	}
 
+	/** Return the number of idle connections kept per LDAP server, where 0 means that connections are closed after each use */
+	public int getConnectionPoolSize() {
+		int size = Integer.parseInt(DEFAULT_CONNECTIONPOOLSIZE);
+		if ( data.get(CONNECTIONPOOLSIZE) != null ) {
+			size = Integer.parseInt((String) data.get(CONNECTIONPOOLSIZE));
+		}
+		return size;
+	}
+	/** Return the time in milliseconds an idle connection is kept */
+	public int getConnectionPoolIdleTimeOut() {
+		int timeout = Integer.parseInt(DEFAULT_CONNECTIONPOOLIDLETIMEOUT);
+		if ( data.get(CONNECTIONPOOLIDLETIMEOUT) != null ) {
+			timeout = Integer.parseInt((String) data.get(CONNECTIONPOOLIDLETIMEOUT));
+		}
+		return timeout;
+	}
+
+	/** Set the number of idle connections kept per LDAP server, where 0 means that connections are closed after each use */
+	public void setConnectionPoolSize(int size) {
+		data.put(CONNECTIONPOOLSIZE, Integer.toString(size));
+	}
+	/** Set the time in milliseconds an idle connection is kept */
+	public void setConnectionPoolIdleTimeOut(int timeout) {
+		data.put(CONNECTIONPOOLIDLETIMEOUT, Integer.toString(timeout));
+	}
+
 	// Private methods   
 	/**
 	 * Returns a list of attributes found in DN
@@ -1777,6 +1779,10 @@ public class LdapPublisher extends BasePublisher {
 					setConnectionSecurity(ConnectionSecurity.PLAIN);
 				}
 			}
+			if (data.get(CONNECTIONPOOLSIZE) == null) { // v13
+				setConnectionPoolSize(getConnectionPoolSize());
+				setConnectionPoolIdleTimeOut(getConnectionPoolIdleTimeOut());
+			}
 				
 			data.put(VERSION, new Float(LATEST_VERSION));
 		}
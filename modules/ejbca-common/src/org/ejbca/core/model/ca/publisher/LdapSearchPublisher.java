@@ -13,7 +13,6 @@
 
 package org.ejbca.core.model.ca.publisher;
 
-import java.io.UnsupportedEncodingException;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.regex.Pattern;
@@ -21,7 +20,6 @@ import java.util.regex.Pattern;
 import org.apache.log4j.Logger;
 import org.cesecore.util.CertTools;
 import org.ejbca.core.model.InternalEjbcaResources;
-import org.ejbca.util.TCPTool;
 
 import com.novell.ldap.LDAPConnection;
 import com.novell.ldap.LDAPEntry;
@@ -73,11 +71,11 @@ public class LdapSearchPublisher extends LdapPublisher {
      *  @param certDN the DN from the certificate, can be used to extract search information or a LDAP DN
      *  @return an existing LDAPEntry, or null if not found
      */
-    protected LDAPEntry searchOldEntity(final String username, final int ldapVersion, final LDAPConnection lc, final String certDN, final String userDN, final String email) throws PublisherException {
+    protected LDAPEntry searchOldEntity(final String username, final String certDN, final String userDN, final String email) throws PublisherException {
         LDAPEntry oldEntry = null; // return value
 
 		// Try all the listed servers
-		Iterator<String> servers = getHostnameList().iterator();
+		Iterator<String> servers = getConnectionPool().getServerOrder(getHostnameList()).iterator();
 		boolean connectionFailed;
 		do {
 			connectionFailed = false;
@@ -85,22 +83,9 @@ public class LdapSearchPublisher extends LdapPublisher {
 	        // PARTE 1: Search for an existing entry in the LDAP directory
 			//  If it exists, this will be returned to be populated
 			//  if not exist, nothing will be returned and a new LDAP entry created
+			LDAPConnection lc = null;
 			try {
-				TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(getPort()), getConnectionTimeOut());	// Avoid waiting for halfdead-servers
-				// connect to the server
-				log.debug("Connecting to " + currentServer);
-				lc.connect(currentServer, Integer.parseInt(getPort()));
-				// Execute a STARTTLS handshake if it was requested.
-				if (getConnectionSecurity() == ConnectionSecurity.STARTTLS) {
-                    if (log.isDebugEnabled()) {
-                        log.debug("STARTTLS to LDAP server "+currentServer);
-                    }
-					lc.startTLS();
-				}
-
-				// authenticate to the server
-				log.debug("Logging in with BIND DN " + getLoginDN());
-				lc.bind(ldapVersion, getLoginDN(), getLoginPassword().getBytes("UTF8"), ldapBindConstraints);
+				lc = getConnection(currentServer);
 				//searchFilter = "(&(objectclass=person)(uid=" + username + "))";
 				String searchFilter = getSearchFilter();
 				if (log.isDebugEnabled()) {
@@ -157,6 +142,8 @@ public class LdapSearchPublisher extends LdapPublisher {
 					if (searchResults.hasMore()) {
 						log.debug("Found more than one matches with filter '" + searchFilter +
 								"'. Using the first match with LDAP entry with DN: " +oldEntry.getDN());
+						// Don't leave the rest of the results on the pooled connection
+						lc.abandon(searchResults);
 					} else {
 						log.debug("Found one match with filter: '"+searchFilter+"', match with DN: " + oldEntry.getDN());
 					}
@@ -190,17 +177,8 @@ public class LdapSearchPublisher extends LdapPublisher {
 						throw new PublisherException(msg);
 					}
 				}
-	        } catch (UnsupportedEncodingException e) {
-				String msg = intres.getLocalizedMessage("publisher.errorpassword", getLoginPassword());
-	            throw new PublisherException(msg);            
-			} finally {
-				// disconnect with the server
-				try {
-					lc.disconnect(ldapDisconnectConstraints);
-				} catch (LDAPException e) {
-					String msg = intres.getLocalizedMessage("publisher.errordisconnect");
-					log.error(msg, e);
-				}
+	        } finally {
+				releaseConnection(currentServer, lc);
 			}
 		} while (connectionFailed && servers.hasNext()) ;
         return oldEntry;
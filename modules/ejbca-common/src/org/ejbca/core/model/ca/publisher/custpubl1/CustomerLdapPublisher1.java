@@ -12,7 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.model.ca.publisher.custpubl1;
 
-import java.io.UnsupportedEncodingException;
+import java.nio.charset.StandardCharsets;
 import java.security.cert.CRLException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateEncodingException;
@@ -36,6 +36,7 @@ import org.cesecore.certificates.endentity.ExtendedInformation;
 import org.cesecore.util.CertTools;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.ca.publisher.ICustomPublisher;
+import org.ejbca.core.model.ca.publisher.LdapConnectionPool;
 import org.ejbca.core.model.ca.publisher.PublisherConnectionException;
 import org.ejbca.core.model.ca.publisher.PublisherException;
 import org.ejbca.util.TCPTool;
@@ -169,6 +170,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
     private static final String PROPERTY_READTIMEOUT = "readtimeout";
     private static final String PROPERTY_STORETIMEOUT = "storetimeout";
     private static final String PROPERTY_LOGCONNECTIONTESTS = "logconnectiontests";
+    private static final String PROPERTY_CONNECTIONPOOLSIZE = "connectionpoolsize";
+    private static final String PROPERTY_CONNECTIONPOOLIDLETIMEOUT = "connectionpoolidletimeout";
     
     // Default values
     public static final String DEFAULT_PORT = "389";
@@ -176,6 +179,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
     public static final String DEFAULT_TIMEOUT = "5000"; // 5 seconds
     public static final String DEFAULT_READTIMEOUT = "30000"; // 30 seconds
     public static final String DEFAULT_STORETIMEOUT = "60000"; // 1 minute
+    public static final String DEFAULT_CONNECTIONPOOLSIZE = "5";
+    public static final String DEFAULT_CONNECTIONPOOLIDLETIMEOUT = "300000"; // 5 minutes
     
     /** Flag indicating if the publisher has been initialized. */
     private boolean inited;
@@ -190,6 +195,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
     private boolean logConnectionTests;
     
     private int timeout;
+    private int connectionPoolSize;
+    private long connectionPoolIdleTimeout;
 
     private LDAPConstraints ldapConnectionConstraints = new LDAPConstraints();
     private LDAPConstraints ldapBindConstraints = new LDAPConstraints();
@@ -215,6 +222,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         this.timeout = Integer.parseInt(properties.getProperty(PROPERTY_CONNECTIONTIMEOUT, String.valueOf(DEFAULT_TIMEOUT)));
         int readTimeout = Integer.parseInt(properties.getProperty(PROPERTY_READTIMEOUT, String.valueOf(DEFAULT_TIMEOUT)));
         int storeTimeout = Integer.parseInt(properties.getProperty(PROPERTY_STORETIMEOUT, String.valueOf(DEFAULT_TIMEOUT)));
+        this.connectionPoolSize = Integer.parseInt(properties.getProperty(PROPERTY_CONNECTIONPOOLSIZE, DEFAULT_CONNECTIONPOOLSIZE));
+        this.connectionPoolIdleTimeout = Long.parseLong(properties.getProperty(PROPERTY_CONNECTIONPOOLIDLETIMEOUT, DEFAULT_CONNECTIONPOOLIDLETIMEOUT));
         
         ldapBindConstraints.setTimeLimit(timeout);
         ldapConnectionConstraints.setTimeLimit(timeout);
@@ -235,6 +244,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
                     .append(PROPERTY_CONNECTIONTIMEOUT).append(": \"").append(timeout).append("\"\n")
                     .append(PROPERTY_READTIMEOUT).append(": \"").append(readTimeout).append("\"\n")
                     .append(PROPERTY_STORETIMEOUT).append(": \"").append(storeTimeout).append("\"\n")
+                    .append(PROPERTY_CONNECTIONPOOLSIZE).append(": \"").append(connectionPoolSize).append("\"\n")
+                    .append(PROPERTY_CONNECTIONPOOLIDLETIMEOUT).append(": \"").append(connectionPoolIdleTimeout).append("\"\n")
                     .toString());
         }
 
@@ -354,8 +365,6 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         if (log.isTraceEnabled()) {
             log.trace(">doStoreCertificate(username=" + username + ")");
         }
-        final LDAPConnection lc = createLdapConnection();
-
         final String ldapDN;
         try {
             // Extract the CAs DN from the cert, the DN should be in reversed order (RFC2253)
@@ -383,7 +392,7 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         }
 
         // Check for old entry
-        final LDAPEntry oldEntry = searchOldEntity(lc, ldapDN);
+        final LDAPEntry oldEntry = searchOldEntity(ldapDN);
         if (oldEntry != null) {
             log.debug("Old entry exists and will be delete first");
         }
@@ -410,7 +419,7 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
             log.debug("Adding certificate to user entry: " + username + ": " + ldapDN);
         }
         final LDAPEntry newEntry = new LDAPEntry(ldapDN, attributeSet);
-        writeCertEntryToLDAP(lc, oldEntry, newEntry, checksum);
+        writeCertEntryToLDAP(oldEntry, newEntry, checksum);
 
         if (log.isTraceEnabled()) {
             log.trace("<doStoreCertificate()");
@@ -423,7 +432,6 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
             log.trace(">doStoreCRL");
         }
 
-        final LDAPConnection lc = createLdapConnection();
         
         final String ldapDN;
         try {
@@ -442,7 +450,7 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         }
 
         // Check if the entry is already present, we will update it with the new CRL.
-        final LDAPEntry oldEntry = searchOldEntity(lc, ldapDN);
+        final LDAPEntry oldEntry = searchOldEntity(ldapDN);
 
         // Attributes
         final LDAPAttributeSet attributeSet = new LDAPAttributeSet();
@@ -456,15 +464,14 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
 
         // Finally write the object
         final LDAPEntry newEntry = new LDAPEntry(ldapDN, attributeSet);
-        writeCrlEntryToLDAP(lc, oldEntry, newEntry);
+        writeCrlEntryToLDAP(oldEntry, newEntry);
         if (log.isTraceEnabled()) {
             log.trace("<doStoreCRL");
         }
     }
 
     protected void doTestConnection() throws PublisherConnectionException {
-        final LDAPConnection lc = createLdapConnection();
-        final LDAPEntry entry = executeLDAPAction(lc, new LDAPConnectionAction<LDAPEntry, PublisherConnectionException>() {
+        final LDAPEntry entry = executeLDAPAction(new LDAPConnectionAction<LDAPEntry, PublisherConnectionException>() {
             @Override
             public LDAPEntry performAction(final LDAPConnection lc) throws LDAPException {
                 // try to read the base object
@@ -532,9 +539,6 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         }
         logEntries.add(new LogInfo(logTime, 1, "objectupload", level, null, buff.toString(), null, null).getEncoded());
 
-        // Connect
-        final LDAPConnection lc = createLdapConnection();
-
         // Attributes
         final LDAPAttributeSet attributeSet = new LDAPAttributeSet();
         attributeSet.add(new LDAPAttribute("objectclass", LOG_OBJECTCLASSES));
@@ -545,7 +549,7 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
 
         // Finally write the object
         final LDAPEntry newEntry = new LDAPEntry(dn, attributeSet);
-        writeLogEntryToLDAP(lc, newEntry);
+        writeLogEntryToLDAP(newEntry);
     }
 
     protected Date getCurrentTime() {
@@ -557,10 +561,11 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         void failed(LDAPException ex) throws E;
     }
     
-    private<T extends Object, E extends Throwable> T executeLDAPAction(final LDAPConnection lc, final LDAPConnectionAction<T,E> action) throws E {
+    private<T extends Object, E extends Throwable> T executeLDAPAction(final LDAPConnectionAction<T,E> action) throws E {
         T result = null;
+        final LdapConnectionPool pool = getConnectionPool();
         // Try all the listed servers
-        final Iterator<String> servers = hostnames.iterator();
+        final Iterator<String> servers = pool.getServerOrder(hostnames).iterator();
         boolean connectionFailed;
         do {
             connectionFailed = false;
@@ -569,12 +574,14 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
                 log.debug("Current server is: " + currentServer);
             }
             
+            LDAPConnection lc = null;
             try {
-                TCPTool.probeConnectionLDAP(currentServer, Integer.parseInt(port), timeout);    // Avoid waiting for halfdead-servers
-                // connect to the server
-                lc.connect(currentServer, Integer.parseInt(port));
-                // authenticate to the server
-                lc.bind(LDAPConnection.LDAP_V3, loginDN, loginPassword.getBytes("UTF8"), ldapBindConstraints);
+                lc = pool.getConnection(currentServer, new LdapConnectionPool.ConnectionFactory() {
+                    @Override
+                    public LDAPConnection createConnection(final String server) throws LDAPException {
+                        return connectAndBind(server);
+                    }
+                });
                 
                 // Perform the action
                 result = action.performAction(lc);
@@ -585,11 +592,33 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
                 } else {
                     action.failed(e);
                 }
-            } catch (UnsupportedEncodingException e) {
-                String msg = intres.getLocalizedMessage("publisher.errorpassword", loginPassword);
-                throw new RuntimeException(msg);
             } finally {
-                // disconnect with the server
+                pool.releaseConnection(currentServer, lc);
+            }
+        } while (connectionFailed && servers.hasNext());
+        return result;
+    }
+
+    /** @return the pool of connections to the LDAP servers, shared by all instances of this publisher with the same configuration */
+    private LdapConnectionPool getConnectionPool() {
+        final String name = getClass().getName() + ":" + hostnames + ":" + port + ":" + loginDN;
+        final String settings = useSSL + ";" + loginPassword.hashCode() + ";" + timeout;
+        return LdapConnectionPool.getInstance(name, settings, connectionPoolSize, connectionPoolIdleTimeout);
+    }
+
+    private LDAPConnection connectAndBind(final String server) throws LDAPException {
+        TCPTool.probeConnectionLDAP(server, Integer.parseInt(port), timeout);    // Avoid waiting for halfdead-servers
+        final LDAPConnection lc = createLdapConnection();
+        boolean bound = false;
+        try {
+            // connect to the server
+            lc.connect(server, Integer.parseInt(port));
+            // authenticate to the server
+            lc.bind(LDAPConnection.LDAP_V3, loginDN, loginPassword.getBytes(StandardCharsets.UTF_8), ldapBindConstraints);
+            bound = true;
+            return lc;
+        } finally {
+            if (!bound) {
                 try {
                     lc.disconnect(ldapDisconnectConstraints);
                 } catch (LDAPException e) {
@@ -597,12 +626,11 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
                     log.error(msg, e);
                 }
             }
-        } while (connectionFailed && servers.hasNext());
-        return result;
+        }
     }
 
-    protected LDAPEntry searchOldEntity(final LDAPConnection lc, final String ldapDN) throws PublisherException {
-        return executeLDAPAction(lc, new LDAPConnectionAction<LDAPEntry,PublisherException>() {
+    protected LDAPEntry searchOldEntity(final String ldapDN) throws PublisherException {
+        return executeLDAPAction(new LDAPConnectionAction<LDAPEntry,PublisherException>() {
             @Override
             public LDAPEntry performAction(final LDAPConnection lc) throws LDAPException {
                 LDAPEntry result = null;
@@ -650,8 +678,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         return result;
     }
 
-    protected void writeCertEntryToLDAP(final LDAPConnection lc, final LDAPEntry oldEntry, final LDAPEntry newEntry, final String certFingerprint) throws PublisherException {
-        executeLDAPAction(lc, new LDAPConnectionAction<Void,PublisherException>() {
+    protected void writeCertEntryToLDAP(final LDAPEntry oldEntry, final LDAPEntry newEntry, final String certFingerprint) throws PublisherException {
+        executeLDAPAction(new LDAPConnectionAction<Void,PublisherException>() {
             @Override
             public Void performAction(final LDAPConnection lc) throws LDAPException {
                 try {
@@ -688,8 +716,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         });
     }
 
-    protected void writeCrlEntryToLDAP(final LDAPConnection lc, final LDAPEntry oldEntry, final LDAPEntry newEntry) throws PublisherException {
-        executeLDAPAction(lc, new LDAPConnectionAction<Void,PublisherException>() {
+    protected void writeCrlEntryToLDAP(final LDAPEntry oldEntry, final LDAPEntry newEntry) throws PublisherException {
+        executeLDAPAction(new LDAPConnectionAction<Void,PublisherException>() {
             @Override
             public Void performAction(final LDAPConnection lc) throws LDAPException {
                 // Delete old entry if existing
@@ -714,8 +742,8 @@ public class CustomerLdapPublisher1 implements ICustomPublisher {
         });
     }
     
-    protected void writeLogEntryToLDAP(final LDAPConnection lc, final LDAPEntry newEntry) throws PublisherException {
-        executeLDAPAction(lc, new LDAPConnectionAction<Void,PublisherException>() {
+    protected void writeLogEntryToLDAP(final LDAPEntry newEntry) throws PublisherException {
+        executeLDAPAction(new LDAPConnectionAction<Void,PublisherException>() {
             @Override
             public Void performAction(final LDAPConnection lc) throws LDAPException {
                 // Add the entry
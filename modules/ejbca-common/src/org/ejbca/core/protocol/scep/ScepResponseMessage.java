@@ -51,6 +51,7 @@ import org.bouncycastle.cms.jcajce.JceCMSContentEncryptorBuilder;
 import org.bouncycastle.cms.jcajce.JceKeyTransRecipientInfoGenerator;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
 import org.bouncycastle.operator.ContentSigner;
+import org.bouncycastle.operator.DigestCalculatorProvider;
 import org.bouncycastle.operator.OperatorCreationException;
 import org.bouncycastle.operator.jcajce.JcaContentSignerBuilder;
 import org.bouncycastle.operator.jcajce.JcaDigestCalculatorProviderBuilder;
@@ -84,6 +85,9 @@ public class ScepResponseMessage implements CertificateResponseMessage {
 
     private static Logger log = Logger.getLogger(ScepResponseMessage.class);
 
+    /** The provider creates a new digest calculator for each use, so it can be shared by all response messages instead of being built for each response */
+    private static final DigestCalculatorProvider digestCalculatorProvider = createDigestCalculatorProvider();
+
     /** The encoded response message */
     private byte[] responseMessage = null;
 
@@ -295,10 +299,11 @@ public class ScepResponseMessage implements CertificateResponseMessage {
                 try {
                     JceCMSContentEncryptorBuilder jceCMSContentEncryptorBuilder = new JceCMSContentEncryptorBuilder(SMIMECapability.dES_CBC).setProvider(BouncyCastleProvider.PROVIDER_NAME);
                     CMSEnvelopedData ed = edGen.generate(new CMSProcessableByteArray(s.getEncoded()), jceCMSContentEncryptorBuilder.build());
+                    final byte[] encodedEnvelopedData = ed.getEncoded();
                     if (log.isDebugEnabled()) {
-                        log.debug("Enveloped data is " + ed.getEncoded().length + " bytes long");
+                        log.debug("Enveloped data is " + encodedEnvelopedData.length + " bytes long");
                     }
-                    msg = new CMSProcessableByteArray(ed.getEncoded());
+                    msg = new CMSProcessableByteArray(encodedEnvelopedData);
                 } catch (IOException e) {
                     throw new IllegalStateException("Unexpected IOException caught", e);
                 }
@@ -370,8 +375,7 @@ public class ScepResponseMessage implements CertificateResponseMessage {
             String signatureAlgorithmName = AlgorithmTools.getAlgorithmNameFromDigestAndKey(digestAlg, signKey.getAlgorithm());
             try {
                 ContentSigner contentSigner = new JcaContentSignerBuilder(signatureAlgorithmName).setProvider(provider).build(signKey);
-                JcaDigestCalculatorProviderBuilder calculatorProviderBuilder = new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME);
-                JcaSignerInfoGeneratorBuilder builder = new JcaSignerInfoGeneratorBuilder(calculatorProviderBuilder.build());
+                JcaSignerInfoGeneratorBuilder builder = new JcaSignerInfoGeneratorBuilder(digestCalculatorProvider);
                 builder.setSignedAttributeGenerator(new DefaultSignedAttributeTableGenerator(new AttributeTable(attributes)));
                 gen1.addSignerInfoGenerator(builder.build(contentSigner, (X509Certificate) cacert));
             } catch (OperatorCreationException e) {
@@ -394,6 +398,14 @@ public class ScepResponseMessage implements CertificateResponseMessage {
         return ret;
     }
 
+    private static DigestCalculatorProvider createDigestCalculatorProvider() {
+        try {
+            return new JcaDigestCalculatorProviderBuilder().setProvider(BouncyCastleProvider.PROVIDER_NAME).build();
+        } catch (OperatorCreationException e) {
+            throw new IllegalStateException("BouncyCastle failed in creating digest calculator provider.", e);
+        }
+    }
+
     @Override
     public boolean requireSignKeyInfo() {
         return true;
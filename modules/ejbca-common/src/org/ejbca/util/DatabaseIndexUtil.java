@@ -17,6 +17,7 @@ import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -126,6 +127,39 @@ public abstract class DatabaseIndexUtil {
         return null;
     }
 
+    /**
+     * Creates an index over the specified columns. Must be called outside of any transaction, since some databases commit implicitly
+     * after DDL statements.
+     * 
+     * @param dataSource the data source to get a connection from
+     * @param indexName the name of the new index
+     * @param tableName the table to create the index on
+     * @param columnNames the columns of the index in order
+     * @param unique true if a unique index should be created
+     * @throws SQLException if the index could not be created, for example because it already exists or the database user lacks the privilege
+     */
+    public static void createIndex(final DataSource dataSource, final String indexName, final String tableName, final List<String> columnNames,
+            final boolean unique) throws SQLException {
+        final StringBuilder sql = new StringBuilder("CREATE ");
+        if (unique) {
+            sql.append("UNIQUE ");
+        }
+        sql.append("INDEX ").append(indexName).append(" ON ").append(tableName).append(" (");
+        for (int i = 0; i < columnNames.size(); i++) {
+            if (i > 0) {
+                sql.append(", ");
+            }
+            sql.append(columnNames.get(i));
+        }
+        sql.append(')');
+        if (log.isDebugEnabled()) {
+            log.debug("Creating index: " + sql);
+        }
+        try (final Connection connection = dataSource.getConnection(); final Statement statement = connection.createStatement();) {
+            statement.executeUpdate(sql.toString());
+        }
+    }
+
     /** @return a list of representations of each database index present for a table */
     public static List<DatabaseIndex> getDatabaseIndexFromTable(final DataSource dataSource, final String tableName, final boolean requireUnique) throws SQLException {
         final List<DatabaseIndex> ret = new ArrayList<>();
@@ -373,8 +373,8 @@ public class BCrypt {
 	};
 
 	// Expanded Blowfish key
-	private int bfP[];
-	private int bfS[];
+	private final int bfP[] = new int[P_ORIG.length];
+	private final int bfS[] = new int[S_ORIG.length];
 
 	/**
 	 * Encode a byte array using bcrypt's slightly-modified base64
@@ -443,11 +443,10 @@ public class BCrypt {
 	 */
 	private static byte[] decodeBase64(final String s, final int maxolen)
 		throws IllegalArgumentException {
-		final StringBuilder rs = new StringBuilder();
+		final byte rs[] = new byte[maxolen];
 		int off = 0;
 		final int slen = s.length();
 		int olen = 0;
-		byte ret[];
 		byte c1, c2, c3, c4, o;
 
 		if (maxolen <= 0) {
@@ -461,7 +460,7 @@ public class BCrypt {
 			}
 			o = (byte)(c1 << 2);
 			o |= (c2 & 0x30) >> 4;
-			rs.append((char)o);
+			rs[olen] = o;
 			if (++olen >= maxolen || off >= slen) {
 				break;
 			}
@@ -471,106 +470,103 @@ public class BCrypt {
 			}
 			o = (byte)((c2 & 0x0f) << 4);
 			o |= (c3 & 0x3c) >> 2;
-			rs.append((char)o);
+			rs[olen] = o;
 			if (++olen >= maxolen || off >= slen) {
 				break;
 			}
 			c4 = char64(s.charAt(off++));
 			o = (byte)((c3 & 0x03) << 6);
 			o |= c4;
-			rs.append((char)o);
+			rs[olen] = o;
 			++olen;
 		}
-
-		ret = new byte[olen];
-		for (off = 0; off < olen; off++) {
-			ret[off] = (byte)rs.charAt(off);
+		if (olen == maxolen) {
+			return rs;
 		}
+		final byte ret[] = new byte[olen];
+		System.arraycopy(rs, 0, ret, 0, olen);
 		return ret;
 	}
 
 	/**
 	 * Blowfish encipher a single 64-bit block encoded as
-	 * two 32-bit halves
-	 * @param lr	an array containing the two 32-bit half blocks
-	 * @param off	the position in the array of the blocks
+	 * two 32-bit halves. The halves are passed and returned in
+	 * local variables, so that the key schedule loops do not
+	 * have to go through an array for every block.
+	 * @param p	the P-array of the expanded key
+	 * @param s	the S-boxes of the expanded key
+	 * @param l	the left half block
+	 * @param r	the right half block
+	 * @return	the enciphered block, with the left half in the
+	 * upper 32 bits and the right half in the lower 32 bits
 	 */
-	private final void encipher(final int lr[], final int off) {
-		int i, n, l = lr[off], r = lr[off + 1];
-
-		l ^= bfP[0];
-		for (i = 0; i <= BLOWFISH_NUM_ROUNDS - 2;) {
+	private static long encipher(final int p[], final int s[], int l, int r) {
+		l ^= p[0];
+		for (int i = 1; i < BLOWFISH_NUM_ROUNDS; i += 2) {
 			// Feistel substitution on left word
-			n = bfS[(l >> 24) & 0xff];
-			n += bfS[0x100 | ((l >> 16) & 0xff)];
-			n ^= bfS[0x200 | ((l >> 8) & 0xff)];
-			n += bfS[0x300 | (l & 0xff)];
-			r ^= n ^ bfP[++i];
-
+			r ^= (((s[l >>> 24] + s[0x100 | ((l >> 16) & 0xff)]) ^ s[0x200 | ((l >> 8) & 0xff)]) + s[0x300 | (l & 0xff)]) ^ p[i];
 			// Feistel substitution on right word
-			n = bfS[(r >> 24) & 0xff];
-			n += bfS[0x100 | ((r >> 16) & 0xff)];
-			n ^= bfS[0x200 | ((r >> 8) & 0xff)];
-			n += bfS[0x300 | (r & 0xff)];
-			l ^= n ^ bfP[++i];
+			l ^= (((s[r >>> 24] + s[0x100 | ((r >> 16) & 0xff)]) ^ s[0x200 | ((r >> 8) & 0xff)]) + s[0x300 | (r & 0xff)]) ^ p[i + 1];
 		}
-		lr[off] = r ^ bfP[BLOWFISH_NUM_ROUNDS + 1];
-		lr[off + 1] = l;
+		r ^= p[BLOWFISH_NUM_ROUNDS + 1];
+		return ((long)r << 32) | (l & 0xffffffffL);
 	}
 
 	/**
-	 * Cycically extract a word of key material
-	 * @param data	the string to extract the data from
-	 * @param offp	a "pointer" (as a one-entry array) to the
-	 * current offset into data
-	 * @return	the next word of material from data
+	 * Cycically extract the words of key material for the whole
+	 * P-array. Every keying of the cipher starts from the beginning
+	 * of the key, so this only has to be done once per key.
+	 * @param data	the bytes to extract the words from
+	 * @return	one word of material from data for each
+	 * entry in the P-array
 	 */
-	private static int streamtoword(final byte data[], final int offp[]) {
-		int i;
-		int word = 0;
-		int off = offp[0];
-
-		for (i = 0; i < 4; i++) {
-			word = (word << 8) | (data[off] & 0xff);
-			off = (off + 1) % data.length;
+	private static int[] streamtowords(final byte data[]) {
+		final int words[] = new int[BLOWFISH_NUM_ROUNDS + 2];
+		int off = 0;
+		for (int i = 0; i < words.length; i++) {
+			int word = 0;
+			for (int j = 0; j < 4; j++) {
+				word = (word << 8) | (data[off] & 0xff);
+				if (++off == data.length) {
+					off = 0;
+				}
+			}
+			words[i] = word;
 		}
-
-		offp[0] = off;
-		return word;
+		return words;
 	}
 
 	/**
 	 * Initialise the Blowfish key schedule
 	 */
 	private void initKey() {
-		bfP = (int[])P_ORIG.clone();
-		bfS = (int[])S_ORIG.clone();
+		System.arraycopy(P_ORIG, 0, bfP, 0, P_ORIG.length);
+		System.arraycopy(S_ORIG, 0, bfS, 0, S_ORIG.length);
 	}
 
 	/**
 	 * Key the Blowfish cipher
-	 * @param key	an array containing the key
+	 * @param keyWords	the words of the key, as returned
+	 * by streamtowords
 	 */
-	private void key(final byte key[]) {
+	private void key(final int keyWords[]) {
+		final int p[] = bfP;
+		final int s[] = bfS;
 		int i;
-		final int koffp[] = { 0 };
-		final int lr[] = { 0, 0 };
-		final int plen = bfP.length;
-		final int slen = bfS.length;
+		long lr = 0;
 
-		for (i = 0; i < plen; i++) {
-			bfP[i] = bfP[i] ^ streamtoword(key, koffp);
+		for (i = 0; i < p.length; i++) {
+			p[i] ^= keyWords[i];
 		}
-		for (i = 0; i < plen; i += 2) {
-			encipher(lr, 0);
-			bfP[i] = lr[0];
-			bfP[i + 1] = lr[1];
+		for (i = 0; i < p.length; i += 2) {
+			lr = encipher(p, s, (int)(lr >>> 32), (int)lr);
+			p[i] = (int)(lr >>> 32);
+			p[i + 1] = (int)lr;
 		}
-
-		for (i = 0; i < slen; i += 2) {
-			encipher(lr, 0);
-			bfS[i] = lr[0];
-			bfS[i + 1] = lr[1];
+		for (i = 0; i < s.length; i += 2) {
+			lr = encipher(p, s, (int)(lr >>> 32), (int)lr);
+			s[i] = (int)(lr >>> 32);
+			s[i + 1] = (int)lr;
 		}
 	}
 
@@ -578,34 +574,32 @@ public class BCrypt {
 	 * Perform the "enhanced key schedule" step described by
 	 * Provos and Mazieres in "A Future-Adaptable Password Scheme"
 	 * http://www.openbsd.org/papers/bcrypt-paper.ps
-	 * @param data	salt information
-	 * @param key	password information
+	 * @param dataWords	salt information, as returned by streamtowords
+	 * for a salt of BCRYPT_SALT_LEN bytes
+	 * @param keyWords	password information, as returned by streamtowords
 	 */
-	private void ekskey(final byte data[], final byte key[]) {
+	private void ekskey(final int dataWords[], final int keyWords[]) {
+		final int p[] = bfP;
+		final int s[] = bfS;
 		int i;
-		final int koffp[] = { 0 };
-		final int doffp[] = { 0 };
-		int lr[] = { 0, 0 };
-		final int plen = bfP.length;
-		final int slen = bfS.length;
-
-		for (i = 0; i < plen; i++) {
-			bfP[i] = bfP[i] ^ streamtoword(key, koffp);
+		// The salt is four words long, so the data stream alternates between the first and the second pair of words
+		int doff = 0;
+		long lr = 0;
+
+		for (i = 0; i < p.length; i++) {
+			p[i] ^= keyWords[i];
 		}
-		for (i = 0; i < plen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
-			encipher(lr, 0);
-			bfP[i] = lr[0];
-			bfP[i + 1] = lr[1];
+		for (i = 0; i < p.length; i += 2) {
+			lr = encipher(p, s, (int)(lr >>> 32) ^ dataWords[doff], (int)lr ^ dataWords[doff + 1]);
+			doff ^= 2;
+			p[i] = (int)(lr >>> 32);
+			p[i + 1] = (int)lr;
 		}
-
-		for (i = 0; i < slen; i += 2) {
-			lr[0] ^= streamtoword(data, doffp);
-			lr[1] ^= streamtoword(data, doffp);
-			encipher(lr, 0);
-			bfS[i] = lr[0];
-			bfS[i + 1] = lr[1];
+		for (i = 0; i < s.length; i += 2) {
+			lr = encipher(p, s, (int)(lr >>> 32) ^ dataWords[doff], (int)lr ^ dataWords[doff + 1]);
+			doff ^= 2;
+			s[i] = (int)(lr >>> 32);
+			s[i + 1] = (int)lr;
 		}
 	}
 
@@ -632,16 +626,20 @@ public class BCrypt {
 		if (salt.length != BCRYPT_SALT_LEN) {
 			throw new IllegalArgumentException ("Bad salt length");
 		}
+		final int passwordWords[] = streamtowords(password);
+		final int saltWords[] = streamtowords(salt);
 		initKey();
-		ekskey(salt, password);
+		ekskey(saltWords, passwordWords);
 		for (i = 0; i < rounds; i++) {
-			key(password);
-			key(salt);
+			key(passwordWords);
+			key(saltWords);
 		}
 
 		for (i = 0; i < 64; i++) {
-			for (j = 0; j < (clen >> 1); j++) {
-				encipher(cdata, j << 1);
+			for (j = 0; j < clen; j += 2) {
+				final long lr = encipher(bfP, bfS, cdata[j], cdata[j + 1]);
+				cdata[j] = (int)(lr >>> 32);
+				cdata[j + 1] = (int)lr;
 			}
 		}
 
@@ -765,6 +763,12 @@ public class BCrypt {
 	 * @return	true if the passwords match, false otherwise
 	 */
 	public static boolean checkpw(final String plaintext, final String hashed) {
-		return (hashed.compareTo(hashpw(plaintext, hashed)) == 0);
+		final String computed = hashpw(plaintext, hashed);
+		// Compare in constant time, to not leak how much of the hash that matched
+		int diff = hashed.length() ^ computed.length();
+		for (int i = 0; i < Math.min(hashed.length(), computed.length()); i++) {
+			diff |= hashed.charAt(i) ^ computed.charAt(i);
+		}
+		return diff == 0;
 	}
 }
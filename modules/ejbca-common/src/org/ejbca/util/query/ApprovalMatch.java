@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.ejbca.util.query;
 
+import java.util.Map;
+
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -88,6 +90,27 @@ public class ApprovalMatch extends BasicMatch {
         return returnval;
     }
 
+    @Override
+    public String getParameterizedQueryString(final Map<String, Object> parameters) {
+        String returnval = "";
+        if (matchtype == BasicMatch.MATCH_TYPE_EQUALS) {
+            final Object value = isNumberMatch() ? Integer.valueOf(matchvalue.trim()) : matchvalue.trim();
+            returnval = MATCH_WITH_SQLNAMES[matchwith] + " = " + addParameter(parameters, value);
+        } else if (isNumberMatch()) {
+            // A LIKE parameter can not be bound to a number column, and the value is a number already validated by the constructor
+            returnval = getQueryString();
+        } else if (matchtype == BasicMatch.MATCH_TYPE_BEGINSWITH) {
+            returnval = MATCH_WITH_SQLNAMES[matchwith] + " LIKE " + addParameter(parameters, matchvalue + "%");
+        } else if (matchtype == BasicMatch.MATCH_TYPE_CONTAINS) {
+            returnval = MATCH_WITH_SQLNAMES[matchwith] + " LIKE " + addParameter(parameters, "%" + matchvalue + "%");
+        }
+        return returnval;
+    }
+
+    private boolean isNumberMatch() {
+        return (matchwith >= MATCH_WITH_UNIQUEID && matchwith <= MATCH_WITH_CAID) || (matchwith == MATCH_WITH_STATUS) || (matchwith == MATCH_WITH_REMAININGAPPROVALS);
+    }
+
     @Override
     public boolean isLegalQuery() {
         return StringUtils.isNotBlank(matchvalue);
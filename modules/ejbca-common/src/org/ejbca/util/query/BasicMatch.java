@@ -13,6 +13,7 @@
 package org.ejbca.util.query;
 
 import java.io.Serializable;
+import java.util.Map;
 
 import org.apache.commons.lang.StringEscapeUtils;
 
@@ -36,6 +37,15 @@ public abstract class BasicMatch implements Serializable {
     /** @return a SQL statement fragment from the given data (with escaped single quotes). */
     public abstract String getQueryString();
 
+    /**
+     * Gives the same condition as {@link #getQueryString()}, but with the match values as named query parameters instead of literals, so the
+     * database and the JPA provider can reuse the parsed statement for queries with different values.
+     *
+     * @param parameters the parameters of the query so far, that the parameters of this match are added to.
+     * @return a SQL statement fragment with named parameters.
+     */
+    public abstract String getParameterizedQueryString(Map<String, Object> parameters);
+
     /** @return true if query is legal, false otherwise */
     public abstract boolean isLegalQuery();
 
@@ -43,4 +53,15 @@ public abstract class BasicMatch implements Serializable {
     public String escapeSql(final String matchValue) {
         return StringEscapeUtils.escapeSql(matchValue);
     }
+
+    /**
+     * Adds a value to the parameters of a query.
+     *
+     * @return the parameter reference, to be used in the query string.
+     */
+    protected static String addParameter(final Map<String, Object> parameters, final Object value) {
+        final String name = "p" + parameters.size();
+        parameters.put(name, value);
+        return ":" + name;
+    }
 }
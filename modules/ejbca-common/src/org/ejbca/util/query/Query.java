@@ -14,8 +14,10 @@ package org.ejbca.util.query;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 import org.cesecore.util.StringTools;
@@ -24,7 +26,7 @@ import org.cesecore.util.StringTools;
  * A class used to produce advanced queries from the user data and approval tables.
  * 
  * It's main function is getQueryString which returns a string which should be placed in the 'WHERE' clause of a SQL
- * statement.
+ * statement. getParameterizedQueryString returns the same condition with named parameters instead of literal values.
  *
  * @version $Id$
  */
@@ -46,6 +48,15 @@ public class Query implements Serializable {
 
     static final String[] CONNECTOR_SQL_NAMES = { " AND ", " OR ", " AND NOT ", " OR NOT " };
 
+    /** The maximum number of values in an IN list parameter. Oracle allows at most 1000 expressions in a list. */
+    public static final int MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * The maximum number of values that are bound as parameters in one statement. JPA providers bind every value of a list parameter
+     * separately, and SQL Server allows at most 2100 parameters in a statement.
+     */
+    public static final int MAX_BOUND_VALUES = 2000;
+
     private final List<BasicMatch> matches = new ArrayList<>();
     private final List<Integer> connectors = new ArrayList<Integer>();
     protected final int type;
@@ -178,6 +189,73 @@ public class Query implements Serializable {
         return returnval;
     }
 
+    /**
+     * Gives the string to be used in the 'WHERE' clause int the SQL-statement, with the match values as named parameters.
+     *
+     * @param parameters the parameters of the query, that the parameters of the matches are added to.
+     * @return the string to be used in the 'WHERE'-clause.
+     */
+    public String getParameterizedQueryString(final Map<String, Object> parameters) {
+        final StringBuilder returnval = new StringBuilder();
+        for (int i = 0; i < (matches.size() - 1); i++) {
+            returnval.append(matches.get(i).getParameterizedQueryString(parameters));
+            returnval.append(CONNECTOR_SQL_NAMES[connectors.get(i).intValue()]);
+        }
+        returnval.append(matches.get(matches.size() - 1).getParameterizedQueryString(parameters));
+        return returnval.toString();
+    }
+
+    /**
+     * Gives a condition that a column has one of the given values, such as the authorized CA ids, with the values as list parameters. Lists
+     * longer than {@link #MAX_IN_LIST_SIZE} are split into several IN conditions. If binding the values would make the statement have more
+     * than {@link #MAX_BOUND_VALUES} bound values, the values are written as literals instead.
+     *
+     * @param column the column to match.
+     * @param values the values to match with.
+     * @param parameters the parameters of the query, that the lists are added to.
+     * @return a condition in parentheses, that is never true if there are no values.
+     */
+    public static String getInCondition(final String column, final Collection<Integer> values, final Map<String, Object> parameters) {
+        if (values.isEmpty()) {
+            return "(0=1)";
+        }
+        final boolean bind = getBoundValueCount(parameters) + values.size() <= MAX_BOUND_VALUES;
+        if (!bind && log.isDebugEnabled()) {
+            log.debug("Writing " + values.size() + " values for " + column + " as literals, since the statement would have more than "
+                    + MAX_BOUND_VALUES + " bound values.");
+        }
+        final List<Integer> valueList = new ArrayList<>(values);
+        final StringBuilder returnval = new StringBuilder("(");
+        for (int i = 0; i < valueList.size(); i += MAX_IN_LIST_SIZE) {
+            if (i > 0) {
+                returnval.append(" OR ");
+            }
+            final List<Integer> chunk = new ArrayList<>(valueList.subList(i, Math.min(i + MAX_IN_LIST_SIZE, valueList.size())));
+            returnval.append(column).append(" IN (");
+            if (bind) {
+                returnval.append(BasicMatch.addParameter(parameters, chunk));
+            } else {
+                for (int j = 0; j < chunk.size(); j++) {
+                    if (j > 0) {
+                        returnval.append(',');
+                    }
+                    returnval.append(chunk.get(j).intValue());
+                }
+            }
+            returnval.append(')');
+        }
+        return returnval.append(')').toString();
+    }
+
+    /** @return the number of values the parameters are bound as, where every value of a list parameter is bound separately */
+    private static int getBoundValueCount(final Map<String, Object> parameters) {
+        int count = 0;
+        for (final Object value : parameters.values()) {
+            count += value instanceof Collection ? ((Collection<?>) value).size() : 1;
+        }
+        return count;
+    }
+
     /**
      * Checks if the present query is legal by checking if every match is legal and that the number
      * of connectors is one less than matches.
@@ -13,6 +13,7 @@
 package org.ejbca.util.query;
 
 import java.util.Date;
+import java.util.Map;
 
 import org.apache.log4j.Logger;
 
@@ -97,6 +98,23 @@ public class TimeMatch extends BasicMatch {
         return returnval;
     }
 
+    @Override
+    public String getParameterizedQueryString(final Map<String, Object> parameters) {
+        final String column = MATCH_WITH_SQLNAMES[(type * 2) + matchwith];
+        String returnval = "( ";
+        if (startdate != null) {
+            returnval += column + " >= " + addParameter(parameters, Long.valueOf(startdate.getTime())) + " ";
+            if (enddate != null) {
+                returnval += " AND ";
+            }
+        }
+        if (enddate != null) {
+            returnval += column + " <= " + addParameter(parameters, Long.valueOf(enddate.getTime())) + " ";
+        }
+        returnval += " )";
+        return returnval;
+    }
+
     @Override
     public boolean isLegalQuery() {
         return startdate != null || enddate != null;
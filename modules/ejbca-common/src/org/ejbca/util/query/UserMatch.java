@@ -12,6 +12,8 @@
  *************************************************************************/
 package org.ejbca.util.query;
 
+import java.util.Map;
+
 import org.apache.commons.lang.StringUtils;
 
 /**
@@ -143,11 +145,48 @@ public class UserMatch extends BasicMatch {
         return returnval;
     }
 
+    @Override
+    public String getParameterizedQueryString(final Map<String, Object> parameters) {
+        String returnval = "";
+        if (isSubjectDNMatch()) {
+            // Ignore MATCH_TYPE_EQUALS.
+            returnval = MATCH_WITH_SUBJECTDN + " LIKE " + addParameter(parameters, "%" + MATCH_WITH_SUBJECTDN_NAMES[matchwith - 100] + matchvalue + "%");
+        } else if (isSubjectAltNameMatch()) {
+            returnval = MATCH_WITH_SUBJECTALTNAME + " LIKE " + addParameter(parameters, "%" + MATCH_WITH_SUBJECTALTNAME_NAMES[matchwith - 200] + matchvalue + "%");
+        } else if (matchwith == MATCH_WITH_DN || matchwith == MATCH_WITH_USERNAME) {
+            final String column = matchwith == MATCH_WITH_DN ? MATCH_WITH_SUBJECTDN : MATCH_WITH_USERNAMESTRING;
+            if (matchtype == BasicMatch.MATCH_TYPE_EQUALS) {
+                returnval = column + " = " + addParameter(parameters, matchvalue.trim());
+            } else if (matchtype == BasicMatch.MATCH_TYPE_BEGINSWITH) {
+                returnval = column + " LIKE " + addParameter(parameters, matchvalue + "%");
+            } else if (matchtype == BasicMatch.MATCH_TYPE_CONTAINS) {
+                returnval = column + " LIKE " + addParameter(parameters, "%" + matchvalue + "%");
+            }
+        } else if (isNumberMatch()) {
+            if (matchtype == BasicMatch.MATCH_TYPE_EQUALS) {
+                returnval = MATCH_WITH_SQLNAMES[matchwith] + " = " + addParameter(parameters, Integer.valueOf(matchvalue.trim()));
+            } else {
+                // A LIKE parameter can not be bound to a number column, and the value is a number already validated by the constructor
+                returnval = getQueryString();
+            }
+        } else if (matchtype == BasicMatch.MATCH_TYPE_EQUALS) {
+            returnval = MATCH_WITH_SQLNAMES[matchwith] + " = " + addParameter(parameters, matchvalue.trim());
+        } else if (matchtype == BasicMatch.MATCH_TYPE_BEGINSWITH) {
+            returnval = MATCH_WITH_SQLNAMES[matchwith] + " LIKE " + addParameter(parameters, matchvalue + "%");
+        }
+        return returnval;
+    }
+
     @Override
     public boolean isLegalQuery() {
         return StringUtils.isNotBlank(matchvalue);
     }
 
+    private boolean isNumberMatch() {
+        return matchwith == MATCH_WITH_STATUS || matchwith == MATCH_WITH_CA || matchwith == MATCH_WITH_CERTIFICATEPROFILE ||
+                matchwith == MATCH_WITH_ENDENTITYPROFILE || matchwith == MATCH_WITH_TOKEN;
+    }
+
     private boolean isSubjectDNMatch() {
         return this.matchwith >= 100 && this.matchwith < 200;
     }
@@ -27,6 +27,14 @@ import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.log4j.Logger;
 import org.cesecore.certificates.ca.CaSessionRemote;
@@ -455,6 +463,51 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
         return ret;
     }
 
+    /**
+     * Generates keys and keystore for an end entity and sets the status to FAILED (or KEYRECOVERY) if this fails.
+     * 
+     * @param data
+     *            user data for user
+     * @param status
+     *            the status that the end entity was selected with
+     * @return true if a keystore was generated, false if the token type is not supported
+     * @throws IllegalKeyException
+     *             if the end entity failed because of the key configuration. This has already been logged.
+     * @throws Exception
+     *             if something else goes wrong...
+     */
+    private boolean doCreateKeysOrSetStatus(EndEntityInformation data, int status) throws Exception {
+        try {
+            return doCreateKeys(data, status);
+        } catch (Exception e) {
+            // If things went wrong set status to FAILED
+            log.debug(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", "FAILED"), e);
+            final String newStatusString;
+            if (status == EndEntityConstants.STATUS_KEYRECOVERY) {
+                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
+                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_KEYRECOVERY);
+                newStatusString = "KEYRECOVERY";
+            } else {
+                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
+                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_FAILED);
+                newStatusString = "FAILED";
+            }
+            if (e instanceof IllegalKeyException) {
+                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
+                        data.getUsername());
+                log.error(errMsg + " " + e.getMessage());
+                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString));
+                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorcheckconfig"));
+                throw e;
+            } else {
+                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString), e);
+                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
+                        data.getUsername());
+                throw new Exception(errMsg, e);
+            }
+        }
+    }
+
     /**
      * Creates keystore-files for all users with status NEW in the local
      * database.
@@ -513,7 +566,7 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
      * @throws Exception
      *             if something goes wrong...
      */
-    private void createAllWithStatus(int status) throws Exception {
+    private void createAllWithStatus(final int status) throws Exception {
         if (log.isTraceEnabled()) {
             log.trace(">createAllWithStatus: " + status);
         }
@@ -545,48 +598,61 @@ public class BatchMakeP12Command extends EjbcaCliUserCommandBase {
                 }
                 String failedusers = "";
                 String successusers = "";
-                for (EndEntityInformation data : result) {
-                    if ((data.getPassword() != null) && (data.getPassword().length() > 0)) {
+                // Generate keys and keystores for several end entities in parallel. The results are processed in the original order.
+                final List<EndEntityInformation> submitted = new ArrayList<EndEntityInformation>();
+                final List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+                // Load the lazily initialized settings before they are used from several threads
+                getUseKeyRecovery();
+                final ExecutorService executorService = Executors.newFixedThreadPool(Math.min(getProps().getThreads(), result.size()));
+                try {
+                    for (final EndEntityInformation data : result) {
+                        if ((data.getPassword() != null) && (data.getPassword().length() > 0)) {
+                            submitted.add(data);
+                            futures.add(executorService.submit(new Callable<Boolean>() {
+                                @Override
+                                public Boolean call() throws Exception {
+                                    return doCreateKeysOrSetStatus(data, status);
+                                }
+                            }));
+                        } else {
+                            iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.infonoclearpwd", data.getUsername());
+                            log.info(iMsg);
+                        }
+                    }
+                    Exception firstError = null;
+                    for (int i = 0; i < futures.size(); i++) {
+                        final String username = submitted.get(i).getUsername();
                         try {
-                            if (doCreateKeys(data, status)) {
-                                successusers += (":" + data.getUsername());
+                            if (futures.get(i).get()) {
+                                successusers += (":" + username);
                                 successcount++;
                             }
-                        } catch (Exception e) {
-                            // If things went wrong set status to FAILED
-                            log.debug(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", "FAILED"), e);
-                            failedusers += (":" + data.getUsername());
+                        } catch (CancellationException e) {
+                            // Not processed since an earlier end entity failed
+                        } catch (ExecutionException e) {
+                            failedusers += (":" + username);
                             failcount++;
-                            final String newStatusString;
-                            if (status == EndEntityConstants.STATUS_KEYRECOVERY) {
-                                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
-                                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_KEYRECOVERY);
-                                newStatusString = "KEYRECOVERY";
-                            } else {
-                                EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityManagementSessionRemote.class).setUserStatus(
-                                        getAuthenticationToken(), data.getUsername(), EndEntityConstants.STATUS_FAILED);
-                                newStatusString = "FAILED";
+                            if (e.getCause() instanceof IllegalKeyException) {
+                                // Already logged, continue with the next end entity
+                                continue;
                             }
-                            if (e instanceof IllegalKeyException) {
-                                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
-                                        data.getUsername());
-                                log.error(errMsg + " " + e.getMessage());
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString));
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorcheckconfig"));
-                            } else {
-                                log.error(InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorsetstatus", newStatusString), e);
-                                final String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfaileduser",
-                                        data.getUsername());
-                                throw new Exception(errMsg, e);
+                            if (firstError == null) {
+                                firstError = e.getCause() instanceof Exception ? (Exception) e.getCause() : new Exception(e.getCause());
+                                // Like when generating sequentially, don't start on any more end entities after an unexpected error
+                                for (final Future<Boolean> future : futures) {
+                                    future.cancel(false);
+                                }
                             }
-
                         }
-                    } else {
-                        iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.infonoclearpwd", data.getUsername());
-                        log.info(iMsg);
                     }
+                    if (firstError != null) {
+                        throw firstError;
+                    }
+                } finally {
+                    // Let end entities that are already being processed finish before returning
+                    executorService.shutdown();
+                    executorService.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
                 }
-
                 if (failedusers.length() > 0) {
                     String errMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("batch.errorbatchfailed", Integer.valueOf(failcount),
                             Integer.valueOf(successcount), failedusers);
@@ -30,6 +30,7 @@ public class BatchToolProperties {
 
 	private static final String PROPERTY_KEYSPEC          = "keys.spec";
 	private static final String PROPERTY_KEYALG           = "keys.alg";
+	private static final String PROPERTY_THREADS          = "threads";
 
 
 	Properties batchToolProperties = new Properties();
@@ -58,6 +59,20 @@ public class BatchToolProperties {
 		return batchToolProperties.getProperty(PROPERTY_KEYALG,"RSA");
 	}
 
+	/**
+	 * Returns the number of end entities to generate keystores for in parallel
+	 * Default is the number of available processors
+	 */
+	public int getThreads(){
+		final int defaultThreads = Runtime.getRuntime().availableProcessors();
+		try {
+			return Math.max(1, Integer.parseInt(batchToolProperties.getProperty(PROPERTY_THREADS, String.valueOf(defaultThreads)).trim()));
+		} catch (NumberFormatException e) {
+			log.warn("Invalid value for '" + PROPERTY_THREADS + "' in batchtool.properties, using " + defaultThreads + ".");
+			return defaultThreads;
+		}
+	}
+
 
 	private boolean tryLoadFile(String filename) throws IOException {
 		File file = new File(filename);
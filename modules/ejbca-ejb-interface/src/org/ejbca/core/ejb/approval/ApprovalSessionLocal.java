@@ -22,6 +22,7 @@ import javax.ejb.Local;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.ejbca.core.model.approval.Approval;
 import org.ejbca.core.model.approval.ApprovalDataVO;
+import org.ejbca.core.model.approval.ApprovalNotificationMail;
 import org.ejbca.core.model.approval.ApprovalRequest;
 import org.ejbca.core.model.approval.profile.ApprovalProfile;
 import org.ejbca.util.query.IllegalQueryException;
@@ -37,6 +38,7 @@ public interface ApprovalSessionLocal extends ApprovalSession {
 
     /**
      * Send all work-flow related approval notifications given the last added Approval to the approvalsPerformed.
+     * The mails are sent asynchronously by {@link #sendApprovalNotificationMails(List)}.
      * 
      * @param approvalRequest the approval request
      * @param approvalProfile the profile determining the approval work flow
@@ -46,6 +48,13 @@ public interface ApprovalSessionLocal extends ApprovalSession {
     void sendApprovalNotifications(ApprovalRequest approvalRequest, ApprovalProfile approvalProfile,
             ApprovalData approvalData, boolean expired);
 
+    /**
+     * Sends approval notification mails asynchronously, in one batch over a pool of connections to the mail server. Failures are logged.
+     * 
+     * @param mails the notification mails created by {@link #sendApprovalNotifications(ApprovalRequest, ApprovalProfile, ApprovalData, boolean)}
+     */
+    void sendApprovalNotificationMails(List<ApprovalNotificationMail> mails);
+
 	/**
 	 * Encode a Collection of Approval and set it in ApprovalData object.
 	 * @param approvals cannot be null.
@@ -55,12 +64,14 @@ public interface ApprovalSessionLocal extends ApprovalSession {
 	ApprovalData findNonExpiredApprovalDataLocal(int approvalId);
 	
 	/**
-	 * Returns a list of all approval requests whose status is WAITING_FOR_APPROVAL only (aka. not including status APPROVED).
+	 * Returns a chunk of the approval requests whose status is WAITING_FOR_APPROVAL only (aka. not including status APPROVED), ordered by ID.
 	 * This method is called mainly when upgrading older approval requests to EJBCA 6.6.0 or later.
 	 * 
-	 * @return A list of all approval requests whose status is WAITING_FOR_APPROVAL
+	 * @param afterId the ID of the last request of the previous chunk, or Integer.MIN_VALUE to start from the first request
+	 * @param maxResults the maximum number of requests to return
+	 * @return A list of the approval requests whose status is WAITING_FOR_APPROVAL and whose ID is greater than afterId
 	 */
-	List<ApprovalData> findWaitingForApprovalApprovalDataLocal();
+	List<ApprovalData> findWaitingForApprovalApprovalDataLocal(int afterId, int maxResults);
 	
     /**
      * Method that takes an approvalId (hash) and returns the request's ID (the value in the "Id" column in the "ApprovalData" table in the database)
@@ -106,6 +117,22 @@ public interface ApprovalSessionLocal extends ApprovalSession {
       */
      List<ApprovalDataVO> query(final Query query, int index, int numberofrows, String caAuthorizationString,
              String endEntityProfileAuthorizationString) throws IllegalQueryException;
+
+     /**
+      * Method returning a list of approvals from the give query, with the authorized CAs and end entity profiles bound as query parameters.
+      * 
+      * @param query should be a Query object containing ApprovalMatch and
+      *            TimeMatch
+      * @param index where the ResultSet should start
+      * @param numberofrows maximum number of rows 
+      * @param caIds the ids of the authorized CAs
+      * @param endEntityProfileIds the ids of the authorized end entity profiles, or null if the approvals should not be restricted by end entity profile
+      * @return a List of ApprovalDataVO, never null
+      * @throws IllegalQueryException
+      * @see org.ejbca.core.model.ra.RAAuthorization#getApprovalEndEntityProfileIds(String)
+      */
+     List<ApprovalDataVO> query(final Query query, int index, int numberofrows, List<Integer> caIds, List<Integer> endEntityProfileIds)
+             throws IllegalQueryException;
      
      /**
       * Returns a list of non-expired approvals with the given statuses.
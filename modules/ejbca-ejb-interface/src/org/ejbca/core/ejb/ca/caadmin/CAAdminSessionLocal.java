@@ -49,6 +49,15 @@ public interface CAAdminSessionLocal extends CAAdminSession {
      */
     String healthCheck();
 
+    /**
+     * Used by health-check. Validate that a single CA is online and optionally performs
+     * a signature test, so that CAs can be checked concurrently.
+     * 
+     * @param caId the CA to check
+     * @return an error message or an empty String if the CA is ok, or is not active or included in health check.
+     */
+    String healthCheck(int caId);
+
     /**
      * Regenerates the CMS certificate for a CA.
      */
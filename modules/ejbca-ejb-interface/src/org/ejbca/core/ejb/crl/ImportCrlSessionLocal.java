@@ -12,9 +12,46 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.io.File;
+import java.security.cert.CRLException;
+import java.util.List;
+
 import javax.ejb.Local;
 
+import org.cesecore.authentication.tokens.AuthenticationToken;
+import org.cesecore.authorization.AuthorizationDeniedException;
+import org.cesecore.certificates.ca.CAInfo;
+import org.cesecore.certificates.crl.CrlImportException;
+import org.cesecore.certificates.crl.CrlStoreException;
+
 @Local
 public interface ImportCrlSessionLocal extends ImportCrlSession {
 
+    /**
+     * Method used to import a CRL to the database if it is newer than any CRL it already has. The CRL is read from the file
+     * while it is processed, so it is suitable for very large CRLs.
+     * 
+     * @param authenticationToken The administrator performing the operation
+     * @param cainfo of the CA that issued the CRL
+     * @param crlFile file containing the DER encoded CRL
+     * @throws CrlImportException If a problem occurs when processing the imported CRL
+     * @throws CrlStoreException If a problem occurs when adding the imported CRL to the database
+     * @throws CRLException If a problem occurs when reading or parsing the CRL
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    void importCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final File crlFile)
+            throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException;
+
+    /**
+     * Updates the database with the status of a batch of revoked certificate entries from an imported CRL in a new transaction.
+     * Only used internally by importCrl.
+     * 
+     * @param authenticationToken The administrator performing the operation
+     * @param cainfo of the CA that issued the CRL
+     * @param encodedCrlEntries DER encoded revoked certificate entries that are new since the last imported CRL
+     * @throws CrlImportException If a problem occurs when processing the entries
+     * @throws AuthorizationDeniedException If the administrator is not authorized to perform the required operations
+     */
+    void importCrlEntries(final AuthenticationToken authenticationToken, final CAInfo cainfo, final List<byte[]> encodedCrlEntries)
+            throws CrlImportException, AuthorizationDeniedException;
 }
@@ -13,6 +13,8 @@
 package org.ejbca.core.ejb.ra;
 
 import java.util.AbstractMap;
+import java.util.Collection;
+import java.util.List;
 
 import javax.ejb.Local;
 
@@ -42,4 +44,23 @@ public interface EndEntityAccessSessionLocal extends EndEntityAccessSession {
      * @throws NotFoundException 
      */
     AbstractMap.SimpleEntry<String, SupportedPasswordHashAlgorithm> getPasswordAndHashAlgorithmForUser(String username) throws NotFoundException;
+
+    /**
+     * Fetches a page of the certificates to notify about expiration, ordered by fingerprint, together with the information about their end entities
+     * that the notifications need. Performs no authorization.
+     * 
+     * @param cas A list of CAs that the sought certificates should be issued from
+     * @param certificateProfiles A list if certificateprofiles to sort from. Will be ignored if left empty.
+     * @param activeNotifiedExpireDateMin The minimal date for expiration notification
+     * @param activeNotifiedExpireDateMax The maxmimal date for expiration notification
+     * @param activeExpireDateMin the current rune timestamp + the threshold
+     * @param afterFingerprint the fingerprint of the last certificate of the previous page, or null for the first page
+     * @param maxResults the maximum number of certificates to return
+     * @return [0] = (String) fingerprint, [1] = (String) serial number in decimal, [2] = (Number) expire date, [3] = (String) certificate subject DN,
+     *         [4] = (String) issuer DN, [5] = (String) username, [6] = (String) end entity subject DN, [7] = (String) end entity email,
+     *         [8] = (String) obfuscated clear text password, [9] = (Number) time created, [10] = (Number) time modified. The end entity values
+     *         are null if the end entity does not exist.
+     */
+    List<Object[]> findExpirationNotificationInfo(Collection<String> cas, Collection<Integer> certificateProfiles, long activeNotifiedExpireDateMin,
+            long activeNotifiedExpireDateMax, long activeExpireDateMin, String afterFingerprint, int maxResults);
 }
@@ -51,9 +51,14 @@ public interface UpgradeSessionLocal  extends UpgradeSession{
     boolean checkColumnExists500();
 
     /** For internal user from UpgradeSessionBean only! */
-    void postMigrateDatabase400SmallTables();
-    /** For internal user from UpgradeSessionBean only! */
-    void postMigrateDatabase400HardTokenData(List<String> subSet);
+    void postMigrateDatabase400GlobalConfiguration();
+    /**
+     * For internal user from UpgradeSessionBean only! Migrates a chunk of rows of a post-upgrade data migration in a new transaction.
+     * @return the number of rows that were migrated
+     */
+    int migrateChunk(String migration, List<String> keys);
+    /** For internal user from UpgradeSessionBean only! Asynchronous version of {@link #migrateChunk(String, List)}. */
+    Future<Integer> migrateChunkAsync(String migration, List<String> keys);
     /** For internal user from UpgradeSessionBean only! */
 	boolean migrateDatabase500(String dbtype);
     /** For internal user from UpgradeSessionBean only! */
@@ -50,6 +50,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
     private long revokedBefore = Long.MAX_VALUE;
     private List<Integer> statuses = new ArrayList<>();
     private List<Integer> revocationReasons = new ArrayList<>();
+    /** Always true when created here, but false when the request is deserialized from an older peer that does not have the field */
+    private boolean certificateInfosSupported = true;
 
     /** Default constructor */
     public RaCertificateSearchRequest() {}
@@ -76,6 +78,7 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
         revokedBefore = request.revokedBefore;
         statuses.addAll(request.statuses);
         revocationReasons.addAll(request.revocationReasons);
+        certificateInfosSupported = request.certificateInfosSupported;
     }
 
     public int getMaxResults() { return maxResults; }
@@ -162,6 +165,8 @@ public class RaCertificateSearchRequest implements Serializable, Comparable<RaCe
     public void setStatuses(final List<Integer> statuses) { this.statuses = statuses; }
     public List<Integer> getRevocationReasons() { return revocationReasons; }
     public void setRevocationReasons(final List<Integer> revocationReasons) { this.revocationReasons = revocationReasons; }
+    /** @return true if the requester accepts only the meta data in {@link RaCertificateSearchResponse#getCertificateInfos()} */
+    public boolean isCertificateInfosSupported() { return certificateInfosSupported; }
 
     @Override
     public int hashCode() {
@@ -19,9 +19,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
 
 /**
- * Response of certificates search from RA UI.
+ * Response of certificates search from RA UI. Only the certificate meta data is returned, the certificate itself can be fetched when it is needed.
+ * 
+ * Older RA peers only know the full certificates in cdws, see {@link RaCertificateSearchRequest#isCertificateInfosSupported()}. Responses from
+ * them are converted to meta data when merged.
  * 
  * @version $Id$
  */
@@ -30,24 +34,40 @@ public class RaCertificateSearchResponse implements Serializable {
     private static final long serialVersionUID = 1L;
 
     private List<CertificateDataWrapper> cdws = new ArrayList<>();
+    /** null when the response comes from an older peer */
+    private List<CertificateInfo> certificateInfos = new ArrayList<>();
     private boolean mightHaveMoreResults = false;
 
+    /** @return the full certificates, only used for requests from older peers */
     public List<CertificateDataWrapper> getCdws() { return cdws; }
     public void setCdws(List<CertificateDataWrapper> cdws) { this.cdws = cdws; }
 
+    public List<CertificateInfo> getCertificateInfos() {
+        if (certificateInfos == null) {
+            certificateInfos = new ArrayList<>();
+        }
+        return certificateInfos;
+    }
+    public void setCertificateInfos(List<CertificateInfo> certificateInfos) { this.certificateInfos = certificateInfos; }
+
     public boolean isMightHaveMoreResults() { return mightHaveMoreResults; }
     public void setMightHaveMoreResults(boolean mightHaveMoreResults) { this.mightHaveMoreResults = mightHaveMoreResults; }
     
     public void merge(final RaCertificateSearchResponse other) {
-        final Map<String,CertificateDataWrapper> cdwMap = new HashMap<>();
-        for (final CertificateDataWrapper cdw : cdws) {
-            cdwMap.put(cdw.getCertificateData().getFingerprint(), cdw);
+        final Map<String,CertificateInfo> certificateInfoMap = new HashMap<>();
+        for (final CertificateInfo certificateInfo : getCertificateInfos()) {
+            certificateInfoMap.put(certificateInfo.getFingerprint(), certificateInfo);
+        }
+        for (final CertificateInfo certificateInfo : other.getCertificateInfos()) {
+            certificateInfoMap.put(certificateInfo.getFingerprint(), certificateInfo);
         }
-        for (final CertificateDataWrapper cdw : other.cdws) {
-            cdwMap.put(cdw.getCertificateData().getFingerprint(), cdw);
+        if (other.cdws != null) {
+            for (final CertificateDataWrapper cdw : other.cdws) {
+                certificateInfoMap.put(cdw.getCertificateData().getFingerprint(), cdw.getCertificateData().toCertificateInfo());
+            }
         }
-        this.cdws.clear();
-        this.cdws.addAll(cdwMap.values());
+        this.certificateInfos.clear();
+        this.certificateInfos.addAll(certificateInfoMap.values());
         if (other.isMightHaveMoreResults()) {
             setMightHaveMoreResults(true);
         }
@@ -0,0 +1,84 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ra;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.interfaces.RSAPublicKey;
+
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of the pre-generated key pair pools.
+ *
+ * @version $Id$
+ */
+public class KeyPairPoolTest {
+
+    private static final long TIMEOUT_MS = 60000L;
+
+    @BeforeClass
+    public static void beforeClass() {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+    }
+
+    @Test
+    public void testPoolIsFilledAndKeyPairsAreOnlyHandedOutOnce() throws Exception {
+        final KeyPairPool keyPairPool = new KeyPairPool(new String[] { "RSA_1024", "invalid" }, 3, 1, 2, 3600000L);
+        try {
+            assertNull("No pool should exist for other key specifications.", keyPairPool.takeKeyPair("RSA", "2048"));
+            assertEquals(-1, keyPairPool.getAvailable("RSA", "2048"));
+            waitForAvailable(keyPairPool, 3);
+            final KeyPair first = keyPairPool.takeKeyPair("RSA", "1024");
+            assertNotNull(first);
+            assertEquals(1024, ((RSAPublicKey) first.getPublic()).getModulus().bitLength());
+            final KeyPair second = keyPairPool.takeKeyPair("RSA", "1024");
+            assertNotSame("A key pair must not be handed out twice.", first, second);
+            // At the low watermark the pool should be refilled
+            waitForAvailable(keyPairPool, 3);
+        } finally {
+            keyPairPool.shutdown();
+        }
+        assertEquals("Shutdown should discard pooled key pairs.", 0, keyPairPool.getAvailable("RSA", "1024"));
+        for (final Thread thread : Thread.getAllStackTraces().keySet()) {
+            assertFalse("Shutdown should stop the key generation threads.", thread.getName().startsWith("KeyPairPool-"));
+        }
+    }
+
+    @Test
+    public void testExpiredKeyPairsAreDiscarded() throws Exception {
+        final KeyPairPool keyPairPool = new KeyPairPool(new String[] { "RSA_1024" }, 2, 0, 1, -1L);
+        try {
+            waitForAvailable(keyPairPool, 2);
+            assertNull("Expired key pairs must not be handed out.", keyPairPool.takeKeyPair("RSA", "1024"));
+        } finally {
+            keyPairPool.shutdown();
+        }
+    }
+
+    private void waitForAvailable(final KeyPairPool keyPairPool, final int expected) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        while (keyPairPool.getAvailable("RSA", "1024") < expected && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50L);
+        }
+        assertTrue("Pool was not filled in time.", keyPairPool.getAvailable("RSA", "1024") >= expected);
+    }
+}
@@ -0,0 +1,298 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.upgrade;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test of interrupting and resuming chunked post-upgrade data migrations, against an in-memory table.
+ *
+ * @version $Id$
+ */
+public class PostUpgradeMigrationRunnerTest {
+
+    private static final String MIGRATION = "TESTDATA";
+    private static final int ROWS = 1000;
+    private static final int CHUNK_SIZE = 10;
+    private static final int THREADS = 4;
+
+    private final List<String> table = new ArrayList<>();
+    /** The number of times each row has been migrated by a committed chunk */
+    private final ConcurrentHashMap<String, AtomicInteger> migrations = new ConcurrentHashMap<>();
+    /** The saved upgrade configuration, as it would be stored in the database */
+    private Object savedConfiguration;
+    private ExecutorService executorService;
+
+    @Before
+    public void before() {
+        for (int i = 0; i < ROWS; i++) {
+            // Zero padded, so the keys are in the same order as the rows
+            table.add(String.format("%05d", Integer.valueOf(i)));
+        }
+        savedConfiguration = new GlobalUpgradeConfiguration().saveData();
+        executorService = Executors.newFixedThreadPool(THREADS);
+    }
+
+    @After
+    public void after() throws InterruptedException {
+        executorService.shutdownNow();
+        executorService.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testResumeAfterInterrupt() throws Exception {
+        final CountDownLatch release = new CountDownLatch(1);
+        final int interruptedChunk = 5;
+        final TestRunner interrupted = new TestRunner() {
+            @Override
+            protected Future<Integer> migrateChunk(final List<String> keys) {
+                if (getChunks().incrementAndGet() != interruptedChunk) {
+                    return submit(keys);
+                }
+                // The node is shut down while this chunk is being migrated
+                Thread.currentThread().interrupt();
+                return executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        release.await();
+                        return Integer.valueOf(commit(keys));
+                    }
+                });
+            }
+        };
+        releaseLater(release);
+        assertFalse("The migration should stop when it is interrupted.", interrupted.run());
+        assertTrue("The interrupt should be kept for the caller.", Thread.interrupted());
+        final GlobalUpgradeConfiguration guc = loadConfiguration();
+        assertFalse(guc.isMigrationCompleted(MIGRATION));
+        assertNotNull("The migrated chunks should be saved as a checkpoint.", guc.getMigrationCheckpoint(MIGRATION));
+        assertTrue("The migration should have been interrupted before the end of the table.", migrations.size() < ROWS);
+        assertTrue("The chunks that were started should be migrated before the migration stops.",
+                migrations.size() >= interruptedChunk * CHUNK_SIZE);
+        assertTrue(new TestRunner().run());
+        assertMigratedOnce();
+        assertCompleted();
+    }
+
+    @Test
+    public void testResumeAfterFailedChunk() throws Exception {
+        final int failedChunk = 7;
+        final TestRunner failing = new TestRunner() {
+            @Override
+            protected Future<Integer> migrateChunk(final List<String> keys) {
+                if (getChunks().incrementAndGet() != failedChunk) {
+                    return submit(keys);
+                }
+                return executorService.submit(new Callable<Integer>() {
+                    @Override
+                    public Integer call() throws Exception {
+                        // The transaction of the chunk is rolled back, so no row is migrated
+                        throw new IllegalStateException("Database connection lost.");
+                    }
+                });
+            }
+        };
+        assertFalse("The migration should stop when a chunk fails.", failing.run());
+        final String checkpoint = loadConfiguration().getMigrationCheckpoint(MIGRATION);
+        assertEquals("The checkpoint should be at the end of the last chunk before the failed one.",
+                table.get((failedChunk - 1) * CHUNK_SIZE - 1), checkpoint);
+        assertTrue(new TestRunner().run());
+        for (final String key : table) {
+            final AtomicInteger count = migrations.get(key);
+            assertNotNull("Row " + key + " was not migrated.", count);
+            if (key.compareTo(checkpoint) <= 0) {
+                assertEquals("Row " + key + " before the checkpoint should not be migrated again.", 1, count.get());
+            } else {
+                // Chunks after the failed one that were migrated in parallel are migrated again, which the migrations allow
+                assertTrue(count.get() >= 1);
+            }
+        }
+        assertCompleted();
+    }
+
+    @Test
+    public void testSingleThread() throws Exception {
+        final TestRunner runner = new TestRunner(1) {
+            @Override
+            protected Future<Integer> migrateChunk(final List<String> keys) {
+                // Migrated in the calling thread, as UpgradeSessionBean does with a single thread
+                final int migrated = commit(keys);
+                return new Future<Integer>() {
+                    @Override public boolean cancel(final boolean mayInterruptIfRunning) { return false; }
+                    @Override public boolean isCancelled() { return false; }
+                    @Override public boolean isDone() { return true; }
+                    @Override public Integer get() { return Integer.valueOf(migrated); }
+                    @Override public Integer get(final long timeout, final TimeUnit unit) { return get(); }
+                };
+            }
+        };
+        assertTrue(runner.run());
+        assertMigratedOnce();
+        assertCompleted();
+    }
+
+    @Test
+    public void testCompletedMigrationIsSkipped() throws Exception {
+        assertTrue(new TestRunner().run());
+        assertMigratedOnce();
+        final TestRunner again = new TestRunner();
+        assertTrue(again.run());
+        assertEquals("A completed migration should not read or migrate any rows.", 0, again.getChunks().get());
+        assertMigratedOnce();
+    }
+
+    /** Runs a migration of the in-memory table, with the checkpoint stored in the saved upgrade configuration */
+    private class TestRunner extends PostUpgradeMigrationRunner {
+        private final AtomicInteger chunks = new AtomicInteger();
+
+        TestRunner() {
+            this(THREADS);
+        }
+
+        TestRunner(final int threads) {
+            super(MIGRATION, CHUNK_SIZE, threads);
+        }
+
+        AtomicInteger getChunks() {
+            return chunks;
+        }
+
+        @Override
+        protected List<String> getKeys(final String afterKey, final int maxResults) {
+            final List<String> keys = new ArrayList<>();
+            for (final String key : table) {
+                if ((afterKey == null || key.compareTo(afterKey) > 0) && keys.size() < maxResults) {
+                    keys.add(key);
+                }
+            }
+            return keys;
+        }
+
+        @Override
+        protected Future<Integer> migrateChunk(final List<String> keys) {
+            chunks.incrementAndGet();
+            return submit(keys);
+        }
+
+        @Override
+        protected String getCheckpoint() {
+            return loadConfiguration().getMigrationCheckpoint(MIGRATION);
+        }
+
+        @Override
+        protected void setCheckpoint(final String key) {
+            final GlobalUpgradeConfiguration guc = loadConfiguration();
+            guc.setMigrationCheckpoint(MIGRATION, key);
+            saveConfiguration(guc);
+        }
+
+        @Override
+        protected boolean isCompleted() {
+            return loadConfiguration().isMigrationCompleted(MIGRATION);
+        }
+
+        @Override
+        protected void setCompleted() {
+            final GlobalUpgradeConfiguration guc = loadConfiguration();
+            guc.setMigrationCompleted(MIGRATION, true);
+            guc.setMigrationCheckpoint(MIGRATION, null);
+            saveConfiguration(guc);
+        }
+    }
+
+    /** Migrates a chunk in parallel with other chunks */
+    private Future<Integer> submit(final List<String> keys) {
+        return executorService.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                return Integer.valueOf(commit(keys));
+            }
+        });
+    }
+
+    /** Migrates the rows of a chunk, as a transaction that commits */
+    private int commit(final List<String> keys) {
+        for (final String key : keys) {
+            AtomicInteger count = migrations.get(key);
+            if (count == null) {
+                final AtomicInteger newCount = new AtomicInteger();
+                count = migrations.putIfAbsent(key, newCount);
+                if (count == null) {
+                    count = newCount;
+                }
+            }
+            count.incrementAndGet();
+        }
+        return keys.size();
+    }
+
+    private synchronized GlobalUpgradeConfiguration loadConfiguration() {
+        final GlobalUpgradeConfiguration guc = new GlobalUpgradeConfiguration();
+        guc.loadData(savedConfiguration);
+        return guc;
+    }
+
+    private synchronized void saveConfiguration(final GlobalUpgradeConfiguration guc) {
+        savedConfiguration = guc.saveData();
+    }
+
+    private void releaseLater(final CountDownLatch release) {
+        final Thread thread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(200L);
+                } catch (InterruptedException e) {
+                    // Release anyway
+                }
+                release.countDown();
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void assertMigratedOnce() {
+        assertEquals("All rows should be migrated.", ROWS, migrations.size());
+        for (final Map.Entry<String, AtomicInteger> migration : migrations.entrySet()) {
+            assertEquals("Row " + migration.getKey() + " should be migrated exactly once.", 1, migration.getValue().get());
+        }
+    }
+
+    private void assertCompleted() {
+        final GlobalUpgradeConfiguration guc = loadConfiguration();
+        assertTrue(guc.isMigrationCompleted(MIGRATION));
+        assertNull("The checkpoint should be removed when the migration is completed.", guc.getMigrationCheckpoint(MIGRATION));
+    }
+}
@@ -0,0 +1,125 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.model.era;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.security.KeyPair;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.cesecore.certificates.certificate.CertificateConstants;
+import org.cesecore.certificates.certificate.CertificateData;
+import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
+import org.cesecore.certificates.util.AlgorithmConstants;
+import org.cesecore.keys.util.KeyTools;
+import org.cesecore.util.CertTools;
+import org.cesecore.util.CryptoProviderTools;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Test of merging RA certificate search responses, from peers that return certificate meta data and from older peers that return the full
+ * certificates.
+ *
+ * @version $Id$
+ */
+public class RaCertificateSearchResponseTest {
+
+    private static KeyPair keyPair;
+
+    @BeforeClass
+    public static void beforeClass() throws Exception {
+        CryptoProviderTools.installBCProviderIfNotAvailable();
+        keyPair = KeyTools.genKeys("1024", AlgorithmConstants.KEYALGORITHM_RSA);
+    }
+
+    @Test
+    public void testMergeResponseFromOlderPeer() throws Exception {
+        final CertificateData local = createCertificateData("CN=RaCertificateSearchResponseTest Local", "localuser");
+        final CertificateData shared = createCertificateData("CN=RaCertificateSearchResponseTest Shared", "shareduser");
+        final CertificateData remote = createCertificateData("CN=RaCertificateSearchResponseTest Remote", "remoteuser");
+        final RaCertificateSearchResponse response = new RaCertificateSearchResponse();
+        response.getCertificateInfos().add(local.toCertificateInfo());
+        response.getCertificateInfos().add(shared.toCertificateInfo());
+        // An older peer only fills in the full certificates, and its responses are deserialized without any certificate meta data
+        final RaCertificateSearchResponse olderPeerResponse = new RaCertificateSearchResponse();
+        olderPeerResponse.setCertificateInfos(null);
+        olderPeerResponse.setCdws(Arrays.asList(new CertificateDataWrapper(null, shared, null), new CertificateDataWrapper(null, remote, null)));
+        olderPeerResponse.setMightHaveMoreResults(true);
+        response.merge(olderPeerResponse);
+        assertTrue("The response from the older peer should be kept when merging.", response.isMightHaveMoreResults());
+        final Map<String, CertificateInfo> merged = new HashMap<>();
+        for (final CertificateInfo certificateInfo : response.getCertificateInfos()) {
+            merged.put(certificateInfo.getFingerprint(), certificateInfo);
+        }
+        assertEquals("A certificate returned by both peers should only be included once.", 3, response.getCertificateInfos().size());
+        for (final CertificateData certificateData : Arrays.asList(local, shared, remote)) {
+            final CertificateInfo certificateInfo = merged.get(certificateData.getFingerprint());
+            assertNotNull("Certificate " + certificateData.getSubjectDN() + " is missing in the merged response.", certificateInfo);
+            assertCertificateInfo(certificateData, certificateInfo);
+        }
+        assertEquals("The full certificates of the older peer should not be kept.", 0, response.getCdws().size());
+    }
+
+    @Test
+    public void testMergeResponses() throws Exception {
+        final CertificateData first = createCertificateData("CN=RaCertificateSearchResponseTest First", "firstuser");
+        final CertificateData second = createCertificateData("CN=RaCertificateSearchResponseTest Second", "seconduser");
+        final RaCertificateSearchResponse response = new RaCertificateSearchResponse();
+        response.getCertificateInfos().add(first.toCertificateInfo());
+        final RaCertificateSearchResponse otherResponse = new RaCertificateSearchResponse();
+        otherResponse.setCertificateInfos(new ArrayList<>(Arrays.asList(first.toCertificateInfo(), second.toCertificateInfo())));
+        response.merge(otherResponse);
+        assertFalse(response.isMightHaveMoreResults());
+        assertEquals(2, response.getCertificateInfos().size());
+        final List<String> fingerprints = new ArrayList<>();
+        for (final CertificateInfo certificateInfo : response.getCertificateInfos()) {
+            fingerprints.add(certificateInfo.getFingerprint());
+        }
+        assertTrue(fingerprints.contains(first.getFingerprint()));
+        assertTrue(fingerprints.contains(second.getFingerprint()));
+    }
+
+    private CertificateData createCertificateData(final String subjectDn, final String username) throws Exception {
+        final X509Certificate certificate = CertTools.genSelfCert(subjectDn, 24, null, keyPair.getPrivate(), keyPair.getPublic(),
+                AlgorithmConstants.SIGALG_SHA256_WITH_RSA, false);
+        return new CertificateData(certificate, certificate.getPublicKey(), username, "cafingerprint", CertificateConstants.CERT_ACTIVE,
+                CertificateConstants.CERTTYPE_ENDENTITY, 1, 2, "tag", 1234L, true, true);
+    }
+
+    private void assertCertificateInfo(final CertificateData expected, final CertificateInfo actual) {
+        assertEquals(expected.getFingerprint(), actual.getFingerprint());
+        assertEquals(expected.getCaFingerprint(), actual.getCAFingerprint());
+        assertEquals(expected.getSerialNumber(), actual.getSerialNumberRaw());
+        assertEquals(expected.getIssuerDN(), actual.getIssuerDN());
+        assertEquals(expected.getSubjectDN(), actual.getSubjectDN());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getExpireDate(), actual.getExpireDate().getTime());
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getTag(), actual.getTag());
+        assertEquals(expected.getCertificateProfileId().intValue(), actual.getCertificateProfileId());
+        assertEquals(expected.getEndEntityProfileId().intValue(), actual.getEndEntityProfileIdOrZero());
+        assertEquals(expected.getUpdateTime().longValue(), actual.getUpdateTime().getTime());
+        assertEquals(expected.getSubjectKeyId(), actual.getSubjectKeyId());
+    }
+}
@@ -18,9 +18,11 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.security.SecureRandom;
 import java.security.Security;
+import java.sql.SQLException;
 import java.util.Arrays;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -33,6 +35,7 @@ import javax.ejb.Singleton;
 import javax.ejb.Startup;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
+import javax.sql.DataSource;
 
 import org.apache.log4j.Logger;
 import org.bouncycastle.jce.provider.BouncyCastleProvider;
@@ -68,6 +71,7 @@ import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
 import org.ejbca.core.ejb.ocsp.OcspKeyRenewalSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
+import org.ejbca.core.ejb.ra.KeyPairPool;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionLocal;
 import org.ejbca.core.ejb.services.ServiceSessionLocal;
@@ -127,6 +131,8 @@ public class StartupSingletonBean {
     private void shutdown() {
         String iMsg = InternalEjbcaResources.getInstance().getLocalizedMessage("startservice.shutdown");
         log.info(iMsg);
+        // Stop the key generation threads and discard the pre-generated keys, so that they do not outlive this deployment
+        KeyPairPool.shutdownInstance();
         // Make a log row that EJBCA is stopping
         //final Map<String, Object> details = new LinkedHashMap<String, Object>();
         //details.put("msg", iMsg);
@@ -258,7 +264,7 @@ public class StartupSingletonBean {
         log.trace(">init SignSession to check for unique issuerDN,serialNumber index");
         // Call the check for unique index, since first invocation will perform the database
         // operation and avoid a performance hit for the first request where this is checked.
-        final Boolean unique = DatabaseIndexUtil.isIndexPresentOverColumns(JDBCUtil.getDataSourceOrNull(), "CertificateData", Arrays.asList("serialNumber", "issuerDN"), true);
+        final Boolean unique = verifyUniqueCertificateSerialNumberIndex();
         if (unique==null) {
             log.debug("Unable to read the index meta data from the database. Will detect presence of unique index using conflicting inserts to CertificateData.");
             // Fall-back to testing for a unique index on CertificateData using conflicting INSERTs
@@ -275,6 +281,8 @@ public class StartupSingletonBean {
         certificateStoreSession.initTimers();
         // Start legacy background service for renewal of OCSP signers via EJBCA WS calls to CA
         ocspKeyRenewalSession.startTimer();
+        // Start filling the key pair pools for server generated keystores, so that they are ready before the first request
+        KeyPairPool.getInstance();
         // Verify that the EJB CLI user (if present) cannot be used to generate certificates
         final String cliUsername = EjbcaConfiguration.getCliDefaultUser();
         try {
@@ -295,6 +303,45 @@ public class StartupSingletonBean {
         }
     }
     
+    /**
+     * Reads the index meta data of CertificateData to see if there is a unique index on (serialNumber, issuerDN), that allows certificates
+     * to be stored without looking up the serial number first. If there is no such index and database.createuniqueserialnumberindex is
+     * enabled, the index is created.
+     * 
+     * @return true if the unique index is present, false if not and null if the index meta data could not be read
+     */
+    private Boolean verifyUniqueCertificateSerialNumberIndex() {
+        final DataSource dataSource = JDBCUtil.getDataSourceOrNull();
+        final List<String> columnNames = Arrays.asList("serialNumber", "issuerDN");
+        Boolean unique = DatabaseIndexUtil.isIndexPresentOverColumns(dataSource, "CertificateData", columnNames, true);
+        if (Boolean.FALSE.equals(unique) && CesecoreConfiguration.isCreateUniqueCertificateSerialNumberIndex()) {
+            if (Boolean.TRUE.equals(DatabaseIndexUtil.isIndexPresentOverColumns(dataSource, "CertificateData", columnNames, false))) {
+                // A non unique index is used when there are CVC CAs, since CV certificates have no serial numbers
+                log.warn("Not creating a unique index on CertificateData (serialNumber, issuerDN), since a non unique index over the same columns already exists.");
+            } else {
+                try {
+                    // Rows left from checking for the unique index using conflicting inserts would make the index creation fail
+                    certificateStoreSession.removeUniqueCertificateSerialNumberTestCertificates();
+                } catch (Exception e) { // NOPMD, the index creation will tell if this was a problem
+                    log.debug("Unable to clean up database rows used during test for unique certificate serial number.", e);
+                }
+                try {
+                    DatabaseIndexUtil.createIndex(dataSource, "certificatedata_idx12", "CertificateData", columnNames, true);
+                    log.info("Created unique index certificatedata_idx12 on CertificateData (serialNumber, issuerDN).");
+                } catch (SQLException e) {
+                    // Another node of the cluster may have created it at the same time, which is checked below
+                    log.info("Unable to create a unique index on CertificateData (serialNumber, issuerDN): " + e.getMessage());
+                }
+                unique = DatabaseIndexUtil.isIndexPresentOverColumns(dataSource, "CertificateData", columnNames, true);
+                if (!Boolean.TRUE.equals(unique)) {
+                    log.error("No unique index on CertificateData (serialNumber, issuerDN) after trying to create it. The serial number of each"
+                            + " certificate will be looked up before it is stored. Check that the database user is allowed to create indexes and"
+                            + " that no issuer has used the same serial number twice.");
+                }
+            }
+        }
+        return unique;
+    }
 
     /** Method that checks if we have an integrity protected security audit device configured, and in that case logs the configuration startup 
      * 
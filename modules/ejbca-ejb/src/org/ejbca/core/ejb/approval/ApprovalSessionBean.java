@@ -21,6 +21,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
@@ -28,11 +29,15 @@ import java.util.Map;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
+import javax.ejb.Asynchronous;
 import javax.ejb.EJB;
 import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.mail.Message;
+import javax.mail.MessagingException;
+import javax.mail.SendFailedException;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
 import javax.persistence.TypedQuery;
@@ -71,6 +76,7 @@ import org.ejbca.core.model.approval.Approval;
 import org.ejbca.core.model.approval.ApprovalDataText;
 import org.ejbca.core.model.approval.ApprovalDataVO;
 import org.ejbca.core.model.approval.ApprovalException;
+import org.ejbca.core.model.approval.ApprovalNotificationMail;
 import org.ejbca.core.model.approval.ApprovalNotificationParameterGenerator;
 import org.ejbca.core.model.approval.ApprovalRequest;
 import org.ejbca.core.model.approval.ApprovalRequestExpiredException;
@@ -88,6 +94,7 @@ import org.ejbca.core.model.approval.profile.ApprovalProfile;
 import org.ejbca.core.model.approval.profile.ApprovalStep;
 import org.ejbca.core.model.approval.profile.PartitionedApprovalProfile;
 import org.ejbca.util.mail.MailSender;
+import org.ejbca.util.mail.MailTransportPool;
 import org.ejbca.util.query.IllegalQueryException;
 import org.ejbca.util.query.Query;
 
@@ -105,6 +112,9 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
 
+    /** The maximum number of approval request IDs in an IN list, which is limited by some databases */
+    private static final int MAX_IN_LIST_SIZE = 1000;
+
     @PersistenceContext(unitName = "ejbca")
     private EntityManager entityManager;
     @Resource
@@ -334,11 +344,13 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
     
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
-    public List<ApprovalData> findWaitingForApprovalApprovalDataLocal() {
-        final TypedQuery<ApprovalData> query = entityManager
-                .createQuery("SELECT a FROM ApprovalData a WHERE a.status=" + ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, ApprovalData.class);
-        List<ApprovalData> result = query.getResultList();
-        return result;
+    public List<ApprovalData> findWaitingForApprovalApprovalDataLocal(final int afterId, final int maxResults) {
+        final TypedQuery<ApprovalData> query = entityManager.createQuery(
+                "SELECT a FROM ApprovalData a WHERE a.status=:status AND a.id>:afterId ORDER BY a.id", ApprovalData.class);
+        query.setParameter("status", ApprovalDataVO.STATUS_WAITINGFORAPPROVAL);
+        query.setParameter("afterId", afterId);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
     }
 
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
@@ -361,9 +373,11 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
         	log.debug("Found number of approvalIdNonExpired: " + result.size());
         }
         for (ApprovalData next : result) {
-            ApprovalDataVO data = next.getApprovalDataVO();
-            if (data.getStatus() == ApprovalDataVO.STATUS_WAITINGFORAPPROVAL || data.getStatus() == ApprovalDataVO.STATUS_APPROVED
-                    || data.getStatus() == ApprovalDataVO.STATUS_REJECTED) {
+            // Only the status is needed, so the approvals and the request are not decoded here
+            next.hasRequestOrApprovalExpired();
+            final int status = next.getStatus();
+            if (status == ApprovalDataVO.STATUS_WAITINGFORAPPROVAL || status == ApprovalDataVO.STATUS_APPROVED
+                    || status == ApprovalDataVO.STATUS_REJECTED) {
                 retval = next;
             }
         }
@@ -394,8 +408,29 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
         if (query != null && !query.isLegalQuery()) {
             throw new IllegalQueryException();
         }
-        final String queryString = (query != null ? query.getQueryString() : "1 = 1");
-        final List<ApprovalDataVO> ret = queryInternal(queryString, index, numberofrows, caAuthorizationString, endEntityProfileAuthorizationString, null);
+        final Map<String, Object> parameters = new HashMap<>();
+        final String queryString = (query != null ? query.getParameterizedQueryString(parameters) : "1 = 1");
+        final List<ApprovalDataVO> ret = queryInternal(queryString, parameters, index, numberofrows, caAuthorizationString, endEntityProfileAuthorizationString, null);
+        log.trace("<query()");
+        return ret;
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public List<ApprovalDataVO> query(final Query query, final int index, final int numberofrows, final List<Integer> caIds,
+            final List<Integer> endEntityProfileIds) throws IllegalQueryException {
+        log.trace(">query()");
+        // Check if query is legal.
+        if (query != null && !query.isLegalQuery()) {
+            throw new IllegalQueryException();
+        }
+        // The authorized CAs and end entity profiles are bound as parameters, so the statement does not change with the authorization of the administrator
+        final Map<String, Object> parameters = new HashMap<>();
+        final String queryString = (query != null ? query.getParameterizedQueryString(parameters) : "1 = 1");
+        final String caAuthorizationString = Query.getInCondition("cAId", caIds, parameters);
+        final String endEntityProfileAuthorizationString = endEntityProfileIds == null ? null
+                : Query.getInCondition("endEntityProfileId", endEntityProfileIds, parameters);
+        final List<ApprovalDataVO> ret = queryInternal(queryString, parameters, index, numberofrows, caAuthorizationString, endEntityProfileAuthorizationString, null);
         log.trace("<query()");
         return ret;
     }
@@ -412,6 +447,9 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
         }
         
         final StringBuilder sb = new StringBuilder();
+        // The times are bound as parameters, since they are different for every query
+        final Map<String, Object> parameters = new HashMap<>();
+        final Long now = Long.valueOf(new Date().getTime());
         
         String orderByString = null;
         sb.append('(');
@@ -422,18 +460,18 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                 // No additional filtering
             } else if (!includeExpired) {
                 // Do not include expired requests
-                sb.append("expireDate >= ");
-                sb.append(new Date().getTime());
+                sb.append("expireDate >= :now");
+                parameters.put("now", now);
                 sb.append(" AND ");
             } else if (expiresBefore != null) {
                 // Only include expired requests
-                sb.append("expireDate < ");
-                sb.append(new Date().getTime());
+                sb.append("expireDate < :now");
+                parameters.put("now", now);
                 sb.append(" AND ");
             }
             if (expiresBefore != null) {
-                sb.append("expireDate < ");
-                sb.append(expiresBefore.getTime());
+                sb.append("expireDate < :expiresBefore");
+                parameters.put("expiresBefore", Long.valueOf(expiresBefore.getTime()));
                 sb.append(" AND ");
             }
             // "STATUS_APPROVED" means that the request is still waiting to be executed by the requester
@@ -451,20 +489,22 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
         sb.append(')');
         
         if (startDate != null) {
-            sb.append(" AND requestDate >= " + startDate.getTime());
+            sb.append(" AND requestDate >= :startDate");
+            parameters.put("startDate", Long.valueOf(startDate.getTime()));
         }
         if (endDate != null) {
-            sb.append(" AND requestDate < " + endDate.getTime()); 
+            sb.append(" AND requestDate < :endDate");
+            parameters.put("endDate", Long.valueOf(endDate.getTime()));
         }
         
-        final List<ApprovalDataVO> ret = queryInternal(sb.toString(), index, numberofrows,
+        final List<ApprovalDataVO> ret = queryInternal(sb.toString(), parameters, index, numberofrows,
                 caAuthorizationString, endEntityProfileAuthorizationString,
                 orderByString);
         log.trace("<queryByStatus()");
         return ret;
     }
     
-    private List<ApprovalDataVO> queryInternal(final String query, int index, int numberofrows, String caAuthorizationString,
+    private List<ApprovalDataVO> queryInternal(final String query, final Map<String, Object> parameters, int index, int numberofrows, String caAuthorizationString,
             String endEntityProfileAuthorizationString, final String orderByString) {
         log.trace(">queryInternal()");
         String customQuery = "(" + query + ")";
@@ -478,7 +518,7 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
             customQuery += " " + orderByString;
         }
         
-        final List<ApprovalData> approvalDataList = findByCustomQuery(index, numberofrows, customQuery);
+        final List<ApprovalData> approvalDataList = findByCustomQuery(index, numberofrows, customQuery, parameters);
         final List<ApprovalDataVO> returnData = new ArrayList<>(approvalDataList.size());
         for (ApprovalData approvalData : approvalDataList) {
             final ApprovalDataVO approvalInformation = approvalData.getApprovalDataVO();
@@ -552,6 +592,7 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     public void sendApprovalNotifications(final ApprovalRequest approvalRequest, final ApprovalProfile approvalProfile,
             final ApprovalData approvalData, final boolean expired) {
+        final List<ApprovalNotificationMail> mails = new ArrayList<ApprovalNotificationMail>();
         try {
             final List<Approval> approvalsPerformed = approvalData.getApprovals();
             // When adding a new approval request the list of performed approvals is empty
@@ -567,9 +608,9 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                     final int currentStepId = lastApproval.getStepId();
                     final ApprovalPartition currentApprovalPartition = approvalProfile.getStep(currentStepId).getPartition(lastApproval.getPartitionId());
                     if (expired) {
-                        sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.EXPIRED, lastApproval);
+                        createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.EXPIRED, lastApproval);
                     } else {
-                        sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.REJECTED, lastApproval);
+                        createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.REJECTED, lastApproval);
                     }
                     if (approvalStep!=null) {
                         // Check which of the remaining partitions that need to be notified
@@ -577,9 +618,9 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                             final int remainingApprovalsInPartition = approvalProfile.getRemainingApprovalsInPartition(approvalsPerformed, lastApproval.getStepId(), approvalPartition.getPartitionIdentifier());
                             if (remainingApprovalsInPartition>0) {
                                 if (expired) {
-                                    sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, approvalPartition, ApprovalPartitionWorkflowState.EXPIRED, lastApproval);
+                                    createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, approvalPartition, ApprovalPartitionWorkflowState.EXPIRED, lastApproval);
                                 } else {
-                                    sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, approvalPartition, ApprovalPartitionWorkflowState.REJECTED, lastApproval);
+                                    createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, approvalPartition, ApprovalPartitionWorkflowState.REJECTED, lastApproval);
                                 }
                             }
                         }
@@ -599,9 +640,9 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                     final int remainingApprovalsInPartition = approvalProfile.getRemainingApprovalsInPartition(approvalsPerformed, currentStepId, lastApproval.getPartitionId());
                     final ApprovalPartition currentApprovalPartition = approvalProfile.getStep(lastApproval.getStepId()).getPartition(lastApproval.getPartitionId());
                     if (remainingApprovalsInPartition>0) {
-                        sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.APPROVED_PARTIALLY, lastApproval);
+                        createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.APPROVED_PARTIALLY, lastApproval);
                     } else {
-                        sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.APPROVED, lastApproval);
+                        createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), currentStepId, currentApprovalPartition, ApprovalPartitionWorkflowState.APPROVED, lastApproval);
                     }
                 }
                 // If this is a new approval request or the current approval has completed a step, we should notify all partition owners in the next step
@@ -610,17 +651,67 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                         log.debug("This is a new approval request or the current approval has completed a step, we should notify all partition owners in the next step for approval profile: "+approvalProfile.getProfileName());
                     }
                     for (final ApprovalPartition approvalPartition : approvalStep.getPartitions().values()) {
-                        sendApprovalNotification(approvalRequest, approvalProfile, approvalData.getId(), approvalStep.getStepIdentifier(), approvalPartition, ApprovalPartitionWorkflowState.REQUIRES_ACTION, lastApproval);
+                        createApprovalNotificationMails(mails, approvalRequest, approvalProfile, approvalData.getId(), approvalStep.getStepIdentifier(), approvalPartition, ApprovalPartitionWorkflowState.REQUIRES_ACTION, lastApproval);
                     }
                 }
             }
         } catch (AuthenticationFailedException e) {
             log.warn("Unexpected failure during approval notification. Already performed approval where no longer authorized to do so.");
         }
+        if (!mails.isEmpty()) {
+            // Sent by another thread in a single batch, so the transaction of the approval does not wait for the mail server
+            approvalSession.sendApprovalNotificationMails(mails);
+        }
+    }
+
+    @Asynchronous
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    @Override
+    public void sendApprovalNotificationMails(final List<ApprovalNotificationMail> mails) {
+        final MailTransportPool mailTransportPool = MailSender.createTransportPool();
+        try {
+            final List<Message> messages = new ArrayList<Message>(mails.size());
+            final List<ApprovalNotificationMail> messageMails = new ArrayList<ApprovalNotificationMail>(mails.size());
+            for (final ApprovalNotificationMail mail : mails) {
+                try {
+                    final Message message = MailSender.createMessage(mailTransportPool.getSession(), mail.getSender(), mail.getRecipients(),
+                            MailSender.NO_CC, mail.getSubject(), mail.getBody(), MailSender.NO_ATTACHMENTS);
+                    if (message == null) {
+                        log.info(intres.getLocalizedMessage("approval.errornotification", mail.getRequestId()) + " No recipient.");
+                    } else {
+                        messages.add(message);
+                        messageMails.add(mail);
+                    }
+                } catch (MessagingException e) {
+                    log.info(intres.getLocalizedMessage("approval.errornotification", mail.getRequestId()), e);
+                }
+            }
+            if (messages.isEmpty()) {
+                return;
+            }
+            final List<SendFailedException> results;
+            try {
+                results = mailTransportPool.sendAll(messages);
+            } catch (MessagingException e) {
+                for (final ApprovalNotificationMail mail : messageMails) {
+                    log.info(intres.getLocalizedMessage("approval.errornotification", mail.getRequestId()), e);
+                }
+                return;
+            }
+            for (int i = 0; i < results.size(); i++) {
+                if (results.get(i) == null) {
+                    log.info(intres.getLocalizedMessage("approval.sentnotification", messageMails.get(i).getRequestId()));
+                } else {
+                    log.info(intres.getLocalizedMessage("approval.errornotification", messageMails.get(i).getRequestId()), results.get(i));
+                }
+            }
+        } finally {
+            mailTransportPool.close();
+        }
     }
     
-    /** Send approval notification to the partition owner if it has notifications enabled. */
-    private void sendApprovalNotification(final ApprovalRequest approvalRequest, final ApprovalProfile approvalProfile, final int requestId, final int approvalStepId, final ApprovalPartition approvalPartition,
+    /** Creates the approval notification mails to the partition owner if it has notifications enabled, and to the end entity if it has user notifications enabled. */
+    private void createApprovalNotificationMails(final List<ApprovalNotificationMail> mails, final ApprovalRequest approvalRequest, final ApprovalProfile approvalProfile, final int requestId, final int approvalStepId, final ApprovalPartition approvalPartition,
             final ApprovalPartitionWorkflowState approvalPartitionWorkflowState, final Approval lastApproval) {
         
         if(!approvalProfile.isNotificationEnabled(approvalPartition) && !approvalProfile.isUserNotificationEnabled(approvalPartition)) {
@@ -673,12 +764,7 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
             final String subject = (String) approvalPartition.getProperty(ApprovalProfile.PROPERTY_NOTIFICATION_EMAIL_MESSAGE_SUBJECT).getValue();
             final String body = ((MultiLineString)approvalPartition.getProperty(ApprovalProfile.PROPERTY_NOTIFICATION_EMAIL_MESSAGE_BODY).getValue()).getValue();
             final ApprovalNotificationParameterGenerator parameters = new ApprovalNotificationParameterGenerator(requestId, approvalStepId, partitionId, partitionName, approvalType, workflowState, requestor, lastApprovedBy);
-            try {
-                MailSender.sendMailOrThrow(sender, Arrays.asList(recipient.split(" ")), MailSender.NO_CC, parameters.interpolate(subject), parameters.interpolate(body), MailSender.NO_ATTACHMENTS);
-                log.info(intres.getLocalizedMessage("approval.sentnotification", requestId));
-            } catch (Exception e) {
-                log.info(intres.getLocalizedMessage("approval.errornotification", requestId), e);
-            }
+            mails.add(new ApprovalNotificationMail(requestId, sender, Arrays.asList(recipient.split(" ")), parameters.interpolate(subject), parameters.interpolate(body)));
         } else {
             if(log.isDebugEnabled()) {
                 log.debug("Admin notifications are not enabled for approval profile: "+approvalProfile.getProfileName());
@@ -693,12 +779,7 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
                 final String userSubject = (String) approvalPartition.getProperty(ApprovalProfile.PROPERTY_USER_NOTIFICATION_EMAIL_MESSAGE_SUBJECT).getValue();
                 final String userBody = ((MultiLineString)approvalPartition.getProperty(ApprovalProfile.PROPERTY_USER_NOTIFICATION_EMAIL_MESSAGE_BODY).getValue()).getValue();
                 final ApprovalNotificationParameterGenerator userParameters = new ApprovalNotificationParameterGenerator(requestId, approvalStepId, partitionId, partitionName, approvalType, workflowState, requestor, lastApprovedBy);
-                try {
-                    MailSender.sendMailOrThrow(userSender, Arrays.asList(userRecipient.split(" ")), MailSender.NO_CC, userParameters.interpolate(userSubject), userParameters.interpolate(userBody), MailSender.NO_ATTACHMENTS);
-                    log.info(intres.getLocalizedMessage("approval.sentnotification", requestId));
-                } catch (Exception e) {
-                    log.info(intres.getLocalizedMessage("approval.errornotification", requestId), e);
-                }
+                mails.add(new ApprovalNotificationMail(requestId, userSender, Arrays.asList(userRecipient.split(" ")), userParameters.interpolate(userSubject), userParameters.interpolate(userBody)));
             } else {
                 log.info(intres.getLocalizedMessage("approval.errornotification", requestId) + " No email was found in the end entity");
             }
@@ -904,11 +985,11 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
     }
 
     /** @return return the query results as a List<ApprovalData>. */
-    private List<ApprovalData> findByCustomQuery(final int index, final int numberofrows, final String customQuery) {
+    private List<ApprovalData> findByCustomQuery(final int index, final int numberofrows, final String customQuery, final Map<String, Object> parameters) {
         final List<ApprovalData> ret = new ArrayList<ApprovalData>();
         /* Hibernate on DB2 wont allow us to "SELECT *" in combination with setMaxResults.
          * Ingres wont let us access a LOB in a List using a native query for all fields.
-         * -> So we will get a list of primary keys and the fetch the whole entities one by one...
+         * -> So we will get a list of primary keys and then fetch the whole entities of the page with a single query.
          * 
          * As a sad little bonus, DB2 native queries returns a pair of {BigInteger, Integer}
          * where the first value is row and the second is the value.
@@ -916,13 +997,32 @@ public class ApprovalSessionBean implements ApprovalSessionLocal, ApprovalSessio
          * where the first value is the value and the second is the row.
          */
         final javax.persistence.Query query = entityManager.createNativeQuery("SELECT id FROM ApprovalData WHERE " + customQuery);
+        for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+            query.setParameter(parameter.getKey(), parameter.getValue());
+        }
         query.setFirstResult(index);
         query.setMaxResults(numberofrows);
         @SuppressWarnings("unchecked")
         final List<Object> ids = query.getResultList();
+        final List<Integer> pks = new ArrayList<Integer>(ids.size());
         for (Object object : ids) {
-            final int id = ValueExtractor.extractIntValue(object);
-            ret.add(entityManager.find(ApprovalData.class, id));
+            pks.add(ValueExtractor.extractIntValue(object));
+        }
+        // Fetch the entities in chunks that fit in an IN list, and keep the order of the custom query
+        final Map<Integer, ApprovalData> entities = new HashMap<Integer, ApprovalData>();
+        for (int i = 0; i < pks.size(); i += MAX_IN_LIST_SIZE) {
+            final TypedQuery<ApprovalData> entityQuery = entityManager.createQuery("SELECT a FROM ApprovalData a WHERE a.id IN (:ids)",
+                    ApprovalData.class);
+            entityQuery.setParameter("ids", pks.subList(i, Math.min(i + MAX_IN_LIST_SIZE, pks.size())));
+            for (final ApprovalData approvalData : entityQuery.getResultList()) {
+                entities.put(approvalData.getId(), approvalData);
+            }
+        }
+        for (final Integer pk : pks) {
+            final ApprovalData approvalData = entities.get(pk);
+            if (approvalData != null) {
+                ret.add(approvalData);
+            }
         }
         return ret;
     }
@@ -13,6 +13,7 @@
 
 package org.ejbca.core.ejb.ca.auth;
 
+import java.security.NoSuchAlgorithmException;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -38,6 +39,7 @@ import org.ejbca.core.ejb.audit.enums.EjbcaServiceTypes;
 import org.ejbca.core.ejb.ra.EndEntityManagementSessionLocal;
 import org.ejbca.core.ejb.ra.NoSuchEndEntityException;
 import org.ejbca.core.ejb.ra.UserData;
+import org.ejbca.core.ejb.ra.VerifiedPasswordCache;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.core.model.approval.ApprovalException;
 import org.ejbca.core.model.approval.WaitingForApprovalException;
@@ -86,7 +88,7 @@ public class EndEntityAuthenticationSessionBean implements EndEntityAuthenticati
             	if (log.isDebugEnabled()) {
             		log.debug("Trying to authenticate user: username="+username+", dn="+data.getSubjectDnNeverNull()+", email="+data.getSubjectEmail()+", status="+status+", type="+data.getType());
             	}
-                if (!data.comparePassword(password)) {
+                if (!isPasswordCorrect(data, password)) {
                 	final String msg = intres.getLocalizedMessage("authentication.invalidpwd", username);            	
                     final Map<String, Object> details = new LinkedHashMap<String, Object>();
                     details.put("msg", msg);
@@ -121,6 +123,22 @@ public class EndEntityAuthenticationSessionBean implements EndEntityAuthenticati
         }
     }
 
+    /**
+     * Verifies the password of the end entity, using a recent successful verification of the same password against the same password hash
+     * if there is one, since the password hash is intentionally slow to verify.
+     */
+    private boolean isPasswordCorrect(final UserData data, final String password) throws NoSuchAlgorithmException {
+        final String passwordHash = data.getPasswordHash();
+        if (VerifiedPasswordCache.INSTANCE.isVerified(data.getUsername(), passwordHash, password)) {
+            return true;
+        }
+        if (!data.comparePassword(password)) {
+            return false;
+        }
+        VerifiedPasswordCache.INSTANCE.setVerified(data.getUsername(), passwordHash, password);
+        return true;
+    }
+
     @Override
 	public void finishUser(final EndEntityInformation data) throws NoSuchEndEntityException {
 		if (log.isTraceEnabled()) {
@@ -2219,6 +2219,8 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
     }
 
     @Override
+    // Revoking all certificates of a large CA takes long, and is committed in chunks, so it should not run within a single transaction
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void revokeCA(AuthenticationToken admin, int caid, int reason) throws CADoesntExistsException, AuthorizationDeniedException {
         // check authorization
         if (!authorizationSession.isAuthorizedNoLogging(admin, StandardRules.ROLE_ROOT.resource())) {
@@ -3209,32 +3211,45 @@ public class CAAdminSessionBean implements CAAdminSessionLocal, CAAdminSessionRe
         }
         final HashMap<Integer, CryptoToken> cryptoTokenMap = new HashMap<Integer, CryptoToken>();
         for (final Integer caid : caSession.getAllCaIds()) {
-            try {
-                final CAInfo cainfo = caSession.getCAInfoInternal(caid.intValue());
-                if (cainfo.getStatus() == CAConstants.CA_ACTIVE && cainfo.getIncludeInHealthCheck()) {
-                    // Verify that the CA's mapped keys exist and optionally that the test-key is usable
-                    final int cryptoTokenId = cainfo.getCAToken().getCryptoTokenId();
-                    CryptoToken cryptoToken = cryptoTokenMap.get(Integer.valueOf(cryptoTokenId));
-                    if (cryptoToken == null) {
-                        cryptoToken = cryptoTokenSession.getCryptoToken(cryptoTokenId);
-                        if (cryptoToken != null) {
-                            // Cache crypto token lookup locally since multiple CA might use the same and milliseconds count here
-                            cryptoTokenMap.put(Integer.valueOf(cryptoTokenId), cryptoToken);
-                        }
-                    }
-                    final int tokenstatus = cainfo.getCAToken().getTokenStatus(caTokenSignTest, cryptoToken);
-                    if (tokenstatus == CryptoToken.STATUS_OFFLINE) {
-                        sb.append("\nCA: Error CA Token is disconnected, CA Name : ").append(cainfo.getName());
-                        log.error("Error CA Token is disconnected, CA Name : " + cainfo.getName());
+            healthCheck(caid.intValue(), caTokenSignTest, cryptoTokenMap, sb);
+        }
+        return sb.toString();
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public String healthCheck(final int caId) {
+        final StringBuilder sb = new StringBuilder();
+        healthCheck(caId, EjbcaConfiguration.getHealthCheckCaTokenSignTest(), new HashMap<Integer, CryptoToken>(), sb);
+        return sb.toString();
+    }
+
+    /** Checks the CA token of a single CA and appends any error message to sb. Crypto tokens looked up are cached in cryptoTokenMap. */
+    private void healthCheck(final int caid, final boolean caTokenSignTest, final Map<Integer, CryptoToken> cryptoTokenMap, final StringBuilder sb) {
+        try {
+            final CAInfo cainfo = caSession.getCAInfoInternal(caid);
+            if (cainfo.getStatus() == CAConstants.CA_ACTIVE && cainfo.getIncludeInHealthCheck()) {
+                // Verify that the CA's mapped keys exist and optionally that the test-key is usable
+                final int cryptoTokenId = cainfo.getCAToken().getCryptoTokenId();
+                CryptoToken cryptoToken = cryptoTokenMap.get(Integer.valueOf(cryptoTokenId));
+                if (cryptoToken == null) {
+                    cryptoToken = cryptoTokenSession.getCryptoToken(cryptoTokenId);
+                    if (cryptoToken != null) {
+                        // Cache crypto token lookup locally since multiple CA might use the same and milliseconds count here
+                        cryptoTokenMap.put(Integer.valueOf(cryptoTokenId), cryptoToken);
                     }
                 }
-            } catch (CADoesntExistsException e) {
-                if (log.isDebugEnabled()) {
-                    log.debug("CA with id '" + caid.toString() + "' does not exist.");
+                final int tokenstatus = cainfo.getCAToken().getTokenStatus(caTokenSignTest, cryptoToken);
+                if (tokenstatus == CryptoToken.STATUS_OFFLINE) {
+                    sb.append("\nCA: Error CA Token is disconnected, CA Name : ").append(cainfo.getName());
+                    log.error("Error CA Token is disconnected, CA Name : " + cainfo.getName());
                 }
             }
+        } catch (CADoesntExistsException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("CA with id '" + caid + "' does not exist.");
+            }
         }
-        return sb.toString();
     }
 
     @Override
@@ -12,25 +12,34 @@
  *************************************************************************/
 package org.ejbca.core.ejb.crl;
 
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.math.BigInteger;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
-import java.security.NoSuchProviderException;
-import java.security.SignatureException;
+import java.nio.file.Files;
 import java.security.cert.CRLException;
-import java.security.cert.X509CRL;
-import java.security.cert.X509CRLEntry;
 import java.security.cert.X509Certificate;
+import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashSet;
-import java.util.Set;
+import java.util.List;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
 import javax.ejb.EJB;
+import javax.ejb.SessionContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.security.auth.x500.X500Principal;
 
 import org.apache.log4j.Logger;
+import org.bouncycastle.asn1.x509.Extension;
+import org.bouncycastle.asn1.x509.GeneralName;
+import org.bouncycastle.asn1.x509.GeneralNames;
+import org.bouncycastle.asn1.x509.TBSCertList;
+import org.bouncycastle.operator.OperatorCreationException;
 import org.cesecore.authentication.tokens.AuthenticationToken;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.ca.CAInfo;
@@ -38,9 +47,11 @@ import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateData;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlEntrySorter;
 import org.cesecore.certificates.crl.CrlImportException;
 import org.cesecore.certificates.crl.CrlStoreException;
 import org.cesecore.certificates.crl.CrlStoreSessionLocal;
+import org.cesecore.certificates.crl.CrlStreamParser;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.certificates.util.cert.CrlExtensions;
 import org.cesecore.jndi.JndiConstants;
@@ -52,101 +63,207 @@ import org.ejbca.core.model.approval.WaitingForApprovalException;
 import org.ejbca.core.model.ra.AlreadyRevokedException;
 import org.ejbca.core.model.ra.RevokeBackDateNotAllowedForProfileException;
 
+/**
+ * Imports CRLs from external CAs and updates the status of the revoked certificates in the database.
+ *
+ * The CRL is parsed as a stream and the entries are sorted by serial number using temporary files, so that they can be compared to the
+ * entries of the last imported CRL in a single pass, without keeping either CRL in memory as X509CRL objects. The new entries are applied
+ * in batches, each in its own transaction. If the import fails half way, the CRL is not stored and the next import will be compared to the
+ * same last CRL again. Applying an entry a second time has no effect.
+ *
+ * @version $Id$
+ */
 @Stateless(mappedName = JndiConstants.APP_JNDI_PREFIX + "ImportCrlSessionRemote")
 @TransactionAttribute(TransactionAttributeType.REQUIRED)
 public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSessionRemote {
 
     private static final Logger log = Logger.getLogger(ImportCrlSessionBean.class);
 
+    /** The number of new CRL entries that are applied in each transaction */
+    private static final int ENTRY_BATCH_SIZE = 1000;
+    /** The number of CRL entries that are sorted in memory before they are written to a temporary file */
+    private static final int MAX_SORTED_ENTRIES_IN_MEMORY = 100000;
+
+    @Resource
+    private SessionContext sessionContext;
     @EJB
     private CertificateStoreSessionLocal certStoreSession;
     @EJB
     private CrlStoreSessionLocal crlStoreSession;
     @EJB
     private EndEntityManagementSessionLocal endentityManagementSession;
-    
+
+    private ImportCrlSessionLocal importCrlSession;
+
+    @PostConstruct
+    public void postConstruct() {
+        // Entry batches are applied through the business object in order to get the transaction setting (REQUIRES_NEW)
+        importCrlSession = sessionContext.getBusinessObject(ImportCrlSessionLocal.class);
+    }
+
     @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
     public void importCrl(AuthenticationToken authenticationToken, CAInfo cainfo, byte[] crlbytes)
             throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
+        final CrlStreamParser crl = processCrl(authenticationToken, cainfo, new ByteArrayInputStream(crlbytes));
+        if (crl != null) {
+            storeCrl(authenticationToken, cainfo, crl, crlbytes);
+        }
+    }
+
+    @Override
+    @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+    public void importCrl(AuthenticationToken authenticationToken, CAInfo cainfo, File crlFile)
+            throws CrlImportException, CrlStoreException, CRLException, AuthorizationDeniedException {
+        final CrlStreamParser crl;
+        try {
+            final InputStream crlStream = new FileInputStream(crlFile);
+            try {
+                crl = processCrl(authenticationToken, cainfo, crlStream);
+            } finally {
+                crlStream.close();
+            }
+            if (crl != null) {
+                // The CRL is stored in the database as a whole, so here it has to be read into memory
+                storeCrl(authenticationToken, cainfo, crl, Files.readAllBytes(crlFile.toPath()));
+            }
+        } catch (IOException e) {
+            throw new CRLException("Failed to read CRL from " + crlFile.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+    }
 
-        X509CRL x509crl = CertTools.getCRLfromByteArray(crlbytes);
-        
-        X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void importCrlEntries(final AuthenticationToken authenticationToken, final CAInfo cainfo, final List<byte[]> encodedCrlEntries)
+            throws CrlImportException, AuthorizationDeniedException {
+        final X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
         final String caFingerprint = CertTools.getFingerprintAsString(cacert);
         final String issuerDn = CertTools.getSubjectDN(cacert);
-        
-        verifyCrlIssuer(x509crl, issuerDn, cacert);
-        
-        // Check if the CRL is already stored locally
-        final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(x509crl).intValue() != -1;
-        final int downloadedCrlNumber = CrlExtensions.getCrlNumber(x509crl).intValue();
-        if (log.isTraceEnabled()) {
-            log.trace("Delta CRL:  " + isDeltaCrl);
-            log.trace("IssuerDn:   " + issuerDn);
-            log.trace("CRL Number: " + downloadedCrlNumber);
-        }
-        
-        X509CRL lastCrlOfSameType = getLastCrlOfSameType(x509crl, isDeltaCrl, issuerDn);
-        if(lastCrlOfSameType!=null && !x509crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
-            log.info((isDeltaCrl?"Delta":"Full") + " CRL number " + downloadedCrlNumber + " for CA '" + cainfo.getName() + 
-                    "' is not newer than last known " + (isDeltaCrl?"delta":"full") + " CRL. Ignoring download.");
-            return;
+        for (final byte[] encodedCrlEntry : encodedCrlEntries) {
+            final TBSCertList.CRLEntry crlEntry;
+            try {
+                crlEntry = CrlStreamParser.parseEntry(encodedCrlEntry);
+            } catch (IOException e) {
+                throw new CrlImportException("Failed to parse CRL entry.", e);
+            }
+            final Date revocationDate = crlEntry.getRevocationDate().getDate();
+            final BigInteger serialNumber = crlEntry.getUserCertificate().getValue();
+            final int reasonCode = CrlExtensions.extractReasonCode(crlEntry.getExtensions());
+            final String entryIssuerDn = getCertificateIssuerDn(crlEntry);
+            if (entryIssuerDn!=null && !issuerDn.equals(entryIssuerDn)) {
+                log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+            }
+
+            final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
+            if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
+                // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
+                certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint);
+            } else {
+                final String serialHex = serialNumber.toString(16).toUpperCase();
+                if (isCertAlreadyRevoked(reasonCode, cdw)) {
+                    log.info("Certificate '" + serialHex + "' is already revoked");
+                    continue;
+                }
+                log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
+                try {
+                    endentityManagementSession.revokeCert(authenticationToken, serialNumber, revocationDate, issuerDn, reasonCode, false);
+                } catch (AlreadyRevokedException e) {
+                    log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
+                } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
+                    throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                }
+            }
         }
-        
-        // If the CRL is newer than the last known or there wasn't any old one, loop through it
-        if (x509crl.getRevokedCertificates()==null) {
-            log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
-        } else {
-            final Set<X509CRLEntry> crlEntries = new HashSet<X509CRLEntry>();
-            crlEntries.addAll(x509crl.getRevokedCertificates());
-            if (log.isDebugEnabled()) {
-                log.debug("Downloaded CRL contains " + crlEntries.size() + " entries.");
+    }
+
+    /**
+     * Verifies the CRL and applies all entries that are new since the last imported CRL of the same type.
+     *
+     * @return the parsed CRL, or null if the CRL is not newer than the last imported CRL
+     */
+    private CrlStreamParser processCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final InputStream crlStream)
+            throws CrlImportException, CRLException, AuthorizationDeniedException {
+        final X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
+        final String issuerDn = CertTools.getSubjectDN(cacert);
+        final CrlEntrySorter newEntries = new CrlEntrySorter(MAX_SORTED_ENTRIES_IN_MEMORY);
+        CrlEntrySorter lastEntries = null;
+        try {
+            final CrlStreamParser crl = readAndVerifyCrl(crlStream, cacert, issuerDn, newEntries);
+
+            // Check if the CRL is already stored locally
+            final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(crl.getExtensions()).intValue() != -1;
+            final int downloadedCrlNumber = CrlExtensions.getCrlNumber(crl.getExtensions()).intValue();
+            if (log.isTraceEnabled()) {
+                log.trace("Delta CRL:  " + isDeltaCrl);
+                log.trace("IssuerDn:   " + issuerDn);
+                log.trace("CRL Number: " + downloadedCrlNumber);
+            }
+
+            final CrlStreamParser lastCrlOfSameType = getLastCrlOfSameType(isDeltaCrl, issuerDn);
+            if (lastCrlOfSameType!=null && !crl.getThisUpdate().after(lastCrlOfSameType.getThisUpdate())) {
+                log.info((isDeltaCrl?"Delta":"Full") + " CRL number " + downloadedCrlNumber + " for CA '" + cainfo.getName() +
+                        "' is not newer than last known " + (isDeltaCrl?"delta":"full") + " CRL. Ignoring download.");
+                return null;
             }
-            
-            if(lastCrlOfSameType != null && lastCrlOfSameType.getRevokedCertificates()!=null) {
+
+            // If the CRL is newer than the last known or there wasn't any old one, loop through it
+            if (newEntries.getSize()==0) {
+                log.info("No revoked certificates in " + (isDeltaCrl?"delta":"full") + " CRL for CA '" + cainfo.getName() + "'");
+            } else {
                 if (log.isDebugEnabled()) {
-                    log.debug("Last known CRL contains " + lastCrlOfSameType.getRevokedCertificates().size() + " entries.");
+                    log.debug("Downloaded CRL contains " + newEntries.getSize() + " entries.");
                 }
-                // Remove all entries that were processed last time
-                crlEntries.removeAll(lastCrlOfSameType.getRevokedCertificates());
-            }
-        
-            log.info("Found " + crlEntries.size() + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
-            // For each entry that was updated after the last known CRL, create/update a new database entry with the new status
-            for (final X509CRLEntry crlEntry : crlEntries) {
-                final Date revocationDate = crlEntry.getRevocationDate();
-                final BigInteger serialNumber = crlEntry.getSerialNumber();
-                final int reasonCode = CrlExtensions.extractReasonCode(crlEntry);
-                if (crlEntry.getCertificateIssuer()!=null) {
-                    final String entryIssuerDn = CertTools.stringToBCDNString(crlEntry.getCertificateIssuer().getName());
-                    if (!issuerDn.equals(entryIssuerDn)) {
-                        log.warn("CA's subjectDN does not match CRL entry's issuerDn '"+entryIssuerDn+"' and entry with serialNumber " + serialNumber + " will be ignored.");
+                if (lastCrlOfSameType!=null) {
+                    lastEntries = readEntries(lastCrlOfSameType, issuerDn);
+                    if (log.isDebugEnabled() && lastEntries!=null) {
+                        log.debug("Last known CRL contains " + lastEntries.getSize() + " entries.");
                     }
                 }
-                
-                final CertificateDataWrapper cdw = certStoreSession.getCertificateDataByIssuerAndSerno(issuerDn, serialNumber);
-                if(isLimitedCertificate(issuerDn, serialNumber, cdw)) {
-                    // Store as much as possible about what we know about the certificate and its status (which is limited) in the database
-                    certStoreSession.updateLimitedCertificateDataStatus(authenticationToken, cainfo.getCAId(), issuerDn, serialNumber, revocationDate, reasonCode, caFingerprint);
-                } else {
-                    final String serialHex = serialNumber.toString(16).toUpperCase();
-                    if (isCertAlreadyRevoked(reasonCode, cdw)) {
-                        log.info("Certificate '" + serialHex + "' is already revoked");
-                        continue;
-                    }
-                    log.info("Revoking '" + serialHex + "' " + "(" + serialNumber.toString() + ")");
-                    try {
-                        //log.info("Reason code: " + reason);
-                        endentityManagementSession.revokeCert(authenticationToken, serialNumber, crlEntry.getRevocationDate(), issuerDn, reasonCode, false);
-                    } catch (AlreadyRevokedException e) {
-                        log.warn("Failed to revoke '" + serialHex + "'. (Status might be 'Archived'.) Error message was: " + e.getMessage());
-                    } catch (ApprovalException | RevokeBackDateNotAllowedForProfileException | NoSuchEndEntityException | WaitingForApprovalException e) {
-                        throw new CrlImportException("Failed to revoke certificate with serial number " + serialHex, e);
+                // Both CRLs are sorted in the same order, so entries that were processed last time can be skipped in a single pass
+                long newEntryCount = 0;
+                List<byte[]> batch = new ArrayList<byte[]>(ENTRY_BATCH_SIZE);
+                byte[] newEntry = newEntries.next();
+                byte[] lastEntry = lastEntries==null ? null : lastEntries.next();
+                while (newEntry!=null) {
+                    final int comparison = lastEntry==null ? -1 : CrlEntrySorter.compare(newEntry, lastEntry);
+                    if (comparison<0) {
+                        batch.add(newEntry);
+                        newEntryCount++;
+                        if (batch.size()>=ENTRY_BATCH_SIZE) {
+                            importCrlSession.importCrlEntries(authenticationToken, cainfo, batch);
+                            batch = new ArrayList<byte[]>(ENTRY_BATCH_SIZE);
+                        }
+                        newEntry = newEntries.next();
+                    } else {
+                        if (comparison==0) {
+                            newEntry = newEntries.next();
+                        }
+                        lastEntry = lastEntries.next();
                     }
-                    
                 }
+                if (!batch.isEmpty()) {
+                    importCrlSession.importCrlEntries(authenticationToken, cainfo, batch);
+                }
+                log.info("Found " + newEntryCount + " new entires in " + (isDeltaCrl?"delta":"full")+ " CRL number " + downloadedCrlNumber + " issued by '" + issuerDn + "' compared to previous.");
+            }
+            return crl;
+        } catch (IOException e) {
+            throw new CrlImportException("Failed to sort the entries of the CRL using temporary files.", e);
+        } finally {
+            newEntries.close();
+            if (lastEntries!=null) {
+                lastEntries.close();
             }
         }
+    }
+
+    private void storeCrl(final AuthenticationToken authenticationToken, final CAInfo cainfo, final CrlStreamParser crl, final byte[] crlbytes)
+            throws CrlStoreException, AuthorizationDeniedException {
+        final X509Certificate cacert = (X509Certificate) cainfo.getCertificateChain().iterator().next();
+        final String caFingerprint = CertTools.getFingerprintAsString(cacert);
+        final String issuerDn = CertTools.getSubjectDN(cacert);
+        final boolean isDeltaCrl = CrlExtensions.getDeltaCRLIndicator(crl.getExtensions()).intValue() != -1;
+        final int downloadedCrlNumber = CrlExtensions.getCrlNumber(crl.getExtensions()).intValue();
         // Calculate (make up) the CRL Number if the number was not present
         final int newCrlNumber;
         if (downloadedCrlNumber==0) {
@@ -156,10 +273,87 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
             newCrlNumber = downloadedCrlNumber;
         }
         // Last of all, store the CRL if there were no errors during creation of database entries
-        crlStoreSession.storeCRL(authenticationToken, x509crl.getEncoded(), caFingerprint, newCrlNumber, issuerDn, x509crl.getThisUpdate(), x509crl.getNextUpdate(), isDeltaCrl?1:-1);
-    
+        crlStoreSession.storeCRL(authenticationToken, crlbytes, caFingerprint, newCrlNumber, issuerDn, crl.getThisUpdate(), crl.getNextUpdate(), isDeltaCrl?1:-1);
+    }
+
+    /** Parses the CRL, verifies that it is issued by the CA and adds all entries to the sorter. */
+    private CrlStreamParser readAndVerifyCrl(final InputStream crlStream, final X509Certificate cacert, final String issuerDn,
+            final CrlEntrySorter entries) throws CrlImportException, CRLException, IOException {
+        log.info("CA: " + issuerDn);
+        final CrlStreamParser crl;
+        try {
+            crl = new CrlStreamParser(crlStream, CertTools.genContentVerifierProvider(cacert.getPublicKey()));
+        } catch (OperatorCreationException e) {
+            throw new CrlImportException("Failed to verify CRL signature.", e);
+        } catch (IOException e) {
+            throw new CRLException("Failed to parse CRL: " + e.getMessage(), e);
+        }
+        // Read the supplied CRL and verify that it is issued by the specified CA
+        if (!new X500Principal(crl.getIssuerEncoded()).equals(cacert.getSubjectX500Principal())) {
+            throw new CrlImportException("CRL wasn't issued by " + issuerDn);
+        }
+        while (true) {
+            final byte[] entry;
+            try {
+                entry = crl.nextEntry();
+            } catch (IOException e) {
+                throw new CRLException("Failed to parse CRL: " + e.getMessage(), e);
+            }
+            if (entry==null) {
+                break;
+            }
+            entries.add(entry);
+        }
+        if (!crl.isSignatureValid()) {
+            throw new CrlImportException("Failed to verify CRL signature.");
+        }
+        return crl;
+    }
+
+    /** @return the header of the last known CRL of the same type, with the entries still to be read, or null if there is no such CRL */
+    private CrlStreamParser getLastCrlOfSameType(final boolean isDeltaCrl, final String issuerDN) {
+        final byte[] lastCrl = crlStoreSession.getLastCRL(issuerDN, isDeltaCrl);
+        if(lastCrl != null) {
+            try {
+                return new CrlStreamParser(new ByteArrayInputStream(lastCrl), null);
+            } catch (IOException e) {
+                log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
+            }
+        }
+        return null;
+    }
+
+    /** @return the sorted entries of the last known CRL, or null if they could not be read */
+    private CrlEntrySorter readEntries(final CrlStreamParser lastCrl, final String issuerDN) {
+        final CrlEntrySorter entries = new CrlEntrySorter(MAX_SORTED_ENTRIES_IN_MEMORY);
+        try {
+            byte[] entry;
+            while ((entry = lastCrl.nextEntry())!=null) {
+                entries.add(entry);
+            }
+            return entries;
+        } catch (IOException e) {
+            log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
+            entries.close();
+            return null;
+        }
     }
-    
+
+    /** @return the normalized DN in the certificate issuer extension of the entry (used in indirect CRLs), or null if not present */
+    private String getCertificateIssuerDn(final TBSCertList.CRLEntry crlEntry) {
+        if (crlEntry.getExtensions()!=null) {
+            final GeneralNames certificateIssuer = GeneralNames.fromExtensions(crlEntry.getExtensions(), Extension.certificateIssuer);
+            if (certificateIssuer!=null) {
+                for (final GeneralName generalName : certificateIssuer.getNames()) {
+                    if (generalName.getTagNo()==GeneralName.directoryName) {
+                        return CertTools.stringToBCDNString(generalName.getName().toString());
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
     private boolean isCertAlreadyRevoked(final int revocationReason, final CertificateDataWrapper cdw) {
         if(cdw != null) {
             final CertificateData certData = cdw.getCertificateData();
@@ -173,34 +367,7 @@ public class ImportCrlSessionBean implements ImportCrlSessionLocal, ImportCrlSes
         }
         return false;
     }
-    
-    private void verifyCrlIssuer(final X509CRL crl, final String issuerDN, final X509Certificate cacert) throws CrlImportException {
-        log.info("CA: " + issuerDN);
-        // Read the supplied CRL and verify that it is issued by the specified CA
-        if (!crl.getIssuerX500Principal().equals(cacert.getSubjectX500Principal())) {
-            throw new CrlImportException("CRL wasn't issued by " + issuerDN);
-        }
-        
-        try {
-            crl.verify(cacert.getPublicKey());
-        } catch (InvalidKeyException | CRLException | NoSuchAlgorithmException | NoSuchProviderException | SignatureException e) {
-            throw new CrlImportException("Failed to verify CRL signature.", e);
-        }
-    }
-    
-    private X509CRL getLastCrlOfSameType(final X509CRL crl, final boolean isDeltaCrl, final String issuerDN) {
-        X509CRL lastCrlOfSameType = null;
-        final byte[] lastCrl = crlStoreSession.getLastCRL(issuerDN, isDeltaCrl);
-        if(lastCrl != null) {
-            try {
-                lastCrlOfSameType = CertTools.getCRLfromByteArray(lastCrl);
-            } catch (CRLException e) {
-                log.warn("Could not retrieve an older CRL issued by " + issuerDN, e);
-            }
-        }
-        return lastCrlOfSameType;
-    }
-    
+
     private boolean isLimitedCertificate(final String issuerDn, final BigInteger serialNumber, final CertificateDataWrapper cdw) {
         final String limitedFingerprint = CertTools.getFingerprintAsString((issuerDn+";"+serialNumber).getBytes());
         return (cdw==null) || (limitedFingerprint.equals(cdw.getCertificateData().getFingerprint()));
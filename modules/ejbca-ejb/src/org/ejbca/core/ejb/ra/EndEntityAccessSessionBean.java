@@ -14,6 +14,7 @@ package org.ejbca.core.ejb.ra;
 
 import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 
 import javax.ejb.EJB;
@@ -158,6 +159,15 @@ public class EndEntityAccessSessionBean implements EndEntityAccessSessionLocal,
         return ret;
     }
 
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    @Override
+    public List<Object[]> findExpirationNotificationInfo(final Collection<String> cas, final Collection<Integer> certificateProfiles,
+            final long activeNotifiedExpireDateMin, final long activeNotifiedExpireDateMax, final long activeExpireDateMin, final String afterFingerprint,
+            final int maxResults) {
+        return UserData.findExpirationNotificationInfo(entityManager, cas, certificateProfiles, activeNotifiedExpireDateMin, activeNotifiedExpireDateMax,
+                activeExpireDateMin, afterFingerprint, maxResults);
+    }
+
     @TransactionAttribute(TransactionAttributeType.SUPPORTS)
     @Override
     public List<EndEntityInformation> findUserByEmail(AuthenticationToken admin, String email) throws AuthorizationDeniedException {
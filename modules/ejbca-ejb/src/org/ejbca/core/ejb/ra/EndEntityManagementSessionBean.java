@@ -68,6 +68,7 @@ import org.cesecore.certificates.ca.X509CAInfo;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateData;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateRevokeException;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
@@ -1652,29 +1653,16 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         }
         // Revoke all non-expired and not revoked certs, one at the time
         final EndEntityInformation endEntityInformation = userData.toEndEntityInformation();
-        final List<CertificateDataWrapper> cdws = certificateStoreSession.getCertificateDataByUsername(username, true, Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
-        for (final CertificateDataWrapper cdw : cdws) {
+        // Only the issuer and serial number are needed, so the certificates themselves are not read
+        final List<CertificateInfo> certificateInfos = certificateStoreSession.getCertificateInfosByUsername(username, true, Arrays.asList(CertificateConstants.CERT_ARCHIVED, CertificateConstants.CERT_REVOKED));
+        for (final CertificateInfo certificateInfo : certificateInfos) {
             try {
-                final Certificate certificate = cdw.getCertificate();
-                final BigInteger serialNumber;
-                if (certificate==null) {
-                    try {
-                        // This will work for X.509
-                        serialNumber = new BigInteger(cdw.getCertificateData().getSerialNumber(), 10);
-                    } catch (NumberFormatException e) {
-                        throw new UnsupportedOperationException();
-                    }
-                } else {
-                    serialNumber = CertTools.getSerialNumber(certificate);
-                }
-                try {
-                    revokeCert(admin, serialNumber, null, cdw.getCertificateData().getIssuerDN(), reason, false, endEntityInformation, 0, lastApprovingAdmin);
-                } catch (RevokeBackDateNotAllowedForProfileException e) {
-                    throw new IllegalStateException("This should not happen since there is no back dating.",e);
-                }
+                revokeCert(admin, certificateInfo.getSerialNumber(), null, certificateInfo.getIssuerDN(), reason, false, endEntityInformation, 0, lastApprovingAdmin);
+            } catch (RevokeBackDateNotAllowedForProfileException e) {
+                throw new IllegalStateException("This should not happen since there is no back dating.",e);
             } catch (AlreadyRevokedException e) {
                 if (log.isDebugEnabled()) {
-                    log.debug("Certificate from issuer '" + cdw.getCertificateData().getIssuerDN() + "' with serial " + cdw.getCertificateData().getSerialNumber()
+                    log.debug("Certificate from issuer '" + certificateInfo.getIssuerDN() + "' with serial " + certificateInfo.getSerialNumberRaw()
                             + " was already revoked.");
                 }
             }
@@ -2088,20 +2076,23 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
             throw new IllegalQueryException();
         }
 
+        // The match values and the authorized CAs and end entity profiles are bound as parameters, so the same statement is used for all queries
+        // with the same criteria, regardless of values and of the authorization of the administrator
+        final Map<String, Object> parameters = new HashMap<>();
         String sqlquery = "";
         if (query != null) {
-            sqlquery = sqlquery + query.getQueryString();
+            sqlquery = sqlquery + query.getParameterizedQueryString(parameters);
         }
 
         final GlobalConfiguration globalconfiguration = getGlobalConfiguration();
         String caauthstring = caauthorizationstring;
         String endentityauth = endentityprofilestring;
-        RAAuthorization raauthorization = null;
         if (caauthorizationstring == null || endentityprofilestring == null) {
-            raauthorization = new RAAuthorization(admin, globalConfigurationSession, authorizationSession, caSession, endEntityProfileSession);
-            caauthstring = raauthorization.getCAAuthorizationString();
+            final RAAuthorization raauthorization = new RAAuthorization(admin, globalConfigurationSession, authorizationSession, caSession, endEntityProfileSession);
+            caauthstring = Query.getInCondition("cAId", raauthorization.getAuthorizedCaIds(), parameters);
             if (globalconfiguration.getEnableEndEntityProfileLimitations()) {
-                endentityauth = raauthorization.getEndEntityProfileAuthorizationString(true, endentityAccessRule);
+                final List<Integer> profileIds = raauthorization.getAuthorizedEndEntityProfileIds(endentityAccessRule);
+                endentityauth = profileIds.isEmpty() ? null : Query.getInCondition("endEntityProfileId", profileIds, parameters);
             } else {
                 endentityauth = "";
             }
@@ -2131,6 +2122,9 @@ public class EndEntityManagementSessionBean implements EndEntityManagementSessio
         }
         if (authorizedtoanyprofile) {
             final javax.persistence.Query dbQuery = entityManager.createQuery("SELECT a FROM UserData a WHERE " + sqlquery);
+            for (final Map.Entry<String, Object> parameter : parameters.entrySet()) {
+                dbQuery.setParameter(parameter.getKey(), parameter.getValue());
+            }
             if (fetchsize > 0) {
                 dbQuery.setMaxResults(fetchsize);
             }           
@@ -0,0 +1,276 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ra;
+
+import java.security.KeyPair;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.security.auth.DestroyFailedException;
+import javax.security.auth.Destroyable;
+
+import org.apache.log4j.Logger;
+import org.cesecore.keys.util.KeyTools;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * Pools of pre-generated key pairs for server generated keystores, so that the (for large RSA keys slow) key generation does not have to be
+ * done while the client is waiting.
+ *
+ * There is one pool per configured key algorithm and specification. A pool is refilled in the background by a bounded number of threads
+ * (shared by all pools) when the number of key pairs drops to the low watermark. A pooled key pair is only kept in memory, is handed out at
+ * most once and is discarded when it is older than the configured max age. When no pool exists for the requested key specification, or
+ * the pool is empty, the caller is expected to generate the key pair itself.
+ *
+ * The key pool threads are created outside of the EJB container, like the threads used for OCSP signing and parallel publishing, since
+ * they only perform CPU bound key generation without any transaction or database access. The configured pools are created and start
+ * filling at startup, and are shut down at undeploy, by the StartupSingletonBean.
+ *
+ * @version $Id$
+ */
+public class KeyPairPool {
+
+    private static final Logger log = Logger.getLogger(KeyPairPool.class);
+
+    private static volatile KeyPairPool instance = null;
+
+    private final Map<String, Pool> pools;
+    private final int poolSize;
+    private final int lowWatermark;
+    private final int threads;
+    private final long maxAgeMillis;
+    private final ThreadPoolExecutor executor;
+
+    /** A pooled key pair and when it was generated */
+    private static class PooledKeyPair {
+        private final KeyPair keyPair;
+        private final long created = System.currentTimeMillis();
+
+        private PooledKeyPair(final KeyPair keyPair) {
+            this.keyPair = keyPair;
+        }
+    }
+
+    /** The key pairs of one key algorithm and specification */
+    private static class Pool {
+        private final String keyAlg;
+        private final String keySpec;
+        /** Oldest key pairs first */
+        private final LinkedBlockingDeque<PooledKeyPair> keyPairs;
+        /** The number of refill tasks submitted for this pool that have not finished yet */
+        private final AtomicInteger activeRefillTasks = new AtomicInteger();
+
+        private Pool(final String keyAlg, final String keySpec, final int poolSize) {
+            this.keyAlg = keyAlg;
+            this.keySpec = keySpec;
+            this.keyPairs = new LinkedBlockingDeque<PooledKeyPair>(poolSize);
+        }
+    }
+
+    /**
+     * @param keySpecs the key algorithm and specification of each pool as &lt;keyalg&gt;_&lt;keyspec&gt;, e.g. RSA_2048
+     * @param poolSize the maximum number of key pairs in each pool
+     * @param lowWatermark the number of key pairs at or below which a pool is refilled
+     * @param threads the maximum number of threads generating key pairs
+     * @param maxAgeMillis the time a key pair may be kept in a pool before it is discarded
+     */
+    public KeyPairPool(final String[] keySpecs, final int poolSize, final int lowWatermark, final int threads, final long maxAgeMillis) {
+        this.poolSize = Math.max(1, poolSize);
+        this.lowWatermark = Math.max(0, Math.min(lowWatermark, this.poolSize - 1));
+        this.threads = Math.max(1, threads);
+        this.maxAgeMillis = maxAgeMillis;
+        final Map<String, Pool> pools = new HashMap<String, Pool>();
+        for (final String keySpec : keySpecs) {
+            final int separator = keySpec.indexOf('_');
+            if (separator < 1 || separator == keySpec.length() - 1) {
+                log.warn("Ignoring key pool specification '" + keySpec + "'. Expected <keyalg>_<keyspec>, e.g. RSA_2048.");
+                continue;
+            }
+            final Pool pool = new Pool(keySpec.substring(0, separator).trim(), keySpec.substring(separator + 1).trim(), this.poolSize);
+            pools.put(getPoolKey(pool.keyAlg, pool.keySpec), pool);
+        }
+        this.pools = Collections.unmodifiableMap(pools);
+        if (this.pools.isEmpty()) {
+            executor = null;
+        } else {
+            executor = new ThreadPoolExecutor(this.threads, this.threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                private final AtomicInteger threadNumber = new AtomicInteger();
+                @Override
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "KeyPairPool-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(Thread.MIN_PRIORITY);
+                    return thread;
+                }
+            });
+            // Don't keep idle threads around when the pools are full
+            executor.allowCoreThreadTimeOut(true);
+            log.info("Key pair pools enabled for " + this.pools.keySet() + " with size " + this.poolSize + ", low watermark " + this.lowWatermark
+                    + " and " + this.threads + " threads.");
+            for (final Pool pool : this.pools.values()) {
+                triggerRefill(pool);
+            }
+        }
+    }
+
+    /** @return the key pair pools configured in ejbca.properties */
+    public static KeyPairPool getInstance() {
+        if (instance == null) {
+            synchronized (KeyPairPool.class) {
+                if (instance == null) {
+                    instance = new KeyPairPool(EjbcaConfiguration.getKeyPoolKeySpecs(), EjbcaConfiguration.getKeyPoolSize(),
+                            EjbcaConfiguration.getKeyPoolLowWatermark(), EjbcaConfiguration.getKeyPoolThreads(), EjbcaConfiguration.getKeyPoolMaxAge());
+                }
+            }
+        }
+        return instance;
+    }
+
+    /** Shuts down the key pair pools configured in ejbca.properties, if they have been created. A later {@link #getInstance()} creates new pools. */
+    public static void shutdownInstance() {
+        synchronized (KeyPairPool.class) {
+            if (instance != null) {
+                instance.shutdown();
+                instance = null;
+            }
+        }
+    }
+
+    /**
+     * Removes a pre-generated key pair from the pool and triggers a refill if needed. The returned key pair is never handed out again.
+     *
+     * @param keyAlg the key algorithm, e.g. RSA
+     * @param keySpec the key specification, e.g. 2048
+     * @return a key pair or null if there is no pool for the key specification or the pool is currently empty
+     */
+    public KeyPair takeKeyPair(final String keyAlg, final String keySpec) {
+        final Pool pool = pools.get(getPoolKey(keyAlg, keySpec));
+        if (pool == null) {
+            return null;
+        }
+        PooledKeyPair pooledKeyPair;
+        while ((pooledKeyPair = pool.keyPairs.pollFirst()) != null && isExpired(pooledKeyPair)) {
+            destroy(pooledKeyPair);
+        }
+        triggerRefill(pool);
+        if (pooledKeyPair == null) {
+            if (log.isDebugEnabled()) {
+                log.debug("Key pair pool for " + getPoolKey(keyAlg, keySpec) + " is empty.");
+            }
+            return null;
+        }
+        return pooledKeyPair.keyPair;
+    }
+
+    /** @return the number of key pairs currently available in the pool, or -1 if there is no such pool */
+    public int getAvailable(final String keyAlg, final String keySpec) {
+        final Pool pool = pools.get(getPoolKey(keyAlg, keySpec));
+        return pool == null ? -1 : pool.keyPairs.size();
+    }
+
+    /** Discards all pooled key pairs and stops the background key generation. */
+    public void shutdown() {
+        if (executor != null) {
+            executor.shutdownNow();
+            try {
+                // Key generation checks for interrupts between key pairs, so this is at most the time to generate one key pair
+                if (!executor.awaitTermination(10, TimeUnit.SECONDS)) {
+                    log.warn("Key pair pool threads did not stop within 10 seconds.");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (final Pool pool : pools.values()) {
+            PooledKeyPair pooledKeyPair;
+            while ((pooledKeyPair = pool.keyPairs.pollFirst()) != null) {
+                destroy(pooledKeyPair);
+            }
+        }
+    }
+
+    /** Submits refill tasks for the pool if it is at or below the low watermark and is not already being refilled. */
+    private void triggerRefill(final Pool pool) {
+        final int missing = poolSize - pool.keyPairs.size();
+        if (missing <= 0 || poolSize - missing > lowWatermark) {
+            return;
+        }
+        final int tasks = Math.min(threads, missing);
+        if (!pool.activeRefillTasks.compareAndSet(0, tasks)) {
+            return;
+        }
+        for (int i = 0; i < tasks; i++) {
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            refill(pool);
+                        } finally {
+                            pool.activeRefillTasks.decrementAndGet();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // Shutting down
+                pool.activeRefillTasks.decrementAndGet();
+            }
+        }
+    }
+
+    /** Generates key pairs until the pool is full. */
+    private void refill(final Pool pool) {
+        try {
+            while (pool.keyPairs.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()) {
+                final PooledKeyPair pooledKeyPair = new PooledKeyPair(KeyTools.genKeys(pool.keySpec, pool.keyAlg));
+                if (!pool.keyPairs.offerLast(pooledKeyPair)) {
+                    // Filled by another thread in the meantime
+                    destroy(pooledKeyPair);
+                    break;
+                }
+            }
+        } catch (Exception e) { // NOPMD: Key generation failures should not kill the thread, the pool is just not refilled
+            log.warn("Unable to generate key pair for the " + getPoolKey(pool.keyAlg, pool.keySpec) + " key pair pool: " + e.getMessage());
+        }
+    }
+
+    private boolean isExpired(final PooledKeyPair pooledKeyPair) {
+        return System.currentTimeMillis() - pooledKeyPair.created > maxAgeMillis;
+    }
+
+    /** Destroys the private key of a key pair that is discarded from the pool, if the key implementation supports it. */
+    private void destroy(final PooledKeyPair pooledKeyPair) {
+        if (pooledKeyPair.keyPair.getPrivate() instanceof Destroyable) {
+            try {
+                ((Destroyable) pooledKeyPair.keyPair.getPrivate()).destroy();
+            } catch (DestroyFailedException e) {
+                // Most software key implementations do not support this, and the key will just be garbage collected
+                if (log.isTraceEnabled()) {
+                    log.trace("Unable to destroy discarded pooled private key: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private static String getPoolKey(final String keyAlg, final String keySpec) {
+        return keyAlg + "_" + keySpec;
+    }
+}
@@ -169,8 +169,13 @@ public class KeyStoreCreateSessionBean implements KeyStoreCreateSessionLocal, Ke
                     keyspec = userdata.getExtendedinformation().getKeyStoreAlgorithmSubType();
                 }
             }
-            // generate new keys.
-            rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            // Use pre-generated keys if a key pair pool is configured for this key specification, otherwise generate new keys.
+            rsaKeys = KeyPairPool.getInstance().takeKeyPair(keyalg, keyspec);
+            if (rsaKeys == null) {
+                rsaKeys = KeyTools.genKeys(keyspec, keyalg);
+            } else if (log.isDebugEnabled()) {
+                log.debug("Using pre-generated " + keyalg + " " + keyspec + " key pair for user: " + username);
+            }
     	}
     	X509Certificate cert = null;
     	if ((reusecertificate) && (keyData != null)) {
@@ -0,0 +1,193 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.upgrade;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+import javax.persistence.EntityManager;
+import javax.persistence.TypedQuery;
+
+import org.cesecore.certificates.certificateprofile.CertificateProfileData;
+import org.cesecore.util.JBossUnmarshaller;
+import org.ejbca.core.ejb.hardtoken.HardTokenData;
+import org.ejbca.core.ejb.hardtoken.HardTokenIssuerData;
+import org.ejbca.core.ejb.ra.raadmin.AdminPreferencesData;
+import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileData;
+
+/**
+ * Post-upgrade data migrations that are run by {@link UpgradeSessionBean} over all rows of a table.
+ *
+ * The rows are read in chunks ordered by primary key, where each chunk starts after the last key of the previous chunk, so a chunk is
+ * found with an index lookup no matter how far into the table the migration has come. Each chunk is migrated in its own transaction,
+ * and the last key of the migrated chunks is saved as a checkpoint that the migration resumes from. The migration of a row must therefore
+ * be idempotent, since a chunk can be migrated again if the migration is interrupted before its checkpoint is saved.
+ *
+ * Keys are handled as strings, so they can be saved in the upgrade configuration and passed through the local interface.
+ *
+ * @version $Id$
+ */
+enum PostUpgradeMigration {
+
+    /** (ECA-200:) Re-encodes HardTokenData.data that was serialized by JBoss CMP in EJB 2.1 */
+    HARDTOKENDATA_400 {
+        @Override
+        List<String> getKeys(final EntityManager entityManager, final String afterKey, final int maxResults) {
+            return getStringKeys(entityManager, HardTokenData.class, "tokenSN", afterKey, maxResults);
+        }
+        @Override
+        boolean migrate(final EntityManager entityManager, final String key) {
+            final HardTokenData htd = HardTokenData.findByTokenSN(entityManager, key);
+            if (htd == null) {
+                return false;
+            }
+            htd.setDataUnsafe(getDataUnsafe(htd.getDataUnsafe()));
+            return true;
+        }
+    },
+    /** (ECA-200:) Re-encodes CertificateProfileData.data that was serialized by JBoss CMP in EJB 2.1 */
+    CERTIFICATEPROFILEDATA_400 {
+        @Override
+        List<String> getKeys(final EntityManager entityManager, final String afterKey, final int maxResults) {
+            return getIntegerKeys(entityManager, CertificateProfileData.class, afterKey, maxResults);
+        }
+        @Override
+        boolean migrate(final EntityManager entityManager, final String key) {
+            final CertificateProfileData cpd = entityManager.find(CertificateProfileData.class, Integer.valueOf(key));
+            if (cpd == null) {
+                return false;
+            }
+            cpd.setDataUnsafe(getDataUnsafe(cpd.getDataUnsafe()));
+            return true;
+        }
+    },
+    /** (ECA-200:) Re-encodes HardTokenIssuerData.data that was serialized by JBoss CMP in EJB 2.1 */
+    HARDTOKENISSUERDATA_400 {
+        @Override
+        List<String> getKeys(final EntityManager entityManager, final String afterKey, final int maxResults) {
+            return getIntegerKeys(entityManager, HardTokenIssuerData.class, afterKey, maxResults);
+        }
+        @Override
+        boolean migrate(final EntityManager entityManager, final String key) {
+            final HardTokenIssuerData htid = HardTokenIssuerData.findByPK(entityManager, Integer.valueOf(key));
+            if (htid == null) {
+                return false;
+            }
+            htid.setDataUnsafe(getDataUnsafe(htid.getDataUnsafe()));
+            return true;
+        }
+    },
+    /** (ECA-200:) Re-encodes AdminPreferencesData.data that was serialized by JBoss CMP in EJB 2.1 */
+    ADMINPREFERENCESDATA_400 {
+        @Override
+        List<String> getKeys(final EntityManager entityManager, final String afterKey, final int maxResults) {
+            return getStringKeys(entityManager, AdminPreferencesData.class, "id", afterKey, maxResults);
+        }
+        @Override
+        boolean migrate(final EntityManager entityManager, final String key) {
+            final AdminPreferencesData apd = AdminPreferencesData.findById(entityManager, key);
+            if (apd == null) {
+                return false;
+            }
+            apd.setDataUnsafe(getDataUnsafe(apd.getDataUnsafe()));
+            return true;
+        }
+    },
+    /** (ECA-200:) Re-encodes EndEntityProfileData.data that was serialized by JBoss CMP in EJB 2.1 */
+    ENDENTITYPROFILEDATA_400 {
+        @Override
+        List<String> getKeys(final EntityManager entityManager, final String afterKey, final int maxResults) {
+            return getIntegerKeys(entityManager, EndEntityProfileData.class, afterKey, maxResults);
+        }
+        @Override
+        boolean migrate(final EntityManager entityManager, final String key) {
+            final EndEntityProfileData eepd = EndEntityProfileData.findById(entityManager, Integer.parseInt(key));
+            if (eepd == null) {
+                return false;
+            }
+            eepd.setDataUnsafe(getDataUnsafe(eepd.getDataUnsafe()));
+            return true;
+        }
+    };
+
+    /**
+     * @param entityManager the entity manager to read the keys with
+     * @param afterKey the last key of the previous chunk, or null to start from the first row
+     * @param maxResults the maximum number of keys to return
+     * @return the next keys after afterKey, in ascending order
+     */
+    abstract List<String> getKeys(EntityManager entityManager, String afterKey, int maxResults);
+
+    /**
+     * Migrates a row, which must be idempotent.
+     *
+     * @param entityManager the entity manager of the transaction of the chunk
+     * @param key the primary key of the row
+     * @return false if the row was removed after its key was read
+     */
+    abstract boolean migrate(EntityManager entityManager, String key);
+
+    private static List<String> getStringKeys(final EntityManager entityManager, final Class<?> entityClass, final String keyField,
+            final String afterKey, final int maxResults) {
+        final String entityName = entityClass.getSimpleName();
+        final TypedQuery<String> query;
+        if (afterKey == null) {
+            query = entityManager.createQuery("SELECT a." + keyField + " FROM " + entityName + " a ORDER BY a." + keyField, String.class);
+        } else {
+            query = entityManager.createQuery("SELECT a." + keyField + " FROM " + entityName + " a WHERE a." + keyField + ">:afterKey ORDER BY a."
+                    + keyField, String.class);
+            query.setParameter("afterKey", afterKey);
+        }
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
+
+    private static List<String> getIntegerKeys(final EntityManager entityManager, final Class<?> entityClass, final String afterKey,
+            final int maxResults) {
+        final String entityName = entityClass.getSimpleName();
+        final TypedQuery<Integer> query;
+        if (afterKey == null) {
+            query = entityManager.createQuery("SELECT a.id FROM " + entityName + " a ORDER BY a.id", Integer.class);
+        } else {
+            query = entityManager.createQuery("SELECT a.id FROM " + entityName + " a WHERE a.id>:afterKey ORDER BY a.id", Integer.class);
+            query.setParameter("afterKey", Integer.valueOf(afterKey));
+        }
+        query.setMaxResults(maxResults);
+        final List<String> keys = new ArrayList<String>();
+        for (final Integer id : query.getResultList()) {
+            keys.add(id.toString());
+        }
+        return keys;
+    }
+
+    /**
+     * Extracts the data of an entity, that is either serialized by JBoss CMP or as a regular object. When the wrong class is given
+     * JBossUnmarshaller can either return null, or throw an exception.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static HashMap getDataUnsafe(final Serializable s) {
+        HashMap h = null;
+        try {
+            h = JBossUnmarshaller.extractObject(LinkedHashMap.class, s);
+            if (h == null) {
+                h = new LinkedHashMap(JBossUnmarshaller.extractObject(HashMap.class, s));
+            }
+        } catch (ClassCastException e) {
+            h = new LinkedHashMap(JBossUnmarshaller.extractObject(HashMap.class, s));
+        }
+        return h;
+    }
+}
@@ -0,0 +1,147 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.upgrade;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.log4j.Logger;
+
+/**
+ * Runs a {@link PostUpgradeMigration} over all rows of its table, in chunks that are each migrated in a new transaction, with a number of
+ * chunks migrated in parallel. The checkpoint is only moved past a chunk when all chunks before it have been migrated, so a migration that
+ * is interrupted or fails resumes from the first chunk that may not have been migrated the next time the post-upgrade is started.
+ *
+ * The reading of keys, the migration of chunks and the storage of the checkpoint are left to the caller, which is
+ * {@link UpgradeSessionBean}.
+ *
+ * @version $Id$
+ */
+abstract class PostUpgradeMigrationRunner {
+
+    private static final Logger log = Logger.getLogger(PostUpgradeMigrationRunner.class);
+
+    private final String name;
+    private final int chunkSize;
+    private final int threads;
+
+    /**
+     * @param name the name of the migration, that the checkpoint is stored under
+     * @param chunkSize the number of rows to migrate in each transaction
+     * @param threads the maximum number of chunks to migrate in parallel
+     */
+    PostUpgradeMigrationRunner(final String name, final int chunkSize, final int threads) {
+        this.name = name;
+        this.chunkSize = chunkSize;
+        this.threads = threads;
+    }
+
+    /** @return the next keys after afterKey, or after the start of the table if it is null, in ascending order */
+    protected abstract List<String> getKeys(String afterKey, int maxResults);
+
+    /** Migrates a chunk in a new transaction, in parallel with other chunks if threads is more than 1. */
+    protected abstract Future<Integer> migrateChunk(List<String> keys);
+
+    /** @return the last key of the migrated chunks, or null if no chunk has been migrated */
+    protected abstract String getCheckpoint();
+
+    protected abstract void setCheckpoint(String key);
+
+    /** @return true if all rows have been migrated */
+    protected abstract boolean isCompleted();
+
+    /** Marks all rows as migrated and removes the checkpoint. */
+    protected abstract void setCompleted();
+
+    /** @return true if all rows have been migrated */
+    boolean run() {
+        if (isCompleted()) {
+            log.info(" Migration " + name + " has already been completed.");
+            return true;
+        }
+        final String checkpoint = getCheckpoint();
+        if (checkpoint == null) {
+            log.info(" Starting migration " + name + ".");
+        } else {
+            log.info(" Resuming migration " + name + " after key '" + checkpoint + "'.");
+        }
+        final long startTime = System.currentTimeMillis();
+        // Chunks that are being migrated, in key order, as the future result and the last key of the chunk
+        final LinkedHashMap<Future<Integer>, String> inProgress = new LinkedHashMap<>();
+        String lastReadKey = checkpoint;
+        boolean moreKeys = true;
+        long migrated = 0;
+        try {
+            while (moreKeys || !inProgress.isEmpty()) {
+                while (moreKeys && inProgress.size() < threads) {
+                    final List<String> keys = getKeys(lastReadKey, chunkSize);
+                    moreKeys = keys.size() == chunkSize;
+                    if (keys.isEmpty()) {
+                        break;
+                    }
+                    lastReadKey = keys.get(keys.size()-1);
+                    inProgress.put(migrateChunk(keys), lastReadKey);
+                }
+                if (inProgress.isEmpty()) {
+                    break;
+                }
+                final Future<Integer> oldest = inProgress.keySet().iterator().next();
+                final String lastKey = inProgress.remove(oldest);
+                migrated += oldest.get().intValue();
+                setCheckpoint(lastKey);
+                final long elapsed = Math.max(1L, System.currentTimeMillis() - startTime);
+                log.info(" - Migration " + name + ": " + migrated + " rows migrated up to key '" + lastKey + "' (" + (migrated * 1000L / elapsed)
+                        + " rows/s).");
+            }
+        } catch (InterruptedException e) {
+            log.error("Migration " + name + " was interrupted. It will resume from the last checkpoint.");
+            // The chunks that were started are still migrated, so move the checkpoint past them to not migrate them again
+            awaitChunks(inProgress, true);
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException | RuntimeException e) {
+            log.error("Migration " + name + " failed. It will resume from the last checkpoint: " + e.getMessage(), e);
+            awaitChunks(inProgress, false);
+            return false;
+        }
+        setCompleted();
+        log.info(" Finished migration " + name + ": " + migrated + " rows migrated in " + (System.currentTimeMillis() - startTime) + " ms.");
+        return true;
+    }
+
+    /**
+     * Waits for chunks that are still being migrated, so they can not be migrated at the same time as a resumed migration.
+     *
+     * @param moveCheckpoint true to move the checkpoint past the chunks that were migrated, up to the first one that failed
+     */
+    private void awaitChunks(final Map<Future<Integer>, String> chunks, final boolean moveCheckpoint) {
+        boolean allMigrated = moveCheckpoint;
+        for (final Map.Entry<Future<Integer>, String> chunk : chunks.entrySet()) {
+            try {
+                chunk.getKey().get();
+                if (allMigrated) {
+                    setCheckpoint(chunk.getValue());
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                allMigrated = false;
+                log.debug("Migration of chunk failed: " + e.getMessage());
+            }
+        }
+    }
+}
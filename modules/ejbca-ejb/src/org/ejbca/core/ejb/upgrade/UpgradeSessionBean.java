@@ -16,7 +16,6 @@ package org.ejbca.core.ejb.upgrade;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.Serializable;
 import java.math.BigInteger;
 import java.net.URL;
 import java.security.cert.Certificate;
@@ -77,7 +76,6 @@ import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.certextensions.AvailableCustomCertificateExtensionsConfiguration;
 import org.cesecore.certificates.certificateprofile.CertificatePolicy;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
-import org.cesecore.certificates.certificateprofile.CertificateProfileData;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSessionLocal;
 import org.cesecore.certificates.ocsp.OcspResponseGeneratorSessionLocal;
 import org.cesecore.config.AvailableExtendedKeyUsagesConfiguration;
@@ -99,7 +97,6 @@ import org.cesecore.roles.management.RoleSessionLocal;
 import org.cesecore.roles.member.RoleMember;
 import org.cesecore.roles.member.RoleMemberDataSessionLocal;
 import org.cesecore.util.CertTools;
-import org.cesecore.util.JBossUnmarshaller;
 import org.cesecore.util.ui.PropertyValidationException;
 import org.ejbca.config.CmpConfiguration;
 import org.ejbca.config.DatabaseConfiguration;
@@ -117,10 +114,6 @@ import org.ejbca.core.ejb.authentication.cli.CliUserAccessMatchValue;
 import org.ejbca.core.ejb.authorization.AuthorizationSystemSessionLocal;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
-import org.ejbca.core.ejb.hardtoken.HardTokenData;
-import org.ejbca.core.ejb.hardtoken.HardTokenIssuerData;
-import org.ejbca.core.ejb.ra.raadmin.AdminPreferencesData;
-import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileData;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionLocal;
 import org.ejbca.core.ejb.ra.userdatasource.UserDataSourceSessionLocal;
 import org.ejbca.core.model.approval.Approval;
@@ -610,100 +603,97 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
      */
     private boolean postMigrateDatabase4_0_0() {
     	log.error("(this is not an error) Starting post upgrade from EJBCA 3.11.x to EJBCA 4.0.x");
-    	boolean ret = true;
-    	upgradeSession.postMigrateDatabase400SmallTables();	// Migrate small tables in a new transaction 
-    	log.info(" Processing HardTokenData entities.");
-    	log.info(" - Building a list of entities.");
-    	final List<String> tokenSNs = HardTokenData.findAllTokenSN(entityManager);
-    	int position = 0;
-    	final int chunkSize = 1000;
-    	while (position < tokenSNs.size()) {
-        	log.info(" - Processing entity " + position + " to " + Math.min(position+chunkSize-1, tokenSNs.size()-1) + ".");
-        	// Migrate HardTokenData table in chunks, each running in a new transaction
-    		upgradeSession.postMigrateDatabase400HardTokenData(getSubSet(tokenSNs, position, chunkSize));
-    		position += chunkSize;
-    	}
+    	upgradeSession.postMigrateDatabase400GlobalConfiguration();	// Migrate the single row in a new transaction
+    	// LogConfiguration removed for EJBCA 5.0, so no upgrade of that needed
+    	final boolean ret = runMigration(PostUpgradeMigration.CERTIFICATEPROFILEDATA_400) && runMigration(PostUpgradeMigration.HARDTOKENISSUERDATA_400)
+    	        && runMigration(PostUpgradeMigration.ADMINPREFERENCESDATA_400) && runMigration(PostUpgradeMigration.ENDENTITYPROFILEDATA_400)
+    	        && runMigration(PostUpgradeMigration.HARDTOKENDATA_400);
     	log.error("(this is not an error) Finished post upgrade from EJBCA 3.11.x to EJBCA 4.0.x with result: "+ret);
         return ret;
     }
-        
-    /** @return a subset of the source list with index as its first item and index+count-1 as its last. */
-    private <T> List<T> getSubSet(final List<T> source, final int index, final int count) {
-    	List<T> ret = new ArrayList<T>(count);
-    	for (int i=0; i<count; i++) {
-            if (source.size() > (index + i)) {
-                ret.add(source.get(index + i));
 
+    /**
+     * Runs a post-upgrade data migration over all rows of its table, in chunks of upgrade.migration.chunksize rows that are each migrated in
+     * a new transaction, with up to upgrade.migration.threads chunks migrated in parallel. The checkpoint is saved in the upgrade
+     * configuration, see {@link PostUpgradeMigrationRunner}. Rows are only locked for the duration of a chunk, so the migration can run while
+     * the node serves traffic.
+     * 
+     * @return true if all rows have been migrated
+     */
+    private boolean runMigration(final PostUpgradeMigration migration) {
+        final String name = migration.name();
+        final int threads = EjbcaConfiguration.getUpgradeMigrationThreads();
+        return new PostUpgradeMigrationRunner(name, EjbcaConfiguration.getUpgradeMigrationChunkSize(), threads) {
+            @Override
+            protected List<String> getKeys(final String afterKey, final int maxResults) {
+                return migration.getKeys(entityManager, afterKey, maxResults);
             }
-    	}
-    	return ret;
+            @Override
+            protected Future<Integer> migrateChunk(final List<String> keys) {
+                if (threads == 1) {
+                    return new AsyncResult<Integer>(Integer.valueOf(upgradeSession.migrateChunk(name, keys)));
+                }
+                return upgradeSession.migrateChunkAsync(name, keys);
+            }
+            @Override
+            protected String getCheckpoint() {
+                return getGlobalUpgradeConfiguration().getMigrationCheckpoint(name);
+            }
+            @Override
+            protected void setCheckpoint(final String key) {
+                final GlobalUpgradeConfiguration guc = getGlobalUpgradeConfiguration();
+                guc.setMigrationCheckpoint(name, key);
+                saveGlobalUpgradeConfiguration(guc);
+            }
+            @Override
+            protected boolean isCompleted() {
+                return getGlobalUpgradeConfiguration().isMigrationCompleted(name);
+            }
+            @Override
+            protected void setCompleted() {
+                final GlobalUpgradeConfiguration guc = getGlobalUpgradeConfiguration();
+                guc.setMigrationCompleted(name, true);
+                guc.setMigrationCheckpoint(name, null);
+                saveGlobalUpgradeConfiguration(guc);
+            }
+        }.run();
+    }
+
+    private void saveGlobalUpgradeConfiguration(final GlobalUpgradeConfiguration guc) {
+        try {
+            globalConfigurationSession.saveConfiguration(authenticationToken, guc);
+        } catch (AuthorizationDeniedException e) {
+            throw new IllegalStateException(e);
+        }
     }
 
-    @SuppressWarnings("rawtypes")
     @Override
-    public void postMigrateDatabase400SmallTables() {
-    	// LogConfiguration removed for EJBCA 5.0, so no upgrade of that needed
-    	log.info(" Processing CertificateProfileData entities.");
-    	final List<CertificateProfileData> cpds = CertificateProfileData.findAll(entityManager);
-    	for (CertificateProfileData cpd : cpds) {
-    		// When the wrong class is given it can either return null, or throw an exception
-    		HashMap h = getDataUnsafe(cpd.getDataUnsafe());
-    		cpd.setDataUnsafe(h);
-    	}
-    	log.info(" Processing HardTokenIssuerData entities.");
-    	final List<HardTokenIssuerData> htids = HardTokenIssuerData.findAll(entityManager);
-    	for (HardTokenIssuerData htid : htids) {
-    		HashMap h = getDataUnsafe(htid.getDataUnsafe());
-    		htid.setDataUnsafe(h);
-    	}
-    	log.info(" Processing AdminPreferencesData entities.");
-    	final List<AdminPreferencesData> apds = AdminPreferencesData.findAll(entityManager);
-    	for (AdminPreferencesData apd : apds) {
-    		HashMap h = getDataUnsafe(apd.getDataUnsafe());
-    		apd.setDataUnsafe(h);
-    	}
-    	log.info(" Processing EndEntityProfileData entities.");
-    	final List<EndEntityProfileData> eepds = EndEntityProfileData.findAll(entityManager);
-    	for (EndEntityProfileData eepd : eepds) {
-    		HashMap h = getDataUnsafe(eepd.getDataUnsafe());
-    		eepd.setDataUnsafe(h);
-    	}
-    	log.info(" Processing GlobalConfigurationData entities.");
-    	GlobalConfigurationData gcd = globalConfigurationSession.findByConfigurationId(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
-		HashMap h = getDataUnsafe(gcd.getDataUnsafe());
-    	gcd.setObjectUnsafe(h);
+    public int migrateChunk(final String migration, final List<String> keys) {
+        final PostUpgradeMigration postUpgradeMigration = PostUpgradeMigration.valueOf(migration);
+        int migrated = 0;
+        for (final String key : keys) {
+            if (postUpgradeMigration.migrate(entityManager, key)) {
+                migrated++;
+            } else {
+                log.warn("Row was removed during migration " + migration + ". Ignoring row with key '" + key + "'.");
+            }
+        }
+        return migrated;
+    }
+
+    @Asynchronous
+    @Override
+    public Future<Integer> migrateChunkAsync(final String migration, final List<String> keys) {
+        return new AsyncResult<Integer>(Integer.valueOf(migrateChunk(migration, keys)));
     }
 
-	/**
-	 * @param cpd
-	 * @return
-	 */
-	@SuppressWarnings({ "unchecked", "rawtypes" })
-    private HashMap getDataUnsafe(Serializable s) {
-		HashMap h = null; 
-		try {
-			h = JBossUnmarshaller.extractObject(LinkedHashMap.class, s);
-			if (h == null) {
-				h = new LinkedHashMap(JBossUnmarshaller.extractObject(HashMap.class, s));
-			}
-		} catch (ClassCastException e) {
-			h = new LinkedHashMap(JBossUnmarshaller.extractObject(HashMap.class, s));
-		}
-		return h;
-	}
-    
     @SuppressWarnings("rawtypes")
     @Override
-    public void postMigrateDatabase400HardTokenData(List<String> subSet) {
-    	for (String tokenSN : subSet) {
-    		HardTokenData htd = HardTokenData.findByTokenSN(entityManager, tokenSN);
-    		if (htd != null) {
-        		HashMap h = getDataUnsafe(htd);
-        		htd.setDataUnsafe(h);
-    		} else {
-    	    	log.warn("Hard token was removed during processing. Ignoring token with serial number '" + tokenSN + "'.");
-    		}
-    	}
+    public void postMigrateDatabase400GlobalConfiguration() {
+    	log.info(" Processing GlobalConfigurationData entities.");
+    	GlobalConfigurationData gcd = globalConfigurationSession.findByConfigurationId(GlobalConfiguration.GLOBAL_CONFIGURATION_ID);
+		HashMap h = PostUpgradeMigration.getDataUnsafe(gcd.getDataUnsafe());
+    	gcd.setObjectUnsafe(h);
     }
 
     /**
@@ -1227,38 +1217,48 @@ public class UpgradeSessionBean implements UpgradeSessionLocal, UpgradeSessionRe
             // to the newly created partition so that the new code will recognize it. Note that an AccumulativeApprovalProfile 
             // only has one step and one partition. The step ID is '0', which is the default step ID in an approval, which 
             // is why the step ID in an approval does not need updating the same way as the partition ID needs updating.
-            List<ApprovalData> approvalRequests = approvalSession.findWaitingForApprovalApprovalDataLocal();
+            // The requests are read in chunks, so that all waiting requests never have to be held in memory at the same time
+            final int chunkSize = EjbcaConfiguration.getUpgradeMigrationChunkSize();
+            int lastRequestId = Integer.MIN_VALUE;
+            List<ApprovalData> approvalRequests = approvalSession.findWaitingForApprovalApprovalDataLocal(lastRequestId, chunkSize);
             if (approvalRequests.isEmpty()) {
                 log.debug("migrateDatabase660: No approval requests to upgrade");                
             } else {
                 log.debug("migrateDatabase660: Upgrading approval requests");
             }
-            for(ApprovalData request : approvalRequests) {
-                Collection<Approval> approvals = request.getApprovals();
-                if(approvals.size() > 0) {
-                    final int nrOfRequiredApprovals = request.getRemainingapprovals() + approvals.size();
-                    final Integer partitionId = approvalPartitionCache.get(Integer.valueOf(nrOfRequiredApprovals));
-                    if (partitionId != null) {
-                        // It's an old approval from before 6.6.0, that needs upgrading
-                        for (Approval approval : approvals) {
-                            approval.setPartitionId(partitionId);
-                        }
-                        approvalSession.setApprovals(request, approvals);
-                    } else {
-                        // Might be an approval from 6.6.0, in case the upgrade fails at first and the user adds an approval (in 6.6 or later) before the successful upgrade.
-                        // Check that this is really the case
-                        boolean error = false;
-                        for (Approval approval : approvals) {
-                            if (approval.getPartitionId() == 0) { // not from 6.6.0, and can not be upgraded
-                                error = true;
+            while (!approvalRequests.isEmpty()) {
+                for (ApprovalData request : approvalRequests) {
+                    lastRequestId = request.getId();
+                    Collection<Approval> approvals = request.getApprovals();
+                    if(approvals.size() > 0) {
+                        final int nrOfRequiredApprovals = request.getRemainingapprovals() + approvals.size();
+                        final Integer partitionId = approvalPartitionCache.get(Integer.valueOf(nrOfRequiredApprovals));
+                        if (partitionId != null) {
+                            // It's an old approval from before 6.6.0, that needs upgrading
+                            for (Approval approval : approvals) {
+                                approval.setPartitionId(partitionId);
+                            }
+                            approvalSession.setApprovals(request, approvals);
+                        } else {
+                            // Might be an approval from 6.6.0, in case the upgrade fails at first and the user adds an approval (in 6.6 or later) before the successful upgrade.
+                            // Check that this is really the case
+                            boolean error = false;
+                            for (Approval approval : approvals) {
+                                if (approval.getPartitionId() == 0) { // not from 6.6.0, and can not be upgraded
+                                    error = true;
+                                }
+                            }
+                            if (error) {
+                                log.error("An approval in the approval request with ID " + request.getId() + " could not be upgraded because it could not be mapped to an accumulative approval profile. The approvals in this request have been deleted");
+                                approvalSession.setApprovals(request, new ArrayList<Approval>());
                             }
-                        }
-                        if (error) {
-                            log.error("An approval in the approval request with ID " + request.getId() + " could not be upgraded because it could not be mapped to an accumulative approval profile. The approvals in this request have been deleted");
-                            approvalSession.setApprovals(request, new ArrayList<Approval>());
                         }
                     }
                 }
+                if (approvalRequests.size() < chunkSize) {
+                    break;
+                }
+                approvalRequests = approvalSession.findWaitingForApprovalApprovalDataLocal(lastRequestId, chunkSize);
             }
             
         } catch (AuthorizationDeniedException e) {
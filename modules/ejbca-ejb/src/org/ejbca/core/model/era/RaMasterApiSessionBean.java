@@ -84,6 +84,7 @@ import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateCreateException;
 import org.cesecore.certificates.certificate.CertificateCreateSessionLocal;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateRevokeException;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.CertificateWrapper;
@@ -1092,8 +1093,14 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         final List<String> fingerprints;
         try {
             fingerprints = query.getResultList();
-            for (final String fingerprint : fingerprints) {
-                response.getCdws().add(certificateStoreSession.getCertificateData(fingerprint));
+            if (request.isCertificateInfosSupported()) {
+                // Read only the meta data of the found certificates, the certificates themselves are fetched with searchForCertificate when needed
+                response.getCertificateInfos().addAll(certificateStoreSession.getCertificateInfos(fingerprints));
+            } else {
+                // Older RA peers expect the full certificates
+                for (final String fingerprint : fingerprints) {
+                    response.getCdws().add(certificateStoreSession.getCertificateData(fingerprint));
+                }
             }
             response.setMightHaveMoreResults(fingerprints.size()==maxResults);
             if (log.isDebugEnabled()) {
@@ -1682,10 +1689,17 @@ public class RaMasterApiSessionBean implements RaMasterApiSessionLocal {
         }
         final List<CertificateWrapper> retval = new ArrayList<>();
         if (endEntityAccessSession.findUser(authenticationToken, username) != null) { // checks authorization on CA and profiles and view_end_entity
-            Collection<CertificateWrapper> certs = certificateStoreSession.findCertificatesByUsername(username);
-            if (certs.size() > 0) {
-                // The latest certificate will be first
-                CertificateWrapper firstcert = certs.iterator().next();
+            final List<CertificateInfo> certificateInfos = certificateStoreSession.getCertificateInfosByUsername(username, false, null);
+            if (certificateInfos.size() > 0) {
+                // The latest certificate will be first, so only read certificates until one is found instead of all certificates of the user
+                CertificateWrapper firstcert = null;
+                for (final CertificateInfo certificateInfo : certificateInfos) {
+                    final Certificate certificate = certificateStoreSession.findCertificateByFingerprint(certificateInfo.getFingerprint());
+                    if (certificate != null) {
+                        firstcert = EJBTools.wrap(certificate);
+                        break;
+                    }
+                }
                 Certificate lastcert;
                 if (firstcert != null) {
                     retval.add(firstcert);
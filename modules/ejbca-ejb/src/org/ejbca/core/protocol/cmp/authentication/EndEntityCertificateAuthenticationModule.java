@@ -63,12 +63,14 @@ import org.cesecore.certificates.ca.IllegalNameException;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateStoreSession;
+import org.cesecore.certificates.certificate.VerifiedCertificateCache;
 import org.cesecore.certificates.certificate.exception.CertificateSerialNumberException;
 import org.cesecore.certificates.certificateprofile.CertificateProfile;
 import org.cesecore.certificates.certificateprofile.CertificateProfileSession;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.util.CertTools;
 import org.ejbca.config.CmpConfiguration;
+import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.authentication.web.WebAuthenticationProviderSessionLocal;
 import org.ejbca.core.ejb.ra.EndEntityAccessSession;
 import org.ejbca.core.ejb.ra.EndEntityManagementSession;
@@ -333,30 +335,40 @@ public class EndEntityCertificateAuthenticationModule implements ICMPAuthenticat
             }
         } else if(ramode) {
             
-            // Get the CA to use for the authentication
-            CAInfo cainfo = getCAInfoByName(authenticationparameter);
-            if(cainfo == null) {
-                return false;
-            }
-            
-            // Check that extraCert is in the Database
-            CertificateInfo certinfo = certSession.getCertificateInfo(CertTools.getFingerprintAsString(extraCert));
-            if(certinfo == null) {
-                this.errorMessage = "The certificate attached to the PKIMessage in the extraCert field could not be found in the database.";
-                return false;
-            }
-            
-            // More extraCert verifications
-            if(!isExtraCertValidAndIssuedByCA(extraCertPath, cainfo) || !isExtraCertActive(certinfo)) {
-                return false;
-            } else {
-                if(log.isDebugEnabled()) {
-                    log.debug("Certificate in extraCerts field is issued by " + cainfo.getName() + ", is valid and active");
+            // The same RA certificates are used for many messages, so the verifications of the certificate itself are cached
+            final String fingerprint = CertTools.getFingerprintAsString(extraCert);
+            final String cacheContext = "CMP alias " + confAlias + ", CA " + authenticationparameter;
+            if (!VerifiedCertificateCache.INSTANCE.isVerified(cacheContext, fingerprint)) {
+                // Get the CA to use for the authentication
+                CAInfo cainfo = getCAInfoByName(authenticationparameter);
+                if(cainfo == null) {
+                    return false;
+                }
+
+                // Check that extraCert is in the Database
+                CertificateInfo certinfo = certSession.getCertificateInfo(fingerprint);
+                if(certinfo == null) {
+                    this.errorMessage = "The certificate attached to the PKIMessage in the extraCert field could not be found in the database.";
+                    return false;
+                }
+
+                // More extraCert verifications
+                if(!isExtraCertValidAndIssuedByCA(extraCertPath, cainfo) || !isExtraCertActive(certinfo)) {
+                    return false;
+                } else {
+                    if(log.isDebugEnabled()) {
+                        log.debug("Certificate in extraCerts field is issued by " + cainfo.getName() + ", is valid and active");
+                    }
+                }
+                final long cacheTime = EjbcaConfiguration.getCacheCmpExtraCertsTime();
+                if (cacheTime > 0) {
+                    final long expireTime = Math.min(System.currentTimeMillis() + cacheTime, CertTools.getNotAfter(extraCert).getTime());
+                    VerifiedCertificateCache.INSTANCE.setVerified(cacheContext, fingerprint, expireTime);
                 }
             }
 
             // Check that extraCert belong to an admin with sufficient access rights
-            if(!isAuthorizedAdmin(certinfo, msg, endentity)){
+            if(!isAuthorizedAdmin(msg, endentity)){
                 this.errorMessage = "'" + CertTools.getSubjectDN(extraCert) + "' is not an authorized administrator.";
                 return false;
             }
@@ -564,13 +576,12 @@ public class EndEntityCertificateAuthenticationModule implements ICMPAuthenticat
     /**
      * Checks if cert belongs to an administrator who is authorized to process the request.
      * 
-     * @param certInfo
      * @param msg
      * @param endentity Only used when the message received is a KeyUpdateRequest in RA mode. The administrator is authorized to handle a KeyUpdateRequest in RA mode if 
      *                  it is authorized to the EndEntityProfile, CertificateProfile and the CA specified in this end entity.
      * @return true if the administrator is authorized to process the request and false otherwise.
      */
-    private boolean isAuthorizedAdmin(final CertificateInfo certInfo, final PKIMessage msg, final EndEntityInformation endentity) {
+    private boolean isAuthorizedAdmin(final PKIMessage msg, final EndEntityInformation endentity) {
     
         X509Certificate x509cert = (X509Certificate) extraCert;
         Set<X509Certificate> credentials = new HashSet<X509Certificate>();
@@ -96,4 +96,23 @@ public class UserDataTest {
 		assertEquals(3, ei.getTokenType());
 		assertEquals(65, ei.getType().getHexValue());
 	}
+
+    @Test
+    public void test03VerifiedPasswordCache() throws Exception {
+        final VerifiedPasswordCache cache = VerifiedPasswordCache.INSTANCE;
+        UserData data = new UserData();
+        data.setUsername("verifiedpasswordtest");
+        data.setPassword("foo123");
+        final String hash = data.getPasswordHash();
+        assertFalse(cache.isVerified("verifiedpasswordtest", hash, "foo123"));
+        cache.setVerified("verifiedpasswordtest", hash, "foo123");
+        assertTrue(cache.isVerified("verifiedpasswordtest", hash, "foo123"));
+        assertFalse("Another password should not be verified.", cache.isVerified("verifiedpasswordtest", hash, "bar123"));
+        assertFalse("Another user should not be verified.", cache.isVerified("verifiedpasswordtest2", hash, "foo123"));
+        // A new password hash, for example set on another node, does not match the cached verification
+        data.setPassword("foo123");
+        assertFalse(cache.isVerified("verifiedpasswordtest", data.getPasswordHash(), "foo123"));
+        cache.invalidate("verifiedpasswordtest");
+        assertFalse(cache.isVerified("verifiedpasswordtest", hash, "foo123"));
+    }
 }
@@ -13,11 +13,7 @@
 
 package org.ejbca.core.ejb.approval;
 
-import java.io.ByteArrayInputStream;
-import java.io.IOException;
-import java.io.ObjectInputStream;
 import java.io.Serializable;
-import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -31,7 +27,6 @@ import javax.persistence.Transient;
 import org.apache.log4j.Logger;
 import org.cesecore.dbprotection.ProtectedData;
 import org.cesecore.dbprotection.ProtectionStringBuilder;
-import org.cesecore.util.Base64;
 import org.ejbca.core.model.approval.Approval;
 import org.ejbca.core.model.approval.ApprovalDataVO;
 import org.ejbca.core.model.approval.ApprovalRequest;
@@ -324,44 +319,29 @@ s	 */
     @Transient
     public ApprovalDataVO getApprovalDataVO() {
         hasRequestOrApprovalExpired();
+        // The approvals and the request are decoded by the value object when they are first used
         ApprovalDataVO result = new ApprovalDataVO(getId(), getApprovalid(), getApprovaltype(), getEndentityprofileid(), getCaid(), getReqadmincertissuerdn(),
-                getReqadmincertsn(), getStatus(), getApprovals(), getApprovalRequest(), getRequestDate(), getExpireDate());
+                getReqadmincertsn(), getStatus(), getApprovaldata(), getRequestdata(), getRequestDate(), getExpireDate());
         return result;
     }
     
     @Transient
     public ApprovalRequest getApprovalRequest() {
-        ApprovalRequest retval = null;      
         try {
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.decode(getRequestdata().getBytes())));
-            retval= (ApprovalRequest) ois.readObject();
-        } catch (IOException e) {
-            log.error("Error building approval request.",e);
-            throw new IllegalStateException(e);
-        } catch (ClassNotFoundException e) {
-            log.error("Error building approval request.",e);
-            throw new IllegalStateException(e);
+            return ApprovalDataVO.decodeApprovalRequest(getRequestdata());
+        } catch (IllegalStateException e) {
+            log.error("Error building approval request.", e);
+            throw e;
         }
-        return retval;
     }
     
     @Transient
     public List<Approval> getApprovals() {
-        List<Approval> retval = new ArrayList<Approval>();
-        try{
-            ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(Base64.decode(getApprovaldata().getBytes())));
-            int size = ois.readInt();
-            for(int i=0;i<size;i++){
-                Approval next = (Approval) ois.readObject();
-                retval.add(next);
-            }
-        } catch (IOException e) {
-            log.error("Error building approvals.",e);
-            throw new IllegalStateException(e);
-        } catch (ClassNotFoundException e) {
-            log.error("Error building approvals.",e);
-            throw new IllegalStateException(e);
+        try {
+            return ApprovalDataVO.decodeApprovals(getApprovaldata());
+        } catch (IllegalStateException e) {
+            log.error("Error building approvals.", e);
+            throw e;
         }
-        return retval;
     }
 }
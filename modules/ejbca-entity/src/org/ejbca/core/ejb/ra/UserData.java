@@ -15,20 +15,25 @@ package org.ejbca.core.ejb.ra;
 
 import java.io.Serializable;
 import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
 import java.util.Date;
 import java.util.List;
 
+import javax.persistence.ColumnResult;
 import javax.persistence.Entity;
 import javax.persistence.EntityManager;
 import javax.persistence.PostLoad;
 import javax.persistence.PrePersist;
+import javax.persistence.PreRemove;
 import javax.persistence.PreUpdate;
 import javax.persistence.Query;
+import javax.persistence.SqlResultSetMapping;
 import javax.persistence.Table;
 import javax.persistence.Transient;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.endentity.EndEntityConstants;
 import org.cesecore.certificates.endentity.EndEntityInformation;
 import org.cesecore.certificates.endentity.EndEntityType;
@@ -54,6 +59,10 @@ import org.ejbca.util.crypto.SupportedPasswordHashAlgorithm;
  */
 @Entity
 @Table(name = "UserData")
+@SqlResultSetMapping(name = "ExpirationNotificationSubset", columns = { @ColumnResult(name = "fingerprint"), @ColumnResult(name = "serialNumber"),
+        @ColumnResult(name = "expireDate"), @ColumnResult(name = "certSubjectDN"), @ColumnResult(name = "issuerDN"), @ColumnResult(name = "username"),
+        @ColumnResult(name = "userSubjectDN"), @ColumnResult(name = "subjectEmail"), @ColumnResult(name = "clearPassword"),
+        @ColumnResult(name = "timeCreated"), @ColumnResult(name = "timeModified") })
 public class UserData extends ProtectedData implements Serializable {
 
     private static final long serialVersionUID = 1L;
@@ -622,6 +631,13 @@ public class UserData extends ProtectedData implements Serializable {
     @Override
     protected void protectData() {
         super.protectData();
+        // Any change of the end entity, such as a new password or status, must not be hidden by an earlier password verification
+        VerifiedPasswordCache.INSTANCE.invalidate(getUsername());
+    }
+
+    @PreRemove
+    protected void removeData() {
+        VerifiedPasswordCache.INSTANCE.invalidate(getUsername());
     }
 
     @PostLoad
@@ -793,4 +809,55 @@ public class UserData extends ProtectedData implements Serializable {
         query.setParameter("serial", "%SN="+ serialnumber + "%");
         return query.getResultList();
     }
+
+    /**
+     * Fetches a page of the certificates to notify about expiration, together with the end entity information needed for the notification,
+     * ordered by fingerprint. See CertificateData.findExpirationInfo for the selection criteria. Certificates without end entity are included,
+     * with null end entity values.
+     * 
+     * @param cas A list of CAs that the sought certificates should be issued from
+     * @param certificateProfiles A list if certificateprofiles to sort from. Will be ignored if left empty.
+     * @param activeNotifiedExpireDateMin The minimal date for expiration notification
+     * @param activeNotifiedExpireDateMax The maxmimal date for expiration notification
+     * @param activeExpireDateMin the current rune timestamp + the threshold
+     * @param afterFingerprint only certificates with a fingerprint after this one are returned, or null for the first page
+     * @param maxResults the maximum number of certificates to return
+     * 
+     * @return [0] = (String) fingerprint, [1] = (String) serial number in decimal, [2] = (Number) expire date, [3] = (String) certificate subject DN,
+     *         [4] = (String) issuer DN, [5] = (String) username, [6] = (String) end entity subject DN, [7] = (String) end entity email,
+     *         [8] = (String) obfuscated clear text password, [9] = (Number) time created, [10] = (Number) time modified
+     */
+    @SuppressWarnings("unchecked")
+    public static List<Object[]> findExpirationNotificationInfo(final EntityManager entityManager, final Collection<String> cas,
+            final Collection<Integer> certificateProfiles, final long activeNotifiedExpireDateMin, final long activeNotifiedExpireDateMax,
+            final long activeExpireDateMin, final String afterFingerprint, final int maxResults) {
+        // We don't select the base64 certificate data here, all that is needed for the notification is in the other columns
+        final Query query = entityManager.createNativeQuery("SELECT c.fingerprint AS fingerprint, c.serialNumber AS serialNumber,"
+                + " c.expireDate AS expireDate, c.subjectDN AS certSubjectDN, c.issuerDN AS issuerDN, c.username AS username,"
+                + " u.subjectDN AS userSubjectDN, u.subjectEmail AS subjectEmail, u.clearPassword AS clearPassword,"
+                + " u.timeCreated AS timeCreated, u.timeModified AS timeModified"
+                + " FROM CertificateData c LEFT JOIN UserData u ON c.username=u.username WHERE "
+                + "c.issuerDN IN (:cas) AND "
+                // If the list of certificate profiles is empty, ignore it as a parameter
+                + (!certificateProfiles.isEmpty() ? "c.certificateProfileId IN (:certificateProfiles) AND " : "")
+                + (afterFingerprint != null ? "c.fingerprint>:afterFingerprint AND " : "")
+                + "(c.expireDate>:activeNotifiedExpireDateMin) AND (c.expireDate<:activeNotifiedExpireDateMax) AND (c.status=:status1"
+                + " OR c.status=:status2) AND (c.expireDate>=:activeExpireDateMin OR c.status=:status3) ORDER BY c.fingerprint",
+                "ExpirationNotificationSubset");
+        query.setParameter("cas", cas);
+        if (!certificateProfiles.isEmpty()) {
+            query.setParameter("certificateProfiles", certificateProfiles);
+        }
+        if (afterFingerprint != null) {
+            query.setParameter("afterFingerprint", afterFingerprint);
+        }
+        query.setParameter("activeNotifiedExpireDateMin", activeNotifiedExpireDateMin);
+        query.setParameter("activeNotifiedExpireDateMax", activeNotifiedExpireDateMax);
+        query.setParameter("status1", CertificateConstants.CERT_ACTIVE);
+        query.setParameter("status2", CertificateConstants.CERT_NOTIFIEDABOUTEXPIRATION);
+        query.setParameter("activeExpireDateMin", activeExpireDateMin);
+        query.setParameter("status3", CertificateConstants.CERT_ACTIVE);
+        query.setMaxResults(maxResults);
+        return query.getResultList();
+    }
 }
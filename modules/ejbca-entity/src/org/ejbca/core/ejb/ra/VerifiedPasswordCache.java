@@ -0,0 +1,154 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.ejb.ra;
+
+import java.nio.charset.Charset;
+import java.security.InvalidKeyException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * Cache of successful end entity password verifications, so that repeated authentications of the same end entity with the same password do
+ * not have to run the (intentionally slow) BCrypt password hash verification every time.
+ *
+ * Only an HMAC of the username, the stored password hash and the verified password is kept, with a random key that never leaves this JVM.
+ * Since the stored password hash is part of the HMAC, a password change on any node invalidates the cached verification. Any change of the
+ * end entity on this node removes the cached verification directly, see UserData.
+ *
+ * The cache is common to all threads in the same VM and is not synchronized between multiple instances of EJBCA.
+ *
+ * @version $Id$
+ */
+public enum VerifiedPasswordCache {
+    INSTANCE;
+
+    private static final Logger log = Logger.getLogger(VerifiedPasswordCache.class);
+    private static final String MAC_ALGORITHM = "HmacSHA256";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    /** The maximum number of cached verifications, to bound the memory used if very many end entities authenticate within the cache time */
+    private static final int MAX_ENTRIES = 100000;
+
+    /** A verification of a password for a username, valid until the expire time */
+    private static class Entry {
+        private final byte[] mac;
+        private final long expireTime;
+
+        private Entry(final byte[] mac, final long expireTime) {
+            this.mac = mac;
+            this.expireTime = expireTime;
+        }
+    }
+
+    private final Map<String, Entry> cache = new ConcurrentHashMap<String, Entry>();
+    private final SecretKeySpec macKey;
+
+    private VerifiedPasswordCache() {
+        final byte[] keyBytes = new byte[32];
+        new SecureRandom().nextBytes(keyBytes);
+        macKey = new SecretKeySpec(keyBytes, MAC_ALGORITHM);
+    }
+
+    /**
+     * @param username the username of the end entity
+     * @param passwordHash the currently stored password hash of the end entity
+     * @param password the presented password
+     * @return true if the password has been verified against the same password hash within the cache time
+     */
+    public boolean isVerified(final String username, final String passwordHash, final String password) {
+        if (username == null || passwordHash == null || password == null) {
+            return false;
+        }
+        final Entry entry = cache.get(username);
+        if (entry == null) {
+            return false;
+        }
+        if (entry.expireTime < System.currentTimeMillis()) {
+            cache.remove(username);
+            return false;
+        }
+        final boolean ret = MessageDigest.isEqual(entry.mac, mac(username, passwordHash, password));
+        if (log.isDebugEnabled() && ret) {
+            log.debug("Using cached password verification for end entity '" + username + "'.");
+        }
+        return ret;
+    }
+
+    /**
+     * Caches a successful password verification, replacing any earlier verification for the end entity.
+     *
+     * @param username the username of the end entity
+     * @param passwordHash the stored password hash that the password was verified against
+     * @param password the verified password
+     */
+    public void setVerified(final String username, final String passwordHash, final String password) {
+        final long cacheTime = EjbcaConfiguration.getCacheVerifiedPasswordsTime();
+        if (cacheTime <= 0 || username == null || passwordHash == null || password == null) {
+            return;
+        }
+        if (cache.size() >= MAX_ENTRIES) {
+            removeExpired();
+            if (cache.size() >= MAX_ENTRIES) {
+                log.debug("Verified password cache is full, clearing it.");
+                cache.clear();
+            }
+        }
+        cache.put(username, new Entry(mac(username, passwordHash, password), System.currentTimeMillis() + cacheTime));
+    }
+
+    /** Removes any cached password verification for the end entity, for example when it has been changed. */
+    public void invalidate(final String username) {
+        if (username != null) {
+            cache.remove(username);
+        }
+    }
+
+    /** Removes all cached password verifications. */
+    public void clear() {
+        cache.clear();
+    }
+
+    private void removeExpired() {
+        final long now = System.currentTimeMillis();
+        for (final Iterator<Entry> iterator = cache.values().iterator(); iterator.hasNext();) {
+            if (iterator.next().expireTime < now) {
+                iterator.remove();
+            }
+        }
+    }
+
+    private byte[] mac(final String username, final String passwordHash, final String password) {
+        try {
+            final Mac mac = Mac.getInstance(MAC_ALGORITHM);
+            mac.init(macKey);
+            // Length prefixes make the encoding unambiguous
+            for (final String value : new String[] { username, passwordHash, password }) {
+                final byte[] bytes = value.getBytes(UTF8);
+                mac.update(new byte[] { (byte) (bytes.length >>> 24), (byte) (bytes.length >>> 16), (byte) (bytes.length >>> 8), (byte) bytes.length });
+                mac.update(bytes);
+            }
+            return mac.doFinal();
+        } catch (NoSuchAlgorithmException | InvalidKeyException e) {
+            throw new IllegalStateException(MAC_ALGORITHM + " is not available.", e);
+        }
+    }
+}
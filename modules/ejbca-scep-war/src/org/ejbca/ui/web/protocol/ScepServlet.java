@@ -20,6 +20,7 @@ import java.security.NoSuchAlgorithmException;
 import java.security.NoSuchProviderException;
 import java.security.SignatureException;
 import java.security.cert.Certificate;
+import java.security.cert.CertificateEncodingException;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.Collection;
@@ -64,6 +65,7 @@ import org.cesecore.configuration.GlobalConfigurationSessionLocal;
 import org.cesecore.keys.token.CryptoTokenManagementSessionLocal;
 import org.cesecore.keys.token.CryptoTokenOfflineException;
 import org.cesecore.util.Base64;
+import org.cesecore.util.ConcurrentCache;
 import org.cesecore.util.CryptoProviderTools;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.config.ScepConfiguration;
@@ -132,10 +134,28 @@ public class ScepServlet extends HttpServlet {
 
     
     private static final String DEFAULT_SCEP_ALIAS = "scep";
+    /** Time to wait for another thread that is creating the same cached GetCACert or GetCACaps response */
+    private static final long CACHE_READ_TIMEOUT = 2000L; // milliseconds
 
     private transient ScepOperationPlugin scepRaModeExtension = null;
     private transient ScepResponsePlugin scepClientCertificateRenewal = null;
 
+    /** DER encoded CA certificates sent in GetCACert responses, keyed by SCEP alias and CA name */
+    private transient ConcurrentCache<String, CaResponse<byte[]>> caCertResponseCache;
+    /** Capabilities sent in GetCACaps responses, keyed by SCEP alias and CA name */
+    private transient ConcurrentCache<String, CaResponse<String>> caCapsResponseCache;
+
+    /** A cached response and the update time of the CA info it was created from */
+    private static final class CaResponse<T> {
+        private final long caUpdateTime;
+        private final T value;
+
+        private CaResponse(final long caUpdateTime, final T value) {
+            this.caUpdateTime = caUpdateTime;
+            this.value = value;
+        }
+    }
+
     @PostConstruct
     public void postConstruct() {
         try {
@@ -183,6 +203,8 @@ public class ScepServlet extends HttpServlet {
         } catch (Exception e) {
             throw new ServletException(e);
         }
+        caCertResponseCache = new ConcurrentCache<>();
+        caCapsResponseCache = new ConcurrentCache<>();
     }
 
     /**
@@ -322,18 +344,12 @@ public class ScepServlet extends HttpServlet {
                 if (log.isDebugEnabled()) {
                     log.debug("Got SCEP cert request for CA '" + caname + "'");
                 }
-                Collection<Certificate> certs = null;
-                CAInfo cainfo = casession.getCAInfoInternal(-1, caname, true);
-                if (cainfo != null) {
-                    certs = cainfo.getCertificateChain();
-                }
-                if ((certs != null) && (certs.size() > 0)) {
-                    // CAs certificate is in the first position in the Collection
-                    X509Certificate cert = (X509Certificate) certs.iterator().next();
+                final byte[] encodedCaCert = getCaCertResponse(alias, caname);
+                if (encodedCaCert != null) {
                     if (log.isDebugEnabled()) {
                         log.debug("Sent certificate for CA '" + caname + "' to SCEP client.");
                     }
-                    RequestHelper.sendNewX509CaCert(cert.getEncoded(), response);
+                    RequestHelper.sendNewX509CaCert(encodedCaCert, response);
             		iMsg = intres.getLocalizedMessage("scep.sentresponsemsg", "GetCACert", remoteAddr);
         			log.info(iMsg);
                 } else {
@@ -412,21 +428,7 @@ public class ScepServlet extends HttpServlet {
                 response.setContentType("text/plain");
                 
                 final String caname = getCAName(message);
-                boolean hasRolloverCert;
-                try {
-                    final CAInfo cainfo = casession.getCAInfoInternal(-1, caname, true);
-                    hasRolloverCert = (casession.getFutureRolloverCertificate(cainfo.getCAId()) != null);
-                } catch (CADoesntExistsException e) {
-                    hasRolloverCert = false;
-                    if (log.isDebugEnabled()) {
-                        log.debug("CA was not found: "+caname);
-                    }
-                }
-                // SCEP draft 23, "4.6.1.  Get Next CA Response Message Format". 
-                // It SHOULD also remove the GetNextCACert setting from the capabilities until it does have rollover certificates.
-                response.getOutputStream().print(hasRolloverCert ?
-                        "POSTPKIOperation\nGetNextCACert\nRenewal\nSHA-1" :
-                        "POSTPKIOperation\nRenewal\nSHA-1");
+                response.getOutputStream().print(getCaCapsResponse(alias, caname));
             } else {
                 log.error("Invalid parameter '" + operation);
                 // Send back proper Failure Response
@@ -492,6 +494,117 @@ public class ScepServlet extends HttpServlet {
         }
     }
     
+    /**
+     * Returns the DER encoded CA certificate for a GetCACert response. The encoding is cached per SCEP alias and CA, so bursts of GetCACert
+     * requests don't have to encode the certificate each time. A cached encoding is only used while the CA info from CaSession has the same
+     * update time as when it was created, so a renewed CA certificate is returned as soon as CaSession returns the renewed CA.
+     *
+     * @param alias the SCEP alias
+     * @param caname the name of the CA
+     * @return the DER encoded CA certificate, or null if the CA has no certificate
+     */
+    private byte[] getCaCertResponse(final String alias, final String caname) throws CADoesntExistsException, CertificateEncodingException {
+        final CAInfo cainfo = casession.getCAInfoInternal(-1, caname, true);
+        if (cainfo == null) {
+            return null;
+        }
+        final long caUpdateTime = getCaUpdateTime(cainfo);
+        final ConcurrentCache<String, CaResponse<byte[]>>.Entry entry = caCertResponseCache.openCacheEntry(getResponseCacheKey(alias, caname),
+                CACHE_READ_TIMEOUT);
+        if (entry == null) {
+            // Another thread is creating the response and did not finish in time
+            return createCaCertResponse(cainfo);
+        }
+        try {
+            if (entry.isInCache() && entry.getValue().caUpdateTime == caUpdateTime) {
+                return entry.getValue().value;
+            }
+            final byte[] encodedCaCert = createCaCertResponse(cainfo);
+            entry.putValue(new CaResponse<>(caUpdateTime, encodedCaCert));
+            return encodedCaCert;
+        } finally {
+            entry.close();
+        }
+    }
+
+    private byte[] createCaCertResponse(final CAInfo cainfo) throws CertificateEncodingException {
+        final Collection<Certificate> certs = cainfo.getCertificateChain();
+        if ((certs != null) && (certs.size() > 0)) {
+            // CAs certificate is in the first position in the Collection
+            return ((X509Certificate) certs.iterator().next()).getEncoded();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the GetCACaps response, which depends on whether the CA has a rollover certificate. The response is cached per SCEP alias
+     * and CA in the same way as {@link #getCaCertResponse(String, String)}. Importing a rollover certificate updates the CA, so it is
+     * advertised as soon as CaSession returns the updated CA.
+     *
+     * @param alias the SCEP alias
+     * @param caname the name of the CA
+     * @return a line feed separated list of capabilities
+     */
+    private String getCaCapsResponse(final String alias, final String caname) {
+        final CAInfo cainfo;
+        try {
+            cainfo = casession.getCAInfoInternal(-1, caname, true);
+        } catch (CADoesntExistsException e) {
+            if (log.isDebugEnabled()) {
+                log.debug("CA was not found: "+caname);
+            }
+            return createCaCapsResponse(false);
+        }
+        if (cainfo == null) {
+            return createCaCapsResponse(false);
+        }
+        final long caUpdateTime = getCaUpdateTime(cainfo);
+        final ConcurrentCache<String, CaResponse<String>>.Entry entry = caCapsResponseCache.openCacheEntry(getResponseCacheKey(alias, caname),
+                CACHE_READ_TIMEOUT);
+        if (entry == null) {
+            return createCaCapsResponse(cainfo);
+        }
+        try {
+            if (entry.isInCache() && entry.getValue().caUpdateTime == caUpdateTime) {
+                return entry.getValue().value;
+            }
+            final String caCaps = createCaCapsResponse(cainfo);
+            entry.putValue(new CaResponse<>(caUpdateTime, caCaps));
+            return caCaps;
+        } finally {
+            entry.close();
+        }
+    }
+
+    private String createCaCapsResponse(final CAInfo cainfo) {
+        boolean hasRolloverCert;
+        try {
+            hasRolloverCert = (casession.getFutureRolloverCertificate(cainfo.getCAId()) != null);
+        } catch (CADoesntExistsException e) {
+            hasRolloverCert = false;
+            if (log.isDebugEnabled()) {
+                log.debug("CA was not found: "+cainfo.getName());
+            }
+        }
+        return createCaCapsResponse(hasRolloverCert);
+    }
+
+    private static String createCaCapsResponse(final boolean hasRolloverCert) {
+        // SCEP draft 23, "4.6.1.  Get Next CA Response Message Format". 
+        // It SHOULD also remove the GetNextCACert setting from the capabilities until it does have rollover certificates.
+        return hasRolloverCert ? "POSTPKIOperation\nGetNextCACert\nRenewal\nSHA-1" : "POSTPKIOperation\nRenewal\nSHA-1";
+    }
+
+    /** @return the time the CA was last saved, which changes when it is renewed or a rollover certificate is imported */
+    private static long getCaUpdateTime(final CAInfo cainfo) {
+        return cainfo.getUpdateTime() == null ? 0L : cainfo.getUpdateTime().getTime();
+    }
+
+    private static String getResponseCacheKey(final String alias, final String caname) {
+        // Alias names are alphanumeric, so they can't contain the separator
+        return alias + ";" + caname;
+    }
+
     /** Later SCEP draft say that for GetCACert message is optional. If message is there, it is the CA name
      * but if message is not provided by the client, some default CA should be used.
      * @param message the message part for the SCEP get request, can be null or empty string
@@ -0,0 +1,58 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.ws.client.gen;
+
+import java.io.Serializable;
+
+/**
+ * Value object identifying a certificate by issuer DN and serial number, used by the bulk certificate operations.
+ *
+ * @version $Id$
+ */
+public class CertificateIdentifier implements Serializable {
+
+    /** Serial version UID, must be changed if class undergoes structural changes */
+    private static final long serialVersionUID = -2860426297530541232L;
+
+    /** The issuer DN of the certificate */
+    private String issuerDN;
+    /** The serial number of the certificate in hex format */
+    private String certificateSN;
+
+    /** WS Constructor */
+    public CertificateIdentifier() {
+    }
+
+    public CertificateIdentifier(final String issuerDN, final String certificateSN) {
+        this.issuerDN = issuerDN;
+        this.certificateSN = certificateSN;
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    public void setIssuerDN(final String issuerDN) {
+        this.issuerDN = issuerDN;
+    }
+
+    /** @return the serial number of the certificate in hex format */
+    public String getCertificateSN() {
+        return certificateSN;
+    }
+
+    /** @param certificateSN the serial number of the certificate in hex format */
+    public void setCertificateSN(final String certificateSN) {
+        this.certificateSN = certificateSN;
+    }
+}
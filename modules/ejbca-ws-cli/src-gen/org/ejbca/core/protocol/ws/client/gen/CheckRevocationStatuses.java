@@ -0,0 +1,67 @@
+
+package org.ejbca.core.protocol.ws.client.gen;
+
+import java.util.ArrayList;
+import java.util.List;
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Java class for checkRevocationStatuses complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType name="checkRevocationStatuses">
+ *   &lt;complexContent>
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;sequence>
+ *         &lt;element name="arg0" type="{http://ws.protocol.core.ejbca.org/}certificateIdentifier" maxOccurs="unbounded" minOccurs="0"/>
+ *       &lt;/sequence>
+ *     &lt;/restriction>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "checkRevocationStatuses", propOrder = {
+    "arg0"
+})
+public class CheckRevocationStatuses {
+
+    protected List<CertificateIdentifier> arg0;
+
+    /**
+     * Gets the value of the arg0 property.
+     * 
+     * <p>
+     * This accessor method returns a reference to the live list,
+     * not a snapshot. Therefore any modification you make to the
+     * returned list will be present inside the JAXB object.
+     * This is why there is not a <CODE>set</CODE> method for the arg0 property.
+     * 
+     * <p>
+     * For example, to add a new item, do as follows:
+     * <pre>
+     *    getArg0().add(newItem);
+     * </pre>
+     * 
+     * 
+     * <p>
+     * Objects of the following type(s) are allowed in the list
+     * {@link CertificateIdentifier }
+     * 
+     * 
+     */
+    public List<CertificateIdentifier> getArg0() {
+        if (arg0 == null) {
+            arg0 = new ArrayList<CertificateIdentifier>();
+        }
+        return this.arg0;
+    }
+
+}
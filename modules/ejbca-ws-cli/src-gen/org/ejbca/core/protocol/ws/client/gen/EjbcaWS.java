@@ -809,6 +809,25 @@ public interface EjbcaWS {
         throws AuthorizationDeniedException_Exception, CADoesntExistsException_Exception, EjbcaException_Exception
     ;
 
+    /**
+     * 
+     * @param arg0
+     * @return
+     *     returns java.util.List<org.ejbca.core.protocol.ws.client.gen.RevokeStatus>
+     * @throws CADoesntExistsException_Exception
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "checkRevocationStatuses", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CheckRevocationStatuses")
+    @ResponseWrapper(localName = "checkRevocationStatusesResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.CheckRevocationStatusesResponse")
+    public List<RevokeStatus> checkRevocationStatuses(
+        @WebParam(name = "arg0", targetNamespace = "")
+        List<CertificateIdentifier> arg0)
+        throws AuthorizationDeniedException_Exception, CADoesntExistsException_Exception, EjbcaException_Exception
+    ;
+
     /**
      * 
      * @param arg1
@@ -1077,6 +1096,46 @@ public interface EjbcaWS {
         throws AuthorizationDeniedException_Exception, CADoesntExistsException_Exception, EjbcaException_Exception
     ;
 
+    /**
+     * 
+     * @param arg0
+     * @return
+     *     returns java.util.List<org.ejbca.core.protocol.ws.client.gen.Certificate>
+     * @throws CADoesntExistsException_Exception
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "getCertificates", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.GetCertificates")
+    @ResponseWrapper(localName = "getCertificatesResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.GetCertificatesResponse")
+    public List<Certificate> getCertificates(
+        @WebParam(name = "arg0", targetNamespace = "")
+        List<CertificateIdentifier> arg0)
+        throws AuthorizationDeniedException_Exception, CADoesntExistsException_Exception, EjbcaException_Exception
+    ;
+
+    /**
+     * 
+     * @param arg1
+     * @param arg0
+     * @return
+     *     returns org.ejbca.core.protocol.ws.client.gen.CertificateChanges
+     * @throws EjbcaException_Exception
+     * @throws AuthorizationDeniedException_Exception
+     */
+    @WebMethod
+    @WebResult(targetNamespace = "")
+    @RequestWrapper(localName = "getCertificateChanges", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.GetCertificateChanges")
+    @ResponseWrapper(localName = "getCertificateChangesResponse", targetNamespace = "http://ws.protocol.core.ejbca.org/", className = "org.ejbca.core.protocol.ws.client.gen.GetCertificateChangesResponse")
+    public CertificateChanges getCertificateChanges(
+        @WebParam(name = "arg0", targetNamespace = "")
+        String arg0,
+        @WebParam(name = "arg1", targetNamespace = "")
+        int arg1)
+        throws AuthorizationDeniedException_Exception, EjbcaException_Exception
+    ;
+
     /**
      * 
      * @return
@@ -0,0 +1,62 @@
+
+package org.ejbca.core.protocol.ws.client.gen;
+
+import javax.xml.bind.annotation.XmlAccessType;
+import javax.xml.bind.annotation.XmlAccessorType;
+import javax.xml.bind.annotation.XmlElement;
+import javax.xml.bind.annotation.XmlType;
+
+
+/**
+ * <p>Java class for getCertificateChangesResponse complex type.
+ * 
+ * <p>The following schema fragment specifies the expected content contained within this class.
+ * 
+ * <pre>
+ * &lt;complexType name="getCertificateChangesResponse">
+ *   &lt;complexContent>
+ *     &lt;restriction base="{http://www.w3.org/2001/XMLSchema}anyType">
+ *       &lt;sequence>
+ *         &lt;element name="return" type="{http://ws.protocol.core.ejbca.org/}certificateChanges" minOccurs="0"/>
+ *       &lt;/sequence>
+ *     &lt;/restriction>
+ *   &lt;/complexContent>
+ * &lt;/complexType>
+ * </pre>
+ * 
+ * 
+ */
+@XmlAccessorType(XmlAccessType.FIELD)
+@XmlType(name = "getCertificateChangesResponse", propOrder = {
+    "_return"
+})
+public class GetCertificateChangesResponse {
+
+    @XmlElement(name = "return")
+    protected CertificateChanges _return;
+
+    /**
+     * Gets the value of the return property.
+     * 
+     * @return
+     *     possible object is
+     *     {@link CertificateChanges }
+     *     
+     */
+    public CertificateChanges getReturn() {
+        return _return;
+    }
+
+    /**
+     * Sets the value of the return property.
+     * 
+     * @param value
+     *     allowed object is
+     *     {@link CertificateChanges }
+     *     
+     */
+    public void setReturn(CertificateChanges value) {
+        this._return = value;
+    }
+
+}
@@ -90,6 +90,8 @@ public class ObjectFactory {
     private final static QName _NotFoundException_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "NotFoundException");
     private final static QName _GetAuthorizedEndEntityProfiles_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getAuthorizedEndEntityProfiles");
     private final static QName _CheckRevokationStatus_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevokationStatus");
+    private final static QName _CheckRevocationStatuses_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevocationStatuses");
+    private final static QName _CheckRevocationStatusesResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "checkRevocationStatusesResponse");
     private final static QName _KeyRecoverNewestResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "keyRecoverNewestResponse");
     private final static QName _IllegalQueryException_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "IllegalQueryException");
     private final static QName _Pkcs10RequestResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "pkcs10RequestResponse");
@@ -137,6 +139,10 @@ public class ObjectFactory {
     private final static QName _KeyRecoverResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "keyRecoverResponse");
     private final static QName _Pkcs10Request_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "pkcs10Request");
     private final static QName _GetCertificate_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getCertificate");
+    private final static QName _GetCertificates_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getCertificates");
+    private final static QName _GetCertificatesResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getCertificatesResponse");
+    private final static QName _GetCertificateChanges_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getCertificateChanges");
+    private final static QName _GetCertificateChangesResponse_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getCertificateChangesResponse");
     private final static QName _CreateCryptoToken_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "createCryptoToken");
     private final static QName _IsApproved_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "isApproved");
     private final static QName _GetAvailableCAs_QNAME = new QName("http://ws.protocol.core.ejbca.org/", "getAvailableCAs");
@@ -464,6 +470,22 @@ public class ObjectFactory {
         return new KeyRecoverNewestResponse();
     }
 
+    /**
+     * Create an instance of {@link CheckRevocationStatuses }
+     * 
+     */
+    public CheckRevocationStatuses createCheckRevocationStatuses() {
+        return new CheckRevocationStatuses();
+    }
+
+    /**
+     * Create an instance of {@link CheckRevocationStatusesResponse }
+     * 
+     */
+    public CheckRevocationStatusesResponse createCheckRevocationStatusesResponse() {
+        return new CheckRevocationStatusesResponse();
+    }
+
     /**
      * Create an instance of {@link CheckRevokationStatus }
      * 
@@ -1192,6 +1214,38 @@ public class ObjectFactory {
         return new GetCertificate();
     }
 
+    /**
+     * Create an instance of {@link GetCertificates }
+     * 
+     */
+    public GetCertificates createGetCertificates() {
+        return new GetCertificates();
+    }
+
+    /**
+     * Create an instance of {@link GetCertificatesResponse }
+     * 
+     */
+    public GetCertificatesResponse createGetCertificatesResponse() {
+        return new GetCertificatesResponse();
+    }
+
+    /**
+     * Create an instance of {@link GetCertificateChanges }
+     * 
+     */
+    public GetCertificateChanges createGetCertificateChanges() {
+        return new GetCertificateChanges();
+    }
+
+    /**
+     * Create an instance of {@link GetCertificateChangesResponse }
+     * 
+     */
+    public GetCertificateChangesResponse createGetCertificateChangesResponse() {
+        return new GetCertificateChangesResponse();
+    }
+
     /**
      * Create an instance of {@link IsApproved }
      * 
@@ -1352,6 +1406,30 @@ public class ObjectFactory {
         return new PinDataWS();
     }
 
+    /**
+     * Create an instance of {@link CertificateIdentifier }
+     * 
+     */
+    public CertificateIdentifier createCertificateIdentifier() {
+        return new CertificateIdentifier();
+    }
+
+    /**
+     * Create an instance of {@link CertificateChange }
+     * 
+     */
+    public CertificateChange createCertificateChange() {
+        return new CertificateChange();
+    }
+
+    /**
+     * Create an instance of {@link CertificateChanges }
+     * 
+     */
+    public CertificateChanges createCertificateChanges() {
+        return new CertificateChanges();
+    }
+
     /**
      * Create an instance of {@link NameAndId }
      * 
@@ -1945,6 +2023,24 @@ public class ObjectFactory {
         return new JAXBElement<GetAuthorizedEndEntityProfiles>(_GetAuthorizedEndEntityProfiles_QNAME, GetAuthorizedEndEntityProfiles.class, null, value);
     }
 
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevocationStatuses }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "checkRevocationStatuses")
+    public JAXBElement<CheckRevocationStatuses> createCheckRevocationStatuses(CheckRevocationStatuses value) {
+        return new JAXBElement<CheckRevocationStatuses>(_CheckRevocationStatuses_QNAME, CheckRevocationStatuses.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevocationStatusesResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "checkRevocationStatusesResponse")
+    public JAXBElement<CheckRevocationStatusesResponse> createCheckRevocationStatusesResponse(CheckRevocationStatusesResponse value) {
+        return new JAXBElement<CheckRevocationStatusesResponse>(_CheckRevocationStatusesResponse_QNAME, CheckRevocationStatusesResponse.class, null, value);
+    }
+
     /**
      * Create an instance of {@link JAXBElement }{@code <}{@link CheckRevokationStatus }{@code >}}
      * 
@@ -2368,6 +2464,42 @@ public class ObjectFactory {
         return new JAXBElement<Pkcs10Request>(_Pkcs10Request_QNAME, Pkcs10Request.class, null, value);
     }
 
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link GetCertificates }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "getCertificates")
+    public JAXBElement<GetCertificates> createGetCertificates(GetCertificates value) {
+        return new JAXBElement<GetCertificates>(_GetCertificates_QNAME, GetCertificates.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link GetCertificatesResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "getCertificatesResponse")
+    public JAXBElement<GetCertificatesResponse> createGetCertificatesResponse(GetCertificatesResponse value) {
+        return new JAXBElement<GetCertificatesResponse>(_GetCertificatesResponse_QNAME, GetCertificatesResponse.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link GetCertificateChanges }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "getCertificateChanges")
+    public JAXBElement<GetCertificateChanges> createGetCertificateChanges(GetCertificateChanges value) {
+        return new JAXBElement<GetCertificateChanges>(_GetCertificateChanges_QNAME, GetCertificateChanges.class, null, value);
+    }
+
+    /**
+     * Create an instance of {@link JAXBElement }{@code <}{@link GetCertificateChangesResponse }{@code >}}
+     * 
+     */
+    @XmlElementDecl(namespace = "http://ws.protocol.core.ejbca.org/", name = "getCertificateChangesResponse")
+    public JAXBElement<GetCertificateChangesResponse> createGetCertificateChangesResponse(GetCertificateChangesResponse value) {
+        return new JAXBElement<GetCertificateChangesResponse>(_GetCertificateChangesResponse_QNAME, GetCertificateChangesResponse.class, null, value);
+    }
+
     /**
      * Create an instance of {@link JAXBElement }{@code <}{@link GetCertificate }{@code >}}
      * 
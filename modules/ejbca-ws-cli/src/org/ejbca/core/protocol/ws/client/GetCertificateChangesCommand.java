@@ -0,0 +1,91 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+ 
+package org.ejbca.core.protocol.ws.client;
+
+import java.util.Date;
+
+import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
+import org.ejbca.core.protocol.ws.client.gen.CertificateChange;
+import org.ejbca.core.protocol.ws.client.gen.CertificateChanges;
+import org.ejbca.ui.cli.ErrorAdminCommandException;
+import org.ejbca.ui.cli.IAdminCommand;
+import org.ejbca.ui.cli.IllegalAdminCommandException;
+
+/**
+ * Reads a page of the certificate change feed
+ *
+ * @version $Id$
+ */
+public class GetCertificateChangesCommand extends EJBCAWSRABaseCommand implements IAdminCommand{
+
+    private static final int ARG_CURSOR                = 1;
+    private static final int ARG_MAX_NUMBER_OF_RESULTS = 2;
+
+    public GetCertificateChangesCommand(String[] args) {
+        super(args);
+    }
+
+    /**
+     * Runs the command
+     *
+     * @throws IllegalAdminCommandException Error in command args
+     * @throws ErrorAdminCommandException Error running command
+     */
+    @Override
+    public void execute() throws IllegalAdminCommandException, ErrorAdminCommandException {
+        try {
+            if (args.length < 3) {
+                usage();
+                System.exit(-1); // NOPMD, it's not a JEE app
+            }
+            final String cursor = args[ARG_CURSOR].equals("-") ? null : args[ARG_CURSOR];
+            final int maxNumberOfResults = Integer.parseInt(args[ARG_MAX_NUMBER_OF_RESULTS]);
+            try {
+                final CertificateChanges result = getEjbcaRAWS().getCertificateChanges(cursor, maxNumberOfResults);
+                getPrintStream().println(result.getChanges().size() + " changed certificates found.");
+                for (final CertificateChange change : result.getChanges()) {
+                    getPrintStream().println();
+                    getPrintStream().println("  Issuer DN : " + change.getIssuerDN());
+                    getPrintStream().println("  Serial number : " + change.getCertificateSN());
+                    getPrintStream().println("  Fingerprint : " + change.getFingerprint());
+                    getPrintStream().println("  Subject DN : " + change.getSubjectDN());
+                    getPrintStream().println("  Username : " + change.getUsername());
+                    getPrintStream().println("  Status : " + change.getStatus());
+                    getPrintStream().println("  Revocation reason : " + change.getRevocationReason());
+                    if (change.getRevocationDate() > 0) {
+                        getPrintStream().println("  Revocation date : " + new Date(change.getRevocationDate()));
+                    }
+                    getPrintStream().println("  Expire date : " + new Date(change.getExpireDate()));
+                    getPrintStream().println("  Updated : " + new Date(change.getUpdateTime()));
+                }
+                getPrintStream().println();
+                getPrintStream().println("Next cursor : " + (result.getNextCursor() == null ? "-" : result.getNextCursor()));
+            } catch (AuthorizationDeniedException_Exception e) {
+                getPrintStream().println("Error : " + e.getMessage());
+            }
+        } catch (Exception e) {
+            throw new ErrorAdminCommandException(e);
+        }
+    }
+
+    @Override
+    protected void usage() {
+        getPrintStream().println("Command used to read the certificates that were issued, revoked or otherwise changed since the last read");
+        getPrintStream().println("Usage : getcertchanges <cursor> <maxNumberOfResults>");
+        getPrintStream().println();
+        getPrintStream().println("cursor : the next cursor printed by the previous call, or - to read from the beginning");
+        getPrintStream().println("maxNumberOfResults : the maximum number of returned changes, at most 10000");
+        getPrintStream().println("Changes made during the last database.changefeeddelay milliseconds are not returned until that time has passed.");
+    }
+}
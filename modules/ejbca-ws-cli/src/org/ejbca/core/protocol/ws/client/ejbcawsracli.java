@@ -42,7 +42,7 @@ public class ejbcawsracli  {
                     "getpublisherqueuelength | revoketoken | revokeuser | checkrevocationstatus | generatenewuser | " +
                     "createcrl | cacertrequest | cacertresponse | customlog | getprofile | createcryptotoken | " + 
                     "generatectkeys | createca | importcacert | updatecacert | addadmintorole | removeadminfromrole | getexpiredcerts | " +
-                    "getexpiredcertsbyissuer | getexpiredcertsbytype | stress | keyrecover");
+                    "getexpiredcertsbyissuer | getexpiredcertsbytype | getcertchanges | stress | keyrecover");
             }
         } catch (ErrorAdminCommandException e) {
             final Throwable cause = e.getCause();
@@ -88,8 +88,10 @@ import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.ca.IllegalNameException;
 import org.cesecore.certificates.ca.SignRequestException;
 import org.cesecore.certificates.ca.SignRequestSignatureException;
+import org.cesecore.certificates.certificate.CertificateChangeCursor;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateCreateException;
+import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificate.CertificateStatus;
 import org.cesecore.certificates.certificate.CertificateStoreSessionLocal;
 import org.cesecore.certificates.certificate.CertificateWrapper;
@@ -187,6 +189,9 @@ import org.ejbca.core.protocol.ws.common.IEjbcaWS;
 import org.ejbca.core.protocol.ws.logger.TransactionLogger;
 import org.ejbca.core.protocol.ws.logger.TransactionTags;
 import org.ejbca.core.protocol.ws.objects.Certificate;
+import org.ejbca.core.protocol.ws.objects.CertificateChange;
+import org.ejbca.core.protocol.ws.objects.CertificateChanges;
+import org.ejbca.core.protocol.ws.objects.CertificateIdentifier;
 import org.ejbca.core.protocol.ws.objects.CertificateResponse;
 import org.ejbca.core.protocol.ws.objects.ExtendedInformationWS;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
@@ -288,6 +293,8 @@ public class EjbcaWS implements IEjbcaWS {
 
 	/** The maximum number of rows returned in array responses. */
 	private static final int MAXNUMBEROFROWS = 100;
+	/** The maximum number of changes returned in a page of the certificate change feed. */
+	private static final int MAXNUMBEROFCHANGES = 10000;
 	
 	private static final Logger log = Logger.getLogger(EjbcaWS.class);	
     /** Internal localization of logs and errors */
@@ -1640,6 +1647,80 @@ public class EjbcaWS implements IEjbcaWS {
         }
 	}	
 
+    @Override
+    public List<RevokeStatus> checkRevocationStatuses(final List<CertificateIdentifier> certificates) throws CADoesntExistsException,
+            AuthorizationDeniedException, EjbcaException {
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        try {
+            final AuthenticationToken admin = getAdmin();
+            logAdminName(admin, logger);
+            final List<RevokeStatus> ret = new ArrayList<>();
+            for (final Map.Entry<String, List<CertificateIdentifier>> entry : getAuthorizedCertificatesByIssuer(admin, certificates, false).entrySet()) {
+                final Map<BigInteger, CertificateIdentifier> identifiers = getIdentifiersBySerialNumber(entry.getValue());
+                final Map<BigInteger, CertificateStatus> statuses = certificateStoreSession.getStatuses(entry.getKey(), identifiers.keySet());
+                for (final Map.Entry<BigInteger, CertificateIdentifier> identifier : identifiers.entrySet()) {
+                    final CertificateStatus status = statuses.get(identifier.getKey());
+                    if (status != null && !status.equals(CertificateStatus.NOT_AVAILABLE)) {
+                        ret.add(new RevokeStatus(status, identifier.getValue().getIssuerDN(), identifier.getValue().getCertificateSN()));
+                    }
+                }
+            }
+            return ret;
+        } catch (DatatypeConfigurationException e) {
+            throw getInternalException(e, logger);
+        } catch (RuntimeException e) {  // EJBException, ClassCastException, NumberFormatException ...
+            throw getInternalException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
+    /**
+     * Groups certificates by issuer, and checks that the administrator is authorized to each issuing CA once.
+     * 
+     * @param viewCertificate true if the administrator must also be authorized to view certificates
+     * @return the certificates by issuer DN in the format used in the database
+     */
+    private Map<String, List<CertificateIdentifier>> getAuthorizedCertificatesByIssuer(final AuthenticationToken admin,
+            final List<CertificateIdentifier> certificates, final boolean viewCertificate) throws CADoesntExistsException, AuthorizationDeniedException {
+        final Map<String, List<CertificateIdentifier>> ret = new LinkedHashMap<>();
+        if (certificates == null) {
+            return ret;
+        }
+        for (final CertificateIdentifier certificate : certificates) {
+            final String issuerDN = CertTools.stringToBCDNString(certificate.getIssuerDN());
+            List<CertificateIdentifier> issuerCertificates = ret.get(issuerDN);
+            if (issuerCertificates == null) {
+                final int caid = issuerDN.hashCode();
+                caSession.verifyExistenceOfCA(caid);
+                final String[] rules;
+                if (viewCertificate) {
+                    rules = new String[] {StandardRules.CAFUNCTIONALITY.resource()+"/view_certificate", StandardRules.CAACCESS.resource() + caid};
+                } else {
+                    rules = new String[] {StandardRules.CAACCESS.resource() + caid};
+                }
+                if (!authorizationSession.isAuthorizedNoLogging(admin, rules)) {
+                    final String msg = intres.getLocalizedMessage("authorization.notuathorizedtoresource", Arrays.toString(rules), null);
+                    throw new AuthorizationDeniedException(msg);
+                }
+                issuerCertificates = new ArrayList<>();
+                ret.put(issuerDN, issuerCertificates);
+            }
+            issuerCertificates.add(certificate);
+        }
+        return ret;
+    }
+
+    /** @return the certificates by serial number, where the last one is kept if a serial number is given more than once */
+    private Map<BigInteger, CertificateIdentifier> getIdentifiersBySerialNumber(final List<CertificateIdentifier> certificates) {
+        final Map<BigInteger, CertificateIdentifier> ret = new LinkedHashMap<>();
+        for (final CertificateIdentifier certificate : certificates) {
+            ret.put(new BigInteger(certificate.getCertificateSN(), 16), certificate);
+        }
+        return ret;
+    }
+
     @Override
 	@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
 	public boolean isAuthorized(String resource) throws EjbcaException{
@@ -2471,6 +2552,78 @@ public class EjbcaWS implements IEjbcaWS {
 		return retval;
 	}
 
+    @Override
+    public List<Certificate> getCertificates(final List<CertificateIdentifier> certificates) throws CADoesntExistsException,
+            AuthorizationDeniedException, EjbcaException {
+        final AuthenticationToken admin = getAdmin(true);
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        logAdminName(admin,logger);
+        try {
+            final List<Certificate> ret = new ArrayList<>();
+            for (final Map.Entry<String, List<CertificateIdentifier>> entry : getAuthorizedCertificatesByIssuer(admin, certificates, true).entrySet()) {
+                final Set<BigInteger> serialNumbers = getIdentifiersBySerialNumber(entry.getValue()).keySet();
+                for (final java.security.cert.Certificate cert : certificateStoreSession.findCertificatesByIssuerAndSernos(entry.getKey(), serialNumbers)) {
+                    ret.add(new Certificate(cert));
+                }
+            }
+            return ret;
+        } catch (CertificateEncodingException e) {
+            throw getInternalException(e, logger);
+        } catch (RuntimeException e) {  // EJBException, NumberFormatException ...
+            throw getInternalException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
+    @Override
+    public CertificateChanges getCertificateChanges(final String cursor, final int maxNumberOfResults) throws AuthorizationDeniedException,
+            EjbcaException {
+        final AuthenticationToken admin = getAdmin(true);
+        final IPatternLogger logger = TransactionLogger.getPatternLogger();
+        logAdminName(admin,logger);
+        try {
+            final String viewCertificate = StandardRules.CAFUNCTIONALITY.resource() + "/view_certificate";
+            if (!authorizationSession.isAuthorizedNoLogging(admin, viewCertificate)) {
+                final String msg = intres.getLocalizedMessage("authorization.notuathorizedtoresource", viewCertificate, null);
+                throw new AuthorizationDeniedException(msg);
+            }
+            // The cursor is the update time and fingerprint of the last change that was read
+            final CertificateChangeCursor after;
+            try {
+                after = CertificateChangeCursor.parse(cursor);
+            } catch (IllegalArgumentException e) {
+                throw getEjbcaException(e.getMessage(), logger, ErrorCode.FIELD_VALUE_NOT_VALID, null);
+            }
+            final List<String> issuerDNs = new ArrayList<>();
+            for (final Integer caid : caSession.getAuthorizedCaIds(admin)) {
+                try {
+                    issuerDNs.add(caSession.getCAInfoInternal(caid).getSubjectDN());
+                } catch (CADoesntExistsException e) {
+                    // The CA was removed after its id was read
+                }
+            }
+            final int maxResults = Math.max(0, Math.min(maxNumberOfResults, MAXNUMBEROFCHANGES));
+            final List<CertificateChange> changes = new ArrayList<>();
+            String nextCursor = cursor;
+            for (final CertificateInfo info : certificateStoreSession.getCertificateChanges(after.getUpdateTime(), after.getFingerprint(), issuerDNs,
+                    maxResults)) {
+                final long updateTime = info.getUpdateTime().getTime();
+                changes.add(new CertificateChange(info.getIssuerDN(), info.getSerialNumber().toString(16), info.getFingerprint(), info.getSubjectDN(),
+                        info.getUsername(), info.getStatus(), info.getRevocationReason(), info.getRevocationDate().getTime(),
+                        info.getExpireDate().getTime(), info.getCertificateProfileId(), updateTime));
+                nextCursor = CertificateChangeCursor.after(info).toString();
+            }
+            return new CertificateChanges(changes, nextCursor);
+        } catch (RuntimeException e) {  // EJBException, ...
+            throw getInternalException(e, logger);
+        } finally {
+            logger.writeln();
+            logger.flush();
+        }
+    }
+
     @Override
 	public NameAndId[] getAvailableCAs() throws EjbcaException, AuthorizationDeniedException {
 		TreeMap<String,Integer> ret = new TreeMap<>();
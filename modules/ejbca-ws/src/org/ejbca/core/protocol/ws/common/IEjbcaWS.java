@@ -40,6 +40,8 @@ import org.ejbca.core.model.ra.userdatasource.UserDataSourceException;
 import org.ejbca.core.protocol.ws.DateNotValidException;
 import org.ejbca.core.protocol.ws.UnknownProfileTypeException;
 import org.ejbca.core.protocol.ws.objects.Certificate;
+import org.ejbca.core.protocol.ws.objects.CertificateChanges;
+import org.ejbca.core.protocol.ws.objects.CertificateIdentifier;
 import org.ejbca.core.protocol.ws.objects.CertificateResponse;
 import org.ejbca.core.protocol.ws.objects.HardTokenDataWS;
 import org.ejbca.core.protocol.ws.objects.KeyStore;
@@ -705,6 +707,27 @@ public interface IEjbcaWS {
 			String certificateSN) throws CADoesntExistsException, AuthorizationDeniedException,
 			EjbcaException;
 
+	/**
+	 * Returns the revocation status of many certificates in one call. The certificates are looked up in chunks of at most 1000 serial
+	 * numbers per issuer, and authorization is checked once per issuer. Very large lists should be split over several calls,
+	 * since the whole response is built before it is sent.
+	 * 
+	 * Authorization requirements:<pre>
+	 * - /administrator
+	 * - /ca/&lt;ca of each certificate&gt;
+	 * </pre>
+	 * 
+	 * @param certificates the issuer DN and hexadecimal serial number of each certificate
+	 * @return the revocation status of each certificate that exists, with the issuer DN and serial number as given in the request.
+	 * Certificates that do not exist are not included.
+	 * @throws CADoesntExistsException if a referenced CA does not exist 
+	 * @throws AuthorizationDeniedException if client isn't authorized to any of the CAs.
+	 * @throws EjbcaException
+	 * @see RevokeStatus
+	 */
+	List<RevokeStatus> checkRevocationStatuses(List<CertificateIdentifier> certificates) throws CADoesntExistsException,
+	        AuthorizationDeniedException, EjbcaException;
+
 	/**
 	 * Checks if a user is authorized to a given resource.
 	 * 
@@ -961,6 +984,46 @@ public interface IEjbcaWS {
 	 */
 	Certificate getCertificate(String certSNinHex, String issuerDN) throws
 		CADoesntExistsException, AuthorizationDeniedException, EjbcaException;
+
+	/**
+	 * Fetches many issued certificates in one call. The certificates are looked up in chunks of at most 1000 serial numbers per issuer,
+	 * and authorization is checked once per issuer. Very large lists should be split over several calls, since the whole response is built
+	 * before it is sent.
+	 *
+	 * Authorization requirements:<pre>
+	 * - A valid certificate
+	 * - /ca_functionality/view_certificate
+	 * - /ca/&lt;of each issuing CA&gt;
+	 * </pre>
+	 * 
+	 * @param certificates the issuer DN and hexadecimal serial number of each certificate
+	 * @return the certificates (in WS representation) that could be found, grouped by issuer
+	 * @throws CADoesntExistsException if a referenced CA does not exist 
+	 * @throws AuthorizationDeniedException if the calling administrator isn't authorized to view the certificates of any of the CAs
+	 * @throws EjbcaException if error occured server side
+	 */
+	List<Certificate> getCertificates(List<CertificateIdentifier> certificates) throws CADoesntExistsException, AuthorizationDeniedException,
+	        EjbcaException;
+
+	/**
+	 * Reads a page of the certificate change feed, that is the certificates issued by the authorized CAs that were issued, revoked or
+	 * otherwise changed after the position given by the cursor, ordered by update time. A client keeps up with all changes by passing
+	 * the next cursor of each page to the following call. Changes that are more recent than database.changefeeddelay in cesecore.properties
+	 * are held back, so that changes committed late by long running transactions are not skipped.
+	 *
+	 * Authorization requirements:<pre>
+	 * - A valid certificate
+	 * - /ca_functionality/view_certificate
+	 * - /ca/&lt;of each CA whose certificates are returned&gt;
+	 * </pre>
+	 *
+	 * @param cursor the next cursor of the previous page, or null or an empty string to read the feed from the beginning
+	 * @param maxNumberOfResults the maximum number of changes to return, limited by the server to 10000
+	 * @return the changed certificates and the cursor of the next page
+	 * @throws AuthorizationDeniedException if the calling administrator isn't authorized to view certificates
+	 * @throws EjbcaException if the cursor is malformed or an error occured server side
+	 */
+	CertificateChanges getCertificateChanges(String cursor, int maxNumberOfResults) throws AuthorizationDeniedException, EjbcaException;
 	
 	/**
 	 * Fetch a list of the ids and names of available CAs.
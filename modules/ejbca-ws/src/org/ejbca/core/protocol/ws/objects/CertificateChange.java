@@ -0,0 +1,155 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.ws.objects;
+
+import java.io.Serializable;
+
+/**
+ * Value object holding a certificate that was issued, revoked or otherwise changed, as returned by the certificate change feed.
+ * Dates are in milliseconds since epoch.
+ *
+ * @version $Id$
+ */
+public class CertificateChange implements Serializable {
+
+    /** Serial version UID, must be changed if class undergoes structural changes */
+    private static final long serialVersionUID = 6015394471528710385L;
+
+    private String issuerDN;
+    /** The serial number of the certificate in hex format */
+    private String certificateSN;
+    private String fingerprint;
+    private String subjectDN;
+    private String username;
+    /** One of the CertificateConstants.CERT_ constants */
+    private int status;
+    /** One of the RevokeStatus.REVOKATION_REASON_ constants, or RevokeStatus.NOT_REVOKED */
+    private int revocationReason;
+    private long revocationDate;
+    private long expireDate;
+    private int certificateProfileId;
+    private long updateTime;
+
+    /** WS Constructor */
+    public CertificateChange() {
+    }
+
+    public CertificateChange(final String issuerDN, final String certificateSN, final String fingerprint, final String subjectDN,
+            final String username, final int status, final int revocationReason, final long revocationDate, final long expireDate,
+            final int certificateProfileId, final long updateTime) {
+        this.issuerDN = issuerDN;
+        this.certificateSN = certificateSN;
+        this.fingerprint = fingerprint;
+        this.subjectDN = subjectDN;
+        this.username = username;
+        this.status = status;
+        this.revocationReason = revocationReason;
+        this.revocationDate = revocationDate;
+        this.expireDate = expireDate;
+        this.certificateProfileId = certificateProfileId;
+        this.updateTime = updateTime;
+    }
+
+    public String getIssuerDN() {
+        return issuerDN;
+    }
+
+    public void setIssuerDN(final String issuerDN) {
+        this.issuerDN = issuerDN;
+    }
+
+    /** @return the serial number of the certificate in hex format */
+    public String getCertificateSN() {
+        return certificateSN;
+    }
+
+    /** @param certificateSN the serial number of the certificate in hex format */
+    public void setCertificateSN(final String certificateSN) {
+        this.certificateSN = certificateSN;
+    }
+
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    public void setFingerprint(final String fingerprint) {
+        this.fingerprint = fingerprint;
+    }
+
+    public String getSubjectDN() {
+        return subjectDN;
+    }
+
+    public void setSubjectDN(final String subjectDN) {
+        this.subjectDN = subjectDN;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(final String username) {
+        this.username = username;
+    }
+
+    /** @return one of the CertificateConstants.CERT_ constants */
+    public int getStatus() {
+        return status;
+    }
+
+    public void setStatus(final int status) {
+        this.status = status;
+    }
+
+    /** @return one of the RevokeStatus.REVOKATION_REASON_ constants, or RevokeStatus.NOT_REVOKED */
+    public int getRevocationReason() {
+        return revocationReason;
+    }
+
+    public void setRevocationReason(final int revocationReason) {
+        this.revocationReason = revocationReason;
+    }
+
+    public long getRevocationDate() {
+        return revocationDate;
+    }
+
+    public void setRevocationDate(final long revocationDate) {
+        this.revocationDate = revocationDate;
+    }
+
+    public long getExpireDate() {
+        return expireDate;
+    }
+
+    public void setExpireDate(final long expireDate) {
+        this.expireDate = expireDate;
+    }
+
+    public int getCertificateProfileId() {
+        return certificateProfileId;
+    }
+
+    public void setCertificateProfileId(final int certificateProfileId) {
+        this.certificateProfileId = certificateProfileId;
+    }
+
+    /** @return when the certificate was last changed */
+    public long getUpdateTime() {
+        return updateTime;
+    }
+
+    public void setUpdateTime(final long updateTime) {
+        this.updateTime = updateTime;
+    }
+}
@@ -0,0 +1,59 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.core.protocol.ws.objects;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Value object holding a page of the certificate change feed, and the cursor to pass when reading the next page.
+ *
+ * @version $Id$
+ */
+public class CertificateChanges implements Serializable {
+
+    /** Serial version UID, must be changed if class undergoes structural changes */
+    private static final long serialVersionUID = -3328570817946021946L;
+
+    private List<CertificateChange> changes = new ArrayList<CertificateChange>();
+    /** The cursor of the last change of this page, or the cursor of the request if the page is empty */
+    private String nextCursor;
+
+    /** WS Constructor */
+    public CertificateChanges() {
+    }
+
+    public CertificateChanges(final List<CertificateChange> changes, final String nextCursor) {
+        this.changes = changes;
+        this.nextCursor = nextCursor;
+    }
+
+    /** @return the changed certificates, ordered by update time */
+    public List<CertificateChange> getChanges() {
+        return changes;
+    }
+
+    public void setChanges(final List<CertificateChange> changes) {
+        this.changes = changes;
+    }
+
+    /** @return the cursor to pass when reading the next page, which is the cursor of the request if there were no changes */
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(final String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
@@ -0,0 +1,162 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.pub;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test of running health checks concurrently with timeouts and caching the result.
+ * 
+ * @version $Id$
+ */
+public class ConcurrentHealthCheckerTest {
+
+    private ConcurrentHealthChecker healthChecker;
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (healthChecker != null) {
+            healthChecker.shutdown();
+        }
+    }
+
+    @Test
+    public void testSlowCheckOnlyFailsItself() {
+        final AtomicInteger hangingCalls = new AtomicInteger();
+        final Map<String, Callable<String>> checks = new LinkedHashMap<String, Callable<String>>();
+        checks.put("ok", new Callable<String>() {
+            @Override
+            public String call() {
+                return "";
+            }
+        });
+        checks.put("hanging", new Callable<String>() {
+            @Override
+            public String call() throws InterruptedException {
+                hangingCalls.incrementAndGet();
+                release.await();
+                return "";
+            }
+        });
+        checks.put("failing", new Callable<String>() {
+            @Override
+            public String call() {
+                return "\nfailing: Error";
+            }
+        });
+        healthChecker = new ConcurrentHealthChecker("test", 3, 200, 0, getProvider(checks));
+        final long startTime = System.currentTimeMillis();
+        final ConcurrentHealthChecker.Result result = healthChecker.getResult();
+        assertTrue("Hanging check should time out.", System.currentTimeMillis() - startTime < 5000);
+        assertEquals(3, result.getStatuses().size());
+        assertNull(result.getStatuses().get("ok").getError());
+        assertNotNull(result.getStatuses().get("hanging").getError());
+        assertEquals("\nfailing: Error", result.getStatuses().get("failing").getError());
+        // The next refresh must report the check as still failing, without starting it again
+        final ConcurrentHealthChecker.Result nextResult = waitForNewResult(result);
+        assertNotNull(nextResult.getStatuses().get("hanging").getError());
+        assertEquals("Hanging check should not be started again while running.", 1, hangingCalls.get());
+    }
+
+    @Test
+    public void testResultIsCached() {
+        final AtomicInteger calls = new AtomicInteger();
+        final Map<String, Callable<String>> checks = new LinkedHashMap<String, Callable<String>>();
+        checks.put("counted", new Callable<String>() {
+            @Override
+            public String call() {
+                calls.incrementAndGet();
+                return null;
+            }
+        });
+        healthChecker = new ConcurrentHealthChecker("test", 1, 1000, 60000, getProvider(checks));
+        final ConcurrentHealthChecker.Result result = healthChecker.getResult();
+        assertNull(result.getErrors());
+        for (int i = 0; i < 10; i++) {
+            assertSame("Result should be re-used within the cache time.", result, healthChecker.getResult());
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    public void testStaleResultFailsWhenRefreshHangs() throws InterruptedException {
+        final AtomicInteger calls = new AtomicInteger();
+        final Map<String, Callable<String>> checks = new LinkedHashMap<String, Callable<String>>();
+        checks.put("ok", new Callable<String>() {
+            @Override
+            public String call() {
+                return null;
+            }
+        });
+        // Getting the checks hangs after the first run, like it would during a database outage
+        healthChecker = new ConcurrentHealthChecker("test", 1, 100, 100, new ConcurrentHealthChecker.CheckProvider() {
+            @Override
+            public Map<String, Callable<String>> getChecks() throws InterruptedException {
+                if (calls.incrementAndGet() > 1) {
+                    release.await();
+                }
+                return checks;
+            }
+        });
+        final ConcurrentHealthChecker.Result result = healthChecker.getResult();
+        assertNull(result.getErrors());
+        Thread.sleep(150);
+        // Starts the refresh that hangs, while the result is still within the cache time plus twice the timeout
+        assertSame("Result should be re-used while the refresh is running.", result, healthChecker.getResult());
+        Thread.sleep(400);
+        final ConcurrentHealthChecker.Result staleResult = healthChecker.getResult();
+        assertNotNull("Result should fail when the refresh has hung for too long.", staleResult.getErrors());
+        assertEquals(2, calls.get());
+    }
+
+    private ConcurrentHealthChecker.CheckProvider getProvider(final Map<String, Callable<String>> checks) {
+        return new ConcurrentHealthChecker.CheckProvider() {
+            @Override
+            public Map<String, Callable<String>> getChecks() {
+                return checks;
+            }
+        };
+    }
+
+    /** Requests results until the background refresh has replaced the given result */
+    private ConcurrentHealthChecker.Result waitForNewResult(final ConcurrentHealthChecker.Result result) {
+        final long deadline = System.currentTimeMillis() + 10000;
+        while (System.currentTimeMillis() < deadline) {
+            final ConcurrentHealthChecker.Result current = healthChecker.getResult();
+            if (current != result) {
+                return current;
+            }
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        throw new AssertionError("Result was not refreshed.");
+    }
+}
@@ -0,0 +1,265 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+package org.ejbca.ui.web.pub;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.commons.lang.StringUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Runs the health checks of the components of a node (database, CA tokens, publishers...) concurrently and caches the result.
+ *
+ * Each check has its own timeout, so a single slow HSM slot or publisher only fails its own check instead of making the whole health check
+ * exceed the timeout of a load balancer probe. A check that has timed out is not started again until it has completed, so hanging checks
+ * do not pile up. Results are re-used for the cache time and then refreshed in the background, so a caller only has to wait for the checks
+ * before the first result is available. A result that is older than the cache time plus twice the timeout is reported as failed while its
+ * refresh has been running for more than twice the timeout, since getting the checks may hang as well, for example when the database is
+ * unavailable.
+ *
+ * @version $Id$
+ */
+public class ConcurrentHealthChecker {
+
+    private static final Logger log = Logger.getLogger(ConcurrentHealthChecker.class);
+
+    /** Provides the checks to run, since the set of CAs and publishers to check may change between runs. */
+    public interface CheckProvider {
+        /**
+         * @return checks by component name, in the order they should be reported. Each check returns an error message, or null or an empty
+         * String if the component is ok.
+         */
+        Map<String, Callable<String>> getChecks() throws Exception;
+    }
+
+    /** The outcome of the latest check of a component. */
+    public static class ComponentStatus {
+        private final String error;
+        private final long checkTime;
+        private final long duration;
+
+        ComponentStatus(final String error, final long checkTime, final long duration) {
+            this.error = StringUtils.isEmpty(error) ? null : error;
+            this.checkTime = checkTime;
+            this.duration = duration;
+        }
+
+        /** @return the error message, or null if the component is ok */
+        public String getError() {
+            return error;
+        }
+
+        /** @return when the check was started */
+        public long getCheckTime() {
+            return checkTime;
+        }
+
+        /** @return the time in milliseconds from the start of the checks until this check had completed or timed out */
+        public long getDuration() {
+            return duration;
+        }
+    }
+
+    /** The statuses of all components from one run of the checks. */
+    public static class Result {
+        private final Map<String, ComponentStatus> statuses;
+        private final long time;
+
+        Result(final Map<String, ComponentStatus> statuses, final long time) {
+            this.statuses = Collections.unmodifiableMap(statuses);
+            this.time = time;
+        }
+
+        /** @return the status of each component, by component name */
+        public Map<String, ComponentStatus> getStatuses() {
+            return statuses;
+        }
+
+        /** @return when the checks were started */
+        public long getTime() {
+            return time;
+        }
+
+        /** @return the error messages of all failed components, or null if all are ok */
+        public String getErrors() {
+            final StringBuilder sb = new StringBuilder();
+            for (final ComponentStatus status : statuses.values()) {
+                if (status.getError() != null) {
+                    sb.append(status.getError());
+                }
+            }
+            return sb.length() == 0 ? null : sb.toString();
+        }
+    }
+
+    private final String name;
+    private final long timeout;
+    private final long cacheTime;
+    private final CheckProvider checkProvider;
+    private final ThreadPoolExecutor checkExecutor;
+    private final ExecutorService refreshExecutor;
+    /** Checks that timed out and are still running, by component name. Only used by the refresh thread. */
+    private final Map<String, Future<String>> hangingChecks = new HashMap<String, Future<String>>();
+    private volatile Result result = null;
+    private Future<Result> refresh = null;
+    /** When the latest refresh was submitted */
+    private long refreshTime = 0;
+
+    /**
+     * @param name the name used in thread names and log messages
+     * @param threads the number of checks that are run concurrently
+     * @param timeout the time in milliseconds a check may run before it is reported as failed
+     * @param cacheTime the time in milliseconds a result is re-used before it is refreshed
+     * @param checkProvider provides the checks to run
+     */
+    public ConcurrentHealthChecker(final String name, final int threads, final long timeout, final long cacheTime, final CheckProvider checkProvider) {
+        this.name = name;
+        this.timeout = timeout;
+        this.cacheTime = cacheTime;
+        this.checkProvider = checkProvider;
+        this.checkExecutor = new ThreadPoolExecutor(Math.max(threads, 1), Math.max(threads, 1), 60, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new DaemonThreadFactory(name));
+        this.checkExecutor.allowCoreThreadTimeOut(true);
+        this.refreshExecutor = Executors.newSingleThreadExecutor(new DaemonThreadFactory(name + "-refresh"));
+    }
+
+    /**
+     * @return the latest result, which is refreshed in the background if it is older than the cache time, or a failed result if it is older
+     * than the cache time plus twice the timeout and its refresh hangs. Only waits for the checks to complete if there is no result yet.
+     */
+    public Result getResult() {
+        final Future<Result> firstRefresh;
+        synchronized (this) {
+            final long now = System.currentTimeMillis();
+            final Result current = result;
+            if (refresh == null || (refresh.isDone() && (current == null || now - current.getTime() >= cacheTime))) {
+                refreshTime = now;
+                refresh = refreshExecutor.submit(new Callable<Result>() {
+                    @Override
+                    public Result call() {
+                        return refresh();
+                    }
+                });
+            }
+            if (current != null) {
+                // Without requests there are no refreshes, so a result may be old without anything hanging
+                final long age = now - current.getTime();
+                if (age > cacheTime + 2 * timeout && !refresh.isDone() && now - refreshTime > 2 * timeout) {
+                    log.info("Health check has not completed within " + (now - refreshTime) + " ms.");
+                    return getFailedResult("Health check has not completed within " + (now - refreshTime) + " ms.");
+                }
+                return current;
+            }
+            firstRefresh = refresh;
+        }
+        try {
+            // The checks themselves time out, but getting the checks to run may hang as well
+            return firstRefresh.get(2 * timeout, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            return getFailedResult("Health check has not completed within " + 2 * timeout + " ms.");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return getFailedResult("Interrupted while waiting for health check.");
+        } catch (ExecutionException e) {
+            return getFailedResult("Health check failed: " + e.getCause().getMessage());
+        }
+    }
+
+    /** Stops the threads, without waiting for running checks to complete. */
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+        checkExecutor.shutdownNow();
+    }
+
+    /** Runs all checks concurrently, waits for them or their timeout, and stores the result. */
+    private Result refresh() {
+        final long startTime = System.currentTimeMillis();
+        final Map<String, ComponentStatus> statuses = new LinkedHashMap<String, ComponentStatus>();
+        try {
+            final Map<String, Future<String>> futures = new LinkedHashMap<String, Future<String>>();
+            for (final Map.Entry<String, Callable<String>> check : checkProvider.getChecks().entrySet()) {
+                final Future<String> hanging = hangingChecks.get(check.getKey());
+                if (hanging != null && !hanging.isDone()) {
+                    futures.put(check.getKey(), hanging);
+                } else {
+                    hangingChecks.remove(check.getKey());
+                    futures.put(check.getKey(), checkExecutor.submit(check.getValue()));
+                }
+            }
+            for (final Map.Entry<String, Future<String>> entry : futures.entrySet()) {
+                final String component = entry.getKey();
+                final long checkStartTime = System.currentTimeMillis();
+                String error;
+                try {
+                    error = entry.getValue().get(Math.max(startTime + timeout - checkStartTime, 0), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    hangingChecks.put(component, entry.getValue());
+                    error = "\n" + component + ": Error health check did not complete within " + timeout + " ms.";
+                    log.info("Health check of '" + component + "' did not complete within " + timeout + " ms.");
+                } catch (ExecutionException e) {
+                    error = "\n" + component + ": Error " + e.getCause().getMessage();
+                    log.info("Health check of '" + component + "' failed: " + e.getCause().getMessage(), e.getCause());
+                }
+                statuses.put(component, new ComponentStatus(error, startTime, System.currentTimeMillis() - startTime));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            statuses.put(name, new ComponentStatus("\nInterrupted while running health check.", startTime, System.currentTimeMillis() - startTime));
+        } catch (Exception e) { // NOPMD: any failure to get the checks is a failed health check
+            log.info("Could not get the health checks to run: " + e.getMessage(), e);
+            statuses.put(name, new ComponentStatus("\nError getting health checks: " + e.getMessage(), startTime, System.currentTimeMillis() - startTime));
+        }
+        final Result newResult = new Result(statuses, startTime);
+        result = newResult;
+        if (log.isDebugEnabled()) {
+            log.debug("Health checks of " + statuses.size() + " components completed in " + (System.currentTimeMillis() - startTime) + " ms.");
+        }
+        return newResult;
+    }
+
+    private Result getFailedResult(final String message) {
+        final Map<String, ComponentStatus> statuses = new LinkedHashMap<String, ComponentStatus>();
+        statuses.put(name, new ComponentStatus("\n" + message, System.currentTimeMillis(), 0));
+        return new Result(statuses, System.currentTimeMillis());
+    }
+
+    private static class DaemonThreadFactory implements ThreadFactory {
+        private final String name;
+        private final AtomicInteger threadNumber = new AtomicInteger();
+
+        DaemonThreadFactory(final String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(final Runnable runnable) {
+            final Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
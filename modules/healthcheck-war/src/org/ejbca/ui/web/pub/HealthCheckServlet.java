@@ -19,7 +19,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.Callable;
 
 import javax.ejb.EJB;
 import javax.servlet.ServletConfig;
@@ -31,13 +34,16 @@ import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.lang.ArrayUtils;
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.cesecore.certificates.ca.CaSessionLocal;
 import org.cesecore.certificates.ocsp.OcspResponseGeneratorSessionLocal;
+import org.cesecore.keys.token.p11.P11SigningSessionPool;
 import org.cesecore.util.CryptoProviderTools;
 import org.ejbca.config.EjbcaConfiguration;
 import org.ejbca.core.ejb.ca.caadmin.CAAdminSessionLocal;
 import org.ejbca.core.ejb.ca.publisher.PublisherSessionLocal;
 import org.ejbca.core.ejb.config.HealthCheckSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
+import org.ejbca.core.model.ca.publisher.PublisherConnectionException;
 
 /**
  * Servlet used to check the health of an EJBCA instance and can be used to
@@ -54,6 +60,10 @@ import org.ejbca.core.model.InternalEjbcaResources;
  * 
  * * Optionally you can configure the CAToken test to also make a test signature, not only check if the token status is active.
  * 
+ * The checks of the database, CA tokens, publishers and OcspKeyBindings are run concurrently with a timeout for each check, and the result
+ * is cached and refreshed in the background, see {@link ConcurrentHealthChecker}. Add the parameter format=json to the request to get
+ * the status of each component.
+ * 
  * @version $Id$
  */
 public class HealthCheckServlet extends HttpServlet {
@@ -63,17 +73,19 @@ public class HealthCheckServlet extends HttpServlet {
 
     /** Internal localization of logs and errors */
     private static final InternalEjbcaResources intres = InternalEjbcaResources.getInstance();
-    private static final SameRequestRateLimiter<String> rateLimiter = new SameRequestRateLimiter<String>();
     
     private String[] authIPs = null;
     private boolean anyIpAuthorized = false;
 
     private final long minfreememory = EjbcaConfiguration.getHealthCheckAmountFreeMem();
     private boolean checkPublishers = EjbcaConfiguration.getHealthCheckPublisherConnections();
+    private ConcurrentHealthChecker healthChecker;
 
     @EJB
     private CAAdminSessionLocal caAdminSession;
     @EJB
+    private CaSessionLocal caSession;
+    @EJB
     private PublisherSessionLocal publisherSession;
     @EJB
     private HealthCheckSessionLocal healthCheckSession;
@@ -94,6 +106,21 @@ public class HealthCheckServlet extends HttpServlet {
             log.warn("CheckPublishers servlet parameter has been dropped. Use \"healthcheck.publisherconnections\" property instead.");
         }
         initMaintenanceFile();
+        healthChecker = new ConcurrentHealthChecker("HealthCheck", EjbcaConfiguration.getHealthCheckThreads(), EjbcaConfiguration.getHealthCheckTimeout(),
+                EjbcaConfiguration.getHealthCheckCacheTime(), new ConcurrentHealthChecker.CheckProvider() {
+                    @Override
+                    public Map<String, Callable<String>> getChecks() {
+                        return getComponentChecks();
+                    }
+                });
+    }
+
+    @Override
+    public void destroy() {
+        if (healthChecker != null) {
+            healthChecker.shutdown();
+        }
+        super.destroy();
     }
 
     @Override
@@ -104,7 +131,11 @@ public class HealthCheckServlet extends HttpServlet {
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
         if (isAuthorized(request, response)) {
-            respond(getRateLimitedResult(request), response);
+            if ("json".equals(request.getParameter("format"))) {
+                respondJson(request, response);
+            } else {
+                respond(doAllHealthChecks(request), response);
+            }
         }
     }
     
@@ -126,20 +157,6 @@ public class HealthCheckServlet extends HttpServlet {
         return false;
     }
     
-    private String getRateLimitedResult(HttpServletRequest request) {
-        final SameRequestRateLimiter<String>.Result result = rateLimiter.getResult();
-        if (result.isFirst()) {
-            try {
-                result.setValue(doAllHealthChecks(request));
-            } catch (Throwable t) { // NOPMD: we want to catch all possible strangeness
-                result.setError(t);
-            }
-        } else if (log.isDebugEnabled()) {
-            log.debug("Re-using health check answer from first concurrent request for this request to conserve server load.");
-        }
-        return result.getValue();
-    }
-    
     private void respond(String status, HttpServletResponse resp) {
         resp.setContentType("text/plain");
         try {
@@ -174,52 +191,168 @@ public class HealthCheckServlet extends HttpServlet {
         if (log.isDebugEnabled()) {
             log.debug("Starting HealthCheck requested by : " + request.getRemoteAddr());
         }
-        // Start by checking if we are in maintance mode
+        final String maintenance = getMaintenanceStatus();
+        if (maintenance != null) {
+            // Return directly without performing any more checks
+            return maintenance;
+        }
+        final StringBuilder sb = new StringBuilder(0);
+        final String memoryStatus = getMemoryStatus();
+        if (memoryStatus != null) {
+            sb.append(memoryStatus);
+        }
+        final String errors = healthChecker.getResult().getErrors();
+        if (errors != null) {
+            sb.append(errors);
+        }
+        return sb.length()==0 ? null : sb.toString();
+    }
+
+    /** @return an error message if the node is in maintenance mode, or null */
+    private String getMaintenanceStatus() {
         final Properties maintenanceProperties = getMaintenanceProperties();
         final String maintenancePropertyName = EjbcaConfiguration.getHealthCheckMaintenancePropertyName();
         if (maintenanceProperties != null && Boolean.valueOf(maintenanceProperties.getProperty(maintenancePropertyName))) {
-            // Return directly without performing any more checks
             return "MAINT: " + maintenancePropertyName;
         }
-        final StringBuilder sb = new StringBuilder(0);
+        return null;
+    }
+
+    /** @return an error message if the JVM is about to run out of memory, or null */
+    private String getMemoryStatus() {
         if (log.isDebugEnabled()) {
-            log.debug("Checking database connection.");
+            log.debug("Checking JVM heap memory.");
         }
-        sb.append(healthCheckSession.getDatabaseStatus());
-        if (sb.length()==0) { 
-            if (log.isDebugEnabled()) {
-                log.debug("Checking JVM heap memory.");
+        // Memory still not allocated by the JVM + available memory of what is allocated by the JVM
+        final long maxAllocation = Runtime.getRuntime().maxMemory();
+        // The total amount of memory allocated to the JVM.
+        final long currentlyAllocation = Runtime.getRuntime().totalMemory();
+        // Available memory of what is allocated by the JVM
+        final long freeAllocated = Runtime.getRuntime().freeMemory();
+        // Memory still not allocated by the JVM + available memory of what is allocated by the JVM
+        final long currentFreeMemory = maxAllocation - currentlyAllocation + freeAllocated;
+        if (log.isDebugEnabled()) {
+            log.debug((100L*(maxAllocation-currentFreeMemory)/maxAllocation)+"% of the " + (maxAllocation/1048576L) + " MiB heap is currently used.");
+        }
+        if (minfreememory >= currentFreeMemory) {
+            return "\nMEM: Error Virtual Memory is about to run out, currently free memory :" + String.valueOf(Runtime.getRuntime().freeMemory());
+        }
+        return null;
+    }
+
+    /**
+     * @return the checks that may be slow, like the database, CA tokens, publishers and OcspKeyBindings, by component name. Each CA and
+     * publisher is checked separately, so that a slow HSM or publisher does not delay the checks of the others.
+     */
+    private Map<String, Callable<String>> getComponentChecks() {
+        final Map<String, Callable<String>> checks = new LinkedHashMap<String, Callable<String>>();
+        checks.put("DB", new Callable<String>() {
+            @Override
+            public String call() {
+                return healthCheckSession.getDatabaseStatus();
             }
-            // Memory still not allocated by the JVM + available memory of what is allocated by the JVM
-            final long maxAllocation = Runtime.getRuntime().maxMemory();
-            // The total amount of memory allocated to the JVM.
-            final long currentlyAllocation = Runtime.getRuntime().totalMemory();
-            // Available memory of what is allocated by the JVM
-            final long freeAllocated = Runtime.getRuntime().freeMemory();
-            // Memory still not allocated by the JVM + available memory of what is allocated by the JVM
-            final long currentFreeMemory = maxAllocation - currentlyAllocation + freeAllocated;
-            if (log.isDebugEnabled()) {
-                log.debug((100L*(maxAllocation-currentFreeMemory)/maxAllocation)+"% of the " + (maxAllocation/1048576L) + " MiB heap is currently used.");
+        });
+        for (final Map.Entry<Integer, String> ca : caSession.getCAIdToNameMap().entrySet()) {
+            final int caId = ca.getKey().intValue();
+            checks.put("CA:" + ca.getValue(), new Callable<String>() {
+                @Override
+                public String call() {
+                    return caAdminSession.healthCheck(caId);
+                }
+            });
+        }
+        if (checkPublishers) {
+            for (final Map.Entry<Integer, String> publisher : publisherSession.getPublisherIdToNameMap().entrySet()) {
+                final int publisherId = publisher.getKey().intValue();
+                final String name = publisher.getValue();
+                checks.put("Publisher:" + name, new Callable<String>() {
+                    @Override
+                    public String call() {
+                        try {
+                            publisherSession.testConnection(publisherId);
+                        } catch (PublisherConnectionException e) {
+                            final String msg = intres.getLocalizedMessage("publisher.errortestpublisher", name);
+                            log.info(msg);
+                            return "\n" + msg;
+                        }
+                        return null;
+                    }
+                });
             }
-            if (minfreememory >= currentFreeMemory) {
-                sb.append("\nMEM: Error Virtual Memory is about to run out, currently free memory :").append(String.valueOf(Runtime.getRuntime().freeMemory()));    
+        }
+        checks.put("OcspKeyBindings", new Callable<String>() {
+            @Override
+            public String call() {
+                return ocspResponseGeneratorSession.healthCheck();
             }
-            if (log.isDebugEnabled()) {
-                log.debug("Checking CAs.");
+        });
+        checks.put("PKCS11SigningSessions", new Callable<String>() {
+            @Override
+            public String call() {
+                return P11SigningSessionPool.healthCheckPools();
             }
-            sb.append(caAdminSession.healthCheck());
-            if (checkPublishers) {
-                if (log.isDebugEnabled()) {
-                    log.debug("Checking publishers.");
-                }
-                sb.append(publisherSession.testAllConnections());
+        });
+        return checks;
+    }
+
+    /** Writes the status of each component as a JSON object, with the same HTTP status code as the plain text response. */
+    private void respondJson(final HttpServletRequest request, final HttpServletResponse resp) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final String maintenance = getMaintenanceStatus();
+        boolean ok = maintenance == null;
+        sb.append("{\"components\":{");
+        if (maintenance == null) {
+            final String memoryStatus = getMemoryStatus();
+            ok = memoryStatus == null;
+            appendJsonComponent(sb, "MEM", memoryStatus, System.currentTimeMillis(), 0);
+            final ConcurrentHealthChecker.Result result = healthChecker.getResult();
+            for (final Map.Entry<String, ConcurrentHealthChecker.ComponentStatus> entry : result.getStatuses().entrySet()) {
+                final ConcurrentHealthChecker.ComponentStatus status = entry.getValue();
+                ok &= status.getError() == null;
+                sb.append(',');
+                appendJsonComponent(sb, entry.getKey(), status.getError(), status.getCheckTime(), status.getDuration());
             }
-            if (log.isDebugEnabled()) {
-                log.debug("Checking OcspKeyBindings.");
+        } else {
+            appendJsonComponent(sb, "MAINT", maintenance, System.currentTimeMillis(), 0);
+        }
+        sb.append("},\"status\":\"").append(ok ? "OK" : "ERROR").append("\"}");
+        if (log.isDebugEnabled()) {
+            log.debug("Health check with component status requested by : " + request.getRemoteAddr() + ", status " + (ok ? "OK" : "ERROR"));
+        }
+        resp.setContentType("application/json");
+        resp.setCharacterEncoding("UTF-8");
+        if (!ok && EjbcaConfiguration.getSendServerError()) {
+            resp.setStatus(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+        final Writer out = resp.getWriter();
+        out.write(sb.toString());
+        out.flush();
+        out.close();
+    }
+
+    private void appendJsonComponent(final StringBuilder sb, final String component, final String error, final long checkTime, final long duration) {
+        appendJsonString(sb, component);
+        sb.append(":{\"status\":\"").append(error == null ? "OK" : "ERROR").append("\",\"checkTime\":").append(checkTime).append(",\"duration\":")
+                .append(duration);
+        if (error != null) {
+            sb.append(",\"error\":");
+            appendJsonString(sb, error.trim());
+        }
+        sb.append('}');
+    }
+
+    private void appendJsonString(final StringBuilder sb, final String value) {
+        sb.append('"');
+        for (final char c : value.toCharArray()) {
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", Integer.valueOf(c)));
+            } else {
+                sb.append(c);
             }
-            sb.append(ocspResponseGeneratorSession.healthCheck());
         }
-        return sb.length()==0 ? null : sb.toString();
+        sb.append('"');
     }
 
     /** Create the maintenance file if it should be used and does not exists */
@@ -0,0 +1,72 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.web.pub;
+
+import java.io.IOException;
+import java.io.Writer;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.lang.ArrayUtils;
+import org.apache.log4j.Logger;
+import org.ejbca.config.EjbcaConfiguration;
+
+/**
+ * Base class of servlets exposing in-process metrics of this node in the Prometheus text exposition format, so they can be scraped by a
+ * monitoring system.
+ *
+ * Access is restricted to the same IP addresses as the health check (healthcheck.authorizedips).
+ *
+ * @version $Id$
+ */
+public abstract class PrometheusMetricsServlet extends HttpServlet {
+
+    private static final Logger log = Logger.getLogger(PrometheusMetricsServlet.class);
+    private static final long serialVersionUID = 1L;
+
+    private String[] authIPs = null;
+    private boolean anyIpAuthorized = false;
+
+    /** @return the name of the metrics for log and error messages, for example "OCSP" */
+    protected abstract String getMetricsName();
+
+    /** @return the current metrics in the Prometheus text exposition format */
+    protected abstract String getTextFormat();
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        authIPs = EjbcaConfiguration.getHealthCheckAuthorizedIps().split(";");
+        anyIpAuthorized = ArrayUtils.contains(authIPs, "ANY");
+    }
+
+    @Override
+    public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+        final String remoteIP = request.getRemoteAddr();
+        if (!anyIpAuthorized && !ArrayUtils.contains(authIPs, remoteIP)) {
+            log.info(getMetricsName() + " metrics request received from a non authorized IP: " + remoteIP);
+            response.sendError(HttpServletResponse.SC_UNAUTHORIZED, "ERROR : " + getMetricsName() + " metrics request received from a non authorized IP.");
+            return;
+        }
+        response.setContentType("text/plain; version=0.0.4");
+        response.setCharacterEncoding("UTF-8");
+        final Writer out = response.getWriter();
+        out.write(getTextFormat());
+        out.flush();
+    }
+}
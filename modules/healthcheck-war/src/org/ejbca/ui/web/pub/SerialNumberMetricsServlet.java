@@ -0,0 +1,36 @@
+/*************************************************************************
+ *                                                                       *
+ *  EJBCA Community: The OpenSource Certificate Authority                *
+ *                                                                       *
+ *  This software is free software; you can redistribute it and/or       *
+ *  modify it under the terms of the GNU Lesser General Public           *
+ *  License as published by the Free Software Foundation; either         *
+ *  version 2.1 of the License, or any later version.                    *
+ *                                                                       *
+ *  See terms of license at gnu.org.                                     *
+ *                                                                       *
+ *************************************************************************/
+
+package org.ejbca.ui.web.pub;
+
+import org.cesecore.certificates.certificate.SerialNumberMetrics;
+
+/**
+ * Servlet exposing the in-process certificate serial number uniqueness metrics of this node in the Prometheus text exposition format.
+ *
+ * @version $Id$
+ */
+public class SerialNumberMetricsServlet extends PrometheusMetricsServlet {
+
+    private static final long serialVersionUID = 1L;
+
+    @Override
+    protected String getMetricsName() {
+        return "Serial number";
+    }
+
+    @Override
+    protected String getTextFormat() {
+        return SerialNumberMetrics.INSTANCE.getTextFormat();
+    }
+}
@@ -43,8 +43,8 @@ import org.bouncycastle.util.encoders.Hex;
 import org.cesecore.authorization.AuthorizationDeniedException;
 import org.cesecore.certificates.ca.CADoesntExistsException;
 import org.cesecore.certificates.certificate.CertificateConstants;
-import org.cesecore.certificates.certificate.CertificateData;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparency;
 import org.cesecore.certificates.certificatetransparency.CertificateTransparencyFactory;
 import org.cesecore.certificates.crl.RevokedCertInfo;
@@ -76,6 +76,7 @@ public class RaCertificateDetails {
                                                                                 WaitingForApprovalException, NoSuchEndEntityException, EndEntityProfileValidationException;
         boolean keyRecoveryPossible(RaCertificateDetails raCertificateDetails);
         UIComponent getConfirmPasswordComponent();
+        CertificateDataWrapper searchForCertificate(String fingerprint);
     }
     
     private static final Logger log = Logger.getLogger(RaCertificateDetails.class);
@@ -83,7 +84,9 @@ public class RaCertificateDetails {
 
     private final Callbacks callbacks;
 
+    /** The certificate, which is only fetched when it is needed if this was created from the certificate meta data */
     private CertificateDataWrapper cdw;
+    private boolean certificateLoaded;
     private String fingerprint;
     private String fingerprintSha256 = "";
     private String username;
@@ -141,20 +144,36 @@ public class RaCertificateDetails {
         reInitialize(cdw, cpIdToNameMap, eepIdToNameMap, caSubjectToNameMap);
     }
 
+    /** Creates the details from the certificate meta data. The certificate itself is fetched the first time a detail that needs it is shown. */
+    public RaCertificateDetails(final CertificateInfo certificateInfo, final Callbacks callbacks,
+            final Map<Integer, String> cpIdToNameMap, final Map<Integer, String> eepIdToNameMap, final Map<String,String> caSubjectToNameMap) {
+        this.callbacks = callbacks;
+        initialize(certificateInfo, cpIdToNameMap, eepIdToNameMap, caSubjectToNameMap);
+    }
+
     public void reInitialize(final CertificateDataWrapper cdw,
             final Map<Integer, String> cpIdToNameMap, final Map<Integer, String> eepIdToNameMap, final Map<String,String> caSubjectToNameMap) {
+        initialize(cdw.getCertificateData().toCertificateInfo(), cpIdToNameMap, eepIdToNameMap, caSubjectToNameMap);
         this.cdw = cdw;
-        final CertificateData certificateData = cdw.getCertificateData();
-        this.cpId = certificateData.getCertificateProfileId();
-        this.cpName = cpId==null ? null : cpIdToNameMap.get(cpId);
-        this.eepId = certificateData.getEndEntityProfileIdOrZero();
+        this.certificateLoaded = true;
+        initializeFromCertificate(cdw.getCertificate());
+    }
+
+    /** Sets the details that are available from the certificate meta data */
+    private void initialize(final CertificateInfo certificateInfo,
+            final Map<Integer, String> cpIdToNameMap, final Map<Integer, String> eepIdToNameMap, final Map<String,String> caSubjectToNameMap) {
+        this.cdw = null;
+        this.certificateLoaded = false;
+        this.cpId = certificateInfo.getCertificateProfileId();
+        this.cpName = cpIdToNameMap.get(cpId);
+        this.eepId = certificateInfo.getEndEntityProfileIdOrZero();
         this.eepName = eepIdToNameMap.get(Integer.valueOf(eepId));
-        this.issuerDn = certificateData.getIssuerDN();
+        this.issuerDn = certificateInfo.getIssuerDN();
         this.caName = getCaNameFromIssuerDn(caSubjectToNameMap, issuerDn);
-        this.status = certificateData.getStatus();
-        this.revocationReason = certificateData.getRevocationReason();
-        this.fingerprint = certificateData.getFingerprint();
-        this.serialnumberRaw = certificateData.getSerialNumber();
+        this.status = certificateInfo.getStatus();
+        this.revocationReason = certificateInfo.getRevocationReason();
+        this.fingerprint = certificateInfo.getFingerprint();
+        this.serialnumberRaw = certificateInfo.getSerialNumberRaw();
         try {
             this.serialnumber = new BigInteger(this.serialnumberRaw).toString(16);
         } catch (NumberFormatException e) {
@@ -162,9 +181,41 @@ public class RaCertificateDetails {
                 log.debug("Failed to format serial number as hex. Probably a CVC certificate. Message: " + e.getMessage());
             }
         }
-        this.username = certificateData.getUsername()==null ? "" : certificateData.getUsername();
-        this.subjectDn = certificateData.getSubjectDnNeverNull();
-        final Certificate certificate = cdw.getCertificate();
+        this.username = certificateInfo.getUsername()==null ? "" : certificateInfo.getUsername();
+        this.subjectDn = certificateInfo.getSubjectDN()==null ? "" : certificateInfo.getSubjectDN();
+        // Replaced with the values from the certificate when it has been fetched, since these columns are not set in older installations
+        this.subjectAn = certificateInfo.getSubjectAltName()==null ? "" : certificateInfo.getSubjectAltName();
+        if (certificateInfo.getNotBefore()!=null) {
+            this.created = ValidityDate.formatAsISO8601ServerTZ(certificateInfo.getNotBefore().getTime(), TimeZone.getDefault());
+        }
+        this.expireDate = certificateInfo.getExpireDate().getTime();
+        this.expires = ValidityDate.formatAsISO8601ServerTZ(expireDate, TimeZone.getDefault());
+        if (status==CertificateConstants.CERT_ARCHIVED || status==CertificateConstants.CERT_REVOKED) {
+            this.updated = ValidityDate.formatAsISO8601ServerTZ(certificateInfo.getRevocationDate().getTime(), TimeZone.getDefault());
+            this.revocationDate = ValidityDate.formatAsISO8601ServerTZ(certificateInfo.getRevocationDate().getTime(), TimeZone.getDefault());
+        } else {
+            this.updated = ValidityDate.formatAsISO8601ServerTZ(certificateInfo.getUpdateTime().getTime(), TimeZone.getDefault());
+        }
+        final String subjectKeyIdB64 = certificateInfo.getSubjectKeyId();
+        if (subjectKeyIdB64!=null) {
+            this.subjectKeyId = new String(Hex.encode(Base64.decode(subjectKeyIdB64.getBytes())));
+        }
+        styleRowCallCounter = 0;    // Reset
+    }
+
+    /** Fetches the certificate the first time it is needed, if the details were created from the certificate meta data */
+    private void ensureCertificateLoaded() {
+        if (!certificateLoaded) {
+            certificateLoaded = true;
+            cdw = callbacks.searchForCertificate(fingerprint);
+            if (cdw!=null) {
+                initializeFromCertificate(cdw.getCertificate());
+            }
+        }
+    }
+
+    /** Sets the details that can only be read from the certificate itself */
+    private void initializeFromCertificate(final Certificate certificate) {
         byte[] certificateEncoded = null;
         if (certificate!=null) {
             try {
@@ -248,34 +299,22 @@ public class RaCertificateDetails {
                 }
             }
         }
-        this.expireDate = certificateData.getExpireDate();
-        this.expires = ValidityDate.formatAsISO8601ServerTZ(expireDate, TimeZone.getDefault());
-        if (status==CertificateConstants.CERT_ARCHIVED || status==CertificateConstants.CERT_REVOKED) {
-            this.updated = ValidityDate.formatAsISO8601ServerTZ(certificateData.getRevocationDate(), TimeZone.getDefault());
-            this.revocationDate = ValidityDate.formatAsISO8601ServerTZ(certificateData.getRevocationDate(), TimeZone.getDefault());
-        } else {
-            this.updated = ValidityDate.formatAsISO8601ServerTZ(certificateData.getUpdateTime(), TimeZone.getDefault());
-        }
-        final String subjectKeyIdB64 = certificateData.getSubjectKeyId();
-        if (subjectKeyIdB64!=null) {
-            this.subjectKeyId = new String(Hex.encode(Base64.decode(subjectKeyIdB64.getBytes())));
-        }
-        styleRowCallCounter = 0;    // Reset
     }
 
+
     public String getFingerprint() { return fingerprint; }
-    public String getFingerprintSha256() { return fingerprintSha256; }
+    public String getFingerprintSha256() { ensureCertificateLoaded(); return fingerprintSha256; }
     public String getUsername() { return username; }
-    public String getType() { return type; }
-    public boolean isTypeX509() { return "X.509".equals(type); }
-    public boolean isTypeCvc() { return "CVC".equals(type); }
-    public String getTypeVersion() { return typeVersion; }
+    public String getType() { ensureCertificateLoaded(); return type; }
+    public boolean isTypeX509() { return "X.509".equals(getType()); }
+    public boolean isTypeCvc() { return "CVC".equals(getType()); }
+    public String getTypeVersion() { ensureCertificateLoaded(); return typeVersion; }
     public String getSerialnumber() { return serialnumber; }
     public String getSerialnumberRaw() { return serialnumberRaw; }
     public String getIssuerDn() { return issuerDn; }
     public String getSubjectDn() { return subjectDn; }
     public String getSubjectAn() { return subjectAn; }
-    public String getSubjectDa() { return subjectDa; }
+    public String getSubjectDa() { ensureCertificateLoaded(); return subjectDa; }
     public String getCaName() { return caName; }
     /** @return Certificate Profile Name from the provided CP ID or a localized error String */
     public String getCpName() {
@@ -297,7 +336,13 @@ public class RaCertificateDetails {
         }
         return callbacks.getRaLocaleBean().getMessage("component_certdetails_info_missingeep", eepId);
     }
-    public String getCreated() { return created; }
+    public String getCreated() {
+        if (created==null) {
+            // The notBefore column is not set in older installations
+            ensureCertificateLoaded();
+        }
+        return created;
+    }
     public String getExpires() { return expires; }
 
     public boolean isExpired() { return expireDate<System.currentTimeMillis(); }
@@ -323,22 +368,22 @@ public class RaCertificateDetails {
     }
     public String getUpdated() { return updated; }
     public String getRevocationDate() { return revocationDate; }
-    public String getPublicKeyAlgorithm() { return publicKeyAlgorithm; }
-    public String getPublicKeySpecification() { return publicKeySpecification; }
-    public String getPublicKeyParameter() { return publicKeyParameter; }
+    public String getPublicKeyAlgorithm() { ensureCertificateLoaded(); return publicKeyAlgorithm; }
+    public String getPublicKeySpecification() { ensureCertificateLoaded(); return publicKeySpecification; }
+    public String getPublicKeyParameter() { ensureCertificateLoaded(); return publicKeyParameter; }
     public String getSubjectKeyId() { return subjectKeyId; }
-    public String getBasicConstraints() { return basicConstraints; }
-    public String getCvcAuthorizationRole() { return cvcAuthorizationRole; }
-    public String getCvcAuthorizationAccessRights() { return cvcAuthorizationAccessRights; }
-    public List<String> getKeyUsages() { return keyUsages; }
-    public List<String> getExtendedKeyUsages() { return extendedKeyUsages; }
-    public String getNameConstraints() { return hasNameConstraints ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
-    public String getQcStatements() { return hasQcStatements ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
-    public String getCertificateTransparencyScts() { return hasCertificateTransparencyScts ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
-    public String getSignatureAlgorithm() { return signatureAlgorithm; }
+    public String getBasicConstraints() { ensureCertificateLoaded(); return basicConstraints; }
+    public String getCvcAuthorizationRole() { ensureCertificateLoaded(); return cvcAuthorizationRole; }
+    public String getCvcAuthorizationAccessRights() { ensureCertificateLoaded(); return cvcAuthorizationAccessRights; }
+    public List<String> getKeyUsages() { ensureCertificateLoaded(); return keyUsages; }
+    public List<String> getExtendedKeyUsages() { ensureCertificateLoaded(); return extendedKeyUsages; }
+    public String getNameConstraints() { ensureCertificateLoaded(); return hasNameConstraints ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
+    public String getQcStatements() { ensureCertificateLoaded(); return hasQcStatements ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
+    public String getCertificateTransparencyScts() { ensureCertificateLoaded(); return hasCertificateTransparencyScts ? callbacks.getRaLocaleBean().getMessage("component_certdetails_info_present") : ""; }
+    public String getSignatureAlgorithm() { ensureCertificateLoaded(); return signatureAlgorithm; }
 
     public String getDump() {
-        final Certificate certificate = cdw.getCertificate();
+        final Certificate certificate = getCertificate();
         if (certificate!=null) {
             try {
                 return CertTools.dumpCertificateAsString(certificate);
@@ -357,7 +402,8 @@ public class RaCertificateDetails {
     
     /** @return Certificate as java.security.cert.Certificate */
     public Certificate getCertificate() {
-        return cdw.getCertificate();
+        ensureCertificateLoaded();
+        return cdw==null ? null : cdw.getCertificate();
     }
     
     /** @return true if more details should be shown */
@@ -41,6 +41,7 @@ import org.cesecore.certificates.ca.CADoesntExistsException;
 import org.cesecore.certificates.ca.CAInfo;
 import org.cesecore.certificates.certificate.CertificateConstants;
 import org.cesecore.certificates.certificate.CertificateDataWrapper;
+import org.cesecore.certificates.certificate.CertificateInfo;
 import org.cesecore.certificates.crl.RevokedCertInfo;
 import org.cesecore.util.EJBTools;
 import org.cesecore.util.ValidityDate;
@@ -118,6 +119,10 @@ public class RaSearchCertsBean implements Serializable {
             return confirmPasswordComponent;
         }
         @Override
+        public CertificateDataWrapper searchForCertificate(final String fingerprint) {
+            return raMasterApiProxyBean.searchForCertificate(raAuthenticationBean.getAuthenticationToken(), fingerprint);
+        }
+        @Override
         public boolean changeStatus(RaCertificateDetails raCertificateDetails, int newStatus, int newRevocationReason) throws ApprovalException, WaitingForApprovalException {
             final boolean ret = raMasterApiProxyBean.changeCertificateStatus(raAuthenticationBean.getAuthenticationToken(), raCertificateDetails.getFingerprint(),
                     newStatus, newRevocationReason);
@@ -186,7 +191,7 @@ public class RaSearchCertsBean implements Serializable {
                 log.debug("Wider criteria → Query");
             }
             lastExecutedResponse = raMasterApiProxyBean.searchForCertificates(raAuthenticationBean.getAuthenticationToken(), stagedRequest);
-            if (!lastExecutedResponse.isMightHaveMoreResults() || !lastExecutedResponse.getCdws().isEmpty()) {
+            if (!lastExecutedResponse.isMightHaveMoreResults() || !lastExecutedResponse.getCertificateInfos().isEmpty()) {
                 // Only update last executed request when there is no timeout
                 lastExecutedRequest = stagedRequest;
                 stagedRequest = new RaCertificateSearchRequest(stagedRequest);
@@ -205,27 +210,29 @@ public class RaSearchCertsBean implements Serializable {
             getAvailableCas();
         }
         if (lastExecutedResponse != null) {
-            for (final CertificateDataWrapper cdw : lastExecutedResponse.getCdws()) {
+            for (final CertificateInfo certificateInfo : lastExecutedResponse.getCertificateInfos()) {
+                final String subjectDn = certificateInfo.getSubjectDN()==null ? "" : certificateInfo.getSubjectDN();
+                final String subjectAn = certificateInfo.getSubjectAltName()==null ? "" : certificateInfo.getSubjectAltName();
                 // ...we don't filter if the requested maxResults is lower than the search request
                 if (!genericSearchString.isEmpty() && (
-                        !stagedRequest.matchSerialNumber(cdw.getCertificateData().getSerialNumber()) &&
-                        !stagedRequest.matchUsername(cdw.getCertificateData().getUsername()) &&
-                        !stagedRequest.matchSubjectDn(cdw.getCertificateData().getSubjectDnNeverNull()) &&
-                        !stagedRequest.matchSubjectAn(cdw.getCertificateData().getSubjectAltNameNeverNull())
+                        !stagedRequest.matchSerialNumber(certificateInfo.getSerialNumberRaw()) &&
+                        !stagedRequest.matchUsername(certificateInfo.getUsername()) &&
+                        !stagedRequest.matchSubjectDn(subjectDn) &&
+                        !stagedRequest.matchSubjectAn(subjectAn)
                         )) {
                     continue;
                 }
-                if (!stagedRequest.matchEep(cdw.getCertificateData().getEndEntityProfileIdOrZero())) { continue; }
-                if (!stagedRequest.matchCp(cdw.getCertificateData().getCertificateProfileId())) { continue; }
-                if (!stagedRequest.matchCa(cdw.getCertificateData().getIssuerDN().hashCode())) { continue; }
-                if (!stagedRequest.matchIssuedInterval(cdw.getCertificateData().getNotBefore())) { continue; }
-                if (!stagedRequest.matchExpiresInterval(cdw.getCertificateData().getExpireDate())) { continue; }
-                if (!stagedRequest.matchRevokedInterval(cdw.getCertificateData().getRevocationDate())) { continue; }
-                if (!stagedRequest.matchStatusAndReason(cdw.getCertificateData().getStatus(), cdw.getCertificateData().getRevocationReason())) { continue; }
-                resultsFiltered.add(new RaCertificateDetails(cdw, raCertificateDetailsCallbacks, cpIdToNameMap, eepIdToNameMap, caSubjectToNameMap));
+                if (!stagedRequest.matchEep(certificateInfo.getEndEntityProfileIdOrZero())) { continue; }
+                if (!stagedRequest.matchCp(certificateInfo.getCertificateProfileId())) { continue; }
+                if (!stagedRequest.matchCa(certificateInfo.getIssuerDN().hashCode())) { continue; }
+                if (!stagedRequest.matchIssuedInterval(certificateInfo.getNotBefore()==null ? null : Long.valueOf(certificateInfo.getNotBefore().getTime()))) { continue; }
+                if (!stagedRequest.matchExpiresInterval(certificateInfo.getExpireDate().getTime())) { continue; }
+                if (!stagedRequest.matchRevokedInterval(certificateInfo.getRevocationDate().getTime())) { continue; }
+                if (!stagedRequest.matchStatusAndReason(certificateInfo.getStatus(), certificateInfo.getRevocationReason())) { continue; }
+                resultsFiltered.add(new RaCertificateDetails(certificateInfo, raCertificateDetailsCallbacks, cpIdToNameMap, eepIdToNameMap, caSubjectToNameMap));
             }
             if (log.isDebugEnabled()) {
-                log.debug("Filtered " + lastExecutedResponse.getCdws().size() + " responses down to " + resultsFiltered.size() + " results.");
+                log.debug("Filtered " + lastExecutedResponse.getCertificateInfos().size() + " responses down to " + resultsFiltered.size() + " results.");
             }
             sort();
             chain();
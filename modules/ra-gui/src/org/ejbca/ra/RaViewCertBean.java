@@ -77,6 +77,10 @@ public class RaViewCertBean implements Serializable {
             return null;
         }
         @Override
+        public CertificateDataWrapper searchForCertificate(final String fingerprint) {
+            return raMasterApiProxyBean.searchForCertificate(raAuthenticationBean.getAuthenticationToken(), fingerprint);
+        }
+        @Override
         public boolean changeStatus(RaCertificateDetails raCertificateDetails, int newStatus, int newRevocationReason) throws ApprovalException, WaitingForApprovalException {
             final boolean ret = raMasterApiProxyBean.changeCertificateStatus(raAuthenticationBean.getAuthenticationToken(), raCertificateDetails.getFingerprint(),
                     newStatus, newRevocationReason);
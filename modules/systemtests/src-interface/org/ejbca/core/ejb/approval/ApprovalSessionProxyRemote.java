@@ -61,4 +61,10 @@ public interface ApprovalSessionProxyRemote {
      * @param extendForMillis Milliseconds to extend the request by.
      */
     void extendApprovalRequestNoAuth(AuthenticationToken authenticationToken, int approvalRequestId, long extendForMillis);
+
+    /**
+     * @see ApprovalSessionLocal#findWaitingForApprovalApprovalDataLocal(int, int)
+     * @return the value objects of a chunk of the approval requests that are waiting for approval, ordered by ID
+     */
+    List<ApprovalDataVO> findWaitingForApprovalApprovalDataVO(int afterId, int maxResults);
 }
@@ -18,6 +18,7 @@ import javax.ejb.Remote;
 
 import org.cesecore.authorization.rules.AccessRuleData;
 import org.cesecore.authorization.user.AccessUserAspectData;
+import org.ejbca.core.model.approval.Approval;
 
 /**
  * Interface for the bean helping with setup from tests of upgrade functionality.
@@ -34,4 +35,7 @@ public interface UpgradeTestSessionRemote {
 
     List<AccessRuleData> getAccessRuleDatas(String roleName);
 
+    /** Stores approvals in an approval request the way EJBCA 6.5.x did, with the number of remaining approvals in the request. */
+    void setLegacyApprovals(int approvalRequestId, int remainingApprovals, List<Approval> approvals);
+
 }
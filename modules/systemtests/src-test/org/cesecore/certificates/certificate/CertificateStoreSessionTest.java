@@ -649,6 +649,67 @@ public class CertificateStoreSessionTest extends RoleUsingTestCase {
     }
     
     
+    /** Test that the certificate meta data read by username and by fingerprints is the same as the meta data read for a single certificate */
+    @Test
+    public void testGetCertificateInfosWithoutCertificates() throws Exception {
+        final String username = "CertificateStoreSessionTestInfos";
+        final X509Certificate activeCert = CertTools.genSelfCert("CN=CertificateStoreSessionTestInfosActive", 24, null, keys.getPrivate(),
+                keys.getPublic(), AlgorithmConstants.SIGALG_SHA1_WITH_RSA, false);
+        final X509Certificate revokedCert = CertTools.genSelfCert("CN=CertificateStoreSessionTestInfosRevoked", 24, null, keys.getPrivate(),
+                keys.getPublic(), AlgorithmConstants.SIGALG_SHA1_WITH_RSA, false);
+        final String activeFingerprint = CertTools.getFingerprintAsString(activeCert);
+        final String revokedFingerprint = CertTools.getFingerprintAsString(revokedCert);
+        try {
+            certificateStoreSession.storeCertificateRemote(roleMgmgToken, EJBTools.wrap(activeCert), username, "1234", CertificateConstants.CERT_ACTIVE,
+                    CertificateConstants.CERTTYPE_ENDENTITY, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityInformation.NO_ENDENTITYPROFILE,
+                    "footag", new Date().getTime());
+            certificateStoreSession.storeCertificateRemote(roleMgmgToken, EJBTools.wrap(revokedCert), username, "1234", CertificateConstants.CERT_REVOKED,
+                    CertificateConstants.CERTTYPE_ENDENTITY, CertificateProfileConstants.CERTPROFILE_FIXED_ENDUSER, EndEntityInformation.NO_ENDENTITYPROFILE,
+                    "footag", new Date().getTime());
+            final List<CertificateInfo> byUsername = certificateStoreSession.getCertificateInfosByUsername(username, false, null);
+            assertEquals(2, byUsername.size());
+            for (final CertificateInfo certificateInfo : byUsername) {
+                assertCertificateInfoEquals(certificateStoreSession.getCertificateInfo(certificateInfo.getFingerprint()), certificateInfo);
+            }
+            final List<CertificateInfo> notRevoked = certificateStoreSession.getCertificateInfosByUsername(username, true,
+                    Arrays.asList(CertificateConstants.CERT_REVOKED));
+            assertEquals("Revoked certificates should be excluded.", 1, notRevoked.size());
+            assertEquals(activeFingerprint, notRevoked.get(0).getFingerprint());
+            // Duplicates and fingerprints of certificates that do not exist are left out
+            final List<CertificateInfo> byFingerprints = certificateStoreSession.getCertificateInfos(Arrays.asList(activeFingerprint,
+                    revokedFingerprint, activeFingerprint, "0000000000000000000000000000000000000000"));
+            assertEquals(2, byFingerprints.size());
+            for (final CertificateInfo certificateInfo : byFingerprints) {
+                assertCertificateInfoEquals(certificateStoreSession.getCertificateInfo(certificateInfo.getFingerprint()), certificateInfo);
+            }
+        } finally {
+            internalCertStoreSession.removeCertificate(activeCert);
+            internalCertStoreSession.removeCertificate(revokedCert);
+        }
+    }
+
+    private void assertCertificateInfoEquals(final CertificateInfo expected, final CertificateInfo actual) {
+        assertNotNull(expected);
+        assertEquals(expected.getFingerprint(), actual.getFingerprint());
+        assertEquals(expected.getCAFingerprint(), actual.getCAFingerprint());
+        assertEquals(expected.getSerialNumberRaw(), actual.getSerialNumberRaw());
+        assertEquals(expected.getIssuerDN(), actual.getIssuerDN());
+        assertEquals(expected.getSubjectDN(), actual.getSubjectDN());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getType(), actual.getType());
+        assertEquals(expected.getNotBefore(), actual.getNotBefore());
+        assertEquals(expected.getExpireDate(), actual.getExpireDate());
+        assertEquals(expected.getRevocationDate(), actual.getRevocationDate());
+        assertEquals(expected.getRevocationReason(), actual.getRevocationReason());
+        assertEquals(expected.getUsername(), actual.getUsername());
+        assertEquals(expected.getTag(), actual.getTag());
+        assertEquals(expected.getCertificateProfileId(), actual.getCertificateProfileId());
+        assertEquals(expected.getEndEntityProfileIdOrZero(), actual.getEndEntityProfileIdOrZero());
+        assertEquals(expected.getUpdateTime(), actual.getUpdateTime());
+        assertEquals(expected.getSubjectKeyId(), actual.getSubjectKeyId());
+        assertEquals(expected.getSubjectAltName(), actual.getSubjectAltName());
+    }
+
     // certificateStoreSession.updateLimitedCertificateDataStatus should not be able to tamper with locally issued certs in CertificateData
     @Test
     public void testLimitedCertificateDataWontUpdateFullEntire() throws Exception {
@@ -807,6 +807,56 @@ public class ApprovalSessionTest extends CaTestCase {
         }
     }
     
+    /** Test of reading the approval requests that are waiting for approval in chunks, as the upgrade to 6.6.0 does */
+    @Test
+    public void testFindWaitingForApprovalInChunks() throws Exception {
+        log.trace(">testFindWaitingForApprovalInChunks");
+        final List<Integer> requestIds = new ArrayList<Integer>();
+        try {
+            for (int i = 0; i < 5; i++) {
+                // Different end entity profiles give different approval IDs
+                final DummyApprovalRequest request = new DummyApprovalRequest(reqadmin, null, caid, 4710 + i, false, approvalProfile);
+                requestIds.add(approvalSessionRemote.addApprovalRequest(admin1, request));
+            }
+            final List<Integer> chunkIds = new ArrayList<Integer>();
+            int lastId = Integer.MIN_VALUE;
+            int chunks = 0;
+            while (true) {
+                final List<ApprovalDataVO> chunk = approvalSessionProxyRemote.findWaitingForApprovalApprovalDataVO(lastId, 2);
+                assertTrue("A chunk should not be larger than the maximum number of results.", chunk.size() <= 2);
+                for (final ApprovalDataVO approvalDataVO : chunk) {
+                    assertTrue("The requests should be ordered by ID.", approvalDataVO.getId() > lastId);
+                    assertEquals(ApprovalDataVO.STATUS_WAITINGFORAPPROVAL, approvalDataVO.getStatus());
+                    lastId = approvalDataVO.getId();
+                    chunkIds.add(lastId);
+                }
+                if (chunk.size() < 2) {
+                    break;
+                }
+                chunks++;
+            }
+            assertTrue("The requests should be read in more than one chunk.", chunks >= 2);
+            for (final Integer requestId : requestIds) {
+                assertEquals("Request " + requestId + " should be read exactly once.", 1, countOccurrences(chunkIds, requestId));
+            }
+        } finally {
+            for (final Integer requestId : requestIds) {
+                approvalSessionRemote.removeApprovalRequest(intadmin, requestId);
+            }
+            log.trace("<testFindWaitingForApprovalInChunks");
+        }
+    }
+
+    private int countOccurrences(final List<Integer> ids, final Integer id) {
+        int count = 0;
+        for (final Integer next : ids) {
+            if (next.equals(id)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
     @Test
     public void testApprovalsWithExternalAdmins() throws NoSuchAlgorithmException, NoSuchProviderException, InvalidAlgorithmParameterException,
             InvalidKeyException, CertificateEncodingException, SignatureException, IllegalStateException, ApprovalRequestExpiredException,
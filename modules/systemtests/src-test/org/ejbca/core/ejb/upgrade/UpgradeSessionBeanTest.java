@@ -24,6 +24,7 @@ import java.lang.reflect.Method;
 import java.security.cert.CertificateParsingException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
@@ -70,8 +71,13 @@ import org.ejbca.config.CmpConfiguration;
 import org.ejbca.config.GlobalConfiguration;
 import org.ejbca.core.ejb.approval.ApprovalProfileExistsException;
 import org.ejbca.core.ejb.approval.ApprovalProfileSessionRemote;
+import org.ejbca.core.ejb.approval.ApprovalSessionRemote;
+import org.ejbca.core.ejb.config.ConfigurationSessionRemote;
 import org.ejbca.core.ejb.config.GlobalUpgradeConfiguration;
 import org.ejbca.core.ejb.ra.raadmin.EndEntityProfileSessionRemote;
+import org.ejbca.core.model.approval.Approval;
+import org.ejbca.core.model.approval.ApprovalDataVO;
+import org.ejbca.core.model.approval.approvalrequests.DummyApprovalRequest;
 import org.ejbca.core.model.approval.profile.AccumulativeApprovalProfile;
 import org.ejbca.core.model.approval.profile.ApprovalProfile;
 import org.ejbca.core.model.authorization.AccessRulesConstants;
@@ -94,8 +100,10 @@ public class UpgradeSessionBeanTest {
     private static final String TESTCLASS = UpgradeSessionBeanTest.class.getSimpleName();
     
     private ApprovalProfileSessionRemote approvalProfileSession = EjbRemoteHelper.INSTANCE.getRemoteSession(ApprovalProfileSessionRemote.class);
+    private ApprovalSessionRemote approvalSession = EjbRemoteHelper.INSTANCE.getRemoteSession(ApprovalSessionRemote.class);
     private CaSessionRemote caSession = EjbRemoteHelper.INSTANCE.getRemoteSession(CaSessionRemote.class);
     private CertificateProfileSessionRemote certificateProfileSession = EjbRemoteHelper.INSTANCE.getRemoteSession(CertificateProfileSessionRemote.class);
+    private ConfigurationSessionRemote configurationSession = EjbRemoteHelper.INSTANCE.getRemoteSession(ConfigurationSessionRemote.class, EjbRemoteHelper.MODULE_TEST);
     private EndEntityProfileSessionRemote endEntityProfileSession = EjbRemoteHelper.INSTANCE.getRemoteSession(EndEntityProfileSessionRemote.class);
     private GlobalConfigurationSessionRemote globalConfigSession = EjbRemoteHelper.INSTANCE.getRemoteSession(GlobalConfigurationSessionRemote.class);
     private RoleSessionRemote roleSession = EjbRemoteHelper.INSTANCE.getRemoteSession(RoleSessionRemote.class);
@@ -349,6 +357,59 @@ public class UpgradeSessionBeanTest {
        }
    }
    
+    /**
+     * This test verifies that the approvals of all approval requests waiting for approval are connected to the partition of the new approval
+     * profile at upgrade, when the requests are read in more than one chunk.
+     */
+    @Test
+    public void testUpgradeTo660ApprovalRequestsInChunks() throws Exception {
+        final X509CA ca = CaTestUtils.createTestX509CA("CN=" + TESTCLASS + "ApprovalRequests", "foo123".toCharArray(), false);
+        ca.setNumOfRequiredApprovals(2);
+        ca.setApprovalSettings(Arrays.asList(ApprovalRequestType.ACTIVATECA.getIntegerValue()));
+        caSession.addCA(alwaysAllowtoken, ca);
+        final AccumulativeApprovalProfile requestApprovalProfile = new AccumulativeApprovalProfile(TESTCLASS);
+        final List<Integer> requestIds = new ArrayList<>();
+        final List<Integer> approvalIds = new ArrayList<>();
+        int approvalProfileId = -1;
+        configurationSession.backupConfiguration();
+        try {
+            for (int i = 0; i < 5; i++) {
+                // Different end entity profiles give different approval IDs
+                final DummyApprovalRequest request = new DummyApprovalRequest(alwaysAllowtoken, null, ca.getCAId(), 4710 + i, false,
+                        requestApprovalProfile);
+                final int requestId = approvalSession.addApprovalRequest(alwaysAllowtoken, request);
+                requestIds.add(requestId);
+                approvalIds.add(request.generateApprovalId());
+                // One of two approvals performed before 6.6.0, when approvals had no partition
+                upgradeTestSession.setLegacyApprovals(requestId, 1, Arrays.asList(new Approval("legacy", AccumulativeApprovalProfile.FIXED_STEP_ID, 0)));
+            }
+            // Read one request per chunk, so the upgrade has to walk through several chunks
+            configurationSession.updateProperty("upgrade.migration.chunksize", "1");
+            upgradeSession.upgrade(null, "6.5.1", false);
+            approvalProfileId = caSession.getCAInfo(alwaysAllowtoken, ca.getCAId()).getApprovalProfile();
+            assertNotEquals("No approval profile was set for the CA.", -1, approvalProfileId);
+            final int partitionId = approvalProfileSession.getApprovalProfile(approvalProfileId).getFirstStep().getPartitions().values().iterator()
+                    .next().getPartitionIdentifier();
+            for (final Integer approvalId : approvalIds) {
+                final List<ApprovalDataVO> approvalDatas = approvalSession.findApprovalDataVO(approvalId);
+                assertEquals(1, approvalDatas.size());
+                final Collection<Approval> approvals = approvalDatas.get(0).getApprovals();
+                assertEquals("The approval of request " + approvalDatas.get(0).getId() + " was lost at upgrade.", 1, approvals.size());
+                assertEquals("The approval of request " + approvalDatas.get(0).getId() + " was not connected to the new approval profile.",
+                        partitionId, approvals.iterator().next().getPartitionId());
+            }
+        } finally {
+            configurationSession.restoreConfiguration();
+            for (final Integer requestId : requestIds) {
+                approvalSession.removeApprovalRequest(alwaysAllowtoken, requestId);
+            }
+            if (approvalProfileId != -1) {
+                approvalProfileSession.removeApprovalProfile(alwaysAllowtoken, approvalProfileId);
+            }
+            CaTestUtils.removeCa(alwaysAllowtoken, ca.getCAInfo());
+        }
+    }
+
    /** Basic test that Statedump defaults to being disabled. The actual upgrade is to be tested manually in ECAQA-82 */
    @SuppressWarnings("unchecked")
    @Test
@@ -49,6 +49,7 @@ import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -187,6 +188,9 @@ import org.ejbca.core.protocol.ws.client.gen.ApprovalException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.AuthorizationDeniedException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.CADoesntExistsException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.Certificate;
+import org.ejbca.core.protocol.ws.client.gen.CertificateChange;
+import org.ejbca.core.protocol.ws.client.gen.CertificateChanges;
+import org.ejbca.core.protocol.ws.client.gen.CertificateIdentifier;
 import org.ejbca.core.protocol.ws.client.gen.CertificateResponse;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaException_Exception;
 import org.ejbca.core.protocol.ws.client.gen.EjbcaWS;
@@ -1737,6 +1741,132 @@ public abstract class CommonEjbcaWS extends CaTestCase {
         // A non existing certificate should return null
         revokestatus = ejbcaraws.checkRevokationStatus(issuerdn, BigInteger.valueOf(123456L).toString(16));
         assertNull(revokestatus);
+        // The bulk status should only contain the existing certificate
+        final List<RevokeStatus> revokestatuses = ejbcaraws.checkRevocationStatuses(Arrays.asList(new CertificateIdentifier(issuerdn, serno),
+                new CertificateIdentifier(issuerdn, BigInteger.valueOf(123456L).toString(16))));
+        assertEquals(1, revokestatuses.size());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revokestatuses.get(0).getReason());
+        assertEquals(serno, revokestatuses.get(0).getCertificateSN());
+        assertEquals(issuerdn, revokestatuses.get(0).getIssuerDN());
+    }
+
+    /**
+     * Issues, revokes and changes the status of certificates and reads the certificate change feed one change at a time. Expects
+     * database.changefeeddelay to be 0, so that the changes are returned right away.
+     */
+    protected void certificateChanges() throws Exception {
+        // Start a little before the certificates are issued, so only recent changes have to be paged through
+        final String startCursor = (System.currentTimeMillis() - 1000L) + ":";
+        final P12TestUser p12TestUser = new P12TestUser();
+        final X509Certificate revokedCert = p12TestUser.getCertificate("12345678");
+        final X509Certificate reactivatedCert = p12TestUser.getCertificate("12345678");
+        final X509Certificate activeCert = p12TestUser.getCertificate("12345678");
+        final String issuerdn = CertTools.getIssuerDN(activeCert);
+        ejbcaraws.revokeCert(issuerdn, revokedCert.getSerialNumber().toString(16), RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE);
+        ejbcaraws.revokeCert(issuerdn, reactivatedCert.getSerialNumber().toString(16), RevokedCertInfo.REVOCATION_REASON_CERTIFICATEHOLD);
+        ejbcaraws.revokeCert(issuerdn, reactivatedCert.getSerialNumber().toString(16), RevokedCertInfo.REVOCATION_REASON_REMOVEFROMCRL);
+        // Page through the feed with a page size of one, so that every change ends a page
+        final Map<String, CertificateChange> changes = new HashMap<String, CertificateChange>();
+        String cursor = readCertificateChanges(startCursor, changes);
+        final CertificateChange revoked = changes.get(CertTools.getFingerprintAsString(revokedCert));
+        assertNotNull("Revoked certificate should be in the change feed.", revoked);
+        assertEquals(CertificateConstants.CERT_REVOKED, revoked.getStatus());
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_KEYCOMPROMISE, revoked.getRevocationReason());
+        assertEquals(revokedCert.getSerialNumber().toString(16), revoked.getCertificateSN());
+        final CertificateChange reactivated = changes.get(CertTools.getFingerprintAsString(reactivatedCert));
+        assertNotNull("Reactivated certificate should be in the change feed.", reactivated);
+        assertEquals(CertificateConstants.CERT_ACTIVE, reactivated.getStatus());
+        assertEquals(RevokedCertInfo.NOT_REVOKED, reactivated.getRevocationReason());
+        final CertificateChange active = changes.get(CertTools.getFingerprintAsString(activeCert));
+        assertNotNull("Issued certificate should be in the change feed.", active);
+        assertEquals(CertificateConstants.CERT_ACTIVE, active.getStatus());
+        // The keyset condition of the query: a cursor with the update time of a change but no fingerprint returns the change again,
+        // while a cursor at the change itself continues after it, also when other certificates have the same update time
+        final CertificateChanges sameUpdateTime = ejbcaraws.getCertificateChanges(active.getUpdateTime() + ":", 100);
+        assertTrue("A cursor without fingerprint should include all changes with the update time.",
+                containsCertificateChange(sameUpdateTime.getChanges(), active.getFingerprint()));
+        final CertificateChanges afterActive = ejbcaraws.getCertificateChanges(active.getUpdateTime() + ":" + active.getFingerprint(), 100);
+        assertFalse("The change at the cursor should not be read again.", containsCertificateChange(afterActive.getChanges(), active.getFingerprint()));
+        for (final CertificateChange change : afterActive.getChanges()) {
+            assertTrue("Changes before the cursor should not be returned.", change.getUpdateTime() > active.getUpdateTime()
+                    || (change.getUpdateTime() == active.getUpdateTime() && change.getFingerprint().compareTo(active.getFingerprint()) > 0));
+        }
+        // Larger pages return the same changes in the same order as pages of one
+        final List<CertificateChange> singleChanges = new ArrayList<CertificateChange>();
+        readCertificateChanges(startCursor, singleChanges, 1);
+        final List<CertificateChange> pagedChanges = new ArrayList<CertificateChange>();
+        readCertificateChanges(startCursor, pagedChanges, 2);
+        assertEquals("Paging should not skip or repeat changes.", getFingerprints(singleChanges), getFingerprints(pagedChanges));
+        // Nothing has changed since the last page
+        changes.clear();
+        cursor = readCertificateChanges(cursor, changes);
+        assertFalse("Certificates should not be read twice.", changes.containsKey(CertTools.getFingerprintAsString(revokedCert)));
+        assertFalse("Certificates should not be read twice.", changes.containsKey(CertTools.getFingerprintAsString(activeCert)));
+        // A certificate that changes again is returned again
+        ejbcaraws.revokeCert(issuerdn, activeCert.getSerialNumber().toString(16), RevokedCertInfo.REVOCATION_REASON_SUPERSEDED);
+        changes.clear();
+        readCertificateChanges(cursor, changes);
+        final CertificateChange superseded = changes.get(CertTools.getFingerprintAsString(activeCert));
+        assertNotNull("Revoked certificate should be in the change feed again.", superseded);
+        assertEquals(RevokedCertInfo.REVOCATION_REASON_SUPERSEDED, superseded.getRevocationReason());
+        // Malformed cursors are rejected
+        try {
+            ejbcaraws.getCertificateChanges("notacursor", 1);
+            fail("A malformed cursor should be rejected.");
+        } catch (EjbcaException_Exception e) {
+            assertEquals(org.cesecore.ErrorCode.FIELD_VALUE_NOT_VALID.getInternalErrorCode(), e.getFaultInfo().getErrorCode().getInternalErrorCode());
+        }
+    }
+
+    /** Reads the certificate change feed one change at a time, checks the order of the changes and returns the cursor after the last one */
+    private String readCertificateChanges(final String startCursor, final Map<String, CertificateChange> changes) throws Exception {
+        final List<CertificateChange> changeList = new ArrayList<CertificateChange>();
+        final String cursor = readCertificateChanges(startCursor, changeList, 1);
+        for (final CertificateChange change : changeList) {
+            changes.put(change.getFingerprint(), change);
+        }
+        return cursor;
+    }
+
+    /**
+     * Reads the certificate change feed with the given page size, checks the order of the changes and returns the cursor after the last one.
+     *
+     * @param changes the list that the changes are added to in the order they are read
+     */
+    private String readCertificateChanges(final String startCursor, final List<CertificateChange> changes, final int pageSize) throws Exception {
+        String cursor = startCursor;
+        long lastUpdateTime = -1;
+        String lastFingerprint = "";
+        for (int i = 0; i < 10000; i++) {
+            final CertificateChanges page = ejbcaraws.getCertificateChanges(cursor, pageSize);
+            if (page.getChanges().isEmpty()) {
+                assertEquals("An empty page should return the same cursor.", cursor, page.getNextCursor());
+                return cursor;
+            }
+            assertTrue(page.getChanges().size() <= pageSize);
+            for (final CertificateChange change : page.getChanges()) {
+                assertTrue("Changes should be ordered by update time and fingerprint.", change.getUpdateTime() > lastUpdateTime
+                        || (change.getUpdateTime() == lastUpdateTime && change.getFingerprint().compareTo(lastFingerprint) > 0));
+                lastUpdateTime = change.getUpdateTime();
+                lastFingerprint = change.getFingerprint();
+                changes.add(change);
+            }
+            cursor = page.getNextCursor();
+        }
+        fail("The certificate change feed did not end.");
+        return null;
+    }
+
+    private static boolean containsCertificateChange(final List<CertificateChange> changes, final String fingerprint) {
+        return getFingerprints(changes).contains(fingerprint);
+    }
+
+    private static List<String> getFingerprints(final List<CertificateChange> changes) {
+        final List<String> fingerprints = new ArrayList<String>();
+        for (final CertificateChange change : changes) {
+            fingerprints.add(change.getFingerprint());
+        }
+        return fingerprints;
     }
 
     protected void utf8EditUser() throws Exception {
@@ -2001,6 +2131,13 @@ public abstract class CommonEjbcaWS extends CaTestCase {
 
         cert = ejbcaraws.getCertificate("1234567", CertTools.getIssuerDN(realcert));
         assertNull(cert);
+
+        final List<Certificate> bulkCerts = ejbcaraws.getCertificates(Arrays.asList(
+                new CertificateIdentifier(CertTools.getIssuerDN(realcert), realcert.getSerialNumber().toString(16)),
+                new CertificateIdentifier(CertTools.getIssuerDN(realcert), "1234567")));
+        assertEquals(1, bulkCerts.size());
+        realcert2 = (X509Certificate) CertificateHelper.getCertificate(bulkCerts.get(0).getCertificateData());
+        assertEquals(realcert.getSerialNumber(), realcert2.getSerialNumber());
     }
 
     protected void generatePkcs10Request() throws Exception {
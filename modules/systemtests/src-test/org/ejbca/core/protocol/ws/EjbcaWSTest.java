@@ -572,6 +572,19 @@ public class EjbcaWSTest extends CommonEjbcaWS {
         checkRevokeStatus();
     }
 
+    @Test
+    public void test081CertificateChanges() throws Exception {
+        final String changeFeedDelayKey = "database.changefeeddelay";
+        final String originalChangeFeedDelay = cesecoreConfigurationProxySession.getConfigurationValue(changeFeedDelayKey);
+        // Don't hold back the changes made by the test
+        cesecoreConfigurationProxySession.setConfigurationValue(changeFeedDelayKey, "0");
+        try {
+            certificateChanges();
+        } finally {
+            cesecoreConfigurationProxySession.setConfigurationValue(changeFeedDelayKey, originalChangeFeedDelay);
+        }
+    }
+
     @Test
     public void test09Utf8EditUser() throws Exception {
         utf8EditUser();
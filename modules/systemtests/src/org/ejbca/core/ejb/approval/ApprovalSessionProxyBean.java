@@ -12,6 +12,7 @@
  *************************************************************************/
 package org.ejbca.core.ejb.approval;
 
+import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
@@ -55,4 +56,13 @@ public class ApprovalSessionProxyBean implements ApprovalSessionProxyRemote {
         approvalSession.extendApprovalRequestNoAuth(authenticationToken, approvalRequestId, extendForMillis);
     }
 
+    @Override
+    public List<ApprovalDataVO> findWaitingForApprovalApprovalDataVO(final int afterId, final int maxResults) {
+        final List<ApprovalDataVO> ret = new ArrayList<>();
+        for (final ApprovalData approvalData : approvalSession.findWaitingForApprovalApprovalDataLocal(afterId, maxResults)) {
+            ret.add(approvalData.getApprovalDataVO());
+        }
+        return ret;
+    }
+
 }
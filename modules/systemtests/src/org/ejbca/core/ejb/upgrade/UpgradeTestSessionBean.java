@@ -20,6 +20,8 @@ import javax.ejb.EJBException;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
 
 import org.cesecore.authentication.tokens.AlwaysAllowLocalAuthenticationToken;
 import org.cesecore.authentication.tokens.AuthenticationToken;
@@ -28,6 +30,9 @@ import org.cesecore.authorization.user.AccessUserAspectData;
 import org.cesecore.jndi.JndiConstants;
 import org.cesecore.roles.AdminGroupData;
 import org.cesecore.roles.RoleExistsException;
+import org.ejbca.core.ejb.approval.ApprovalData;
+import org.ejbca.core.ejb.approval.ApprovalSessionLocal;
+import org.ejbca.core.model.approval.Approval;
 
 /**
  * SSB helping with setup from tests of upgrade functionality.
@@ -42,6 +47,11 @@ public class UpgradeTestSessionBean implements UpgradeTestSessionRemote {
     //private static final Logger log = Logger.getLogger(UpgradeTestSessionBean.class);
     private AuthenticationToken alwaysAllowToken = new AlwaysAllowLocalAuthenticationToken(UpgradeTestSessionBean.class.getSimpleName());
 
+    @PersistenceContext(unitName = "ejbca")
+    private EntityManager entityManager;
+
+    @EJB
+    private ApprovalSessionLocal approvalSession;
     @EJB
     private LegacyRoleManagementSessionLocal roleManagementSession;
     
@@ -70,4 +80,11 @@ public class UpgradeTestSessionBean implements UpgradeTestSessionRemote {
         final AdminGroupData adminGroupData = roleManagementSession.getRole(readOnlyRoleName);
         return new ArrayList<>(adminGroupData.getAccessRules().values());
     }
+
+    @Override
+    public void setLegacyApprovals(final int approvalRequestId, final int remainingApprovals, final List<Approval> approvals) {
+        final ApprovalData approvalData = entityManager.find(ApprovalData.class, approvalRequestId);
+        approvalData.setRemainingapprovals(remainingApprovals);
+        approvalSession.setApprovals(approvalData, approvals);
+    }
 }
@@ -21,6 +21,7 @@ import java.security.cert.X509Certificate;
 import java.util.Set;
 
 import javax.ejb.EJB;
+import javax.servlet.ServletConfig;
 import javax.servlet.ServletException;
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServlet;
@@ -29,6 +30,7 @@ import javax.servlet.http.HttpServletResponse;
 
 import org.apache.commons.lang.StringUtils;
 import org.apache.log4j.Logger;
+import org.bouncycastle.cert.ocsp.OCSPException;
 import org.bouncycastle.cert.ocsp.OCSPRespBuilder;
 import org.cesecore.certificates.certificateprofile.CertificateProfileConstants;
 import org.cesecore.certificates.ocsp.OcspResponseGeneratorSessionLocal;
@@ -50,7 +52,6 @@ import org.ejbca.core.ejb.ocsp.OcspKeyRenewalSessionLocal;
 import org.ejbca.core.model.InternalEjbcaResources;
 import org.ejbca.ui.web.LimitLengthASN1Reader;
 import org.ejbca.util.HTMLTools;
-import org.ejbca.util.IPatternLogger;
 
 /** 
  * Servlet implementing server side of the Online Certificate Status Protocol (OCSP)
@@ -72,6 +73,22 @@ public class OCSPServlet extends HttpServlet {
     @EJB
     private OcspKeyRenewalSessionLocal ocspKeyRenewalSession;
 
+    /** Produces and signs the OCSP responses, so that a slow database or HSM does not block the request threads */
+    private AsyncRequestExecutor signingExecutor;
+
+    @Override
+    public void init(ServletConfig config) throws ServletException {
+        super.init(config);
+        signingExecutor = new AsyncRequestExecutor("OCSPSigning", OcspConfiguration.getSigningThreads(), OcspConfiguration.getSigningQueueSize(),
+                OcspConfiguration.getRequestTimeout());
+    }
+
+    @Override
+    public void destroy() {
+        signingExecutor.shutdown();
+        super.destroy();
+    }
+
     @Override
     public void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
         try {
@@ -210,77 +227,129 @@ public class OCSPServlet extends HttpServlet {
         }
     }
 
-    private void processOcspRequest(HttpServletRequest request, HttpServletResponse response, final HttpMethod httpMethod) throws ServletException {
+    private void processOcspRequest(final HttpServletRequest request, final HttpServletResponse response, final HttpMethod httpMethod) throws IOException {
         final String remoteAddress = request.getRemoteAddr();
         final String xForwardedFor = StringTools.getCleanXForwardedFor(request.getHeader("X-Forwarded-For"));
         final StringBuffer requestUrl = request.getRequestURL();
         final int localTransactionId = TransactionCounter.INSTANCE.getTransactionNumber();
         // Create the transaction logger for this transaction.
-        TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress);
+        final TransactionLogger transactionLogger = createTransactionLogger(localTransactionId, remoteAddress, xForwardedFor);
         // Create the audit logger for this transaction.
-        AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress);
+        final AuditLogger auditLogger = createAuditLogger(localTransactionId, remoteAddress);
+        // The request is read on the request thread, only producing and signing the response is handed over to the signing threads
+        final byte[] requestBytes;
         try {
-            if (auditLogger.isEnabled()) {
-                auditLogger.paramPut(PatternLogger.LOG_ID, Integer.valueOf(localTransactionId));
-                auditLogger.paramPut(PatternLogger.SESSION_ID, sessionID);
-                auditLogger.paramPut(PatternLogger.CLIENT_IP, remoteAddress);
+            requestBytes = checkAndGetRequestBytes(request, httpMethod);
+        } catch (MalformedRequestException e) {
+            writeOcspResponse(request, response, httpMethod, getErrorResponse(OCSPRespBuilder.MALFORMED_REQUEST, e, transactionLogger, auditLogger),
+                    transactionLogger, auditLogger);
+            return;
+        } catch (IOException e) {
+            writeOcspResponse(request, response, httpMethod, getErrorResponse(OCSPRespBuilder.INTERNAL_ERROR, e, transactionLogger, auditLogger),
+                    transactionLogger, auditLogger);
+            return;
+        }
+        final X509Certificate[] requestCertificates = (X509Certificate[]) request.getAttribute("javax.servlet.request.X509Certificate");
+        signingExecutor.execute(request, response, new AsyncRequestExecutor.RequestTask<OcspResponseInformation>() {
+            @Override
+            protected OcspResponseInformation process() {
+                try {
+                    return integratedOcspResponseGeneratorSession.getOcspResponse(requestBytes, requestCertificates, remoteAddress, xForwardedFor,
+                            requestUrl, auditLogger, transactionLogger);
+                } catch (MalformedRequestException e) {
+                    return getErrorResponse(OCSPRespBuilder.MALFORMED_REQUEST, e, transactionLogger, auditLogger);
+                } catch (Throwable e) { // NOPMD, we really want to catch everything here to return internal error on unexpected errors
+                    return getErrorResponse(OCSPRespBuilder.INTERNAL_ERROR, e, transactionLogger, auditLogger);
+                }
             }
-            if (transactionLogger.isEnabled()) {
-                transactionLogger.paramPut(PatternLogger.LOG_ID, Integer.valueOf(localTransactionId));
-                transactionLogger.paramPut(PatternLogger.SESSION_ID, sessionID);
-                transactionLogger.paramPut(PatternLogger.CLIENT_IP, remoteAddress);
-                transactionLogger.paramPut(TransactionLogger.FORWARDED_FOR, xForwardedFor);
+
+            @Override
+            protected void respond(final HttpServletResponse asyncResponse, final OcspResponseInformation ocspResponseInformation) {
+                writeOcspResponse(request, asyncResponse, httpMethod, ocspResponseInformation, transactionLogger, auditLogger);
             }
-            OCSPRespBuilder responseGenerator = new OCSPRespBuilder();
-            OcspResponseInformation ocspResponseInformation = null;
-            try {
-                byte[] requestBytes = checkAndGetRequestBytes(request, httpMethod);
-                X509Certificate[] requestCertificates = (X509Certificate[]) request.getAttribute("javax.servlet.request.X509Certificate");
-                ocspResponseInformation = integratedOcspResponseGeneratorSession.getOcspResponse(
-                        requestBytes, requestCertificates, remoteAddress, xForwardedFor, requestUrl, auditLogger, transactionLogger);
-            } catch (MalformedRequestException e) {
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
-                }
-                String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
-                log.info(errMsg);
-                if (log.isDebugEnabled()) {
-                    log.debug(errMsg, e);
-                }
-                // RFC 2560: responseBytes are not set on error.
-                ocspResponseInformation = new OcspResponseInformation(responseGenerator.build(OCSPRespBuilder.MALFORMED_REQUEST, null), OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE), null);
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
-                    transactionLogger.writeln();
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.MALFORMED_REQUEST);
-                }
-            } catch (Throwable e) { // NOPMD, we really want to catch everything here to return internal error on unexpected errors
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(IPatternLogger.PROCESS_TIME, IPatternLogger.PROCESS_TIME);
-                }
-                final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
-                log.info(errMsg);
-                if (log.isDebugEnabled()) {
-                    log.debug(errMsg, e);
-                }
-                // RFC 2560: responseBytes are not set on error.
-                ocspResponseInformation = new OcspResponseInformation(responseGenerator.build(OCSPRespBuilder.INTERNAL_ERROR, null), OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE), null);
-                if (transactionLogger.isEnabled()) {
-                    transactionLogger.paramPut(TransactionLogger.STATUS, OCSPRespBuilder.INTERNAL_ERROR);
-                    transactionLogger.writeln();
-                }
-                if (auditLogger.isEnabled()) {
-                    auditLogger.paramPut(AuditLogger.STATUS, OCSPRespBuilder.INTERNAL_ERROR);
-                }
+
+            @Override
+            protected void respondTryLater(final HttpServletResponse asyncResponse) {
+                // The signing thread may still be using the loggers of the request if it timed out, and they are not thread safe
+                final TransactionLogger tryLaterTransactionLogger = createTransactionLogger(localTransactionId, remoteAddress, xForwardedFor);
+                final AuditLogger tryLaterAuditLogger = createAuditLogger(localTransactionId, remoteAddress);
+                writeOcspResponse(request, asyncResponse, httpMethod, getTryLaterResponse(tryLaterTransactionLogger, tryLaterAuditLogger),
+                        tryLaterTransactionLogger, tryLaterAuditLogger);
             }
+        });
+    }
+
+    private TransactionLogger createTransactionLogger(final int localTransactionId, final String remoteAddress, final String xForwardedFor) {
+        final TransactionLogger transactionLogger = new TransactionLogger(localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress);
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(PatternLogger.LOG_ID, Integer.valueOf(localTransactionId));
+            transactionLogger.paramPut(PatternLogger.SESSION_ID, sessionID);
+            transactionLogger.paramPut(PatternLogger.CLIENT_IP, remoteAddress);
+            transactionLogger.paramPut(TransactionLogger.FORWARDED_FOR, xForwardedFor);
+        }
+        return transactionLogger;
+    }
+
+    private AuditLogger createAuditLogger(final int localTransactionId, final String remoteAddress) {
+        final AuditLogger auditLogger = new AuditLogger("", localTransactionId, GuidHolder.INSTANCE.getGlobalUid(), remoteAddress);
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(PatternLogger.LOG_ID, Integer.valueOf(localTransactionId));
+            auditLogger.paramPut(PatternLogger.SESSION_ID, sessionID);
+            auditLogger.paramPut(PatternLogger.CLIENT_IP, remoteAddress);
+        }
+        return auditLogger;
+    }
+
+    /** @return an OCSP response with the error status, and logs the error */
+    private OcspResponseInformation getErrorResponse(final int status, final Throwable e, final TransactionLogger transactionLogger,
+            final AuditLogger auditLogger) {
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+        }
+        final String errMsg = intres.getLocalizedMessage("ocsp.errorprocessreq", e.getMessage());
+        log.info(errMsg);
+        if (log.isDebugEnabled()) {
+            log.debug(errMsg, e);
+        }
+        return getStatusResponse(status, transactionLogger, auditLogger);
+    }
+
+    /** @return an OCSP response telling the client to try later, used when the responder is overloaded or the request timed out */
+    private OcspResponseInformation getTryLaterResponse(final TransactionLogger transactionLogger, final AuditLogger auditLogger) {
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(PatternLogger.PROCESS_TIME, PatternLogger.PROCESS_TIME);
+        }
+        return getStatusResponse(OCSPRespBuilder.TRY_LATER, transactionLogger, auditLogger);
+    }
+
+    private OcspResponseInformation getStatusResponse(final int status, final TransactionLogger transactionLogger, final AuditLogger auditLogger) {
+        final OcspResponseInformation ocspResponseInformation;
+        try {
+            // RFC 2560: responseBytes are not set on error.
+            ocspResponseInformation = new OcspResponseInformation(new OCSPRespBuilder().build(status, null),
+                    OcspConfiguration.getMaxAge(CertificateProfileConstants.CERTPROFILE_NO_PROFILE), null);
+        } catch (OCSPException e) {
+            throw new IllegalStateException("Could not build OCSP response with status " + status, e);
+        }
+        if (transactionLogger.isEnabled()) {
+            transactionLogger.paramPut(TransactionLogger.STATUS, status);
+            transactionLogger.writeln();
+        }
+        if (auditLogger.isEnabled()) {
+            auditLogger.paramPut(AuditLogger.STATUS, status);
+        }
+        return ocspResponseInformation;
+    }
+
+    private void writeOcspResponse(final HttpServletRequest request, final HttpServletResponse response, final HttpMethod httpMethod,
+            final OcspResponseInformation ocspResponseInformation, final TransactionLogger transactionLogger, final AuditLogger auditLogger) {
+        try {
             byte[] ocspResponseBytes = ocspResponseInformation.getOcspResponse();    
             response.setContentType("application/ocsp-response");
             response.setContentLength(ocspResponseBytes.length);
@@ -305,10 +374,10 @@ public class OCSPServlet extends HttpServlet {
      * add the headers if the requirements of RFC 5019 is fulfilled: A GET-request, a single embedded response,
      * the response contains a nextUpdate and no nonce is present.
      * @param maxAge is the margin to Expire when using max-age in milliseconds 
-     * @throws org.bouncycastle.cert.ocsp.OCSPException 
+     * @throws OCSPException 
      */
     private void addRfc5019CacheHeaders(HttpServletRequest request, HttpServletResponse response, OcspResponseInformation ocspResponseInformation) 
-                throws IOException, org.bouncycastle.cert.ocsp.OCSPException {
+                throws IOException, OCSPException {
         if (!ocspResponseInformation.shouldAddCacheHeaders()) {
             return;
         } 